@@ -0,0 +1,445 @@
+package org.collectionspace.services.listener.botgarden;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.login.LoginContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.collectionspace.authentication.AuthN;
+import org.collectionspace.services.batch.BatchResource;
+import org.collectionspace.services.batch.nuxeo.AbstractBatchJob;
+import org.collectionspace.services.batch.nuxeo.UpdateAccessCodeBatchJob;
+import org.collectionspace.services.batch.nuxeo.UpdateDeadFlagBatchJob;
+import org.collectionspace.services.batch.nuxeo.UpdateRareFlagBatchJob;
+import org.collectionspace.services.client.BatchClient;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.BackgroundTaskExecutor;
+import org.collectionspace.services.common.ResourceMap;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.repository.RepositoryClient;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * A queue of botgarden derived field recomputations (the dead and rare flags of collectionobjects,
+ * and the access codes of taxon records). The listeners add a task when a save makes a derived
+ * value stale, and the task is queued only if that save's transaction commits. Tasks are keyed by
+ * tenant, kind and target record, so the thousands of events of a bulk edit of accessions that
+ * share a taxon become one recomputation of that taxon.
+ *
+ * A background worker is scheduled to start once the coalescing window has passed, and then runs
+ * the queued tasks, each in its own transaction. Tasks queued by the worker's own updates (e.g. a changed access code that makes
+ * the parent taxon's stale) are run as soon as the current ones are done. Dead flags are computed
+ * before rare flags and access codes, since the access code depends on the dead flag.
+ *
+ * The window can be configured with the system property
+ *   org.collectionspace.services.botgarden.recompute.windowMillis
+ *
+ * @see org.collectionspace.services.batch.nuxeo.UpdateAccessCodeBatchJob
+ * @see org.collectionspace.services.batch.nuxeo.UpdateRareFlagBatchJob
+ * @see org.collectionspace.services.batch.nuxeo.UpdateDeadFlagBatchJob
+ */
+public class RecomputeQueue {
+	private static final Logger logger = LoggerFactory.getLogger(RecomputeQueue.class);
+
+	public static final String WINDOW_PROPERTY = "org.collectionspace.services.botgarden.recompute.windowMillis";
+	public static final int DEFAULT_WINDOW_MILLIS = 2000;
+
+	/*
+	 * The kinds of task, in the order they are run.
+	 */
+	public enum Kind {
+		RELATED_DEAD_FLAGS,       // the dead flags of the collectionobjects related to a movement
+		DEAD_FLAG,                // the dead flag of a collectionobject, after a movement was related to it
+		RARE_FLAG,                // the rare flag of a collectionobject
+		REFERENCING_RARE_FLAGS,   // the rare flags of the collectionobjects whose primary taxon is a taxon record
+		ACCESS_CODE,              // the access code of a taxon record
+		PARENT_ACCESS_CODE        // the access code of the parent (broader context) of a taxon record
+	}
+
+	private static final RecomputeQueue instance = new RecomputeQueue();
+
+	private final long windowMillis = getIntProperty(WINDOW_PROPERTY, DEFAULT_WINDOW_MILLIS);
+
+	// The tasks waiting for the worker, by key
+	private final Map<String, Task> queuedTasks = new LinkedHashMap<String, Task>();
+	private boolean workerStarted = false;
+
+	// The tasks added in the current transaction
+	private final ThreadLocal<List<Task>> transactionTasks = new ThreadLocal<List<Task>>();
+
+	public static class Task {
+		private final String tenantId;
+		private final Kind kind;
+		private final String target;
+		private String detail;       // the movement of DEAD_FLAG, the vocabulary of REFERENCING_RARE_FLAGS, or the new child of ACCESS_CODE
+		private boolean knownAlive;  // for ACCESS_CODE, a child or referencing collectionobject is known to be alive
+		private SecurityContext securityContext;
+		private ResourceMap resourceMap;
+
+		private Task(Kind kind, String target, String detail, boolean knownAlive) {
+			this(AuthN.get().getCurrentTenantId(), kind, target, detail, knownAlive, SecurityContextHolder.getContext(),
+					ResteasyProviderFactory.getContextData(ResourceMap.class));
+		}
+
+		Task(String tenantId, Kind kind, String target, String detail, boolean knownAlive, SecurityContext securityContext,
+				ResourceMap resourceMap) {
+			this.tenantId = tenantId;
+			this.kind = kind;
+			this.target = target;
+			this.detail = detail;
+			this.knownAlive = knownAlive;
+			this.securityContext = securityContext;
+			this.resourceMap = resourceMap;
+		}
+
+		Kind getKind() {
+			return kind;
+		}
+
+		String getTarget() {
+			return target;
+		}
+
+		String getDetail() {
+			return detail;
+		}
+
+		boolean isKnownAlive() {
+			return knownAlive;
+		}
+
+		SecurityContext getSecurityContext() {
+			return securityContext;
+		}
+
+		String getKey() {
+			// A DEAD_FLAG task depends on the movement, so there is one for each movement.
+			return tenantId + ":" + kind + ":" + target + (kind == Kind.DEAD_FLAG ? ":" + detail : "");
+		}
+
+		/*
+		 * Combines a task that is already queued with a later one that has the same key. The later
+		 * task's security context is used. The hints of the two are only kept if both have them:
+		 * the earlier hint may be stale by the time the task is run.
+		 */
+		void merge(Task later) {
+			if (kind == Kind.ACCESS_CODE) {
+				knownAlive = knownAlive && later.knownAlive;
+				if (detail != null && !detail.equals(later.detail)) {
+					detail = null;
+				}
+			} else if (later.detail != null) {
+				detail = later.detail;
+			}
+
+			securityContext = later.securityContext;
+			if (later.resourceMap != null) {
+				resourceMap = later.resourceMap;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + target + (detail != null ? " (" + detail + ")" : "") + (knownAlive ? " (known alive)" : "")
+					+ " of tenant " + tenantId;
+		}
+	}
+
+	/**
+	 * Recompute the access code of a taxon record.
+	 *
+	 * @param taxonRefNameOrCsid	The refname or csid of the taxon record.
+	 * @param knownAlive			If true, a child taxon or referencing collectionobject of the taxon record
+	 * 								is known to be alive, so the other ones don't have to be examined.
+	 */
+	public static Task accessCode(String taxonRefNameOrCsid, boolean knownAlive) {
+		return new Task(Kind.ACCESS_CODE, taxonRefNameOrCsid, null, knownAlive);
+	}
+
+	/**
+	 * Recompute the access code of a taxon record, after a child (narrower context) was added to it.
+	 */
+	public static Task accessCodeWithNewChild(String parentTaxonCsid, String childTaxonCsid) {
+		return new Task(Kind.ACCESS_CODE, parentTaxonCsid, childTaxonCsid, false);
+	}
+
+	/**
+	 * Recompute the access code of the parent (broader context) of a taxon record.
+	 */
+	public static Task parentAccessCode(String taxonCsid) {
+		return new Task(Kind.PARENT_ACCESS_CODE, taxonCsid, null, false);
+	}
+
+	/**
+	 * Recompute the rare flag of a collectionobject.
+	 */
+	public static Task rareFlag(String collectionObjectCsid) {
+		return new Task(Kind.RARE_FLAG, collectionObjectCsid, null, false);
+	}
+
+	/**
+	 * Recompute the rare flags of the collectionobjects whose primary taxonomic identification is a taxon record.
+	 */
+	public static Task referencingRareFlags(String taxonCsid, String vocabularyCsid) {
+		return new Task(Kind.REFERENCING_RARE_FLAGS, taxonCsid, vocabularyCsid, false);
+	}
+
+	/**
+	 * Recompute the dead flag of a collectionobject, after a movement was related to it.
+	 */
+	public static Task deadFlag(String collectionObjectCsid, String movementCsid) {
+		return new Task(Kind.DEAD_FLAG, collectionObjectCsid, movementCsid, false);
+	}
+
+	/**
+	 * Recompute the dead flags of the collectionobjects related to a movement whose action code changed.
+	 */
+	public static Task relatedDeadFlags(String movementCsid) {
+		return new Task(Kind.RELATED_DEAD_FLAGS, movementCsid, null, false);
+	}
+
+	public static RecomputeQueue getInstance() {
+		return instance;
+	}
+
+	RecomputeQueue() {
+		// Use getInstance()
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		int result = defaultValue;
+		String value = System.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, name, defaultValue));
+			}
+		}
+		return result >= 0 ? result : defaultValue;
+	}
+
+	/**
+	 * Queues a task once the current transaction commits. Without a transaction, the task is queued now.
+	 * Never throws: a task that can't be queued is logged, and can be caught up with the
+	 * RebuildBotGardenFieldsBatchJob.
+	 */
+	public void addAfterCommit(Task task) {
+		if (TransactionHelper.isTransactionActive() == false) {
+			add(Collections.singletonList(task));
+			return;
+		}
+
+		List<Task> tasks = transactionTasks.get();
+		if (tasks == null) {
+			final List<Task> newTasks = new ArrayList<Task>();
+			try {
+				TransactionHelper.registerSynchronization(new Synchronization() {
+					@Override
+					public void beforeCompletion() {
+						// Nothing to do
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						transactionTasks.remove();
+						if (status == Status.STATUS_COMMITTED) {
+							add(newTasks);
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				logger.error(String.format("Failed to register the botgarden recomputation '%s' with the current transaction.", task), e);
+				return;
+			}
+			transactionTasks.set(newTasks);
+			tasks = newTasks;
+		}
+		tasks.add(task);
+	}
+
+	private void add(List<Task> tasks) {
+		boolean startWorker = false;
+
+		synchronized (queuedTasks) {
+			for (Task task : tasks) {
+				Task queuedTask = queuedTasks.get(task.getKey());
+				if (queuedTask != null) {
+					queuedTask.merge(task);
+				} else {
+					queuedTasks.put(task.getKey(), task);
+				}
+			}
+			if (workerStarted == false && queuedTasks.isEmpty() == false) {
+				workerStarted = true;
+				startWorker = true;
+			}
+		}
+
+		if (startWorker) {
+			startWorker();
+		}
+	}
+
+	/*
+	 * Schedules the worker to run once the coalescing window has passed.  Until then it doesn't hold
+	 * one of the background executor's threads.
+	 */
+	void startWorker() {
+		try {
+			BackgroundTaskExecutor.getInstance().schedule("recompute botgarden fields", new Runnable() {
+				@Override
+				public void run() {
+					LoginContext loginContext = null;
+					try {
+						loginContext = Framework.login();
+						for (List<Task> tasks = takeTasks(); tasks.isEmpty() == false; tasks = takeTasks()) {
+							for (Task task : tasks) {
+								runTask(task);
+							}
+						}
+					} catch (Throwable t) {
+						logger.error("The botgarden recomputation worker failed.", t);
+						stopWorker();
+					} finally {
+						if (loginContext != null) {
+							try {
+								loginContext.logout();
+							} catch (Exception e) {
+								logger.warn("Could not log out of the Nuxeo framework.", e);
+							}
+						}
+					}
+				}
+			}, windowMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// The tasks stay queued, and the next one that's added tries to start a worker again.
+			logger.error("Could not start the botgarden recomputation worker.", e);
+			stopWorker();
+		}
+	}
+
+	private void stopWorker() {
+		synchronized (queuedTasks) {
+			workerStarted = false;
+		}
+	}
+
+	/*
+	 * Takes all the queued tasks, in the order they must be run. If there are none, the worker
+	 * is done: the next task that's added starts a new one.
+	 */
+	List<Task> takeTasks() {
+		List<Task> tasks;
+
+		synchronized (queuedTasks) {
+			tasks = new ArrayList<Task>(queuedTasks.values());
+			queuedTasks.clear();
+			if (tasks.isEmpty()) {
+				workerStarted = false;
+			}
+		}
+
+		Collections.sort(tasks, new Comparator<Task>() {
+			@Override
+			public int compare(Task task1, Task task2) {
+				return task1.kind.compareTo(task2.kind);
+			}
+		});
+
+		return tasks;
+	}
+
+	/*
+	 * Runs a task in its own transaction, as the user who queued it.
+	 */
+	private void runTask(Task task) {
+		if (task.resourceMap == null) {
+			logger.error(String.format("Could not recompute '%s': no resource map.", task));
+			return;
+		}
+
+		SecurityContextHolder.setContext(task.securityContext);
+		ResteasyProviderFactory.pushContext(ResourceMap.class, task.resourceMap);
+		try {
+			BatchResource batchResource = (BatchResource) task.resourceMap.get(BatchClient.SERVICE_NAME);
+			ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext = batchResource.createServiceContext(batchResource.getServiceName());
+			RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = batchResource.getRepositoryClient(serviceContext);
+			CoreSessionInterface repoSession = repoClient.getRepositorySession(serviceContext); // starts the task's transaction
+			try {
+				serviceContext.setCurrentRepositorySession(repoSession);
+				recompute(task, serviceContext, task.resourceMap);
+			} catch (Throwable t) {
+				repoSession.setTransactionRollbackOnly();
+				throw t;
+			} finally {
+				serviceContext.clearCurrentRepositorySession();
+				repoClient.releaseRepositorySession(serviceContext, repoSession); // commits the task's transaction
+			}
+		} catch (Throwable t) {
+			logger.error(String.format("Could not recompute '%s'.", task), t);
+		} finally {
+			ResteasyProviderFactory.clearContextData();
+			SecurityContextHolder.clearContext();
+		}
+	}
+
+	private void recompute(Task task, ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext, ResourceMap resourceMap) throws Exception {
+		logger.debug("recomputing " + task);
+
+		switch (task.kind) {
+		case RELATED_DEAD_FLAGS:
+			createJob(new UpdateDeadFlagBatchJob(), serviceContext, resourceMap).updateRelatedDeadFlags(task.target);
+			break;
+		case DEAD_FLAG:
+			createJob(new UpdateDeadFlagBatchJob(), serviceContext, resourceMap).updateDeadFlag(task.target, task.detail);
+			break;
+		case RARE_FLAG:
+			createJob(new UpdateRareFlagBatchJob(), serviceContext, resourceMap).updateRareFlag(task.target);
+			break;
+		case REFERENCING_RARE_FLAGS:
+			createJob(new UpdateRareFlagBatchJob(), serviceContext, resourceMap).updateReferencingRareFlags(task.target, task.detail);
+			break;
+		case ACCESS_CODE:
+			// Pass false for deep, and let the queue propagate changes up the taxon hierarchy: as taxon records
+			// are modified, UpdateAccessCodeListener queues the recomputation of their parents.
+			if (task.detail != null) {
+				createJob(new UpdateAccessCodeBatchJob(), serviceContext, resourceMap).updateAccessCode(task.target, false, task.detail);
+			} else {
+				createJob(new UpdateAccessCodeBatchJob(), serviceContext, resourceMap).updateAccessCode(task.target, false, task.knownAlive);
+			}
+			break;
+		case PARENT_ACCESS_CODE:
+			createJob(new UpdateAccessCodeBatchJob(), serviceContext, resourceMap).updateParentAccessCode(task.target, false);
+			break;
+		}
+	}
+
+	private static <T extends AbstractBatchJob> T createJob(T job, ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext, ResourceMap resourceMap) {
+		job.setServiceContext(serviceContext);
+		job.setResourceMap(resourceMap);
+
+		return job;
+	}
+}
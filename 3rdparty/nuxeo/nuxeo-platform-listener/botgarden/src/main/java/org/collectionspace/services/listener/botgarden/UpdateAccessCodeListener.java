@@ -12,27 +12,15 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.collectionspace.services.batch.BatchResource;
-import org.collectionspace.services.batch.nuxeo.UpdateAccessCodeBatchJob;
-import org.collectionspace.services.batch.nuxeo.UpdateAccessCodeBatchJob.UpdateAccessCodeResults;
-import org.collectionspace.services.client.BatchClient;
-import org.collectionspace.services.client.PoxPayloadIn;
-import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectBotGardenConstants;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectConstants;
-import org.collectionspace.services.common.ResourceMap;
-import org.collectionspace.services.common.context.ServiceContext;
-import org.collectionspace.services.common.invocable.InvocationResults;
 import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
-import org.collectionspace.services.nuxeo.client.java.CoreSessionWrapper;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonBotGardenConstants;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonConstants;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonomyAuthorityConstants;
 
-import org.jboss.resteasy.spi.ResteasyProviderFactory;
-
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -42,8 +30,10 @@ import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
 
 /**
  * A listener that updates the access code on taxon records when collectionobjects
- * or taxon records are created or modified.
+ * or taxon records are created or modified. The updates are queued, and made after
+ * the save commits.
  *
+ * @see RecomputeQueue
  * @see org.collectionspace.services.batch.nuxeo.UpdateAccessCodeBatchJob
  * @author ray
  *
@@ -136,21 +126,20 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 					deadFlagChanged = true;
 				}
 
-				if (deadFlagChanged) {
-					String collectionObjectCsid = doc.getName();
+				// The access codes are recomputed after the save commits, once for each taxon however many
+				// collectionobjects referencing it were saved. Propagation up the taxon hierarchy is taken
+				// care of by this event handler: as taxon records are modified, it queues the parent.
 
-					try {
-						// Pass false for the second parameter to updateReferencedAccessCodes, so that it doesn't
-					 	// propagate changes up the taxon hierarchy. Propagation is taken care of by this
-						// event handler: As taxon records are modified, this handler executes, and updates the
-						// parent.
+				boolean isDead = currentDeadFlag.equalsIgnoreCase("true");
+				boolean knownAlive = !isDead;
 
-						InvocationResults results = createUpdater(context).updateReferencedAccessCodes(collectionObjectCsid, false);
+				if (deadFlagChanged) {
+					// All the referenced taxon records need to have their access codes recalculated. If the
+					// collectionobject is alive, so are they.
 
-						logger.debug("updateReferencedAccessCodes complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					}
-					catch (Exception e) {
-						logger.error(e.getMessage(), e);
+					for (String taxonName : getTaxonNames(doc)) {
+						logger.debug("queueing referenced taxon: " + taxonName);
+						RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.accessCode(taxonName, knownAlive));
 					}
 				}
 				else {
@@ -158,20 +147,9 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 					// any taxonomic idents that were added.
 
 					if (addedTaxonNames != null) {
-						boolean isDead = currentDeadFlag.equalsIgnoreCase("true");
-						boolean knownAlive = !isDead;
-
 						for (String addedTaxonName : addedTaxonNames) {
-							logger.debug("updating added taxon: " + addedTaxonName);
-
-							try {
-								UpdateAccessCodeResults results = createUpdater(context).updateAccessCode(addedTaxonName, false, knownAlive);
-
-								logger.debug("updateAccessCode complete: numAffected=" + results.getNumAffected());
-							}
-							catch (Exception e) {
-								logger.error(e.getMessage(), e);
-							}
+							logger.debug("queueing added taxon: " + addedTaxonName);
+							RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.accessCode(addedTaxonName, knownAlive));
 						}
 					}
 				}
@@ -181,16 +159,8 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 					// access codes recalculated.
 
 					for (String deletedTaxonName : deletedTaxonNames) {
-						logger.debug("updating deleted taxon: " + deletedTaxonName);
-
-						try {
-							InvocationResults results = createUpdater(context).updateAccessCode(deletedTaxonName, false);
-
-							logger.debug("updateAccessCode complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-						}
-						catch (Exception e) {
-							logger.error(e.getMessage(), e);
-						}
+						logger.debug("queueing deleted taxon: " + deletedTaxonName);
+						RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.accessCode(deletedTaxonName, false));
 					}
 				}
 			}
@@ -243,19 +213,10 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 				if (updateRequired) {
 					String taxonCsid = doc.getName();
 
-					try {
-						// Pass false for the second parameter to updateReferencedAccessCodes, so that it doesn't
-					 	// propagate changes up the taxon hierarchy. Propagation is taken care of by this
-						// event handler: As taxon records are modified, this handler executes, and updates the
-						// parent.
-
-						InvocationResults results = createUpdater(context).updateParentAccessCode(taxonCsid, false);
+					// Only the parent is queued. Propagation further up the taxon hierarchy is taken care of by
+					// this event handler: as the parent is modified, this handler executes, and queues its parent.
 
-						logger.debug("updateParentAccessCode complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					}
-					catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.parentAccessCode(taxonCsid));
 				}
 			}
 		}
@@ -274,16 +235,9 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 					String parentTaxonCsid = (String) doc.getProperty(RelationConstants.OBJECT_CSID_SCHEMA_NAME, RelationConstants.OBJECT_CSID_FIELD_NAME);
 					String childTaxonCsid = (String) doc.getProperty(RelationConstants.SUBJECT_CSID_SCHEMA_NAME, RelationConstants.SUBJECT_CSID_FIELD_NAME);
 
-					logger.debug("child added, updating parent taxon: parentTaxonCsid=" + parentTaxonCsid + " childTaxonCsid=" + childTaxonCsid);
-
-					try {
-						UpdateAccessCodeResults results = createUpdater(context).updateAccessCode(parentTaxonCsid, false, childTaxonCsid);
+					logger.debug("child added, queueing parent taxon: parentTaxonCsid=" + parentTaxonCsid + " childTaxonCsid=" + childTaxonCsid);
 
-						logger.debug("updateAccessCode complete: numAffected=" + results.getNumAffected());
-					}
-					catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.accessCodeWithNewChild(parentTaxonCsid, childTaxonCsid));
 				}
 			}
 			else if (event.getName().equals(DocumentEventTypes.ABOUT_TO_REMOVE)) {
@@ -305,16 +259,9 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 				String parentTaxonCsid = (String) context.getProperty(DELETED_RELATION_PARENT_CSID_PROPERTY_NAME);
 
 				if (StringUtils.isNotEmpty(parentTaxonCsid)) {
-					logger.debug("child removed, updating parent taxon: parentTaxonCsid=" + parentTaxonCsid);
-
-					try {
-						InvocationResults results = createUpdater(context).updateAccessCode(parentTaxonCsid, false);
+					logger.debug("child removed, queueing parent taxon: parentTaxonCsid=" + parentTaxonCsid);
 
-						logger.debug("updateAccessCode complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					}
-					catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.accessCode(parentTaxonCsid, false));
 				}
 			}
 		}
@@ -362,20 +309,6 @@ public class UpdateAccessCodeListener extends AbstractCSEventSyncListenerImpl {
 		return addedTaxonNameSet;
 	}
 
-	private UpdateAccessCodeBatchJob createUpdater(DocumentEventContext context) throws Exception {
-		ResourceMap resourceMap = ResteasyProviderFactory.getContextData(ResourceMap.class);
-		BatchResource batchResource = (BatchResource) resourceMap.get(BatchClient.SERVICE_NAME);
-		ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext = batchResource.createServiceContext(batchResource.getServiceName());
-
-		serviceContext.setCurrentRepositorySession(new CoreSessionWrapper(context.getCoreSession()));
-
-		UpdateAccessCodeBatchJob updater = new UpdateAccessCodeBatchJob();
-		updater.setServiceContext(serviceContext);
-		updater.setResourceMap(resourceMap);
-
-		return updater;
-	}
-	
 	@Override
 	public Logger getLogger() {
 		return logger;
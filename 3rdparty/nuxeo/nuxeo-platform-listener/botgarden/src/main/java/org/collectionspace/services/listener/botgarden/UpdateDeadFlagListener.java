@@ -3,24 +3,13 @@ package org.collectionspace.services.listener.botgarden;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.collectionspace.services.batch.BatchResource;
-import org.collectionspace.services.batch.nuxeo.UpdateDeadFlagBatchJob;
-import org.collectionspace.services.client.BatchClient;
-import org.collectionspace.services.client.PoxPayloadIn;
-import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectConstants;
-import org.collectionspace.services.common.ResourceMap;
-import org.collectionspace.services.common.context.ServiceContext;
-import org.collectionspace.services.common.invocable.InvocationResults;
 import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
 import org.collectionspace.services.movement.nuxeo.MovementBotGardenConstants;
 import org.collectionspace.services.movement.nuxeo.MovementConstants;
-import org.collectionspace.services.nuxeo.client.java.CoreSessionWrapper;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
 
-import org.jboss.resteasy.spi.ResteasyProviderFactory;
-
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.event.Event;
@@ -37,6 +26,7 @@ public class UpdateDeadFlagListener extends AbstractCSEventSyncListenerImpl {
 
 	/*
 	 * Set the dead flag and dead date on collectionobjects related to a new or modified movement record.
+	 * The updates are queued (see RecomputeQueue), and made after the save commits.
 	 */
 	@Override
 	public void handleCSEvent(Event event) {
@@ -64,13 +54,7 @@ public class UpdateDeadFlagListener extends AbstractCSEventSyncListenerImpl {
 					String movementCsid = (String) doc.getProperty(RelationConstants.SUBJECT_CSID_SCHEMA_NAME, RelationConstants.SUBJECT_CSID_FIELD_NAME);
 					String collectionObjectCsid = (String) doc.getProperty(RelationConstants.OBJECT_CSID_SCHEMA_NAME, RelationConstants.OBJECT_CSID_FIELD_NAME);
 
-					try {
-						InvocationResults results = createUpdater(context).updateDeadFlag(collectionObjectCsid, movementCsid);
-
-						logger.debug("updateDeadFlag complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					} catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.deadFlag(collectionObjectCsid, movementCsid));
 				}
 			}
 		}
@@ -92,32 +76,12 @@ public class UpdateDeadFlagListener extends AbstractCSEventSyncListenerImpl {
 				if (actionCode != null && (actionCode.equals(MovementBotGardenConstants.DEAD_ACTION_CODE) || actionCode.equals(MovementBotGardenConstants.REVIVED_ACTION_CODE))) {
 					String movementCsid = doc.getName();
 
-					try {
-						InvocationResults results = createUpdater(context).updateRelatedDeadFlags(movementCsid);
-
-						logger.debug("updateRelatedDeadFlags complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					} catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.relatedDeadFlags(movementCsid));
 				}
 			}
 		}
 		}
 
-	private UpdateDeadFlagBatchJob createUpdater(DocumentEventContext context) throws Exception {
-		ResourceMap resourceMap = ResteasyProviderFactory.getContextData(ResourceMap.class);
-		BatchResource batchResource = (BatchResource) resourceMap.get(BatchClient.SERVICE_NAME);
-		ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext = batchResource.createServiceContext(batchResource.getServiceName());
-
-		serviceContext.setCurrentRepositorySession(new CoreSessionWrapper(context.getCoreSession()));
-
-		UpdateDeadFlagBatchJob updater = new UpdateDeadFlagBatchJob();
-		updater.setServiceContext(serviceContext);
-		updater.setResourceMap(resourceMap);
-
-		return updater;
-	}
-	
 	@Override
 	public Logger getLogger() {
 		return logger;
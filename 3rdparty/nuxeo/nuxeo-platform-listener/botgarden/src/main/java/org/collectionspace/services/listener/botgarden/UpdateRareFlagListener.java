@@ -6,25 +6,15 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.collectionspace.services.batch.BatchResource;
 import org.collectionspace.services.batch.nuxeo.UpdateRareFlagBatchJob;
-import org.collectionspace.services.client.BatchClient;
-import org.collectionspace.services.client.PoxPayloadIn;
-import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectBotGardenConstants;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectConstants;
-import org.collectionspace.services.common.ResourceMap;
-import org.collectionspace.services.common.context.ServiceContext;
-import org.collectionspace.services.common.invocable.InvocationResults;
-import org.collectionspace.services.nuxeo.client.java.CoreSessionWrapper;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonBotGardenConstants;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonConstants;
 import org.collectionspace.services.taxonomy.nuxeo.TaxonomyAuthorityConstants;
 
-import org.jboss.resteasy.spi.ResteasyProviderFactory;
-
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -34,8 +24,10 @@ import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
 
 /**
  * A listener that updates the rare flag on collectionobjects when collectionobjects
- * are created or modified, and when taxon records are modified.
+ * are created or modified, and when taxon records are modified. The updates are queued,
+ * and made after the save commits.
  *
+ * @see RecomputeQueue
  * @see org.collectionspace.services.batch.nuxeo.UpdateRareFlagBatchJob
  * @author ray
  *
@@ -114,13 +106,7 @@ public class UpdateRareFlagListener extends AbstractCSEventSyncListenerImpl {
 				if (updateRequired) {
 					String collectionObjectCsid = doc.getName();
 
-					try {
-						InvocationResults results = createUpdater(context).updateRareFlag(collectionObjectCsid);
-
-						logger.debug("updateRareFlag complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					} catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.rareFlag(collectionObjectCsid));
 				}
 			}
 		}
@@ -164,13 +150,7 @@ public class UpdateRareFlagListener extends AbstractCSEventSyncListenerImpl {
 					String taxonCsid = doc.getName();
 					String vocabularyCsid = (String) doc.getProperty(TaxonConstants.IN_AUTHORITY_SCHEMA_NAME, TaxonConstants.IN_AUTHORITY_FIELD_NAME);
 
-					try {
-						InvocationResults results = createUpdater(context).updateReferencingRareFlags(taxonCsid, vocabularyCsid);
-
-						logger.debug("updateReferencingRareFlags complete: numAffected=" + results.getNumAffected() + " userNote=" + results.getUserNote());
-					} catch (Exception e) {
-						logger.error(e.getMessage(), e);
-					}
+					RecomputeQueue.getInstance().addAfterCommit(RecomputeQueue.referencingRareFlags(taxonCsid, vocabularyCsid));
 				}
 			}
 		}
@@ -204,20 +184,6 @@ public class UpdateRareFlagListener extends AbstractCSEventSyncListenerImpl {
 		return hasRareConservationCategory;
 	}
 
-	private UpdateRareFlagBatchJob createUpdater(DocumentEventContext context) throws Exception {
-		ResourceMap resourceMap = ResteasyProviderFactory.getContextData(ResourceMap.class);
-		BatchResource batchResource = (BatchResource) resourceMap.get(BatchClient.SERVICE_NAME);
-		ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext = batchResource.createServiceContext(batchResource.getServiceName());
-
-		serviceContext.setCurrentRepositorySession(new CoreSessionWrapper(context.getCoreSession()));
-
-		UpdateRareFlagBatchJob updater = new UpdateRareFlagBatchJob();
-		updater.setServiceContext(serviceContext);
-		updater.setResourceMap(resourceMap);
-
-		return updater;
-	}
-	
 	@Override
 	public Logger getLogger() {
 		return logger;
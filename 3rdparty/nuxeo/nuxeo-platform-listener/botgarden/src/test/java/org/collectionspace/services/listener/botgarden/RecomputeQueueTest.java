@@ -0,0 +1,236 @@
+package org.collectionspace.services.listener.botgarden;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.UserTransaction;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.listener.botgarden.RecomputeQueue.Kind;
+import org.collectionspace.services.listener.botgarden.RecomputeQueue.Task;
+import org.nuxeo.runtime.jtajca.NuxeoContainer;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks when RecomputeQueue queues tasks, how it coalesces them, and the order it runs them in.  The worker
+ * isn't started: the tests take the queued tasks themselves.
+ */
+public class RecomputeQueueTest {
+    private static final String TENANT_ID = "1";
+
+    private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+    private int status = Status.STATUS_NO_TRANSACTION;
+    private int workerStarts = 0;
+    private Object previousUserTransaction;
+    private Object previousTransactionManager;
+
+    private final RecomputeQueue queue = new RecomputeQueue() {
+        @Override
+        void startWorker() {
+            workerStarts++;
+        }
+    };
+
+    /*
+     * Stands in for the transaction that TransactionHelper looks up, and keeps the synchronizations registered with it.
+     */
+    @BeforeMethod
+    public void setUp() throws Exception {
+        synchronizations.clear();
+        status = Status.STATUS_NO_TRANSACTION;
+        workerStarts = 0;
+        while (queue.takeTasks().isEmpty() == false) {
+            // Like the worker, take tasks until there are none, which leaves the queue without a worker
+        }
+
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getStatus")) {
+                    return status;
+                } else if (name.equals("getTransaction")) {
+                    return proxy(Transaction.class, this);
+                } else if (name.equals("registerSynchronization")) {
+                    synchronizations.add((Synchronization) args[0]);
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        };
+
+        previousUserTransaction = setContainerField("ut", proxy(UserTransaction.class, handler));
+        previousTransactionManager = setContainerField("tm", proxy(TransactionManager.class, handler));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        setContainerField("ut", previousUserTransaction);
+        setContainerField("tm", previousTransactionManager);
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(RecomputeQueueTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object setContainerField(String name, Object value) throws Exception {
+        Field field = NuxeoContainer.class.getDeclaredField(name);
+        field.setAccessible(true);
+        Object result = field.get(null);
+        field.set(null, value);
+        return result;
+    }
+
+    private static Task task(Kind kind, String target, String detail, boolean knownAlive) {
+        return task(TENANT_ID, kind, target, detail, knownAlive, null);
+    }
+
+    private static Task task(String tenantId, Kind kind, String target, String detail, boolean knownAlive,
+            SecurityContext securityContext) {
+        return new Task(tenantId, kind, target, detail, knownAlive, securityContext, null);
+    }
+
+    private static List<String> targets(List<Task> tasks) {
+        List<String> result = new ArrayList<String>();
+        for (Task task : tasks) {
+            result.add(task.getTarget());
+        }
+        return result;
+    }
+
+    @Test
+    public void testTasksAreQueuedWhenTheTransactionCommits() {
+        status = Status.STATUS_ACTIVE;
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "a", null, false));
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "b", null, false));
+
+        assertEquals(synchronizations.size(), 1, "The tasks of a transaction should be queued together");
+        assertEquals(workerStarts, 0);
+
+        synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+
+        assertEquals(workerStarts, 1);
+        assertEquals(targets(queue.takeTasks()), Arrays.asList("a", "b"));
+    }
+
+    @Test
+    public void testTasksAreDroppedWhenTheTransactionRollsBack() {
+        status = Status.STATUS_ACTIVE;
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "a", null, false));
+        synchronizations.get(0).afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertEquals(workerStarts, 0);
+        assertTrue(queue.takeTasks().isEmpty());
+
+        // The next transaction starts with no tasks
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "b", null, false));
+        assertEquals(synchronizations.size(), 2);
+        synchronizations.get(1).afterCompletion(Status.STATUS_COMMITTED);
+
+        assertEquals(targets(queue.takeTasks()), Arrays.asList("b"));
+    }
+
+    @Test
+    public void testTasksAreQueuedAtOnceWithoutATransaction() {
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "a", null, false));
+
+        assertTrue(synchronizations.isEmpty());
+        assertEquals(workerStarts, 1);
+        assertEquals(targets(queue.takeTasks()), Arrays.asList("a"));
+    }
+
+    @Test
+    public void testTasksWithTheSameKeyAreCoalesced() {
+        queue.addAfterCommit(task(Kind.ACCESS_CODE, "taxon", null, false));
+        queue.addAfterCommit(task(Kind.ACCESS_CODE, "taxon", null, false));
+        queue.addAfterCommit(task("2", Kind.ACCESS_CODE, "taxon", null, false, null));
+        queue.addAfterCommit(task(Kind.PARENT_ACCESS_CODE, "taxon", null, false));
+        queue.addAfterCommit(task(Kind.DEAD_FLAG, "object", "movement1", false));
+        queue.addAfterCommit(task(Kind.DEAD_FLAG, "object", "movement1", false));
+        queue.addAfterCommit(task(Kind.DEAD_FLAG, "object", "movement2", false));
+
+        assertEquals(workerStarts, 1, "One worker should run all the queued tasks");
+
+        List<Task> tasks = queue.takeTasks();
+        assertEquals(tasks.size(), 5, tasks.toString());
+        assertEquals(tasks.get(0).getDetail(), "movement1");
+        assertEquals(tasks.get(1).getDetail(), "movement2", "A dead flag should be recomputed for each movement");
+    }
+
+    @Test
+    public void testAccessCodeMergeKeepsOnlySharedHints() {
+        SecurityContext earlier = new SecurityContextImpl();
+        SecurityContext later = new SecurityContextImpl();
+
+        Task task = task(TENANT_ID, Kind.ACCESS_CODE, "taxon", "child", true, earlier);
+        task.merge(task(TENANT_ID, Kind.ACCESS_CODE, "taxon", "child", true, later));
+        assertTrue(task.isKnownAlive());
+        assertEquals(task.getDetail(), "child");
+        assertSame(task.getSecurityContext(), later, "The later task's security context should be used");
+
+        task.merge(task(Kind.ACCESS_CODE, "taxon", "child", false));
+        assertFalse(task.isKnownAlive(), "A hint should only be kept if both tasks have it");
+        assertEquals(task.getDetail(), "child");
+
+        task.merge(task(Kind.ACCESS_CODE, "taxon", "otherChild", true));
+        assertFalse(task.isKnownAlive());
+        assertNull(task.getDetail(), "Different new children should leave the access code to be computed in full");
+
+        Task withChild = task(Kind.ACCESS_CODE, "taxon", "child", false);
+        withChild.merge(task(Kind.ACCESS_CODE, "taxon", null, false));
+        assertNull(withChild.getDetail());
+    }
+
+    @Test
+    public void testOtherKindsKeepTheLatestDetail() {
+        Task task = task(Kind.REFERENCING_RARE_FLAGS, "taxon", "vocabulary1", false);
+        task.merge(task(Kind.REFERENCING_RARE_FLAGS, "taxon", "vocabulary2", false));
+        assertEquals(task.getDetail(), "vocabulary2");
+
+        task.merge(task(Kind.REFERENCING_RARE_FLAGS, "taxon", null, false));
+        assertEquals(task.getDetail(), "vocabulary2");
+    }
+
+    @Test
+    public void testTasksAreTakenInKindOrder() {
+        List<Kind> kinds = new ArrayList<Kind>(Arrays.asList(Kind.values()));
+        for (int i = kinds.size() - 1; i >= 0; i--) {
+            queue.addAfterCommit(task(kinds.get(i), "target", "detail", false));
+        }
+
+        List<Kind> takenKinds = new ArrayList<Kind>();
+        for (Task task : queue.takeTasks()) {
+            takenKinds.add(task.getKind());
+        }
+        assertEquals(takenKinds, kinds, "Dead flags should be computed before the rare flags and access codes that depend on them");
+    }
+
+    @Test
+    public void testWorkerIsStartedAgainOnceTheQueueIsDrained() {
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "a", null, false));
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "b", null, false));
+        assertEquals(workerStarts, 1);
+
+        queue.takeTasks();
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "c", null, false));
+        assertEquals(workerStarts, 1, "The running worker should take the tasks added while it runs");
+
+        assertTrue(queue.takeTasks().size() == 1 && queue.takeTasks().isEmpty());
+        queue.addAfterCommit(task(Kind.RARE_FLAG, "d", null, false));
+        assertEquals(workerStarts, 2, "A new worker should be started once the last one has finished");
+    }
+}
@@ -0,0 +1,90 @@
+package org.collectionspace.services.listener;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.collectionspace.services.common.relation.HierarchyClosure;
+import org.collectionspace.services.common.relation.HierarchyClosure.Edge;
+import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.LifeCycleConstants;
+import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+
+/**
+ * Keeps the hierarchy closure (see HierarchyClosure) up to date as hasBroader relations change.
+ *
+ * Every change to a relation record goes through this listener, however it is made: through the
+ * relations service, or by a batch job or import.  The edge recorded by the relation before and
+ * after the change is passed to the closure, which applies the difference once the transaction
+ * commits.  The one exception is the UpdateRelationsOnDelete cascade when a term is soft deleted,
+ * which raises no events for the relations, and passes their edges to the closure itself.
+ */
+public class UpdateHierarchyClosure extends AbstractCSEventSyncListenerImpl {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateHierarchyClosure.class);
+
+    final static String RELATION_DOCTYPE = "Relation";
+    final static String COLLECTIONSPACE_CORE_SCHEMA = "collectionspace_core";
+    final static String TENANT_ID_FIELD = "tenantId";
+
+    @Override
+    public boolean shouldHandleEvent(Event event) {
+        EventContext eventContext = event.getContext();
+
+        if (eventContext instanceof DocumentEventContext) {
+            DocumentModel docModel = ((DocumentEventContext) eventContext).getSourceDocument();
+            return docModel != null && docModel.isProxy() == false && docModel.isVersion() == false
+                    && docModel.getType().startsWith(RELATION_DOCTYPE);
+        }
+
+        return false;
+    }
+
+    @Override
+    public void handleCSEvent(Event event) {
+        DocumentEventContext docContext = (DocumentEventContext) event.getContext();
+        DocumentModel docModel = docContext.getSourceDocument();
+        String eventName = event.getName();
+        Edge before = null;
+        Edge after = null;
+
+        if (DocumentEventTypes.DOCUMENT_CREATED.equals(eventName)) {
+            after = Edge.fromRelation(docModel);
+        } else if (DocumentEventTypes.BEFORE_DOC_UPDATE.equals(eventName)) {
+            // The stored copy still has the values from before the update
+            CoreSession session = docContext.getCoreSession();
+            before = Edge.fromRelation(session.getDocument(docModel.getRef()));
+            after = Edge.fromRelation(docModel);
+        } else if (LifeCycleConstants.TRANSITION_EVENT.equals(eventName)) {
+            Map<String, Serializable> properties = docContext.getProperties();
+            before = Edge.fromRelation(docModel, (String) properties.get(LifeCycleConstants.TRANSTION_EVENT_OPTION_FROM));
+            after = Edge.fromRelation(docModel, (String) properties.get(LifeCycleConstants.TRANSTION_EVENT_OPTION_TO));
+        } else if (DocumentEventTypes.ABOUT_TO_REMOVE.equals(eventName)) {
+            before = Edge.fromRelation(docModel);
+        }
+
+        if (before != null || after != null) {
+            String tenantId = (String) docModel.getProperty(COLLECTIONSPACE_CORE_SCHEMA, TENANT_ID_FIELD);
+            relationChanged(docContext.getRepositoryName(), tenantId, before, after);
+        }
+    }
+
+    /*
+     * Passes a changed edge to the closure.  Either edge may be null.
+     */
+    protected void relationChanged(String repositoryName, String tenantId, Edge before, Edge after) {
+        HierarchyClosure.getInstance().relationChangedAfterCommit(repositoryName, tenantId, before, after);
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+}
@@ -1,105 +1,278 @@
 package org.collectionspace.services.listener;
 
+import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.IllegalFormatException;
 import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.collectionspace.services.client.workflow.WorkflowClient;
-import org.collectionspace.services.common.document.DocumentException;
-import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
-import org.collectionspace.services.nuxeo.client.java.CoreSessionWrapper;
+import org.collectionspace.services.common.relation.HierarchyClosure;
+import org.collectionspace.services.common.relation.HierarchyClosure.Edge;
+import org.collectionspace.services.common.storage.CsidDirectory;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
 
+import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
-import org.nuxeo.ecm.core.api.DocumentModelList;
-import org.nuxeo.ecm.core.api.impl.LifeCycleFilter;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.model.Document;
+import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.elasticsearch.ElasticSearchComponent;
+import org.nuxeo.elasticsearch.api.ElasticSearchService;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 
+/**
+ * Soft deletes the relations of a record when the record is soft deleted.
+ *
+ * The relations are found with a projection query, and their lifecycle state is changed in the record's own
+ * session, without following the delete transition on each of them. The changed rows are written with the
+ * record's when the session is saved, and are committed or rolled back with it; Nuxeo invalidates just those
+ * rows in other sessions. If the relations can't be soft deleted, the transaction is marked for rollback, so
+ * the record isn't left deleted with live relations, and the delete can simply be retried.
+ *
+ * Since no lifecycle events are raised for the relations, the listeners that would handle them are stood in
+ * for here, once the transaction commits: the removed edges are passed to the hierarchy closure (see
+ * UpdateHierarchyClosure), the relations' new state is recorded in the CSID directory, and, when Elasticsearch
+ * is enabled, the relations and the collectionobjects at their other ends are reindexed (see Reindex). The
+ * relations' deletion isn't audited.
+ */
 public class UpdateRelationsOnDelete extends AbstractCSEventSyncListenerImpl {
 
     // FIXME: We might experiment here with using log4j instead of Apache Commons Logging;
     // am using the latter to follow Ray's pattern for now
     private static final Logger logger = LoggerFactory.getLogger(UpdateRelationsOnDelete.class);
-    
+
     // FIXME: Get these constant values from external sources rather than redeclaring here
     final static String RELATION_DOCTYPE = "Relation";
     final static String RELATIONS_COMMON_SUBJECT_CSID_FIELD = "relations_common:subjectCsid";
     final static String RELATIONS_COMMON_OBJECT_CSID_FIELD = "relations_common:objectCsid";
+    final static String RELATIONS_COMMON_RELATIONSHIP_TYPE_FIELD = "relations_common:relationshipType";
+    final static String RELATIONS_COMMON_SUBJECT_DOCTYPE_FIELD = "relations_common:subjectDocumentType";
+    final static String RELATIONS_COMMON_OBJECT_DOCTYPE_FIELD = "relations_common:objectDocumentType";
+    final static String COLLECTIONSPACE_CORE_SCHEMA = "collectionspace_core";
+    final static String TENANT_ID_FIELD = "tenantId";
+    final static String COLLECTIONOBJECT_DOCTYPE = "CollectionObject";
+    final static String ELASTICSEARCH_ENABLED_PROP = "elasticsearch.enabled";
+
+    // Only relations in this state have a delete transition. Relations that are locked, replicated,
+    // or already soft deleted are left alone.
+    final static String WORKFLOW_STATE_TO_DELETE = WorkflowClient.WORKFLOWSTATE_PROJECT;
+
+    // The most IDs to put into one query
+    final static int IDS_PER_QUERY = 500;
 
     @Override
 	public boolean shouldHandleEvent(Event event) {
         EventContext eventContext = event.getContext();
 
-        // Event must be a soft-delete event
-        if (isDocumentSoftDeletedEvent(eventContext)) {
-        	return true;
-        }
-        
         // Exclude soft deletion events involving Relation records themselves
-        // from handling by this event handler.
-        DocumentEventContext docContext = (DocumentEventContext) eventContext;
-        DocumentModel docModel = docContext.getSourceDocument();
-        if (docModel != null && docModel.getType().startsWith(RELATION_DOCTYPE)) {
-            return false;
+        // from handling by this event handler. (Relations are never the
+        // subject or object of other relations.)
+        if (eventContext instanceof DocumentEventContext) {
+            DocumentModel docModel = ((DocumentEventContext) eventContext).getSourceDocument();
+            if (docModel != null && docModel.getType().startsWith(RELATION_DOCTYPE)) {
+                return false;
+            }
         }
-        
-        return false;
+
+        // Event must be a soft-delete event
+        return isDocumentSoftDeletedEvent(eventContext);
     }
-    
+
     @Override
-    public void handleCSEvent(Event event) {        
+    public void handleCSEvent(Event event) {
         EventContext eventContext = event.getContext();
         DocumentEventContext docContext = (DocumentEventContext) eventContext;
         DocumentModel docModel = docContext.getSourceDocument();
-        
-        // Retrieve a list of relation records, where the soft deleted
-        // document provided in the context of the current event is
-        // either the subject or object of any relation        
-        String csid = docModel.getName();
-        String queryString;
+        CoreSession session = docContext.getCoreSession();
+        String repositoryName = docContext.getRepositoryName();
+        String tenantId = (String) docModel.getProperty(COLLECTIONSPACE_CORE_SCHEMA, TENANT_ID_FIELD);
+
+        // Find the relation records where the soft deleted document provided
+        // in the context of the current event is either the subject or object,
+        // and which can still be soft deleted. Only the fields needed to
+        // maintain the hierarchy closure and the indexes are fetched.
+        String csid = NXQL.escapeString(docModel.getName());
+        String queryString = String.format("SELECT %1$s, %2$s, %3$s, %4$s, %5$s, %6$s, %7$s FROM %8$s WHERE ecm:isProxy = 0"
+                + " AND (%4$s = %9$s OR %5$s = %9$s) AND ecm:currentLifeCycleState = %10$s",
+                NXQL.ECM_UUID, NXQL.ECM_NAME, RELATIONS_COMMON_RELATIONSHIP_TYPE_FIELD, RELATIONS_COMMON_SUBJECT_CSID_FIELD,
+                RELATIONS_COMMON_OBJECT_CSID_FIELD, RELATIONS_COMMON_SUBJECT_DOCTYPE_FIELD, RELATIONS_COMMON_OBJECT_DOCTYPE_FIELD,
+                RELATION_DOCTYPE, csid, NXQL.escapeString(WORKFLOW_STATE_TO_DELETE));
+        logger.trace("Query string=" + queryString);
+
+        List<String> relationIds = new ArrayList<String>();
+        List<String> relationCsids = new ArrayList<String>();
+        List<Edge> edges = new ArrayList<Edge>();
+        List<String> collectionObjectCsids = new ArrayList<String>();
+        IterableQueryResult result = null;
         try {
-            queryString =
-                String.format("SELECT * FROM Relation WHERE ecm:isProxy = 0 AND (%1$s='%3$s' OR %2$s='%3$s')",
-                RELATIONS_COMMON_SUBJECT_CSID_FIELD, RELATIONS_COMMON_OBJECT_CSID_FIELD, csid);
-            logger.trace("Query string=" + queryString);
-        } catch (IllegalFormatException ife) {
-            logger.warn("Construction of formatted query string failed: ", ife);
-            logger.warn("Actions in this event listener will NOT be performed, as a result of a previous Exception.");
+            result = session.queryAndFetch(queryString, NXQL.NXQL);
+            for (Map<String, Serializable> row : result) {
+                String subjectCsid = (String) row.get(RELATIONS_COMMON_SUBJECT_CSID_FIELD);
+                String objectCsid = (String) row.get(RELATIONS_COMMON_OBJECT_CSID_FIELD);
+                String subjectDocType = (String) row.get(RELATIONS_COMMON_SUBJECT_DOCTYPE_FIELD);
+
+                relationIds.add((String) row.get(NXQL.ECM_UUID));
+                relationCsids.add((String) row.get(NXQL.ECM_NAME));
+
+                Edge edge = Edge.fromRelationFields((String) row.get(RELATIONS_COMMON_RELATIONSHIP_TYPE_FIELD),
+                        subjectCsid, objectCsid, subjectDocType);
+                if (edge != null) {
+                    edges.add(edge);
+                }
+
+                // A collectionobject's index includes fields of the records it's related to
+                if (docModel.getName().equals(subjectCsid)) {
+                    if (COLLECTIONOBJECT_DOCTYPE.equals(row.get(RELATIONS_COMMON_OBJECT_DOCTYPE_FIELD))) {
+                        collectionObjectCsids.add(objectCsid);
+                    }
+                } else if (COLLECTIONOBJECT_DOCTYPE.equals(subjectDocType)) {
+                    collectionObjectCsids.add(subjectCsid);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error attempting to retrieve relation records where "
+                    + "record of type '" + docModel.getType() + "' with CSID " + docModel.getName()
+                    + " is the subject or object of any relation: " + e.getMessage());
+            setRollbackOnly();
+            return;
+        } finally {
+            if (result != null) {
+                result.close();
+            }
+        }
+
+        if (relationIds.isEmpty()) {
             return;
         }
-        
-        // Create a filter to exclude from the list results any records
-        // that have already been soft deleted or are locked
-        List<String> workflowStatesToFilter = new ArrayList<String>();
-        workflowStatesToFilter.add(WorkflowClient.WORKFLOWSTATE_DELETED);
-        workflowStatesToFilter.add(WorkflowClient.WORKFLOWSTATE_LOCKED);
-        workflowStatesToFilter.add(WorkflowClient.WORKFLOWSTATE_LOCKED_DELETED);
-        workflowStatesToFilter.add(WorkflowClient.WORKFLOWSTATE_REPLICATED_DELETED);
-        
-        LifeCycleFilter workflowStateFilter = new LifeCycleFilter(null, workflowStatesToFilter);
-        
-        // Perform the filtered query
-        CoreSessionInterface session = new CoreSessionWrapper(docModel.getCoreSession());
-        DocumentModelList matchingDocuments;
+
+        logger.debug("Soft deleting " + relationIds.size() + " relation records pertaining to a soft deleted record.");
         try {
-            matchingDocuments = session.query(queryString.toString(), workflowStateFilter);
-        } catch (DocumentException ce) {
-            logger.error("Error attempting to retrieve relation records where "
-                    + "record of type '" + docModel.getType() + "' with CSID " + csid
-                    + " is the subject or object of any relation: " + ce.getMessage());
+            softDelete(session, relationIds);
+        } catch (Exception e) {
+            logger.error(String.format("Failed to soft delete %d relation records pertaining to the soft deleted record with CSID %s;"
+                    + " the transaction will be rolled back: %s", relationIds.size(), docModel.getName(), e.getMessage()), e);
+            setRollbackOnly();
             return;
         }
 
-        // Cycle through the list results, soft deleting each matching relation record
-        logger.info("Attempting to soft delete " + matchingDocuments.size() + " relation records pertaining to a soft deleted record.");
-        for (DocumentModel doc : matchingDocuments) {
-            doc.followTransition(WorkflowClient.WORKFLOWTRANSITION_DELETE);
+        // These are all applied once the transaction commits, and dropped if it rolls back
+        for (Edge edge : edges) {
+            relationChanged(repositoryName, tenantId, edge, null);
         }
+        workflowStateChanged(tenantId, relationCsids);
+        reindexAfterCommit(repositoryName, relationIds, collectionObjectCsids);
+    }
+
+    /*
+     * Moves the relations from the project state to the deleted state in the given session.  The low-level
+     * documents are changed directly, so that no transition is followed and no event is raised; the session
+     * writes the changed rows together when it's saved.  Relations that have left the project state since
+     * they were queried are left alone.
+     */
+    protected void softDelete(CoreSession session, List<String> relationIds) {
+        Session lowLevelSession = ((AbstractSession) session).getSession();
+        for (int start = 0; start < relationIds.size(); start += IDS_PER_QUERY) {
+            List<String> chunk = relationIds.subList(start, Math.min(start + IDS_PER_QUERY, relationIds.size()));
+            List<Document> relations = lowLevelSession.query(getIdQuery("SELECT * FROM " + RELATION_DOCTYPE, NXQL.ECM_UUID, chunk),
+                    NXQL.NXQL, QueryFilter.EMPTY, 0);
+            for (Document relation : relations) {
+                if (WORKFLOW_STATE_TO_DELETE.equals(relation.getLifeCycleState())) {
+                    relation.setCurrentLifeCycleState(WorkflowClient.WORKFLOWSTATE_DELETED);
+                }
+            }
+        }
+    }
+
+    /*
+     * An NXQL query that selects the documents whose field has one of the given values.
+     */
+    static String getIdQuery(String select, String field, List<String> values) {
+        StringBuilder list = new StringBuilder();
+        for (String value : values) {
+            list.append(list.length() > 0 ? ", " : "").append(NXQL.escapeString(value));
+        }
+        return select + " WHERE " + field + " IN (" + list + ")";
+    }
+
+    /*
+     * Passes the removal of an edge to the hierarchy closure, which applies it once the transaction commits.
+     */
+    protected void relationChanged(String repositoryName, String tenantId, Edge before, Edge after) {
+        HierarchyClosure.getInstance().relationChangedAfterCommit(repositoryName, tenantId, before, after);
+    }
+
+    /*
+     * Records the relations' new state in the CSID directory, once the transaction commits.
+     */
+    protected void workflowStateChanged(String tenantId, List<String> relationCsids) {
+        CsidDirectory directory = CsidDirectory.getInstance();
+        for (String relationCsid : relationCsids) {
+            directory.setWorkflowStateAfterCommit(tenantId, relationCsid, WorkflowClient.WORKFLOWSTATE_DELETED);
+        }
+    }
+
+    /*
+     * Reindexes the relations and the collectionobjects related by them in Elasticsearch, once the transaction
+     * commits.
+     */
+    protected void reindexAfterCommit(final String repositoryName, final List<String> relationIds,
+            final List<String> collectionObjectCsids) {
+        if (Framework.isBooleanPropertyTrue(ELASTICSEARCH_ENABLED_PROP) == false) {
+            return;
+        }
+
+        Synchronization reindex = new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // Nothing to do
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    reindex(repositoryName, "SELECT ecm:uuid FROM " + RELATION_DOCTYPE, NXQL.ECM_UUID, relationIds);
+                    reindex(repositoryName, "SELECT ecm:uuid FROM " + COLLECTIONOBJECT_DOCTYPE, NXQL.ECM_NAME, collectionObjectCsids);
+                }
+            }
+        };
+
+        if (TransactionHelper.isTransactionActive()) {
+            TransactionHelper.registerSynchronization(reindex);
+        } else {
+            reindex.afterCompletion(Status.STATUS_COMMITTED);
+        }
+    }
+
+    private void reindex(String repositoryName, String select, String field, List<String> values) {
+        try {
+            ElasticSearchComponent es = (ElasticSearchComponent) Framework.getService(ElasticSearchService.class);
+            for (int start = 0; start < values.size(); start += IDS_PER_QUERY) {
+                es.runReindexingWorker(repositoryName,
+                        getIdQuery(select, field, values.subList(start, Math.min(start + IDS_PER_QUERY, values.size()))));
+            }
+        } catch (Exception e) {
+            logger.error("Failed to reindex records related to a soft deleted record: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Marks the current transaction for rollback, so that the record's soft delete is undone with everything else.
+     */
+    protected void setRollbackOnly() {
+        TransactionHelper.setTransactionRollbackOnly();
     }
 
     @Override
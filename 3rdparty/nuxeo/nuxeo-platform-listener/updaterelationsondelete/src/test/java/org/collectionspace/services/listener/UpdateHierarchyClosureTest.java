@@ -0,0 +1,161 @@
+package org.collectionspace.services.listener;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.relation.HierarchyClosure.Edge;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.LifeCycleConstants;
+import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.event.impl.EventImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the edges that UpdateHierarchyClosure passes to the hierarchy closure for each kind of
+ * change to a relation.
+ */
+public class UpdateHierarchyClosureTest {
+    private static final String TENANT_ID = "1";
+    private static final String REPOSITORY_NAME = "default";
+
+    private final Map<DocumentRef, DocumentModel> storedDocs = new HashMap<DocumentRef, DocumentModel>();
+    private final List<Edge[]> changes = new ArrayList<Edge[]>();
+
+    private final UpdateHierarchyClosure listener = new UpdateHierarchyClosure() {
+        @Override
+        protected void relationChanged(String repositoryName, String tenantId, Edge before, Edge after) {
+            assertEquals(repositoryName, REPOSITORY_NAME);
+            assertEquals(tenantId, TENANT_ID);
+            changes.add(new Edge[] { before, after });
+        }
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        storedDocs.clear();
+        changes.clear();
+    }
+
+    private DocumentModel doc(final String id, final String type, final String lifeCycleState, String... properties) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < properties.length; i += 2) {
+            values.put("relations_common:" + properties[i], properties[i + 1]);
+        }
+        values.put("collectionspace_core:tenantId", TENANT_ID);
+
+        return (DocumentModel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DocumentModel.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getType")) {
+                            return type;
+                        } else if (name.equals("getCurrentLifeCycleState")) {
+                            return lifeCycleState;
+                        } else if (name.equals("getProperty")) {
+                            return values.get(args[0] + ":" + args[1]);
+                        } else if (name.equals("getRef")) {
+                            return new IdRef(id);
+                        } else if (name.equals("isProxy") || name.equals("isVersion")) {
+                            return false;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private DocumentModel relation(String id, String lifeCycleState, String child, String parent) {
+        return doc(id, "Relation", lifeCycleState, "relationshipType", "hasBroader", "subjectCsid", child, "objectCsid", parent,
+                "subjectDocumentType", "Placeitem");
+    }
+
+    private CoreSession session() {
+        return (CoreSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { CoreSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getRepositoryName")) {
+                            return REPOSITORY_NAME;
+                        } else if (name.equals("getDocument")) {
+                            return storedDocs.get(args[0]);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private void fire(String eventName, DocumentModel doc, String from, String to) {
+        DocumentEventContext ctx = new DocumentEventContext(session(), null, doc);
+        if (from != null) {
+            ctx.setProperty(LifeCycleConstants.TRANSTION_EVENT_OPTION_FROM, from);
+            ctx.setProperty(LifeCycleConstants.TRANSTION_EVENT_OPTION_TO, to);
+        }
+        Event event = new EventImpl(eventName, ctx);
+        if (listener.shouldHandleEvent(event)) {
+            listener.handleCSEvent(event);
+        }
+    }
+
+    private void assertChange(int index, Edge before, Edge after) {
+        assertEquals(changes.get(index)[0], before);
+        assertEquals(changes.get(index)[1], after);
+    }
+
+    @Test
+    public void testCreate() {
+        fire(DocumentEventTypes.DOCUMENT_CREATED, relation("r1", "project", "child", "parent"), null, null);
+        fire(DocumentEventTypes.DOCUMENT_CREATED, doc("r2", "Relation", "project", "relationshipType", "affects",
+                "subjectCsid", "a", "objectCsid", "b"), null, null);
+        fire(DocumentEventTypes.DOCUMENT_CREATED, doc("p1", "Placeitem", "project"), null, null);
+
+        assertEquals(changes.size(), 1, "Only a hasBroader relation changes the hierarchy");
+        assertChange(0, null, new Edge("child", "parent", "Placeitem"));
+        assertEquals(changes.get(0)[1].getChildDocType(), "Placeitem");
+    }
+
+    @Test
+    public void testUpdateMovesTheTerm() {
+        storedDocs.put(new IdRef("r1"), relation("r1", "project", "child", "oldParent"));
+
+        fire(DocumentEventTypes.BEFORE_DOC_UPDATE, relation("r1", "project", "child", "newParent"), null, null);
+
+        assertEquals(changes.size(), 1);
+        assertChange(0, new Edge("child", "oldParent", null), new Edge("child", "newParent", null));
+    }
+
+    @Test
+    public void testSoftDeleteAndUndelete() {
+        fire(LifeCycleConstants.TRANSITION_EVENT, relation("r1", "deleted", "child", "parent"), "project", "deleted");
+        fire(LifeCycleConstants.TRANSITION_EVENT, relation("r1", "project", "child", "parent"), "deleted", "project");
+        // Locking doesn't change the hierarchy
+        fire(LifeCycleConstants.TRANSITION_EVENT, relation("r1", "locked", "child", "parent"), "project", "locked");
+
+        assertEquals(changes.size(), 3);
+        assertChange(0, new Edge("child", "parent", null), null);
+        assertChange(1, null, new Edge("child", "parent", null));
+        assertEquals(changes.get(2)[0], changes.get(2)[1]);
+    }
+
+    @Test
+    public void testRemove() {
+        fire(DocumentEventTypes.ABOUT_TO_REMOVE, relation("r1", "project", "child", "parent"), null, null);
+        fire(DocumentEventTypes.ABOUT_TO_REMOVE, relation("r2", "deleted", "child2", "parent"), null, null);
+
+        assertEquals(changes.size(), 1, "A soft deleted relation is already out of the closure");
+        assertChange(0, new Edge("child", "parent", null), null);
+    }
+}
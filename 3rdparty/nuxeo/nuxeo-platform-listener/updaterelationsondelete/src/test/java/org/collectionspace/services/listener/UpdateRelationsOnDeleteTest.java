@@ -0,0 +1,240 @@
+package org.collectionspace.services.listener;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.relation.HierarchyClosure.Edge;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.event.impl.EventImpl;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that UpdateRelationsOnDelete soft deletes all of a record's relations at once, and stands in for
+ * the listeners of the events that aren't raised for them, only once they have been soft deleted.
+ */
+public class UpdateRelationsOnDeleteTest {
+    private static final String TENANT_ID = "1";
+    private static final String REPOSITORY_NAME = "default";
+
+    private final List<Map<String, Serializable>> rows = new ArrayList<Map<String, Serializable>>();
+    private final List<String> queries = new ArrayList<String>();
+    private final List<List<String>> softDeleted = new ArrayList<List<String>>();
+    private final List<Edge[]> changes = new ArrayList<Edge[]>();
+    private final List<String> directoryChanges = new ArrayList<String>();
+    private final List<List<String>> reindexed = new ArrayList<List<String>>();
+    private boolean failSoftDelete;
+    private boolean rolledBack;
+
+    private final UpdateRelationsOnDelete listener = new UpdateRelationsOnDelete() {
+        @Override
+        protected void relationChanged(String repositoryName, String tenantId, Edge before, Edge after) {
+            assertEquals(repositoryName, REPOSITORY_NAME);
+            assertEquals(tenantId, TENANT_ID);
+            changes.add(new Edge[] { before, after });
+        }
+
+        @Override
+        protected void softDelete(CoreSession session, List<String> relationIds) {
+            if (failSoftDelete) {
+                throw new IllegalStateException("Deadlock");
+            }
+            softDeleted.add(relationIds);
+        }
+
+        @Override
+        protected void workflowStateChanged(String tenantId, List<String> relationCsids) {
+            assertEquals(tenantId, TENANT_ID);
+            directoryChanges.addAll(relationCsids);
+        }
+
+        @Override
+        protected void reindexAfterCommit(String repositoryName, List<String> relationIds, List<String> collectionObjectCsids) {
+            assertEquals(repositoryName, REPOSITORY_NAME);
+            reindexed.add(relationIds);
+            reindexed.add(collectionObjectCsids);
+        }
+
+        @Override
+        protected void setRollbackOnly() {
+            rolledBack = true;
+        }
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        rows.clear();
+        queries.clear();
+        softDeleted.clear();
+        changes.clear();
+        directoryChanges.clear();
+        reindexed.clear();
+        failSoftDelete = false;
+        rolledBack = false;
+    }
+
+    private DocumentModel doc(final String csid, final String type) {
+        return (DocumentModel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DocumentModel.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getType")) {
+                            return type;
+                        } else if (name.equals("getName")) {
+                            return csid;
+                        } else if (name.equals("getProperty")) {
+                            return args[0].equals("collectionspace_core") && args[1].equals("tenantId") ? TENANT_ID : null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private void row(String id, String relationshipType, String subject, String object) {
+        row(id, relationshipType, subject, "Placeitem", object, "Placeitem");
+    }
+
+    private void row(String id, String relationshipType, String subject, String subjectType, String object, String objectType) {
+        Map<String, Serializable> row = new HashMap<String, Serializable>();
+        row.put(NXQL.ECM_UUID, id);
+        row.put(NXQL.ECM_NAME, "csid-" + id);
+        row.put("relations_common:relationshipType", relationshipType);
+        row.put("relations_common:subjectCsid", subject);
+        row.put("relations_common:objectCsid", object);
+        row.put("relations_common:subjectDocumentType", subjectType);
+        row.put("relations_common:objectDocumentType", objectType);
+        rows.add(row);
+    }
+
+    private IterableQueryResult result() {
+        return (IterableQueryResult) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IterableQueryResult.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("iterator")) {
+                            return rows.iterator();
+                        } else if (name.equals("close")) {
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private CoreSession session() {
+        return (CoreSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { CoreSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getRepositoryName")) {
+                            return REPOSITORY_NAME;
+                        } else if (name.equals("queryAndFetch")) {
+                            queries.add((String) args[0]);
+                            return result();
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private void softDelete(DocumentModel doc) {
+        DocumentEventContext ctx = new DocumentEventContext(session(), null, doc);
+        ctx.setProperty(WorkflowClient.WORKFLOWTRANSITION_TO, WorkflowClient.WORKFLOWSTATE_DELETED);
+        Event event = new EventImpl("lifecycle_transition_event", ctx);
+        if (listener.shouldHandleEvent(event)) {
+            listener.handleCSEvent(event);
+        }
+    }
+
+    @Test
+    public void testRelationsAreSoftDeletedTogether() {
+        row("r1", "hasBroader", "term", "parent");
+        row("r2", "hasBroader", "child", "term");
+        row("r3", "affects", "term", "object");
+
+        softDelete(doc("term", "Placeitem"));
+
+        assertEquals(queries.size(), 1);
+        assertTrue(queries.get(0).contains("ecm:currentLifeCycleState = 'project'"), queries.get(0));
+        assertEquals(softDeleted, Arrays.asList(Arrays.asList("r1", "r2", "r3")), "The relations should be soft deleted in one go");
+
+        assertEquals(changes.size(), 2, "Only hasBroader relations change the hierarchy");
+        assertEquals(changes.get(0)[0], new Edge("term", "parent", null));
+        assertNull(changes.get(0)[1]);
+        assertEquals(changes.get(1)[0], new Edge("child", "term", null));
+        assertNull(changes.get(1)[1]);
+
+        assertEquals(directoryChanges, Arrays.asList("csid-r1", "csid-r2", "csid-r3"));
+        assertEquals(reindexed.get(0), Arrays.asList("r1", "r2", "r3"));
+        assertFalse(rolledBack);
+    }
+
+    @Test
+    public void testRelatedCollectionObjectsAreReindexed() {
+        row("r1", "affects", "media", "Media", "object1", "CollectionObject");
+        row("r2", "affects", "object2", "CollectionObject", "media", "Media");
+        row("r3", "affects", "media", "Media", "place", "Placeitem");
+
+        softDelete(doc("media", "Media"));
+
+        assertEquals(reindexed, Arrays.asList(Arrays.asList("r1", "r2", "r3"), Arrays.asList("object1", "object2")));
+    }
+
+    @Test
+    public void testFailedSoftDeleteRollsBack() {
+        row("r1", "hasBroader", "term", "parent");
+        failSoftDelete = true;
+
+        softDelete(doc("term", "Placeitem"));
+
+        assertTrue(rolledBack, "The record's delete should be rolled back with its relations");
+        assertTrue(changes.isEmpty(), "The closure should be left alone");
+        assertTrue(directoryChanges.isEmpty());
+        assertTrue(reindexed.isEmpty());
+    }
+
+    @Test
+    public void testNoRelations() {
+        softDelete(doc("term", "Placeitem"));
+
+        assertEquals(queries.size(), 1);
+        assertTrue(softDeleted.isEmpty());
+        assertTrue(changes.isEmpty());
+        assertTrue(directoryChanges.isEmpty());
+        assertTrue(reindexed.isEmpty());
+    }
+
+    @Test
+    public void testRelationsAreSkipped() {
+        row("r1", "hasBroader", "term", "parent");
+
+        softDelete(doc("r9", "Relation"));
+
+        assertTrue(queries.isEmpty(), "A relation is never the subject or object of another");
+        assertTrue(softDeleted.isEmpty());
+    }
+
+    @Test
+    public void testIdQuery() {
+        assertEquals(UpdateRelationsOnDelete.getIdQuery("SELECT * FROM Relation", NXQL.ECM_UUID, Arrays.asList("a", "b'c")),
+                "SELECT * FROM Relation WHERE ecm:uuid IN ('a', 'b\\'c')");
+    }
+}
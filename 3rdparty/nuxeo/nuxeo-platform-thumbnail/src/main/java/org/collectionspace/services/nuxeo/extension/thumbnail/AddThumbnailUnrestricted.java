@@ -34,11 +34,23 @@ public class AddThumbnailUnrestricted extends UnrestrictedSessionRunner {
 
     protected Thumbnail thumbnail = null;
 
+    protected String converterName;
+
     public AddThumbnailUnrestricted(CoreSession coreSession, DocumentModel doc,
             BlobHolder blobHolder) {
+        this(coreSession, doc, blobHolder, ThumbnailConstants.THUMBNAIL_CONVERTER_NAME);
+    }
+
+    /*
+     * The converter is either our ImageMagick based one, or our in-JVM one.  If the in-JVM converter can't make
+     * a thumbnail (e.g., of a PDF), we fall back to the ImageMagick one.
+     */
+    public AddThumbnailUnrestricted(CoreSession coreSession, DocumentModel doc,
+            BlobHolder blobHolder, String converterName) {
         super(coreSession);
         this.doc = doc;
         this.blobHolder = blobHolder;
+        this.converterName = converterName;
     }
 
     /*
@@ -59,8 +71,13 @@ public class AddThumbnailUnrestricted extends UnrestrictedSessionRunner {
                 if (doc.hasFacet(ThumbnailConstants.THUMBNAIL_FACET) == false) { // Make sure we don't already have a "Thumbnail" facet
 	                cs = Framework.getService(ConversionService.class);
 	                ensureModificationDateExists(doc); // For some reason, the ConversionService service requires the modification date of the blob is not null so we need to ensure it is not null.
-	                BlobHolder thumbnailBlobHolder = cs.convert(ThumbnailConstants.THUMBNAIL_CONVERTER_NAME,
+	                BlobHolder thumbnailBlobHolder = cs.convert(converterName,
 	                        blobHolder, null /*no params*/);
+	                if ((thumbnailBlobHolder == null || thumbnailBlobHolder.getBlob() == null)
+	                		&& ThumbnailConstants.THUMBNAIL_CONVERTER_NAME.equals(converterName) == false) {
+	                	thumbnailBlobHolder = cs.convert(ThumbnailConstants.THUMBNAIL_CONVERTER_NAME,
+		                        blobHolder, null /*no params*/);
+	                }
 	                if (thumbnailBlobHolder != null && thumbnailBlobHolder.getBlob() != null) {
 	                    Blob thumbnailBlob = thumbnailBlobHolder.getBlob();
 	                	doc.addFacet(ThumbnailConstants.THUMBNAIL_FACET); // Add the "Thumbnail" facet since we were able to create a thumnail image
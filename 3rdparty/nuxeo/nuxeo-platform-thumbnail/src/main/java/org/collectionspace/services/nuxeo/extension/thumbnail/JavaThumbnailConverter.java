@@ -0,0 +1,70 @@
+package org.collectionspace.services.nuxeo.extension.thumbnail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.Derivative;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.DerivativeSpec;
+import org.collectionspace.services.nuxeo.util.ThumbnailConstants;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
+import org.nuxeo.runtime.api.Framework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Creates the same square, transparent-padded PNG thumbnail as ThumbnailConverter, but in the JVM with
+ * ImageDerivativeGenerator rather than with ImageMagick's "convert" command.  It only handles the image
+ * formats that ImageIO can read, and returns null for anything else (e.g., PDFs) so the caller can fall
+ * back to ThumbnailConverter.
+ */
+public class JavaThumbnailConverter implements Converter {
+	private static final Logger logger = LoggerFactory.getLogger(JavaThumbnailConverter.class);
+
+	@Override
+	public BlobHolder convert(BlobHolder blobHolder,
+			Map<String, Serializable> parameters) throws ConversionException {
+		Blob blob = blobHolder.getBlob();
+		if (blob == null || ImageDerivativeGenerator.canRead(blob.getMimeType()) == false) {
+			return null;
+		}
+
+		String size = ThumbnailConstants.THUMBNAIL_DEFAULT_SIZE;
+		if (parameters != null) {
+			if (parameters.containsKey(ThumbnailConstants.THUMBNAIL_SIZE_PARAMETER_NAME)) {
+				size = (String) parameters.get(ThumbnailConstants.THUMBNAIL_SIZE_PARAMETER_NAME);
+			}
+		}
+		DerivativeSpec thumbnailSpec = new DerivativeSpec(ThumbnailConstants.THUMBNAIL_FACET, Integer.parseInt(size),
+				ImageDerivativeGenerator.FORMAT_PNG, true);
+
+		try (CloseableFile inputFile = blob.getCloseableFile()) {
+			List<Derivative> derivatives = new ImageDerivativeGenerator().generate(inputFile.getFile(),
+					"nuxeoImageTarget" + UUID.randomUUID(), Arrays.asList(thumbnailSpec),
+					new File(System.getProperty("java.io.tmpdir")));
+			File outputFile = derivatives.get(0).getFile();
+			Blob targetBlob = new FileBlob(outputFile);
+			Framework.trackFile(outputFile, targetBlob);
+			return new SimpleCachableBlobHolder(targetBlob);
+		} catch (IOException e) {
+			logger.trace("Could not create a thumbnail image in the JVM", e);
+			throw new ConversionException("Thumbnail conversion has failed", e);
+		}
+	}
+
+	@Override
+	public void init(ConverterDescriptor descriptor) {
+	}
+}
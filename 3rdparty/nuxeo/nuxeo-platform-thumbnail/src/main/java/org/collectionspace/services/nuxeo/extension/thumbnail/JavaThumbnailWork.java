@@ -0,0 +1,58 @@
+package org.collectionspace.services.nuxeo.extension.thumbnail;
+
+import org.collectionspace.services.common.imaging.nuxeo.JavaPictureViewsWork;
+import org.collectionspace.services.nuxeo.util.ThumbnailConstants;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.work.AbstractWork;
+
+/*
+ * Creates a document's thumbnail in the JVM (see JavaThumbnailConverter), after the transaction that created or
+ * updated the document has committed, for tenants whose image derivatives are created in the JVM.  It runs on the
+ * same work queue as JavaPictureViewsWork, so the queue's threads bound all of the image work done in the JVM.
+ */
+public class JavaThumbnailWork extends AbstractWork {
+	private static final long serialVersionUID = 1L;
+
+	private static final String ID_SUFFIX = ":cspaceThumbnail";
+
+	public JavaThumbnailWork(String repositoryName, String docId) {
+		super(repositoryName + ':' + docId + ID_SUFFIX);
+		setDocument(repositoryName, docId);
+	}
+
+	@Override
+	public String getCategory() {
+		return JavaPictureViewsWork.CATEGORY;
+	}
+
+	@Override
+	public String getTitle() {
+		return "CollectionSpace thumbnail generation";
+	}
+
+	@Override
+	public void work() {
+		setStatus("Generating thumbnail");
+		openSystemSession();
+
+		DocumentRef docRef = new IdRef(docId);
+		if (session.exists(docRef) == false) {
+			setStatus("Nothing to process");
+			return;
+		}
+		DocumentModel doc = session.getDocument(docRef);
+		BlobHolder blobHolder = doc.getAdapter(BlobHolder.class);
+		if (blobHolder == null || blobHolder.getBlob() == null || doc.hasFacet(ThumbnailConstants.THUMBNAIL_FACET)) {
+			setStatus("Nothing to process");
+			return;
+		}
+
+		// Saving the thumbnail mustn't send the document back to UpdateThumbListener
+		doc.putContextData(ThumbnailConstants.DISABLE_THUMBNAIL_LISTENER, Boolean.TRUE);
+		new AddThumbnailUnrestricted(session, doc, blobHolder, ThumbnailConstants.THUMBNAIL_JAVA_CONVERTER_NAME).runUnrestricted();
+		setStatus("Done");
+	}
+}
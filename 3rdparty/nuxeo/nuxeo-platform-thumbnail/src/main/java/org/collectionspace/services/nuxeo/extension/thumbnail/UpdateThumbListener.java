@@ -3,6 +3,8 @@ package org.collectionspace.services.nuxeo.extension.thumbnail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.common.imaging.nuxeo.NuxeoBlobUtils;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventSyncListenerImpl;
 import org.collectionspace.services.nuxeo.util.ThumbnailConstants;
 
@@ -14,6 +16,8 @@ import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.api.Framework;
 
 public class UpdateThumbListener extends AbstractCSEventSyncListenerImpl {
     private static final Logger logger = LoggerFactory.getLogger(UpdateThumbListener.class);
@@ -22,7 +26,13 @@ public class UpdateThumbListener extends AbstractCSEventSyncListenerImpl {
 	public boolean shouldHandleEvent(Event event) {
         EventContext ec = event.getContext();
 
-        return ec instanceof DocumentEventContext;
+        if (ec instanceof DocumentEventContext) {
+            // Skip the save that JavaThumbnailWork makes to add the thumbnail
+            DocumentModel doc = ((DocumentEventContext) ec).getSourceDocument();
+            return doc != null && Boolean.TRUE.equals(doc.getContextData(ThumbnailConstants.DISABLE_THUMBNAIL_LISTENER)) == false;
+        }
+
+        return false;
     }
     
     public void handleCSEvent(Event event) throws ClientException {
@@ -35,6 +45,10 @@ public class UpdateThumbListener extends AbstractCSEventSyncListenerImpl {
                 if (blobHolder != null) {
                     Blob blob = blobHolder.getBlob();
                     if (blob != null) {
+                        if (isJavaImageDerivativeGenerator(doc)) {
+                            scheduleJavaThumbnail(doc);
+                            return; // Exit
+                        }
                         try {
                             AddThumbnailUnrestricted runner = new AddThumbnailUnrestricted(
                                     context.getCoreSession(), doc, blobHolder);
@@ -54,6 +68,23 @@ public class UpdateThumbListener extends AbstractCSEventSyncListenerImpl {
         }
     }
 
+    /*
+     * A tenant whose 'imageDerivativeGenerator' property is 'java' has its thumbnails created in the JVM, by a
+     * JavaThumbnailWork once the document's transaction has committed, rather than by ImageMagick while it's saved.
+     */
+    private boolean isJavaImageDerivativeGenerator(DocumentModel doc) {
+        String tenantId = (String) doc.getProperty(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA,
+                CollectionSpaceClient.COLLECTIONSPACE_CORE_TENANTID);
+        return NuxeoBlobUtils.isJavaImageDerivativeGenerator(tenantId);
+    }
+
+    private void scheduleJavaThumbnail(DocumentModel doc) {
+        if (doc.hasFacet(ThumbnailConstants.THUMBNAIL_FACET) == false) {
+            Framework.getService(WorkManager.class).schedule(new JavaThumbnailWork(doc.getRepositoryName(), doc.getId()),
+                    WorkManager.Scheduling.IF_NOT_SCHEDULED, true); // true = after commit
+        }
+    }
+
     @Override
     public Logger getLogger() {
     	return logger;
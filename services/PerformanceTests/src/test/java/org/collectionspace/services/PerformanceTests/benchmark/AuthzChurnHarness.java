@@ -0,0 +1,299 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.Response;
+
+import org.collectionspace.services.authorization.AccountRole;
+import org.collectionspace.services.authorization.AccountValue;
+import org.collectionspace.services.authorization.PermissionRole;
+import org.collectionspace.services.authorization.PermissionValue;
+import org.collectionspace.services.authorization.RoleValue;
+import org.collectionspace.services.authorization.perms.EffectType;
+import org.collectionspace.services.client.AccountClient;
+import org.collectionspace.services.client.AccountFactory;
+import org.collectionspace.services.client.AccountRoleClient;
+import org.collectionspace.services.client.AccountRoleFactory;
+import org.collectionspace.services.client.CollectionSpaceClientUtils;
+import org.collectionspace.services.client.PermissionClient;
+import org.collectionspace.services.client.PermissionFactory;
+import org.collectionspace.services.client.PermissionRoleClient;
+import org.collectionspace.services.client.PermissionRoleFactory;
+import org.collectionspace.services.client.RoleClient;
+import org.collectionspace.services.client.RoleFactory;
+import org.collectionspace.services.client.ServiceClientConnectionPool;
+
+/**
+ * Churns accounts, roles and permissions on a running services instance, to compare the server with and
+ * without the JPA second-level cache (see JpaStorageUtils.SECOND_LEVEL_CACHE_PROPERTY).  In each round, a
+ * worker thread creates a role, a permission, the permission's role, an account and the account's role; reads
+ * the account's roles and permissions -the queries the cache serves- a number of times; and then deletes them
+ * all.  Every call is timed, and the per-operation results are written as CSV.
+ *
+ * The harness can't tell how the server was started, so run it once against a server started with
+ * -Dorg.collectionspace.services.jpa.secondLevelCache=true and once against one started without it, and label
+ * each run with authz.cache; the results files are named after the label.  Creating and deleting entities in
+ * every round is what would make a cache that is never evicted grow, so to see whether the server's heap stays
+ * flat, run many rounds and watch the server (e.g., with jstat -gc) -the client only sees latencies.
+ *
+ * The server and credentials are set as for the LoadHarness; the account must be allowed to administer
+ * accounts, roles and permissions.  The run itself is set with:
+ *
+ *   authz.threads   worker threads (default 4)
+ *   authz.rounds    rounds run by each thread (default 50)
+ *   authz.reads     reads of the account's roles and of its permissions in each round (default 10)
+ *   authz.cache     the value of the server's secondLevelCache property, used as the run's label (default false)
+ *   authz.results   the results file name, without extension (default target/authz-results-cache-{authz.cache})
+ *
+ * Run with: mvn test-compile exec:exec -Pbenchmarks -Dexec.mainClass=org.collectionspace.services.PerformanceTests.benchmark.AuthzChurnHarness
+ *   [-Dbenchmark.jvmArgs="-Dauthz.cache=true -Dauthz.rounds=1000 -Dcspace.url=..."]
+ */
+public class AuthzChurnHarness {
+    public static final String THREADS_PROPERTY = "authz.threads";
+    public static final String ROUNDS_PROPERTY = "authz.rounds";
+    public static final String READS_PROPERTY = "authz.reads";
+    public static final String CACHE_PROPERTY = "authz.cache";
+    public static final String RESULTS_PROPERTY = "authz.results";
+
+    static final String CREATE_ROLE = "createRole";
+    static final String CREATE_PERMISSION = "createPermission";
+    static final String CREATE_PERMISSION_ROLE = "createPermissionRole";
+    static final String CREATE_ACCOUNT = "createAccount";
+    static final String CREATE_ACCOUNT_ROLE = "createAccountRole";
+    static final String READ_ACCOUNT_ROLES = "readAccountRoles";
+    static final String READ_ACCOUNT_PERMISSIONS = "readAccountPermissions";
+    static final String DELETE = "delete";
+
+    private static final String NAME_PREFIX = "authzChurn";
+    // Between SecurityUtils' minimum and maximum password lengths
+    private static final String PASSWORD = "authzChurn1";
+
+    private final int threads;
+    private final int rounds;
+    private final int reads;
+    private final Map<String, LoadHarness.OperationStats> stats = new LinkedHashMap<String, LoadHarness.OperationStats>();
+
+    public AuthzChurnHarness(int threads, int rounds, int reads) {
+        this.threads = threads;
+        this.rounds = rounds;
+        this.reads = reads;
+        for (String operation : new String[] {CREATE_ROLE, CREATE_PERMISSION, CREATE_PERMISSION_ROLE, CREATE_ACCOUNT,
+                CREATE_ACCOUNT_ROLE, READ_ACCOUNT_ROLES, READ_ACCOUNT_PERMISSIONS, DELETE}) {
+            stats.put(operation, new LoadHarness.OperationStats(operation));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        AuthzChurnHarness harness = new AuthzChurnHarness(
+                Integer.getInteger(THREADS_PROPERTY, 4),
+                Integer.getInteger(ROUNDS_PROPERTY, 50),
+                Integer.getInteger(READS_PROPERTY, 10));
+        long elapsedNanos;
+        try {
+            elapsedNanos = harness.run();
+        } finally {
+            ServiceClientConnectionPool.shutdown();
+        }
+
+        String cache = System.getProperty(CACHE_PROPERTY, Boolean.FALSE.toString());
+        String results = System.getProperty(RESULTS_PROPERTY, "target/authz-results-cache-" + cache);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(results + ".csv")), "UTF-8"));
+        try {
+            LoadHarness.writeCsv(out, harness.stats.values(), elapsedNanos);
+        } finally {
+            out.close();
+        }
+        System.out.println("Server second-level cache: " + cache);
+        LoadHarness.writeCsv(new PrintWriter(System.out), harness.stats.values(), elapsedNanos);
+        System.out.println("Authorization churn results written to " + results + ".csv");
+    }
+
+    /**
+     * Runs the rounds and waits for all the workers to finish
+     * @return the wall clock time of the run, in nanoseconds
+     */
+    public long run() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                final String workerId = Long.toString(System.currentTimeMillis()) + "_" + i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runWorker(workerId);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runWorker(String workerId) throws Exception {
+        RoleClient roleClient = new RoleClient();
+        PermissionClient permClient = new PermissionClient();
+        PermissionRoleClient permRoleClient = new PermissionRoleClient();
+        AccountClient accClient = new AccountClient();
+        AccountRoleClient accRoleClient = new AccountRoleClient();
+
+        for (int round = 0; round < rounds; round++) {
+            String name = NAME_PREFIX + workerId + "_" + round;
+            String roleCsid = null;
+            String permCsid = null;
+            String accCsid = null;
+            boolean permRoleCreated = false;
+            boolean accRoleCreated = false;
+
+            try {
+                long start = System.nanoTime();
+                roleCsid = timeCreate(CREATE_ROLE, start, roleClient.create(RoleFactory.createRoleInstance(
+                        name, name, "role for " + name, true, RoleFactory.EMPTY_PERMVALUE_LIST)));
+                if (roleCsid == null) {
+                    continue;
+                }
+                RoleValue roleValue = new RoleValue();
+                roleValue.setRoleId(roleCsid);
+                roleValue.setRoleName(name);
+
+                start = System.nanoTime();
+                permCsid = timeCreate(CREATE_PERMISSION, start, permClient.create(PermissionFactory.createPermissionInstance(
+                        name, "permissions for " + name, PermissionFactory.createDefaultActions(), EffectType.PERMIT,
+                        true, true, true)));
+                if (permCsid == null) {
+                    continue;
+                }
+                PermissionValue permValue = new PermissionValue();
+                permValue.setResourceName(name);
+                permValue.setPermissionId(permCsid);
+
+                PermissionRole permRole = PermissionRoleFactory.createPermissionRoleInstance(
+                        permValue, Collections.singletonList(roleValue), true, true);
+                start = System.nanoTime();
+                permRoleCreated = timeCall(CREATE_PERMISSION_ROLE, start, permRoleClient.create(permCsid, permRole),
+                        Response.Status.CREATED);
+                if (!permRoleCreated) {
+                    continue;
+                }
+
+                start = System.nanoTime();
+                accCsid = timeCreate(CREATE_ACCOUNT, start, accClient.create(AccountFactory.createAccountInstance(
+                        name, name, PASSWORD, name + "@cspace.org", accClient.getTenantId(), true, false, true, true)));
+                if (accCsid == null) {
+                    continue;
+                }
+                AccountValue accValue = new AccountValue();
+                accValue.setScreenName(name);
+                accValue.setUserId(name);
+                accValue.setAccountId(accCsid);
+
+                AccountRole accRole = AccountRoleFactory.createAccountRoleInstance(
+                        accValue, Collections.singletonList(roleValue), true, true);
+                start = System.nanoTime();
+                accRoleCreated = timeCall(CREATE_ACCOUNT_ROLE, start, accRoleClient.create(accCsid, accRole),
+                        Response.Status.CREATED);
+                if (!accRoleCreated) {
+                    continue;
+                }
+
+                for (int i = 0; i < reads; i++) {
+                    start = System.nanoTime();
+                    timeCall(READ_ACCOUNT_ROLES, start, accRoleClient.read(accCsid), Response.Status.OK);
+
+                    start = System.nanoTime();
+                    timeCall(READ_ACCOUNT_PERMISSIONS, start, accClient.readAccountPermissions(accCsid), Response.Status.OK);
+                }
+            } finally {
+                if (accRoleCreated) {
+                    long start = System.nanoTime();
+                    timeCall(DELETE, start, accRoleClient.delete(accCsid), Response.Status.OK);
+                }
+                if (accCsid != null) {
+                    long start = System.nanoTime();
+                    timeCall(DELETE, start, accClient.delete(accCsid), Response.Status.OK);
+                }
+                if (permRoleCreated) {
+                    long start = System.nanoTime();
+                    timeCall(DELETE, start, permRoleClient.delete(permCsid), Response.Status.OK);
+                }
+                if (permCsid != null) {
+                    long start = System.nanoTime();
+                    timeCall(DELETE, start, permClient.delete(permCsid), Response.Status.OK);
+                }
+                if (roleCsid != null) {
+                    long start = System.nanoTime();
+                    timeCall(DELETE, start, roleClient.delete(roleCsid), Response.Status.OK);
+                }
+            }
+        }
+    }
+
+    /*
+     * @return the CSID of the created entity, or null if it wasn't created
+     */
+    private String timeCreate(String operation, long start, Response response) {
+        try {
+            boolean created = response.getStatus() == Response.Status.CREATED.getStatusCode();
+            stats.get(operation).record(System.nanoTime() - start, created);
+            return created ? CollectionSpaceClientUtils.extractId(response) : null;
+        } finally {
+            response.close();
+        }
+    }
+
+    /*
+     * Reads (and so fully transfers) the response body before stopping the clock
+     */
+    private boolean timeCall(String operation, long start, Response response, Response.Status expectedStatus) {
+        try {
+            boolean success = response.getStatus() == expectedStatus.getStatusCode();
+            if (success && response.hasEntity()) {
+                response.readEntity(String.class);
+            }
+            stats.get(operation).record(System.nanoTime() - start, success);
+            return success;
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.client.AbstractPoxServiceClientImpl;
+import org.collectionspace.services.client.BatchClient;
+import org.collectionspace.services.client.CollectionObjectClient;
+import org.collectionspace.services.client.CollectionSpaceClientUtils;
+import org.collectionspace.services.client.PayloadOutputPart;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.client.ServiceClientConnectionPool;
+import org.collectionspace.services.common.invocable.InvocationContext;
+import org.collectionspace.services.common.invocable.InvocationResults;
+
+/**
+ * Compares batch jobs that read and update records with the find* and resource update methods of
+ * AbstractBatchJob against ones that use the BatchRepository, on a running services instance.  It creates
+ * collectionobject records, registers the CompareRecordAccessBatchJob, and then invokes the job on all the
+ * records with each kind of access in turn.  Each invocation reads every record and updates every record,
+ * so its latency is the cost of the job's record access; the HTTP call that starts it is the same for both.
+ * The records and the batch record are deleted at the end.
+ *
+ * The first round includes the server's warm-up, so compare the medians of a run with several rounds.  The
+ * server and credentials are set as for the LoadHarness.  The run itself is set with:
+ *
+ *   batch.records   records the job is invoked on (default 500)
+ *   batch.rounds    invocations with each kind of access (default 5)
+ *   batch.results   the results file name, without extension (default target/batch-results)
+ *
+ * Run with: mvn test-compile exec:exec -Pbenchmarks -Dexec.mainClass=org.collectionspace.services.PerformanceTests.benchmark.BatchRepositoryHarness
+ *   [-Dbenchmark.jvmArgs="-Dbatch.records=1000 -Dcspace.url=..."]
+ */
+public class BatchRepositoryHarness {
+    public static final String RECORDS_PROPERTY = "batch.records";
+    public static final String ROUNDS_PROPERTY = "batch.rounds";
+    public static final String RESULTS_PROPERTY = "batch.results";
+
+    // See CompareRecordAccessBatchJob
+    static final String JOB_CLASS_NAME = "org.collectionspace.services.batch.nuxeo.CompareRecordAccessBatchJob";
+    static final String ACCESS_PARAM = "access";
+    static final String VALUE_PARAM = "value";
+    static final String HELPERS = "helpers";
+    static final String REPOSITORY = "repository";
+
+    private static final String DOC_TYPE = "CollectionObject";
+    private static final String LIST_MODE = "list";
+
+    private final int records;
+    private final int rounds;
+    private final Map<String, LoadHarness.OperationStats> stats = new LinkedHashMap<String, LoadHarness.OperationStats>();
+
+    public BatchRepositoryHarness(int records, int rounds) {
+        this.records = records;
+        this.rounds = rounds;
+        for (String access : new String[] {HELPERS, REPOSITORY}) {
+            stats.put(access, new LoadHarness.OperationStats(access));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchRepositoryHarness harness = new BatchRepositoryHarness(
+                Integer.getInteger(RECORDS_PROPERTY, 500),
+                Integer.getInteger(ROUNDS_PROPERTY, 5));
+        long elapsedNanos;
+        try {
+            elapsedNanos = harness.run();
+        } finally {
+            ServiceClientConnectionPool.shutdown();
+        }
+
+        String results = System.getProperty(RESULTS_PROPERTY, "target/batch-results");
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(results + ".csv")), "UTF-8"));
+        try {
+            LoadHarness.writeCsv(out, harness.stats.values(), elapsedNanos);
+        } finally {
+            out.close();
+        }
+        LoadHarness.writeCsv(new PrintWriter(System.out), harness.stats.values(), elapsedNanos);
+        System.out.println("Batch results written to " + results + ".csv");
+    }
+
+    /**
+     * Creates the records and the batch record, invokes the job, and deletes them all
+     * @return the wall clock time of the invocations, in nanoseconds
+     */
+    public long run() throws Exception {
+        CollectionObjectClient objectClient = new CollectionObjectClient();
+        BatchClient batchClient = new BatchClient();
+        String runId = Long.toString(System.currentTimeMillis());
+        List<String> csids = new ArrayList<String>(records);
+        String batchCsid = null;
+
+        try {
+            for (int i = 0; i < records; i++) {
+                csids.add(create(objectClient, LoadHarness.createPayload(objectClient, runId, i)));
+            }
+            batchCsid = create(batchClient, createBatchPayload(batchClient, runId));
+
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String access : stats.keySet()) {
+                    invoke(batchClient, batchCsid, csids, access, access + round);
+                }
+            }
+            return System.nanoTime() - start;
+        } finally {
+            for (String csid : csids) {
+                objectClient.delete(csid).close();
+            }
+            if (batchCsid != null) {
+                batchClient.delete(batchCsid).close();
+            }
+        }
+    }
+
+    private void invoke(BatchClient client, String batchCsid, List<String> csids, String access, String value) {
+        InvocationContext invContext = new InvocationContext();
+        invContext.setMode(LIST_MODE);
+        invContext.setDocType(DOC_TYPE);
+        InvocationContext.ListCSIDs listCsids = new InvocationContext.ListCSIDs();
+        listCsids.getCsid().addAll(csids);
+        invContext.setListCSIDs(listCsids);
+        InvocationContext.Params params = new InvocationContext.Params();
+        params.getParam().add(createParam(ACCESS_PARAM, access));
+        params.getParam().add(createParam(VALUE_PARAM, value));
+        invContext.setParams(params);
+
+        long start = System.nanoTime();
+        Response response = client.invoke(batchCsid, invContext);
+        try {
+            boolean success = response.getStatus() == Response.Status.OK.getStatusCode()
+                    && response.readEntity(InvocationResults.class).getNumAffected() == csids.size();
+            stats.get(access).record(System.nanoTime() - start, success);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static InvocationContext.Params.Param createParam(String key, String value) {
+        InvocationContext.Params.Param param = new InvocationContext.Params.Param();
+        param.setKey(key);
+        param.setValue(value);
+        return param;
+    }
+
+    private static String create(AbstractPoxServiceClientImpl<?, ?, ?> client, PoxPayloadOut payload) throws Exception {
+        Response response = client.create(payload);
+        try {
+            if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
+                throw new Exception("Could not create a " + client.getServiceName() + " record: " + response.getStatus());
+            }
+            return CollectionSpaceClientUtils.extractId(response);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static PoxPayloadOut createBatchPayload(BatchClient client, String runId) {
+        BatchCommon batch = new BatchCommon();
+        batch.setName("batchRepositoryHarness." + runId);
+        batch.setClassName(JOB_CLASS_NAME);
+        BatchCommon.ForDocTypes forDocTypes = new BatchCommon.ForDocTypes();
+        forDocTypes.getForDocType().add(DOC_TYPE);
+        batch.setForDocTypes(forDocTypes);
+        batch.setSupportsDocList(true);
+
+        PoxPayloadOut multipart = new PoxPayloadOut(BatchClient.SERVICE_PAYLOAD_NAME);
+        PayloadOutputPart commonPart = multipart.addPart(batch, MediaType.APPLICATION_XML_TYPE);
+        commonPart.setLabel(client.getCommonPartName());
+        return multipart;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the sample payloads used by the benchmarks from the test classpath (src/test/resources/benchmark-data).
+ * The samples are copies of the XML/JSON conversion test data of the common module, so the numbers
+ * reflect a realistic collectionobject record and list page.
+ */
+final class BenchmarkData {
+    static final String COLLECTIONOBJECT_XML = "collectionobject.xml";
+    static final String COLLECTIONOBJECT_JSON = "collectionobject.json";
+    static final String COLLECTIONOBJECT_LIST_XML = "collectionobject-list.xml";
+    static final String COLLECTIONOBJECT_LIST_JSON = "collectionobject-list.json";
+
+    private static final String RESOURCE_DIR = "/benchmark-data/";
+
+    private BenchmarkData() {
+        // Not instantiable
+    }
+
+    static byte[] load(String name) throws IOException {
+        InputStream in = BenchmarkData.class.getResourceAsStream(RESOURCE_DIR + name);
+        if (in == null) {
+            throw new IOException("Benchmark data file not found on the classpath: " + RESOURCE_DIR + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static String loadString(String name) throws IOException {
+        return new String(load(name), "UTF-8");
+    }
+}
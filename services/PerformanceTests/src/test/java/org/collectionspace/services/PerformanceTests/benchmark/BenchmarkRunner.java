@@ -0,0 +1,57 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this package and writes the results as JSON, so they can be kept and
+ * compared between builds.  Run with the "benchmarks" profile:
+ *
+ *   mvn test-compile exec:exec -Pbenchmarks [-Dbenchmark.include=PayloadBenchmark] [-Dbenchmark.results=target/jmh-results.json]
+ *
+ * benchmark.include is a regular expression that selects the benchmarks to run (all of them by default).
+ */
+public class BenchmarkRunner {
+    public static final String INCLUDE_PROPERTY = "benchmark.include";
+    public static final String RESULTS_PROPERTY = "benchmark.results";
+
+    private static final String DEFAULT_RESULTS_FILE = "target/jmh-results.json";
+
+    public static void main(String[] args) throws Exception {
+        String include = System.getProperty(INCLUDE_PROPERTY, BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+        String resultsFile = System.getProperty(RESULTS_PROPERTY, DEFAULT_RESULTS_FILE);
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultsFile)
+                .build();
+        new Runner(options).run();
+
+        System.out.println("Benchmark results written to " + resultsFile);
+    }
+}
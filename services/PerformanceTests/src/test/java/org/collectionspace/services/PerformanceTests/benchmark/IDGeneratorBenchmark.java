@@ -0,0 +1,77 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.services.id.NumericIDGeneratorPart;
+import org.collectionspace.services.id.SettableIDGenerator;
+import org.collectionspace.services.id.StringIDGeneratorPart;
+import org.collectionspace.services.id.YearIDGeneratorPart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ID generation as done for a typical accession number pattern (e.g., "2016.1.42"): matching the
+ * last ID against the generator's pattern and computing the next one.  The ID service does this
+ * once per generated ID, before storing the new value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IDGeneratorBenchmark {
+    private static final String LAST_ID = "2016.1.41";
+
+    private SettableIDGenerator generator;
+
+    @Setup
+    public void setup() throws Exception {
+        generator = new SettableIDGenerator();
+        generator.add(new YearIDGeneratorPart());
+        generator.add(new StringIDGeneratorPart("."));
+        generator.add(new NumericIDGeneratorPart("1"));
+        generator.add(new StringIDGeneratorPart("."));
+        generator.add(new NumericIDGeneratorPart("1"));
+    }
+
+    @Benchmark
+    public String newID() throws Exception {
+        return generator.newID(LAST_ID);
+    }
+
+    @Benchmark
+    public String currentID() throws Exception {
+        return generator.getCurrentID(LAST_ID);
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.collectionspace.services.client.CollectionObjectClient;
+import org.collectionspace.services.client.CollectionSpaceClientUtils;
+import org.collectionspace.services.client.PayloadOutputPart;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.client.ServiceClientConnectionPool;
+import org.collectionspace.services.collectionobject.CollectionobjectsCommon;
+import org.collectionspace.services.collectionobject.TitleGroup;
+import org.collectionspace.services.collectionobject.TitleGroupList;
+
+/**
+ * A scripted load against a running services instance (by default the local development server, as
+ * configured for the client library).  Each worker thread creates its own collectionobject records and
+ * then reads, updates, lists, keyword searches, gets the authority references of, and finally deletes
+ * them.  Every call is timed, and the per-operation results (count, errors, throughput and latency
+ * percentiles) are written as CSV and JSON so runs can be compared.  The number of HTTP connections
+ * opened during the run is reported too, to show how well the shared ServiceClientConnectionPool reuses them.
+ *
+ * The server and credentials are set with the usual client properties (e.g., -Dcspace.url=...,
+ * -Dcspace.user=..., -Dcspace.password=...), passed in benchmark.jvmArgs when run through the
+ * "benchmarks" profile.  The load itself is set with:
+ *
+ *   load.threads    worker threads (default 4)
+ *   load.records    records created by each thread (default 100)
+ *   load.searches   list and keyword search calls made by each thread (default 20)
+ *   load.results    the results file name, without extension (default target/load-results)
+ *
+ * Run with: mvn test-compile exec:exec -Pbenchmarks -Dexec.mainClass=org.collectionspace.services.PerformanceTests.benchmark.LoadHarness
+ *   [-Dbenchmark.jvmArgs="-Dload.threads=8 -Dcspace.url=..."]
+ */
+public class LoadHarness {
+    public static final String THREADS_PROPERTY = "load.threads";
+    public static final String RECORDS_PROPERTY = "load.records";
+    public static final String SEARCHES_PROPERTY = "load.searches";
+    public static final String RESULTS_PROPERTY = "load.results";
+
+    static final String CREATE = "create";
+    static final String READ = "read";
+    static final String UPDATE = "update";
+    static final String LIST = "list";
+    static final String KEYWORD_SEARCH = "keywordSearch";
+    static final String AUTHORITY_REFS = "authorityRefs";
+    static final String DELETE = "delete";
+
+    private static final String TITLE_PREFIX = "loadHarnessTitle";
+    private static final long LIST_PAGE_SIZE = 40;
+
+    /**
+     * The latencies and errors of one operation, across all threads
+     */
+    static class OperationStats {
+        private final String name;
+        private long[] nanos = new long[1024];
+        private int count;
+        private int errors;
+
+        OperationStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long elapsedNanos, boolean success) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsedNanos;
+            if (!success) {
+                errors++;
+            }
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        synchronized int getErrorCount() {
+            return errors;
+        }
+
+        synchronized long getTotalNanos() {
+            long result = 0;
+            for (int i = 0; i < count; i++) {
+                result += nanos[i];
+            }
+            return result;
+        }
+
+        /**
+         * @return the latency below which the given percentage (0-100) of calls completed
+         */
+        synchronized long getPercentile(double percent) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percent / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    private final int threads;
+    private final int recordsPerThread;
+    private final int searchesPerThread;
+    private final Map<String, OperationStats> stats = new LinkedHashMap<String, OperationStats>();
+    private long connectionsOpened;
+
+    public LoadHarness(int threads, int recordsPerThread, int searchesPerThread) {
+        this.threads = threads;
+        this.recordsPerThread = recordsPerThread;
+        this.searchesPerThread = searchesPerThread;
+        for (String operation : new String[] {CREATE, READ, UPDATE, LIST, KEYWORD_SEARCH, AUTHORITY_REFS, DELETE}) {
+            stats.put(operation, new OperationStats(operation));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness(
+                Integer.getInteger(THREADS_PROPERTY, 4),
+                Integer.getInteger(RECORDS_PROPERTY, 100),
+                Integer.getInteger(SEARCHES_PROPERTY, 20));
+        long elapsedNanos;
+        try {
+            elapsedNanos = harness.run();
+        } finally {
+            ServiceClientConnectionPool.shutdown();
+        }
+
+        String results = System.getProperty(RESULTS_PROPERTY, "target/load-results");
+        harness.writeCsv(new File(results + ".csv"), elapsedNanos);
+        harness.writeJson(new File(results + ".json"), elapsedNanos);
+        harness.writeCsv(new PrintWriter(System.out), elapsedNanos);
+        System.out.println(String.format(Locale.ROOT, "%d requests used %d HTTP connections.",
+                harness.getRequestCount(), harness.getConnectionsOpened()));
+        System.out.println("Load results written to " + results + ".csv and " + results + ".json");
+    }
+
+    /**
+     * Runs the load and waits for all the workers to finish
+     * @return the wall clock time of the run, in nanoseconds
+     */
+    public long run() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            long connectionsAtStart = ServiceClientConnectionPool.getConnectionsOpened();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                final String workerId = Long.toString(System.currentTimeMillis()) + "_" + i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runWorker(workerId);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            connectionsOpened = ServiceClientConnectionPool.getConnectionsOpened() - connectionsAtStart;
+            return elapsedNanos;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runWorker(String workerId) {
+        CollectionObjectClient client = new CollectionObjectClient();
+        List<String> csids = new ArrayList<String>(recordsPerThread);
+
+        for (int i = 0; i < recordsPerThread; i++) {
+            long start = System.nanoTime();
+            Response response = client.create(createPayload(client, workerId, i));
+            try {
+                boolean created = response.getStatus() == Response.Status.CREATED.getStatusCode();
+                stats.get(CREATE).record(System.nanoTime() - start, created);
+                if (created) {
+                    csids.add(CollectionSpaceClientUtils.extractId(response));
+                }
+            } finally {
+                response.close();
+            }
+        }
+
+        for (String csid : csids) {
+            long start = System.nanoTime();
+            timeCall(READ, start, client.read(csid), Response.Status.OK);
+        }
+        for (int i = 0; i < csids.size(); i++) {
+            long start = System.nanoTime();
+            timeCall(UPDATE, start, client.update(csids.get(i), createPayload(client, workerId, i)), Response.Status.OK);
+        }
+        for (int i = 0; i < searchesPerThread; i++) {
+            long start = System.nanoTime();
+            timeCall(LIST, start, client.readList(LIST_PAGE_SIZE, Long.valueOf(i % 5)), Response.Status.OK);
+
+            start = System.nanoTime();
+            String keywords = TITLE_PREFIX + workerId + "_" + (recordsPerThread > 0 ? i % recordsPerThread : 0);
+            timeCall(KEYWORD_SEARCH, start, client.keywordSearchIncludeDeleted(keywords, false), Response.Status.OK);
+        }
+        for (String csid : csids) {
+            long start = System.nanoTime();
+            timeCall(AUTHORITY_REFS, start, client.getAuthorityRefs(csid), Response.Status.OK);
+        }
+        for (String csid : csids) {
+            long start = System.nanoTime();
+            timeCall(DELETE, start, client.delete(csid), Response.Status.OK);
+        }
+    }
+
+    /*
+     * Reads (and so fully transfers) the response body before stopping the clock
+     */
+    private void timeCall(String operation, long start, Response response, Response.Status expectedStatus) {
+        try {
+            boolean success = response.getStatus() == expectedStatus.getStatusCode();
+            if (success && response.hasEntity()) {
+                response.readEntity(String.class);
+            }
+            stats.get(operation).record(System.nanoTime() - start, success);
+        } finally {
+            response.close();
+        }
+    }
+
+    static PoxPayloadOut createPayload(CollectionObjectClient client, String workerId, int index) {
+        CollectionobjectsCommon collectionObject = new CollectionobjectsCommon();
+        collectionObject.setObjectNumber("loadHarness." + workerId + "." + index);
+        TitleGroupList titleGroupList = new TitleGroupList();
+        TitleGroup titleGroup = new TitleGroup();
+        titleGroup.setTitle(TITLE_PREFIX + workerId + "_" + index);
+        titleGroupList.getTitleGroup().add(titleGroup);
+        collectionObject.setTitleGroupList(titleGroupList);
+
+        PoxPayloadOut multipart = new PoxPayloadOut(CollectionObjectClient.SERVICE_PAYLOAD_NAME);
+        PayloadOutputPart commonPart = multipart.addPart(collectionObject, MediaType.APPLICATION_XML_TYPE);
+        commonPart.setLabel(client.getCommonPartName());
+        return multipart;
+    }
+
+    /**
+     * @return the number of calls made, across all operations and threads
+     */
+    public int getRequestCount() {
+        int result = 0;
+        for (OperationStats operation : stats.values()) {
+            result += operation.getCount();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of HTTP connections opened during the run
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    public void writeCsv(File file, long elapsedNanos) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writeCsv(out, elapsedNanos);
+        } finally {
+            out.close();
+        }
+    }
+
+    void writeCsv(PrintWriter out, long elapsedNanos) {
+        writeCsv(out, stats.values(), elapsedNanos);
+    }
+
+    static void writeCsv(PrintWriter out, Collection<OperationStats> stats, long elapsedNanos) {
+        out.println("operation,count,errors,throughputPerSecond,meanMillis,p50Millis,p90Millis,p99Millis,maxMillis");
+        for (OperationStats operation : stats) {
+            int count = operation.getCount();
+            out.println(String.format(Locale.ROOT, "%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    operation.getName(), count, operation.getErrorCount(),
+                    count * 1e9 / Math.max(elapsedNanos, 1),
+                    count > 0 ? operation.getTotalNanos() / 1e6 / count : 0.0,
+                    operation.getPercentile(50) / 1e6, operation.getPercentile(90) / 1e6,
+                    operation.getPercentile(99) / 1e6, operation.getPercentile(100) / 1e6));
+        }
+        out.flush();
+    }
+
+    public void writeJson(File file, long elapsedNanos) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("{");
+            out.println(String.format(Locale.ROOT, "  \"threads\": %d,", threads));
+            out.println(String.format(Locale.ROOT, "  \"recordsPerThread\": %d,", recordsPerThread));
+            out.println(String.format(Locale.ROOT, "  \"searchesPerThread\": %d,", searchesPerThread));
+            out.println(String.format(Locale.ROOT, "  \"elapsedMillis\": %.3f,", elapsedNanos / 1e6));
+            out.println(String.format(Locale.ROOT, "  \"requests\": %d,", getRequestCount()));
+            out.println(String.format(Locale.ROOT, "  \"connectionsOpened\": %d,", connectionsOpened));
+            out.println("  \"operations\": [");
+            int remaining = stats.size();
+            for (OperationStats operation : stats.values()) {
+                int count = operation.getCount();
+                out.print(String.format(Locale.ROOT, "    {\"operation\": \"%s\", \"count\": %d, \"errors\": %d, \"meanMillis\": %.3f, "
+                        + "\"p50Millis\": %.3f, \"p90Millis\": %.3f, \"p99Millis\": %.3f, \"maxMillis\": %.3f}",
+                        operation.getName(), count, operation.getErrorCount(),
+                        count > 0 ? operation.getTotalNanos() / 1e6 / count : 0.0,
+                        operation.getPercentile(50) / 1e6, operation.getPercentile(90) / 1e6,
+                        operation.getPercentile(99) / 1e6, operation.getPercentile(100) / 1e6));
+                out.println(--remaining > 0 ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+}
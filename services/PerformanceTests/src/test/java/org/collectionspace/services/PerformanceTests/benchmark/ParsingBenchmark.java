@@ -0,0 +1,99 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.services.common.api.RefNameUtils;
+import org.collectionspace.services.common.query.QueryManager;
+import org.collectionspace.services.structureddate.StructuredDateInternal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing done while handling records and searches: structured display dates, refNames, and
+ * turning keyword and advanced search expressions into NXQL where clauses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+    private static final String AUTHORITY_REFNAME =
+            "urn:cspace:core.collectionspace.org:personauthorities:name(person)'Local Persons'";
+    private static final String AUTHORITY_TERM_REFNAME =
+            "urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(JohnDoe1234567890)'John Doe'";
+
+    private static final String KEYWORDS = "\"red clay\" bowl 1923-1925 O'Keeffe";
+    private static final String ADVANCED_SEARCH =
+            "collectionobjects_common:objectNumber ILIKE \"2016.1.%\" AND collectionspace_core:updatedAt > TIMESTAMP \"2016-01-01T00:00:00\"";
+
+    /*
+     * The display dates to parse.  Only parseStructuredDate uses this state, so the other benchmarks
+     * aren't repeated for each date.
+     */
+    @State(Scope.Benchmark)
+    public static class DisplayDate {
+        @Param({"1923", "March 5, 1923", "circa 1920s", "1923-1925", "early 19th century", "3rd century BCE"})
+        public String displayDate;
+    }
+
+    @Benchmark
+    public StructuredDateInternal parseStructuredDate(DisplayDate date) {
+        try {
+            return StructuredDateInternal.parse(date.displayDate);
+        } catch (Exception e) {
+            // Unparseable dates are part of the workload, too
+            return null;
+        }
+    }
+
+    @Benchmark
+    public RefNameUtils.AuthorityInfo parseAuthorityRefName() {
+        return RefNameUtils.parseAuthorityInfo(AUTHORITY_REFNAME);
+    }
+
+    @Benchmark
+    public RefNameUtils.AuthorityTermInfo parseAuthorityTermRefName() {
+        return RefNameUtils.parseAuthorityTermInfo(AUTHORITY_TERM_REFNAME);
+    }
+
+    @Benchmark
+    public String keywordWhereClause() {
+        return QueryManager.createWhereClauseFromKeywords(KEYWORDS);
+    }
+
+    @Benchmark
+    public String advancedSearchWhereClause() {
+        return QueryManager.createWhereClauseFromAdvancedSearch(ADVANCED_SEARCH);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.xmljson.JsonToXmlStreamConverter;
+import org.collectionspace.services.common.xmljson.XmlToJsonStreamConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payload handling done on every request: parsing and serializing the multipart XML payloads
+ * (PoxPayloadIn/PoxPayloadOut), and the XML to JSON (and back) conversion done by the JSON filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+    private String recordXml;
+    private byte[] recordXmlBytes;
+    private byte[] recordJsonBytes;
+    private byte[] listXmlBytes;
+    private byte[] listJsonBytes;
+    private PoxPayloadOut parsedRecord;
+
+    @Setup
+    public void setup() throws Exception {
+        recordXml = BenchmarkData.loadString(BenchmarkData.COLLECTIONOBJECT_XML);
+        recordXmlBytes = BenchmarkData.load(BenchmarkData.COLLECTIONOBJECT_XML);
+        recordJsonBytes = BenchmarkData.load(BenchmarkData.COLLECTIONOBJECT_JSON);
+        listXmlBytes = BenchmarkData.load(BenchmarkData.COLLECTIONOBJECT_LIST_XML);
+        listJsonBytes = BenchmarkData.load(BenchmarkData.COLLECTIONOBJECT_LIST_JSON);
+        parsedRecord = new PoxPayloadOut(recordXmlBytes);
+    }
+
+    @Benchmark
+    public PoxPayloadIn parsePoxPayloadIn() throws Exception {
+        return new PoxPayloadIn(recordXml);
+    }
+
+    @Benchmark
+    public PoxPayloadOut parsePoxPayloadOut() throws Exception {
+        return new PoxPayloadOut(recordXmlBytes);
+    }
+
+    @Benchmark
+    public String serializePoxPayload() {
+        return parsedRecord.toXML();
+    }
+
+    @Benchmark
+    public byte[] recordXmlToJson() throws Exception {
+        return convertXmlToJson(recordXmlBytes);
+    }
+
+    @Benchmark
+    public byte[] recordJsonToXml() throws Exception {
+        return convertJsonToXml(recordJsonBytes);
+    }
+
+    @Benchmark
+    public byte[] listXmlToJson() throws Exception {
+        return convertXmlToJson(listXmlBytes);
+    }
+
+    @Benchmark
+    public byte[] listJsonToXml() throws Exception {
+        return convertJsonToXml(listJsonBytes);
+    }
+
+    private static byte[] convertXmlToJson(byte[] xml) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+        new XmlToJsonStreamConverter(new ByteArrayInputStream(xml), out).convert();
+        return out.toByteArray();
+    }
+
+    private static byte[] convertJsonToXml(byte[] json) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        new JsonToXmlStreamConverter(new ByteArrayInputStream(json), out).convert();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.collectionspace.services.nuxeo.client.java.NuxeoQueryLocalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-query cost of rewriting the TIMESTAMP literals of NXQL queries before they're sent to Nuxeo.
+ * "compilePerQuery" is the rewrite as CoreSessionWrapper used to do it, compiling its regular expression for
+ * every query, and "precompiled" is what CoreSessionWrapper does now, through NuxeoQueryLocalizer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryRewriteBenchmark {
+    private static final String LIST_QUERY =
+            "SELECT * FROM CollectionObjectTenant1 WHERE (collectionspace_core:tenantId = 1)"
+            + " AND (ecm:isProxy = 0) AND (ecm:isVersion = 0) AND (ecm:currentLifeCycleState <> 'deleted')"
+            + " ORDER BY collectionspace_core:updatedAt DESC";
+    private static final String TIMESTAMP_QUERY =
+            "SELECT * FROM CollectionObjectTenant1 WHERE (collectionspace_core:tenantId = 1)"
+            + " AND (collectionspace_core:updatedAt >= TIMESTAMP \"2016-01-01T00:00:00Z\")"
+            + " AND (collectionspace_core:updatedAt < TIMESTAMP \"2017-01-01T00:00:00Z\")"
+            + " AND (ecm:isProxy = 0) AND (ecm:isVersion = 0) ORDER BY collectionspace_core:updatedAt DESC";
+
+    @Param({"list", "timestamp"})
+    public String queryType;
+
+    private String query;
+
+    @Setup
+    public void setup() {
+        query = queryType.equals("list") ? LIST_QUERY : TIMESTAMP_QUERY;
+    }
+
+    @Benchmark
+    public String compilePerQuery() {
+        String result = query;
+        if (query.contains("TIMESTAMP")) {
+            StringBuffer stringBuffer = new StringBuffer();
+            Pattern pattern = Pattern.compile("\\sTIMESTAMP\\s\"(.+?)\"");
+            Matcher matcher = pattern.matcher(query);
+            while (matcher.find()) {
+                matcher.appendReplacement(stringBuffer, String.format(" TIMESTAMP \"%s\"", toLocalTimestamp(matcher.group(1))));
+            }
+            matcher.appendTail(stringBuffer);
+            result = stringBuffer.toString();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String precompiled() throws Exception {
+        return NuxeoQueryLocalizer.localizeTimestamps(query);
+    }
+
+    private static String toLocalTimestamp(String utcTime) {
+        LocalDateTime localTime;
+        try {
+            localTime = Instant.parse(utcTime).atZone(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            localTime = LocalDateTime.parse(utcTime, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+        return localTime.toString();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.PerformanceTests.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import org.collectionspace.services.common.profile.ServiceMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What ServiceMetrics adds to each request: beginRequest, naming the endpoint, recording the request's NXQL
+ * queries, and endRequest.  "request" runs on one thread; "contendedRequest" runs on four threads that all
+ * record to the same endpoint, which is where shared counters would show.  Run with -prof gc to see the
+ * allocation rate per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceMetricsBenchmark {
+
+    @Path("/collectionobjects")
+    public static class Resource {
+        @GET
+        @Path("{csid}")
+        public String get() {
+            return null;
+        }
+    }
+
+    @Param({"0", "5"})
+    public int queriesPerRequest;
+
+    private final ServiceMetrics metrics = ServiceMetrics.getInstance();
+    private Method resourceMethod;
+
+    @Setup
+    public void setup() throws Exception {
+        resourceMethod = Resource.class.getMethod("get");
+    }
+
+    @Benchmark
+    public void request() {
+        recordRequest();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contendedRequest() {
+        recordRequest();
+    }
+
+    private void recordRequest() {
+        metrics.beginRequest();
+        metrics.setEndpoint(Resource.class, resourceMethod);
+        for (int i = 0; i < queriesPerRequest; i++) {
+            metrics.recordQuery(250000);
+        }
+        metrics.endRequest("GET", 200, 2000000);
+    }
+}
@@ -129,6 +129,15 @@ public class AccountClient extends AbstractServiceClientImpl<AccountsCommonList,
     public Response update(String csid, AccountsCommon multipart) {
         return getProxy().update(csid, multipart);
     }
+
+    /**
+     * @param csid
+     * @return response, whose entity is the AccountPermission of all the account's roles
+     * @see org.collectionspace.services.client.AccountProxy#readAccountPermissions(java.lang.String)
+     */
+    public Response readAccountPermissions(String csid) {
+        return getProxy().readAccountPermissions(csid);
+    }
     
     /**
      * 
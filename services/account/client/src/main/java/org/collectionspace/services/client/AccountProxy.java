@@ -68,4 +68,8 @@ public interface AccountProxy extends CollectionSpaceProxy<AccountsCommonList> {
     @PUT
     @Path("/{csid}")
     Response update(@PathParam("csid") String csid, AccountsCommon multipart);    
+
+    @GET
+    @Path("/{csid}/accountperms")
+    Response readAccountPermissions(@PathParam("csid") String csid);
 }
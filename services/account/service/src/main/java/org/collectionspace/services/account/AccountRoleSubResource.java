@@ -216,6 +216,7 @@ public class AccountRoleSubResource
         ServiceContext<AccountRole, AccountRole> ctx = createServiceContext(parentCtx, input, subject);
         DocumentHandler handler = createDocumentHandler(ctx);        
         String bogusCsid = getStorageClient(ctx).create(ctx, handler);
+        AuthN.get().clearUserCache(); // the subject may be a role, so this can affect many users
         
         return bogusCsid;
     }
@@ -306,6 +307,7 @@ public class AccountRoleSubResource
         }
         ServiceContext<AccountRole, AccountRole> ctx = createServiceContext(parentCtx, (AccountRole) null, subject);
         getStorageClient(ctx).delete(ctx, csid);
+        AuthN.get().clearUserCache();
     }
 
     /**
@@ -325,5 +327,6 @@ public class AccountRoleSubResource
         ServiceContext<AccountRole, AccountRole> ctx = createServiceContext(parentCtx, input, subject);
         DocumentHandler handler = createDocumentHandler(ctx);
         getStorageClient(ctx).delete(ctx, csid, handler);
+        AuthN.get().clearUserCache();
     }
 }
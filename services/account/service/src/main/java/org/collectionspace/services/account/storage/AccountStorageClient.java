@@ -26,6 +26,7 @@ package org.collectionspace.services.account.storage;
 import java.util.Date;
 import java.util.HashMap;
 
+import org.collectionspace.authentication.AuthN;
 import org.collectionspace.services.account.AccountsCommon;
 import org.collectionspace.services.account.storage.csidp.UserStorageClient;
 import org.collectionspace.services.authentication.User;
@@ -188,6 +189,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             handler.handle(Action.UPDATE, wrapDoc);
             handler.complete(Action.UPDATE, wrapDoc); 
             jpaConnectionContext.commitTransaction();
+            AuthN.get().clearUserCache(accountFound.getUserId());
         } catch (BadRequestException bre) {
         	jpaConnectionContext.markForRollback();
             throw bre;
@@ -220,6 +222,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             userStorageClient.delete(jpaConnectionContext, accountFound.getUserId());
             jpaConnectionContext.remove(accountFound);
             jpaConnectionContext.commitTransaction();
+            AuthN.get().clearUserCache(accountFound.getUserId());
         } catch (DocumentException de) {
         	jpaConnectionContext.markForRollback();
             throw de;
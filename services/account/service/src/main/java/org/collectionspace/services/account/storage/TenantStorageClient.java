@@ -26,6 +26,7 @@ package org.collectionspace.services.account.storage;
 import java.util.Date;
 import java.util.HashMap;
 
+import org.collectionspace.authentication.AuthN;
 import org.collectionspace.services.account.Tenant;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.BadRequestException;
@@ -165,6 +166,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             handler.complete(Action.UPDATE, wrapDoc);
             
             jpaConnectionContext.commitTransaction();
+            AuthN.get().clearUserCache(); // e.g., the tenant may have been disabled
         } catch (BadRequestException bre) {
         	jpaConnectionContext.markForRollback();
             throw bre;
@@ -197,6 +199,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             jpaConnectionContext.beginTransaction();
             jpaConnectionContext.remove(tenantFound);
             jpaConnectionContext.commitTransaction();
+            AuthN.get().clearUserCache();
         } catch (DocumentException de) {
             jpaConnectionContext.markForRollback();
             throw de;
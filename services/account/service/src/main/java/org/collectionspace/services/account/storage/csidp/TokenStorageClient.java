@@ -62,9 +62,10 @@ public class TokenStorageClient {
     static public Token create(String accountCsid, String tenantId, BigInteger expireSeconds) {
         EntityManagerFactory emf = JpaStorageUtils.getEntityManagerFactory();        
 	    Token token = new Token();
+        EntityManager em = null;
 	    
         try {
-            EntityManager em = emf.createEntityManager();
+            em = emf.createEntityManager();
 
     		token.setId(UUID.randomUUID().toString());
     		token.setAccountCsid(accountCsid);
@@ -78,6 +79,7 @@ public class TokenStorageClient {
             em.getTransaction().commit();
 
         } finally {
+            JpaStorageUtils.releaseEntityManager(em);
             if (emf != null) {
                 JpaStorageUtils.releaseEntityManagerFactory(emf);
             }
@@ -129,9 +131,10 @@ public class TokenStorageClient {
     static public Token get(String id) throws DocumentNotFoundException {
         Token tokenFound = null;
         EntityManagerFactory emf = JpaStorageUtils.getEntityManagerFactory();
+        EntityManager em = null;
 
         try {
-            EntityManager em = emf.createEntityManager();
+            em = emf.createEntityManager();
             tokenFound = (Token) em.find(Token.class, id);        
             if (tokenFound == null) {
                 String msg = "Could not find token with ID=" + id;
@@ -139,6 +142,7 @@ public class TokenStorageClient {
                 throw new DocumentNotFoundException(msg);
             }
         } finally {
+            JpaStorageUtils.releaseEntityManager(em);
             if (emf != null) {
                 JpaStorageUtils.releaseEntityManagerFactory(emf);
             }
@@ -154,9 +158,10 @@ public class TokenStorageClient {
      */
     static public void delete(String id) throws DocumentNotFoundException {
         EntityManagerFactory emf = JpaStorageUtils.getEntityManagerFactory();
+        EntityManager em = null;
 
         try {
-            EntityManager em = emf.createEntityManager();
+            em = emf.createEntityManager();
             
             StringBuilder tokenDelStr = new StringBuilder("DELETE FROM ");
 	        tokenDelStr.append(Token.class.getCanonicalName());
@@ -171,6 +176,7 @@ public class TokenStorageClient {
 	            throw new DocumentNotFoundException(msg);
 	        }
         } finally {
+            JpaStorageUtils.releaseEntityManager(em);
             if (emf != null) {
                 JpaStorageUtils.releaseEntityManagerFactory(emf);
             }
@@ -52,6 +52,7 @@ package org.collectionspace.authentication;
 import javax.sql.DataSource;
 
 import org.collectionspace.authentication.spi.AuthNContext;
+import org.collectionspace.authentication.spring.CSpaceUserCache;
 import org.collectionspace.authentication.spring.SpringAuthNContext;
 
 /**
@@ -151,4 +152,21 @@ public class AuthN {
     public String getCurrentTenantName() {
         return authnContext.getCurrentTenantName();
     }
+
+    /**
+     * clearUserCache evicts a user's cached login data (password, roles and tenants).  Call it
+     * after changing the user's account, password, roles or tenants.
+     * @param username
+     */
+    public void clearUserCache(String username) {
+        CSpaceUserCache.getInstance().removeUserFromCache(username);
+    }
+
+    /**
+     * clearUserCache evicts the cached login data of all users.  Call it after a change that
+     * may affect many users, e.g. to a role or a tenant.
+     */
+    public void clearUserCache() {
+        CSpaceUserCache.getInstance().removeAllUsersFromCache();
+    }
 }
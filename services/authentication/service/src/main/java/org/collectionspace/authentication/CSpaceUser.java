@@ -1,5 +1,6 @@
 package org.collectionspace.authentication;
 
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.springframework.security.core.GrantedAuthority;
@@ -50,6 +51,17 @@ public class CSpaceUser extends User {
         }
     }
     
+    /**
+     * Creates a copy of the given CSpaceUser, e.g. so that erasing the credentials of
+     * an authenticated user doesn't affect a cached instance.
+     * 
+     * @param user the user to copy; its password must not have been erased
+     */
+    public CSpaceUser(CSpaceUser user) {
+        this(user.getUsername(), user.getPassword(), user.salt, user.tenants,
+                new LinkedHashSet<GrantedAuthority>(user.getAuthorities()));
+    }
+    
     /**
      * Retrieves the tenants associated with the user.
      * 
@@ -33,6 +33,7 @@ import java.util.Set;
 import javax.security.auth.login.AccountException;
 
 import org.collectionspace.authentication.CSpaceTenant;
+import org.collectionspace.authentication.CSpaceUser;
 
 /**
  * Interface for the CollectionSpace realm.
@@ -85,4 +86,15 @@ public interface CSpaceRealm {
      */
     public Set<CSpaceTenant> getTenants(String username, boolean includeDisabledTenants) throws AccountException;
 
+    /**
+     * Retrieves everything needed to authenticate a user -the hashed password, salt,
+     * roles and enabled tenants- in as few round trips as the realm allows.
+     * 
+     * @param username
+     * @return the user
+     * @throws AccountNotFoundException if the user is not found
+     * @throws AccountException if the user could not be retrieved
+     */
+    public CSpaceUser getUser(String username) throws AccountException;
+
 }
@@ -54,6 +54,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -67,10 +68,13 @@ import javax.sql.DataSource;
 
 import org.collectionspace.authentication.AuthN;
 import org.collectionspace.authentication.CSpaceTenant;
+import org.collectionspace.authentication.CSpaceUser;
 import org.collectionspace.authentication.realm.CSpaceRealm;
 import org.postgresql.util.PSQLState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 /**
  * CSpaceDbRealm provides access to user, password, role, tenant database
@@ -87,8 +91,17 @@ public class CSpaceDbRealm implements CSpaceRealm {
     private String rolesQuery;
     private String tenantsQueryNoDisabled;
     private String tenantsQueryWithDisabled;
+    private volatile String loginQuery;
     private boolean suspendResume;
 
+    // Column positions in the result set of the loginQuery
+    private static final int LOGIN_PASSWORD_COLUMN = 1;
+    private static final int LOGIN_SALT_COLUMN = 2;
+    private static final int LOGIN_ACCOUNT_CSID_COLUMN = 3;
+    private static final int LOGIN_ROLE_NAME_COLUMN = 4;
+    private static final int LOGIN_TENANT_ID_COLUMN = 5;
+    private static final int LOGIN_TENANT_NAME_COLUMN = 6;
+
     private long maxRetrySeconds = MAX_RETRY_SECONDS;
     private static final int MAX_RETRY_SECONDS = 5;
     private static final String MAX_RETRY_SECONDS_STR = "maxRetrySeconds";
@@ -164,6 +177,10 @@ public class CSpaceDbRealm implements CSpaceRealm {
         if (tmp != null) {
         	tenantsQueryWithDisabled = tmp.toString();
         }
+        tmp = options.get("loginQuery");
+        if (tmp != null) {
+        	loginQuery = tmp.toString();
+        }
         tmp = options.get("suspendResume");
         if (tmp != null) {
             suspendResume = Boolean.valueOf(tmp.toString()).booleanValue();
@@ -176,6 +193,7 @@ public class CSpaceDbRealm implements CSpaceRealm {
             logger.trace("DatabaseServerLoginModule, dsJndiName=" + datasourceName);
             logger.trace("principalsQuery=" + principalsQuery);
             logger.trace("rolesQuery=" + rolesQuery);
+            logger.trace("loginQuery=" + loginQuery);
             logger.trace("suspendResume=" + suspendResume);
         }
     }
@@ -240,6 +258,128 @@ public class CSpaceDbRealm implements CSpaceRealm {
         return password;
     }
 
+    /**
+     * Retrieves the user's password, salt, roles and enabled tenants with the single joined
+     * loginQuery, which returns one row per (role, tenant) pair with these columns:
+     * password, salt, account CSID, role name, tenant id, tenant name.  The role and tenant
+     * columns may be null.  If no loginQuery is configured, or the database doesn't support
+     * it (e.g. there is no 'salt' column), the separate queries are used instead.
+     */
+    @Override
+    public CSpaceUser getUser(String username) throws AccountException {
+    	String query = loginQuery;
+    	if (query == null) {
+    		return getUserWithSeparateQueries(username);
+    	}
+
+        String password = null;
+        String salt = null;
+        String accountCsid = null;
+        Set<String> roles = new LinkedHashSet<String>();
+        Map<String, CSpaceTenant> tenants = new LinkedHashMap<String, CSpaceTenant>();
+        boolean useSeparateQueries = false;
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Executing query: " + query + ", with username: " + username);
+            }
+            ps = conn.prepareStatement(query);
+            ps.setString(1, username);
+            rs = ps.executeQuery();
+            if (rs.next() == false) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(query + " returned no matches from db");
+                }
+                throw new AccountNotFoundException("No matching username found");
+            }
+
+            password = rs.getString(LOGIN_PASSWORD_COLUMN);
+            salt = rs.getString(LOGIN_SALT_COLUMN);
+            accountCsid = rs.getString(LOGIN_ACCOUNT_CSID_COLUMN);
+            do {
+                String roleName = rs.getString(LOGIN_ROLE_NAME_COLUMN);
+                if (roleName != null) {
+                	roles.add(roleName);
+                }
+                String tenantId = rs.getString(LOGIN_TENANT_ID_COLUMN);
+                if (tenantId != null && !tenants.containsKey(tenantId)) {
+                	tenants.put(tenantId, new CSpaceTenant(tenantId, rs.getString(LOGIN_TENANT_NAME_COLUMN)));
+                }
+            } while (rs.next());
+        } catch (SQLException ex) {
+        	// Assuming PostgreSQL
+            if (PSQLState.UNDEFINED_COLUMN.getState().equals(ex.getSQLState())) {
+            	logger.warn("The login query refers to a missing column; using separate queries for the password, salt, roles and tenants from now on.", ex);
+            	loginQuery = null;
+            	useSeparateQueries = true;
+            } else {
+	            AccountException ae = new AccountException("Authentication query failed: " + ex.getLocalizedMessage());
+	            ae.initCause(ex);
+	            throw ae;
+            }
+        } catch (AccountNotFoundException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            AccountException ae = new AccountException("Unknown Exception");
+            ae.initCause(ex);
+            throw ae;
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                }
+            }
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (SQLException e) {
+                }
+            }
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                }
+            }
+        }
+
+        if (useSeparateQueries) {
+        	return getUserWithSeparateQueries(username);
+        }
+
+        Set<CSpaceTenant> tenantSet = new LinkedHashSet<CSpaceTenant>(tenants.values());
+        if (tenantSet.isEmpty() && AuthN.TENANT_MANAGER_ACCT_ID.equals(accountCsid)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("getUser called with tenantManager - synthesizing the pseudo-tenant");
+            }
+            tenantSet.add(new CSpaceTenant(AuthN.TENANT_MANAGER_ACCT_ID, "PseudoTenant"));
+        }
+
+        return new CSpaceUser(username, password, salt, tenantSet, toAuthorities(roles));
+    }
+
+    private CSpaceUser getUserWithSeparateQueries(String username) throws AccountException {
+        String password = getPassword(username);
+        String salt = getSalt(username);
+        Set<CSpaceTenant> tenants = getTenants(username);
+        Set<String> roles = getRoles(username);
+
+        return new CSpaceUser(username, password, salt, tenants, toAuthorities(roles));
+    }
+
+    private static Set<GrantedAuthority> toAuthorities(Set<String> roles) {
+        Set<GrantedAuthority> authorities = new LinkedHashSet<GrantedAuthority>(roles.size());
+        for (String role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role));
+        }
+        return authorities;
+    }
+
     @Override
     public Set<String> getRoles(String username) throws AccountException {
         if (logger.isDebugEnabled()) {
@@ -606,6 +746,20 @@ public class CSpaceDbRealm implements CSpaceRealm {
         this.rolesQuery = roleQuery;
     }
 
+    /**
+     * @return the loginQuery
+     */
+    public String getLoginQuery() {
+        return loginQuery;
+    }
+
+    /**
+     * @param loginQuery the loginQuery to set
+     */
+    public void setLoginQuery(String loginQuery) {
+        this.loginQuery = loginQuery;
+    }
+
     /**
      * @return the tenantQuery
      */
@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -19,6 +20,7 @@ import org.springframework.security.oauth2.provider.token.UserAuthenticationConv
 public class CSpaceUserAuthenticationConverter implements UserAuthenticationConverter {
 
     private UserDetailsService userDetailsService;
+    private UserCache userCache;
 
     /**
      * Creates a converter that uses the given UserDetailsService when extracting
@@ -29,6 +31,18 @@ public class CSpaceUserAuthenticationConverter implements UserAuthenticationConv
     public CSpaceUserAuthenticationConverter(UserDetailsService userDetailsService) {
         this.userDetailsService = userDetailsService;
     }
+
+    /**
+     * Creates a converter that uses the given UserDetailsService when extracting
+     * the authentication information, and caches the users it loads.
+     * 
+     * @param userDetailsService the UserDetailsService to use
+     * @param userCache the cache of loaded users
+     */
+    public CSpaceUserAuthenticationConverter(UserDetailsService userDetailsService, UserCache userCache) {
+        this.userDetailsService = userDetailsService;
+        this.userCache = userCache;
+    }
     
     @Override
     public Map<String, ?> convertUserAuthentication(Authentication userAuthentication) {
@@ -52,7 +66,13 @@ public class CSpaceUserAuthenticationConverter implements UserAuthenticationConv
         String username = (String) map.get(USERNAME);
 
         try {
-            UserDetails user = userDetailsService.loadUserByUsername(username);
+            UserDetails user = userCache != null ? userCache.getUserFromCache(username) : null;
+            if (user == null) {
+                user = userDetailsService.loadUserByUsername(username);
+                if (userCache != null) {
+                    userCache.putUserInCache(user);
+                }
+            }
             
             return new UsernamePasswordAuthenticationToken(user, "N/A", user.getAuthorities());
         }
@@ -0,0 +1,255 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.authentication.spring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.collectionspace.authentication.CSpaceUser;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * A short-lived cache of the users loaded by CSpaceUserDetailsService, so clients that send
+ * HTTP Basic credentials (or a token) with every request don't cost a database round trip each time.
+ *
+ * When used as the DaoAuthenticationProvider's user cache, a cached user only authenticates a
+ * request whose credential hashes to the cached (hashed) password; if it doesn't, the provider
+ * reloads the user from the database before failing, so password changes made elsewhere are
+ * picked up immediately.  Account, password, role and tenant changes made through the services
+ * evict the affected users (see AuthN.clearUserCache()), and every entry expires after the TTL.
+ *
+ * The cache only hands out copies of its entries.  The authentication manager erases the
+ * credentials of the user it authenticated, and that must not affect the cached (hashed) password
+ * that the next request is checked against.
+ *
+ * The cache also keeps login statistics: hit rate, and the number and latency of user loads.
+ *
+ * The TTL and size can be configured with these system properties:
+ *   org.collectionspace.services.authentication.userCacheSeconds (0 disables the cache)
+ *   org.collectionspace.services.authentication.userCacheSize
+ */
+public class CSpaceUserCache implements UserCache {
+	final static Logger logger = LoggerFactory.getLogger(CSpaceUserCache.class);
+
+	public static final String TTL_PROPERTY = "org.collectionspace.services.authentication.userCacheSeconds";
+	public static final String SIZE_PROPERTY = "org.collectionspace.services.authentication.userCacheSize";
+
+	public static final int DEFAULT_TTL_SECONDS = 60;
+	public static final int DEFAULT_SIZE = 1000;
+
+	private static final CSpaceUserCache instance = new CSpaceUserCache(
+			getIntProperty(TTL_PROPERTY, DEFAULT_TTL_SECONDS), getIntProperty(SIZE_PROPERTY, DEFAULT_SIZE));
+
+	private static class Entry {
+		final UserDetails user;
+		final long expiresAt;
+
+		Entry(UserDetails user, long expiresAt) {
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final long ttlMillis;
+	private final Map<String, Entry> users;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong totalLoadNanos = new AtomicLong();
+	private final AtomicLong maxLoadNanos = new AtomicLong();
+
+	private CSpaceUserCache(int ttlSeconds, final int maxSize) {
+		this.ttlMillis = ttlSeconds * 1000L;
+		this.users = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the shared cache; Spring configuration uses this as a factory method
+	 */
+	public static CSpaceUserCache getInstance() {
+		return instance;
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		int result = defaultValue;
+		String value = System.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, name, defaultValue));
+			}
+		}
+		return result >= 0 ? result : defaultValue;
+	}
+
+	public boolean isEnabled() {
+		return ttlMillis > 0;
+	}
+
+	@Override
+	public UserDetails getUserFromCache(String username) {
+		UserDetails result = null;
+		if (isEnabled() && username != null) {
+			synchronized (users) {
+				Entry entry = users.get(username);
+				if (entry != null) {
+					if (entry.expiresAt > System.currentTimeMillis()) {
+						result = copy(entry.user);
+					} else {
+						users.remove(username);
+					}
+				}
+			}
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	@Override
+	public void putUserInCache(UserDetails user) {
+		if (isEnabled() && user != null && user.getPassword() != null) {
+			Entry entry = new Entry(copy(user), System.currentTimeMillis() + ttlMillis);
+			synchronized (users) {
+				users.put(user.getUsername(), entry);
+			}
+		}
+	}
+
+	/*
+	 * Copies a user, so that erasing the credentials of the copy leaves the original intact.
+	 */
+	private static UserDetails copy(UserDetails user) {
+		if (user instanceof CSpaceUser) {
+			return new CSpaceUser((CSpaceUser) user);
+		}
+		return new User(user.getUsername(), user.getPassword(), user.isEnabled(), user.isAccountNonExpired(),
+				user.isCredentialsNonExpired(), user.isAccountNonLocked(), user.getAuthorities());
+	}
+
+	@Override
+	public void removeUserFromCache(String username) {
+		if (username != null) {
+			boolean removed = false;
+			synchronized (users) {
+				removed = users.remove(username) != null;
+			}
+			if (removed) {
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * removeAllUsersFromCache is used when a change (e.g. to a role or tenant) may affect many users
+	 */
+	public void removeAllUsersFromCache() {
+		int removed = 0;
+		synchronized (users) {
+			removed = users.size();
+			users.clear();
+		}
+		invalidations.addAndGet(removed);
+	}
+
+	/**
+	 * recordLoad records how long it took to load a user from the realm
+	 * @param nanos
+	 */
+	public void recordLoad(long nanos) {
+		loads.incrementAndGet();
+		totalLoadNanos.addAndGet(nanos);
+		long max = maxLoadNanos.get();
+		while (nanos > max && !maxLoadNanos.compareAndSet(max, nanos)) {
+			max = maxLoadNanos.get();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if there haven't been any lookups
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total > 0 ? (double) hitCount / total : 0;
+	}
+
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	public long getMeanLoadMillis() {
+		long count = loads.get();
+		return count > 0 ? totalLoadNanos.get() / count / 1000000 : 0;
+	}
+
+	public long getMaxLoadMillis() {
+		return maxLoadNanos.get() / 1000000;
+	}
+
+	public int size() {
+		synchronized (users) {
+			return users.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CSpaceUserCache [size=%d, hits=%d, misses=%d, hitRate=%.3f, invalidations=%d, loads=%d, meanLoadMillis=%d, maxLoadMillis=%d]",
+				size(), getHitCount(), getMissCount(), getHitRate(), getInvalidationCount(), getLoadCount(),
+				getMeanLoadMillis(), getMaxLoadMillis());
+	}
+}
@@ -73,16 +73,11 @@ public class CSpaceUserDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        String password = null;
-        String salt = null;
-        Set<CSpaceTenant> tenants = null;
-        Set<GrantedAuthority> grantedAuthorities = null;
+        CSpaceUser cspaceUser = null;
+        long start = System.nanoTime();
         
         try {
-            password = realm.getPassword(username);
-            salt = realm.getSalt(username);
-            tenants = getTenants(username);
-            grantedAuthorities = getAuthorities(username);
+            cspaceUser = realm.getUser(username);
         }
         catch (AccountNotFoundException e) {
             throw new UsernameNotFoundException(e.getMessage(), e);
@@ -90,14 +85,9 @@ public class CSpaceUserDetailsService implements UserDetailsService {
         catch (AccountException e) {
             throw new AuthenticationServiceException(e.getMessage(), e);
         }
-        
-        CSpaceUser cspaceUser = 
-            new CSpaceUser(
-                username,
-                password,
-                salt,
-                tenants,
-                grantedAuthorities);
+        finally {
+            CSpaceUserCache.getInstance().recordLoad(System.nanoTime() - start);
+        }
                 
         return cspaceUser;
     }
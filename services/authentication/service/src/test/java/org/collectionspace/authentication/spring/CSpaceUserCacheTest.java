@@ -0,0 +1,122 @@
+package org.collectionspace.authentication.spring;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.authentication.CSpaceSaltSource;
+import org.collectionspace.authentication.CSpaceTenant;
+import org.collectionspace.authentication.CSpaceUser;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authentication.encoding.ShaPasswordEncoder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Authenticates through the same provider setup as applicationContext-security.xml, including
+ * the authentication manager's erasing of credentials, and checks that repeat logins are served
+ * from the user cache.
+ */
+public class CSpaceUserCacheTest {
+    private static final String PASSWORD = "secret";
+    private static final String SALT = "pepper";
+
+    private final CSpaceUserCache cache = CSpaceUserCache.getInstance();
+
+    private String username;
+    private int loads;
+    private ProviderManager authenticationManager;
+
+    @BeforeMethod
+    public void setUp() {
+        // A new user for every test, so the shared cache doesn't carry state between them
+        username = "user" + System.nanoTime() + "@example.org";
+        loads = 0;
+
+        final ShaPasswordEncoder passwordEncoder = new ShaPasswordEncoder(256);
+        passwordEncoder.setEncodeHashAsBase64(true);
+
+        CSpaceSaltSource saltSource = new CSpaceSaltSource();
+        saltSource.setUserPropertyToUse("salt");
+
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(new UserDetailsService() {
+            @Override
+            public UserDetails loadUserByUsername(String name) throws UsernameNotFoundException {
+                if (!name.equals(username)) {
+                    throw new UsernameNotFoundException(name);
+                }
+                loads++;
+                return new CSpaceUser(name, passwordEncoder.encodePassword(PASSWORD, SALT), SALT,
+                        new HashSet<CSpaceTenant>(Arrays.asList(new CSpaceTenant("1", "test.tenant"))),
+                        new HashSet<GrantedAuthority>(Arrays.asList(new SimpleGrantedAuthority("ROLE_1_TEST"))));
+            }
+        });
+        provider.setUserCache(cache);
+        provider.setSaltSource(saltSource);
+        provider.setPasswordEncoder(passwordEncoder);
+
+        // Erases credentials after authentication, like the configured authentication manager
+        authenticationManager = new ProviderManager(Collections.<AuthenticationProvider>singletonList(provider));
+    }
+
+    private Authentication authenticate(String password) {
+        return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+    }
+
+    @Test
+    public void testSecondLoginIsServedFromCache() {
+        assertTrue(authenticationManager.isEraseCredentialsAfterAuthentication());
+
+        Authentication first = authenticate(PASSWORD);
+        assertEquals(loads, 1);
+        assertNull(((CSpaceUser) first.getPrincipal()).getPassword(), "The credentials were not erased");
+
+        long hits = cache.getHitCount();
+        Authentication second = authenticate(PASSWORD);
+
+        assertEquals(loads, 1, "The second login loaded the user again");
+        assertEquals(cache.getHitCount(), hits + 1);
+        assertNotSame(second.getPrincipal(), first.getPrincipal());
+        assertEquals(((CSpaceUser) second.getPrincipal()).getPrimaryTenant().getId(), "1");
+    }
+
+    @Test
+    public void testWrongPasswordIsRejectedAfterCaching() {
+        authenticate(PASSWORD);
+
+        try {
+            authenticate("wrong");
+            fail("A wrong password was accepted");
+        } catch (BadCredentialsException e) {
+            // expected
+        }
+        // The provider reloads the user before rejecting a cached one
+        assertEquals(loads, 2);
+
+        authenticate(PASSWORD);
+        assertEquals(loads, 2);
+    }
+
+    @Test
+    public void testCachedUserIsNotShared() {
+        authenticate(PASSWORD);
+
+        UserDetails cached = cache.getUserFromCache(username);
+        ((CSpaceUser) cached).eraseCredentials();
+
+        assertNotNull(cache.getUserFromCache(username).getPassword());
+    }
+}
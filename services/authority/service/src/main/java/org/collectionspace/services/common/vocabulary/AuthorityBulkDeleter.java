@@ -0,0 +1,607 @@
+package org.collectionspace.services.common.vocabulary;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.login.LoginContext;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.BackgroundTaskExecutor;
+import org.collectionspace.services.common.api.RefNameUtils;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.DocumentReferenceException;
+import org.collectionspace.services.common.relation.HierarchyClosure;
+import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
+import org.collectionspace.services.common.repository.RepositoryClient;
+import org.collectionspace.services.common.storage.CsidDirectory;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.NuxeoRepositoryClientImpl;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.runtime.api.Framework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Deletes all of the items of an authority, and optionally the authority itself.
+ *
+ * The items are read with keyset-paged projection queries on their CSIDs, and the references to all of them are
+ * checked up front, with one query per referencing doctype (see RefNameServiceUtils.findTermReferences).  If a
+ * record that isn't soft-deleted references one of the items, nothing is deleted.  As when items are deleted one
+ * at a time, an item that only soft-deleted records reference is soft-deleted rather than hard-deleted.  The other
+ * items are hard-deleted in chunks, each in its own transaction, along with the relations -hierarchy relations
+ * included- that they are the subject or object of.  References between the items themselves don't count,
+ * since they're all being deleted.
+ *
+ * Records can be saved while the items are being deleted, so the references to each chunk's items are checked
+ * again in the chunk's transaction, just before they're deleted.  An item referenced since the first check stops
+ * the deletion, leaving the chunks already deleted gone.  A reference saved by another transaction after that
+ * second check, and before the chunk commits, isn't seen; the same goes for a single item's delete.
+ *
+ * An authority with more items than the system property org.collectionspace.services.authority.bulkDelete.asyncThreshold
+ * (1000 by default) is deleted by a background task.  The progress of the latest deletion of each authority can
+ * be read with get(), while it runs and after it finishes.  The number of items deleted in each transaction is
+ * set by org.collectionspace.services.authority.bulkDelete.chunkSize (100 by default).
+ */
+public class AuthorityBulkDeleter {
+	final static Logger logger = LoggerFactory.getLogger(AuthorityBulkDeleter.class);
+
+	public static final String ASYNC_THRESHOLD_PROPERTY = "org.collectionspace.services.authority.bulkDelete.asyncThreshold";
+	public static final int DEFAULT_ASYNC_THRESHOLD = 1000;
+
+	public static final String CHUNK_SIZE_PROPERTY = "org.collectionspace.services.authority.bulkDelete.chunkSize";
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+	public static final String STATUS_ELEMENT = "authority-deletion";
+
+	static final int ITEM_PAGE_SIZE = 1000;
+	private static final int MAX_CSIDS_IN_MESSAGE = 10;
+	private static final long KEEP_FINISHED_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+	public enum State {
+		PENDING, RUNNING, COMPLETED, FAILED;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	static class Item {
+		final String id;
+		final String csid;
+		final String refNameBase;
+		final String workflowState;
+
+		Item(String id, String csid, String refNameBase, String workflowState) {
+			this.id = id;
+			this.csid = csid;
+			this.refNameBase = refNameBase;
+			this.workflowState = workflowState;
+		}
+	}
+
+	// The latest deletion of each authority, by tenant and authority CSID
+	private static final ConcurrentMap<String, AuthorityBulkDeleter> deletions = new ConcurrentHashMap<String, AuthorityBulkDeleter>();
+
+	private final AuthorityResource<?, ?> resource;
+	private final ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx;
+	private final ServiceContext<PoxPayloadIn, PoxPayloadOut> itemCtx;
+	private final String tenantId;
+	private final String authorityCsid;
+	private final boolean deleteAuthority;
+
+	private volatile State state = State.PENDING;
+	private volatile int totalItems = 0;
+	private final AtomicInteger itemsDeleted = new AtomicInteger();
+	private final AtomicInteger itemsSoftDeleted = new AtomicInteger();
+	private final AtomicInteger itemsKept = new AtomicInteger();
+	private final AtomicInteger relationsDeleted = new AtomicInteger();
+	private volatile String message = null;
+	private volatile long finishedAt = 0;
+
+	// The CSIDs of all of the items, whose references to each other are ignored
+	private Set<String> itemCsids = new HashSet<String>();
+
+	/**
+	 * @param resource the resource of the authority
+	 * @param ctx a service context of the authority's service
+	 * @param itemCtx a service context of the authority's item service
+	 * @param authorityCsid
+	 * @param deleteAuthority true to delete the authority once its items are deleted
+	 */
+	public AuthorityBulkDeleter(AuthorityResource<?, ?> resource,
+			ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+			ServiceContext<PoxPayloadIn, PoxPayloadOut> itemCtx,
+			String authorityCsid,
+			boolean deleteAuthority) {
+		this.resource = resource;
+		this.ctx = ctx;
+		this.itemCtx = itemCtx;
+		this.tenantId = ctx.getTenantId();
+		this.authorityCsid = authorityCsid;
+		this.deleteAuthority = deleteAuthority;
+	}
+
+	public static int getAsyncThreshold() {
+		return getIntProperty(ASYNC_THRESHOLD_PROPERTY, DEFAULT_ASYNC_THRESHOLD);
+	}
+
+	public static int getChunkSize() {
+		return getIntProperty(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		int result = defaultValue;
+		String value = System.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, name, defaultValue));
+			}
+		}
+		return result > 0 ? result : defaultValue;
+	}
+
+	private static String getKey(String tenantId, String authorityCsid) {
+		return tenantId + ":" + authorityCsid;
+	}
+
+	/**
+	 * @return the latest deletion of the authority's items, or null if there hasn't been one recently
+	 */
+	public static AuthorityBulkDeleter get(String tenantId, String authorityCsid) {
+		return deletions.get(getKey(tenantId, authorityCsid));
+	}
+
+	/**
+	 * Records this as the latest deletion of the authority's items.  Once registered, the deletion must be run or
+	 * started, so that it finishes and doesn't block later deletions of the authority's items.
+	 *
+	 * @return false if another deletion of the authority's items hasn't finished yet
+	 */
+	public boolean register() {
+		synchronized (deletions) {
+			long now = System.currentTimeMillis();
+			for (Iterator<AuthorityBulkDeleter> iter = deletions.values().iterator(); iter.hasNext();) {
+				AuthorityBulkDeleter deletion = iter.next();
+				if (deletion.isFinished() && now - deletion.finishedAt > KEEP_FINISHED_MILLIS) {
+					iter.remove();
+				}
+			}
+
+			String key = getKey(tenantId, authorityCsid);
+			AuthorityBulkDeleter current = deletions.get(key);
+			if (current != null && current != this && current.isFinished() == false) {
+				return false;
+			}
+			deletions.put(key, this);
+			return true;
+		}
+	}
+
+	/**
+	 * @return the number of items in the authority, soft-deleted ones included
+	 */
+	public int countItems() throws Exception {
+		RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = resource.getRepositoryClient(itemCtx);
+		CoreSessionInterface repoSession = repoClient.getRepositorySession(itemCtx);
+		try {
+			totalItems = (int) repoSession.query(buildItemQuery("*", null), null, 1, 0, true).totalSize();
+		} finally {
+			repoClient.releaseRepositorySession(itemCtx, repoSession);
+		}
+		return totalItems;
+	}
+
+	/**
+	 * Deletes the items in the background.  The deletion must have been registered.
+	 *
+	 * @throws RejectedExecutionException if the background task executor is full
+	 */
+	public void start() {
+		final SecurityContext securityContext = SecurityContextHolder.getContext();
+
+		try {
+			BackgroundTaskExecutor.getInstance().submit("delete the items of authority " + authorityCsid, new Runnable() {
+				@Override
+				public void run() {
+					LoginContext loginContext = null;
+					SecurityContextHolder.setContext(securityContext);
+					try {
+						loginContext = Framework.login();
+						AuthorityBulkDeleter.this.run();
+					} catch (Throwable t) {
+						if (isFinished() == false) {
+							fail(t);
+						}
+						logger.error(String.format("The deletion of the items of authority '%s' failed.", authorityCsid), t);
+					} finally {
+						if (loginContext != null) {
+							try {
+								loginContext.logout();
+							} catch (Exception e) {
+								logger.warn("Could not log out of the Nuxeo framework.", e);
+							}
+						}
+						SecurityContextHolder.clearContext();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			fail(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the items in the current thread.  The deletion must have been registered.
+	 *
+	 * @throws DocumentReferenceException if records that aren't soft-deleted reference any of the items
+	 */
+	public void run() throws Exception {
+		state = State.RUNNING;
+		try {
+			List<Item> items = findItems();
+			for (Item item : items) {
+				itemCsids.add(item.csid);
+			}
+
+			List<Item> softDeletes = new ArrayList<Item>();
+			List<Item> hardDeletes = new ArrayList<Item>();
+			RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = resource.getRepositoryClient(itemCtx);
+			CoreSessionInterface repoSession = repoClient.getRepositorySession(itemCtx);
+			try {
+				checkReferences(repoSession, items, itemCsids, softDeletes, hardDeletes);
+			} finally {
+				repoClient.releaseRepositorySession(itemCtx, repoSession);
+			}
+
+			int chunkSize = getChunkSize();
+			for (int start = 0; start < hardDeletes.size(); start += chunkSize) {
+				deleteChunk(hardDeletes.subList(start, Math.min(start + chunkSize, hardDeletes.size())), softDeletes);
+			}
+			for (int start = 0; start < softDeletes.size(); start += chunkSize) {
+				softDeleteChunk(softDeletes.subList(start, Math.min(start + chunkSize, softDeletes.size())));
+			}
+
+			if (deleteAuthority) {
+				resource.deleteAuthorityDocument(ctx, authorityCsid);
+			}
+			RefNameResolutionCache.getInstance().invalidateAuthority(tenantId, authorityCsid);
+
+			finish(State.COMPLETED);
+			logger.info(String.format("Deleted the items of authority '%s': %s", authorityCsid, this));
+		} catch (Throwable t) {
+			fail(t);
+			throw t;
+		}
+	}
+
+	private void fail(Throwable t) {
+		message = t.getMessage() != null ? t.getMessage() : t.toString();
+		finish(State.FAILED);
+	}
+
+	private void finish(State finalState) {
+		finishedAt = System.currentTimeMillis();
+		state = finalState;
+	}
+
+	private String buildItemQuery(String fields, String afterCsid) throws Exception {
+		return buildItemQuery(resource.authorityItemCommonSchemaName,
+				NuxeoUtils.getTenantQualifiedDocType(tenantId, resource.getItemDocType(tenantId)), fields, afterCsid);
+	}
+
+	String buildItemQuery(String schema, String docType, String fields, String afterCsid) {
+		return "SELECT " + fields + " FROM " + docType
+				+ " WHERE " + schema + ":" + AuthorityItemJAXBSchema.IN_AUTHORITY + " = " + NXQL.escapeString(authorityCsid)
+				+ " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0"
+				+ (afterCsid != null ? " AND " + NXQL.ECM_NAME + " > " + NXQL.escapeString(afterCsid) : "");
+	}
+
+	List<Item> findItems() throws Exception {
+		RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = resource.getRepositoryClient(itemCtx);
+		CoreSessionInterface repoSession = repoClient.getRepositorySession(itemCtx);
+		try {
+			return findItems(repoSession, resource.authorityItemCommonSchemaName,
+					NuxeoUtils.getTenantQualifiedDocType(tenantId, resource.getItemDocType(tenantId)));
+		} finally {
+			repoClient.releaseRepositorySession(itemCtx, repoSession);
+		}
+	}
+
+	/*
+	 * Reads the items a page at a time, in CSID order, starting each page after the last CSID of the one before.  Each
+	 * page is a projection query whose limit goes to the database, so only the page's rows are read.
+	 */
+	List<Item> findItems(CoreSessionInterface repoSession, String schema, String docType) throws Exception {
+		List<Item> items = new ArrayList<Item>();
+		String refNameField = schema + ":" + AuthorityItemJAXBSchema.REF_NAME;
+		String fields = NXQL.ECM_UUID + ", " + NXQL.ECM_NAME + ", " + NXQL.ECM_LIFECYCLESTATE + ", " + refNameField;
+
+		String lastCsid = null;
+		List<Map<String, Serializable>> page;
+		do {
+			page = repoSession.queryProjection(
+					buildItemQuery(schema, docType, fields, lastCsid) + " ORDER BY " + NXQL.ECM_NAME, ITEM_PAGE_SIZE, 0);
+			for (Map<String, Serializable> row : page) {
+				String refName = (String) row.get(refNameField);
+				String refNameBase = null;
+				if (refName != null) {
+					try {
+						refNameBase = RefNameUtils.stripAuthorityTermDisplayName(refName);
+					} catch (IllegalArgumentException e) {
+						logger.warn(String.format("Authority item '%s' has an invalid refName: %s", row.get(NXQL.ECM_NAME), refName));
+					}
+				}
+				lastCsid = (String) row.get(NXQL.ECM_NAME);
+				items.add(new Item((String) row.get(NXQL.ECM_UUID), lastCsid, refNameBase,
+						(String) row.get(NXQL.ECM_LIFECYCLESTATE)));
+			}
+		} while (page.size() == ITEM_PAGE_SIZE);
+
+		totalItems = items.size();
+		return items;
+	}
+
+	/*
+	 * Sorts the items into those to soft-delete, those to hard-delete, and those that are already soft-deleted and
+	 * can't be hard-deleted.  References from the records with the given CSIDs are ignored.
+	 */
+	void checkReferences(CoreSessionInterface repoSession, List<Item> items, Set<String> ignoredCsids,
+			List<Item> softDeletes, List<Item> hardDeletes) throws Exception {
+		Set<String> refNameBases = new HashSet<String>();
+		for (Item item : items) {
+			if (item.refNameBase != null) {
+				refNameBases.add(item.refNameBase);
+			}
+		}
+
+		Map<String, Boolean> references = refNameBases.isEmpty() ? new HashMap<String, Boolean>()
+				: findReferences(repoSession, refNameBases, ignoredCsids);
+
+		List<String> referencedCsids = new ArrayList<String>();
+		for (Item item : items) {
+			Boolean isReferenced = item.refNameBase != null ? references.get(item.refNameBase) : null;
+			if (isReferenced == null) {
+				hardDeletes.add(item);
+			} else if (isReferenced == true) {
+				referencedCsids.add(item.csid);
+			} else if (item.workflowState.contains(WorkflowClient.WORKFLOWSTATE_DELETED)) {
+				itemsKept.incrementAndGet();
+			} else {
+				softDeletes.add(item);
+			}
+		}
+
+		if (referencedCsids.isEmpty() == false) {
+			logger.error(String.format("Cannot delete the items of authority '%s' because records in the system are referencing %d of them: %s",
+					authorityCsid, referencedCsids.size(), referencedCsids));
+			throw new DocumentReferenceException(String.format(
+					"Cannot delete the items of authority '%s' because records in the system are still referencing %d of them, including %s.  See the service layer log file for details.",
+					authorityCsid, referencedCsids.size(),
+					referencedCsids.subList(0, Math.min(MAX_CSIDS_IN_MESSAGE, referencedCsids.size()))));
+		}
+	}
+
+	/*
+	 * @return whether each of the refNames is referenced, by records that aren't soft-deleted or only by ones that are;
+	 * see RefNameServiceUtils.findTermReferences
+	 */
+	protected Map<String, Boolean> findReferences(CoreSessionInterface repoSession, Set<String> refNameBases,
+			Set<String> ignoredCsids) throws Exception {
+		return RefNameServiceUtils.findTermReferences(itemCtx, repoSession, refNameBases, ignoredCsids);
+	}
+
+	/*
+	 * Hard-deletes a chunk of items, and the relations they're in, in one transaction.  The references to the items are
+	 * checked again first: items that have been referenced since the first check are soft-deleted later instead, or stop
+	 * the deletion.
+	 */
+	private void deleteChunk(List<Item> candidates, List<Item> softDeletes) throws Exception {
+		RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = resource.getRepositoryClient(itemCtx);
+		String relationsRepositoryName = HierarchyClosure.getRelationsRepositoryName(tenantId);
+		boolean separateRelationsRepository = relationsRepositoryName != null
+				&& relationsRepositoryName.equals(itemCtx.getRepositoryName()) == false;
+		int relationCount = 0;
+
+		List<Item> chunk = new ArrayList<Item>();
+		CoreSessionInterface repoSession = repoClient.getRepositorySession(itemCtx); // starts the chunk's transaction
+		try {
+			checkReferences(repoSession, candidates, itemCsids, softDeletes, chunk);
+			if (chunk.isEmpty()) {
+				return;
+			}
+
+			CoreSessionInterface relationsSession = repoSession;
+			if (separateRelationsRepository) {
+				relationsSession = ((NuxeoRepositoryClientImpl) repoClient).getRepositorySession(relationsRepositoryName);
+			}
+			try {
+				relationCount = deleteRelations(relationsSession, chunk);
+			} finally {
+				if (separateRelationsRepository) {
+					repoClient.releaseRepositorySession(null, relationsSession);
+				}
+			}
+
+			DocumentRef[] itemRefs = new DocumentRef[chunk.size()];
+			for (int i = 0; i < chunk.size(); i++) {
+				itemRefs[i] = new IdRef(chunk.get(i).id);
+			}
+			repoSession.removeDocuments(itemRefs);
+			updateAuthorityRevNumber(repoSession);
+			repoSession.save();
+
+			for (Item item : chunk) {
+				RefNameResolutionCache.getInstance().invalidateItem(tenantId, item.csid);
+				CsidDirectory.getInstance().removeAfterCommit(tenantId, item.csid);
+			}
+		} catch (Throwable t) {
+			repoSession.setTransactionRollbackOnly();
+			throw t;
+		} finally {
+			repoClient.releaseRepositorySession(itemCtx, repoSession); // commits the chunk's transaction
+		}
+
+		itemsDeleted.addAndGet(chunk.size());
+		relationsDeleted.addAndGet(relationCount);
+	}
+
+	/*
+	 * Removes the relations that the items are the subject or object of.  The UpdateHierarchyClosure listener takes
+	 * the hasBroader ones out of the hierarchy closure as they are removed.
+	 */
+	private int deleteRelations(CoreSessionInterface relationsSession, List<Item> items) throws Exception {
+		String subjectField = RelationConstants.SUBJECT_CSID_SCHEMA_NAME + ":" + RelationConstants.SUBJECT_CSID_FIELD_NAME;
+		String objectField = RelationConstants.OBJECT_CSID_SCHEMA_NAME + ":" + RelationConstants.OBJECT_CSID_FIELD_NAME;
+
+		StringBuilder csidList = new StringBuilder();
+		for (Item item : items) {
+			csidList.append(csidList.length() > 0 ? ", " : "").append(NXQL.escapeString(item.csid));
+		}
+		String query = "SELECT " + NXQL.ECM_UUID
+				+ " FROM " + RelationConstants.NUXEO_DOCTYPE
+				+ " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NXQL.escapeString(tenantId)
+				+ " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0"
+				+ " AND (" + subjectField + " IN (" + csidList + ") OR " + objectField + " IN (" + csidList + "))";
+
+		List<DocumentRef> relationRefs = new ArrayList<DocumentRef>();
+		IterableQueryResult result = relationsSession.queryAndFetch(query, NXQL.NXQL);
+		try {
+			for (Map<String, Serializable> row : result) {
+				relationRefs.add(new IdRef((String) row.get(NXQL.ECM_UUID)));
+			}
+		} finally {
+			result.close();
+		}
+
+		if (relationRefs.isEmpty() == false) {
+			relationsSession.removeDocuments(relationRefs.toArray(new DocumentRef[relationRefs.size()]));
+		}
+
+		return relationRefs.size();
+	}
+
+	/*
+	 * Bumps the authority's revision number once for the whole chunk, rather than once per item.
+	 */
+	private void updateAuthorityRevNumber(CoreSessionInterface repoSession) throws Exception {
+		DocumentModel authorityDocModel = NuxeoUtils.getDocFromCsid(ctx, repoSession, authorityCsid);
+		if (authorityDocModel != null) {
+			Long rev = (Long) authorityDocModel.getProperty(resource.authorityCommonSchemaName, AuthorityJAXBSchema.REV);
+			authorityDocModel.setProperty(resource.authorityCommonSchemaName, AuthorityJAXBSchema.REV, rev == null ? 1 : rev + 1);
+			repoSession.saveDocument(authorityDocModel);
+		}
+	}
+
+	/*
+	 * Soft-deletes a chunk of items, one at a time, in one transaction.  Their relations are soft-deleted by the
+	 * UpdateRelationsOnDelete listener.
+	 */
+	private void softDeleteChunk(List<Item> chunk) throws Exception {
+		RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = resource.getRepositoryClient(itemCtx);
+		CoreSessionInterface repoSession = repoClient.getRepositorySession(itemCtx); // starts the chunk's transaction
+		try {
+			for (Item item : chunk) {
+				resource.updateItemWorkflowWithTransition(itemCtx, authorityCsid, item.csid,
+						WorkflowClient.WORKFLOWTRANSITION_DELETE, AuthorityServiceUtils.UPDATE_REV);
+			}
+		} catch (Throwable t) {
+			repoSession.setTransactionRollbackOnly();
+			throw t;
+		} finally {
+			repoClient.releaseRepositorySession(itemCtx, repoSession); // commits the chunk's transaction
+		}
+
+		itemsSoftDeleted.addAndGet(chunk.size());
+	}
+
+	public String getAuthorityCsid() {
+		return authorityCsid;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isFinished() {
+		return state == State.COMPLETED || state == State.FAILED;
+	}
+
+	public int getTotalItems() {
+		return totalItems;
+	}
+
+	public int getItemsDeleted() {
+		return itemsDeleted.get();
+	}
+
+	public int getItemsSoftDeleted() {
+		return itemsSoftDeleted.get();
+	}
+
+	public int getRelationsDeleted() {
+		return relationsDeleted.get();
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public String toXML() {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append('<').append(STATUS_ELEMENT).append('>');
+		sb.append("<csid>").append(escape(authorityCsid)).append("</csid>");
+		sb.append("<deleteAuthority>").append(deleteAuthority).append("</deleteAuthority>");
+		sb.append("<state>").append(state).append("</state>");
+		sb.append("<totalItems>").append(totalItems).append("</totalItems>");
+		sb.append("<itemsDeleted>").append(itemsDeleted.get()).append("</itemsDeleted>");
+		sb.append("<itemsSoftDeleted>").append(itemsSoftDeleted.get()).append("</itemsSoftDeleted>");
+		sb.append("<itemsKept>").append(itemsKept.get()).append("</itemsKept>");
+		sb.append("<relationsDeleted>").append(relationsDeleted.get()).append("</relationsDeleted>");
+		if (message != null) {
+			sb.append("<message>").append(escape(message)).append("</message>");
+		}
+		sb.append("</").append(STATUS_ELEMENT).append('>');
+		return sb.toString();
+	}
+
+	public byte[] getBytes() {
+		return toXML().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("AuthorityBulkDeleter [csid=%s, state=%s, totalItems=%d, itemsDeleted=%d, itemsSoftDeleted=%d, itemsKept=%d, relationsDeleted=%d]",
+				authorityCsid, state, totalItems, itemsDeleted.get(), itemsSoftDeleted.get(), itemsKept.get(), relationsDeleted.get());
+	}
+}
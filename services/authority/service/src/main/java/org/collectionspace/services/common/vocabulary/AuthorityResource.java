@@ -23,6 +23,9 @@
  */
 package org.collectionspace.services.common.vocabulary;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +45,7 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import org.collectionspace.services.client.CollectionSpaceClient;
 import org.collectionspace.services.client.IClientQueryParams;
 import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.client.PoxPayload;
@@ -49,6 +53,7 @@ import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.XmlTools;
 import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.BulkReadResult;
 import org.collectionspace.services.common.CollectionSpaceResource;
 import org.collectionspace.services.common.CSWebApplicationException;
 import org.collectionspace.services.common.NuxeoBasedResource;
@@ -118,6 +123,7 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
 
     final static String SEARCH_TYPE_TERMSTATUS = "ts";
     public final static String hierarchy = "hierarchy";
+    public final static String DELETION_STATUS = "deletion";
 
     private static final Integer PAGE_NUM_FROM_QUERYPARAMS = null;
     private static final Integer PAGE_SIZE_FROM_QUERYPARAMS = null;
@@ -388,38 +394,44 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
         PoxPayloadOut payloadOut = null;
         Specifier specifier;
 
-        //
-        // Prevent multiple SAS synchronizations from occurring simultaneously by synchronizing this method.
-        //
-        synchronized(AuthorityResource.class) {
-            try {
-                ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
-                /*
-                 * Make sure this authority service supports synchronization
-                 */
-                if (supportsReplicating(ctx.getTenantId(), ctx.getServiceName()) == false) {
-                    throw new DocumentException(Response.Status.FORBIDDEN.getStatusCode());
-                }
-                AuthorityDocumentModelHandler handler = (AuthorityDocumentModelHandler)createDocumentHandler(ctx);
-                specifier = Specifier.getSpecifier(identifier, "getAuthority", "GET");
-                handler.setShouldUpdateRevNumber(AuthorityServiceUtils.DONT_UPDATE_REV); // Never update rev number on sync calls
-                neededSync = getRepositoryClient(ctx).synchronize(ctx, specifier, handler);
-                payloadOut = ctx.getOutput();
-            } catch (Exception e) {
-                throw bigReThrow(e, ServiceMessages.SYNC_FAILED, identifier);
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
+            /*
+             * Make sure this authority service supports synchronization
+             */
+            if (supportsReplicating(ctx.getTenantId(), ctx.getServiceName()) == false) {
+                throw new DocumentException(Response.Status.FORBIDDEN.getStatusCode());
             }
-
+            AuthorityDocumentModelHandler handler = (AuthorityDocumentModelHandler)createDocumentHandler(ctx);
+            specifier = Specifier.getSpecifier(identifier, "getAuthority", "GET");
+            handler.setShouldUpdateRevNumber(AuthorityServiceUtils.DONT_UPDATE_REV); // Never update rev number on sync calls
             //
-            // If a sync was needed and was successful, return a copy of the updated resource.  Acts like an UPDATE.
+            // Prevent multiple SAS synchronizations of the same authority from occurring simultaneously.  Other
+            // authorities can be synchronized at the same time.
             //
-            if (neededSync == true) {
-                result = payloadOut.getBytes();
-            } else {
-                result = String.format("Authority resource '%s' was already in sync with shared authority server.",
-                        specifier.value).getBytes();
-                Response response = Response.status(Response.Status.NOT_MODIFIED).entity(result).type("text/plain").build();
-                throw new CSWebApplicationException(response);
+            String tenantId = ctx.getTenantId();
+            String authorityCsid = lookupParentCSID(ctx, identifier, "syncAuthority", "SYNC", uriInfo);
+            AuthoritySyncLocks.lock(tenantId, authorityCsid);
+            try {
+                neededSync = getRepositoryClient(ctx).synchronize(ctx, specifier, handler);
+            } finally {
+                AuthoritySyncLocks.unlock(tenantId, authorityCsid);
             }
+            payloadOut = ctx.getOutput();
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.SYNC_FAILED, identifier);
+        }
+
+        //
+        // If a sync was needed and was successful, return a copy of the updated resource.  Acts like an UPDATE.
+        //
+        if (neededSync == true) {
+            result = payloadOut.getBytes();
+        } else {
+            result = String.format("Authority resource '%s' was already in sync with shared authority server.",
+                    specifier.value).getBytes();
+            Response response = Response.status(Response.Status.NOT_MODIFIED).entity(result).type("text/plain").build();
+            throw new CSWebApplicationException(response);
         }
 
         return result;
@@ -615,11 +627,12 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
     }
 
     /**
-     * Delete all the items in an authority list.
+     * Delete all the items in an authority list.  Authorities with many items are emptied in the background -see
+     * AuthorityBulkDeleter.
      *
      * @param specifier
      * @param uriInfo
-     * @return
+     * @return 200 once the items are deleted, or 202 with the status of the deletion if it was started in the background
      */
     @DELETE
     @Path("{csid}/items")
@@ -629,26 +642,8 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
 
         try {
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
-            RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = this.getRepositoryClient(ctx);
-
-            CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx);
-            try {
-                DocumentHandler<?, AbstractCommonList, DocumentModel, DocumentModelList> handler = createDocumentHandler(ctx);
-                //
-                // Delete all the items one by one
-                //
-                AbstractCommonList itemsList = this.getAuthorityItemList(ctx, specifier, uriInfo);
-                for (ListItem item : itemsList.getListItem()) {
-                    deleteAuthorityItem(ctx, specifier, getCsid(item), AuthorityServiceUtils.UPDATE_REV);
-                }
-            } catch (Throwable t) {
-                repoSession.setTransactionRollbackOnly();
-                throw t;
-            } finally {
-                repoClient.releaseRepositorySession(ctx, repoSession);
-            }
-
-            return Response.status(HttpResponseCodes.SC_OK).build();
+            String parentcsid = lookupParentCSID(ctx, specifier, "deleteAuthorityItemList(parent)", "DELETE_ITEMS", uriInfo);
+            return deleteAuthorityItems(ctx, uriInfo, parentcsid, false);
         } catch (Exception e) {
             throw bigReThrow(e, ServiceMessages.DELETE_FAILED, specifier);
         }
@@ -659,7 +654,7 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
      *
      * @param csid the csid or a URN specifier form -e.g., urn:cspace:name(OurMuseumPersonAuthority)
      *
-     * @return the response
+     * @return 200 once the authority is deleted, or 202 with the status of the deletion if it was started in the background
      */
     @DELETE
     @Path("{csid}")
@@ -675,49 +670,82 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
 
         try {
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
-            Specifier spec = Specifier.getSpecifier(specifier, "getAuthority", "GET");
-            RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = this.getRepositoryClient(ctx);
-
-            CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx);
-            try {
-                DocumentHandler<?, AbstractCommonList, DocumentModel, DocumentModelList> handler = createDocumentHandler(ctx);
-                //
-                // First try to delete all the items
-                //
-                AbstractCommonList itemsList = this.getAuthorityItemList(ctx, specifier, uriInfo);
-                for (ListItem item : itemsList.getListItem()) {
-                    deleteAuthorityItem(ctx, specifier, getCsid(item), AuthorityServiceUtils.UPDATE_REV);
-                }
-
-                //
-                // Lastly, delete the parent/container
-                //
-                if (spec.form == SpecifierForm.CSID) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("deleteAuthority with csid=" + spec.value);
-                    }
-                    ensureCSID(spec.value, ServiceMessages.DELETE_FAILED, "Authority.csid");
-                    getRepositoryClient(ctx).delete(ctx, spec.value, handler);
-                } else {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("deleteAuthority with specifier=" + spec.value);
-                    }
-                    String whereClause = RefNameServiceUtils.buildWhereForAuthByName(authorityCommonSchemaName, spec.value);
-                    getRepositoryClient(ctx).deleteWithWhereClause(ctx, whereClause, handler);
-                }
-            } catch (Throwable t) {
-                repoSession.setTransactionRollbackOnly();
-                throw t;
-            } finally {
-                repoClient.releaseRepositorySession(ctx, repoSession);
+            Specifier spec = Specifier.getSpecifier(specifier, "deleteAuthority", "DELETE");
+            if (spec.form == SpecifierForm.CSID) {
+                ensureCSID(spec.value, ServiceMessages.DELETE_FAILED, "Authority.csid");
             }
-
-            return Response.status(HttpResponseCodes.SC_OK).build();
+            String csid = getCsid(ctx, spec);
+            return deleteAuthorityItems(ctx, uriInfo, csid, true);
         } catch (Exception e) {
             throw bigReThrow(e, ServiceMessages.DELETE_FAILED, specifier);
         }
     }
 
+    /**
+     * Get the status of the latest deletion of an authority, or of its items.
+     *
+     * @param specifier the csid or a URN specifier form of the authority
+     * @return the status of the deletion
+     */
+    @GET
+    @Path("{csid}/" + DELETION_STATUS)
+    public byte[] getAuthorityDeletionStatus(
+            @Context UriInfo uriInfo,
+            @PathParam("csid") String specifier) {
+        AuthorityBulkDeleter deletion = null;
+
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
+            Specifier spec = Specifier.getSpecifier(specifier, "getAuthorityDeletionStatus", "GET");
+            deletion = AuthorityBulkDeleter.get(ctx.getTenantId(), getCsid(ctx, spec));
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.GET_FAILED, specifier);
+        }
+
+        if (deletion == null) {
+            Response response = Response.status(Response.Status.NOT_FOUND).entity(
+                    "No deletion of authority '" + specifier + "' was found.").type("text/plain").build();
+            throw new CSWebApplicationException(response);
+        }
+
+        return deletion.getBytes();
+    }
+
+    /*
+     * Deletes the items of an authority, and the authority itself if deleteAuthority is true.  If the authority has more items
+     * than AuthorityBulkDeleter.getAsyncThreshold(), they're deleted in the background.
+     */
+    protected Response deleteAuthorityItems(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, UriInfo uriInfo,
+            String csid, boolean deleteAuthority) throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> itemCtx = createServiceContext(getItemServiceName(), uriInfo);
+        AuthorityBulkDeleter deleter = new AuthorityBulkDeleter(this, ctx, itemCtx, csid, deleteAuthority);
+        int itemCount = deleter.countItems();
+
+        // Once registered, the deleter is run or started right away, and so it's always marked finished
+        if (deleter.register() == false) {
+            Response response = Response.status(Response.Status.CONFLICT).entity(
+                    "The items of authority '" + csid + "' are already being deleted.").type("text/plain").build();
+            throw new CSWebApplicationException(response);
+        }
+
+        if (itemCount > AuthorityBulkDeleter.getAsyncThreshold()) {
+            deleter.start();
+            URI location = uriInfo.getBaseUriBuilder().path(getServiceName()).path(csid).path(DELETION_STATUS).build();
+            return Response.status(Response.Status.ACCEPTED).location(location).entity(deleter.getBytes()).type("application/xml").build();
+        }
+
+        deleter.run();
+        return Response.status(HttpResponseCodes.SC_OK).build();
+    }
+
+    /*
+     * Deletes the authority's own document, once its items are gone.
+     */
+    protected void deleteAuthorityDocument(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) throws Exception {
+        DocumentHandler<?, AbstractCommonList, DocumentModel, DocumentModelList> handler = createDocumentHandler(ctx);
+        getRepositoryClient(ctx).delete(ctx, csid, handler);
+    }
+
     protected String getCsid(ListItem item) {
         String result = null;
 
@@ -835,6 +863,50 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
         return result;
     }
 
+    /**
+     * Updates a number of items of one authority together: the items are found with one query and saved with one call
+     * -see RepositoryClient.updateAll().  Each item gets its own service context and document handler, set up as
+     * updateAuthorityItem() sets them up, except that the items' SAS fields are left alone.
+     *
+     * @param itemServiceCtx an item context whose repository session and rollback setting are shared
+     * @param updates the update to each item, by item CSID
+     */
+    public void updateAuthorityItems(
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> itemServiceCtx,
+            String parentspecifier,
+            Map<String, PoxPayloadIn> updates,
+            boolean shouldUpdateRevNumber
+            ) throws Exception {
+        CsidAndShortIdentifier csidAndShortId = lookupParentCSIDAndShortIdentifer(itemServiceCtx, parentspecifier, "updateAuthorityItems(parent)", "UPDATE_ITEM", null);
+        CoreSessionInterface repoSession = (CoreSessionInterface) itemServiceCtx.getCurrentRepositorySession();
+
+        List<ServiceContext<PoxPayloadIn, PoxPayloadOut>> itemContexts = new ArrayList<ServiceContext<PoxPayloadIn, PoxPayloadOut>>();
+        Map<String, DocumentHandler> handlersByCsid = new LinkedHashMap<String, DocumentHandler>();
+        try {
+            for (Map.Entry<String, PoxPayloadIn> update : updates.entrySet()) {
+                ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), update.getValue(),
+                        itemServiceCtx.getResourceMap(), itemServiceCtx.getUriInfo());
+                if (repoSession != null) {
+                    ctx.setCurrentRepositorySession(repoSession);
+                    itemContexts.add(ctx);
+                }
+                ctx.setRollbackOnException(itemServiceCtx.isRollbackOnException());
+
+                AuthorityItemDocumentModelHandler handler = (AuthorityItemDocumentModelHandler)createItemDocumentHandler(ctx,
+                        csidAndShortId.CSID, csidAndShortId.shortIdentifier);
+                handler.setShouldUpdateRevNumber(shouldUpdateRevNumber);
+                handler.setshouldUpdateSASFields(false);
+                handlersByCsid.put(update.getKey(), handler);
+            }
+            getRepositoryClient(itemServiceCtx).updateAll(itemServiceCtx, handlersByCsid);
+        } finally {
+            // The items' contexts only borrowed the session, so they give it back without releasing it
+            for (ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx : itemContexts) {
+                ctx.clearCurrentRepositorySession();
+            }
+        }
+    }
+
     /**
      * Called with an existing context.
      * @param parentCtx
@@ -1291,6 +1363,49 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
         return result;
     }
 
+    /**
+     * Reads several items of an authority with one request.  The payload lists the CSIDs of the items
+     * -e.g., <csids><csid>...</csid></csids>.  Items that aren't in the specified authority are reported as not found.
+     *
+     * @param parentIdentifier either a CSID or one of the urn forms
+     *
+     * @return a BulkReadResult with an entry for every requested item
+     */
+    @POST
+    @Path("{csid}/items/" + CollectionSpaceClient.BULK_READ_PATH)
+    public Response bulkReadAuthorityItems(
+            @Context Request request,
+            @Context UriInfo uriInfo,
+            @Context ResourceMap resourceMap,
+            @PathParam("csid") String parentIdentifier,
+            String xmlPayload) {
+        uriInfo = new UriInfoWrapper(uriInfo);
+        BulkReadResult result = null;
+
+        try {
+            List<String> csids = BulkReadResult.parseCsids(xmlPayload);
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), resourceMap, uriInfo);
+            JaxRsContext jaxRsContext = new JaxRsContext(request, uriInfo); // Needed for getting account permissions part of the resource
+            ctx.setJaxRsContext(jaxRsContext);
+
+            final String parentcsid = lookupParentCSID(ctx, parentIdentifier, "bulkReadAuthorityItems(parent)", "GET_ITEMS", uriInfo);
+            String whereClause = authorityItemCommonSchemaName + ":"
+                    + AuthorityItemJAXBSchema.IN_AUTHORITY + "="
+                    + "'" + parentcsid + "'";
+            result = bulkRead(ctx, csids, whereClause, new BulkReadHandlerFactory() {
+                @Override
+                public DocumentHandler createDocumentHandler(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) throws Exception {
+                    // We omit the parentShortId, only needed when doing a create...
+                    return createItemDocumentHandler(ctx, parentcsid, null);
+                }
+            });
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.READ_FAILED);
+        }
+
+        return Response.ok(result.getBytes()).build();
+    }
+
     /**
      * @return the name of the property used to specify references for items in this type of
      * authority. For most authorities, it is ServiceBindingUtils.AUTH_REF_PROP ("authRef").
@@ -1469,6 +1584,20 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
             String itemIdentifier,
             boolean syncHierarchicalRelationships
             ) throws Exception {
+        return synchronizeItemWithExistingContext(existingCtx, parentIdentifier, itemIdentifier, syncHierarchicalRelationships, null);
+    }
+
+    /**
+     * Same as above, but uses a copy of the SAS item that the caller has already fetched (e.g., as part of a batch)
+     * @param sasPayloadIn the SAS item's payload; if null, the item is fetched from the SAS
+     */
+    public PoxPayloadOut synchronizeItemWithExistingContext(
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> existingCtx,
+            String parentIdentifier,
+            String itemIdentifier,
+            boolean syncHierarchicalRelationships,
+            PoxPayloadIn sasPayloadIn
+            ) throws Exception {
         PoxPayloadOut result = null;
 
         ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(),
@@ -1478,6 +1607,9 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
             ctx.setCurrentRepositorySession(existingCtx.getCurrentRepositorySession());
 
         }
+        if (sasPayloadIn != null) {
+            ctx.setProperty(AuthorityServiceUtils.SAS_PAYLOAD_PROPERTY, sasPayloadIn);
+        }
         result = synchronizeItem(ctx, parentIdentifier, itemIdentifier, syncHierarchicalRelationships);
 
         return result;
@@ -1504,7 +1636,15 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
 
         try {
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), null, resourceMap, uriInfo);
-            payloadOut = this.synchronizeItem(ctx, parentIdentifier, itemIdentifier, true);
+            // Don't sync an item while its authority is being synchronized
+            String tenantId = ctx.getTenantId();
+            String parentCsid = lookupParentCSID(ctx, parentIdentifier, "syncAuthorityItem(parent)", "SYNC_ITEM", uriInfo);
+            AuthoritySyncLocks.lock(tenantId, parentCsid);
+            try {
+                payloadOut = this.synchronizeItem(ctx, parentIdentifier, itemIdentifier, true);
+            } finally {
+                AuthoritySyncLocks.unlock(tenantId, parentCsid);
+            }
             if (payloadOut != null) {
                 neededSync = true;
             }
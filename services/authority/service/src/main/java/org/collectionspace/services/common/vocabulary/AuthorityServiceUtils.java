@@ -65,6 +65,13 @@ public class AuthorityServiceUtils {
 
 	public static final Boolean NO_CHANGE = null;
 
+	// Used to pass along a copy of a SAS item that was already fetched as part of a batch
+	public static final String SAS_PAYLOAD_PROPERTY = "SAS_PAYLOAD";
+
+	// The number of concurrent requests made to a SAS while synchronizing an authority's items
+	public static final String SYNC_THREADS_PROPERTY = "org.collectionspace.services.authority.syncThreads";
+	public static final int DEFAULT_SYNC_THREADS = 4;
+
 	// Matches the domain name part of a refname. For example, "core.collectionspace.org" of
 	// urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(BigBird1461101206103)'Big Bird'.
 	public static final	Pattern REFNAME_DOMAIN_PATTERN = Pattern.compile("(urn:cspace:)(([a-z]{1,}\\.?)*)");
@@ -170,16 +177,33 @@ public class AuthorityServiceUtils {
 		ServiceContext authorityCtx = new MultipartServiceContextImpl(serviceName);
 		RemoteClientConfig remoteClientConfig = getRemoteClientConfig(authorityCtx, remoteClientConfigName);
 		AuthorityClient client = (AuthorityClient) authorityCtx.getClient(remoteClientConfig);
-		Response res = client.readItem(specifier.getParentSpecifier().getURNValue(), specifier.getItemSpecifier().getURNValue(),
-				AuthorityClient.INCLUDE_DELETED_ITEMS, syncHierarchicalRelationships);
+		result = requestItemPayloadInFromRemoteServer(client, remoteClientConfig.getUrl(), specifier.getParentSpecifier().getURNValue(),
+				specifier.getItemSpecifier().getURNValue(), responseType, syncHierarchicalRelationships);
+
+		return result;
+	}
+
+	//
+	// Makes a call to the remote SAS server for a authority item payload, using a client that has already been set up.
+	// Since this doesn't need a service context, it can be called from threads other than the request's thread.
+	//
+	public static PoxPayloadIn requestItemPayloadInFromRemoteServer(
+			AuthorityClient client,
+			String remoteUrl,
+			String parentIdentifier,
+			String itemIdentifier,
+			Class responseType,
+			boolean syncHierarchicalRelationships) throws Exception {
+		PoxPayloadIn result = null;
 
+		Response res = client.readItem(parentIdentifier, itemIdentifier, AuthorityClient.INCLUDE_DELETED_ITEMS, syncHierarchicalRelationships);
 		try {
 			int statusCode = res.getStatus();
 			if (statusCode == org.apache.commons.httpclient.HttpStatus.SC_OK) {
 				result = new PoxPayloadIn((String)res.readEntity(responseType)); // Get the entire response.
 			} else {
 				String errMsg = String.format("Could not retrieve authority item information for '%s:%s' on remote server '%s'.  Server returned status code %d",
-						specifier.getParentSpecifier().getURNValue(), specifier.getItemSpecifier().getURNValue(), remoteClientConfig.getUrl(), statusCode);
+						parentIdentifier, itemIdentifier, remoteUrl, statusCode);
 				if (logger.isDebugEnabled()) {
 					logger.debug(errMsg);
 				}
@@ -192,6 +216,23 @@ public class AuthorityServiceUtils {
 		return result;
 	}
 
+	/**
+	 * @return the number of concurrent requests to make to a SAS while synchronizing an authority's items
+	 */
+	public static int getSyncThreads() {
+		int result = DEFAULT_SYNC_THREADS;
+		String value = System.getProperty(SYNC_THREADS_PROPERTY);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, SYNC_THREADS_PROPERTY, DEFAULT_SYNC_THREADS));
+			}
+		}
+		return result > 0 ? result : DEFAULT_SYNC_THREADS;
+	}
+
 	/*
 	 * The domain name part of refnames on a remote SAS may not match that of local refnames.
 	 * Update all the payload's refnames with the local domain name.
@@ -0,0 +1,86 @@
+package org.collectionspace.services.common.vocabulary;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which of a Shared Authority Server's (SAS) items an authority sync has to fetch.
+ *
+ * The sync lists the local copies of the SAS items (by short ID, with their revision numbers) and
+ * then offers each item listed by the SAS to isChanged().  An item is only fetched if it's new,
+ * if the SAS's revision is newer than the local copy's, or if either revision is unknown (e.g. an
+ * older SAS that doesn't list revisions).  A forced sync fetches every item.  Once the SAS's list
+ * has been read, getRemovedShortIds() returns the local items that the SAS no longer has.
+ */
+public class AuthoritySyncDelta {
+
+	private final Map<String, Long> localItemRevs;
+	private final boolean forceSync;
+	private final Set<String> remoteShortIds = new HashSet<String>();
+	private int unchangedCount = 0;
+
+	/**
+	 * @param localItemRevs the short IDs of the local copies of SAS items, mapped to their revision numbers (null if unknown)
+	 * @param forceSync true to fetch every item, changed or not
+	 */
+	public AuthoritySyncDelta(Map<String, Long> localItemRevs, boolean forceSync) {
+		this.localItemRevs = localItemRevs;
+		this.forceSync = forceSync;
+	}
+
+	/**
+	 * Records an item listed by the SAS.
+	 *
+	 * @param remoteShortId the item's short ID
+	 * @param remoteRev the item's revision number as listed by the SAS, or null if it wasn't listed
+	 * @return true if the item has to be fetched and synced
+	 */
+	public boolean isChanged(String remoteShortId, String remoteRev) {
+		remoteShortIds.add(remoteShortId);
+
+		Long remoteRevNum = parseRev(remoteRev);
+		Long localRevNum = localItemRevs.get(remoteShortId);
+
+		if (forceSync == false && remoteRevNum != null && localRevNum != null && remoteRevNum <= localRevNum) {
+			unchangedCount++;
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the number of items that isChanged() found to be up to date
+	 */
+	public int getUnchangedCount() {
+		return unchangedCount;
+	}
+
+	/**
+	 * @return the short IDs of the local items that weren't listed by the SAS, i.e. that have been hard deleted there
+	 */
+	public Set<String> getRemovedShortIds() {
+		Set<String> result = new HashSet<String>(localItemRevs.keySet());
+		result.removeAll(remoteShortIds);
+
+		return result;
+	}
+
+	/**
+	 * @return the revision number, or null if the value is missing or isn't a number
+	 */
+	public static Long parseRev(String value) {
+		Long result = null;
+
+		if (value != null && value.trim().isEmpty() == false) {
+			try {
+				result = Long.valueOf(value.trim());
+			} catch (NumberFormatException e) {
+				result = null;
+			}
+		}
+
+		return result;
+	}
+}
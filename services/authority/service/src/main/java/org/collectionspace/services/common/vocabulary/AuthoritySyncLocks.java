@@ -0,0 +1,72 @@
+package org.collectionspace.services.common.vocabulary;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes Shared Authority Server (SAS) synchronizations of the same authority, while letting
+ * synchronizations of different authorities (in the same or different tenants) run at the same time.
+ *
+ * Locks are reentrant, so an item sync started from within an authority sync on the same thread
+ * doesn't block.  A lock is discarded once no thread holds or waits for it.
+ */
+public class AuthoritySyncLocks {
+
+	private static class SyncLock {
+		final ReentrantLock lock = new ReentrantLock();
+		int users = 0; // threads holding or waiting for the lock; guarded by the locks map
+	}
+
+	private static final Map<String, SyncLock> locks = new HashMap<String, SyncLock>();
+
+	private AuthoritySyncLocks() {
+		// Static methods only
+	}
+
+	private static String getKey(String tenantId, String authorityCsid) {
+		return tenantId + ":" + authorityCsid;
+	}
+
+	/**
+	 * Blocks until no other thread is synchronizing the authority.  Every call must be paired
+	 * with a call to unlock() in a finally block.
+	 */
+	public static void lock(String tenantId, String authorityCsid) {
+		String key = getKey(tenantId, authorityCsid);
+		SyncLock syncLock;
+		synchronized (locks) {
+			syncLock = locks.get(key);
+			if (syncLock == null) {
+				syncLock = new SyncLock();
+				locks.put(key, syncLock);
+			}
+			syncLock.users++;
+		}
+		syncLock.lock.lock();
+	}
+
+	public static void unlock(String tenantId, String authorityCsid) {
+		String key = getKey(tenantId, authorityCsid);
+		synchronized (locks) {
+			SyncLock syncLock = locks.get(key);
+			if (syncLock == null || syncLock.lock.isHeldByCurrentThread() == false) {
+				throw new IllegalMonitorStateException(String.format("The sync lock for authority '%s' is not held by this thread.", key));
+			}
+			syncLock.lock.unlock();
+			if (--syncLock.users == 0) {
+				locks.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @return true if some thread is synchronizing the authority
+	 */
+	public static boolean isLocked(String tenantId, String authorityCsid) {
+		synchronized (locks) {
+			SyncLock syncLock = locks.get(getKey(tenantId, authorityCsid));
+			return syncLock != null && syncLock.lock.isLocked();
+		}
+	}
+}
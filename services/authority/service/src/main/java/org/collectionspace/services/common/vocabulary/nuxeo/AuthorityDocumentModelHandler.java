@@ -24,8 +24,9 @@
 package org.collectionspace.services.common.vocabulary.nuxeo;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +43,7 @@ import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.XmlTools;
 import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.ParallelFetcher;
 import org.collectionspace.services.common.ResourceMap;
 import org.collectionspace.services.common.api.RefName;
 import org.collectionspace.services.common.api.RefName.Authority;
@@ -58,11 +60,14 @@ import org.collectionspace.services.common.vocabulary.AuthorityItemJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
 import org.collectionspace.services.common.vocabulary.AuthorityServiceUtils;
+import org.collectionspace.services.common.vocabulary.AuthoritySyncDelta;
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthorityItemSpecifier;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.Specifier;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.SpecifierForm;
 import org.collectionspace.services.config.service.ListResultField;
 import org.collectionspace.services.config.service.ObjectPartType;
+import org.collectionspace.services.config.tenant.RemoteClientConfig;
 import org.collectionspace.services.jaxb.AbstractCommonList;
 import org.collectionspace.services.jaxb.AbstractCommonList.ListItem;
 import org.collectionspace.services.lifecycle.TransitionDef;
@@ -163,7 +168,7 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 				//
 				// First, sync all the authority items
 				//
-				syncAllItems(ctx, authorityCsid, sasSpecifier);
+				syncAllItems(ctx, authorityCsid, sasSpecifier, remoteClientConfigName);
 				//
 				// Next, sync the authority resource/record itself
 				//
@@ -200,15 +205,40 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 	 * Get the list of authority items from the remote shared authority server (SAS)
 	 * and synchronize them with the local authority items. If items exist on the
 	 * remote but not the local, create them.
+	 *
+	 * Only the items whose SAS revision number is newer than the local copy's (or that don't
+	 * exist locally) are fetched.  Each page of changed items is fetched from the SAS in parallel and
+	 * then applied, in order, in this request's repository session.
 	 */
-	protected void syncAllItems(ServiceContext ctx, String parentCsid, Specifier sasAuthoritySpecifier) throws Exception {
+	protected void syncAllItems(final ServiceContext ctx, String parentCsid, final Specifier sasAuthoritySpecifier,
+			String remoteClientConfigName) throws Exception {
 		int createdCount = 0;
 		int syncedCount = 0;
 		int alreadySyncedCount = 0;
 		int deletedCount = 0;
 		int totalProcessedCount = 0;
 
-		Set<String> remoteShortIds = new HashSet<String>();
+		// The revision numbers of the local SAS items, so we can tell which remote items have changed.
+
+		AuthoritySyncDelta delta = new AuthoritySyncDelta(getItemsInLocalAuthority(ctx, sasAuthoritySpecifier), ctx.shouldForceSync());
+
+		final RemoteClientConfig remoteClientConfig = AuthorityServiceUtils.getRemoteClientConfig(ctx, remoteClientConfigName);
+		ParallelFetcher<String, PoxPayloadIn> fetcher = new ParallelFetcher<String, PoxPayloadIn>(
+				AuthorityServiceUtils.getSyncThreads(), "sas-sync-" + sasAuthoritySpecifier.value);
+		ParallelFetcher.WorkerFactory<String, PoxPayloadIn> workerFactory = new ParallelFetcher.WorkerFactory<String, PoxPayloadIn>() {
+			@Override
+			public ParallelFetcher.Worker<String, PoxPayloadIn> newWorker() throws Exception {
+				final AuthorityClient client = (AuthorityClient) ctx.getClient(remoteClientConfig);
+				return new ParallelFetcher.Worker<String, PoxPayloadIn>() {
+					@Override
+					public PoxPayloadIn fetch(String itemShortId) throws Exception {
+						return AuthorityServiceUtils.requestItemPayloadInFromRemoteServer(client, remoteClientConfig.getUrl(),
+								sasAuthoritySpecifier.getURNValue(), Specifier.createShortIdURNValue(itemShortId),
+								getEntityResponseType(), AuthorityClient.INCLUDE_RELATIONS);
+					}
+				};
+			}
+		};
 
 		// Iterate over the list of items in the remote authority.
 
@@ -234,13 +264,27 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 				logger.debug(String.format("Found %d items", itemElements.size()));
 			}
 
+			List<String> changedRefNames = new ArrayList<String>();
+			List<String> changedShortIds = new ArrayList<String>();
+
 			for (Element e : itemElements) {
 				String remoteRefName = XmlTools.getElementValue(e, AuthorityItemJAXBSchema.REF_NAME);
 				String remoteShortId = XmlTools.getElementValue(e, AuthorityItemJAXBSchema.SHORT_IDENTIFIER);
 
-				remoteShortIds.add(remoteShortId);
+				// Older SAS servers don't list revision numbers, so we have to check each of their items.
 
-				long status = syncRemoteItem(ctx, parentCsid, remoteRefName);
+				if (delta.isChanged(remoteShortId, XmlTools.getElementValue(e, AuthorityItemJAXBSchema.REV))) {
+					changedRefNames.add(remoteRefName);
+					changedShortIds.add(remoteShortId);
+				} else {
+					totalProcessedCount++;
+				}
+			}
+
+			List<PoxPayloadIn> changedPayloads = fetcher.fetchAll(changedShortIds, workerFactory);
+
+			for (int i = 0; i < changedRefNames.size(); i++) {
+				long status = syncRemoteItem(ctx, parentCsid, changedRefNames.get(i), changedPayloads.get(i));
 
 				if (status == 1) {
 					createdCount++;
@@ -262,9 +306,9 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		// determine which
 		// of the remote items have been hard deleted.
 
-		Set<String> localShortIds = getItemsInLocalAuthority(ctx, sasAuthoritySpecifier);
+		alreadySyncedCount += delta.getUnchangedCount();
 
-		localShortIds.removeAll(remoteShortIds);
+		Set<String> localShortIds = delta.getRemovedShortIds();
 
 		if (localShortIds.size() > 0) {
 			// Delete the remaining items (or mark them as deprecated if they still have
@@ -331,11 +375,11 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 	 *
 	 * @param ctx
 	 * @param authoritySpecifier
-	 * @return
+	 * @return the short IDs of the items, mapped to their revision numbers (null if unknown)
 	 * @throws Exception
 	 */
-	private Set<String> getItemsInLocalAuthority(ServiceContext ctx, Specifier authoritySpecifier) throws Exception {
-		Set<String> itemShortIds = new HashSet<String>();
+	private Map<String, Long> getItemsInLocalAuthority(ServiceContext ctx, Specifier authoritySpecifier) throws Exception {
+		Map<String, Long> itemShortIds = new HashMap<String, Long>();
 
 		ResourceMap resourceMap = ctx.getResourceMap();
 		String resourceName = ctx.getClient().getServiceName();
@@ -358,7 +402,7 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 				new URI(""),
 				new URI(""),
 				"",
-				"pgSz=" + pageSize + "&pgNum=" + pageNum,
+				"pgSz=" + pageSize + "&pgNum=" + pageNum + "&" + AuthorityClient.SHOW_REV_QP + "=true",
 				Collections.<PathSegment> emptyList()
 			);
 
@@ -374,7 +418,8 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 				Boolean proposed = getBooleanValue(listItem, AuthorityItemJAXBSchema.PROPOSED);
 
 				if (proposed == false) { // exclude "proposed" (i.e., local-only items)
-					itemShortIds.add(AbstractCommonListUtils.ListItemGetElementValue(listItem, AuthorityItemJAXBSchema.SHORT_IDENTIFIER));
+					itemShortIds.put(AbstractCommonListUtils.ListItemGetElementValue(listItem, AuthorityItemJAXBSchema.SHORT_IDENTIFIER),
+							AuthoritySyncDelta.parseRev(AbstractCommonListUtils.ListItemGetElementValue(listItem, AuthorityItemJAXBSchema.REV)));
 				}
 			}
 
@@ -408,6 +453,14 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 	 * @throws Exception
 	 */
 	protected void createLocalItem(ServiceContext ctx, String parentCsid, String parentIdentifier, String itemIdentifier, Boolean syncHierarchicalRelationships) throws Exception {
+		createLocalItem(ctx, parentCsid, parentIdentifier, itemIdentifier, syncHierarchicalRelationships, null);
+	}
+
+	/**
+	 * Same as above, but uses a copy of the remote item that has already been fetched (if not null).
+	 */
+	protected void createLocalItem(ServiceContext ctx, String parentCsid, String parentIdentifier, String itemIdentifier, Boolean syncHierarchicalRelationships,
+			PoxPayloadIn sasPayloadIn) throws Exception {
 		//
 		// Create a URN short ID specifier for the getting a copy of the remote authority item
 		//
@@ -422,8 +475,10 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		//
 		// Get the remote payload
 		//
-		PoxPayloadIn sasPayloadIn = AuthorityServiceUtils.requestPayloadInFromRemoteServer(sasAuthorityItemSpecifier, remoteClientConfigName,
-				ctx.getServiceName(), getEntityResponseType(), syncHierarchicalRelationships);
+		if (sasPayloadIn == null) {
+			sasPayloadIn = AuthorityServiceUtils.requestPayloadInFromRemoteServer(sasAuthorityItemSpecifier, remoteClientConfigName,
+					ctx.getServiceName(), getEntityResponseType(), syncHierarchicalRelationships);
+		}
 
 		AuthorityResource authorityResource = (AuthorityResource) ctx.getResource();
 
@@ -475,6 +530,13 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 	 * @throws Exception
 	 */
 	protected long syncRemoteItem(ServiceContext ctx, String parentCsid, String itemRefName) throws Exception {
+		return syncRemoteItem(ctx, parentCsid, itemRefName, null);
+	}
+
+	/**
+	 * Same as above, but uses a copy of the remote item that has already been fetched (if not null).
+	 */
+	protected long syncRemoteItem(ServiceContext ctx, String parentCsid, String itemRefName, PoxPayloadIn sasPayloadIn) throws Exception {
 		if (logger.isInfoEnabled()) {
 			logger.info(String.format("Syncing remote item %s", itemRefName));
 		}
@@ -501,7 +563,7 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		// If no local item exists, create one.
 
 		if (localItemPayload == null) {
-			createLocalItem(ctx, parentCsid, parentIdentifier, itemIdentifier, AuthorityClient.INCLUDE_RELATIONS);
+			createLocalItem(ctx, parentCsid, parentIdentifier, itemIdentifier, AuthorityClient.INCLUDE_RELATIONS, sasPayloadIn);
 
 			return 1;
 		}
@@ -511,7 +573,8 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		PoxPayloadOut updatePayload = null;
 
 		try {
-			updatePayload = authorityResource.synchronizeItemWithExistingContext(ctx, parentIdentifier, itemIdentifier, AuthorityClient.INCLUDE_RELATIONS);
+			updatePayload = authorityResource.synchronizeItemWithExistingContext(ctx, parentIdentifier, itemIdentifier, AuthorityClient.INCLUDE_RELATIONS,
+					sasPayloadIn);
 		} catch (DocumentReferenceException de) {
 			logger.error(String.format("Could not sync item %s because it is referenced by other records", itemIdentifier));
 		}
@@ -547,10 +610,8 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		PoxPayloadIn result = null;
 		AuthorityClient client = (AuthorityClient) ctx.getClient();
 
-		Response res = client.readItemList(
+		Response res = client.readItemListWithRevs(
 			specifier.getURNValue(),
-			null, // partial term string
-			null, // keyword string
 			pageSize,
 			pageNum
 		);
@@ -593,6 +654,13 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		if (this.getShouldUpdateRevNumber() == true) { // We won't update rev numbers on synchronization with SAS
 			updateRevNumbers(wrapDoc);
 		}
+		//
+		// A changed short identifier changes the refNames of all the items, so forget how they were resolved
+		//
+		if (action == Action.UPDATE) {
+			RefNameResolutionCache.getInstance().invalidateAuthority(getServiceContext().getTenantId(),
+					wrapDoc.getWrappedObject().getName());
+		}
 	}
 
 	protected void updateRevNumbers(DocumentWrapper<DocumentModel> wrapDoc) {
@@ -622,6 +690,7 @@ public abstract class AuthorityDocumentModelHandler<AuthCommon> extends NuxeoDoc
 		if (updateRevNumber == true) { // We don't update the rev number of synchronization requests
 			updateRevNumbers(wrapDoc);
 		}
+		RefNameResolutionCache.getInstance().invalidateAuthority(ctx.getTenantId(), wrapDoc.getWrappedObject().getName());
 	}
 
 	@Override
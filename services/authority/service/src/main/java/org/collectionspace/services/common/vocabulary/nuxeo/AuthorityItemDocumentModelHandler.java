@@ -54,6 +54,7 @@ import org.collectionspace.services.common.vocabulary.AuthorityItemJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
 import org.collectionspace.services.common.vocabulary.AuthorityServiceUtils;
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthorityItemSpecifier;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.SpecifierForm;
@@ -335,6 +336,7 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 					 List<Integer> termDisplayNamePositionsInList = new ArrayList<>();
 						   boolean hasShortId = false;
 					boolean hasTermStatus = false;
+					boolean hasRev = false;
 					for (int i = 0; i < nFields; i++) {
 						ListResultField field = list.get(i);
 						String elName = field.getElement();
@@ -344,6 +346,8 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 							hasShortId = true;
 						} else if (AuthorityItemJAXBSchema.TERM_STATUS.equals(elName)) {
 							hasTermStatus = true;
+						} else if (AuthorityItemJAXBSchema.REV.equals(elName)) {
+							hasRev = true;
 						}
 					}
 
@@ -390,6 +394,15 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 						list.add(field);
 					}
 
+						// Revision number -lets a SAS sync skip items that haven't changed.  Only
+						// emitted when the request asks for it (see getListResultValue()).
+					if (!hasRev) {
+						field = new ListResultField();
+						field.setElement(AuthorityItemJAXBSchema.REV);
+						field.setXpath(AuthorityItemJAXBSchema.REV);
+						list.add(field);
+					}
+
 				}
 
 				setListItemArrayExtended(true);
@@ -413,6 +426,7 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 		// We can't delete an authority item that has referencing records.
 		//
 		DocumentModel docModel = wrapDoc.getWrappedObject();
+		RefNameResolutionCache.getInstance().invalidateItem(ctx.getTenantId(), docModel.getName());
 		if (transitionDef.getName().equalsIgnoreCase(WorkflowClient.WORKFLOWTRANSITION_DELETE)) {
 			AuthorityRefDocList refsToAllObjects = getReferencingObjectsForStateTransitions(ctx, docModel, RefObjsSearchType.ALL);
 			AuthorityRefDocList refsToSoftDeletedObjects = getReferencingObjectsForStateTransitions(ctx, docModel, RefObjsSearchType.DELETED_ONLY);
@@ -480,9 +494,12 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 		// Using the short IDs of the local authority and item, create URN specifiers and retrieve the SAS authority item
 		//
 		AuthorityItemSpecifier sasAuthorityItemSpecifier = new AuthorityItemSpecifier(SpecifierForm.URN_NAME, authorityShortId, itemShortId);
-		// Get the shared authority server's copy
-		PoxPayloadIn sasPayloadIn = AuthorityServiceUtils.requestPayloadInFromRemoteServer(sasAuthorityItemSpecifier,
-				remoteClientConfigName, getAuthorityServicePath(), getEntityResponseType(), AuthorityClient.INCLUDE_RELATIONS);
+		// Get the shared authority server's copy, unless the caller already fetched it (e.g., as part of a batch)
+		PoxPayloadIn sasPayloadIn = (PoxPayloadIn) ctx.getProperty(AuthorityServiceUtils.SAS_PAYLOAD_PROPERTY);
+		if (sasPayloadIn == null) {
+			sasPayloadIn = AuthorityServiceUtils.requestPayloadInFromRemoteServer(sasAuthorityItemSpecifier,
+					remoteClientConfigName, getAuthorityServicePath(), getEntityResponseType(), AuthorityClient.INCLUDE_RELATIONS);
+		}
 		Long sasRev = getRevision(sasPayloadIn);
 		String sasWorkflowState = getWorkflowState(sasPayloadIn);
 		//
@@ -551,6 +568,7 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 
 		ServiceContext ctx = getServiceContext();
 		DocumentModel docModel = wrapDoc.getWrappedObject();
+		RefNameResolutionCache.getInstance().invalidateItem(ctx.getTenantId(), docModel.getName());
 
 		AuthorityRefDocList refsToAllObjects = getReferencingObjectsForStateTransitions(ctx, docModel, RefObjsSearchType.ALL);
 		AuthorityRefDocList refsToSoftDeletedObjects = getReferencingObjectsForStateTransitions(ctx, docModel, RefObjsSearchType.DELETED_ONLY);
@@ -748,6 +766,7 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 	public void completeUpdate(DocumentWrapper<DocumentModel> wrapDoc) throws Exception {
 		// Must call our super class' version first
 		super.completeUpdate(wrapDoc);
+		RefNameResolutionCache.getInstance().invalidateItem(getServiceContext().getTenantId(), wrapDoc.getWrappedObject().getName());
 
 		//
 		// Look for and update authority references with the updated refName
@@ -1225,7 +1244,15 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
 		Object result = null;
 		String fieldXPath = field.getXpath();
 
-		if (fieldXPath.equalsIgnoreCase(AuthorityClient.REFERENCED) == false) {
+		if (fieldXPath.equalsIgnoreCase(AuthorityItemJAXBSchema.REV) == true) {
+			//
+			// Only a SAS sync asks for revision numbers, so leave them out of other lists.
+			//
+			String showRevStr = (String) getServiceContext().getQueryParams().getFirst(AuthorityClient.SHOW_REV_QP);
+			if (Tools.isTrue(showRevStr) == true) {
+				result = NuxeoUtils.getXPathValue(docModel, schema, field.getXpath());
+			}
+		} else if (fieldXPath.equalsIgnoreCase(AuthorityClient.REFERENCED) == false) {
 			result = NuxeoUtils.getXPathValue(docModel, schema, field.getXpath());
 		} else {
 			//
@@ -0,0 +1,213 @@
+package org.collectionspace.services.common.vocabulary;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.DocumentReferenceException;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks how AuthorityBulkDeleter reads and sorts an authority's items, and that a deletion that fails
+ * doesn't block the next one.
+ */
+public class AuthorityBulkDeleterTest {
+    private static final String TENANT_ID = "1";
+    private static final String SCHEMA = "persons_common";
+    private static final String DOCTYPE = "PersonTenant1";
+
+    private final List<String> queries = new ArrayList<String>();
+    private final List<Long> limits = new ArrayList<Long>();
+    private final List<Set<String>> ignored = new ArrayList<Set<String>>();
+    private Map<String, Boolean> references = new HashMap<String, Boolean>();
+
+    @BeforeMethod
+    public void setUp() {
+        queries.clear();
+        limits.clear();
+        ignored.clear();
+        references = new HashMap<String, Boolean>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceContext<PoxPayloadIn, PoxPayloadOut> serviceContext() {
+        return (ServiceContext<PoxPayloadIn, PoxPayloadOut>) Proxy.newProxyInstance(AuthorityBulkDeleterTest.class.getClassLoader(),
+                new Class<?>[] { ServiceContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getTenantId")) {
+                            return TENANT_ID;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /*
+     * A deleter whose reference checks answer from the references map.
+     */
+    private AuthorityBulkDeleter deleter(String authorityCsid) {
+        return new AuthorityBulkDeleter(null, serviceContext(), null, authorityCsid, false) {
+            @Override
+            protected Map<String, Boolean> findReferences(CoreSessionInterface repoSession, Set<String> refNameBases,
+                    Set<String> ignoredCsids) {
+                ignored.add(ignoredCsids);
+                Map<String, Boolean> result = new HashMap<String, Boolean>();
+                for (String refNameBase : refNameBases) {
+                    if (references.containsKey(refNameBase)) {
+                        result.put(refNameBase, references.get(refNameBase));
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    private static String csid(int i) {
+        return String.format("csid%04d", i);
+    }
+
+    /*
+     * A session holding the given number of items, which answers projection queries a page at a time.
+     */
+    private CoreSessionInterface session(final int itemCount) {
+        return (CoreSessionInterface) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { CoreSessionInterface.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("queryProjection") == false) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        String query = (String) args[0];
+                        long limit = (Long) args[1];
+                        queries.add(query);
+                        limits.add(limit);
+
+                        int start = queries.size() == 1 ? 0 : (queries.size() - 1) * AuthorityBulkDeleter.ITEM_PAGE_SIZE;
+                        List<Map<String, Serializable>> rows = new ArrayList<Map<String, Serializable>>();
+                        for (int i = start; i < itemCount && rows.size() < limit; i++) {
+                            Map<String, Serializable> row = new HashMap<String, Serializable>();
+                            row.put(NXQL.ECM_UUID, "id" + i);
+                            row.put(NXQL.ECM_NAME, csid(i));
+                            row.put(NXQL.ECM_LIFECYCLESTATE, "project");
+                            rows.add(row);
+                        }
+                        return new PartialList<Map<String, Serializable>>(rows, rows.size());
+                    }
+                });
+    }
+
+    private static AuthorityBulkDeleter.Item item(String csid, String workflowState) {
+        return new AuthorityBulkDeleter.Item("id-" + csid, csid, "urn:" + csid, workflowState);
+    }
+
+    private static List<String> csids(List<AuthorityBulkDeleter.Item> items) {
+        List<String> result = new ArrayList<String>();
+        for (AuthorityBulkDeleter.Item item : items) {
+            result.add(item.csid);
+        }
+        return result;
+    }
+
+    @Test
+    public void testItemsAreReadAPageAtATime() throws Exception {
+        int pageSize = AuthorityBulkDeleter.ITEM_PAGE_SIZE;
+        AuthorityBulkDeleter deleter = deleter("paged");
+
+        List<AuthorityBulkDeleter.Item> items = deleter.findItems(session(pageSize * 2 + 5), SCHEMA, DOCTYPE);
+
+        assertEquals(items.size(), pageSize * 2 + 5);
+        assertEquals(deleter.getTotalItems(), items.size());
+        assertEquals(queries.size(), 3);
+        for (long limit : limits) {
+            assertEquals(limit, pageSize, "The page size should be passed on as the query's limit");
+        }
+        assertFalse(queries.get(0).contains(NXQL.ECM_NAME + " >"));
+        assertTrue(queries.get(1).contains(NXQL.ECM_NAME + " > '" + csid(pageSize - 1) + "'"), queries.get(1));
+        assertTrue(queries.get(2).contains(NXQL.ECM_NAME + " > '" + csid(pageSize * 2 - 1) + "'"), queries.get(2));
+        assertTrue(queries.get(0).endsWith("ORDER BY " + NXQL.ECM_NAME));
+    }
+
+    @Test
+    public void testAFullLastPageEndsWithAnEmptyOne() throws Exception {
+        List<AuthorityBulkDeleter.Item> items = deleter("full").findItems(session(AuthorityBulkDeleter.ITEM_PAGE_SIZE), SCHEMA, DOCTYPE);
+
+        assertEquals(items.size(), AuthorityBulkDeleter.ITEM_PAGE_SIZE);
+        assertEquals(queries.size(), 2);
+    }
+
+    @Test
+    public void testItemsAreSortedByTheirReferences() throws Exception {
+        references.put("urn:softDelete", false);
+        references.put("urn:keep", false);
+
+        List<AuthorityBulkDeleter.Item> softDeletes = new ArrayList<AuthorityBulkDeleter.Item>();
+        List<AuthorityBulkDeleter.Item> hardDeletes = new ArrayList<AuthorityBulkDeleter.Item>();
+        Set<String> itemCsids = new HashSet<String>(Arrays.asList("hardDelete", "softDelete", "keep", "other"));
+
+        deleter("sorted").checkReferences(null, Arrays.asList(item("hardDelete", "project"), item("softDelete", "project"),
+                item("keep", "deleted")), itemCsids, softDeletes, hardDeletes);
+
+        assertEquals(csids(hardDeletes), Arrays.asList("hardDelete"));
+        assertEquals(csids(softDeletes), Arrays.asList("softDelete"), "Only soft-deleted records reference it");
+        assertEquals(ignored, Arrays.asList(itemCsids), "References from the authority's other items should be ignored");
+    }
+
+    @Test
+    public void testReferencedItemsStopTheDeletion() throws Exception {
+        // As when a chunk's references are checked again, and a record has referenced one of its items since the first check
+        references.put("urn:referenced", true);
+
+        List<AuthorityBulkDeleter.Item> softDeletes = new ArrayList<AuthorityBulkDeleter.Item>();
+        List<AuthorityBulkDeleter.Item> hardDeletes = new ArrayList<AuthorityBulkDeleter.Item>();
+        try {
+            deleter("referenced").checkReferences(null, Arrays.asList(item("free", "project"), item("referenced", "project")),
+                    new HashSet<String>(), softDeletes, hardDeletes);
+            fail("A referenced item would have been deleted");
+        } catch (DocumentReferenceException e) {
+            assertTrue(e.getMessage().contains("[referenced]"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailedDeletionDoesNotBlockTheNext() throws Exception {
+        AuthorityBulkDeleter first = new AuthorityBulkDeleter(null, serviceContext(), null, "failing", false) {
+            @Override
+            List<Item> findItems() throws Exception {
+                throw new Exception("The items could not be read");
+            }
+        };
+
+        assertTrue(first.register());
+        assertFalse(deleter("failing").register(), "Two deletions of the same authority were running");
+
+        try {
+            first.run();
+            fail("The failure wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "The items could not be read");
+        }
+
+        assertEquals(first.getState(), AuthorityBulkDeleter.State.FAILED);
+        assertEquals(first.getMessage(), "The items could not be read");
+        assertSame(AuthorityBulkDeleter.get(TENANT_ID, "failing"), first);
+        assertTrue(deleter("failing").register(), "The failed deletion is blocking the next one");
+    }
+}
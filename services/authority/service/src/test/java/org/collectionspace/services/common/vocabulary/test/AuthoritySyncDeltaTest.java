@@ -0,0 +1,179 @@
+package org.collectionspace.services.common.vocabulary.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.ParallelFetcher;
+import org.collectionspace.services.common.vocabulary.AuthoritySyncDelta;
+import org.testng.annotations.Test;
+
+/**
+ * Checks how a SAS sync picks the items it has to fetch, and that only those are fetched, in the
+ * order the SAS listed them.
+ */
+public class AuthoritySyncDeltaTest {
+
+    private static Map<String, Long> localRevs(Object... shortIdsAndRevs) {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (int i = 0; i < shortIdsAndRevs.length; i += 2) {
+            result.put((String) shortIdsAndRevs[i], (Long) shortIdsAndRevs[i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testOnlyChangedAndNewItemsAreFetched() {
+        AuthoritySyncDelta delta = new AuthoritySyncDelta(localRevs("same", 3L, "older", 3L, "newer", 5L), false);
+
+        assertFalse(delta.isChanged("same", "3"));
+        assertTrue(delta.isChanged("older", "4"));
+        assertFalse(delta.isChanged("newer", "4"), "A local copy newer than the SAS's was fetched");
+        assertTrue(delta.isChanged("new", "1"));
+
+        assertEquals(delta.getUnchangedCount(), 2);
+    }
+
+    @Test
+    public void testUnknownRevisionsAreFetched() {
+        AuthoritySyncDelta delta = new AuthoritySyncDelta(localRevs("listed", 3L, "unknown", null), false);
+
+        // An older SAS doesn't list revisions
+        assertTrue(delta.isChanged("listed", null));
+        assertTrue(delta.isChanged("listed", ""));
+        assertTrue(delta.isChanged("listed", "not a number"));
+        // The local copy's revision is unknown
+        assertTrue(delta.isChanged("unknown", "1"));
+
+        assertEquals(delta.getUnchangedCount(), 0);
+    }
+
+    @Test
+    public void testForcedSyncFetchesEverything() {
+        AuthoritySyncDelta delta = new AuthoritySyncDelta(localRevs("same", 3L), true);
+
+        assertTrue(delta.isChanged("same", "3"));
+        assertEquals(delta.getUnchangedCount(), 0);
+    }
+
+    @Test
+    public void testRemovedItems() {
+        AuthoritySyncDelta delta = new AuthoritySyncDelta(localRevs("kept", 1L, "changed", 1L, "removed", 1L), false);
+
+        delta.isChanged("kept", "1");
+        delta.isChanged("changed", "2");
+        delta.isChanged("added", "1");
+
+        assertEquals(delta.getRemovedShortIds(), new HashSet<String>(Arrays.asList("removed")));
+    }
+
+    /*
+     * Runs the pages of a stub SAS's item list through the same steps as
+     * AuthorityDocumentModelHandler.syncAllItems(): pick the changed items, then fetch them in parallel.
+     */
+    @Test
+    public void testSyncFetchesChangedItemsInOrder() throws Exception {
+        final Map<String, String> sasRevs = new HashMap<String, String>();
+        Map<String, Long> local = new HashMap<String, Long>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            String shortId = "item" + i;
+            sasRevs.put(shortId, "2");
+            if (i % 10 == 0) {
+                local.put(shortId, 1L); // changed on the SAS
+                expected.add(shortId);
+            } else if (i % 10 == 1) {
+                expected.add(shortId); // new on the SAS
+            } else {
+                local.put(shortId, 2L);
+            }
+        }
+        local.put("deleted", 1L);
+
+        final AtomicInteger fetches = new AtomicInteger();
+        ParallelFetcher.WorkerFactory<String, String> sas = new ParallelFetcher.WorkerFactory<String, String>() {
+            @Override
+            public ParallelFetcher.Worker<String, String> newWorker() {
+                return new ParallelFetcher.Worker<String, String>() {
+                    @Override
+                    public String fetch(String shortId) {
+                        fetches.incrementAndGet();
+                        return "<" + shortId + " rev=" + sasRevs.get(shortId) + "/>";
+                    }
+                };
+            }
+        };
+
+        AuthoritySyncDelta delta = new AuthoritySyncDelta(local, false);
+        ParallelFetcher<String, String> fetcher = new ParallelFetcher<String, String>(4, "sas-sync-test");
+        List<String> fetched = new ArrayList<String>();
+
+        int pageSize = 100;
+        for (int page = 0; page * pageSize < 1000; page++) {
+            List<String> changed = new ArrayList<String>();
+            for (int i = page * pageSize; i < (page + 1) * pageSize; i++) {
+                String shortId = "item" + i;
+                if (delta.isChanged(shortId, sasRevs.get(shortId))) {
+                    changed.add(shortId);
+                }
+            }
+
+            List<String> payloads = fetcher.fetchAll(changed, sas);
+            assertEquals(payloads.size(), changed.size());
+            for (int i = 0; i < changed.size(); i++) {
+                assertEquals(payloads.get(i), "<" + changed.get(i) + " rev=2/>", "A payload was returned out of order");
+            }
+            fetched.addAll(changed);
+        }
+
+        assertEquals(fetched, expected);
+        assertEquals(fetches.get(), expected.size());
+        assertEquals(delta.getUnchangedCount(), 1000 - expected.size());
+        assertEquals(delta.getRemovedShortIds(), Collections.singleton("deleted"));
+    }
+
+    @Test
+    public void testFailedFetchFailsTheSync() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        ParallelFetcher.WorkerFactory<String, String> sas = new ParallelFetcher.WorkerFactory<String, String>() {
+            @Override
+            public ParallelFetcher.Worker<String, String> newWorker() {
+                return new ParallelFetcher.Worker<String, String>() {
+                    @Override
+                    public String fetch(String shortId) throws Exception {
+                        running.incrementAndGet();
+                        try {
+                            if (shortId.equals("missing")) {
+                                throw new Exception("The SAS returned 404 for " + shortId);
+                            }
+                            Thread.sleep(5);
+                            return shortId;
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                };
+            }
+        };
+
+        List<String> shortIds = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            shortIds.add(i == 10 ? "missing" : "item" + i);
+        }
+
+        try {
+            new ParallelFetcher<String, String>(4, "sas-sync-test").fetchAll(shortIds, sas);
+            fail("A failed fetch didn't fail the sync");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "The SAS returned 404 for missing");
+        }
+        assertEquals(running.get(), 0, "Fetches were still running after the failure was thrown");
+    }
+}
@@ -23,6 +23,7 @@
  */
 package org.collectionspace.services.authorization;
 
+import org.collectionspace.authentication.AuthN;
 import org.collectionspace.services.account.AccountRoleSubResource;
 import org.collectionspace.services.client.RoleClient;
 import org.collectionspace.services.common.SecurityResourceBase;
@@ -159,6 +160,7 @@ public class RoleResource extends SecurityResourceBase<Role, Role> {
                 throw new CSWebApplicationException(response);
 	        }
 	        result = (Role)update(csid, theUpdate, Role.class);
+	        AuthN.get().clearUserCache(); // role names are the users' granted authorities
         } catch (Exception e) {
             throw bigReThrow(e, ServiceMessages.UPDATE_FAILED, csid);
         }
@@ -25,12 +25,15 @@
 package org.collectionspace.services.authorization;
 
 import java.util.HashSet;
+import java.util.Set;
 
 import org.collectionspace.authentication.AuthN;
 import org.collectionspace.authentication.CSpaceTenant;
 import org.collectionspace.authentication.CSpaceUser;
 import org.collectionspace.services.authorization.perms.ActionType;
 import org.collectionspace.services.authorization.spi.CSpaceAuthorizationProvider;
+import org.collectionspace.services.authorization.spring.LookupTimingHistogram;
+import org.collectionspace.services.authorization.spring.SpringAuthorizationProvider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -145,6 +148,8 @@ public class AuthZ {
         } catch (Throwable t) {
         	provider.rollbackTransaction(status);
         	throw t;
+        } finally {
+        	invalidatePermissions(resources);
         }
     }
 
@@ -158,7 +163,7 @@ public class AuthZ {
     private void addPermission(CSpaceResource res, CSpaceAction action, String[] principals, boolean grant)
             throws PermissionException {
         provider.getPermissionManager().addPermissionsToRoles(res, action, principals, grant);
-        provider.clearAclCache();
+        provider.invalidatePermissions(res);
     }
 
     /**
@@ -181,6 +186,8 @@ public class AuthZ {
 	    } catch (Throwable t) {
 	    	provider.rollbackTransaction(status);
 	    	throw t;
+	    } finally {
+	    	invalidatePermissions(resources);
 	    }
     }
 
@@ -194,7 +201,7 @@ public class AuthZ {
     private void deletePermissionFromRoles(CSpaceResource res, CSpaceAction action, String[] principals)
             throws PermissionNotFoundException, PermissionException {
         provider.getPermissionManager().deletePermissionFromRoles(res, action, principals);
-        provider.clearAclCache();
+        provider.invalidatePermissions(res);
     }
 
     /**
@@ -215,13 +222,15 @@ public class AuthZ {
 		            deletePermissions(res, action);
 		        } else {
 		            provider.getPermissionManager().deletePermissions(res);
-		            provider.clearAclCache();
+		            provider.invalidatePermissions(res);
 		        }
 	        }
 	        provider.commitTransaction(status);
         } catch (Throwable t) {
         	provider.rollbackTransaction(status);
         	throw t;
+        } finally {
+        	invalidatePermissions(resources);
         }
     }
 
@@ -235,9 +244,56 @@ public class AuthZ {
     private void deletePermissions(CSpaceResource res, CSpaceAction action)
             throws PermissionNotFoundException, PermissionException {
         provider.getPermissionManager().deletePermissions(res, action);
+        provider.invalidatePermissions(res);
+    }
+
+    /**
+     * invalidatePermissions drops the cached decisions of the given resources once their
+     * transaction has ended. Decisions may have been re-read between the mutation and the
+     * commit, so the per-resource invalidation done inside the transaction is not enough.
+     * @param resources
+     */
+    private void invalidatePermissions(CSpaceResource[] resources) {
+        Set<Long> seen = new HashSet<Long>();
+        for (CSpaceResource res : resources) {
+            if (seen.add(res.getHashedId())) {
+                provider.invalidatePermissions(res);
+            }
+        }
+    }
+
+    /**
+     * clearPermissionCache discards all cached permission decisions of all tenants
+     */
+    public void clearPermissionCache() {
         provider.clearAclCache();
     }
 
+    /**
+     * getPermissionLookupTimings
+     * @return the timings of permission lookups, or null if the provider does not record them
+     */
+    public LookupTimingHistogram getPermissionLookupTimings() {
+        LookupTimingHistogram result = null;
+        if (provider instanceof SpringAuthorizationProvider) {
+            result = ((SpringAuthorizationProvider) provider).getPermissionDecisionTable().getLookupTimings();
+        }
+        return result;
+    }
+
+    /**
+     * getPermissionCompileTimings
+     * @return the timings of compiling ACLs into permission decisions (the lookup misses),
+     * or null if the provider does not record them
+     */
+    public LookupTimingHistogram getPermissionCompileTimings() {
+        LookupTimingHistogram result = null;
+        if (provider instanceof SpringAuthorizationProvider) {
+            result = ((SpringAuthorizationProvider) provider).getPermissionDecisionTable().getCompileTimings();
+        }
+        return result;
+    }
+
     /**
      * isAccessAllowed check if authenticated principal is allowed to access
      * given resource
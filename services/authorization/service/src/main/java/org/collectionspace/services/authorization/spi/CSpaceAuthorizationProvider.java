@@ -28,6 +28,7 @@
 
 package org.collectionspace.services.authorization.spi;
 
+import org.collectionspace.services.authorization.CSpaceResource;
 import org.springframework.transaction.TransactionStatus;
 
 /**
@@ -47,6 +48,13 @@ public interface CSpaceAuthorizationProvider {
     
     public void clearAclCache();
 
+    /**
+     * invalidatePermissions discards any cached permission decisions for the given
+     * resource only, leaving the cached decisions of all other resources intact
+     * @param res
+     */
+    public void invalidatePermissions(CSpaceResource res);
+
 	public TransactionStatus beginTransaction(String name);
 
 	public void rollbackTransaction(TransactionStatus status);
@@ -49,20 +49,40 @@
  */
 package org.collectionspace.services.authorization.spring;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
 import org.springframework.security.access.ConfigAttribute;
-import org.springframework.security.access.SecurityConfig;
 import org.springframework.security.web.FilterInvocation;
 import org.springframework.security.web.access.intercept.FilterInvocationSecurityMetadataSource;
 
 /**
- *
+ * CSpaceSecurityMetadataSource maps request URLs to the roles allowed to access them.
+ * The URL properties are compiled into a UrlPatternTrie; the trie is rebuilt and swapped
+ * in when the properties (or the resource they were loaded from) change.
  * @author 
  */
 public class CSpaceSecurityMetadataSource implements FilterInvocationSecurityMetadataSource {
 
+    final Logger log = LoggerFactory.getLogger(CSpaceSecurityMetadataSource.class);
+
+    /** Default minimum delay between two checks for changed URL properties */
+    public static final long DEFAULT_RELOAD_CHECK_INTERVAL_MILLIS = 30 * 1000;
+
     private Properties urlProperties;
+    private Resource urlPropertiesResource;
+    private long reloadCheckIntervalMillis = DEFAULT_RELOAD_CHECK_INTERVAL_MILLIS;
+
+    private volatile UrlPatternTrie urlPatterns = UrlPatternTrie.compile(null);
+    private volatile long nextReloadCheck = 0;
+    // A copy of the properties the URL patterns were compiled from, to tell whether they changed since
+    private Properties compiledProperties = null;
+    private long compiledResourceTimestamp = -1;
 
     public Collection<ConfigAttribute> getAllConfigAttributes() {
         return null;
@@ -71,57 +91,109 @@ public class CSpaceSecurityMetadataSource implements FilterInvocationSecurityMet
     public Collection<ConfigAttribute> getAttributes(Object filter)
             throws IllegalArgumentException {
         FilterInvocation filterInvocation = (FilterInvocation) filter;
-        String url = filterInvocation.getRequestUrl();
-
-        //get the roles for requested page from the property file
-        String urlPropsValue = urlProperties.getProperty(url);
-        StringBuilder rolesStringBuilder = new StringBuilder();
-        if (urlPropsValue != null) {
-            rolesStringBuilder.append(urlPropsValue).append(",");
-        }
+        return getAttributes(filterInvocation.getRequestUrl());
+    }
 
-        if (!url.endsWith("/")) {
-            int lastSlashIndex = url.lastIndexOf("/");
-            url = url.substring(0, lastSlashIndex + 1);
+    /**
+     * getAttributes returns the attributes of the given request URL, first reloading the URL
+     * properties if they are due to be checked for changes
+     * @param url
+     * @return the attributes, or null if no pattern applies
+     */
+    Collection<ConfigAttribute> getAttributes(String url) {
+        if (reloadCheckIntervalMillis >= 0 && System.currentTimeMillis() >= nextReloadCheck) {
+            reloadIfChanged();
         }
 
+        return urlPatterns.getAttributes(url);
+    }
 
-        String[] urlParts = url.split("/");
-
-        StringBuilder urlBuilder = new StringBuilder();
-        for (String urlPart : urlParts) {
-            if (urlPart.trim().length() == 0) {
-                continue;
-            }
-            urlBuilder.append("/").append(urlPart);
-            urlPropsValue = urlProperties.getProperty(urlBuilder.toString() + "/**");
+    public boolean supports(Class<?> arg0) {
+        return true;
+    }
 
-            if (urlPropsValue != null) {
-                rolesStringBuilder.append(urlPropsValue).append(",");
-            }
-        }
+    public synchronized void setUrlProperties(Properties urlProperties) {
+        this.urlProperties = urlProperties;
+        compile();
+    }
 
-        if (rolesStringBuilder.toString().endsWith(",")) {
-            rolesStringBuilder.deleteCharAt(rolesStringBuilder.length() - 1);
-        }
+    public Properties getUrlProperties() {
+        return urlProperties;
+    }
 
+    /**
+     * Optionally set the resource the URL properties are (re)loaded from.  When set, the
+     * properties are reloaded whenever the resource's last-modified timestamp changes; while
+     * the resource doesn't exist, no URL patterns apply.
+     */
+    public synchronized void setUrlPropertiesResource(Resource urlPropertiesResource) {
+        this.urlPropertiesResource = urlPropertiesResource;
+        this.compiledResourceTimestamp = -1;
+        reloadIfChanged();
+    }
 
-        if (rolesStringBuilder.length() == 0) {
-            return null;
-        }
+    public Resource getUrlPropertiesResource() {
+        return urlPropertiesResource;
+    }
 
-        return SecurityConfig.createListFromCommaDelimitedString(rolesStringBuilder.toString());
+    /**
+     * Set the minimum delay between two checks for changed URL properties; a negative
+     * value disables hot reloading.
+     */
+    public void setReloadCheckIntervalMillis(long reloadCheckIntervalMillis) {
+        this.reloadCheckIntervalMillis = reloadCheckIntervalMillis;
     }
 
-    public boolean supports(Class<?> arg0) {
-        return true;
+    public long getReloadCheckIntervalMillis() {
+        return reloadCheckIntervalMillis;
     }
 
-    public void setUrlProperties(Properties urlProperties) {
-        this.urlProperties = urlProperties;
+    /**
+     * reloadIfChanged reloads the URL properties from the resource, if one is configured and
+     * has been modified, and recompiles them if their content differs from the compiled one.
+     */
+    public synchronized void reloadIfChanged() {
+        nextReloadCheck = System.currentTimeMillis() + Math.max(reloadCheckIntervalMillis, 0);
+
+        if (urlPropertiesResource != null) {
+            try {
+                if (!urlPropertiesResource.exists()) {
+                    // No resource (yet) means no URL patterns, i.e., the patterns are opt-in
+                    if (compiledResourceTimestamp != 0) {
+                        compiledResourceTimestamp = 0;
+                        urlProperties = new Properties();
+                    }
+                } else {
+                    long timestamp = urlPropertiesResource.lastModified();
+                    if (timestamp != compiledResourceTimestamp) {
+                        Properties properties = new Properties();
+                        InputStream in = urlPropertiesResource.getInputStream();
+                        try {
+                            properties.load(in);
+                        } finally {
+                            in.close();
+                        }
+                        compiledResourceTimestamp = timestamp;
+                        urlProperties = properties;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Could not reload URL properties from " + urlPropertiesResource.getDescription()
+                        + "; keeping the current ones.", e);
+            }
+        }
+
+        if (urlProperties != null && urlProperties.equals(compiledProperties) == false) {
+            compile();
+        }
     }
 
-    public Properties getUrlProperties() {
-        return urlProperties;
+    private synchronized void compile() {
+        Properties properties = urlProperties;
+        compiledProperties = properties != null ? (Properties) properties.clone() : null;
+        urlPatterns = UrlPatternTrie.compile(properties);
+        if (log.isDebugEnabled()) {
+            log.debug("Compiled " + (properties != null ? properties.size() : 0) + " URL security patterns.");
+        }
     }
 }
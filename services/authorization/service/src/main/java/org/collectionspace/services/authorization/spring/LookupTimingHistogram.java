@@ -0,0 +1,136 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.authorization.spring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LookupTimingHistogram is a lock-free histogram of durations in nanoseconds.
+ * Bucket i counts samples in the range [2^i, 2^(i+1)) ns, so recording a sample
+ * never allocates.
+ * @author
+ */
+public class LookupTimingHistogram {
+
+    public static final int BUCKET_COUNT = 40; // 2^40 ns is roughly 18 minutes
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * record adds a sample
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(nanos | 1);
+        if (bucket >= BUCKET_COUNT) {
+            bucket = BUCKET_COUNT - 1;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return a copy of the bucket counts
+     */
+    public long[] getBuckets() {
+        long[] result = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            result[i] = buckets.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the upper bound (exclusive, in nanoseconds) of the given bucket
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return 1L << (bucket + 1);
+    }
+
+    /**
+     * getPercentile returns an upper-bound estimate of the given percentile
+     * @param percentile a value between 0 and 100
+     * @return the estimate in nanoseconds, or 0 if there are no samples
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = getBuckets();
+        long total = 0;
+        for (long bucketCount : snapshot) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(total * (percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        long samples = getCount();
+        StringBuilder builder = new StringBuilder();
+        builder.append("LookupTimingHistogram [");
+        builder.append("count=");
+        builder.append(samples);
+        builder.append(", meanNanos=");
+        builder.append(samples > 0 ? getTotalNanos() / samples : 0);
+        builder.append(", p50Nanos=");
+        builder.append(getPercentile(50));
+        builder.append(", p99Nanos=");
+        builder.append(getPercentile(99));
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.authorization.spring;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.collectionspace.services.authorization.CSpaceResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * PermissionDecisionTable is a compiled, per-tenant view of the Spring Security ACLs.
+ * Each resource (object identity) maps to an immutable set of (role, action) grant/deny
+ * decisions that are swapped atomically when the resource's permissions change. Only the
+ * entries touched by a permission mutation are invalidated, so role syncs no longer flush
+ * the whole ACL cache.
+ *
+ * The decision semantics mirror Spring's DefaultPermissionGrantingStrategy: sids are
+ * consulted in order (the principal first, then each granted authority) and the first
+ * ACE matching the sid and permission mask decides. If no ACE matches and the ACL inherits
+ * entries from a parent ACL, the parent's decisions are consulted in the same way; the parent
+ * is looked up in the table by its object identity, so a change to the parent's permissions
+ * only has to invalidate the parent. No matching ACE anywhere in the chain means "deny".
+ * @author
+ */
+public class PermissionDecisionTable {
+
+    final Logger log = LoggerFactory.getLogger(PermissionDecisionTable.class);
+
+    /**
+     * Immutable, compiled decisions for one resource.  The grant/deny bit sets are
+     * indexed by sid name and hold the Spring permission masks (BasePermission masks
+     * are single bits) for which the first matching ACE was granting or denying.
+     */
+    static final class ResourceDecisions {
+        static final ResourceDecisions EMPTY = new ResourceDecisions(
+                Collections.<String, int[]>emptyMap(), Collections.<String, int[]>emptyMap(), null);
+
+        private final Map<String, int[]> authorityDecisions;
+        private final Map<String, int[]> principalDecisions;
+        private final ObjectIdentity parent; // the ACL whose entries are inherited, or null
+
+        private ResourceDecisions(Map<String, int[]> authorityDecisions, Map<String, int[]> principalDecisions,
+                ObjectIdentity parent) {
+            this.authorityDecisions = authorityDecisions;
+            this.principalDecisions = principalDecisions;
+            this.parent = parent;
+        }
+
+        static ResourceDecisions compile(Acl acl) {
+            ObjectIdentity parent = null;
+            if (acl.isEntriesInheriting() && acl.getParentAcl() != null) {
+                parent = acl.getParentAcl().getObjectIdentity();
+            }
+
+            List<AccessControlEntry> aces = acl.getEntries();
+            if (aces == null || aces.isEmpty()) {
+                return parent == null ? EMPTY : new ResourceDecisions(
+                        Collections.<String, int[]>emptyMap(), Collections.<String, int[]>emptyMap(), parent);
+            }
+
+            Map<String, int[]> authorities = new HashMap<String, int[]>();
+            Map<String, int[]> principals = new HashMap<String, int[]>();
+            for (AccessControlEntry ace : aces) {
+                Sid sid = ace.getSid();
+                Map<String, int[]> target;
+                String name;
+                if (sid instanceof GrantedAuthoritySid) {
+                    target = authorities;
+                    name = ((GrantedAuthoritySid) sid).getGrantedAuthority();
+                } else if (sid instanceof PrincipalSid) {
+                    target = principals;
+                    name = ((PrincipalSid) sid).getPrincipal();
+                } else {
+                    continue;
+                }
+
+                int[] decision = target.get(name); // [0] = granted masks, [1] = denied masks
+                if (decision == null) {
+                    decision = new int[2];
+                    target.put(name, decision);
+                }
+                int mask = ace.getPermission().getMask();
+                if (((decision[0] | decision[1]) & mask) != 0) {
+                    continue; // an earlier ACE already decided for this sid and mask
+                }
+                decision[ace.isGranting() ? 0 : 1] |= mask;
+            }
+
+            return new ResourceDecisions(
+                    authorities.isEmpty() ? Collections.<String, int[]>emptyMap() : authorities,
+                    principals.isEmpty() ? Collections.<String, int[]>emptyMap() : principals,
+                    parent);
+        }
+
+        ObjectIdentity getParent() {
+            return parent;
+        }
+
+        /**
+         * @return Boolean.TRUE if granted, Boolean.FALSE if denied, null if the sid has no decision
+         */
+        private static Boolean decide(Map<String, int[]> decisions, String name, int mask) {
+            int[] decision = decisions.get(name);
+            if (decision != null) {
+                if ((decision[0] & mask) == mask) {
+                    return Boolean.TRUE;
+                }
+                if ((decision[1] & mask) == mask) {
+                    return Boolean.FALSE;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return Boolean.TRUE if granted, Boolean.FALSE if denied, null if no ACE of this resource decides
+         */
+        Boolean decide(Authentication authToken, int mask) {
+            if (!principalDecisions.isEmpty()) {
+                Boolean decision = decide(principalDecisions, authToken.getName(), mask);
+                if (decision != null) {
+                    return decision;
+                }
+            }
+            if (!authorityDecisions.isEmpty()) {
+                Collection<? extends GrantedAuthority> authorities = authToken.getAuthorities();
+                for (GrantedAuthority authority : authorities) {
+                    Boolean decision = decide(authorityDecisions, authority.getAuthority(), mask);
+                    if (decision != null) {
+                        return decision;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The compiled entries of a single tenant.  The generation is bumped on every
+     * invalidation so that a compile racing with a permission change doesn't stay published.
+     */
+    private static final class TenantTable {
+        final ConcurrentMap<Serializable, ResourceDecisions> entries = new ConcurrentHashMap<Serializable, ResourceDecisions>();
+        final AtomicLong generation = new AtomicLong();
+    }
+
+    // Guards against a cycle of parent ACLs
+    static final int MAX_INHERITANCE_DEPTH = 32;
+
+    private final SpringAuthorizationProvider provider;
+    private final ConcurrentMap<String, TenantTable> tenantTables = new ConcurrentHashMap<String, TenantTable>();
+    private final LookupTimingHistogram lookupTimings = new LookupTimingHistogram();
+    private final LookupTimingHistogram compileTimings = new LookupTimingHistogram();
+
+    PermissionDecisionTable(SpringAuthorizationProvider provider) {
+        this.provider = provider;
+    }
+
+    private TenantTable getTenantTable(String tenantId) {
+        TenantTable result = tenantTables.get(tenantId);
+        if (result == null) {
+            TenantTable newTable = new TenantTable();
+            result = tenantTables.putIfAbsent(tenantId, newTable);
+            if (result == null) {
+                result = newTable;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * hasPermission evaluates the given permission for the authenticated principal on
+     * the given resource using the compiled table.
+     * @param authToken
+     * @param res
+     * @param perm
+     * @return
+     */
+    public boolean hasPermission(Authentication authToken, CSpaceResource res, Permission perm) {
+        long start = System.nanoTime();
+        try {
+            if (authToken == null || perm == null) {
+                return false;
+            }
+            TenantTable table = getTenantTable(res.getTenantId());
+            ObjectIdentity oid = SpringAuthorizationProvider.getObjectIdentity(res);
+            for (int depth = 0; oid != null && depth < MAX_INHERITANCE_DEPTH; depth++) {
+                ResourceDecisions decisions = getDecisions(table, oid);
+                Boolean decision = decisions.decide(authToken, perm.getMask());
+                if (decision != null) {
+                    return decision.booleanValue();
+                }
+                oid = decisions.getParent();
+            }
+            return false;
+        } finally {
+            lookupTimings.record(System.nanoTime() - start);
+        }
+    }
+
+    private ResourceDecisions getDecisions(TenantTable table, ObjectIdentity oid) {
+        Serializable key = oid.getIdentifier();
+        ResourceDecisions result = table.entries.get(key);
+        if (result == null) {
+            long generation = table.generation.get();
+            result = compile(oid);
+            ResourceDecisions existing = table.entries.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            } else if (table.generation.get() != generation) {
+                // An invalidation landed after the compile started -perhaps after the invalidation's own
+                // remove- so take back what was just published.  The next lookup compiles it again.
+                table.entries.remove(key, result);
+            }
+        }
+        return result;
+    }
+
+    private ResourceDecisions compile(ObjectIdentity oid) {
+        long start = System.nanoTime();
+        try {
+            Acl acl = provider.getProviderAclService().readAclById(oid);
+            return ResourceDecisions.compile(acl);
+        } catch (NotFoundException e) {
+            // No ACL for this resource means nobody has been granted access to it
+            return ResourceDecisions.EMPTY;
+        } finally {
+            compileTimings.record(System.nanoTime() - start);
+            if (log.isTraceEnabled()) {
+                log.trace("Compiled permission decisions for oid=" + oid.toString());
+            }
+        }
+    }
+
+    /**
+     * invalidate drops the compiled decisions for the given resource only.  The entry is
+     * recompiled from the ACL service on its next lookup.
+     * @param res
+     */
+    public void invalidate(CSpaceResource res) {
+        TenantTable table = getTenantTable(res.getTenantId());
+        table.generation.incrementAndGet();
+        table.entries.remove(SpringAuthorizationProvider.getObjectIdentityIdentifier(res));
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated compiled permission decisions for res=" + res.toString());
+        }
+    }
+
+    /**
+     * invalidateTenant drops every compiled entry of the given tenant
+     * @param tenantId
+     */
+    public void invalidateTenant(String tenantId) {
+        TenantTable table = tenantTables.get(tenantId);
+        if (table != null) {
+            table.generation.incrementAndGet();
+            table.entries.clear();
+        }
+    }
+
+    /**
+     * invalidateAll drops all compiled entries of all tenants
+     */
+    public void invalidateAll() {
+        for (TenantTable table : tenantTables.values()) {
+            table.generation.incrementAndGet();
+            table.entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of compiled entries for the given tenant
+     */
+    public int size(String tenantId) {
+        TenantTable table = tenantTables.get(tenantId);
+        return table != null ? table.entries.size() : 0;
+    }
+
+    /**
+     * @return timings of permission lookups (cached or not)
+     */
+    public LookupTimingHistogram getLookupTimings() {
+        return lookupTimings;
+    }
+
+    /**
+     * @return timings of compiling a resource's ACL into the table (i.e., cache misses)
+     */
+    public LookupTimingHistogram getCompileTimings() {
+        return compileTimings;
+    }
+}
@@ -63,11 +63,13 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
 		private EhCacheBasedAclCache providerAclCache;
     private SpringPermissionEvaluator permissionEvaluator;
     private SpringPermissionManager permissionManager;
+    private PermissionDecisionTable permissionDecisionTable;
     private String version = "1.0";
 
     public SpringAuthorizationProvider() {
         permissionManager = new SpringPermissionManager(this);
         permissionEvaluator = new SpringPermissionEvaluator(this);
+        permissionDecisionTable = new PermissionDecisionTable(this);
     }
 
     MutableAclService getProviderAclService() {
@@ -112,6 +114,13 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
         return permissionManager;
     }
 
+    /**
+     * @return the compiled permission decisions used by the permission evaluator
+     */
+    public PermissionDecisionTable getPermissionDecisionTable() {
+        return permissionDecisionTable;
+    }
+
     static Long getObjectIdentityIdentifier(CSpaceResource res) {
     	return res.getHashedId();
         //return Long.valueOf(res.getId().hashCode());
@@ -192,6 +201,21 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
     	} else {
             log.error("providerAclCache is NULL!");
     	}
+    	permissionDecisionTable.invalidateAll();
+    }
+
+    /**
+     * evict the ACL of the given resource from the provider's ACL cache and drop its
+     * compiled permission decisions
+     */
+    @Override
+    public void invalidatePermissions(CSpaceResource res) {
+    	if (providerAclCache != null) {
+    		providerAclCache.evictFromCache(getObjectIdentity(res));
+    	} else {
+            log.error("providerAclCache is NULL!");
+    	}
+    	permissionDecisionTable.invalidate(res);
     }
 
     @Override
@@ -23,7 +23,6 @@
  */
 package org.collectionspace.services.authorization.spring;
 
-import java.util.List;
 import java.io.Serializable;
 
 import org.collectionspace.services.authorization.CSpaceAction;
@@ -31,7 +30,6 @@ import org.collectionspace.services.authorization.spi.CSpacePermissionEvaluator;
 import org.collectionspace.services.authorization.CSpaceResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.acls.model.Permission;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -57,13 +55,15 @@ public class SpringPermissionEvaluator implements CSpacePermissionEvaluator {
     	try {
 	        Permission perm = SpringAuthorizationProvider.getPermission(action);
 	        Authentication authToken = SecurityContextHolder.getContext().getAuthentication();
-	        Serializable objectIdId = SpringAuthorizationProvider.getObjectIdentityIdentifier(res);
-	        String objectIdType = SpringAuthorizationProvider.getObjectIdentityType(res);
-	        PermissionEvaluator eval = provider.getProviderPermissionEvaluator();
-
-	        debug(res, authToken, objectIdId, objectIdType, perm);
-	        result = eval.hasPermission(authToken,
-	                objectIdId, objectIdType, perm);
+	        if (log.isTraceEnabled() == true) {
+	        	debug(res, authToken, SpringAuthorizationProvider.getObjectIdentityIdentifier(res),
+	        			SpringAuthorizationProvider.getObjectIdentityType(res), perm);
+	        }
+	        //
+	        // Decisions come from the compiled table rather than the provider's PermissionEvaluator,
+	        // which would resolve Sids and read the ACL on every call.
+	        //
+	        result = provider.getPermissionDecisionTable().hasPermission(authToken, res, perm);
     	} catch (Throwable e) {
     		if (exceptionChainContainsNetworkError(e) == true) {
         		//
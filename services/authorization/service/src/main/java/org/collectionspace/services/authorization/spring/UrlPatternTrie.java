@@ -0,0 +1,249 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.authorization.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+
+/**
+ * UrlPatternTrie is the compiled, immutable form of the URL to roles properties used by
+ * CSpaceSecurityMetadataSource.  Property keys are either exact request URLs or
+ * directory prefixes ending with "/**".  Prefix patterns are stored in a character trie
+ * whose nodes carry the pre-built attribute list of every prefix pattern on their path,
+ * and the full answer for each exact URL is computed up front, so a lookup walks the
+ * URL once and returns a shared immutable collection without allocating.
+ * @author
+ */
+final class UrlPatternTrie {
+
+    private static final String PREFIX_PATTERN_SUFFIX = "/**";
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        /** roles of the "<path>/**" pattern ending at this node, if any */
+        List<String> roles;
+        /** roles of all prefix patterns that apply to a URL reaching this node at a segment boundary */
+        Collection<ConfigAttribute> attributes;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node addChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -(index + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            Node result = new Node();
+            newChildren[insertAt] = result;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return result;
+        }
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Collection<ConfigAttribute>> exactMatches = new HashMap<String, Collection<ConfigAttribute>>();
+
+    private UrlPatternTrie() {
+    }
+
+    /**
+     * compile builds a trie from the given URL to comma-delimited roles properties
+     * @param urlProperties
+     * @return
+     */
+    static UrlPatternTrie compile(Properties urlProperties) {
+        UrlPatternTrie result = new UrlPatternTrie();
+        if (urlProperties == null) {
+            return result;
+        }
+
+        Map<String, List<String>> exactRoles = new HashMap<String, List<String>>();
+        for (String key : urlProperties.stringPropertyNames()) {
+            List<String> roles = splitRoles(urlProperties.getProperty(key));
+            exactRoles.put(key, roles);
+            if (key.endsWith(PREFIX_PATTERN_SUFFIX)) {
+                Node node = result.addPrefix(key.substring(0, key.length() - PREFIX_PATTERN_SUFFIX.length()));
+                if (node != null) {
+                    node.roles = roles;
+                }
+            }
+        }
+        result.accumulate(result.root, Collections.<String>emptyList());
+
+        for (Map.Entry<String, List<String>> entry : exactRoles.entrySet()) {
+            List<String> roles = new ArrayList<String>(entry.getValue());
+            Collection<ConfigAttribute> prefixAttributes = result.getPrefixAttributes(entry.getKey());
+            if (prefixAttributes != null) {
+                for (ConfigAttribute attribute : prefixAttributes) {
+                    roles.add(attribute.getAttribute());
+                }
+            }
+            if (!roles.isEmpty()) {
+                result.exactMatches.put(entry.getKey(), toAttributes(roles));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * getAttributes returns the attributes for a request URL: the roles of the exact URL,
+     * followed by the roles of each "/**" prefix of the URL's directory, shortest first
+     * @param url
+     * @return the attributes, or null if no pattern applies
+     */
+    Collection<ConfigAttribute> getAttributes(String url) {
+        Collection<ConfigAttribute> result = exactMatches.get(url);
+        if (result == null) {
+            result = getPrefixAttributes(url);
+        }
+        return result;
+    }
+
+    /*
+     * Walks the directory part of the URL (everything up to the last "/"), segment by
+     * segment, skipping empty and blank segments as the original String.split() based
+     * implementation did.
+     */
+    private Collection<ConfigAttribute> getPrefixAttributes(String url) {
+        int end = url.endsWith("/") ? url.length() : url.lastIndexOf('/') + 1;
+        Collection<ConfigAttribute> result = null;
+        Node node = root;
+        int segmentStart = 0;
+        while (segmentStart < end && node != null) {
+            int segmentEnd = url.indexOf('/', segmentStart);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            if (!isBlank(url, segmentStart, segmentEnd)) {
+                node = node.child('/');
+                for (int i = segmentStart; i < segmentEnd && node != null; i++) {
+                    node = node.child(url.charAt(i));
+                }
+                if (node != null && node.roles != null) {
+                    result = node.attributes;
+                }
+            }
+            segmentStart = segmentEnd + 1;
+        }
+        return result;
+    }
+
+    private static boolean isBlank(String url, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (url.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Adds a "/a/b" style prefix.  Only prefixes a request URL walk can produce (a leading
+     * "/" and no empty or blank segments) are added; the others never matched before either.
+     */
+    private Node addPrefix(String prefix) {
+        if (prefix.length() < 2 || prefix.charAt(0) != '/') {
+            return null;
+        }
+        for (int segmentStart = 1; segmentStart <= prefix.length();) {
+            int segmentEnd = prefix.indexOf('/', segmentStart);
+            if (segmentEnd < 0) {
+                segmentEnd = prefix.length();
+            }
+            if (isBlank(prefix, segmentStart, segmentEnd)) {
+                return null;
+            }
+            segmentStart = segmentEnd + 1;
+        }
+
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.addChild(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /*
+     * Pre-builds, for each pattern node, the attribute list of every pattern node at a
+     * segment boundary on its path.  A pattern node is only inherited by descendants
+     * whose next character is "/", i.e. "/ab/**" applies to "/ab/c/" but not "/abc/".
+     */
+    private void accumulate(Node node, List<String> inherited) {
+        List<String> current = inherited;
+        if (node.roles != null) {
+            current = new ArrayList<String>(inherited);
+            current.addAll(node.roles);
+            node.attributes = toAttributes(current);
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            accumulate(node.children[i], node.keys[i] == '/' ? current : inherited);
+        }
+    }
+
+    private static List<String> splitRoles(String value) {
+        List<String> result = new ArrayList<String>();
+        if (value != null) {
+            for (String role : value.split(",")) {
+                String trimmed = role.trim();
+                if (!trimmed.isEmpty()) {
+                    result.add(trimmed);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Collection<ConfigAttribute> toAttributes(List<String> roles) {
+        if (roles.isEmpty()) {
+            return null;
+        }
+        List<ConfigAttribute> result = new ArrayList<ConfigAttribute>(roles.size());
+        for (String role : roles) {
+            result.add(new SecurityConfig(role));
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,122 @@
+package org.collectionspace.services.authorization.spring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import static org.testng.Assert.*;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.security.access.ConfigAttribute;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that CSpaceSecurityMetadataSource picks up changes to its URL properties file.
+ */
+public class CSpaceSecurityMetadataSourceTest {
+    private File propertiesFile;
+    private CSpaceSecurityMetadataSource source;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        propertiesFile = File.createTempFile("url-security", ".properties");
+        source = new CSpaceSecurityMetadataSource();
+        source.setReloadCheckIntervalMillis(0);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        propertiesFile.delete();
+    }
+
+    /*
+     * Writes the properties file, making sure that its timestamp changes even on file systems
+     * with a coarse timestamp resolution.
+     */
+    private void writeProperties(String content) throws IOException {
+        long previous = propertiesFile.exists() ? propertiesFile.lastModified() : 0;
+        Writer writer = new OutputStreamWriter(new FileOutputStream(propertiesFile), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        propertiesFile.setLastModified(Math.max(System.currentTimeMillis(), previous + 2000));
+    }
+
+    private List<String> getRoles(String url) {
+        Collection<ConfigAttribute> attributes = source.getAttributes(url);
+        if (attributes == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        for (ConfigAttribute attribute : attributes) {
+            result.add(attribute.getAttribute());
+        }
+        return result;
+    }
+
+    @Test
+    public void testChangedBindingIsReloaded() throws IOException {
+        writeProperties("/batch/**=ROLE_A\n");
+        source.setUrlPropertiesResource(new FileSystemResource(propertiesFile));
+
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_A"));
+        assertNull(getRoles("/collectionobjects/1234"));
+
+        writeProperties("/batch/**=ROLE_B\n/collectionobjects/**=ROLE_C\n");
+
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_B"));
+        assertEquals(getRoles("/collectionobjects/1234"), Arrays.asList("ROLE_C"));
+    }
+
+    @Test
+    public void testMissingResourceRestrictsNothing() throws IOException {
+        propertiesFile.delete();
+        source.setUrlPropertiesResource(new FileSystemResource(propertiesFile));
+
+        assertNull(getRoles("/batch/1234"));
+
+        // Creating the file later opts in
+        writeProperties("/batch/**=ROLE_A\n");
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_A"));
+
+        // Removing it opts out again
+        propertiesFile.delete();
+        assertNull(getRoles("/batch/1234"));
+    }
+
+    @Test
+    public void testNegativeIntervalDisablesReloading() throws IOException {
+        writeProperties("/batch/**=ROLE_A\n");
+        source.setReloadCheckIntervalMillis(-1);
+        source.setUrlPropertiesResource(new FileSystemResource(propertiesFile));
+
+        writeProperties("/batch/**=ROLE_B\n");
+
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_A"));
+    }
+
+    @Test
+    public void testEditedPropertiesWithTheSameHashAreRecompiled() {
+        Properties properties = new Properties();
+        properties.setProperty("/batch/**", "ROLE_Aa");
+        source.setUrlProperties(properties);
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_Aa"));
+
+        // "Aa" and "BB" have the same hash code, and so do the properties before and after the edit
+        properties.setProperty("/batch/**", "ROLE_BB");
+        source.reloadIfChanged();
+
+        assertEquals(getRoles("/batch/1234"), Arrays.asList("ROLE_BB"));
+    }
+}
@@ -0,0 +1,261 @@
+package org.collectionspace.services.authorization.spring;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.authorization.CSpaceResource;
+import org.collectionspace.services.authorization.URIResourceImpl;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.AclImpl;
+import org.springframework.security.acls.domain.BasePermission;
+import org.springframework.security.acls.domain.ConsoleAuditLogger;
+import org.springframework.security.acls.domain.DefaultPermissionGrantingStrategy;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.MutableAclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the decisions of the compiled permission table against Spring's own granting strategy,
+ * in particular for ACLs that inherit the entries of a parent ACL.
+ */
+public class PermissionDecisionTableTest {
+    private static final String TENANT_ID = "1";
+    private static final String USER = "bob@example.org";
+    private static final String ROLE = "ROLE_1_TESTER";
+
+    private static final AclAuthorizationStrategy ALLOW_CHANGES = new AclAuthorizationStrategy() {
+        @Override
+        public void securityCheck(Acl acl, int changeType) {
+            // The test builds its ACLs directly
+        }
+    };
+
+    // The ACLs returned by the stub ACL service, by object identity
+    private final Map<ObjectIdentity, Acl> acls = new HashMap<ObjectIdentity, Acl>();
+    private int aclReads;
+    // Run while an ACL is read, i.e. in the middle of a compile
+    private Runnable duringRead;
+
+    private PermissionDecisionTable table;
+    private Authentication bob;
+
+    private final CSpaceResource parent = new URIResourceImpl(TENANT_ID, "/parents", "GET");
+    private final CSpaceResource child = new URIResourceImpl(TENANT_ID, "/children", "GET");
+
+    @BeforeMethod
+    public void setUp() {
+        acls.clear();
+        aclReads = 0;
+        duringRead = null;
+
+        MutableAclService aclService = (MutableAclService) Proxy.newProxyInstance(
+                MutableAclService.class.getClassLoader(),
+                new Class<?>[] { MutableAclService.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("readAclById") && args.length == 1) {
+                            aclReads++;
+                            if (duringRead != null) {
+                                duringRead.run();
+                            }
+                            Acl acl = acls.get(args[0]);
+                            if (acl == null) {
+                                throw new NotFoundException("No ACL for " + args[0]);
+                            }
+                            return acl;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        SpringAuthorizationProvider provider = new SpringAuthorizationProvider();
+        provider.setProviderAclService(aclService);
+        table = provider.getPermissionDecisionTable();
+
+        bob = new UsernamePasswordAuthenticationToken(USER, null,
+                Arrays.asList(new SimpleGrantedAuthority(ROLE)));
+    }
+
+    private AclImpl createAcl(CSpaceResource res, Acl parentAcl, boolean entriesInheriting) {
+        ObjectIdentity oid = SpringAuthorizationProvider.getObjectIdentity(res);
+        AclImpl acl = new AclImpl(oid, (Serializable) oid.getIdentifier(), ALLOW_CHANGES,
+                new DefaultPermissionGrantingStrategy(new ConsoleAuditLogger()),
+                parentAcl, null, entriesInheriting, new PrincipalSid("admin"));
+        acls.put(oid, acl);
+        return acl;
+    }
+
+    private static void addAce(AclImpl acl, Permission perm, Sid sid, boolean granting) {
+        acl.insertAce(acl.getEntries().size(), perm, sid, granting);
+    }
+
+    /*
+     * Asserts that the table agrees with Spring's own evaluation of the ACL, and returns the decision.
+     */
+    private boolean isGranted(CSpaceResource res, Permission perm) {
+        boolean result = table.hasPermission(bob, res, perm);
+
+        boolean expected;
+        try {
+            List<Sid> sids = Arrays.<Sid>asList(new PrincipalSid(USER), new GrantedAuthoritySid(ROLE));
+            expected = acls.get(SpringAuthorizationProvider.getObjectIdentity(res)).isGranted(
+                    Arrays.asList(perm), sids, false);
+        } catch (NotFoundException e) {
+            expected = false;
+        }
+        assertEquals(result, expected, "The decision table disagrees with Spring's granting strategy");
+
+        return result;
+    }
+
+    @Test
+    public void testDirectEntries() {
+        AclImpl acl = createAcl(child, null, false);
+        addAce(acl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+        addAce(acl, BasePermission.WRITE, new GrantedAuthoritySid(ROLE), false);
+
+        assertTrue(isGranted(child, BasePermission.READ));
+        assertFalse(isGranted(child, BasePermission.WRITE));
+        assertFalse(isGranted(child, BasePermission.DELETE));
+    }
+
+    @Test
+    public void testPrincipalEntryDecidesBeforeAuthorities() {
+        AclImpl acl = createAcl(child, null, false);
+        addAce(acl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+        addAce(acl, BasePermission.READ, new PrincipalSid(USER), false);
+
+        assertFalse(isGranted(child, BasePermission.READ));
+    }
+
+    @Test
+    public void testMissingAclDenies() {
+        assertFalse(table.hasPermission(bob, child, BasePermission.READ));
+    }
+
+    @Test
+    public void testInheritedEntries() {
+        AclImpl parentAcl = createAcl(parent, null, false);
+        addAce(parentAcl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+        addAce(parentAcl, BasePermission.DELETE, new GrantedAuthoritySid(ROLE), true);
+
+        AclImpl childAcl = createAcl(child, parentAcl, true);
+        addAce(childAcl, BasePermission.DELETE, new GrantedAuthoritySid(ROLE), false);
+
+        // Granted by the parent only
+        assertTrue(isGranted(child, BasePermission.READ));
+        // The child's own entry decides before the parent's
+        assertFalse(isGranted(child, BasePermission.DELETE));
+        // Decided by neither
+        assertFalse(isGranted(child, BasePermission.WRITE));
+    }
+
+    @Test
+    public void testInheritanceFromAclWithoutEntries() {
+        AclImpl parentAcl = createAcl(parent, null, false);
+        addAce(parentAcl, BasePermission.READ, new PrincipalSid(USER), true);
+
+        createAcl(child, parentAcl, true);
+
+        assertTrue(isGranted(child, BasePermission.READ));
+    }
+
+    @Test
+    public void testNonInheritingAclIgnoresParent() {
+        AclImpl parentAcl = createAcl(parent, null, false);
+        addAce(parentAcl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+
+        AclImpl childAcl = createAcl(child, parentAcl, false);
+        addAce(childAcl, BasePermission.WRITE, new GrantedAuthoritySid(ROLE), true);
+
+        assertFalse(isGranted(child, BasePermission.READ));
+        assertTrue(isGranted(child, BasePermission.WRITE));
+    }
+
+    @Test
+    public void testInvalidatingParentUpdatesChild() {
+        AclImpl parentAcl = createAcl(parent, null, false);
+        addAce(parentAcl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+        createAcl(child, parentAcl, true);
+
+        assertTrue(isGranted(child, BasePermission.READ));
+        int reads = aclReads;
+        assertTrue(isGranted(child, BasePermission.READ));
+        assertEquals(aclReads, reads, "A second lookup should be answered from the table");
+
+        // Revoke the grant on the parent; only the parent is invalidated
+        parentAcl.deleteAce(0);
+        addAce(parentAcl, BasePermission.READ, new GrantedAuthoritySid(ROLE), false);
+        table.invalidate(parent);
+
+        assertFalse(isGranted(child, BasePermission.READ));
+    }
+
+    @Test
+    public void testCompileRacingAnInvalidationIsNotKept() {
+        AclImpl acl = createAcl(child, null, false);
+        addAce(acl, BasePermission.READ, new GrantedAuthoritySid(ROLE), true);
+        duringRead = new Runnable() {
+            @Override
+            public void run() {
+                duringRead = null;
+                table.invalidate(child);
+            }
+        };
+
+        assertTrue(isGranted(child, BasePermission.READ));
+        int reads = aclReads;
+        assertTrue(isGranted(child, BasePermission.READ));
+        assertEquals(aclReads, reads + 1, "A compile that raced an invalidation shouldn't have been kept");
+        assertTrue(isGranted(child, BasePermission.READ));
+        assertEquals(aclReads, reads + 1, "The next compile should have been kept");
+    }
+
+    @Test
+    public void testParentCycleIsDenied() {
+        // Spring doesn't allow an ACL to be its own parent, so build the cycle through a stub
+        final ObjectIdentity oid = SpringAuthorizationProvider.getObjectIdentity(child);
+        Acl cyclic = (Acl) Proxy.newProxyInstance(Acl.class.getClassLoader(), new Class<?>[] { Acl.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getParentAcl")) {
+                            return proxy;
+                        }
+                        if (method.getName().equals("isEntriesInheriting")) {
+                            return Boolean.TRUE;
+                        }
+                        if (method.getName().equals("getObjectIdentity")) {
+                            return oid;
+                        }
+                        if (method.getName().equals("getEntries")) {
+                            return Collections.emptyList();
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        acls.put(oid, cyclic);
+
+        assertFalse(table.hasPermission(bob, child, BasePermission.READ));
+    }
+}
@@ -16,7 +16,10 @@
  */
 package org.collectionspace.services.client;
 
+import javax.ws.rs.core.Response;
+
 import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.common.invocable.InvocationContext;
 
 /**
  * BatchClient.java
@@ -56,4 +59,10 @@ public class BatchClient extends AbstractCommonListPoxServiceClientImpl<BatchPro
 		return BatchProxy.class;
 	}
 
+	/**
+	 * Invokes a batch job, and returns its InvocationResults.
+	 */
+	public Response invoke(String csid, InvocationContext invContext) {
+		return getProxy().invoke(csid, invContext);
+	}
 }
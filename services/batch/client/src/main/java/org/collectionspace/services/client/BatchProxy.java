@@ -1,8 +1,13 @@
 package org.collectionspace.services.client;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import org.collectionspace.services.common.invocable.InvocationContext;
 
 /**
  * @version $Revision: 2108 $
@@ -11,4 +16,9 @@ import javax.ws.rs.Produces;
 @Produces({"application/xml"})
 @Consumes({"application/xml"})
 public interface BatchProxy extends CollectionSpaceCommonListPoxProxy {
+
+    @POST
+    @Path("{csid}/invoke")
+    Response invoke(@PathParam("csid") String csid,
+    		InvocationContext invContext);
 }
@@ -37,6 +37,7 @@ import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.BadRequestException;
 import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.document.DocumentHandler;
+import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.invocable.Invocable;
 import org.collectionspace.services.common.invocable.InvocationContext;
 import org.collectionspace.services.common.invocable.InvocationResults;
@@ -52,6 +53,7 @@ import java.io.InputStream;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -299,6 +301,56 @@ public class BatchResource extends NuxeoBasedResource {
         }
     }
 
+    /*
+     * Gets the progress of the running invocation of a batch job that reports it (see CancellableBatchInvocable).
+     */
+    @GET
+    @Path("{csid}/invoke")
+    public InvocationResults getBatchJobProgress(
+    		@Context UriInfo ui,
+    		@PathParam("csid") String csid) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(ui);
+            return getRunningBatchJob(ctx, csid).getProgress();
+        } catch (Exception e) {
+        	String msg = String.format("%s Could not get the progress of batch job with CSID='%s'.",
+        			ServiceMessages.GET_FAILED, csid);
+            throw bigReThrow(e, msg, csid);
+        }
+    }
+
+    /*
+     * Cancels the running invocation of a batch job that supports it (see CancellableBatchInvocable).  The
+     * invocation stops after the work it has already started, and its POST request then returns.
+     */
+    @DELETE
+    @Path("{csid}/invoke")
+    public InvocationResults cancelBatchJob(
+    		@Context UriInfo ui,
+    		@PathParam("csid") String csid) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(ui);
+            CancellableBatchInvocable job = getRunningBatchJob(ctx, csid);
+            job.cancel();
+            return job.getProgress();
+        } catch (Exception e) {
+        	String msg = String.format("%s Could not cancel batch job with CSID='%s'.",
+        			ServiceMessages.DELETE_FAILED, csid);
+            throw bigReThrow(e, msg, csid);
+        }
+    }
+
+    private CancellableBatchInvocable getRunningBatchJob(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) throws Exception {
+        if (isAuthorizedToInvokeBatchJobs(ctx) == false) {
+            throw new PermissionException();
+        }
+        CancellableBatchInvocable job = RunningBatchJobs.get(ctx.getTenantId(), csid);
+        if (job == null) {
+            throw new DocumentNotFoundException(String.format("The batch job with CSID='%s' is not running.", csid));
+        }
+        return job;
+    }
+
     public static InputStream getBatchMetadataInputStream(String batchName) {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 
@@ -0,0 +1,22 @@
+package org.collectionspace.services.batch;
+
+import org.collectionspace.services.common.invocable.InvocationResults;
+
+/**
+ * A batch job that reports its progress while it runs, and that can be asked to stop. While an invocation of
+ * one is running, GET /batch/{csid}/invoke returns its progress, and DELETE /batch/{csid}/invoke cancels it.
+ * Only one invocation of such a job may run at a time in a tenant.
+ */
+public interface CancellableBatchInvocable extends BatchInvocable {
+
+	/**
+	 * @return the progress of the running invocation, as a snapshot that may be returned to the client
+	 */
+	public InvocationResults getProgress();
+
+	/**
+	 * Asks the running invocation to stop. It's called from a different thread (request) than the one running
+	 * the job, and should return without waiting for the job to stop.
+	 */
+	public void cancel();
+}
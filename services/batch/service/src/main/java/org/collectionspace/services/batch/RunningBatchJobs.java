@@ -0,0 +1,38 @@
+package org.collectionspace.services.batch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The invocations of CancellableBatchInvocable batch jobs that are currently running, by tenant and batch
+ * job CSID, so that other requests can report their progress and cancel them.
+ */
+public class RunningBatchJobs {
+	private static final ConcurrentMap<String, CancellableBatchInvocable> jobs = new ConcurrentHashMap<String, CancellableBatchInvocable>();
+
+	private RunningBatchJobs() {
+		// All static methods
+	}
+
+	private static String getKey(String tenantId, String csid) {
+		return tenantId + ":" + csid;
+	}
+
+	/**
+	 * @return false if an invocation of the batch job is already running in the tenant
+	 */
+	public static boolean add(String tenantId, String csid, CancellableBatchInvocable job) {
+		return jobs.putIfAbsent(getKey(tenantId, csid), job) == null;
+	}
+
+	public static void remove(String tenantId, String csid, CancellableBatchInvocable job) {
+		jobs.remove(getKey(tenantId, csid), job);
+	}
+
+	/**
+	 * @return the running invocation of the batch job in the tenant, or null if there isn't one
+	 */
+	public static CancellableBatchInvocable get(String tenantId, String csid) {
+		return jobs.get(getKey(tenantId, csid));
+	}
+}
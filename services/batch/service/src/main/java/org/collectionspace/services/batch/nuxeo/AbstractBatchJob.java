@@ -29,6 +29,7 @@ import org.collectionspace.services.client.PlaceAuthorityClient;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.RelationClient;
 import org.collectionspace.services.client.TaxonomyAuthorityClient;
+import org.collectionspace.services.client.XmlTools;
 import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectConstants;
 import org.collectionspace.services.common.CSWebApplicationException;
@@ -37,11 +38,16 @@ import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.UriTemplateRegistry;
 import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.authorityref.AuthorityRefDocList;
 import org.collectionspace.services.common.context.ServiceBindingUtils;
+import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.query.UriInfoImpl;
 import org.collectionspace.services.common.relation.RelationResource;
+import org.collectionspace.services.common.storage.CsidDirectory;
+import org.collectionspace.services.common.vocabulary.AuthorityItemJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
 import org.collectionspace.services.jaxb.AbstractCommonList;
 import org.collectionspace.services.movement.nuxeo.MovementConstants;
 import org.collectionspace.services.relation.RelationsCommonList;
@@ -62,6 +68,8 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
 
 	private Map<String, String> authorityServiceNamesByDocType;
 
+	private BatchRepository repository;
+
 	@SuppressWarnings("unchecked")
 	protected static <T> Set<T> convertListToSet(List<T> list)
     {
@@ -69,6 +77,18 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
         return (Set<T>) list.stream().collect(Collectors.toSet());
     }
 
+	/**
+	 * Returns the repository of the tenant, which reads records directly from the batch job's repository
+	 * session. Prefer it to the find* methods, which call the resources and parse their XML payloads.
+	 */
+	protected BatchRepository getRepository() {
+		if (repository == null) {
+			repository = new BatchRepository(getServiceContext(), getRepoSession(), getResourceMap());
+		}
+
+		return repository;
+	}
+
 	protected String getFieldXml(Map<String, String> fields, String fieldName) {
 		return getFieldXml(fieldName, fields.get(fieldName));
 	}
@@ -183,23 +203,19 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
 	 *
 	 * @param subjectCsid	The csid of the record
 	 * @return
-	 * @throws URISyntaxException
-	 * @throws DocumentException
+	 * @throws Exception
 	 */
-	protected String findSingleRelatedMovement(String subjectCsid) throws URISyntaxException, DocumentException {
+	protected String findSingleRelatedMovement(String subjectCsid) throws Exception {
 		String foundMovementCsid = null;
-		List<String> movementCsids = findRelatedMovements(subjectCsid);
+		List<String> movementCsids = getRepository().findRelatedObjectCsids(subjectCsid, "affects", MovementConstants.NUXEO_DOCTYPE);
 
-		for (String movementCsid : movementCsids) {
-			PoxPayloadOut movementPayload = findMovementByCsid(movementCsid);
-			String movementWorkflowState = getFieldValue(movementPayload, CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA, CollectionSpaceClient.COLLECTIONSPACE_CORE_WORKFLOWSTATE);
-
-			if (!movementWorkflowState.equals(WorkflowClient.WORKFLOWSTATE_DELETED)) {
+		for (BatchDocument movement : getRepository().get(MovementConstants.NUXEO_DOCTYPE, movementCsids)) {
+			if (!movement.getWorkflowState().equals(WorkflowClient.WORKFLOWSTATE_DELETED)) {
 				if (foundMovementCsid != null) {
 					return null;
 				}
 
-				foundMovementCsid = movementCsid;
+				foundMovementCsid = movement.getCsid();
 			}
 		}
 
@@ -336,9 +352,25 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
 	}
 
 	protected PoxPayloadOut findAuthorityItemByCsid(String serviceName, String csid) throws URISyntaxException, DocumentException {
-		List<String> vocabularyCsids = getVocabularyCsids(serviceName);
 		PoxPayloadOut itemPayload = null;
 
+		// The CSID directory knows the item's vocabulary, so the vocabularies don't have to be tried one by one.
+		CsidDirectory.Entry entry = CsidDirectory.getInstance().lookup(getTenantId(), csid);
+
+		if (entry != null && entry.getParentCsid() != null) {
+			try {
+				itemPayload = findAuthorityItemByCsid(serviceName, entry.getParentCsid(), csid);
+			} catch (Exception e) {
+				itemPayload = null;
+			}
+
+			if (itemPayload != null) {
+				return itemPayload;
+			}
+		}
+
+		List<String> vocabularyCsids = getVocabularyCsids(serviceName);
+
 		for (String vocabularyCsid : vocabularyCsids) {
 			logger.debug("vocabularyCsid=" + vocabularyCsid);
 
@@ -399,6 +431,33 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
 	}
 
 	protected PoxPayloadOut findAuthorityItemByRefName(String serviceName, String refName) throws URISyntaxException, DocumentException, Exception {
+		AuthorityResource<?, ?> resource = (AuthorityResource<?, ?>) getResourceMap().get(serviceName);
+		String tenantId = getServiceContext().getTenantId();
+		String termKey = RefNameUtils.getAuthorityTermKey(refName);
+		//
+		// If the refName has been resolved before, get the item by its CSID and skip the short identifier queries.
+		//
+		RefNameResolutionCache resolutionCache = RefNameResolutionCache.getInstance();
+		RefNameResolutionCache.Entry entry = resolutionCache.getEntry(tenantId, termKey);
+		if (entry != null && entry.getDocType().equals(resource.getItemDocType(tenantId))) {
+			PoxPayloadOut payload = null;
+			try {
+				payload = findAuthorityItemByCsid(serviceName, entry.getInAuthority(), entry.getCsid());
+			} catch (DocumentNotFoundException e) {
+				payload = null;
+			} catch (CSWebApplicationException e) {
+				if (e.getResponse() == null || e.getResponse().getStatus() != Response.Status.NOT_FOUND.getStatusCode()) {
+					throw e;
+				}
+				payload = null;
+			}
+			if (payload != null && termKey.equals(RefNameUtils.getAuthorityTermKey(getRefName(payload)))) {
+				resolutionCache.entryFound(entry);
+				return payload;
+			}
+			resolutionCache.entryNotFound(tenantId, termKey, entry);
+		}
+
 		RefName.AuthorityItem item = RefName.AuthorityItem.parse(refName);
 		if (item == null) {
 			return null;
@@ -406,7 +465,14 @@ public abstract class AbstractBatchJob extends AbstractBatchInvocable {
 		String vocabularyShortId = item.getParentShortIdentifier();
 		String itemShortId = item.getShortIdentifier();
 
-		return findAuthorityItemByShortId(serviceName, vocabularyShortId, itemShortId);
+		PoxPayloadOut payload = findAuthorityItemByShortId(serviceName, vocabularyShortId, itemShortId);
+		if (payload != null && termKey != null && termKey.equals(RefNameUtils.getAuthorityTermKey(getRefName(payload)))) {
+			resolutionCache.put(tenantId, termKey, getCsid(payload),
+					XmlTools.getElementValue(payload.getDOMDocument(), "//" + AuthorityItemJAXBSchema.IN_AUTHORITY),
+					resource.getItemDocType(tenantId));
+		}
+
+		return payload;
 	}
 
 	protected PoxPayloadOut findPlaceByRefName(String refName) throws URISyntaxException, DocumentException, Exception {
@@ -0,0 +1,117 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.common.context.ServiceBindingUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.model.PropertyException;
+
+/**
+ * A record read by a BatchRepository. It wraps the record's Nuxeo document, so its fields are read directly,
+ * without the record being serialized into a payload.
+ *
+ * Field paths are Nuxeo xpaths relative to a schema, e.g. "fieldCollectionPlace" or
+ * "objectNameList/0/objectName".
+ */
+public class BatchDocument {
+	private final DocumentModel docModel;
+
+	public BatchDocument(DocumentModel docModel) {
+		this.docModel = docModel;
+	}
+
+	public String getCsid() {
+		return docModel.getName();
+	}
+
+	/**
+	 * @return the doctype of the record, without any tenant qualifier, e.g. "CollectionObject"
+	 */
+	public String getDocType() {
+		return ServiceBindingUtils.getUnqualifiedTenantDocType(docModel.getType());
+	}
+
+	public String getRefName() {
+		return getString(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA, CollectionSpaceClient.COLLECTIONSPACE_CORE_REFNAME);
+	}
+
+	public String getWorkflowState() {
+		return docModel.getCurrentLifeCycleState();
+	}
+
+	public Calendar getUpdatedAt() {
+		return (Calendar) getValue(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA, CollectionSpaceClient.COLLECTIONSPACE_CORE_UPDATED_AT);
+	}
+
+	/**
+	 * @return the value of the field, or null if the field doesn't exist in the record
+	 */
+	public Object getValue(String schema, String path) {
+		try {
+			return docModel.getPropertyValue(schema + ":" + path);
+		} catch (PropertyException e) {
+			return null;
+		}
+	}
+
+	public String getString(String schema, String path) {
+		Object value = getValue(schema, path);
+
+		return (value == null ? null : value.toString());
+	}
+
+	public boolean getBoolean(String schema, String path) {
+		Object value = getValue(schema, path);
+
+		return (value != null && (Boolean.TRUE.equals(value) || value.toString().equals("true")));
+	}
+
+	/**
+	 * @return the values of a repeating field, or an empty list if the field doesn't exist in the record
+	 */
+	public List<String> getStrings(String schema, String path) {
+		Object value = getValue(schema, path);
+		Collection<?> values;
+
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		else if (value instanceof Object[]) {
+			values = Arrays.asList((Object[]) value);
+		}
+		else if (value instanceof Collection) {
+			values = (Collection<?>) value;
+		}
+		else {
+			values = Collections.singletonList(value);
+		}
+
+		List<String> strings = new ArrayList<String>(values.size());
+
+		for (Object item : values) {
+			if (item != null) {
+				strings.add(item.toString());
+			}
+		}
+
+		return strings;
+	}
+
+	/**
+	 * @return the top-level fields of a schema, by name
+	 */
+	public Map<String, Object> getFields(String schema) {
+		return docModel.getProperties(schema);
+	}
+
+	public DocumentModel getDocumentModel() {
+		return docModel;
+	}
+}
@@ -44,8 +44,10 @@ import org.collectionspace.services.batch.BatchCommon;
 import org.collectionspace.services.batch.BatchCommon.ForDocTypes;
 import org.collectionspace.services.batch.BatchCommon.ForRoles;
 import org.collectionspace.services.batch.BatchInvocable;
+import org.collectionspace.services.batch.CancellableBatchInvocable;
 import org.collectionspace.services.batch.ResourceActionGroup;
 import org.collectionspace.services.batch.ResourceActionGroupList;
+import org.collectionspace.services.batch.RunningBatchJobs;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.common.ResourceMap;
@@ -307,12 +309,30 @@ public class BatchDocumentModelHandler extends NuxeoDocumentModelHandler<BatchCo
 				}
 			}
 
+			//
+			// Register jobs that report progress and can be cancelled, so other requests can find them while they run.
+			CancellableBatchInvocable cancellableInstance = null;
+			if (batchInstance instanceof CancellableBatchInvocable) {
+				cancellableInstance = (CancellableBatchInvocable) batchInstance;
+				if (RunningBatchJobs.add(ctx.getTenantId(), csid, cancellableInstance) == false) {
+					String msg = String.format("BatchResource: The batch job '%s' CSID='%s' is already running.",
+							batchCommon.getName(), csid);
+					throw new BadRequestException(msg);
+				}
+			}
+
 			try {
-				batchInstance.run(batchCommon);
-			} catch (UnsupportedOperationException t) {
-				// Support for run() will be deprecated in a future release.  See DRYD-878
-				logger.info(t.getMessage());
-				batchInstance.run();
+				try {
+					batchInstance.run(batchCommon);
+				} catch (UnsupportedOperationException t) {
+					// Support for run() will be deprecated in a future release.  See DRYD-878
+					logger.info(t.getMessage());
+					batchInstance.run();
+				}
+			} finally {
+				if (cancellableInstance != null) {
+					RunningBatchJobs.remove(ctx.getTenantId(), csid, cancellableInstance);
+				}
 			}
 
 			int status = batchInstance.getCompletionStatus();
@@ -0,0 +1,548 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+
+import org.collectionspace.services.authorization.AuthZ;
+import org.collectionspace.services.authorization.URIResourceImpl;
+import org.collectionspace.services.client.AuthorityClient;
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.IRelationsManager;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.CollectionSpaceResource;
+import org.collectionspace.services.common.NuxeoBasedResource;
+import org.collectionspace.services.common.ResourceMap;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.DocumentException;
+import org.collectionspace.services.common.query.UriInfoImpl;
+import org.collectionspace.services.common.security.UnauthorizedException;
+import org.collectionspace.services.common.vocabulary.AuthorityResource;
+import org.collectionspace.services.common.vocabulary.AuthorityServiceUtils;
+import org.collectionspace.services.config.service.ObjectPartType;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+
+import org.jboss.resteasy.specimpl.PathSegmentImpl;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process access to the records of a tenant for batch jobs.
+ *
+ * Records are read directly from the batch job's repository session, and returned as BatchDocuments,
+ * instead of being fetched through the resources' list and read methods and parsed back out of their
+ * XML payloads. Reads are checked against the current user's permissions the same way the REST API checks
+ * them.
+ *
+ * Writes go through the records' resources, so that the document handlers run as they do for a PUT; only
+ * the HTTP round trip is saved. update() writes one record. updateAll() writes records a chunk at a time,
+ * with one query to find each chunk and one call to save it, so a job that updates many records should
+ * use it rather than calling update() for each of them.
+ *
+ * Doctypes are the unqualified Nuxeo doctypes of records, e.g. "CollectionObject" or "Placeitem".
+ */
+public class BatchRepository {
+	private static final Logger logger = LoggerFactory.getLogger(BatchRepository.class);
+
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	// The most CSIDs to put into one "ecm:name IN (...)" condition
+	private static final int MAX_CSIDS_PER_QUERY = 100;
+
+	// The number of records to update in a transaction
+	private static final int UPDATES_PER_TRANSACTION = 100;
+
+	private static final String RELATIONS_COMMON_SCHEMA = "relations_common";
+
+	private static final String READ = "GET";
+	private static final String UPDATE = "PUT";
+
+	private final ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx;
+	private final CoreSessionInterface repoSession;
+	private final ResourceMap resourceMap;
+	private final String tenantId;
+
+	private Map<String, NuxeoBasedResource> resourcesByDocType;
+	private Set<String> authorityItemDocTypes;
+	private final Map<String, Boolean> accessAllowed = new HashMap<String, Boolean>();
+
+	public BatchRepository(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, CoreSessionInterface repoSession, ResourceMap resourceMap) {
+		this.ctx = ctx;
+		this.repoSession = repoSession;
+		this.resourceMap = resourceMap;
+		this.tenantId = ctx.getTenantId();
+	}
+
+	/**
+	 * Returns a record, whatever its workflow state.
+	 *
+	 * @return the record, or null if there isn't a record of the doctype with the CSID
+	 */
+	public BatchDocument get(String docType, String csid) throws Exception {
+		List<BatchDocument> docs = get(docType, Collections.singletonList(csid));
+
+		return (docs.isEmpty() ? null : docs.get(0));
+	}
+
+	/**
+	 * Returns a record of any doctype, whatever its workflow state. The record's doctype is found in the CSID
+	 * directory (see CsidDirectory), so usually only that doctype is queried.
+	 *
+	 * @return the record, or null if there isn't a record with the CSID
+	 */
+	public BatchDocument get(String csid) throws Exception {
+		DocumentModel docModel = NuxeoUtils.getDocFromCsid(ctx, repoSession, csid);
+
+		if (docModel == null) {
+			return null;
+		}
+
+		BatchDocument doc = new BatchDocument(docModel);
+		checkAccess(doc.getDocType(), READ);
+
+		return doc;
+	}
+
+	/**
+	 * Returns the records with the given CSIDs, whatever their workflow states, in no particular order.
+	 * CSIDs that don't match a record of the doctype are skipped.
+	 */
+	public List<BatchDocument> get(String docType, Collection<String> csids) throws Exception {
+		checkAccess(docType, READ);
+
+		List<BatchDocument> docs = new ArrayList<BatchDocument>(csids.size());
+		List<String> chunk = new ArrayList<String>(MAX_CSIDS_PER_QUERY);
+
+		for (String csid : csids) {
+			chunk.add(csid);
+
+			if (chunk.size() == MAX_CSIDS_PER_QUERY) {
+				fetch(docType, chunk, docs);
+				chunk.clear();
+			}
+		}
+
+		if (!chunk.isEmpty()) {
+			fetch(docType, chunk, docs);
+		}
+
+		return docs;
+	}
+
+	private void fetch(String docType, List<String> csids, List<BatchDocument> docs) throws Exception {
+		StringBuilder csidList = new StringBuilder();
+
+		for (String csid : csids) {
+			csidList.append(csidList.length() > 0 ? ", " : "").append(NXQL.escapeString(csid));
+		}
+
+		DocumentModelList docList = repoSession.query(buildQuery("*", docType, NXQL.ECM_NAME + " IN (" + csidList + ")", true));
+
+		for (DocumentModel docModel : docList) {
+			docs.add(new BatchDocument(docModel));
+		}
+	}
+
+	/**
+	 * @see #query(String, String, int)
+	 */
+	public Iterable<BatchDocument> query(String docType, String whereClause) throws Exception {
+		return query(docType, whereClause, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Returns the records of a doctype that aren't soft-deleted and that match an NXQL condition, in CSID order.
+	 * The records are read a page at a time as they're iterated, so any number of them may be processed
+	 * without holding them all in memory. Pages start after the last CSID of the previous page, so records
+	 * may be updated while they're iterated.
+	 *
+	 * @param whereClause An NXQL condition, e.g. "collectionobjects_common:objectNumber LIKE '2017.%'".
+	 *                    If null or empty, all the records of the doctype are returned.
+	 */
+	public Iterable<BatchDocument> query(final String docType, final String whereClause, final int pageSize) throws Exception {
+		checkAccess(docType, READ);
+
+		return new Iterable<BatchDocument>() {
+			@Override
+			public Iterator<BatchDocument> iterator() {
+				return new Iterator<BatchDocument>() {
+					private Iterator<DocumentModel> page = null;
+					private String lastCsid = null;
+					private boolean lastPage = false;
+
+					@Override
+					public boolean hasNext() {
+						while ((page == null || !page.hasNext()) && !lastPage) {
+							page = nextPage();
+						}
+
+						return page.hasNext();
+					}
+
+					@Override
+					public BatchDocument next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+
+						DocumentModel docModel = page.next();
+						lastCsid = docModel.getName();
+
+						return new BatchDocument(docModel);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+
+					private Iterator<DocumentModel> nextPage() {
+						String condition = (lastCsid == null ? null : NXQL.ECM_NAME + " > " + NXQL.escapeString(lastCsid));
+
+						if (StringUtils.isNotEmpty(whereClause)) {
+							condition = (condition == null ? whereClause : "(" + whereClause + ") AND " + condition);
+						}
+
+						try {
+							String query = buildQuery("*", docType, condition, false) + " ORDER BY " + NXQL.ECM_NAME;
+							DocumentModelList docList = repoSession.query(query, null, pageSize, 0, false);
+
+							lastPage = (docList.size() < pageSize);
+
+							return docList.iterator();
+						} catch (Exception e) {
+							throw new NuxeoException("Could not query " + docType + " records", e);
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the CSIDs of the records of a doctype that aren't soft-deleted and that match an NXQL condition.
+	 * The records themselves aren't loaded.
+	 */
+	public List<String> findCsids(String docType, String whereClause) throws Exception {
+		checkAccess(docType, READ);
+
+		return fetchValues(NXQL.ECM_NAME, docType, whereClause);
+	}
+
+	/**
+	 * Returns the CSIDs of the objects of the relations that aren't soft-deleted from a subject.
+	 *
+	 * @param predicate     The relationship type, e.g. "affects". If null, any relationship type is matched.
+	 * @param objectDocType The doctype of the objects, e.g. "Movement". If null, any doctype is matched.
+	 */
+	public List<String> findRelatedObjectCsids(String subjectCsid, String predicate, String objectDocType) throws Exception {
+		return findRelatedCsids(IRelationsManager.OBJECT, IRelationsManager.SUBJECT, subjectCsid, predicate, IRelationsManager.OBJECT_DOCTYPE, objectDocType);
+	}
+
+	/**
+	 * Returns the CSIDs of the subjects of the relations that aren't soft-deleted to an object.
+	 *
+	 * @param predicate      The relationship type, e.g. "hasBroader". If null, any relationship type is matched.
+	 * @param subjectDocType The doctype of the subjects. If null, any doctype is matched.
+	 */
+	public List<String> findRelatedSubjectCsids(String objectCsid, String predicate, String subjectDocType) throws Exception {
+		return findRelatedCsids(IRelationsManager.SUBJECT, IRelationsManager.OBJECT, objectCsid, predicate, IRelationsManager.SUBJECT_DOCTYPE, subjectDocType);
+	}
+
+	private List<String> findRelatedCsids(String resultField, String csidField, String csid, String predicate, String docTypeField, String docType) throws Exception {
+		checkAccess(IRelationsManager.DOC_TYPE, READ);
+
+		StringBuilder whereClause = new StringBuilder();
+		whereClause.append(RELATIONS_COMMON_SCHEMA).append(":").append(csidField).append(" = ").append(NXQL.escapeString(csid));
+
+		if (StringUtils.isNotEmpty(predicate)) {
+			whereClause.append(" AND ").append(RELATIONS_COMMON_SCHEMA).append(":").append(IRelationsManager.RELATIONSHIP_TYPE)
+				.append(" = ").append(NXQL.escapeString(predicate));
+		}
+
+		if (StringUtils.isNotEmpty(docType)) {
+			whereClause.append(" AND ").append(RELATIONS_COMMON_SCHEMA).append(":").append(docTypeField)
+				.append(" = ").append(NXQL.escapeString(docType));
+		}
+
+		return fetchValues(RELATIONS_COMMON_SCHEMA + ":" + resultField, IRelationsManager.DOC_TYPE, whereClause.toString());
+	}
+
+	private List<String> fetchValues(String field, String docType, String whereClause) throws Exception {
+		List<String> values = new ArrayList<String>();
+		IterableQueryResult result = repoSession.queryAndFetch(buildQuery(field, docType, whereClause, false), NXQL.NXQL);
+
+		try {
+			for (Map<String, Serializable> row : result) {
+				values.add((String) row.get(field));
+			}
+		} finally {
+			result.close();
+		}
+
+		return values;
+	}
+
+	private String buildQuery(String select, String docType, String whereClause, boolean includeDeleted) throws Exception {
+		StringBuilder query = new StringBuilder();
+
+		query.append("SELECT ").append(select)
+			.append(" FROM ").append(NuxeoUtils.getTenantQualifiedDocType(tenantId, docType))
+			.append(" WHERE ").append(CollectionSpaceClient.CORE_TENANTID).append(" = ").append(NXQL.escapeString(tenantId))
+			.append(" AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0");
+
+		if (!includeDeleted) {
+			query.append(" AND ").append(NuxeoUtils.buildWorkflowNotDeletedWhereClause());
+		}
+
+		if (StringUtils.isNotEmpty(whereClause)) {
+			query.append(" AND (").append(whereClause).append(")");
+		}
+
+		return query.toString();
+	}
+
+	/**
+	 * @see #update(String, String, Map)
+	 */
+	public PoxPayloadOut update(String docType, String csid, String partLabel, Map<String, String> fields) throws Exception {
+		Map<String, Map<String, String>> fieldsByPart = new LinkedHashMap<String, Map<String, String>>();
+		fieldsByPart.put(partLabel, fields);
+
+		return update(docType, csid, fieldsByPart);
+	}
+
+	/**
+	 * Updates top-level fields of a record, through the record's resource, so that the update is handled
+	 * as it would be for a PUT. Fields that aren't given are left unchanged.
+	 *
+	 * @param fieldsByPart The new values of the fields, by part label (e.g. "movements_common") and field name.
+	 *                     An empty value clears the field.
+	 * @return the updated record
+	 */
+	public PoxPayloadOut update(String docType, String csid, Map<String, Map<String, String>> fieldsByPart) throws Exception {
+		checkAccess(docType, UPDATE);
+
+		NuxeoBasedResource resource = getResource(docType);
+		PoxPayloadIn payload = new PoxPayloadIn(buildPayload(docType, resource.getServiceName(), fieldsByPart));
+
+		if (authorityItemDocTypes.contains(docType)) {
+			AuthorityResource<?, ?> authorityResource = (AuthorityResource<?, ?>) resource;
+
+			return authorityResource.updateAuthorityItem(ctx, null, resourceMap, createUriInfo(), getInAuthority(docType, csid), csid, payload,
+					AuthorityServiceUtils.UPDATE_REV, AuthorityServiceUtils.NO_CHANGE, AuthorityServiceUtils.NO_CHANGE);
+		}
+
+		return resource.update(ctx, resourceMap, createUriInfo(), csid, payload);
+	}
+
+	/**
+	 * Makes the same update to a number of records of a doctype. The records are updated UPDATES_PER_TRANSACTION
+	 * at a time: each chunk is found with one query, handled by the resource's document handlers as for a PUT,
+	 * and saved with one call (see NuxeoBasedResource.updateAll). Authority items, whose updates also go
+	 * through their authority, are updated one at a time with update().
+	 *
+	 * If a transaction is active, it's committed after each chunk, so a large update doesn't run in one long
+	 * transaction. If an update fails, the records in the chunks that were already committed stay updated.
+	 *
+	 * @return the number of records updated
+	 */
+	public int updateAll(String docType, Collection<String> csids, Map<String, Map<String, String>> fieldsByPart) throws Exception {
+		List<String> chunk = new ArrayList<String>(UPDATES_PER_TRANSACTION);
+		int numUpdated = 0;
+
+		for (Iterator<String> iterator = csids.iterator(); iterator.hasNext();) {
+			chunk.add(iterator.next());
+
+			if (chunk.size() < UPDATES_PER_TRANSACTION && iterator.hasNext()) {
+				continue;
+			}
+
+			updateChunk(docType, chunk, fieldsByPart);
+			numUpdated += chunk.size();
+			chunk.clear();
+
+			if (iterator.hasNext() && TransactionHelper.isTransactionActive()) {
+				TransactionHelper.commitOrRollbackTransaction();
+				TransactionHelper.startTransaction();
+			}
+		}
+
+		return numUpdated;
+	}
+
+	/*
+	 * Updates one chunk of the records of an updateAll().
+	 */
+	void updateChunk(String docType, List<String> csids, Map<String, Map<String, String>> fieldsByPart) throws Exception {
+		checkAccess(docType, UPDATE);
+
+		if (authorityItemDocTypes.contains(docType)) {
+			for (String csid : csids) {
+				update(docType, csid, fieldsByPart);
+			}
+
+			return;
+		}
+
+		NuxeoBasedResource resource = getResource(docType);
+		String payload = buildPayload(docType, resource.getServiceName(), fieldsByPart);
+		Map<String, PoxPayloadIn> updates = new LinkedHashMap<String, PoxPayloadIn>();
+
+		for (String csid : csids) {
+			// Each record's context gets its own payload, as it would for a PUT
+			updates.put(csid, new PoxPayloadIn(payload));
+		}
+
+		resource.updateAll(ctx, resourceMap, createUriInfo(), updates);
+	}
+
+	private String getInAuthority(String docType, String csid) throws Exception {
+		BatchDocument doc = get(docType, csid);
+
+		if (doc == null) {
+			throw new DocumentException(String.format("Could not find %s record %s", docType, csid));
+		}
+
+		DocumentModel docModel = doc.getDocumentModel();
+
+		for (String schemaName : docModel.getSchemas()) {
+			Schema schema = docModel.getDocumentType().getSchema(schemaName);
+
+			if (schema != null && schema.hasField(AuthorityClient.IN_AUTHORITY)) {
+				return (String) docModel.getProperty(schemaName, AuthorityClient.IN_AUTHORITY);
+			}
+		}
+
+		throw new DocumentException(String.format("%s record %s does not have an %s field", docType, csid, AuthorityClient.IN_AUTHORITY));
+	}
+
+	private String buildPayload(String docType, String serviceName, Map<String, Map<String, String>> fieldsByPart) throws DocumentException {
+		ServiceBindingType binding = ServiceMain.getInstance().getTenantBindingConfigReader().getServiceBindingForDocType(tenantId, docType);
+		StringBuilder payload = new StringBuilder();
+
+		payload.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+			.append("<document name=\"").append(serviceName).append("\">");
+
+		for (String partLabel : fieldsByPart.keySet()) {
+			payload.append("<ns2:").append(partLabel).append(" xmlns:ns2=\"").append(getPartNamespace(binding, partLabel)).append("\">");
+
+			for (Map.Entry<String, String> field : fieldsByPart.get(partLabel).entrySet()) {
+				String value = field.getValue();
+
+				payload.append("<").append(field.getKey()).append(">")
+					.append(value == null ? "" : StringEscapeUtils.escapeXml(value))
+					.append("</").append(field.getKey()).append(">");
+			}
+
+			payload.append("</ns2:").append(partLabel).append(">");
+		}
+
+		payload.append("</document>");
+
+		return payload.toString();
+	}
+
+	private String getPartNamespace(ServiceBindingType binding, String partLabel) throws DocumentException {
+		if (binding != null && binding.getObject() != null) {
+			for (ObjectPartType part : binding.getObject().getPart()) {
+				if (partLabel.equals(part.getLabel()) && part.getContent() != null && part.getContent().getXmlContent() != null) {
+					return part.getContent().getXmlContent().getNamespaceURI();
+				}
+			}
+		}
+
+		throw new DocumentException(String.format("The %s service does not have a part named %s",
+				(binding == null ? "unknown" : binding.getName()), partLabel));
+	}
+
+	private NuxeoBasedResource getResource(String docType) throws DocumentException {
+		if (resourcesByDocType == null) {
+			resourcesByDocType = new HashMap<String, NuxeoBasedResource>();
+			authorityItemDocTypes = new HashSet<String>();
+
+			for (String serviceName : resourceMap.keySet()) {
+				CollectionSpaceResource<?, ?> resource = (CollectionSpaceResource<?, ?>) resourceMap.get(serviceName);
+
+				if (resource instanceof NuxeoBasedResource) {
+					resourcesByDocType.put(resource.getDocType(tenantId), (NuxeoBasedResource) resource);
+
+					if (resource instanceof AuthorityResource) {
+						String itemDocType = ((AuthorityResource<?, ?>) resource).getItemDocType(tenantId);
+
+						resourcesByDocType.put(itemDocType, (NuxeoBasedResource) resource);
+						authorityItemDocTypes.add(itemDocType);
+					}
+				}
+			}
+		}
+
+		NuxeoBasedResource resource = resourcesByDocType.get(docType);
+
+		if (resource == null) {
+			throw new DocumentException(String.format("There is no service for doctype %s", docType));
+		}
+
+		return resource;
+	}
+
+	/*
+	 * Checks that the current user may make a request with the given method to the service of a doctype,
+	 * the same way the security interceptor checks REST requests. Authority items are checked against their
+	 * authority's service, which proxies them.
+	 */
+	private void checkAccess(String docType, String method) throws Exception {
+		String serviceName = getResource(docType).getServiceName().toLowerCase();
+		String key = serviceName + ":" + method;
+		Boolean allowed = accessAllowed.get(key);
+
+		if (allowed == null) {
+			allowed = AuthZ.get().isAccessAllowed(new URIResourceImpl(tenantId, serviceName, method));
+			accessAllowed.put(key, allowed);
+		}
+
+		if (!allowed) {
+			logger.error(String.format("Batch access to %s %s is not allowed to user %s", method, serviceName, ctx.getUserId()));
+
+			throw new UnauthorizedException(String.format("Not allowed to %s %s", method, serviceName));
+		}
+	}
+
+	private UriInfo createUriInfo() throws Exception {
+		List<PathSegment> pathSegments = new ArrayList<PathSegment>(1);
+
+		// Some code in services assumes pathSegments will have at least one element.
+		pathSegments.add(new PathSegmentImpl("", false));
+
+		return new UriInfoImpl(new URI(""), new URI(""), "", "", pathSegments);
+	}
+}
@@ -0,0 +1,143 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.client.CollectionObjectClient;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.collectionobject.nuxeo.CollectionObjectConstants;
+import org.collectionspace.services.common.NuxeoBasedResource;
+import org.collectionspace.services.common.invocable.InvocationContext.Params.Param;
+import org.collectionspace.services.common.invocable.InvocationResults;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and updates a list of collectionobject records either with the find* and resource update methods
+ * of AbstractBatchJob, one record at a time, or with the BatchRepository, so that the two can be timed
+ * against each other (see the BatchRepositoryHarness in the PerformanceTests module). Each record's
+ * object number is read, and its distinguishing features are set to the "value" parameter.
+ *
+ * The "access" parameter is "helpers" or "repository". Like TestBatchJob, this job isn't installed in any
+ * tenant; a batch record naming its class has to be created to run it.
+ */
+public class CompareRecordAccessBatchJob extends AbstractBatchJob {
+	final Logger logger = LoggerFactory.getLogger(CompareRecordAccessBatchJob.class);
+
+	public static final String ACCESS_PARAM = "access";
+	public static final String VALUE_PARAM = "value";
+	public static final String HELPERS_ACCESS = "helpers";
+	public static final String REPOSITORY_ACCESS = "repository";
+
+	private static final String PART_LABEL = CollectionObjectClient.SERVICE_COMMON_PART_NAME;
+	private static final String PART_NAMESPACE = "http://collectionspace.org/services/collectionobject";
+	private static final String READ_FIELD = "objectNumber";
+	private static final String UPDATE_FIELD = "distinguishingFeatures";
+
+	public CompareRecordAccessBatchJob() {
+		setSupportedInvocationModes(Arrays.asList(INVOCATION_MODE_LIST));
+	}
+
+	@Override
+	public void run() {
+		run(null);
+	}
+
+	@Override
+	public void run(BatchCommon batchCommon) {
+		setCompletionStatus(STATUS_MIN_PROGRESS);
+
+		try {
+			String mode = getInvocationContext().getMode();
+
+			if (!mode.equalsIgnoreCase(INVOCATION_MODE_LIST)) {
+				throw new Exception("Unsupported invocation mode: " + mode);
+			}
+
+			List<String> csids = getInvocationContext().getListCSIDs().getCsid();
+			String access = getParam(ACCESS_PARAM);
+			String value = getParam(VALUE_PARAM);
+
+			if (REPOSITORY_ACCESS.equals(access)) {
+				setResults(updateWithRepository(csids, value));
+			} else if (HELPERS_ACCESS.equals(access)) {
+				setResults(updateWithHelpers(csids, value));
+			} else {
+				throw new Exception("Unknown access: " + access);
+			}
+
+			setCompletionStatus(STATUS_COMPLETE);
+		}
+		catch(Exception e) {
+			setCompletionStatus(STATUS_ERROR);
+			setErrorInfo(new InvocationError(INT_ERROR_STATUS, e.getMessage()));
+		}
+	}
+
+	private String getParam(String key) {
+		for (Param param : getParams()) {
+			if (param.getKey().equals(key)) {
+				return param.getValue();
+			}
+		}
+
+		return null;
+	}
+
+	private InvocationResults updateWithHelpers(List<String> csids, String value) throws Exception {
+		NuxeoBasedResource resource = (NuxeoBasedResource) getResourceMap().get(CollectionObjectClient.SERVICE_NAME);
+		String payload =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<document name=\"" + CollectionObjectClient.SERVICE_NAME + "\">" +
+				"<ns2:" + PART_LABEL + " xmlns:ns2=\"" + PART_NAMESPACE + "\">" +
+					getFieldXml(UPDATE_FIELD, value) +
+				"</ns2:" + PART_LABEL + ">" +
+			"</document>";
+		int numRead = 0;
+
+		for (String csid : csids) {
+			PoxPayloadOut record = findCollectionObjectByCsid(csid);
+
+			if (getFieldValue(record, PART_LABEL, READ_FIELD) != null) {
+				numRead++;
+			}
+		}
+
+		for (String csid : csids) {
+			resource.update(getServiceContext(), getResourceMap(), createUriInfo(), csid, payload);
+		}
+
+		return createResults(numRead, csids.size());
+	}
+
+	private InvocationResults updateWithRepository(List<String> csids, String value) throws Exception {
+		int numRead = 0;
+
+		for (BatchDocument doc : getRepository().get(CollectionObjectConstants.NUXEO_DOCTYPE, csids)) {
+			if (doc.getString(PART_LABEL, READ_FIELD) != null) {
+				numRead++;
+			}
+		}
+
+		Map<String, Map<String, String>> fieldsByPart = new LinkedHashMap<String, Map<String, String>>();
+		fieldsByPart.put(PART_LABEL, Collections.singletonMap(UPDATE_FIELD, value));
+
+		int numUpdated = getRepository().updateAll(CollectionObjectConstants.NUXEO_DOCTYPE, csids, fieldsByPart);
+
+		return createResults(numRead, numUpdated);
+	}
+
+	private InvocationResults createResults(int numRead, int numUpdated) {
+		InvocationResults results = new InvocationResults();
+
+		results.setNumAffected(numUpdated);
+		results.setUserNote("Read " + numRead + " and updated " + numUpdated + " records");
+
+		return results;
+	}
+}
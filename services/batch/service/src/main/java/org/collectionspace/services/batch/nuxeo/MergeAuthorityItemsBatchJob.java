@@ -4,8 +4,6 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -19,17 +17,16 @@ import org.collectionspace.services.batch.BatchCommon;
 import org.collectionspace.services.client.PayloadOutputPart;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.RelationClient;
-import org.collectionspace.services.client.workflow.WorkflowClient;
-import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.api.RefName;
 import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.api.RefNameUtils.AuthorityInfo;
 import org.collectionspace.services.common.api.RefNameUtils.AuthorityTermInfo;
-import org.collectionspace.services.common.authorityref.AuthorityRefDocList;
 import org.collectionspace.services.common.invocable.InvocationContext.Params.Param;
 import org.collectionspace.services.common.invocable.InvocationResults;
 import org.collectionspace.services.common.relation.RelationResource;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
+import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
+import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.RefNameReplacementCounts;
 import org.collectionspace.services.relation.RelationsCommonList;
 
 import org.dom4j.Document;
@@ -223,15 +220,12 @@ public class MergeAuthorityItemsBatchJob extends AbstractBatchJob {
 		userNotes.add("Updated the target record, " + targetDisplayName + ".");
 		numAffected++;
 
-		String serviceName = getAuthorityServiceNameForDocType(docType);
-
 		logger.debug("Updating references");
 
 		for (PoxPayloadOut sourceItemPayload : sourceItemPayloads) {
-			String sourceCsid = getCsid(sourceItemPayload);
 			String sourceRefName = getRefName(sourceItemPayload);
 
-			InvocationResults results = updateReferences(serviceName, inAuthority, sourceCsid, sourceRefName, targetRefName);
+			InvocationResults results = updateReferences(sourceRefName, targetRefName);
 
 			userNotes.add(results.getUserNote());
 			numAffected += results.getNumAffected();
@@ -256,173 +250,42 @@ public class MergeAuthorityItemsBatchJob extends AbstractBatchJob {
 		return results;
 	}
 
-	private InvocationResults updateReferences(String serviceName, String inAuthority, String sourceCsid, String sourceRefName, String targetRefName) throws URISyntaxException, DocumentException, Exception {
-		logger.debug("Updating references: serviceName=" + serviceName + " inAuthority=" + inAuthority + " sourceCsid=" + sourceCsid + " sourceRefName=" + sourceRefName + " targetRefName=" + targetRefName);
+	private InvocationResults updateReferences(String sourceRefName, String targetRefName) throws Exception {
+		logger.debug("Updating references: sourceRefName=" + sourceRefName + " targetRefName=" + targetRefName);
 
 		String sourceDisplayName = RefNameUtils.getDisplayName(sourceRefName);
 
-		int pageNum = 0;
-		int pageSize = 100;
-		List<AuthorityRefDocList.AuthorityRefDocItem> items;
-
-		int loopCount = 0;
-		int numUpdated = 0;
-
-		logger.debug("Looping with pageSize=" + pageSize);
-
-		do {
-			loopCount++;
-
-			// The pageNum/pageSize parameters don't work properly for refobj requests!
-			// It should be safe to repeatedly fetch page 0 for a large-ish page size,
-			// and update that page, until no references are left.
-
-			items = findReferencingFields(serviceName, inAuthority, sourceCsid, null, pageNum, pageSize);
-			Map<String, ReferencingRecord> referencingRecordsByCsid = new LinkedHashMap<String, ReferencingRecord>();
-
-			logger.debug("Loop " + loopCount + ": " + items.size() + " items found");
-
-			for (AuthorityRefDocList.AuthorityRefDocItem item : items) {
-				// If a record contains a reference to the record multiple times, multiple items are returned,
-				// but only the first has a non-null workflow state. A bug?
-
-				String itemCsid = item.getDocId();
-				ReferencingRecord record = referencingRecordsByCsid.get(itemCsid);
-
-				if (record == null) {
-					if (item.getWorkflowState() != null && !item.getWorkflowState().equals(WorkflowClient.WORKFLOWSTATE_DELETED)) {
-						record = new ReferencingRecord(item.getUri());
-						referencingRecordsByCsid.put(itemCsid, record);
-					}
-				}
-
-				if (record != null) {
-					String[] sourceFieldElements = item.getSourceField().split(":");
-					String partName = sourceFieldElements[0];
-					String fieldName = sourceFieldElements[1];
-
-					Map<String, Set<String>> fields = record.getFields();
-					Set<String> fieldsInPart = fields.get(partName);
-
-					if (fieldsInPart == null) {
-						fieldsInPart = new HashSet<String>();
-						fields.put(partName, fieldsInPart);
-					}
-
-					fieldsInPart.add(fieldName);
-				}
-			}
-
-			List<ReferencingRecord> referencingRecords = new ArrayList<ReferencingRecord>(referencingRecordsByCsid.values());
+		// Replace the references in the repository, rather than reading and updating each referencing record through
+		// its resource. The source's refName is matched whatever its display name. The job commits each chunk of
+		// updated records, so that a merge affecting thousands of them doesn't run in one transaction.
 
-			logger.debug("Loop " + loopCount + ": updating " + referencingRecords.size() + " records");
-
-			for (ReferencingRecord record : referencingRecords) {
-				InvocationResults results = updateReferencingRecord(record, sourceRefName, targetRefName);
-				numUpdated += results.getNumAffected();
-			}
-		}
-		while (items.size() > 0);
+		RefNameReplacementCounts counts = RefNameServiceUtils.replaceRefNames(getServiceContext(), getRepoSession(), null,
+				sourceRefName, targetRefName, true, true);
 
-		InvocationResults results = new InvocationResults();
-		results.setNumAffected(numUpdated);
+		int numUpdated = (int) counts.getNumDocsUpdated();
+		List<String> userNotes = new ArrayList<String>();
 
 		if (numUpdated > 0) {
-			results.setUserNote(
+			userNotes.add(
 				"Updated "
 				+ numUpdated
 				+ (numUpdated == 1 ? " record " : " records ")
 				+ "that referenced the source record, "
 				+ sourceDisplayName + "."
 			);
-		} else {
-			results.setUserNote("No records referenced the source record, " + sourceDisplayName + ".");
-		}
-
-		return results;
-	}
-
-	private InvocationResults updateReferencingRecord(ReferencingRecord record, String fromRefName, String toRefName) throws URISyntaxException, DocumentException {
-		String fromRefNameStem = RefNameUtils.stripAuthorityTermDisplayName(fromRefName);
-		// String toRefNameStem = RefNameUtils.stripAuthorityTermDisplayName(toRefName);
-
-		logger.debug("Updating references: record.uri=" + record.getUri() + " fromRefName=" + fromRefName + " toRefName=" + toRefName);
-
-		Map<String, Set<String>> fields = record.getFields();
-
-		PoxPayloadOut recordPayload = findByUri(record.getUri());
-		Document recordDocument = recordPayload.getDOMDocument();
-		Document newDocument = (Document) recordDocument.clone();
-		Element rootElement = newDocument.getRootElement();
-
-		for (Element partElement : (List<Element>) rootElement.elements()) {
-			String partName = partElement.getName();
 
-			if (fields.containsKey(partName)) {
-				for (String fieldName : fields.get(partName)) {
-					List<Node> nodes = partElement.selectNodes("descendant::" + fieldName);
-
-					for (Node node : nodes) {
-						String text = node.getText();
-						String refNameStem = null;
-
-						try {
-							refNameStem = RefNameUtils.stripAuthorityTermDisplayName(text);
-						}
-						catch(IllegalArgumentException e) {}
-
-						if (refNameStem != null && refNameStem.equals(fromRefNameStem)) {
-							AuthorityTermInfo termInfo = RefNameUtils.parseAuthorityTermInfo(text);
-							// String newRefName = toRefNameStem + "'" + termInfo.displayName + "'";
-							String newRefName = toRefName;
-
-							node.setText(newRefName);
-						}
-					}
+			for (Map.Entry<String, Map<String, Long>> docTypeCounts : counts.getCountsByDocType().entrySet()) {
+				for (Map.Entry<String, Long> fieldCount : docTypeCounts.getValue().entrySet()) {
+					userNotes.add("  " + docTypeCounts.getKey() + " " + fieldCount.getKey() + ": " + fieldCount.getValue());
 				}
 			}
-			else {
-				rootElement.remove(partElement);
-			}
-		}
-
-		String payload = newDocument.asXML();
-
-		return updateUri(record.getUri(), payload);
-	}
-
-	private InvocationResults updateUri(String uri, String payload) throws URISyntaxException {
-		String[] uriParts = uri.split("/");
-
-		if (uriParts.length == 3) {
-			String serviceName = uriParts[1];
-			String csid = uriParts[2];
-
-			NuxeoBasedResource resource = (NuxeoBasedResource) getResourceMap().get(serviceName);
-
-			resource.update(getServiceContext(), getResourceMap(), createUriInfo(), csid, payload);
-		}
-		else if (uriParts.length == 5) {
-			String serviceName = uriParts[1];
-			String vocabularyCsid = uriParts[2];
-			String items = uriParts[3];
-			String csid = uriParts[4];
-
-			if (items.equals("items")) {
-				AuthorityResource<?, ?> resource = (AuthorityResource<?, ?>) getResourceMap().get(serviceName);
-
-				resource.updateAuthorityItem(getServiceContext(), getResourceMap(), createUriInfo(), vocabularyCsid, csid, payload);
-			}
-		}
-		else {
-			throw new IllegalArgumentException("Invalid uri " + uri);
+		} else {
+			userNotes.add("No records referenced the source record, " + sourceDisplayName + ".");
 		}
 
-		logger.debug("Updated referencing record " + uri);
-
 		InvocationResults results = new InvocationResults();
-		results.setNumAffected(1);
-		results.setUserNote("Updated referencing record " + uri);
+		results.setNumAffected(numUpdated);
+		results.setUserNote(StringUtils.join(userNotes, "\n"));
 
 		return results;
 	}
@@ -684,26 +547,4 @@ public class MergeAuthorityItemsBatchJob extends AbstractBatchJob {
 
 		return copy;
 	}
-
-	private class ReferencingRecord {
-		private String uri;
-		private Map<String, Set<String>> fields;
-
-		public ReferencingRecord(String uri) {
-			this.uri = uri;
-			this.fields = new HashMap<String, Set<String>>();
-		}
-
-		public String getUri() {
-			return uri;
-		}
-
-		public void setUri(String uri) {
-			this.uri = uri;
-		}
-
-		public Map<String, Set<String>> getFields() {
-			return fields;
-		}
-	}
 }
@@ -0,0 +1,67 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.util.Arrays;
+
+import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.common.invocable.InvocationResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recomputes the botgarden derived fields of all records: the rare flags of all collectionobjects
+ * (see UpdateRareFlagBatchJob), and then the access codes of all taxon records (see UpdateAccessCodeBatchJob).
+ * The botgarden listeners normally keep these up to date by queueing recomputations after each save;
+ * this job catches up with any that were lost, e.g. on a restart before the queue was run.
+ *
+ * The dead flags are not recomputed, since they record movements that were marked dead or revived,
+ * and the access codes are computed from them as they are.
+ */
+public class RebuildBotGardenFieldsBatchJob extends AbstractBatchJob {
+	final Logger logger = LoggerFactory.getLogger(RebuildBotGardenFieldsBatchJob.class);
+
+	public RebuildBotGardenFieldsBatchJob() {
+		setSupportedInvocationModes(Arrays.asList(INVOCATION_MODE_NO_CONTEXT));
+	}
+
+	@Override
+	public void run() {
+		run(null);
+	}
+
+	@Override
+	public void run(BatchCommon batchCommon) {
+		setCompletionStatus(STATUS_MIN_PROGRESS);
+
+		try {
+			if (requestIsForInvocationModeNoContext()) {
+				UpdateRareFlagBatchJob rareFlagUpdater = new UpdateRareFlagBatchJob();
+				rareFlagUpdater.setServiceContext(getServiceContext());
+				rareFlagUpdater.setResourceMap(getResourceMap());
+
+				InvocationResults rareFlagResults = rareFlagUpdater.updateAllRareFlags();
+
+				UpdateAccessCodeBatchJob accessCodeUpdater = new UpdateAccessCodeBatchJob();
+				accessCodeUpdater.setServiceContext(getServiceContext());
+				accessCodeUpdater.setResourceMap(getResourceMap());
+
+				InvocationResults accessCodeResults = accessCodeUpdater.updateAllAccessCodes();
+
+				InvocationResults results = new InvocationResults();
+				results.setNumAffected(rareFlagResults.getNumAffected() + accessCodeResults.getNumAffected());
+				results.setUserNote("Rare flags: " + rareFlagResults.getUserNote() + ". Access codes: " + accessCodeResults.getUserNote() + ".");
+
+				logger.info(results.getUserNote());
+				setResults(results);
+			}
+			else {
+				throw new Exception("Unsupported invocation mode: " + getInvocationContext().getMode());
+			}
+
+			setCompletionStatus(STATUS_COMPLETE);
+		}
+		catch(Exception e) {
+			setCompletionStatus(STATUS_ERROR);
+			setErrorInfo(new InvocationError(INT_ERROR_STATUS, e.getMessage()));
+		}
+	}
+}
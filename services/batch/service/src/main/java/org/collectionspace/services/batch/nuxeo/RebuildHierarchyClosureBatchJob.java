@@ -0,0 +1,81 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.util.Arrays;
+
+import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.invocable.InvocationContext.Params.Param;
+import org.collectionspace.services.common.invocable.InvocationResults;
+import org.collectionspace.services.common.relation.HierarchyClosure;
+import org.collectionspace.services.common.relation.HierarchyClosure.ConsistencyReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the tenant's hierarchy closure (see HierarchyClosure) from its hasBroader relations.
+ * With the "checkOnly" parameter set to true, compares the closure with the relations instead,
+ * and reports any differences without changing anything.
+ */
+public class RebuildHierarchyClosureBatchJob extends AbstractBatchJob {
+	final Logger logger = LoggerFactory.getLogger(RebuildHierarchyClosureBatchJob.class);
+
+	public RebuildHierarchyClosureBatchJob() {
+		setSupportedInvocationModes(Arrays.asList(INVOCATION_MODE_NO_CONTEXT));
+	}
+
+	@Override
+	public void run() {
+		run(null);
+	}
+
+	@Override
+	public void run(BatchCommon batchCommon) {
+		setCompletionStatus(STATUS_MIN_PROGRESS);
+
+		try {
+			if (requestIsForInvocationModeNoContext()) {
+				boolean checkOnly = false;
+
+				for (Param param : this.getParams()) {
+					if (param.getKey().equals("checkOnly")) {
+						checkOnly = Tools.isTrue(param.getValue());
+					}
+				}
+
+				String tenantId = getTenantId();
+				String repositoryName = HierarchyClosure.getRelationsRepositoryName(tenantId);
+				HierarchyClosure closure = HierarchyClosure.getInstance();
+				InvocationResults results = new InvocationResults();
+
+				if (checkOnly) {
+					ConsistencyReport report = closure.check(repositoryName, tenantId);
+					boolean built = closure.isBuilt(repositoryName, tenantId);
+
+					results.setNumAffected(0);
+					results.setUserNote(String.format("The hierarchy closure %s %s. %d rows expected, %d missing, %d extra, %d with the wrong depth; %d terms in cycles.",
+							built ? "is built and" : "is not built, and",
+							report.isConsistent() ? "is consistent" : "is not consistent",
+							report.getExpectedRows(), report.getMissingRows(), report.getExtraRows(), report.getWrongDepthRows(),
+							report.getCyclicTerms()));
+				} else {
+					int rows = closure.rebuild(repositoryName, tenantId);
+
+					results.setNumAffected(rows);
+					results.setUserNote(String.format("Rebuilt the hierarchy closure: %d rows.", rows));
+				}
+
+				logger.info(results.getUserNote());
+				setResults(results);
+			}
+			else {
+				throw new Exception("Unsupported invocation mode: " + getInvocationContext().getMode());
+			}
+
+			setCompletionStatus(STATUS_COMPLETE);
+		}
+		catch(Exception e) {
+			setCompletionStatus(STATUS_ERROR);
+			setErrorInfo(new InvocationError(INT_ERROR_STATUS, e.getMessage()));
+		}
+	}
+}
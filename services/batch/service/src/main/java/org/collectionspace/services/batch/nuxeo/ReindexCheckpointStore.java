@@ -0,0 +1,236 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists how far ReindexFullTextBatchJob has gotten through each doctype of a tenant, so that a reindex
+ * that was cancelled, or interrupted by a restart, resumes where it stopped instead of starting over.
+ *
+ * A checkpoint is the sort key (createdAt, id) of the last document reindexed, along with the number of
+ * documents reindexed so far. Its createdAt is null while the reindex is still among the documents that have
+ * none. The checkpoints live in a table in the "cspace" schema of the repository's database, which is created
+ * the first time it's needed. Timestamps are stored in UTC. If the table can't be created, checkpoints aren't
+ * saved, and every reindex starts from the beginning.
+ */
+public class ReindexCheckpointStore {
+	private static final Logger logger = LoggerFactory.getLogger(ReindexCheckpointStore.class);
+
+	public static final String CHECKPOINT_TABLE = "cspace.reindex_fulltext_checkpoint";
+
+	// Whether the checkpoint table exists in each repository
+	private static final ConcurrentMap<String, Boolean> repositories = new ConcurrentHashMap<String, Boolean>();
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private final String repositoryName;
+	private final String tenantId;
+
+	public static class Checkpoint {
+		private final Calendar lastCreatedAt;
+		private final String lastId;
+		private final long numDone;
+		private final boolean complete;
+
+		public Checkpoint(Calendar lastCreatedAt, String lastId, long numDone, boolean complete) {
+			this.lastCreatedAt = lastCreatedAt;
+			this.lastId = lastId;
+			this.numDone = numDone;
+			this.complete = complete;
+		}
+
+		public Calendar getLastCreatedAt() {
+			return lastCreatedAt;
+		}
+
+		public String getLastId() {
+			return lastId;
+		}
+
+		public long getNumDone() {
+			return numDone;
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	public ReindexCheckpointStore(String repositoryName, String tenantId) {
+		this.repositoryName = repositoryName;
+		this.tenantId = tenantId;
+	}
+
+	/**
+	 * @return the doctype's checkpoint, or null if there isn't one
+	 */
+	public Checkpoint get(String docType) {
+		Checkpoint result = null;
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			if (ensureTable(conn)) {
+				PreparedStatement stmt = conn.prepareStatement("SELECT last_created_at, last_id, num_done, complete FROM "
+						+ CHECKPOINT_TABLE + " WHERE tenant_id = ? AND doctype = ?");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setString(2, docType);
+					ResultSet rs = stmt.executeQuery();
+					if (rs.next()) {
+						Calendar lastCreatedAt = null;
+						Timestamp timestamp = rs.getTimestamp(1, Calendar.getInstance(UTC));
+						if (timestamp != null) {
+							lastCreatedAt = Calendar.getInstance(UTC);
+							lastCreatedAt.setTimeInMillis(timestamp.getTime());
+						}
+						result = new Checkpoint(lastCreatedAt, rs.getString(2), rs.getLong(3), rs.getBoolean(4));
+					}
+				} finally {
+					stmt.close();
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Could not read the reindex checkpoint of doctype '%s' in tenant '%s': %s",
+					docType, tenantId, e.getMessage()));
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	public void save(String docType, Checkpoint checkpoint) {
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			if (ensureTable(conn)) {
+				Timestamp lastCreatedAt = checkpoint.getLastCreatedAt() != null
+						? new Timestamp(checkpoint.getLastCreatedAt().getTimeInMillis())
+						: null;
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				PreparedStatement stmt = conn.prepareStatement("UPDATE " + CHECKPOINT_TABLE
+						+ " SET last_created_at = ?, last_id = ?, num_done = ?, complete = ?, updated_at = ?"
+						+ " WHERE tenant_id = ? AND doctype = ?");
+				int count;
+				try {
+					stmt.setTimestamp(1, lastCreatedAt, Calendar.getInstance(UTC));
+					stmt.setString(2, checkpoint.getLastId());
+					stmt.setLong(3, checkpoint.getNumDone());
+					stmt.setBoolean(4, checkpoint.isComplete());
+					stmt.setTimestamp(5, now);
+					stmt.setString(6, tenantId);
+					stmt.setString(7, docType);
+					count = stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+				if (count == 0) {
+					// Only one reindex runs at a time in a tenant, so nothing else can insert this row
+					stmt = conn.prepareStatement("INSERT INTO " + CHECKPOINT_TABLE
+							+ " (tenant_id, doctype, last_created_at, last_id, num_done, complete, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)");
+					try {
+						stmt.setString(1, tenantId);
+						stmt.setString(2, docType);
+						stmt.setTimestamp(3, lastCreatedAt, Calendar.getInstance(UTC));
+						stmt.setString(4, checkpoint.getLastId());
+						stmt.setLong(5, checkpoint.getNumDone());
+						stmt.setBoolean(6, checkpoint.isComplete());
+						stmt.setTimestamp(7, now);
+						stmt.executeUpdate();
+					} finally {
+						stmt.close();
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Could not save the reindex checkpoint of doctype '%s' in tenant '%s': %s",
+					docType, tenantId, e.getMessage()));
+		} finally {
+			close(conn);
+		}
+	}
+
+	public void delete(String docType) {
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			if (ensureTable(conn)) {
+				PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + CHECKPOINT_TABLE + " WHERE tenant_id = ? AND doctype = ?");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setString(2, docType);
+					stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Could not delete the reindex checkpoint of doctype '%s' in tenant '%s': %s",
+					docType, tenantId, e.getMessage()));
+		} finally {
+			close(conn);
+		}
+	}
+
+	private Connection getConnection() throws Exception {
+		Connection conn = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName,
+				ServiceMain.getInstance().getCspaceInstanceId());
+		conn.setAutoCommit(true);
+		return conn;
+	}
+
+	private static void close(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				logger.debug("Failed to close a reindex checkpoint connection.", e);
+			}
+		}
+	}
+
+	/*
+	 * Creates the checkpoint table if it doesn't exist yet.
+	 *
+	 * @return false if the table couldn't be created
+	 */
+	private boolean ensureTable(Connection conn) {
+		Boolean exists = repositories.get(repositoryName);
+		if (exists == null) {
+			try {
+				if (JDBCTools.cspaceMetaTableExists(conn) == false) {
+					JDBCTools.createCspaceMetaTable(conn);
+				}
+				Statement stmt = conn.createStatement();
+				try {
+					stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE + " ("
+							+ "tenant_id varchar(128) NOT NULL, doctype varchar(256) NOT NULL, "
+							+ "last_created_at timestamp, last_id varchar(36), num_done bigint NOT NULL, "
+							+ "complete boolean NOT NULL, updated_at timestamp NOT NULL, "
+							+ "PRIMARY KEY (tenant_id, doctype))");
+				} finally {
+					stmt.close();
+				}
+				exists = true;
+			} catch (SQLException e) {
+				logger.warn(String.format("Could not create the reindex checkpoint table in repository '%s'; reindexing won't be resumable: %s",
+						repositoryName, e.getMessage()));
+				exists = false;
+			}
+			repositories.put(repositoryName, exists);
+		}
+		return exists;
+	}
+}
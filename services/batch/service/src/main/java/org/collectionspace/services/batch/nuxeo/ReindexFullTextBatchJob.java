@@ -8,35 +8,48 @@ package org.collectionspace.services.batch.nuxeo;
 import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.net.URISyntaxException;
-
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.collectionspace.services.batch.BatchCommon;
+import org.collectionspace.services.batch.CancellableBatchInvocable;
+import org.collectionspace.services.batch.nuxeo.ReindexCheckpointStore.Checkpoint;
 import org.collectionspace.services.common.CollectionSpaceResource;
 import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.StoredValuesUriTemplate;
-import org.collectionspace.services.common.UriTemplateFactory;
 import org.collectionspace.services.common.UriTemplateRegistryKey;
 import org.collectionspace.services.common.invocable.InvocationContext.ListCSIDs;
 import org.collectionspace.services.common.invocable.InvocationContext.Params.Param;
 import org.collectionspace.services.common.invocable.InvocationResults;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 
-import org.dom4j.DocumentException;
 import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.sql.NXQL;
@@ -50,12 +63,27 @@ import org.nuxeo.ecm.core.storage.sql.coremodel.SQLSession;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
+import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ReindexFullTextBatchJob extends AbstractBatchJob {
+/**
+ * Reindexes the full text of records.
+ *
+ * In the no-context invocation mode, it reindexes every record of the requested doctypes (or of all doctypes).
+ * Each doctype is read in batches in (createdAt, id) order, each batch starting after the last record of the
+ * previous one, and how far it has gotten is saved after each batch (see ReindexCheckpointStore). Records with no
+ * createdAt (e.g. imported without one) can't be compared by it, so they're read first, in id order. A reindex
+ * that is cancelled, or interrupted by a restart, resumes from there when it's invoked again; the "restart"
+ * param starts over instead. Up to "threads" batches are reindexed at once, and the job backs off when they
+ * take longer than they used to (see AdaptiveThrottle).
+ *
+ * While it runs, GET /batch/{csid}/invoke returns its progress and estimated time remaining, and
+ * DELETE /batch/{csid}/invoke cancels it. The stop files of earlier versions are still honored.
+ */
+public class ReindexFullTextBatchJob extends AbstractBatchJob implements CancellableBatchInvocable {
 	final Logger log = LoggerFactory.getLogger(ReindexFullTextBatchJob.class);
 
 	public static final String DC_TITLE = "dc:title";
@@ -63,20 +91,42 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 	public static final int DEFAULT_START_BATCH = 0;
 	public static final int DEFAULT_END_BATCH = 0;
 	public static final int DEFAULT_BATCH_PAUSE = 0;
+	public static final int DEFAULT_THREADS = 2;
 	public static final String BATCH_STOP_FILE = "stopBatch";
 	public static final String DOCTYPE_STOP_FILE = "stopDocType";
 
+	public static final String STATE_RUNNING = "running";
+	public static final String STATE_CANCELLING = "cancelling";
+	public static final String STATE_CANCELLED = "cancelled";
+	public static final String STATE_COMPLETE = "complete";
+
+	private static final String CREATED_AT = "collectionspace_core:createdAt";
+	private static final String TENANT_ID = "collectionspace_core:tenantId";
+	private static final String SORT_ORDER = CREATED_AT + ", " + NXQL.ECM_UUID;
+
+	// How long to wait for the reindexing threads to end, once all their batches are done
+	private static final int EXECUTOR_TERMINATION_TIMEOUT_SECONDS = 60;
+
 	private int batchSize = DEFAULT_BATCH_SIZE;
 	private int batchPause = DEFAULT_BATCH_PAUSE;
 	private int startBatch = DEFAULT_START_BATCH;
 	private int endBatch = DEFAULT_END_BATCH;
-	private int numAffected = 0;
+	private int threads = DEFAULT_THREADS;
+	private boolean restart = false;
+
+	// Progress, which is read by other requests while the job runs
+	private final AtomicLong numAffected = new AtomicLong();
+	private volatile long numResumed = 0; // reindexed by earlier, interrupted invocations
+	private volatile long numTotal = 0;
+	private volatile long startTime = 0;
+	private volatile String currentDocType;
+	private volatile String state = STATE_RUNNING;
+	private volatile boolean cancelled = false;
 
 	private String stopFileDirectory;
 
 	private CoreSession coreSession;
-	private Session session = null;
-    protected FulltextConfiguration fulltextConfiguration;
+	private String repositoryName;
 
 	private Map<String, NuxeoBasedResource> resourcesByDocType;
 
@@ -87,68 +137,6 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 
 		log.debug("stop file directory is " + stopFileDirectory);
 	}
-	
-	//
-	// Since the ReindexFullTextBatchJob class deals with transactions differently than other batch jobs, we need to
-	// override this method to ensure there is an active transaction.
-	//
-	@Override
-	protected List<String> getVocabularyCsids(AuthorityResource<?, ?> resource) throws URISyntaxException {
-		boolean tx = false;
-		if (TransactionHelper.isTransactionActive() == false) {
-			tx = TransactionHelper.startTransaction();
-		}
-
-		try {
-			return super.getVocabularyCsids(resource);
-		} finally {
-			if (tx) {
-				TransactionHelper.commitOrRollbackTransaction();
-			}
-		}
-	}
-
-	//
-	// Since the ReindexFullTextBatchJob class deals with transactions differently than other batch jobs, we need to
-	// override this method to ensure there is an active transaction.
-	//
-	@Override
-	protected List<String> findAll(NuxeoBasedResource resource, int pageSize, int pageNum, String sortBy)
-			throws URISyntaxException, DocumentException {
-		boolean tx = false;
-		if (TransactionHelper.isTransactionActive() == false) {
-			tx = TransactionHelper.startTransaction();
-		}
-		
-		try {
-			return super.findAll(resource, pageSize, pageNum, sortBy);
-		} finally {
-			if (tx) {
-				TransactionHelper.commitOrRollbackTransaction();
-			}
-		}
-	}
-
-	//
-	// Since the ReindexFullTextBatchJob class deals with transactions differently than other batch jobs, we need to
-	// override this method to ensure there is an active transaction.
-	//
-	@Override
-	protected List<String> findAllAuthorityItems(AuthorityResource<?, ?> resource, String vocabularyCsid, int pageSize, int pageNum, String sortBy)
-			throws URISyntaxException, DocumentException, Exception {
-		boolean tx = false;
-		if (TransactionHelper.isTransactionActive() == false) {
-			tx = TransactionHelper.startTransaction();
-		}
-		
-		try {
-			return super.findAllAuthorityItems(resource, vocabularyCsid, pageSize, pageNum, sortBy);
-		} finally {
-			if (tx) {
-				TransactionHelper.commitOrRollbackTransaction();
-			}
-		}
-	}
 
 	@Override
 	public void run() {
@@ -159,7 +147,8 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 	public void run(BatchCommon batchCommon) {
 		setCompletionStatus(STATUS_MIN_PROGRESS);
 
-		numAffected = 0;
+		numAffected.set(0);
+		startTime = System.currentTimeMillis();
 
 		boolean isTransactionActive = TransactionHelper.isTransactionActive();
 
@@ -171,6 +160,7 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 
 		try {
 			coreSession = getRepoSession().getCoreSession();
+			repositoryName = coreSession.getRepositoryName();
 
 			if (requestIsForInvocationModeSingle()) {
 				String csid = getInvocationContext().getSingleCSID();
@@ -221,7 +211,7 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 					docTypes.add(docType);
 				}
 
-				// Read batch size, start and end batches, pause, and additional doctypes from params.
+				// Read batch size, start and end batches, pause, threads, restart, and additional doctypes from params.
 
 				for (Param param : this.getParams()) {
 					if (param.getKey().equals("batchSize")) {
@@ -236,6 +226,12 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 					else if (param.getKey().equals("batchPause")) {
 						batchPause = Integer.parseInt(param.getValue());
 					}
+					else if (param.getKey().equals("threads")) {
+						threads = Math.max(1, Integer.parseInt(param.getValue()));
+					}
+					else if (param.getKey().equals("restart")) {
+						restart = Boolean.parseBoolean(param.getValue());
+					}
 					else if (param.getKey().equals("docType")) {
 						docType = param.getValue();
 
@@ -261,19 +257,21 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 
 			log.debug("reindexing complete");
 
-			InvocationResults results = new InvocationResults();
-			results.setNumAffected(numAffected);
-			results.setUserNote("reindexed " + numAffected + " records");
+			state = STATE_COMPLETE;
+
+			InvocationResults results = getProgress();
+			results.setUserNote("reindexed " + numAffected.get() + " records");
 
 			setResults(results);
 			setCompletionStatus(STATUS_COMPLETE);
 		}
 		catch(StoppedException e) {
-			log.debug("reindexing terminated by stop file");
+			log.debug("reindexing terminated by cancellation or stop file");
 
-			InvocationResults results = new InvocationResults();
-			results.setNumAffected(numAffected);
-			results.setUserNote("reindexing terminated by stop file");
+			state = STATE_CANCELLED;
+
+			InvocationResults results = getProgress();
+			results.setUserNote("reindexing cancelled after " + numAffected.get() + " records; invoke the job again to resume it");
 
 			setResults(results);
 			setCompletionStatus(STATUS_COMPLETE);
@@ -290,6 +288,49 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 		}
 	}
 
+	@Override
+	public void cancel() {
+		if (cancelled == false) {
+			log.info("reindexing cancelled");
+
+			cancelled = true;
+			state = STATE_CANCELLING;
+		}
+	}
+
+	@Override
+	public InvocationResults getProgress() {
+		return getProgress(state, numAffected.get(), numResumed, numTotal, System.currentTimeMillis() - startTime, currentDocType);
+	}
+
+	/*
+	 * The progress of a reindex that has reindexed "affected" records in "elapsed" milliseconds, after "resumed"
+	 * records reindexed by earlier invocations, out of "total" records.
+	 */
+	static InvocationResults getProgress(String state, long affected, long resumed, long total, long elapsed, String currentDocType) {
+		InvocationResults progress = new InvocationResults();
+
+		progress.setState(state);
+		progress.setNumAffected(affected);
+
+		if (total > 0) {
+			long done = Math.min(resumed + affected, total);
+
+			progress.setNumTotal(total);
+			progress.setPercentComplete((int) (done * 100 / total));
+
+			if (affected > 0 && STATE_RUNNING.equals(state)) {
+				// Assume the rest goes as fast as this invocation has gone so far
+				progress.setEstimatedSecondsRemaining((total - done) * elapsed / affected / 1000);
+			}
+
+			progress.setUserNote(String.format("reindexed %d of %d records%s", done, total,
+					currentDocType != null && STATE_RUNNING.equals(state) ? "; reindexing " + currentDocType : ""));
+		}
+
+		return progress;
+	}
+
 	private void initResourceMap() {
 		resourcesByDocType = new HashMap<String, NuxeoBasedResource>();
 
@@ -326,6 +367,46 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 		}
 	}
 
+	private List<String> getAllDocTypes() {
+		List<String> docTypes = new ArrayList<String>(resourcesByDocType.keySet());
+		Collections.sort(docTypes);
+
+		log.debug("Call to getAllDocTypes() method found: " + StringUtils.join(docTypes, ", "));
+
+		return docTypes;
+	}
+
+	/*
+	 * The state of a doctype's reindexing: where it starts, and where it's gotten to.
+	 */
+	private static class DocTypeRun {
+		final String docType;
+		final String nuxeoDocType;
+		Checkpoint checkpoint;
+
+		DocTypeRun(String docType, String nuxeoDocType, Checkpoint checkpoint) {
+			this.docType = docType;
+			this.nuxeoDocType = nuxeoDocType;
+			this.checkpoint = checkpoint;
+		}
+	}
+
+	/*
+	 * A batch that has been handed to a reindexing thread, and the checkpoint to save once it (and every batch
+	 * before it) is done.
+	 */
+	static class PendingBatch {
+		final String docType;
+		final Future<?> future;
+		final Checkpoint checkpoint;
+
+		PendingBatch(String docType, Future<?> future, Checkpoint checkpoint) {
+			this.docType = docType;
+			this.future = future;
+			this.checkpoint = checkpoint;
+		}
+	}
+
 	private void reindexDocuments(Set<String> docTypes) throws Exception {
 		if (docTypes == null) {
 			docTypes = new LinkedHashSet<String>();
@@ -337,123 +418,414 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 			docTypes.addAll(getAllDocTypes());
 		}
 
+		ReindexCheckpointStore checkpointStore = new ReindexCheckpointStore(repositoryName, getTenantId());
+		List<DocTypeRun> runs = new ArrayList<DocTypeRun>();
+
+		// Find where each doctype starts, and how many records there are to reindex, so progress can be reported.
+
 		for (String docType : docTypes) {
-			reindexDocuments(docType);
+			if (resourcesByDocType.get(docType) == null) {
+				log.warn("No service resource found for docType " + docType);
+				continue;
+			}
+
+			Checkpoint checkpoint = null;
+
+			if (restart) {
+				checkpointStore.delete(docType);
+			}
+			else if (startBatch > 0) {
+				// An explicit start batch overrides the checkpoint. The supplied batch numbers start with 1.
+				checkpoint = findCheckpointAt(NuxeoUtils.getTenantQualifiedDocType(getTenantId(), docType), (long) (startBatch - 1) * batchSize);
+			}
+			else {
+				checkpoint = checkpointStore.get(docType);
+			}
+
+			DocTypeRun run = new DocTypeRun(docType, NuxeoUtils.getTenantQualifiedDocType(getTenantId(), docType), checkpoint);
+
+			if (checkpoint != null) {
+				numResumed += checkpoint.getNumDone();
+				numTotal += checkpoint.getNumDone();
+
+				if (checkpoint.isComplete()) {
+					log.debug("docType " + docType + " was already reindexed; skipping it");
+					continue;
+				}
+
+				log.debug("resuming docType " + docType + " after " + checkpoint.getNumDone() + " records");
+			}
+
+			numTotal += countDocuments(run.nuxeoDocType, getRemainingClause(checkpoint));
+			runs.add(run);
+		}
+
+		AdaptiveThrottle throttle = new AdaptiveThrottle(threads, batchPause);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Deque<PendingBatch> pendingBatches = new ArrayDeque<PendingBatch>();
+		boolean finished = false;
+		boolean allComplete = true;
+
+		try {
+			for (DocTypeRun run : runs) {
+				// Check for a stop file before reindexing the docType.
+
+				if (cancelled || batchStopFileExists() || docTypeStopFileExists()) {
+					throw new StoppedException();
+				}
+
+				log.debug("reindexing docType " + run.docType);
+
+				currentDocType = run.docType;
+
+				int batchCount = 0;
+				int maxBatchCount = (endBatch > 0) ? endBatch - Math.max(startBatch, 1) + 1 : Integer.MAX_VALUE;
+				List<Map<String, Serializable>> rows;
+
+				do {
+					// Check for cancellation or a stop file before reindexing the batch.
+
+					if (cancelled || batchStopFileExists()) {
+						throw new StoppedException();
+					}
+
+					rows = findNextBatch(run.nuxeoDocType, run.checkpoint);
+
+					if (rows.size() > 0) {
+						batchCount++;
+
+						Map<String, Serializable> last = rows.get(rows.size() - 1);
+						long numDone = (run.checkpoint != null ? run.checkpoint.getNumDone() : 0) + rows.size();
+
+						run.checkpoint = new Checkpoint((Calendar) last.get(CREATED_AT), (String) last.get(NXQL.ECM_UUID), numDone, false);
+
+						log.debug("reindexing " + run.docType + " batch " + batchCount + ": " + rows.size() + " records starting with " + rows.get(0).get(NXQL.ECM_NAME));
+
+						// Wait for a thread, leaving only as many batches running as the throttle allows.
+
+						while (pendingBatches.size() >= throttle.getConcurrency()) {
+							completeBatch(pendingBatches.getFirst(), checkpointStore);
+							pendingBatches.removeFirst();
+						}
+
+						int pause = throttle.getPause();
+
+						if (pause > 0) {
+							log.trace("pausing " + pause + " ms");
+
+							Thread.sleep(pause);
+						}
+
+						Future<?> future = executor.submit(new ReindexBatchTask(toInfos(rows), throttle));
+						pendingBatches.addLast(new PendingBatch(run.docType, future, run.checkpoint));
+					}
+				}
+				while (rows.size() == batchSize && batchCount < maxBatchCount);
+
+				if (rows.size() < batchSize) {
+					// Mark the doctype as done once its last batch is, so a resumed reindex skips it.
+
+					Checkpoint complete = run.checkpoint != null
+						? new Checkpoint(run.checkpoint.getLastCreatedAt(), run.checkpoint.getLastId(), run.checkpoint.getNumDone(), true)
+						: new Checkpoint(null, null, 0, true);
+
+					pendingBatches.addLast(new PendingBatch(run.docType, null, complete));
+				}
+				else {
+					allComplete = false;
+				}
+			}
+
+			while (pendingBatches.isEmpty() == false) {
+				completeBatch(pendingBatches.getFirst(), checkpointStore);
+				pendingBatches.removeFirst();
+			}
+
+			finished = true;
+		}
+		finally {
+			if (finished == false) {
+				finishPendingBatches(pendingBatches, checkpointStore);
+			}
+
+			executor.shutdown();
+
+			try {
+				if (executor.awaitTermination(EXECUTOR_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS) == false) {
+					log.warn("reindexing threads were still running " + EXECUTOR_TERMINATION_TIMEOUT_SECONDS + " seconds after the job ended");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			currentDocType = null;
+		}
+
+		// Every doctype was reindexed to the end, so the next reindex starts over.
+
+		if (allComplete) {
+			for (DocTypeRun run : runs) {
+				checkpointStore.delete(run.docType);
+			}
 		}
 	}
 
-	private List<String> getAllDocTypes() {
-		List<String> docTypes = new ArrayList<String>(resourcesByDocType.keySet());
-		Collections.sort(docTypes);
+	/*
+	 * Waits for a batch to be reindexed, and saves the checkpoint it has reached.  A failed batch is left for the
+	 * caller to remove, so finishPendingBatches sees the failure again.
+	 */
+	private void completeBatch(PendingBatch batch, ReindexCheckpointStore checkpointStore) throws Exception {
+		if (batch.future != null) {
+			try {
+				batch.future.get();
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
 
-		log.debug("Call to getAllDocTypes() method found: " + StringUtils.join(docTypes, ", "));
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
 
-		return docTypes;
+				throw e;
+			}
+		}
+
+		checkpointStore.save(batch.docType, batch.checkpoint);
 	}
 
-	private void reindexDocuments(String docType) throws Exception {
-		// Check for a stop file before reindexing the docType.
+	/*
+	 * Waits for the batches still running when the job stops or fails, so none of them is still reindexing when the
+	 * job is resumed.  Their checkpoints are saved in order up to the first batch that failed; none is saved after
+	 * that, so the resumed job starts over from the failed batch.
+	 */
+	void finishPendingBatches(Deque<PendingBatch> pendingBatches, ReindexCheckpointStore checkpointStore) {
+		boolean saveCheckpoints = true;
+
+		while (pendingBatches.isEmpty() == false) {
+			PendingBatch batch = pendingBatches.removeFirst();
 
-		if (batchStopFileExists() || docTypeStopFileExists()) {
-			throw new StoppedException();
+			if (saveCheckpoints) {
+				try {
+					completeBatch(batch, checkpointStore);
+				}
+				catch (Exception e) {
+					log.warn("A " + batch.docType + " batch failed; not saving any later checkpoint: " + e.getMessage());
+
+					saveCheckpoints = false;
+				}
+			}
+			else if (batch.future != null) {
+				try {
+					batch.future.get();
+				}
+				catch (Exception e) {
+					log.debug("A later " + batch.docType + " batch failed too: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/*
+	 * Reindexes a batch on one of the job's threads, with a session of its own.
+	 */
+	private class ReindexBatchTask implements Callable<Void> {
+		private final List<Info> infos;
+		private final AdaptiveThrottle throttle;
+
+		ReindexBatchTask(List<Info> infos, AdaptiveThrottle throttle) {
+			this.infos = infos;
+			this.throttle = throttle;
 		}
 
-		log.debug("reindexing docType " + docType);
+		@Override
+		public Void call() throws Exception {
+			long start = System.currentTimeMillis();
+
+			try (CoreSession session = CoreInstance.openCoreSessionSystem(repositoryName)) {
+				reindexInfos(session, infos);
+			}
+
+			// Rather than waiting for every async event in the server to complete after each batch, only wait
+			// until the full text extraction queue is short enough, so the batches don't outrun the extractors.
 
-		NuxeoBasedResource resource = resourcesByDocType.get(docType);
+			waitForFulltextQueue(batchSize * threads);
 
-		if (resource == null) {
-			log.warn("No service resource found for docType " + docType);
+			numAffected.addAndGet(infos.size());
+			throttle.record(System.currentTimeMillis() - start);
+
+			return null;
 		}
+	}
 
-		boolean isAuthorityItem = false;
+	/*
+	 * The next batch of the doctype's records after the checkpoint: first those with no createdAt, in id order,
+	 * then the others, in (createdAt, id) order.
+	 */
+	private List<Map<String, Serializable>> findNextBatch(String nuxeoDocType, Checkpoint checkpoint) {
+		List<Map<String, Serializable>> rows = new ArrayList<Map<String, Serializable>>();
 
-		if (resource instanceof AuthorityResource) {
-			UriTemplateRegistryKey key = new UriTemplateRegistryKey(getTenantId(), docType);
-			StoredValuesUriTemplate uriTemplate = resource.getUriRegistryEntries().get(key);
+		if (isUndated(checkpoint)) {
+			String query = getQuery(nuxeoDocType, getUndatedClause(checkpoint)) + " ORDER BY " + NXQL.ECM_UUID;
 
-			log.debug("uriTemplateType=" + uriTemplate.getUriTemplateType());
+			rows.addAll(queryProjection(query, batchSize, 0, 0));
 
-			if (uriTemplate.getUriTemplateType() == UriTemplateFactory.ITEM) {
-				isAuthorityItem = true;
+			if (rows.size() == batchSize) {
+				return rows;
 			}
+
+			// Fill the rest of the batch with the first dated records.
+
+			checkpoint = null;
 		}
 
-		int pageSize = batchSize;
+		String query = getQuery(nuxeoDocType, getDatedClause(checkpoint)) + " ORDER BY " + SORT_ORDER;
 
-		// The supplied start and end batch numbers start with 1, but the page number starts with 0.
-		int startPage = (startBatch > 0) ? startBatch - 1 : 0;
-		int endPage = (endBatch > 0) ? endBatch - 1 : Integer.MAX_VALUE;
+		rows.addAll(queryProjection(query, batchSize - rows.size(), 0, 0));
 
-		if (isAuthorityItem) {
-			List<String> vocabularyCsids = getVocabularyCsids((AuthorityResource<?, ?>) resource);
+		return rows;
+	}
 
-			for (String vocabularyCsid : vocabularyCsids) {
-				int pageNum = startPage;
-				List<String> csids = null;
+	private long countDocuments(String nuxeoDocType, String clause) {
+		PartialList<Map<String, Serializable>> result = queryProjection(getQuery(nuxeoDocType, clause), 1, 0, -1);
 
-				log.debug("Reindexing vocabulary of " + docType + " with csid " + vocabularyCsid);
+		return Math.max(result.totalSize(), 0);
+	}
 
-				do {
-					// Check for a stop file before reindexing the batch.
+	/*
+	 * The checkpoint just before the record at the given offset, for an explicit start batch.
+	 */
+	private Checkpoint findCheckpointAt(String nuxeoDocType, long offset) {
+		if (offset <= 0) {
+			return null;
+		}
 
-					if (batchStopFileExists()) {
-						throw new StoppedException();
-					}
+		long numUndated = countDocuments(nuxeoDocType, getUndatedClause(null));
+		List<Map<String, Serializable>> rows;
 
-					csids = findAllAuthorityItems((AuthorityResource<?, ?>) resource, vocabularyCsid, pageSize, pageNum, "collectionspace_core:createdAt, ecm:name");
+		if (offset <= numUndated) {
+			String query = getQuery(nuxeoDocType, getUndatedClause(null)) + " ORDER BY " + NXQL.ECM_UUID;
+			rows = queryProjection(query, 1, offset - 1, 0);
+		}
+		else {
+			String query = getQuery(nuxeoDocType, getDatedClause(null)) + " ORDER BY " + SORT_ORDER;
+			rows = queryProjection(query, 1, offset - 1 - numUndated, 0);
+		}
 
-					if (csids.size() > 0) {
-						log.debug("reindexing vocabulary of " + docType +" with csid " + vocabularyCsid + ", batch " + (pageNum + 1) + ": " + csids.size() + " records starting with " + csids.get(0));
+		if (rows.isEmpty()) {
+			return new Checkpoint(null, null, offset, true);
+		}
 
-						// Pause for the configured amount of time.
+		return new Checkpoint((Calendar) rows.get(0).get(CREATED_AT), (String) rows.get(0).get(NXQL.ECM_UUID), offset, false);
+	}
 
-						if (batchPause > 0) {
-							log.trace("pausing " + batchPause + " ms");
+	private String getQuery(String nuxeoDocType, String clause) {
+		StringBuilder query = new StringBuilder();
+
+		query.append("SELECT ")
+			.append(NXQL.ECM_UUID).append(", ")
+			.append(NXQL.ECM_NAME).append(", ")
+			.append(NXQL.ECM_PRIMARYTYPE).append(", ")
+			.append(CREATED_AT)
+			.append(" FROM ").append(nuxeoDocType)
+			.append(" WHERE ").append(TENANT_ID).append(" = ").append(NXQL.escapeString(getTenantId()))
+			.append(" AND ").append(NXQL.ECM_ISVERSION).append(" = 0")
+			.append(" AND ").append(NXQL.ECM_ISPROXY).append(" = 0");
+
+		if (clause != null) {
+			query.append(" AND ").append(clause);
+		}
 
-							Thread.sleep(batchPause);
-						}
+		return query.toString();
+	}
 
-						reindexDocuments(docType, csids);
-					}
+	/*
+	 * True if the checkpoint is still among the records with no createdAt, which are read first.
+	 */
+	static boolean isUndated(Checkpoint checkpoint) {
+		return checkpoint == null || checkpoint.getLastCreatedAt() == null;
+	}
 
-					pageNum++;
-				}
-				while(csids.size() == pageSize && pageNum <= endPage);
-			}
-		} else {
-			int pageNum = startPage;
-			List<String> csids = null;
+	/*
+	 * The records with no createdAt after the checkpoint, in id order.
+	 */
+	static String getUndatedClause(Checkpoint checkpoint) {
+		String clause = CREATED_AT + " IS NULL";
 
-			do {
-				// Check for a stop file before reindexing the batch.
+		if (checkpoint != null && checkpoint.getLastId() != null) {
+			clause += " AND " + NXQL.ECM_UUID + " > " + NXQL.escapeString(checkpoint.getLastId());
+		}
 
-				if (batchStopFileExists()) {
-					throw new StoppedException();
-				}
+		return clause;
+	}
 
-				csids = findAll(resource, pageSize, pageNum, "collectionspace_core:createdAt, ecm:name");
+	/*
+	 * The records with a createdAt after the checkpoint, in (createdAt, id) order, or all of them if the checkpoint
+	 * is still among the undated records.
+	 */
+	static String getDatedClause(Checkpoint checkpoint) {
+		if (isUndated(checkpoint)) {
+			return CREATED_AT + " IS NOT NULL";
+		}
 
-				if (csids.size() > 0) {
-					log.debug("reindexing " + docType +" batch " + (pageNum + 1) + ": " + csids.size() + " records starting with " + csids.get(0));
+		String createdAt = toTimestampLiteral(checkpoint.getLastCreatedAt());
+		String id = NXQL.escapeString(checkpoint.getLastId());
 
-					// Pause for the configured amount of time.
+		return "(" + CREATED_AT + " > " + createdAt
+			+ " OR (" + CREATED_AT + " = " + createdAt + " AND " + NXQL.ECM_UUID + " > " + id + "))";
+	}
 
-					if (batchPause > 0) {
-						log.trace("pausing " + batchPause + " ms");
+	/*
+	 * All of the records after the checkpoint, in no particular order, for counting them.
+	 */
+	static String getRemainingClause(Checkpoint checkpoint) {
+		if (checkpoint == null) {
+			return null;
+		}
 
-						Thread.sleep(batchPause);
-					}
+		if (isUndated(checkpoint)) {
+			return "((" + getUndatedClause(checkpoint) + ") OR " + getDatedClause(null) + ")";
+		}
 
-					reindexDocuments(docType, csids);
-				}
+		return getDatedClause(checkpoint);
+	}
+
+	/*
+	 * An NXQL TIMESTAMP literal for the time, in UTC with an explicit offset, so it doesn't depend on the time zone
+	 * of the JVM or of the database.
+	 */
+	static String toTimestampLiteral(Calendar time) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
 
-				pageNum++;
+		return "TIMESTAMP '" + format.format(time.getTime()) + "'";
+	}
+
+	private PartialList<Map<String, Serializable>> queryProjection(String query, long limit, long offset, long countUpTo) {
+		boolean tx = false;
+		if (TransactionHelper.isTransactionActive() == false) {
+			tx = TransactionHelper.startTransaction();
+		}
+
+		try {
+			return coreSession.queryProjection(query, NXQL.NXQL, false, limit, offset, countUpTo);
+		} finally {
+			if (tx) {
+				TransactionHelper.commitOrRollbackTransaction();
 			}
-			while(csids.size() == pageSize && pageNum <= endPage);
 		}
 	}
 
+	private List<Info> toInfos(List<Map<String, Serializable>> rows) {
+		List<Info> infos = new ArrayList<Info>(rows.size());
+
+		for (Map<String, Serializable> row : rows) {
+			infos.add(new Info(row.get(NXQL.ECM_UUID), (String) row.get(NXQL.ECM_PRIMARYTYPE)));
+		}
+
+		return infos;
+	}
+
 	private void reindexDocument(String docType, String csid) throws Exception {
 		reindexDocuments(docType, Arrays.asList(csid));
 	}
@@ -466,27 +838,31 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 			return;
 		}
 
-		// Transaction for the batch
-		boolean tx = TransactionHelper.startTransaction();
-
-		getLowLevelSession();
-
 		List<Info> infos = new ArrayList<Info>();
 
 		String query = "SELECT ecm:uuid, ecm:primaryType FROM Document " +
 					   "WHERE ecm:name IN (" + StringUtils.join(quoteList(csids), ',') + ") " +
 					   "AND ecm:primaryType LIKE '" + docType + "%' " +
 					   "AND ecm:isCheckedInVersion = 0 AND ecm:isProxy = 0";
-		IterableQueryResult result = session.queryAndFetch(query, NXQL.NXQL, QueryFilter.EMPTY);
+
+		boolean tx = TransactionHelper.startTransaction();
 
 		try {
-			for (Map<String, Serializable> map : result) {
-				String id = (String) map.get(NXQL.ECM_UUID);
-				String type = (String) map.get(NXQL.ECM_PRIMARYTYPE);
-				infos.add(new Info(id, type));
+			IterableQueryResult result = getLowLevelSession(coreSession).queryAndFetch(query, NXQL.NXQL, QueryFilter.EMPTY);
+
+			try {
+				for (Map<String, Serializable> map : result) {
+					String id = (String) map.get(NXQL.ECM_UUID);
+					String type = (String) map.get(NXQL.ECM_PRIMARYTYPE);
+					infos.add(new Info(id, type));
+				}
+			} finally {
+				result.close();
 			}
 		} finally {
-			result.close();
+			if (tx) {
+				TransactionHelper.commitOrRollbackTransaction();
+			}
 		}
 
 		if (csids.size() != infos.size()) {
@@ -499,24 +875,39 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 			}
 		}
 
-		numAffected += infos.size();
+		reindexInfos(coreSession, infos);
 
+		numAffected.addAndGet(infos.size());
+
+		// wait for async completion after transaction commit
+		Framework.getLocalService(EventService.class).waitForAsyncCompletion();
+	}
+
+	/*
+	 * Reindexes the documents in a transaction of their own.
+	 */
+	private void reindexInfos(CoreSession session, List<Info> infos) {
 		// Below code copied from the doBatch function.
 
+		boolean tx;
 		boolean ok;
 
-		List<Serializable> ids = new ArrayList<Serializable>(infos.size());
+		tx = TransactionHelper.startTransaction();
+
 		Set<String> asyncIds = new HashSet<String>();
-		Model model = session.getModel();
-		for (Info info : infos) {
-			ids.add(info.id);
-			if (fulltextConfiguration.isFulltextIndexable(info.type)) {
-				asyncIds.add(model.idToString(info.id));
-			}
-		}
 		ok = false;
 		try {
-			runSyncBatch(ids, asyncIds);
+			Session lowLevelSession = getLowLevelSession(session);
+			FulltextConfiguration fulltextConfiguration = lowLevelSession.getModel().getFulltextConfiguration();
+			List<Serializable> ids = new ArrayList<Serializable>(infos.size());
+			Model model = lowLevelSession.getModel();
+			for (Info info : infos) {
+				ids.add(info.id);
+				if (fulltextConfiguration.isFulltextIndexable(info.type)) {
+					asyncIds.add(model.idToString(info.id));
+				}
+			}
+			runSyncBatch(lowLevelSession, ids, asyncIds);
 			ok = true;
 		} finally {
 			if (tx) {
@@ -528,10 +919,25 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 			}
 		}
 
-		runAsyncBatch(asyncIds);
+		runAsyncBatch(session.getRepositoryName(), asyncIds);
+	}
 
-		// wait for async completion after transaction commit
-		Framework.getLocalService(EventService.class).waitForAsyncCompletion();
+	/*
+	 * Waits until no more than the given number of full text extraction works are scheduled or running.
+	 */
+	private void waitForFulltextQueue(int maxQueued) throws InterruptedException {
+		WorkManager workManager = Framework.getLocalService(WorkManager.class);
+		String queueId = workManager.getCategoryQueueId(new SQLFulltextExtractorWork(repositoryName, "").getCategory());
+
+		while (true) {
+			WorkQueueMetrics metrics = workManager.getMetrics(queueId);
+
+			if (metrics.getScheduled().longValue() + metrics.getRunning().longValue() <= maxQueued) {
+				break;
+			}
+
+			Thread.sleep(100);
+		}
 	}
 
 	private List<String> quoteList(List<String> values) {
@@ -560,6 +966,69 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 		}
 	}
 
+	/**
+	 * Decides how many batches to reindex at once, and how long to pause before each one, from how long the
+	 * batches have been taking. When the recent average time of a batch grows to more than twice the best
+	 * average seen so far, the repository is taken to be struggling: it backs off by reindexing one batch fewer
+	 * at once, or, when it's down to one, by doubling the pause. When the average is back near its best, it
+	 * undoes those steps one at a time.
+	 */
+	static class AdaptiveThrottle {
+		private static final double SMOOTHING = 0.2;
+		private static final double SLOW_FACTOR = 2.0;
+		private static final double FAST_FACTOR = 1.25;
+		private static final int MIN_BACKOFF_PAUSE = 100;
+		private static final int MAX_PAUSE = 60000;
+
+		private final int maxConcurrency;
+		private final int minPause;
+
+		private int concurrency;
+		private int pause;
+		private double averageLatency = -1;
+		private double bestAverageLatency = -1;
+
+		AdaptiveThrottle(int maxConcurrency, int minPause) {
+			this.maxConcurrency = maxConcurrency;
+			this.minPause = minPause;
+			this.concurrency = maxConcurrency;
+			this.pause = minPause;
+		}
+
+		synchronized int getConcurrency() {
+			return concurrency;
+		}
+
+		synchronized int getPause() {
+			return pause;
+		}
+
+		synchronized void record(long latency) {
+			averageLatency = (averageLatency < 0) ? latency : (SMOOTHING * latency) + ((1 - SMOOTHING) * averageLatency);
+
+			if (bestAverageLatency < 0 || averageLatency < bestAverageLatency) {
+				bestAverageLatency = averageLatency;
+			}
+
+			if (averageLatency > SLOW_FACTOR * bestAverageLatency) {
+				if (concurrency > 1) {
+					concurrency--;
+				}
+				else {
+					pause = Math.min(MAX_PAUSE, Math.max(pause * 2, MIN_BACKOFF_PAUSE));
+				}
+			}
+			else if (averageLatency < FAST_FACTOR * bestAverageLatency) {
+				if (pause > minPause) {
+					pause = Math.max(minPause, pause / 2);
+				}
+				else if (concurrency < maxConcurrency) {
+					concurrency++;
+				}
+			}
+		}
+	}
+
 	/*
 	 * The code below this comment is copied from the nuxeo-reindex-fulltext
 	 * module. The original copyright is below.
@@ -596,63 +1065,23 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 	/**
 	 * This has to be called once the transaction has been started.
 	 */
-	protected void getLowLevelSession() {
+	protected Session getLowLevelSession(CoreSession coreSession) {
 		try {
 			SQLSession s = (SQLSession) ((AbstractSession) coreSession).getSession();
 			Field f2 = SQLSession.class.getDeclaredField("session");
 			f2.setAccessible(true);
-			session = (Session) f2.get(s);
-			fulltextConfiguration = session.getModel().getFulltextConfiguration();
+			return (Session) f2.get(s);
 		} catch (ReflectiveOperationException e) {
 			throw new NuxeoException(e);
 		}
 	}
 
-	protected void doBatch(List<Info> infos) {
-		boolean tx;
-		boolean ok;
-
-		// transaction for the sync batch
-		tx = TransactionHelper.startTransaction();
-
-		getLowLevelSession(); // for fulltextInfo
-		List<Serializable> ids = new ArrayList<Serializable>(infos.size());
-		Set<String> asyncIds = new HashSet<String>();
-		Model model = session.getModel();
-		for (Info info : infos) {
-			ids.add(info.id);
-			if (fulltextConfiguration.isFulltextIndexable(info.type)) {
-				asyncIds.add(model.idToString(info.id));
-			}
-		}
-		ok = false;
-		try {
-			runSyncBatch(ids, asyncIds);
-			ok = true;
-		} finally {
-			if (tx) {
-				if (!ok) {
-					TransactionHelper.setTransactionRollbackOnly();
-					log.error("Rolling back sync");
-				}
-				TransactionHelper.commitOrRollbackTransaction();
-			}
-		}
-
-		runAsyncBatch(asyncIds);
-
-		// wait for async completion after transaction commit
-		Framework.getLocalService(EventService.class).waitForAsyncCompletion();
-	}
-
 	/*
 		* Do this at the low-level session level because we may have to modify
 		* things like versions which aren't usually modifiable, and it's also good
 		* to bypass all listeners.
 		*/
-	protected void runSyncBatch(List<Serializable> ids, Set<String> asyncIds) {
-		getLowLevelSession();
-
+	protected void runSyncBatch(Session session, List<Serializable> ids, Set<String> asyncIds) {
 		session.getNodesByIds(ids); // batch fetch
 
 		Map<Serializable, String> titles = new HashMap<Serializable, String>();
@@ -686,12 +1115,11 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 		session.save();
 	}
 
-	protected void runAsyncBatch(Set<String> asyncIds)
+	protected void runAsyncBatch(String repositoryName, Set<String> asyncIds)
 			{
 		if (asyncIds.isEmpty()) {
 			return;
 		}
-		String repositoryName = coreSession.getRepositoryName();
 		WorkManager workManager = Framework.getLocalService(WorkManager.class);
 		for (String id : asyncIds) {
 			Work work = new SQLFulltextExtractorWork(repositoryName, id);
@@ -699,4 +1127,4 @@ public class ReindexFullTextBatchJob extends AbstractBatchJob {
 			workManager.schedule(work, Scheduling.IF_NOT_SCHEDULED, false);
 		}
 	}
-}
\ No newline at end of file
+}
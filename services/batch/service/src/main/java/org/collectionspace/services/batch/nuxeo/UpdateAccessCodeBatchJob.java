@@ -1,6 +1,7 @@
 package org.collectionspace.services.batch.nuxeo;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -29,6 +30,8 @@ import org.slf4j.LoggerFactory;
  * collectionobject's taxonomic identification are updated, and propagated up the taxon
  * hierarchy to the ancestors (broader contexts) of each taxon record.
  *
+ * With no context, the access codes of all taxon records are updated.
+ *
  * @author ray
  *
  */
@@ -39,7 +42,7 @@ public class UpdateAccessCodeBatchJob extends AbstractBatchJob {
 	private final String TAXON_FIELD_NAME_WITHOUT_PATH = TAXON_FIELD_NAME_PARTS[TAXON_FIELD_NAME_PARTS.length - 1];
 
 	public UpdateAccessCodeBatchJob() {
-		this.setSupportedInvocationModes(Arrays.asList(INVOCATION_MODE_SINGLE));
+		this.setSupportedInvocationModes(Arrays.asList(INVOCATION_MODE_SINGLE, INVOCATION_MODE_NO_CONTEXT));
 	}
 
 	@Override
@@ -67,6 +70,9 @@ public class UpdateAccessCodeBatchJob extends AbstractBatchJob {
 					throw new Exception("Unsupported document type: " + docType);
 				}
 			}
+			else if (this.requestIsForInvocationModeNoContext()) {
+				setResults(updateAllAccessCodes());
+			}
 			else {
 				throw new Exception("Unsupported invocation mode: " + this.getInvocationContext().getMode());
 			}
@@ -107,6 +113,52 @@ public class UpdateAccessCodeBatchJob extends AbstractBatchJob {
 		return results;
 	}
 
+	/**
+	 * Updates the access codes of all taxon records, by making a deep update of each root (a taxon
+	 * record with no broader context) of each taxonomy authority.
+	 *
+	 * @return						The results of the invocation.
+	 * @throws URISyntaxException
+	 * @throws DocumentException
+	 */
+	public InvocationResults updateAllAccessCodes() throws URISyntaxException, DocumentException, Exception {
+		long numAffected = 0;
+		int pageSize = 50;
+
+		for (String vocabularyCsid : getVocabularyCsids(TaxonomyAuthorityClient.SERVICE_NAME)) {
+			// Find the roots first, since updating the access codes may change the order of the pages.
+
+			List<String> rootCsids = new ArrayList<String>();
+			List<String> csids = null;
+			int pageNum = 0;
+
+			do {
+				csids = findAllAuthorityItems(TaxonomyAuthorityClient.SERVICE_NAME, vocabularyCsid, pageSize, pageNum);
+
+				for (String csid : csids) {
+					if (findBroader(csid) == null) {
+						rootCsids.add(csid);
+					}
+				}
+
+				pageNum++;
+			}
+			while (csids.size() == pageSize);
+
+			logger.debug("updating all access codes: vocabularyCsid=" + vocabularyCsid + " roots=" + rootCsids.size());
+
+			for (String rootCsid : rootCsids) {
+				numAffected += updateAccessCode(rootCsid, true, false).getNumAffected();
+			}
+		}
+
+		InvocationResults results = new InvocationResults();
+		results.setNumAffected(numAffected);
+		results.setUserNote(numAffected + " access codes changed");
+
+		return results;
+	}
+
 	/**
 	 * Updates the access code of the parent (broader context) of the specified taxon record.
 	 *
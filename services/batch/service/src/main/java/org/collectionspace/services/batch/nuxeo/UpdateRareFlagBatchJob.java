@@ -326,7 +326,7 @@ public class UpdateRareFlagBatchJob extends AbstractBatchJob {
 		results.setNumAffected(numAffected);
 		results.setUserNote("updated " + numAffected + " of " + numFound + " cataloging records");
 		
-		return null;
+		return results;
 	}
 
 	/**
@@ -0,0 +1,139 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.test.StandInUserTransaction;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that BatchRepository.updateAll() updates the records in chunks of 100, and commits the batch
+ * job's transaction after each chunk.
+ */
+public class BatchRepositoryTest {
+    private final List<String> events = new ArrayList<String>();
+    private StandInUserTransaction ut;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        events.clear();
+        ut = new StandInUserTransaction(events);
+        ut.install();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        ut.uninstall();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceContext<?, ?> serviceContext() {
+        return (ServiceContext<?, ?>) Proxy.newProxyInstance(BatchRepositoryTest.class.getClassLoader(),
+                new Class<?>[] { ServiceContext.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getTenantId")) {
+                            return "1";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /*
+     * A repository that records the size of each chunk it's given to update, and fails a chunk with the CSID "bad".
+     */
+    @SuppressWarnings("unchecked")
+    private BatchRepository repository() {
+        return new BatchRepository((ServiceContext) serviceContext(), null, null) {
+            @Override
+            void updateChunk(String docType, List<String> csids, Map<String, Map<String, String>> fieldsByPart) throws Exception {
+                if (csids.contains("bad")) {
+                    throw new Exception("Could not update bad");
+                }
+                assertEquals(fieldsByPart.get("movements_common").get("currentLocation"), "urn:loc");
+                events.add("update " + csids.size());
+            }
+        };
+    }
+
+    private static Map<String, Map<String, String>> fields() {
+        Map<String, Map<String, String>> result = new LinkedHashMap<String, Map<String, String>>();
+        result.put("movements_common", Collections.singletonMap("currentLocation", "urn:loc"));
+        return result;
+    }
+
+    private static List<String> csids(int count) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            result.add("csid" + i);
+        }
+        return result;
+    }
+
+    private int count(String event) {
+        return Collections.frequency(events, event);
+    }
+
+    @Test
+    public void testRecordsAreUpdatedInChunks() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        int numUpdated = repository().updateAll("Movement", csids(250), fields());
+
+        assertEquals(numUpdated, 250);
+        assertEquals(events, Arrays.asList("update 100", "commit", "begin", "update 100", "commit", "begin", "update 50"),
+                "Each chunk should be committed in its own transaction");
+        assertTrue(TransactionHelper.isTransactionActive(), "The job should get a transaction back");
+    }
+
+    @Test
+    public void testWholeChunks() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        assertEquals(repository().updateAll("Movement", csids(200), fields()), 200);
+        assertEquals(count("update 100"), 2);
+        assertEquals(count("commit"), 1, "The last chunk should be left in the job's transaction");
+    }
+
+    @Test
+    public void testWithoutATransaction() throws Exception {
+        assertEquals(repository().updateAll("Movement", csids(150), fields()), 150);
+        assertEquals(events, Arrays.asList("update 100", "update 50"));
+    }
+
+    @Test
+    public void testFailedUpdate() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        List<String> csids = csids(150);
+        csids.set(120, "bad");
+
+        try {
+            repository().updateAll("Movement", csids, fields());
+            fail("The failed update wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "Could not update bad");
+        }
+
+        // The first chunk was committed; the failed one is left in the job's transaction
+        assertEquals(events, Arrays.asList("update 100", "commit", "begin"));
+        assertTrue(TransactionHelper.isTransactionActive());
+    }
+}
@@ -0,0 +1,181 @@
+package org.collectionspace.services.batch.nuxeo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.batch.CancellableBatchInvocable;
+import org.collectionspace.services.batch.RunningBatchJobs;
+import org.collectionspace.services.batch.nuxeo.ReindexCheckpointStore.Checkpoint;
+import org.collectionspace.services.batch.nuxeo.ReindexFullTextBatchJob.PendingBatch;
+import org.collectionspace.services.common.invocable.InvocationResults;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the keyset that ReindexFullTextBatchJob resumes from, and the progress and cancellation
+ * that it reports to GET and DELETE /batch/{csid}/invoke.
+ */
+public class ReindexFullTextBatchJobTest {
+    private static final String CREATED_AT = "collectionspace_core:createdAt";
+
+    private static Calendar time(String timeZone, int year, int month, int day, int hour, int minute, int millis) {
+        Calendar result = Calendar.getInstance(TimeZone.getTimeZone(timeZone));
+        result.clear();
+        result.set(year, month - 1, day, hour, minute, 0);
+        result.set(Calendar.MILLISECOND, millis);
+        return result;
+    }
+
+    @Test
+    public void testTimestampsAreInUtc() {
+        // The same instant in two time zones
+        assertEquals(ReindexFullTextBatchJob.toTimestampLiteral(time("America/Los_Angeles", 2020, 1, 1, 16, 30, 123)),
+                "TIMESTAMP '2020-01-02T00:30:00.123Z'");
+        assertEquals(ReindexFullTextBatchJob.toTimestampLiteral(time("UTC", 2020, 1, 2, 0, 30, 123)),
+                "TIMESTAMP '2020-01-02T00:30:00.123Z'");
+    }
+
+    @Test
+    public void testUndatedRecordsAreReadFirst() {
+        assertTrue(ReindexFullTextBatchJob.isUndated(null));
+        assertEquals(ReindexFullTextBatchJob.getUndatedClause(null), CREATED_AT + " IS NULL");
+        assertEquals(ReindexFullTextBatchJob.getDatedClause(null), CREATED_AT + " IS NOT NULL");
+        assertNull(ReindexFullTextBatchJob.getRemainingClause(null), "Nothing has been reindexed, so everything remains");
+
+        Checkpoint undated = new Checkpoint(null, "id-5", 5, false);
+        assertTrue(ReindexFullTextBatchJob.isUndated(undated));
+        assertEquals(ReindexFullTextBatchJob.getUndatedClause(undated), CREATED_AT + " IS NULL AND ecm:uuid > 'id-5'");
+        assertEquals(ReindexFullTextBatchJob.getDatedClause(undated), CREATED_AT + " IS NOT NULL",
+                "All of the dated records come after the undated ones");
+        assertEquals(ReindexFullTextBatchJob.getRemainingClause(undated),
+                "((" + CREATED_AT + " IS NULL AND ecm:uuid > 'id-5') OR " + CREATED_AT + " IS NOT NULL)");
+    }
+
+    @Test
+    public void testDatedRecordsAreKeyedOnCreatedAtAndId() {
+        Checkpoint dated = new Checkpoint(time("UTC", 2020, 1, 2, 0, 30, 123), "id-7", 7, false);
+        String createdAt = "TIMESTAMP '2020-01-02T00:30:00.123Z'";
+
+        assertFalse(ReindexFullTextBatchJob.isUndated(dated));
+        assertEquals(ReindexFullTextBatchJob.getDatedClause(dated),
+                "(" + CREATED_AT + " > " + createdAt + " OR (" + CREATED_AT + " = " + createdAt + " AND ecm:uuid > 'id-7'))");
+        assertEquals(ReindexFullTextBatchJob.getRemainingClause(dated), ReindexFullTextBatchJob.getDatedClause(dated),
+                "The undated records were all reindexed before the first dated one");
+    }
+
+    @Test
+    public void testProgress() {
+        // 250 records reindexed in 10 seconds, after 250 reindexed by an earlier invocation
+        InvocationResults progress = ReindexFullTextBatchJob.getProgress(ReindexFullTextBatchJob.STATE_RUNNING,
+                250, 250, 1000, 10000, "CollectionObject");
+
+        assertEquals(progress.getState(), ReindexFullTextBatchJob.STATE_RUNNING);
+        assertEquals(progress.getNumAffected(), 250);
+        assertEquals(progress.getNumTotal().longValue(), 1000);
+        assertEquals(progress.getPercentComplete().intValue(), 50);
+        assertEquals(progress.getEstimatedSecondsRemaining().longValue(), 20);
+        assertEquals(progress.getUserNote(), "reindexed 500 of 1000 records; reindexing CollectionObject");
+    }
+
+    @Test
+    public void testProgressBeforeCounting() {
+        InvocationResults progress = ReindexFullTextBatchJob.getProgress(ReindexFullTextBatchJob.STATE_RUNNING, 0, 0, 0, 10, null);
+
+        assertEquals(progress.getNumAffected(), 0);
+        assertNull(progress.getNumTotal());
+        assertNull(progress.getPercentComplete());
+        assertNull(progress.getEstimatedSecondsRemaining());
+    }
+
+    @Test
+    public void testCancelledProgressHasNoEstimate() {
+        InvocationResults progress = ReindexFullTextBatchJob.getProgress(ReindexFullTextBatchJob.STATE_CANCELLING,
+                100, 0, 1000, 10000, "CollectionObject");
+
+        assertEquals(progress.getPercentComplete().intValue(), 10);
+        assertNull(progress.getEstimatedSecondsRemaining());
+        assertEquals(progress.getUserNote(), "reindexed 100 of 1000 records");
+    }
+
+    @Test
+    public void testCancel() {
+        ReindexFullTextBatchJob job = new ReindexFullTextBatchJob();
+        assertEquals(job.getProgress().getState(), ReindexFullTextBatchJob.STATE_RUNNING);
+
+        job.cancel();
+        assertEquals(job.getProgress().getState(), ReindexFullTextBatchJob.STATE_CANCELLING);
+
+        job.cancel();
+        assertEquals(job.getProgress().getState(), ReindexFullTextBatchJob.STATE_CANCELLING);
+    }
+
+    @Test
+    public void testOnlyOneInvocationRunsPerTenant() {
+        CancellableBatchInvocable first = new ReindexFullTextBatchJob();
+        CancellableBatchInvocable second = new ReindexFullTextBatchJob();
+
+        assertTrue(RunningBatchJobs.add("1", "reindex", first));
+        try {
+            assertFalse(RunningBatchJobs.add("1", "reindex", second), "A second invocation was allowed to run");
+            assertTrue(RunningBatchJobs.add("2", "reindex", second), "Another tenant's invocation was rejected");
+            assertSame(RunningBatchJobs.get("1", "reindex"), first);
+
+            // Only the invocation that registered can unregister
+            RunningBatchJobs.remove("1", "reindex", second);
+            assertSame(RunningBatchJobs.get("1", "reindex"), first);
+        } finally {
+            RunningBatchJobs.remove("1", "reindex", first);
+            RunningBatchJobs.remove("2", "reindex", second);
+        }
+        assertNull(RunningBatchJobs.get("1", "reindex"));
+        assertNull(RunningBatchJobs.get("2", "reindex"));
+    }
+
+    private static FutureTask<Void> batchTask(final RuntimeException failure) {
+        return new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testNoCheckpointIsSavedAfterAFailedBatch() {
+        final List<Long> saved = new ArrayList<Long>();
+        ReindexCheckpointStore checkpointStore = new ReindexCheckpointStore("default", "1") {
+            @Override
+            public void save(String docType, Checkpoint checkpoint) {
+                saved.add(checkpoint.getNumDone());
+            }
+        };
+
+        FutureTask<Void> first = batchTask(null);
+        FutureTask<Void> failed = batchTask(new IllegalStateException("reindexing failed"));
+        FutureTask<Void> later = batchTask(null);
+        Deque<PendingBatch> pendingBatches = new ArrayDeque<PendingBatch>();
+        pendingBatches.add(new PendingBatch("CollectionObject", first, new Checkpoint(null, "a", 100, false)));
+        pendingBatches.add(new PendingBatch("CollectionObject", failed, new Checkpoint(null, "b", 200, false)));
+        pendingBatches.add(new PendingBatch("CollectionObject", later, new Checkpoint(null, "c", 300, false)));
+        pendingBatches.add(new PendingBatch("CollectionObject", null, new Checkpoint(null, "c", 300, true)));
+        first.run();
+        failed.run();
+        later.run();
+
+        new ReindexFullTextBatchJob().finishPendingBatches(pendingBatches, checkpointStore);
+
+        assertEquals(saved, Arrays.asList(100L), "A checkpoint past the failed batch was saved");
+        assertTrue(pendingBatches.isEmpty());
+    }
+}
@@ -32,6 +32,7 @@ import org.collectionspace.services.common.FileUtilities;
 import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ResourceMap;
 import org.collectionspace.services.common.ServiceMessages;
+import org.collectionspace.services.common.blob.BlobContentResponse;
 import org.collectionspace.services.common.blob.BlobInput;
 import org.collectionspace.services.common.blob.BlobUtil;
 import org.collectionspace.services.common.context.ServiceContext;
@@ -44,6 +45,7 @@ import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -51,6 +53,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Request;
@@ -58,6 +61,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
@@ -279,21 +283,13 @@ public class BlobResource extends NuxeoBasedResource {
     public Response getBlobContent(
     		@PathParam("csid") String csid,
     		@Context Request jaxRsRequest,
-    		@Context UriInfo uriInfo) {
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
     	Response result = null;
-    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = null; 
     	
     	try {
-	    	ctx = createServiceContext(jaxRsRequest, uriInfo);
-			BlobsCommon blobsCommon = getBlobsCommon(csid);
-	    	StringBuffer mimeType = new StringBuffer();
-	    	InputStream contentStream = getBlobContent(ctx, csid, null /*derivative term*/, mimeType /*will get set*/);
-		    
-	    	Response.ResponseBuilder responseBuilder = Response.ok(contentStream, mimeType.toString());
-	    	setCacheControl(ctx, responseBuilder);
-	    	responseBuilder = responseBuilder.header("Content-Disposition","inline;filename=\""
-	    			+ blobsCommon.getName() +"\"");
-	    	result = responseBuilder.build();
+	    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(jaxRsRequest, uriInfo);
+	    	result = getContentResponse(ctx, csid, null /*derivative term*/, headers, false);
     	} catch (Exception e) {
     		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
     	}
@@ -301,6 +297,73 @@ public class BlobResource extends NuxeoBasedResource {
     	return result;
     }
     
+    @HEAD
+    @Path("{csid}/content")
+    public Response getBlobContentHead(
+    		@PathParam("csid") String csid,
+    		@Context Request jaxRsRequest,
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
+    	Response result = null;
+    	
+    	try {
+	    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(jaxRsRequest, uriInfo);
+	    	result = getContentResponse(ctx, csid, null /*derivative term*/, headers, true);
+    	} catch (Exception e) {
+    		throw bigReThrow(e, ServiceMessages.READ_FAILED);
+    	}
+
+    	return result;
+    }
+    
+    /*
+     * Builds the response for a blob or derivative content request, honoring any Range request headers.
+     * A GET reads the content from its plain file when there is one, so the content stream is only
+     * opened (and small blobs buffered) when there isn't.  A HEAD never opens the content: its headers
+     * come from the blob's metadata and file.
+     */
+    private Response getContentResponse(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		String csid,
+    		String derivativeTerm,
+    		HttpHeaders headers,
+    		boolean headRequest) throws Exception {
+    	BlobInput blobInput = BlobUtil.getBlobInput(ctx);
+    	blobInput.setDerivativeTerm(derivativeTerm);
+    	blobInput.setContentRequested(true);
+    	blobInput.setContentStreamPolicy(headRequest ? BlobInput.ContentStreamPolicy.NEVER
+    			: BlobInput.ContentStreamPolicy.UNLESS_FILE);
+
+    	PoxPayloadOut response = this.get(csid, ctx);
+    	// For a derivative, these are the derivative's metadata
+    	BlobsCommon contentBlobsCommon = (BlobsCommon) response.getPart(BlobClient.SERVICE_COMMON_PART_NAME).getBody();
+    	InputStream contentStream = blobInput.getContentStream();
+    	File contentFile = blobInput.getContentFile();
+    	if (contentStream == null && contentFile == null && !headRequest) {
+    		String errMsg = String.format("Could not get the contents for the Blob with CSID = '%s'.", csid);
+	        throw new CSWebApplicationException(Response.status(
+	                Response.Status.INTERNAL_SERVER_ERROR).entity(errMsg).type("text/plain").build());
+    	}
+
+    	long contentLength = -1;
+    	if (contentBlobsCommon.getLength() != null) {
+    		try {
+    			contentLength = Long.parseLong(contentBlobsCommon.getLength());
+    		} catch (NumberFormatException e) {
+    			logger.debug(String.format("Blob '%s' has an invalid length '%s'.", csid, contentBlobsCommon.getLength()));
+    		}
+    	}
+    	String mimeType = blobInput.getMimeType() != null ? blobInput.getMimeType() : contentBlobsCommon.getMimeType();
+
+    	Response.ResponseBuilder responseBuilder = BlobContentResponse.createResponseBuilder(headers, headRequest,
+    			contentStream, contentFile, contentLength, mimeType);
+    	setCacheControl(ctx, responseBuilder);
+    	// The file name is always the one of the original blob
+    	String name = derivativeTerm == null ? contentBlobsCommon.getName() : getBlobsCommon(csid).getName();
+    	responseBuilder = responseBuilder.header("Content-Disposition","inline;filename=\""
+    			+ name +"\"");
+    	return responseBuilder.build();
+    }
+    
 	private BlobsCommon getBlobsCommon(String csid) throws Exception {
     	BlobsCommon result = null;
     	
@@ -368,23 +431,15 @@ public class BlobResource extends NuxeoBasedResource {
     		@PathParam("csid") String csid,
     		@PathParam("derivativeTerm") String derivativeTerm,
     		@Context Request jaxRsRequest,
-    		@Context UriInfo uriInfo) {
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
     	Response result = null;
-    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = null;
     	
 	    	try {
 	    		// Setup the call to get the blob derivative
-		    	ctx = createServiceContext(jaxRsRequest, uriInfo);
-				BlobsCommon blobsCommon = getBlobsCommon(csid);
-		    	StringBuffer mimeType = new StringBuffer();
-		    	// Get the blob derivative from Nuxeo
-		    	InputStream contentStream = getBlobContent(ctx, csid, derivativeTerm, mimeType);
-		    	// Build a response
-			    Response.ResponseBuilder responseBuilder = Response.ok(contentStream, mimeType.toString());
-			    setCacheControl(ctx, responseBuilder);
-		    	responseBuilder = responseBuilder.header("Content-Disposition","inline;filename=\""
-		    			+ blobsCommon.getName() +"\"");
-		    	result = responseBuilder.build();
+		    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(jaxRsRequest, uriInfo);
+		    	// Get the blob derivative from Nuxeo and build a response
+		    	result = getContentResponse(ctx, csid, derivativeTerm, headers, false);
 	    	} catch (Exception e) {
 	    		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
 	    	}
@@ -392,6 +447,26 @@ public class BlobResource extends NuxeoBasedResource {
 	    return result;
     }
     
+    @HEAD
+    @Path("{csid}/derivatives/{derivativeTerm}/content")
+    public Response getDerivativeContentHead(
+    		@PathParam("csid") String csid,
+    		@PathParam("derivativeTerm") String derivativeTerm,
+    		@Context Request jaxRsRequest,
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
+    	Response result = null;
+    	
+	    	try {
+		    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(jaxRsRequest, uriInfo);
+		    	result = getContentResponse(ctx, csid, derivativeTerm, headers, true);
+	    	} catch (Exception e) {
+	    		throw bigReThrow(e, ServiceMessages.READ_FAILED);
+	    	}
+
+	    return result;
+    }
+    
     @GET
     @Path("{csid}/derivatives/{derivativeTerm}")
     public String getDerivative(@PathParam("csid") String csid,
@@ -162,12 +162,14 @@ extends NuxeoDocumentModelHandler<BlobsCommon> {
 		if (derivativeTerm != null || getContentFlag == true) {
 			StringBuffer mimeTypeBuffer = new StringBuffer();
 			BlobOutput blobOutput = NuxeoBlobUtils.getBlobOutput(ctx, repoSession,
-					blobRepositoryId, derivativeTerm, getContentFlag, mimeTypeBuffer);
+					blobRepositoryId, derivativeTerm, getContentFlag, blobInput.getContentStreamPolicy(), mimeTypeBuffer);
 			if (getContentFlag == true) {
 				if (blobOutput != null) {
 					blobInput.setContentStream(blobOutput.getBlobInputStream());
+					blobInput.setContentFile(blobOutput.getBlobFile());
 				} else {
 					blobInput.setContentStream(null);
+					blobInput.setContentFile(null);
 				}
 			}
 	
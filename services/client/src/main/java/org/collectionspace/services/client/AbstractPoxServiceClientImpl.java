@@ -83,6 +83,22 @@ public abstract class AbstractPoxServiceClientImpl<CLT extends AbstractCommonLis
         return getProxy().readIncludeDeleted(csid, includeDeleted.toString());
     }
 
+    /**
+     * Reads several records with one request.  The response entity lists, for each requested CSID, either
+     * the record's payload or the status (e.g., 404) and message of the failed read.
+     */
+    public Response bulkRead(List<String> csids, Boolean includeDeleted) {
+        return getProxy().bulkRead(CollectionSpaceClientUtils.createBulkReadPayload(csids), includeDeleted.toString());
+    }
+
+    /**
+     * Follows a workflow transition on several records with one request.  The response entity lists, for each CSID,
+     * either the record's new workflow state or the status (e.g., 404) and message of the failed transition.
+     */
+    public Response bulkUpdateWorkflowWithTransition(List<String> csids, String workflowTransition) {
+        return getProxy().bulkUpdateWorkflowWithTransition(workflowTransition, CollectionSpaceClientUtils.createBulkReadPayload(csids));
+    }
+
     @Override
     public Response update(String csid, PoxPayloadOut xmlPayload) {
         return getProxy().update(csid, xmlPayload.getBytes());
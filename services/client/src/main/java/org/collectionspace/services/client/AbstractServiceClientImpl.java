@@ -23,6 +23,7 @@
  */
 package org.collectionspace.services.client;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
@@ -42,7 +43,7 @@ import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.jaxb.AbstractCommonList;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
-import org.jboss.resteasy.client.jaxrs.engines.URLConnectionEngine;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient4Engine;
 import org.jboss.resteasy.client.core.executors.ApacheHttpClient4Executor;
 import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
@@ -51,7 +52,9 @@ import org.slf4j.LoggerFactory;
 
 // FIXME: Deprecated classes that need to be updated
 import org.jboss.resteasy.client.ProxyFactory;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.HttpClientBuilder;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
@@ -441,7 +444,7 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     @Override
     public void setupHttpClient() throws Exception {
     	try {
-	        this.httpClient = new HttpClient();
+	        this.httpClient = new HttpClient(ServiceClientConnectionPool.getLegacyConnectionManager());
 	        if (useAuth()) {
 	            String user = properties.getProperty(USER_PROPERTY);
 	            String password = properties.getProperty(PASSWORD_PROPERTY);
@@ -470,38 +473,49 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     }
     
     /*
-     * This is a temp fix for RESTEasy upgrade in CSPACE-6281.  The long-term solution will be to use
-     * the non-deprecated approach per the RESTEasy documentation.
+     * Sets up the HttpClient 4 client used by the RESTEasy proxy.  It leases its connections from the JVM-wide
+     * ServiceClientConnectionPool, so connections are reused across requests and across client instances.
      */
     public void setupHttpClient4() throws Exception {
     	try {
-	        this.httpClient4 = new DefaultHttpClient();
+    		HttpClientBuilder builder = ServiceClientConnectionPool.newHttpClientBuilder();
 	        if (useAuth()) {
 	            String user = properties.getProperty(USER_PROPERTY);
 	            String password = properties.getProperty(PASSWORD_PROPERTY);
 	            if (logger.isDebugEnabled()) {
-	                logger.debug("setupHttpClient() using url=" + url + " user="
+	                logger.debug("setupHttpClient4() using url=" + url + " user="
 	                        + user + " password=" + password);
 	            }
 	
-	            httpClient.getState().setCredentials(
-	                    new AuthScope(url.getHost(), url.getPort(),
-	                    AuthScope.ANY_REALM),
-	                    new UsernamePasswordCredentials(user, password));
-	            // JAXRS client library requires HTTP preemptive authentication
-	            httpClient.getParams().setAuthenticationPreemptive(true);
-	            if (logger.isDebugEnabled()) {
-	                logger.debug("setupHttpClient: set preemptive authentication");
-	            }
+	            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+	            credentialsProvider.setCredentials(
+	            		new org.apache.http.auth.AuthScope(url.getHost(), url.getPort()),
+	            		new org.apache.http.auth.UsernamePasswordCredentials(user, password));
+	            builder.setDefaultCredentialsProvider(credentialsProvider);
 	        } else {
 	            if (logger.isDebugEnabled()) {
-	                logger.debug("setupHttpClient() : no auth mode!");
+	                logger.debug("setupHttpClient4() : no auth mode!");
 	            }
 	        }
+	        closeHttpClient4();
+	        this.httpClient4 = builder.build();
     	} catch (Throwable e) {
     		throw new Exception("Could not setup an HTTP client as requested with ", e);
     	}
-    }    
+    }
+
+    /*
+     * Closing the client doesn't close the shared pool's connections; it just releases the client's resources.
+     */
+    private void closeHttpClient4() {
+    	if (httpClient4 instanceof Closeable) {
+    		try {
+    			((Closeable) httpClient4).close();
+    		} catch (IOException e) {
+    			logger.warn("Could not close the HTTP client.", e);
+    		}
+    	}
+    }
 
     /*
      * (non-Javadoc)
@@ -537,7 +551,9 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
 //        	client = (ResteasyClient)ClientBuilder.newClient();
 //    	}
     	
-    	client = new ResteasyClientBuilder().httpEngine(new URLConnectionEngine()).build();
+    	// Use the pooled HTTP client so connections are kept alive and reused.  The engine mustn't close the client,
+    	// since we replace it ourselves -see setupHttpClient4().
+    	client = new ResteasyClientBuilder().httpEngine(new ApacheHttpClient4Engine(getHttpClient4(), false)).build();
     	
         if (useAuth()) {
             String user = properties.getProperty(USER_PROPERTY);
@@ -587,7 +603,7 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
         
         try {
 	        setupHttpClient();
-	        setupHttpClient(); // temp fix for CSPACE-6281
+	        setupHttpClient4(); // temp fix for CSPACE-6281
         } catch (Exception e) {
     		throw new RuntimeException(e.getMessage());
         }
@@ -25,6 +25,7 @@ public interface AuthorityClient<AUTHORITY_COMMON_TYPE, AUTHORITY_ITEM_TYPE, P e
     public static final Boolean INCLUDE_RELATIONS = true;
     public static final Boolean DONT_INCLUDE_RELATIONS = !INCLUDE_RELATIONS;
     public static final String MARK_IF_REFERENCED_QP = "markIfReferenced";
+    public static final String SHOW_REV_QP = "showRev"; // include items' revision numbers in list results (used by SAS sync)
 
 	/*
 	 * Basic CRUD operations
@@ -163,6 +164,12 @@ public interface AuthorityClient<AUTHORITY_COMMON_TYPE, AUTHORITY_ITEM_TYPE, P e
     public Response readItemList(String inAuthority, String partialTerm, String keywords, Boolean includeDeleted,
     		long pageSize, long pageNum);
 
+    /**
+     * Reads a page of the item list, including each item's revision number, as a SAS sync does
+     * to tell which items have changed.
+     */
+    public Response readItemListWithRevs(String inAuthority, long pageSize, long pageNum);
+
     /**
      * Read item list for named vocabulary, filtering by partial term match, or keywords. Only one of
      * partialTerm or keywords should be specified. If both are specified, keywords
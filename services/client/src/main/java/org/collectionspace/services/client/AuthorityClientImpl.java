@@ -1,5 +1,7 @@
 package org.collectionspace.services.client;
 
+import java.util.List;
+
 import javax.ws.rs.core.Response;
 
 import org.collectionspace.services.jaxb.AbstractCommonList;
@@ -49,6 +51,11 @@ public abstract class AuthorityClientImpl<AUTHORITY_COMMON_TYPE, AUTHORITY_ITEM_
     	return getProxy().readItem(vcsid, csid, includeDeleted.toString(), includeRelations.toString());
     }
 
+    //(R)ead several Items at once
+    public Response bulkReadItems(String vcsid, List<String> csids, Boolean includeDeleted) {
+    	return getProxy().bulkReadItems(vcsid, CollectionSpaceClientUtils.createBulkReadPayload(csids), includeDeleted.toString());
+    }
+
     //(U)pdate Item
     @Override
 	public Response updateItem(String vcsid, String csid, PoxPayloadOut poxPayloadOut) {
@@ -224,6 +231,11 @@ public abstract class AuthorityClientImpl<AUTHORITY_COMMON_TYPE, AUTHORITY_ITEM_
     		long pageSize, long pageNum) {
         return getProxy().readItemList(inAuthority, partialTerm, keywords, includeDeleted.toString(), pageSize, pageNum);
     }
+
+    @Override
+    public Response readItemListWithRevs(String inAuthority, long pageSize, long pageNum) {
+        return getProxy().readItemList(inAuthority, null, null, INCLUDE_DELETE_TRUE, pageSize, pageNum, Boolean.TRUE.toString());
+    }
     
 
     /**
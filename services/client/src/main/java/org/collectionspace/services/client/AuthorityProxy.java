@@ -38,6 +38,12 @@ public interface AuthorityProxy extends CollectionSpaceCommonListPoxProxy {
     		@QueryParam(CommonAPI.showRelations_QP) String showRelations);
     
     
+    //(R)ead several Items at once; see CollectionSpaceClient.BULK_READ_PATH
+    @POST
+    @Path("/{vcsid}/items/" + CollectionSpaceClient.BULK_READ_PATH)
+    Response bulkReadItems(@PathParam("vcsid") String vcsid, byte[] payload,
+    		@QueryParam(WorkflowClient.WORKFLOWSTATE_QUERY) String workflowState);
+
     //(U)pdate Item
     @PUT
     @Path("/{vcsid}/items/{csid}")
@@ -164,6 +170,18 @@ public interface AuthorityProxy extends CollectionSpaceCommonListPoxProxy {
             @QueryParam(IClientQueryParams.PAGE_SIZE_PARAM) long pageSize,
             @QueryParam(IClientQueryParams.START_PAGE_PARAM) long pageNum);
     
+    @GET
+    @Produces({"application/xml"})
+    @Path("/{csid}/items/")
+    Response readItemList(
+    		@PathParam("csid") String vcsid,
+            @QueryParam (IQueryManager.SEARCH_TYPE_PARTIALTERM) String partialTerm,
+            @QueryParam(IQueryManager.SEARCH_TYPE_KEYWORDS_KW) String keywords,
+            @QueryParam(WorkflowClient.WORKFLOWSTATE_QUERY) String workflowState,
+            @QueryParam(IClientQueryParams.PAGE_SIZE_PARAM) long pageSize,
+            @QueryParam(IClientQueryParams.START_PAGE_PARAM) long pageNum,
+            @QueryParam(AuthorityClient.SHOW_REV_QP) String showRev);
+    
     // List Items for a named authority matching a partial term or keywords.
     @GET
     @Produces({"application/xml"})
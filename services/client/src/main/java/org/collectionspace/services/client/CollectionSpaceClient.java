@@ -79,7 +79,13 @@ public interface CollectionSpaceClient<CLT, REQUEST_TYPE, RESPONSE_TYPE, P exten
     
     // JAX-RS path for getting service description meta information
 	public static final String SERVICE_DESCRIPTION_PATH = "description";
-	
+
+    // JAX-RS path for reading several records with one request -e.g., POST /collectionobjects/bulkread with a payload of
+    // <csids><csid>...</csid><csid>...</csid></csids>
+	public static final String BULK_READ_PATH = "bulkread";
+	public static final String BULK_READ_CSIDS_ELEMENT = "csids";
+	public static final String BULK_READ_CSID_ELEMENT = "csid";
+
     /**
      * The character used to separate the words in a part label
      */
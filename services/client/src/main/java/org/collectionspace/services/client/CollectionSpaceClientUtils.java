@@ -27,6 +27,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import javax.ws.rs.core.MultivaluedMap;
@@ -95,6 +96,24 @@ public class CollectionSpaceClientUtils {
         return id;
     }
  
+    /**
+     * Creates the payload of a bulk read request -i.e., <csids><csid>...</csid>...</csids>
+     *
+     * @param csids the CSIDs of the records to read
+     * @return the payload
+     */
+    static public byte[] createBulkReadPayload(List<String> csids) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('<').append(CollectionSpaceClient.BULK_READ_CSIDS_ELEMENT).append('>');
+        for (String csid : csids) {
+            sb.append('<').append(CollectionSpaceClient.BULK_READ_CSID_ELEMENT).append('>');
+            sb.append(csid.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+            sb.append("</").append(CollectionSpaceClient.BULK_READ_CSID_ELEMENT).append('>');
+        }
+        sb.append("</").append(CollectionSpaceClient.BULK_READ_CSIDS_ELEMENT).append('>');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Extract part.
      *
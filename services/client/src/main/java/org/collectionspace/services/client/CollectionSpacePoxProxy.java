@@ -32,11 +32,22 @@ public interface CollectionSpacePoxProxy<LT extends AbstractCommonList> extends
 			@PathParam("csid") String csid,
 			@QueryParam(WorkflowClient.WORKFLOWSTATE_QUERY) String workflowState);
 
+	// (R)ead several records at once; see CollectionSpaceClient.BULK_READ_PATH
+	@POST
+	@Path("/" + CollectionSpaceClient.BULK_READ_PATH)
+	Response bulkRead(byte[] payload,
+			@QueryParam(WorkflowClient.WORKFLOWSTATE_QUERY) String workflowState);
+
 	// (U)pdate
 	@PUT
 	@Path("/{csid}")
 	Response update(@PathParam("csid") String csid, byte[] payload);
 
+	// (U)pdate the workflow state of several records at once; see AbstractMultiPartCollectionSpaceResourceImpl.bulkUpdateWorkflowWithTransition
+	@POST
+	@Path(WorkflowClient.SERVICE_PATH + "/" + "{transition}")
+	Response bulkUpdateWorkflowWithTransition(@PathParam("transition") String transition, byte[] payload);
+
 	// (L)ist non-deleted items
 	@GET
 	@Produces({ "application/xml" })
@@ -0,0 +1,223 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HTTP connection pool shared by all of the service clients in a JVM.  Clients -including the ones created
+ * for each Shared Authority Server (SAS) request- each get their own HttpClient, with their own credentials, but
+ * they all lease their connections from this pool, so connections to the same server are kept alive and reused
+ * rather than opened (and authenticated) again for every client.
+ *
+ * The pool is configured with these system properties:
+ *
+ *   cspace.http.maxConnections            - the most open connections, to all servers (default 100)
+ *   cspace.http.maxConnectionsPerRoute    - the most open connections to one server (default 20)
+ *   cspace.http.connectTimeout            - milliseconds to wait for a new connection to open (default 10000)
+ *   cspace.http.socketTimeout             - milliseconds to wait for data from the server (default 300000)
+ *   cspace.http.connectionRequestTimeout  - milliseconds to wait for a free connection from the pool (default 60000)
+ *   cspace.http.keepAlive                 - milliseconds to keep an idle connection open, when the server doesn't say (default 30000)
+ *   cspace.http.compression               - if true, ask for gzip/deflate compressed responses (default false)
+ */
+public class ServiceClientConnectionPool {
+    static final Logger logger = LoggerFactory.getLogger(ServiceClientConnectionPool.class);
+
+    public static final String MAX_CONNECTIONS_PROPERTY = "cspace.http.maxConnections";
+    public static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "cspace.http.maxConnectionsPerRoute";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "cspace.http.connectTimeout";
+    public static final String SOCKET_TIMEOUT_PROPERTY = "cspace.http.socketTimeout";
+    public static final String CONNECTION_REQUEST_TIMEOUT_PROPERTY = "cspace.http.connectionRequestTimeout";
+    public static final String KEEP_ALIVE_PROPERTY = "cspace.http.keepAlive";
+    public static final String COMPRESSION_PROPERTY = "cspace.http.compression";
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 5 * 60 * 1000;
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 60 * 1000;
+    public static final int DEFAULT_KEEP_ALIVE = 30 * 1000;
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static MultiThreadedHttpConnectionManager legacyConnectionManager;
+    private static final AtomicLong connectionsOpened = new AtomicLong();
+
+    /*
+     * Counts the connections the pool opens, so we can tell how well they're being reused.
+     */
+    private static class CountingConnectionFactory extends ManagedHttpClientConnectionFactory {
+        @Override
+        public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+            connectionsOpened.incrementAndGet();
+            return super.create(route, config);
+        }
+    }
+
+    /*
+     * Uses the server's Keep-Alive timeout if it sends one; otherwise, our configured keep-alive time.
+     */
+    private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final long defaultKeepAlive;
+
+        KeepAliveStrategy(long defaultKeepAlive) {
+            this.defaultKeepAlive = defaultKeepAlive;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long result = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return result > 0 ? result : defaultKeepAlive;
+        }
+    }
+
+    private ServiceClientConnectionPool() {
+        // All static
+    }
+
+    /**
+     * @return the shared pooling connection manager, creating it on first use
+     */
+    public static synchronized PoolingHttpClientConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                    .build();
+            connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, new CountingConnectionFactory());
+            connectionManager.setMaxTotal(getIntProperty(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+            connectionManager.setDefaultMaxPerRoute(getIntProperty(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Created the service client connection pool with maxTotal=%d and maxPerRoute=%d",
+                        connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute()));
+            }
+        }
+
+        return connectionManager;
+    }
+
+    /**
+     * Returns a builder for an HttpClient that uses the shared pool.  Closing the built client doesn't close the pool.
+     */
+    public static HttpClientBuilder newHttpClientBuilder() {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getIntProperty(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT))
+                .setSocketTimeout(getIntProperty(SOCKET_TIMEOUT_PROPERTY, DEFAULT_SOCKET_TIMEOUT))
+                .setConnectionRequestTimeout(getIntProperty(CONNECTION_REQUEST_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_REQUEST_TIMEOUT))
+                .build();
+
+        HttpClientBuilder result = HttpClientBuilder.create()
+                .setConnectionManager(getConnectionManager())
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new KeepAliveStrategy(getIntProperty(KEEP_ALIVE_PROPERTY, DEFAULT_KEEP_ALIVE)))
+                .disableCookieManagement(); // The clients share connections, so they mustn't share session cookies.
+        if (Boolean.getBoolean(COMPRESSION_PROPERTY) == false) {
+            result.disableContentCompression();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the shared connection manager for the (older) commons-httpclient clients, creating it on first use
+     */
+    public static synchronized MultiThreadedHttpConnectionManager getLegacyConnectionManager() {
+        if (legacyConnectionManager == null) {
+            legacyConnectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = legacyConnectionManager.getParams();
+            params.setMaxTotalConnections(getIntProperty(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+            params.setDefaultMaxConnectionsPerHost(getIntProperty(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+            params.setConnectionTimeout(getIntProperty(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT));
+            params.setSoTimeout(getIntProperty(SOCKET_TIMEOUT_PROPERTY, DEFAULT_SOCKET_TIMEOUT));
+        }
+
+        return legacyConnectionManager;
+    }
+
+    /**
+     * @return the number of connections the pool has opened.  Compared with the number of requests made,
+     * this shows how well connections are being reused.
+     */
+    public static long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return the pool's current number of leased, available, and pending connections
+     */
+    public static PoolStats getStats() {
+        return getConnectionManager().getTotalStats();
+    }
+
+    /**
+     * Closes all of the pool's connections.  The pools are recreated if they're used again.  The services
+     * call this when they're undeployed; a standalone client should call it when it's done.
+     */
+    public static synchronized void shutdown() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        if (legacyConnectionManager != null) {
+            legacyConnectionManager.shutdown();
+            legacyConnectionManager = null;
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        int result = defaultValue;
+        String value = System.getProperty(name);
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                result = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+                        value, name, defaultValue));
+            }
+        }
+        return result;
+    }
+}
@@ -39,6 +39,8 @@ public class IndexClient extends AbstractCommonListPoxServiceClientImpl<IndexPro
 	public static final String INDEX_ID_PARAM = "indexid";
 	public static final String FULLTEXT_ID = "fulltext";
 	public static final String ELASTICSEARCH_ID = "elasticsearch";
+	public static final String DOCTYPE_QP = "doctype"; // comma-separated doctypes to reindex, instead of all of them
+	public static final String CSID_QP = "csid"; // comma-separated CSIDs of the records to reindex, instead of all of them
 	public static final String DEFAULT_REINDEX_QUERY = "SELECT ecm:uuid, ecm:primaryType FROM Document"
             + " WHERE ecm:isProxy = 0"
             + " ORDER BY ecm:uuid";
@@ -260,6 +260,73 @@ public class RefNameUtils {
     	return result;
     }
 
+    /**
+     * Returns the part of a shortIdentifier-based authority term refName that identifies the
+     * term, i.e. the refName without its display name suffix.  For example:
+     * urn:cspace:org.collectionspace.demo:vocabulary:name(Entry Methods):item:name(Loan)'Loan'
+     * yields
+     * urn:cspace:org.collectionspace.demo:vocabulary:name(Entry Methods):item:name(Loan)
+     *
+     * This is meant for hot paths like refName resolution caches.  It scans the refName once,
+     * without regular expressions or splitting, and only allocates a new string when there is
+     * a display name to strip.
+     *
+     * @param refName
+     * @return the term key, or null if the refName is not a name-based authority term refName
+     */
+    public static String getAuthorityTermKey(String refName) {
+    	if (refName == null || !refName.startsWith(URN_CSPACE_PREFIX)) {
+    		return null;
+    	}
+    	int domainEnd = refName.indexOf(':', URN_PREFIX_LEN);
+    	if (domainEnd <= URN_PREFIX_LEN) {
+    		return null;
+    	}
+    	int resourceEnd = refName.indexOf(':', domainEnd + 1);
+    	if (resourceEnd <= domainEnd + 1) {
+    		return null;
+    	}
+    	int authorityEnd = refName.indexOf(':', resourceEnd + 1);
+    	if (authorityEnd < 0 || !isNameSpecifier(refName, resourceEnd + 1, authorityEnd)) {
+    		return null;
+    	}
+    	int itemsEnd = refName.indexOf(':', authorityEnd + 1);
+    	if (itemsEnd < 0 || !isItemsToken(refName, authorityEnd + 1, itemsEnd)) {
+    		return null;
+    	}
+    	int itemStart = itemsEnd + 1;
+    	if (!refName.startsWith(NAME_SPECIFIER + "(", itemStart)) {
+    		return null;
+    	}
+    	int itemEnd = refName.indexOf(')', itemStart + NAME_SPECIFIER.length() + 1);
+    	if (itemEnd <= itemStart + NAME_SPECIFIER.length() + 1) {
+    		return null; // no closing paren or an empty name
+    	}
+    	return itemEnd + 1 == refName.length() ? refName : refName.substring(0, itemEnd + 1);
+    }
+
+    /*
+     * True if refName[start, end) is a non-empty "name(...)" specifier
+     */
+    private static boolean isNameSpecifier(String refName, int start, int end) {
+    	int nameStart = start + NAME_SPECIFIER.length() + 1;
+    	if (!refName.startsWith(NAME_SPECIFIER + "(", start) || nameStart >= end) {
+    		return false;
+    	}
+    	int close = refName.indexOf(')', nameStart);
+    	return close > nameStart && close < end;
+    }
+
+    /*
+     * True if refName[start, end) is one of the tokens in ITEMS_REGEX
+     */
+    private static boolean isItemsToken(String refName, int start, int end) {
+    	int length = end - start;
+    	return (length == 4 && refName.startsWith("item", start))
+    			|| (length == 6 && refName.startsWith("person", start))
+    			|| (length == 12 && refName.startsWith("organization", start));
+    }
+
     /*
      * Returns the name / shortIdentifier value of an authority item in a refName
      */
@@ -22,6 +22,7 @@
 package org.collectionspace.services.common.api.test;
 
 import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.services.common.api.RefNameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -171,4 +172,35 @@ public class RefNameTest {
                 "Display name from item " + itemWithDisplayNameApostrophe.displayName
                 + "does not match expected value " + DISPLAY_NAME_WITH_APOSTROPHE);
     }
+
+    /**
+     * Test the term key used to cache refName resolution: the refName without
+     * its display name, or null for anything but a name-based term refName.
+     */
+    @Test
+    public void testAuthorityTermKey() {
+        testBanner("testAuthorityTermKey");
+        String key = "urn:cspace:collectionspace.org:Loansin:name(shortID):item:name(itemShortID)";
+        Assert.assertEquals(RefNameUtils.getAuthorityTermKey(AUTHORITY_ITEM_EXAMPLE), key);
+        Assert.assertSame(RefNameUtils.getAuthorityTermKey(key), key, "A refName without a display name is its own key");
+
+        RefName.AuthorityItem itemWithDisplayNameColons =
+                RefName.buildAuthorityItem(AUTHORITY_EXAMPLE2, ITEM_SHORT_IDENTIFIER, DISPLAY_NAME_WITH_COLONS);
+        Assert.assertEquals(RefNameUtils.getAuthorityTermKey(itemWithDisplayNameColons.toString()), key);
+        RefName.AuthorityItem itemWithDisplayNameParens =
+                RefName.buildAuthorityItem(AUTHORITY_EXAMPLE2, ITEM_SHORT_IDENTIFIER, DISPLAY_NAME_WITH_PARENS);
+        Assert.assertEquals(RefNameUtils.getAuthorityTermKey(itemWithDisplayNameParens.toString()), key);
+
+        Assert.assertEquals(RefNameUtils.getAuthorityTermKey(
+                "urn:cspace:core.collectionspace.org:personauthorities:name(person):person:name(JohnDoe)'John Doe'"),
+                "urn:cspace:core.collectionspace.org:personauthorities:name(person):person:name(JohnDoe)");
+
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey(null));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey(AUTHORITY_EXAMPLE));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey("urn:cspace:collectionspace.org:Loansin:name(shortID):items:name(itemShortID)"));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey("urn:cspace:collectionspace.org:Loansin:name(shortID):item:id(1234)"));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey("urn:cspace:collectionspace.org:Loansin:id(1234):item:name(itemShortID)"));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey("urn:cspace:collectionspace.org:Loansin:name(shortID):item:name()"));
+        Assert.assertNull(RefNameUtils.getAuthorityTermKey("urn:cspace:collectionspace.org:Loansin:name(shortID):item:name(itemShortID"));
+    }
 }
@@ -26,17 +26,26 @@
  */
 package org.collectionspace.services.common;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.client.PayloadOutputPart;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
@@ -46,13 +55,22 @@ import org.collectionspace.services.common.context.MultipartServiceContextFactor
 import org.collectionspace.services.common.context.MultipartServiceContextImpl;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.context.ServiceContextFactory;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.document.BadRequestException;
 import org.collectionspace.services.common.document.DocumentHandler;
+import org.collectionspace.services.common.document.TransactionException;
+import org.collectionspace.services.common.query.QueryManager;
+import org.collectionspace.services.common.repository.RepositoryClient;
 import org.collectionspace.services.common.workflow.service.nuxeo.WorkflowDocumentModelHandler;
 import org.collectionspace.services.lifecycle.Lifecycle;
 import org.collectionspace.services.lifecycle.TransitionDef;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
 import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.collectionspace.services.workflow.WorkflowCommon;
 import org.dom4j.DocumentException;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -311,4 +329,157 @@ public abstract class AbstractMultiPartCollectionSpaceResourceImpl extends Abstr
         return result.getBytes();
     }
     
+
+    //======================= BULK WORKFLOW TRANSITION ====================================================
+    /**
+     * Follows a workflow transition on several records with one request -e.g., POST /intakes/workflow/delete.  The payload lists
+     * the CSIDs of the records -e.g., <csids><csid>...</csid></csids>.  If there's no payload, the records are the ones matched by
+     * the "as" (advanced search) query parameter instead.  The response has an entry, with a status, for every record
+     * -see BulkWorkflowResult.
+     */
+    @POST
+    @Path(WorkflowClient.SERVICE_PATH + "/" + "{transition}")
+    public Response bulkUpdateWorkflowWithTransition(
+    		@Context UriInfo uriInfo,
+    		@PathParam("transition") String transition,
+    		String xmlPayload) {
+    	uriInfo = new UriInfoWrapper(uriInfo);
+    	BulkWorkflowResult result = new BulkWorkflowResult(transition);
+
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
+            List<String> csids;
+            if (Tools.notBlank(xmlPayload)) {
+                csids = BulkWorkflowResult.parseCsids(xmlPayload);
+            } else {
+                csids = findBulkWorkflowCsids(ctx, uriInfo.getQueryParameters().getFirst(IQueryManager.SEARCH_TYPE_KEYWORDS_AS));
+            }
+            bulkUpdateWorkflowWithTransition(ctx, uriInfo, csids, transition, result);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.UPDATE_FAILED + WorkflowClient.SERVICE_PAYLOAD_NAME);
+        }
+
+        return Response.ok(result.getBytes()).build();
+    }
+
+    /**
+     * Finds the CSIDs of the records matched by an advanced search, without loading the records.
+     *
+     * @throws BadRequestException if there's no advanced search, or it matches more records than may be transitioned at once
+     */
+    private List<String> findBulkWorkflowCsids(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String advancedSearch) throws Exception {
+        if (Tools.isBlank(advancedSearch)) {
+            throw new BadRequestException(String.format("A bulk workflow transition needs either a payload that lists CSIDs, or an '%s' query parameter.",
+                    IQueryManager.SEARCH_TYPE_KEYWORDS_AS));
+        }
+
+        String query = "SELECT " + NXQL.ECM_NAME + " FROM " + NuxeoUtils.getTenantQualifiedDocType(ctx)
+                + " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NXQL.escapeString(ctx.getTenantId())
+                + " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0"
+                + " AND (" + QueryManager.createWhereClauseFromAdvancedSearch(advancedSearch) + ")";
+        int maxCsids = BulkWorkflowResult.getMaxCsids();
+        List<String> csids = new ArrayList<String>();
+
+        RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = getRepositoryClient(ctx);
+        CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx);
+        try {
+            IterableQueryResult queryResult = repoSession.queryAndFetch(query, NXQL.NXQL);
+            try {
+                for (Map<String, Serializable> row : queryResult) {
+                    if (csids.size() == maxCsids) {
+                        throw new BadRequestException(String.format("A bulk workflow transition may change at most %d records, but the query '%s' matches more.",
+                                maxCsids, advancedSearch));
+                    }
+                    csids.add((String) row.get(NXQL.ECM_NAME));
+                }
+            } finally {
+                queryResult.close();
+            }
+        } finally {
+            repoClient.releaseRepositorySession(ctx, repoSession);
+        }
+
+        return csids;
+    }
+
+    /**
+     * Follows a workflow transition on each of the records, a chunk of BulkWorkflowResult.getChunkSize() records per transaction.  A
+     * failed transition is recorded in the result instead of failing the whole request.  If the failure leaves the transaction marked
+     * for rollback, the records already transitioned in the chunk are transitioned again in a new transaction.
+     */
+    protected void bulkUpdateWorkflowWithTransition(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            UriInfo uriInfo,
+            List<String> csids,
+            String transition,
+            BulkWorkflowResult result) throws Exception {
+        RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = getRepositoryClient(ctx);
+        int chunkSize = BulkWorkflowResult.getChunkSize();
+        LinkedList<String> pending = new LinkedList<String>(csids);
+
+        while (pending.isEmpty() == false) {
+            Map<String, String> transitioned = new LinkedHashMap<String, String>(); // CSID to new workflow state
+            boolean rolledBack = false;
+
+            CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx); // starts the chunk's transaction
+            try {
+                while (pending.isEmpty() == false && transitioned.size() < chunkSize) {
+                    String csid = pending.removeFirst();
+                    if (BulkReadResult.isValidCsid(csid) == false) {
+                        result.addError(csid, Response.Status.BAD_REQUEST.getStatusCode(),
+                                ServiceMessages.UPDATE_FAILED + ServiceMessages.MISSING_INVALID_CSID + csid);
+                        continue;
+                    }
+
+                    try {
+                        PoxPayloadOut output = updateWorkflowWithTransition(ctx, uriInfo, csid, transition);
+                        transitioned.put(csid, getWorkflowState(output));
+                    } catch (CSWebApplicationException e) {
+                        Response response = e.getResponse();
+                        Object entity = response.getEntity();
+                        result.addError(csid, response.getStatus(), entity != null ? entity.toString() : null);
+                        if (TransactionHelper.isTransactionMarkedRollback()) {
+                            rolledBack = true;
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                try {
+                    repoClient.releaseRepositorySession(ctx, repoSession); // commits the chunk's transaction
+                } catch (TransactionException e) {
+                    if (rolledBack == false) {
+                        for (String csid : transitioned.keySet()) {
+                            result.addError(csid, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                                    ServiceMessages.UPDATE_FAILED + e.getMessage());
+                        }
+                        transitioned.clear();
+                    }
+                }
+            }
+
+            if (rolledBack == true) {
+                pending.addAll(0, transitioned.keySet()); // retry them without the record that failed
+            } else {
+                for (Map.Entry<String, String> entry : transitioned.entrySet()) {
+                    result.addTransitioned(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Bulk workflow transition of '%s' records: %s", ctx.getServiceName(), result));
+        }
+    }
+
+    private String getWorkflowState(PoxPayloadOut workflowOutput) {
+        String result = null;
+
+        PayloadOutputPart part = workflowOutput != null ? workflowOutput.getPart(WorkflowClient.SERVICE_COMMONPART_NAME) : null;
+        if (part != null && part.getBody() instanceof WorkflowCommon) {
+            result = ((WorkflowCommon) part.getBody()).getCurrentLifeCycleState();
+        }
+
+        return result;
+    }
+
 }
@@ -0,0 +1,399 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.common;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BackgroundTaskExecutor is the shared, bounded executor for fire-and-forget work such as
+ * blob file cleanup and media derivative work.  It is a singleton.
+ *
+ * The number of worker threads and the number of tasks that may be pending (queued,
+ * running, or waiting for a retry) are bounded.  When the bound is reached, submitters
+ * wait up to the configured submit timeout for capacity -this is the back-pressure on
+ * bulk ingestion- and the task is rejected after that.
+ *
+ * Sizes can be configured with these system properties:
+ *   org.collectionspace.services.background.threads
+ *   org.collectionspace.services.background.queue
+ *   org.collectionspace.services.background.submitTimeoutSeconds
+ *   org.collectionspace.services.background.drainTimeoutSeconds
+ */
+public class BackgroundTaskExecutor {
+	final static Logger logger = LoggerFactory.getLogger(BackgroundTaskExecutor.class);
+
+	public static final String THREADS_PROPERTY = "org.collectionspace.services.background.threads";
+	public static final String QUEUE_PROPERTY = "org.collectionspace.services.background.queue";
+	public static final String SUBMIT_TIMEOUT_PROPERTY = "org.collectionspace.services.background.submitTimeoutSeconds";
+	public static final String DRAIN_TIMEOUT_PROPERTY = "org.collectionspace.services.background.drainTimeoutSeconds";
+
+	public static final int DEFAULT_THREADS = 4;
+	public static final int DEFAULT_QUEUE = 1000;
+	public static final int DEFAULT_SUBMIT_TIMEOUT_SECONDS = 30;
+	public static final int DEFAULT_DRAIN_TIMEOUT_SECONDS = 60;
+
+	private static final String THREAD_NAME_PREFIX = "cspace-background-";
+
+	/**
+	 * A task that can ask to be run again later, e.g. to retry a file deletion, without
+	 * holding a worker thread while it waits.
+	 */
+	public interface RetryableTask {
+		/**
+		 * @param attempt the 1-based attempt number
+		 * @return true if the task is done, false to be retried after the retry delay
+		 */
+		public boolean attempt(int attempt) throws Exception;
+
+		/**
+		 * Called once if the task was not done after its last attempt or threw an exception
+		 */
+		public void failed(Throwable t);
+	}
+
+	/**
+	 * volatile is used here to assume about ordering (post JDK 1.5)
+	 */
+	private static volatile BackgroundTaskExecutor instance = null;
+	private static volatile boolean released = false;
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final Semaphore capacity;
+	private final int queueSize;
+	private final long submitTimeoutSeconds;
+	private final long drainTimeoutSeconds;
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong totalLatencyMillis = new AtomicLong();
+	private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+	private BackgroundTaskExecutor(int threads, int queueSize, long submitTimeoutSeconds, long drainTimeoutSeconds) {
+		this.queueSize = queueSize;
+		this.submitTimeoutSeconds = submitTimeoutSeconds;
+		this.drainTimeoutSeconds = drainTimeoutSeconds;
+		this.capacity = new Semaphore(queueSize);
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(true);
+		executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * @return the shared executor, creating it on first use
+	 * @throws RejectedExecutionException if the executor has been released, i.e., the services are shutting down
+	 */
+	public static BackgroundTaskExecutor getInstance() {
+		if (instance == null) {
+			synchronized (BackgroundTaskExecutor.class) {
+				if (released) {
+					throw new RejectedExecutionException("The background task executor has been released.");
+				}
+				if (instance == null) {
+					instance = new BackgroundTaskExecutor(
+							getIntProperty(THREADS_PROPERTY, DEFAULT_THREADS),
+							getIntProperty(QUEUE_PROPERTY, DEFAULT_QUEUE),
+							getIntProperty(SUBMIT_TIMEOUT_PROPERTY, DEFAULT_SUBMIT_TIMEOUT_SECONDS),
+							getIntProperty(DRAIN_TIMEOUT_PROPERTY, DEFAULT_DRAIN_TIMEOUT_SECONDS));
+					logger.info(String.format("Started background task executor with %d threads and a queue of %d tasks.",
+							instance.executor.getCorePoolSize(), instance.queueSize));
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the shared executor if it has been started and not released, otherwise null.  Unlike
+	 * getInstance(), this never starts one, e.g. just to read its statistics.
+	 */
+	public static BackgroundTaskExecutor getInstanceIfStarted() {
+		return instance;
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		int result = defaultValue;
+		String value = System.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, name, defaultValue));
+			}
+		}
+		return result > 0 ? result : defaultValue;
+	}
+
+	/**
+	 * submit runs the given task in the background
+	 * @param name a short description of the task used for logging
+	 * @param task
+	 * @return the task's future
+	 * @throws RejectedExecutionException if the executor is shut down or stays full for longer than the submit timeout
+	 */
+	public Future<?> submit(String name, Runnable task) {
+		return submit(name, runOnce(name, task), 1, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * schedule runs the given task in the background after the given delay.  While it waits, the
+	 * task counts as pending, but does not hold a thread.
+	 * @param name a short description of the task used for logging
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return the task's future
+	 * @throws RejectedExecutionException if the executor is shut down or stays full for longer than the submit timeout
+	 */
+	public Future<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+		return start(name, runOnce(name, task), 1, 0, delay, unit);
+	}
+
+	private static RetryableTask runOnce(final String name, final Runnable task) {
+		return new RetryableTask() {
+			@Override
+			public boolean attempt(int attempt) {
+				task.run();
+				return true;
+			}
+
+			@Override
+			public void failed(Throwable t) {
+				logger.error(String.format("Background task '%s' failed.", name), t);
+			}
+		};
+	}
+
+	/**
+	 * submit runs the given task in the background, retrying it up to maxAttempts times
+	 * with the given delay between attempts.  A task waiting for a retry keeps its place
+	 * in the queue but does not hold a thread.
+	 * @param name a short description of the task used for logging
+	 * @param task
+	 * @param maxAttempts
+	 * @param retryDelay
+	 * @param unit
+	 * @return the future of the first attempt
+	 * @throws RejectedExecutionException if the executor is shut down or stays full for longer than the submit timeout
+	 */
+	public Future<?> submit(String name, RetryableTask task, int maxAttempts, long retryDelay, TimeUnit unit) {
+		return start(name, task, maxAttempts, retryDelay, 0, unit);
+	}
+
+	private Future<?> start(String name, RetryableTask task, int maxAttempts, long retryDelay, long delay, TimeUnit unit) {
+		if (executor.isShutdown()) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException(String.format("Background task '%s' rejected: the executor is shut down.", name));
+		}
+
+		boolean acquired = false;
+		try {
+			acquired = capacity.tryAcquire(submitTimeoutSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (acquired == false) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException(String.format("Background task '%s' rejected: %d tasks are already pending.",
+					name, pending.get()));
+		}
+
+		pending.incrementAndGet();
+		submitted.incrementAndGet();
+		try {
+			Attempt attempt = new Attempt(name, task, maxAttempts, retryDelay, delay, unit);
+			return delay > 0 ? executor.schedule(attempt, delay, unit) : executor.submit(attempt);
+		} catch (RejectedExecutionException e) {
+			done();
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	private class Attempt implements Runnable {
+		private final String name;
+		private final RetryableTask task;
+		private final int maxAttempts;
+		private final long retryDelay;
+		private final TimeUnit unit;
+		private final long submittedAt;  // when the task was due to run, so a scheduled task's delay isn't counted as latency
+		private int attempt = 0;
+
+		Attempt(String name, RetryableTask task, int maxAttempts, long retryDelay, long delay, TimeUnit unit) {
+			this.name = name;
+			this.task = task;
+			this.maxAttempts = maxAttempts;
+			this.retryDelay = retryDelay;
+			this.unit = unit;
+			this.submittedAt = System.currentTimeMillis() + unit.toMillis(delay);
+		}
+
+		@Override
+		public void run() {
+			attempt++;
+			boolean finished = true;
+			try {
+				if (task.attempt(attempt)) {
+					completed.incrementAndGet();
+				} else if (attempt < maxAttempts && !executor.isTerminating()) {
+					finished = false;
+					executor.schedule(this, retryDelay, unit);
+				} else {
+					fail(null);
+				}
+			} catch (Throwable t) {
+				finished = true;
+				fail(t);
+			} finally {
+				if (finished) {
+					recordLatency(System.currentTimeMillis() - submittedAt);
+					done();
+				}
+			}
+		}
+
+		private void fail(Throwable t) {
+			failed.incrementAndGet();
+			try {
+				task.failed(t);
+			} catch (Throwable e) {
+				logger.error(String.format("Background task '%s' failed while handling its failure.", name), e);
+			}
+		}
+	}
+
+	private void done() {
+		pending.decrementAndGet();
+		capacity.release();
+	}
+
+	private void recordLatency(long millis) {
+		totalLatencyMillis.addAndGet(millis);
+		long max = maxLatencyMillis.get();
+		while (millis > max && !maxLatencyMillis.compareAndSet(max, millis)) {
+			max = maxLatencyMillis.get();
+		}
+	}
+
+	/**
+	 * shutdown stops accepting tasks and waits up to the drain timeout for the pending
+	 * ones (including scheduled retries) to finish
+	 * @return true if all pending tasks finished
+	 */
+	public boolean shutdown() {
+		executor.shutdown();
+		boolean result = false;
+		try {
+			result = executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (result == false) {
+			logger.warn(String.format("Background task executor did not drain within %d seconds; abandoning %d pending tasks.",
+					drainTimeoutSeconds, pending.get()));
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * release shuts down the shared executor, if one was started.  It is final: later calls
+	 * to getInstance() are rejected rather than starting a new executor that nothing would
+	 * shut down.
+	 */
+	public static void release() {
+		BackgroundTaskExecutor executor = null;
+		synchronized (BackgroundTaskExecutor.class) {
+			released = true;
+			executor = instance;
+			instance = null;
+		}
+		if (executor != null) {
+			executor.shutdown();
+			logger.info("Stopped background task executor: " + executor.toString());
+		}
+	}
+
+	/**
+	 * @return the number of tasks queued, running or waiting for a retry
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the mean time from submission to completion (including retries) of finished tasks
+	 */
+	public long getMeanLatencyMillis() {
+		long finished = completed.get() + failed.get();
+		return finished > 0 ? totalLatencyMillis.get() / finished : 0;
+	}
+
+	public long getMaxLatencyMillis() {
+		return maxLatencyMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BackgroundTaskExecutor [pending=%d, submitted=%d, completed=%d, failed=%d, rejected=%d, meanLatencyMillis=%d, maxLatencyMillis=%d]",
+				getPendingCount(), getSubmittedCount(), getCompletedCount(), getFailedCount(), getRejectedCount(),
+				getMeanLatencyMillis(), getMaxLatencyMillis());
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.document.BadRequestException;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BulkReadResult holds the outcome of a bulk read -i.e., a POST of a list of CSIDs to a service's
+ * CollectionSpaceClient.BULK_READ_PATH subresource.  Every requested CSID gets an entry, in the order
+ * requested, with either the record's payload or the status and message of the failed read, so a missing
+ * record doesn't fail the whole request:
+ *
+ *   <bulk-read-results>
+ *     <totalItems>2</totalItems>
+ *     <itemsFound>1</itemsFound>
+ *     <result><csid>...</csid><status>200</status><document name="collectionobjects">...</document></result>
+ *     <result><csid>...</csid><status>404</status><message>...</message></result>
+ *   </bulk-read-results>
+ *
+ * A record's status is 200 when it was read, 400 for a malformed CSID, 404 when it doesn't exist (or is
+ * filtered out, e.g. by wf_deleted), or the status of any other failure to read it.  There is no per-record
+ * 403: like any other request, a bulk read is authorized once, as a read of the whole resource, by the
+ * SecurityInterceptor, so a caller who may not read the resource gets a 403 for the request.
+ *
+ * The number of CSIDs in one request is limited by the system property
+ * org.collectionspace.services.bulkRead.maxCsids (100 by default).
+ */
+public class BulkReadResult {
+	final static Logger logger = LoggerFactory.getLogger(BulkReadResult.class);
+
+	public static final String MAX_CSIDS_PROPERTY = "org.collectionspace.services.bulkRead.maxCsids";
+	public static final int DEFAULT_MAX_CSIDS = 100;
+
+	public static final String RESULTS_ELEMENT = "bulk-read-results";
+
+	// CSIDs are UUIDs (or, for some older records, similar hex and dash strings)
+	private static final Pattern CSID_PATTERN = Pattern.compile("[0-9A-Za-z\\-]+");
+
+	private static class Entry {
+		final int status;
+		final String message;
+		final PoxPayloadOut payload;
+
+		Entry(int status, String message, PoxPayloadOut payload) {
+			this.status = status;
+			this.message = message;
+			this.payload = payload;
+		}
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * @return the most CSIDs that may be read with one request
+	 */
+	public static int getMaxCsids() {
+		int result = DEFAULT_MAX_CSIDS;
+		String value = System.getProperty(MAX_CSIDS_PROPERTY);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, MAX_CSIDS_PROPERTY, DEFAULT_MAX_CSIDS));
+			}
+		}
+		return result > 0 ? result : DEFAULT_MAX_CSIDS;
+	}
+
+	/**
+	 * Parses the payload of a bulk read request -i.e., <csids><csid>...</csid>...</csids>
+	 *
+	 * @return the requested CSIDs, without duplicates, in the order requested
+	 * @throws BadRequestException if the payload can't be parsed, or lists no CSIDs or too many of them
+	 */
+	public static List<String> parseCsids(String xmlPayload) throws BadRequestException {
+		return parseCsids(xmlPayload, "bulk read", getMaxCsids());
+	}
+
+	/**
+	 * Parses a payload that lists CSIDs -i.e., <csids><csid>...</csid>...</csids>- for a request of the given kind.
+	 *
+	 * @param requestName the kind of request, for error messages -e.g., "bulk read"
+	 * @param maxCsids the most CSIDs the request may list
+	 * @return the requested CSIDs, without duplicates, in the order requested
+	 * @throws BadRequestException if the payload can't be parsed, or lists no CSIDs or too many of them
+	 */
+	public static List<String> parseCsids(String xmlPayload, String requestName, int maxCsids) throws BadRequestException {
+		if (xmlPayload == null || xmlPayload.trim().isEmpty()) {
+			throw new BadRequestException(String.format("The %s request has no payload.", requestName));
+		}
+
+		Document document;
+		try {
+			document = DocumentHelper.parseText(xmlPayload);
+		} catch (org.dom4j.DocumentException e) {
+			throw new BadRequestException(String.format("The %s payload could not be parsed: %s", requestName, e.getMessage()));
+		}
+
+		Set<String> csids = new LinkedHashSet<String>();
+		for (Object child : document.getRootElement().elements(CollectionSpaceClient.BULK_READ_CSID_ELEMENT)) {
+			String csid = ((Element) child).getTextTrim();
+			if (!csid.isEmpty()) {
+				csids.add(csid);
+			}
+		}
+
+		if (csids.isEmpty()) {
+			throw new BadRequestException(String.format("The %s payload lists no <%s> elements.",
+					requestName, CollectionSpaceClient.BULK_READ_CSID_ELEMENT));
+		}
+		if (csids.size() > maxCsids) {
+			throw new BadRequestException(String.format("A %s request may list at most %d CSIDs, but %d were requested.",
+					requestName, maxCsids, csids.size()));
+		}
+
+		return new ArrayList<String>(csids);
+	}
+
+	/**
+	 * @return true if the value has the form of a CSID, so it can safely be used in a query
+	 */
+	public static boolean isValidCsid(String csid) {
+		return csid != null && CSID_PATTERN.matcher(csid).matches();
+	}
+
+	public void addPayload(String csid, PoxPayloadOut payload) {
+		entries.put(csid, new Entry(200, null, payload));
+	}
+
+	public void addError(String csid, int status, String message) {
+		entries.put(csid, new Entry(status, message, null));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getFoundCount() {
+		int result = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.payload != null) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the status of the read of a CSID, or 0 if it wasn't requested
+	 */
+	public int getStatus(String csid) {
+		Entry entry = entries.get(csid);
+		return entry != null ? entry.status : 0;
+	}
+
+	public PoxPayloadOut getPayload(String csid) {
+		Entry entry = entries.get(csid);
+		return entry != null ? entry.payload : null;
+	}
+
+	public String toXML() {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append('<').append(RESULTS_ELEMENT).append('>');
+		sb.append("<totalItems>").append(size()).append("</totalItems>");
+		sb.append("<itemsFound>").append(getFoundCount()).append("</itemsFound>");
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+			sb.append("<result><csid>").append(escape(mapEntry.getKey())).append("</csid>");
+			sb.append("<status>").append(entry.status).append("</status>");
+			if (entry.payload != null) {
+				sb.append(stripXmlDeclaration(entry.payload.toXML()));
+			} else if (entry.message != null) {
+				sb.append("<message>").append(escape(entry.message)).append("</message>");
+			}
+			sb.append("</result>");
+		}
+		sb.append("</").append(RESULTS_ELEMENT).append('>');
+		return sb.toString();
+	}
+
+	public byte[] getBytes() {
+		return toXML().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String stripXmlDeclaration(String xml) {
+		if (xml.startsWith("<?xml")) {
+			int end = xml.indexOf("?>");
+			if (end > 0) {
+				return xml.substring(end + 2).trim();
+			}
+		}
+		return xml;
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BulkReadResult [requested=%d, found=%d]", size(), getFoundCount());
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.services.common.document.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BulkWorkflowResult holds the outcome of a bulk workflow transition -i.e., a POST to a service's
+ * workflow/{transition} subresource.  Every record gets an entry, in the order requested, with either
+ * the record's new workflow state or the status and message of the failed transition, so one record that
+ * can't be transitioned doesn't fail the whole request:
+ *
+ *   <bulk-workflow-results>
+ *     <transition>delete</transition>
+ *     <totalItems>2</totalItems>
+ *     <itemsTransitioned>1</itemsTransitioned>
+ *     <result><csid>...</csid><status>200</status><workflowState>deleted</workflowState></result>
+ *     <result><csid>...</csid><status>404</status><message>...</message></result>
+ *   </bulk-workflow-results>
+ *
+ * The records are transitioned in chunks, each committed in its own transaction.  The number of records in one
+ * request is limited by the system property org.collectionspace.services.bulkWorkflow.maxCsids (1000 by default),
+ * and the number in a chunk by org.collectionspace.services.bulkWorkflow.chunkSize (100 by default).
+ */
+public class BulkWorkflowResult {
+	final static Logger logger = LoggerFactory.getLogger(BulkWorkflowResult.class);
+
+	public static final String MAX_CSIDS_PROPERTY = "org.collectionspace.services.bulkWorkflow.maxCsids";
+	public static final int DEFAULT_MAX_CSIDS = 1000;
+
+	public static final String CHUNK_SIZE_PROPERTY = "org.collectionspace.services.bulkWorkflow.chunkSize";
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+	public static final String RESULTS_ELEMENT = "bulk-workflow-results";
+
+	private static class Entry {
+		final int status;
+		final String message;
+		final String workflowState;
+
+		Entry(int status, String message, String workflowState) {
+			this.status = status;
+			this.message = message;
+			this.workflowState = workflowState;
+		}
+	}
+
+	private final String transition;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	public BulkWorkflowResult(String transition) {
+		this.transition = transition;
+	}
+
+	/**
+	 * @return the most records that may be transitioned with one request
+	 */
+	public static int getMaxCsids() {
+		return getIntProperty(MAX_CSIDS_PROPERTY, DEFAULT_MAX_CSIDS);
+	}
+
+	/**
+	 * @return the number of records to transition in each transaction
+	 */
+	public static int getChunkSize() {
+		return getIntProperty(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		int result = defaultValue;
+		String value = System.getProperty(name);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, name, defaultValue));
+			}
+		}
+		return result > 0 ? result : defaultValue;
+	}
+
+	/**
+	 * Parses the payload of a bulk workflow transition request -i.e., <csids><csid>...</csid>...</csids>
+	 *
+	 * @return the requested CSIDs, without duplicates, in the order requested
+	 * @throws BadRequestException if the payload can't be parsed, or lists no CSIDs or too many of them
+	 */
+	public static List<String> parseCsids(String xmlPayload) throws BadRequestException {
+		return BulkReadResult.parseCsids(xmlPayload, "bulk workflow transition", getMaxCsids());
+	}
+
+	public String getTransition() {
+		return transition;
+	}
+
+	public void addTransitioned(String csid, String workflowState) {
+		entries.put(csid, new Entry(200, null, workflowState));
+	}
+
+	public void addError(String csid, int status, String message) {
+		entries.put(csid, new Entry(status, message, null));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getTransitionedCount() {
+		int result = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.status == 200) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the status of the transition of a CSID, or 0 if it wasn't requested
+	 */
+	public int getStatus(String csid) {
+		Entry entry = entries.get(csid);
+		return entry != null ? entry.status : 0;
+	}
+
+	public String getWorkflowState(String csid) {
+		Entry entry = entries.get(csid);
+		return entry != null ? entry.workflowState : null;
+	}
+
+	public String toXML() {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append('<').append(RESULTS_ELEMENT).append('>');
+		sb.append("<transition>").append(escape(transition)).append("</transition>");
+		sb.append("<totalItems>").append(size()).append("</totalItems>");
+		sb.append("<itemsTransitioned>").append(getTransitionedCount()).append("</itemsTransitioned>");
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+			sb.append("<result><csid>").append(escape(mapEntry.getKey())).append("</csid>");
+			sb.append("<status>").append(entry.status).append("</status>");
+			if (entry.workflowState != null) {
+				sb.append("<workflowState>").append(escape(entry.workflowState)).append("</workflowState>");
+			}
+			if (entry.message != null) {
+				sb.append("<message>").append(escape(entry.message)).append("</message>");
+			}
+			sb.append("</result>");
+		}
+		sb.append("</").append(RESULTS_ELEMENT).append('>');
+		return sb.toString();
+	}
+
+	public byte[] getBytes() {
+		return toXML().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BulkWorkflowResult [transition=%s, requested=%d, transitioned=%d]", transition, size(), getTransitionedCount());
+	}
+}
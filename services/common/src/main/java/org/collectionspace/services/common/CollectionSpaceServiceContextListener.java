@@ -7,6 +7,7 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.collectionspace.services.client.ServiceClientConnectionPool;
 import org.collectionspace.services.common.storage.jpa.JpaStorageUtils;
 
 /**
@@ -24,9 +25,12 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
             ServletContext servletContext = event.getServletContext();
             ServiceMain svcMain = ServiceMain.getInstance(servletContext);
 
+            long start = System.nanoTime();
             svcMain.retrieveAllWorkspaceIds();
+            svcMain.getStartupTimings().record("retrieve workspace IDs", start);
 
-            // Upgrade database schema
+            // Upgrade database schema.  This and the following per-repository phases run the
+            // repositories in parallel (see ServiceMain.STARTUP_THREADS_PROPERTY).
             svcMain.upgradeDatabase();
 
             // Create required indexes (aka indices) in tables not associated
@@ -38,6 +42,8 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
             //
             svcMain.firePostInitHandlers();
 
+            svcMain.getStartupTimings().logSummary();
+
         } catch (Throwable e) {
             e.printStackTrace();
             //fail here
@@ -53,7 +59,7 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
         ServiceMain instance = null;
 
         try {
-        	ServiceMain.getInstance();
+        	instance = ServiceMain.getInstance();
         } catch (Throwable t) {
         	// Do nothing.  Error already logged by the Services layer
         } finally {
@@ -63,6 +69,8 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
 	        	System.err.println("ERROR: The CollectionSpace Services layer failed to startup successfully.  Look in the tomcat logs and cspace-services logs for details.");
 	        }
 	        JpaStorageUtils.releaseEntityManagerFactories();
+	        // Close the kept-alive connections of the service clients, e.g., to Shared Authority Servers
+	        ServiceClientConnectionPool.shutdown();
         }
     }
 }
@@ -23,11 +23,15 @@
  */
 package org.collectionspace.services.common;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 
+import org.collectionspace.services.client.CollectionSpaceClient;
 import org.collectionspace.services.client.IClientQueryParams;
 import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.client.PoxPayloadIn;
@@ -42,6 +46,7 @@ import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.document.DocumentHandler;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.query.QueryManager;
+import org.collectionspace.services.common.repository.RepositoryClient;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthRefConfigInfo;
 import org.collectionspace.services.config.ClientType;
@@ -289,6 +294,69 @@ public abstract class NuxeoBasedResource
         return ctx.getOutput();
     }
 
+    /**
+     * Updates a number of records together, for in-process callers such as batch jobs: the records are found with
+     * one query and saved with one call -see RepositoryClient.updateAll().  Each record gets its own service context and
+     * document handler, as it would from update(), so the handlers run as they do for a PUT.  If a subclass overrides
+     * update(String, PoxPayloadIn, ServiceContext), the records are updated one at a time with update() instead, so
+     * the override still runs.
+     *
+     * @param parentCtx a context whose repository session and properties are shared, as with update(), or null
+     * @param updates the update to each record, by CSID
+     */
+    public void updateAll(ServiceContext<PoxPayloadIn, PoxPayloadOut> parentCtx,
+    		ResourceMap resourceMap,
+    		UriInfo uriInfo,
+    		Map<String, PoxPayloadIn> updates) throws Exception {
+        if (overridesUpdate()) {
+            for (Map.Entry<String, PoxPayloadIn> update : updates.entrySet()) {
+                update(parentCtx, resourceMap, uriInfo, update.getKey(), update.getValue());
+            }
+            return;
+        }
+
+        boolean shareSession = parentCtx != null && parentCtx.getCurrentRepositorySession() != null;
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(uriInfo);
+        ctx.setResourceMap(resourceMap);
+        if (shareSession) {
+            ctx.setCurrentRepositorySession(parentCtx.getCurrentRepositorySession());
+            ctx.setProperties(parentCtx.getProperties());
+        }
+
+        List<ServiceContext<PoxPayloadIn, PoxPayloadOut>> recordContexts = new ArrayList<ServiceContext<PoxPayloadIn, PoxPayloadOut>>();
+        Map<String, DocumentHandler> handlersByCsid = new LinkedHashMap<String, DocumentHandler>();
+        try {
+            for (Map.Entry<String, PoxPayloadIn> update : updates.entrySet()) {
+                ServiceContext<PoxPayloadIn, PoxPayloadOut> recordCtx = createServiceContext(update.getValue(), uriInfo);
+                recordCtx.setResourceMap(resourceMap);
+                if (shareSession) {
+                    recordCtx.setCurrentRepositorySession(parentCtx.getCurrentRepositorySession());
+                    recordCtx.setProperties(parentCtx.getProperties());
+                    recordContexts.add(recordCtx);
+                }
+                handlersByCsid.put(update.getKey(), createDocumentHandler(recordCtx));
+            }
+            getRepositoryClient(ctx).updateAll(ctx, handlersByCsid); // releases the session of 'ctx', as update() does
+        } finally {
+            // The records' contexts only borrowed the session, so they give it back without releasing it
+            for (ServiceContext<PoxPayloadIn, PoxPayloadOut> recordCtx : recordContexts) {
+                recordCtx.clearCurrentRepositorySession();
+            }
+        }
+    }
+
+    private boolean overridesUpdate() {
+        for (Class<?> resourceClass = getClass(); resourceClass != NuxeoBasedResource.class; resourceClass = resourceClass.getSuperclass()) {
+            try {
+                resourceClass.getDeclaredMethod("update", String.class, PoxPayloadIn.class, ServiceContext.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Look in the superclass
+            }
+        }
+        return false;
+    }
+
     //======================= DELETE ====================================================
     @DELETE
     @Path("{csid}")
@@ -426,7 +494,108 @@ public abstract class NuxeoBasedResource
         getRepositoryClient(ctx).get(ctx, csid, handler);
         return ctx.getOutput();
     }
-    
+
+    //======================= BULK READ ====================================================
+    /**
+     * Reads several records with one request.  The payload lists the CSIDs to read -e.g., <csids><csid>...</csid></csids>.
+     * The response has an entry, with a status, for every requested CSID -see BulkReadResult.
+     */
+    @POST
+    @Path(CollectionSpaceClient.BULK_READ_PATH)
+    public Response bulkRead(
+            @Context Request request,
+            @Context UriInfo uriInfo,
+            String xmlPayload) {
+    	uriInfo = new UriInfoWrapper(uriInfo);
+        BulkReadResult result = null;
+
+        try {
+            List<String> csids = BulkReadResult.parseCsids(xmlPayload);
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(request, uriInfo);
+            result = bulkRead(ctx, csids, null, new BulkReadHandlerFactory() {
+                @Override
+                public DocumentHandler createDocumentHandler(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) throws Exception {
+                    return NuxeoBasedResource.this.createDocumentHandler(ctx);
+                }
+            });
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.READ_FAILED);
+        }
+
+        return Response.ok(result.getBytes()).build();
+    }
+
+    /**
+     * Creates the document handler used to read each of the records of a bulk read.
+     */
+    protected interface BulkReadHandlerFactory {
+        public DocumentHandler createDocumentHandler(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) throws Exception;
+    }
+
+    /**
+     * Finds all of the requested records with one query, and then reads each of them with the same repository session.  A failure
+     * to read one record -e.g., because it doesn't exist or is soft-deleted- is recorded in the result instead of failing the whole
+     * request.  Permissions aren't checked per record: the SecurityInterceptor has already authorized the request as a read of the
+     * resource.
+     *
+     * @param ctx the service context
+     * @param csids the CSIDs of the records to read
+     * @param whereClause an optional NXQL clause that the records must also match -e.g., the parent of authority items
+     * @param handlerFactory creates the document handler for each record
+     */
+    protected BulkReadResult bulkRead(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            List<String> csids,
+            String whereClause,
+            BulkReadHandlerFactory handlerFactory) throws Exception {
+        BulkReadResult result = new BulkReadResult();
+        RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = getRepositoryClient(ctx);
+
+        List<String> validCsids = new ArrayList<String>();
+        for (String csid : csids) {
+            if (BulkReadResult.isValidCsid(csid)) {
+                validCsids.add(csid);
+            }
+        }
+
+        CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx);
+        try {
+            Map<String, DocumentModel> docModels = repoClient.findDocsByCsid(repoSession, ctx, validCsids, whereClause);
+            for (String csid : csids) {
+                if (BulkReadResult.isValidCsid(csid) == false) {
+                    result.addError(csid, Response.Status.BAD_REQUEST.getStatusCode(),
+                            ServiceMessages.READ_FAILED + ServiceMessages.MISSING_INVALID_CSID + csid);
+                    continue;
+                }
+
+                DocumentModel docModel = docModels.get(csid);
+                if (docModel == null) {
+                    result.addError(csid, Response.Status.NOT_FOUND.getStatusCode(),
+                            ServiceMessages.READ_FAILED + ServiceMessages.resourceNotFoundMsg(csid));
+                    continue;
+                }
+
+                try {
+                    ctx.setOutput(new PoxPayloadOut(ctx.getServiceName())); // each record gets its own payload
+                    DocumentHandler handler = handlerFactory.createDocumentHandler(ctx);
+                    repoClient.get(ctx, docModel, handler);
+                    result.addPayload(csid, ctx.getOutput());
+                } catch (Exception e) {
+                    Response response = bigReThrow(e, ServiceMessages.READ_FAILED, csid).getResponse();
+                    Object entity = response.getEntity();
+                    result.addError(csid, response.getStatus(), entity != null ? entity.toString() : null);
+                }
+            }
+        } finally {
+            repoClient.releaseRepositorySession(ctx, repoSession);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Bulk read of '%s' records: %s", ctx.getServiceName(), result));
+        }
+
+        return result;
+    }
+
     protected boolean isGetAllRequest(MultivaluedMap<String, String> queryParams) {
     	boolean result = false;
     	
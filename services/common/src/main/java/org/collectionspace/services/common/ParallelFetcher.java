@@ -0,0 +1,225 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ParallelFetcher fetches a batch of values (e.g. remote records over HTTP) using a small,
+ * bounded number of threads, and returns them in the order of their keys.
+ *
+ * Each thread uses its own Worker.  Workers are created on the calling thread, so a worker can
+ * capture anything that is bound to the caller's thread (the tenant, credentials, a client
+ * configured from the service context) and only has to do thread-safe work in fetch().
+ *
+ * The calling thread runs one of the workers itself; the others run on a pool of threads shared
+ * by all fetchers, so concurrent fetchAll() calls can't add up to an unbounded number of threads.
+ * The size of the shared pool can be configured with the system property
+ * org.collectionspace.services.parallelFetcher.threads.  When the pool is busy, a call still
+ * makes progress on its own thread.
+ *
+ * With one thread (or one key) everything runs on the calling thread.
+ */
+public class ParallelFetcher<K, V> {
+	static final Logger logger = LoggerFactory.getLogger(ParallelFetcher.class);
+
+	public static final String SHARED_THREADS_PROPERTY = "org.collectionspace.services.parallelFetcher.threads";
+	public static final int DEFAULT_SHARED_THREADS = 8;
+
+	private static final ThreadPoolExecutor sharedPool = createSharedPool();
+
+	/**
+	 * Fetches one value.  A worker is only used by one thread at a time.
+	 */
+	public interface Worker<K, V> {
+		public V fetch(K key) throws Exception;
+	}
+
+	/**
+	 * Creates workers.  Called on the thread that calls fetchAll().
+	 */
+	public interface WorkerFactory<K, V> {
+		public Worker<K, V> newWorker() throws Exception;
+	}
+
+	private final int threads;
+	private final String name;
+
+	/**
+	 * @param threads the maximum number of threads used by one fetchAll() call, including the caller's
+	 * @param name a name for the threads while they work for this fetcher, for logs and thread dumps
+	 */
+	public ParallelFetcher(int threads, String name) {
+		this.threads = Math.max(1, threads);
+		this.name = name;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	private static ThreadPoolExecutor createSharedPool() {
+		int size = DEFAULT_SHARED_THREADS;
+		String value = System.getProperty(SHARED_THREADS_PROPERTY);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				size = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, SHARED_THREADS_PROPERTY, DEFAULT_SHARED_THREADS));
+			}
+		}
+		if (size <= 0) {
+			size = DEFAULT_SHARED_THREADS;
+		}
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor result = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "cspace-parallel-fetcher-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/**
+	 * @return the size of the pool shared by all fetchers
+	 */
+	public static int getSharedThreads() {
+		return sharedPool.getMaximumPoolSize();
+	}
+
+	/**
+	 * Fetches the values of all the keys.  If any fetch fails, the keys that haven't been started
+	 * are skipped, the fetches that are under way are allowed to finish, and then the first failure
+	 * is thrown.
+	 *
+	 * @return the values, in the same order as the keys
+	 */
+	public List<V> fetchAll(List<K> keys, WorkerFactory<K, V> workerFactory) throws Exception {
+		int nThreads = Math.min(threads, keys.size());
+		if (nThreads <= 1) {
+			List<V> result = new ArrayList<V>(keys.size());
+			if (keys.isEmpty() == false) {
+				Worker<K, V> worker = workerFactory.newWorker();
+				for (K key : keys) {
+					result.add(worker.fetch(key));
+				}
+			}
+			return result;
+		}
+
+		final List<K> keyList = keys;
+		final Object[] values = new Object[keys.size()];
+		final AtomicInteger next = new AtomicInteger();
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(nThreads - 1);
+		Exception failure = null;
+		try {
+			for (int i = 1; i < nThreads; i++) {
+				final Worker<K, V> worker = workerFactory.newWorker();
+				final String threadName = name + "-" + i;
+				futures.add(sharedPool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						Thread thread = Thread.currentThread();
+						String poolThreadName = thread.getName();
+						thread.setName(threadName);
+						try {
+							fetchRemaining(worker, keyList, values, next);
+						} finally {
+							thread.setName(poolThreadName);
+						}
+						return null;
+					}
+				}));
+			}
+
+			// Do a share of the work on this thread
+			fetchRemaining(workerFactory.newWorker(), keyList, values, next);
+		} catch (Exception e) {
+			next.set(values.length);
+			failure = e;
+		}
+
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					Throwable cause = e.getCause();
+					failure = cause instanceof Exception ? (Exception) cause : e;
+				}
+			} catch (InterruptedException e) {
+				next.set(values.length);
+				Thread.currentThread().interrupt();
+				if (failure == null) {
+					failure = e;
+				}
+				break;
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		@SuppressWarnings("unchecked")
+		List<V> result = (List<V>) Arrays.asList(values);
+		return new ArrayList<V>(result);
+	}
+
+	/*
+	 * Fetches keys until there are none left, or another worker has failed.
+	 */
+	private static <K, V> void fetchRemaining(Worker<K, V> worker, List<K> keys, Object[] values, AtomicInteger next) throws Exception {
+		int index;
+		while ((index = next.getAndIncrement()) < values.length) {
+			try {
+				values[index] = worker.fetch(keys.get(index));
+			} catch (Exception e) {
+				next.set(values.length); // Stop the other workers at their next key
+				throw e;
+			}
+		}
+	}
+}
@@ -58,11 +58,13 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
 import org.collectionspace.services.nuxeo.client.java.TenantRepository;
 import org.collectionspace.services.nuxeo.listener.CSEventListener;
 import org.collectionspace.services.nuxeo.listener.AbstractCSEventListenerImpl;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer;
 
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.dom4j.Attribute;
 import org.dom4j.Document;
 import org.dom4j.tree.DefaultElement;
+import org.nuxeo.runtime.api.Framework;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -112,6 +114,14 @@ public class ServiceMain {
     private static final String DROP_OBJECTS_SQL_COMMENT = "-- drop all the objects before dropping roles";
 	private static final String CSPACE_JEESERVER_HOME = "CSPACE_JEESERVER_HOME";
 
+    /**
+     * The maximum number of repositories (databases) that are upgraded, indexed, and initialized in parallel at startup
+     */
+    public static final String STARTUP_THREADS_PROPERTY = "org.collectionspace.services.startupThreads";
+    public static final int DEFAULT_STARTUP_THREADS = 4;
+
+    private final StartupTimings startupTimings = new StartupTimings();
+
     private ServiceMain() {
     	// Intentionally blank
     }
@@ -177,12 +187,21 @@ public class ServiceMain {
         return instance;
     }
 
+    /**
+     * @return how long each startup phase took
+     */
+    public StartupTimings getStartupTimings() {
+    	return startupTimings;
+    }
+
     private void initialize() throws Exception {
+    	long start = System.nanoTime();
     	// set our root directory
     	setServerRootDir();
 
 		// read in and set our Services config
     	readAndSetServicesConfig();
+    	startupTimings.record("read configuration", start);
 
     	// Set our AuthN's datasource to for the cspaceDataSource
     	AuthN.setDataSource(JDBCTools.getDataSource(JDBCTools.CSPACE_DATASOURCE_NAME));
@@ -192,6 +211,7 @@ public class ServiceMain {
         propagateConfiguredProperties();
 
         // Create or update Nuxeo's per-repository configuration files.
+        start = System.nanoTime();
         createOrUpdateNuxeoDatasourceConfigFiles();
         createOrUpdateNuxeoRepositoryConfigFiles();
         createOrUpdateNuxeoElasticsearchConfigFiles();
@@ -206,10 +226,12 @@ public class ServiceMain {
         String[] dataSourceNames = {JDBCTools.NUXEO_DATASOURCE_NAME, JDBCTools.NUXEO_READER_DATASOURCE_NAME};
         updateInitializationScript(getNuxeoDatabasesDropScriptFilename(),
                 dbsCheckedOrCreated, dataSourceNames);
+        startupTimings.record("create Nuxeo databases", start);
 
         //
         // Start up and initialize our embedded Nuxeo instance.
         //
+        start = System.nanoTime();
         if (getClientType().equals(ClientType.JAVA)) {
             nuxeoConnector = NuxeoConnectorEmbedded.getInstance();
             mirrorToStdOut("\nStarting Nuxeo platform...");
@@ -225,20 +247,29 @@ public class ServiceMain {
         	throw new RuntimeException("Unknown CollectionSpace services client type: " + getClientType());
         }
 
+        startupTimings.record("start Nuxeo", start);
+
         //
         //
         //
         initializeEventListeners();
 
+        //
+        // Undo any full Elasticsearch reindex that was still running when the server last stopped.
+        //
+        recoverElasticsearchReindexes();
+
         //
         // Mark if a tenant's bindings have changed since the last time we started, by comparing the MD5 hash of each tenant's bindings with that of
-        // the bindings the last time we started/launch.
+        // the bindings the last time we started/launch.  Only changed tenants get their default permissions refreshed.
         //
+        start = System.nanoTime();
         String cspaceDatabaseName = getCspaceDatabaseName();
+        Map<String, String> persistedMD5Hashes = AuthorizationCommon.getPersistedMD5Hashes(cspaceDatabaseName);
         Hashtable<String, TenantBindingType> tenantBindings = tenantBindingConfigReader.getTenantBindings();
         for (String tenantId : tenantBindings.keySet()) {
 	        TenantBindingType tenantBinding = tenantBindings.get(tenantId);
-	        String persistedMD5Hash = AuthorizationCommon.getPersistedMD5Hash(tenantId, cspaceDatabaseName);
+	        String persistedMD5Hash = persistedMD5Hashes.get(tenantId);
 	        String currentMD5Hash = tenantBinding.getConfigMD5Hash();
 	    	AuthorizationCommon.setTenantConfigMD5Hash(tenantId, currentMD5Hash); // store this for later.  We'll persist this info with the tenant record.
 	        tenantBinding.setConfigChangedSinceLastStart(hasConfigChanged(tenantBinding, persistedMD5Hash, currentMD5Hash));
@@ -266,6 +297,7 @@ public class ServiceMain {
 		} finally {
 			jpaTransactionContext.close();
 		}
+		startupTimings.record("create tenants, accounts and permissions", start);
 		//
 		// Log tenant status -shows all tenants' info and active status.
 		//
@@ -350,6 +382,34 @@ public class ServiceMain {
         }
 	}
 
+	/**
+	 * Loads the Elasticsearch reindexer of each tenant's repository, which fails a reindex that was interrupted by
+	 * the last shutdown, and points the write alias back at the index searches use (see ElasticsearchReindexer).
+	 */
+	private void recoverElasticsearchReindexes() {
+		if (Framework.isBooleanPropertyTrue("elasticsearch.enabled") == false) {
+			return;
+		}
+
+		Set<String> repositoryNames = new HashSet<String>();
+		for (TenantBindingType tenantBinding : this.tenantBindingConfigReader.getTenantBindings().values()) {
+			try {
+				repositoryNames.add(getPrimaryRepositoryName(tenantBinding));
+			} catch (InstantiationException e) {
+				// Already reported by initializeEventListeners()
+			}
+		}
+
+		for (String repositoryName : repositoryNames) {
+			try {
+				ElasticsearchReindexer.getInstance(repositoryName);
+			} catch (RuntimeException e) {
+				logger.warn(String.format("Could not check for an interrupted Elasticsearch reindex of repository '%s': %s",
+						repositoryName, e.getMessage()));
+			}
+		}
+	}
+
 	private void failIfRequired(EventListenerConfig eventListenerConfig) {
 		if (eventListenerConfig.isRequired() == true) {
 			throw new RuntimeException(String.format("Required event listener '%s' missing or could not be instantiated.", eventListenerConfig.getId()));
@@ -396,6 +456,8 @@ public class ServiceMain {
      */
     public void release() {
         try {
+            // Let pending background work (e.g., blob file cleanup) finish before Nuxeo goes away
+            BackgroundTaskExecutor.release();
             if (nuxeoConnector != null) {
                 nuxeoConnector.release();
             }
@@ -522,21 +584,31 @@ public class ServiceMain {
 	}
 
 	void upgradeDatabase() throws Exception {
+		final String cspaceInstanceId = getCspaceInstanceId();
+
+		// Each repository/DB is upgraded once, even if several tenants share it
+		runPerRepository("upgrade", getAllRepositoryNames(), new RepositoryTask() {
+			@Override
+			public void run(String repositoryName) throws Exception {
+				upgradeRepository(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+			}
+		});
+	}
+
+	/*
+	 * Returns the distinct names of the repositories/DBs declared in the tenant bindings, in tenant order.
+	 */
+	private List<String> getAllRepositoryNames() throws Exception {
+		Set<String> result = new LinkedHashSet<String>();
 		Hashtable<String, TenantBindingType> tenantBindingTypeMap = tenantBindingConfigReader.getTenantBindings();
 
 		// Loop through all tenants in tenant-bindings.xml
 
-		String cspaceInstanceId = getCspaceInstanceId();
-
 		for (TenantBindingType tbt : tenantBindingTypeMap.values()) {
 			List<String> repositoryNameList = ConfigUtils.getRepositoryNameList(tbt);
 
 			if (repositoryNameList != null && repositoryNameList.isEmpty() == false) {
-				// Loop through each repo/DB defined in a tenant bindings file
-
-				for (String repositoryName : repositoryNameList) {
-					upgradeRepository(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
-				}
+				result.addAll(repositoryNameList);
 			} else {
 				String errMsg = "repositoryNameList was empty or null.";
 
@@ -545,6 +617,59 @@ public class ServiceMain {
 				throw new Exception(errMsg);
 			}
 		}
+
+		return new ArrayList<String>(result);
+	}
+
+	/*
+	 * Work done at startup for one repository/DB.
+	 */
+	private interface RepositoryTask {
+		public void run(String repositoryName) throws Exception;
+	}
+
+	private static int getStartupThreads() {
+		int result = DEFAULT_STARTUP_THREADS;
+		String value = System.getProperty(STARTUP_THREADS_PROPERTY);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, STARTUP_THREADS_PROPERTY, DEFAULT_STARTUP_THREADS));
+			}
+		}
+		return result > 0 ? result : DEFAULT_STARTUP_THREADS;
+	}
+
+	/*
+	 * Runs a task for each repository, in parallel.  The repositories are separate databases, so the
+	 * tasks don't contend with each other.  The first failure is thrown once the running tasks finish.
+	 */
+	private void runPerRepository(String phase, List<String> repositoryNames, final RepositoryTask task) throws Exception {
+		// Look up and cache the data sources on this thread, rather than concurrently in the workers
+		JDBCTools.getDataSource(JDBCTools.NUXEO_DATASOURCE_NAME);
+		try {
+			JDBCTools.getDataSource(JDBCTools.CSADMIN_NUXEO_DATASOURCE_NAME);
+		} catch (NamingException e) {
+			logger.debug("The optional data source " + JDBCTools.CSADMIN_NUXEO_DATASOURCE_NAME + " is not configured.");
+		}
+
+		long start = System.nanoTime();
+		new ParallelFetcher<String, Void>(getStartupThreads(), "cspace-startup-" + phase).fetchAll(repositoryNames,
+				new ParallelFetcher.WorkerFactory<String, Void>() {
+					@Override
+					public ParallelFetcher.Worker<String, Void> newWorker() {
+						return new ParallelFetcher.Worker<String, Void>() {
+							@Override
+							public Void fetch(String repositoryName) throws Exception {
+								task.run(repositoryName);
+								return null;
+							}
+						};
+					}
+				});
+		startupTimings.record(phase + " repositories", start);
 	}
 
 	public static Map<String, List<File>> getRepositoryUpgradeScripts(String dataSourceName, String repositoryName, String fromVersion, String stage) throws Exception {
@@ -676,54 +801,43 @@ public class ServiceMain {
 	 * @throws Exception
 	 */
 	void createRequiredIndices() throws Exception {
-        Hashtable<String, TenantBindingType> tenantBindingTypeMap = tenantBindingConfigReader.getTenantBindings();
+        final String cspaceInstanceId = getCspaceInstanceId();
 
         //
-        //Loop through all tenants in tenant-bindings.xml
+        // Loop through each repo/DB defined in the tenant bindings
         //
-        String cspaceInstanceId = getCspaceInstanceId();
-        for (TenantBindingType tbt : tenantBindingTypeMap.values()) {
-        	List<String> repositoryNameList = ConfigUtils.getRepositoryNameList(tbt);
-			if (repositoryNameList != null && repositoryNameList.isEmpty() == false) {
-				//
-				// Loop through each repo/DB defined in a tenant bindings file
-				//
-				for (String repositoryName : repositoryNameList) {
-					// Define a set of columns (fields) and their associated
-					// tables, on which database indexes should always be created
-					final String COLLECTIONSPACE_CORE_TABLE_NAME = "collectionspace_core";
-					final String NUXEO_FULLTEXT_TABLE_NAME = "fulltext";
-					final String NUXEO_HIERARCHY_TABLE_NAME = "hierarchy";
-
-					Map<Integer, List<String>> fieldsToIndex = new HashMap<Integer, List<String>>();
-					fieldsToIndex.put(1, new ArrayList<String>(Arrays.asList(COLLECTIONSPACE_CORE_TABLE_NAME, "tenantid")));
-					fieldsToIndex.put(2, new ArrayList<String>(Arrays.asList(COLLECTIONSPACE_CORE_TABLE_NAME, "updatedat")));
-					fieldsToIndex.put(3, new ArrayList<String>(Arrays.asList(NUXEO_FULLTEXT_TABLE_NAME, "jobid")));
-					fieldsToIndex.put(4, new ArrayList<String>(Arrays.asList(NUXEO_HIERARCHY_TABLE_NAME, "name")));
-
-					// Invoke existing post-init code to create these indexes,
-					// sending in the set of values above, in contrast to
-					// drawing these values from per-tenant configuration.
-//					DataSource dataSource = JDBCTools.getDataSource(JDBCTools.NUXEO_DATASOURCE_NAME);
-					AddIndices addindices = new AddIndices();
-					List<Field> fields = new ArrayList<Field>();
-					for (Map.Entry<Integer, List<String>> entry : fieldsToIndex.entrySet()) {
-						Field field = new Field();
-						field.setTable(entry.getValue().get(0)); // Table name from List
-																	// item 0
-						field.setCol(entry.getValue().get(1)); // Column name from List item
-																// 1
-						fields.add(field);
-					}
-					addindices.onRepositoryInitialized(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId,
-							null, fields, null);
+        runPerRepository("index", getAllRepositoryNames(), new RepositoryTask() {
+			@Override
+			public void run(String repositoryName) throws Exception {
+				// Define a set of columns (fields) and their associated
+				// tables, on which database indexes should always be created
+				final String COLLECTIONSPACE_CORE_TABLE_NAME = "collectionspace_core";
+				final String NUXEO_FULLTEXT_TABLE_NAME = "fulltext";
+				final String NUXEO_HIERARCHY_TABLE_NAME = "hierarchy";
+
+				Map<Integer, List<String>> fieldsToIndex = new HashMap<Integer, List<String>>();
+				fieldsToIndex.put(1, new ArrayList<String>(Arrays.asList(COLLECTIONSPACE_CORE_TABLE_NAME, "tenantid")));
+				fieldsToIndex.put(2, new ArrayList<String>(Arrays.asList(COLLECTIONSPACE_CORE_TABLE_NAME, "updatedat")));
+				fieldsToIndex.put(3, new ArrayList<String>(Arrays.asList(NUXEO_FULLTEXT_TABLE_NAME, "jobid")));
+				fieldsToIndex.put(4, new ArrayList<String>(Arrays.asList(NUXEO_HIERARCHY_TABLE_NAME, "name")));
+
+				// Invoke existing post-init code to create these indexes,
+				// sending in the set of values above, in contrast to
+				// drawing these values from per-tenant configuration.
+				AddIndices addindices = new AddIndices();
+				List<Field> fields = new ArrayList<Field>();
+				for (Map.Entry<Integer, List<String>> entry : fieldsToIndex.entrySet()) {
+					Field field = new Field();
+					field.setTable(entry.getValue().get(0)); // Table name from List
+																// item 0
+					field.setCol(entry.getValue().get(1)); // Column name from List item
+															// 1
+					fields.add(field);
 				}
-			} else {
-				String errMsg = "repositoryNameList was empty or null.";
-				logger.error(errMsg);
-				throw new Exception(errMsg);
+				addindices.onRepositoryInitialized(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId,
+						null, fields, null);
 			}
-        }
+        });
 	}
 
     public void firePostInitHandlers() throws Exception {
@@ -731,7 +845,8 @@ public class ServiceMain {
         //
         //Loop through all tenants in tenant-bindings.xml
         //
-        String cspaceInstanceId = getCspaceInstanceId();
+        final String cspaceInstanceId = getCspaceInstanceId();
+        final Map<String, List<PostInitHandlerCall>> callsByRepository = new LinkedHashMap<String, List<PostInitHandlerCall>>();
         for (TenantBindingType tbt : tenantBindingTypeMap.values()) {
         	//
         	//Loop through all the services in this tenant
@@ -764,17 +879,51 @@ public class ServiceMain {
                     //List<String> fields = ft.getField();
                     Object o = instantiate(initHandlerClassname, IInitHandler.class);
                     if (o != null && o instanceof IInitHandler){
-                        IInitHandler handler = (IInitHandler)o;
-                        handler.onRepositoryInitialized(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId,
-                        		sbt, fields, props);
                         //The InitHandler may be the default one,
                         //  or specialized classes which still implement this interface and are registered in tenant-bindings.xml.
+                        List<PostInitHandlerCall> calls = callsByRepository.get(repositoryName);
+                        if (calls == null) {
+                        	calls = new ArrayList<PostInitHandlerCall>();
+                        	callsByRepository.put(repositoryName, calls);
+                        }
+                        calls.add(new PostInitHandlerCall((IInitHandler)o, sbt, fields, props));
                     }
                 }
             }
         }
+
+        //
+        // The handlers of different repositories/DBs run in parallel.  The handlers of each repository run in
+        // tenant bindings order.  Security services don't have a repository, so their handlers are under the null key.
+        //
+        runPerRepository("post-init", new ArrayList<String>(callsByRepository.keySet()), new RepositoryTask() {
+			@Override
+			public void run(String repositoryName) throws Exception {
+				for (PostInitHandlerCall call : callsByRepository.get(repositoryName)) {
+					call.handler.onRepositoryInitialized(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId,
+							call.serviceBinding, call.fields, call.props);
+				}
+			}
+        });
     }
 
+    private static class PostInitHandlerCall {
+    	final IInitHandler handler;
+    	final ServiceBindingType serviceBinding;
+    	final List<org.collectionspace.services.config.service.InitHandler.Params.Field> fields;
+    	final List<org.collectionspace.services.config.service.InitHandler.Params.Property> props;
+
+    	PostInitHandlerCall(IInitHandler handler, ServiceBindingType serviceBinding,
+    			List<org.collectionspace.services.config.service.InitHandler.Params.Field> fields,
+    			List<org.collectionspace.services.config.service.InitHandler.Params.Property> props) {
+    		this.handler = handler;
+    		this.serviceBinding = serviceBinding;
+    		this.fields = fields;
+    		this.props = props;
+    	}
+    }
+
+
     /*
      * A generic mechanism for instantiating a instance/object from a class name.
      */
@@ -0,0 +1,93 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * StartupTimings records how long each phase of the services startup took, so slow phases
+ * (e.g., database upgrades or permission seeding after a tenant bindings change) show up in the
+ * log and can be reported later.
+ *
+ * Usage:
+ *   long start = System.nanoTime();
+ *   doPhase();
+ *   startupTimings.record("phase name", start);
+ */
+public class StartupTimings {
+	final static Logger logger = LoggerFactory.getLogger(StartupTimings.class);
+
+	private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Records a phase that started at startNanos (a System.nanoTime() value) and just ended.
+	 * A phase that is recorded more than once accumulates its time.
+	 */
+	public void record(String phase, long startNanos) {
+		long millis = (System.nanoTime() - startNanos) / 1000000;
+		synchronized (phaseMillis) {
+			Long previous = phaseMillis.get(phase);
+			phaseMillis.put(phase, previous != null ? previous + millis : millis);
+		}
+		logger.info(String.format("Startup phase '%s' took %d ms", phase, millis));
+	}
+
+	/**
+	 * @return the duration of each phase in milliseconds, in the order the phases were first recorded
+	 */
+	public Map<String, Long> getPhaseMillis() {
+		synchronized (phaseMillis) {
+			return new LinkedHashMap<String, Long>(phaseMillis);
+		}
+	}
+
+	public long getTotalMillis() {
+		long result = 0;
+		for (Long millis : getPhaseMillis().values()) {
+			result += millis;
+		}
+		return result;
+	}
+
+	/**
+	 * Logs the duration of every phase recorded so far
+	 */
+	public void logSummary() {
+		logger.info("CollectionSpace services startup timings: " + this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("StartupTimings [");
+		for (Map.Entry<String, Long> entry : getPhaseMillis().entrySet()) {
+			sb.append(entry.getKey()).append('=').append(entry.getValue()).append("ms, ");
+		}
+		sb.append("total=").append(getTotalMillis()).append("ms]");
+		return sb.toString();
+	}
+}
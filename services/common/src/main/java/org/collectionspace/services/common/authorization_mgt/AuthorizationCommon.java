@@ -13,6 +13,7 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.naming.NamingException;
 
@@ -1117,6 +1118,10 @@ public class AuthorizationCommon {
 	    			throw new RuntimeException("One or more of the required default CollectionSpace administrator roles is missing or was never created.");
 	    		}
 	    		
+	    		ExistingWorkflowPermissions existing = getExistingWorkflowPermissions(cspaceDatabaseName, tenantId,
+	    				adminRole, readonlyRole);
+	    		int existingCount = existing.permissionRoles.size();
+	    		
 		        for (ServiceBindingType serviceBinding : tenantBinding.getServiceBindings()) {
 		        	String prop = ServiceBindingUtils.getPropertyValue(serviceBinding, REFRESH_AUTHZ_PROP);
 		        	if (prop == null ? true : Boolean.parseBoolean(prop)) {
@@ -1127,11 +1132,11 @@ public class AuthorizationCommon {
 				        		//
 				        		// Create the permission for the admin role
 				        		Permission adminPerm = createWorkflowPermission(tenantBinding, serviceBinding, transitionVerb, ACTIONGROUP_CRUDL, true);
-				        		persist(jpaTransactionContext, adminPerm, adminRole, true, ACTIONGROUP_CRUDL);
+				        		persist(jpaTransactionContext, adminPerm, adminRole, true, ACTIONGROUP_CRUDL, existing);
 				        		//
 				        		// Create the permission for the read-only role
 				        		Permission readonlyPerm = createWorkflowPermission(tenantBinding, serviceBinding, transitionVerb, ACTIONGROUP_RL, true);				        		
-				        		persist(jpaTransactionContext, readonlyPerm, readonlyRole, true, ACTIONGROUP_RL); // Persist/store the permission and permrole records and related Spring Security info
+				        		persist(jpaTransactionContext, readonlyPerm, readonlyRole, true, ACTIONGROUP_RL, existing); // Persist/store the permission and permrole records and related Spring Security info
 				        	}
 				        	jpaTransactionContext.commitTransaction();
 			        	} catch (IllegalStateException e) {
@@ -1144,6 +1149,8 @@ public class AuthorizationCommon {
 		        				+ serviceBinding.getName());
 		        	}
 		        }
+		        logger.info(String.format("Created %d workflow permission-role relationships for tenant ID=%s; %d already existed.",
+		        		existing.permissionRoles.size() - existingCount, tenantId, existingCount));
 	        }
     	} catch (Exception e) {
     		jpaTransactionContext.markForRollback();
@@ -1191,7 +1198,7 @@ public class AuthorizationCommon {
     	final String queryTenantSQL = String.format("SELECT id, name, config_md5hash FROM tenants WHERE id = '%s'", tenantId);
     	
     	Statement stmt = null;
-    	Connection conn;
+    	Connection conn = null;
     	int rowCount = 0;
     	try {
 			conn = getConnection(cspaceDatabaseName);
@@ -1213,63 +1220,136 @@ public class AuthorizationCommon {
     		throw e;
     	} finally {
     		if (stmt != null) stmt.close();
+    		if (conn != null) conn.close();
     	}
     	
     	return result;
     }
-
-	private static PermissionRoleRel findPermRoleRel(
-			JPATransactionContext jpaTransactionContext,
-			String permissionId,
-			String RoleId) {
-    	PermissionRoleRel result = null;
+    
+    /**
+     * Returns the persisted config MD5 hash of every tenant, keyed by tenant ID, using a single query.
+     * Tenants that have never been persisted are missing from the result.
+     */
+    public static Map<String, String> getPersistedMD5Hashes(String cspaceDatabaseName) throws Exception {
+    	Map<String, String> result = new HashMap<String, String>();
+    	
+    	final String queryTenantsSQL = "SELECT id, config_md5hash FROM tenants";
     	
+    	Statement stmt = null;
+    	Connection conn = null;
     	try {
-	        String whereClause = "where permissionId = :id and roleId = :roleId";
-	        HashMap<String, Object> params = new HashMap<String, Object>();
-	        params.put("id", permissionId);
-	        params.put("roleId", RoleId);        
-	
-	        result = (PermissionRoleRel) JpaStorageUtils.getEntity(jpaTransactionContext,
-	        		PermissionRoleRel.class.getCanonicalName(), whereClause, params);
-    	} catch (Exception e) {
-    		//Do nothing. Will return null;
+			conn = getConnection(cspaceDatabaseName);
+    		stmt = conn.createStatement();
+    		ResultSet rs = stmt.executeQuery(queryTenantsSQL);
+    		while (rs.next()) {
+    			result.put(rs.getString("id"), rs.getString("config_md5hash"));
+    		}
+    		rs.close();
+    	} finally {
+    		if (stmt != null) stmt.close();
+    		if (conn != null) conn.close();
     	}
-    	    	
+    	
     	return result;
     }
     
     /*
-     * Persists the Permission, PermissionRoleRel, and Spring Security table entries all in one transaction
+     * The workflow permissions and permission-role relationships that already exist for a tenant's default roles.  Workflow
+     * permission CSIDs are derived from the tenant, resource and action group, so on a restart with changed bindings most
+     * of them are already in place and can be skipped without any JPA lookups.
+     */
+    private static class ExistingWorkflowPermissions {
+    	final Set<String> permissionIds = new HashSet<String>();
+    	final Set<String> permissionRoles = new HashSet<String>();
+    	
+    	boolean hasPermission(String permissionId) {
+    		return permissionIds.contains(permissionId);
+    	}
+    	
+    	boolean hasPermissionRole(String permissionId, String roleId) {
+    		return permissionRoles.contains(permissionId + "|" + roleId);
+    	}
+    	
+    	void add(String permissionId, String roleId) {
+    		permissionIds.add(permissionId);
+    		permissionRoles.add(permissionId + "|" + roleId);
+    	}
+    }
+    
+    private static ExistingWorkflowPermissions getExistingWorkflowPermissions(String cspaceDatabaseName, String tenantId,
+    		Role... roles) throws Exception {
+    	ExistingWorkflowPermissions result = new ExistingWorkflowPermissions();
+    	
+    	Connection conn = null;
+    	PreparedStatement pstmt = null;
+    	try {
+    		conn = getConnection(cspaceDatabaseName);
+    		pstmt = conn.prepareStatement("SELECT csid FROM permissions WHERE tenant_id = ?");
+    		pstmt.setString(1, tenantId);
+    		ResultSet rs = pstmt.executeQuery();
+    		while (rs.next()) {
+    			result.permissionIds.add(rs.getString(1));
+    		}
+    		rs.close();
+    		pstmt.close();
+    		
+    		pstmt = conn.prepareStatement("SELECT permission_id FROM permissions_roles WHERE role_id = ?");
+    		for (Role role : roles) {
+    			pstmt.setString(1, role.getCsid());
+    			rs = pstmt.executeQuery();
+    			while (rs.next()) {
+    				result.permissionRoles.add(rs.getString(1) + "|" + role.getCsid());
+    			}
+    			rs.close();
+    		}
+    	} finally {
+    		if (pstmt != null) pstmt.close();
+    		if (conn != null) conn.close();
+    	}
+    	
+    	return result;
+    }
+
+    /*
+     * Persists the Permission, PermissionRoleRel, and Spring Security table entries all in one transaction.  Records that
+     * already exist are skipped, and new ones are persisted without lookups, so the inserts are queued up and sent to the
+     * database in JDBC batches when the transaction commits.
      */
-    private static void persist(JPATransactionContext jpaTransactionContext, Permission permission, Role role, boolean enforceTenancy, ActionGroup actionGroup) throws Exception {
-		AuthorizationStore authzStore = new AuthorizationStore();
+    private static void persist(JPATransactionContext jpaTransactionContext, Permission permission, Role role, boolean enforceTenancy,
+    		ActionGroup actionGroup, ExistingWorkflowPermissions existing) throws Exception {
+    	boolean permissionExists = existing.hasPermission(permission.getCsid());
+    	if (permissionExists && existing.hasPermissionRole(permission.getCsid(), role.getCsid())) {
+    		return;
+    	}
+    	
+		Profiler profiler = new Profiler(AuthorizationCommon.class, 2);
+		profiler.start();
 		// First persist the Permission record
-		authzStore.store(jpaTransactionContext, permission);
+    	if (permissionExists == false) {
+    		jpaTransactionContext.persist(permission);
+    	}
 		
-		// If the PermRoleRel doesn't already exists then relate the permission and the role in a new PermissionRole (the service payload)
-		// Create a PermissionRoleRel (the database relation table for the permission and role)
-		PermissionRoleRel permRoleRel = findPermRoleRel(jpaTransactionContext, permission.getCsid(), role.getCsid());
-		if (permRoleRel == null) {
-			PermissionRole permRole = createPermissionRole(permission, role, enforceTenancy);
-	        List<PermissionRoleRel> permRoleRels = new ArrayList<PermissionRoleRel>();
-	        PermissionRoleUtil.buildPermissionRoleRel(jpaTransactionContext, permRole, SubjectType.ROLE, permRoleRels,
-	        		false /*not for delete*/, role.getTenantId());
-	        for (PermissionRoleRel prr : permRoleRels) {
-	            authzStore.store(jpaTransactionContext, prr);
-	        }
-			Profiler profiler = new Profiler(AuthorizationCommon.class, 2);
-			profiler.start();
-			// Add a corresponding entry in the Spring Security Tables
-			addPermissionsForUri(jpaTransactionContext, permission, permRole);
-			profiler.stop();
-			logger.debug("Finished full perm generation for "
-					+ ":" + permission.getTenantId()
-					+ ":" + permission.getResourceName()
-					+ ":" + actionGroup.getName()
-					+ ":" + profiler.getCumulativeTime());
-		}
-        
+		// Relate the permission and the role in a new PermissionRole (the service payload), and create
+    	// a PermissionRoleRel (the database relation table for the permission and role)
+		PermissionRole permRole = createPermissionRole(permission, role, enforceTenancy);
+		PermissionRoleRel permRoleRel = new PermissionRoleRel();
+		permRoleRel.setPermissionId(permission.getCsid());
+		permRoleRel.setPermissionResource(permission.getResourceName());
+		permRoleRel.setActionGroup(permission.getActionGroup());
+		permRoleRel.setRoleId(role.getCsid());
+		permRoleRel.setRoleName(role.getRoleName());
+		permRoleRel.setCreatedAtItem(new Date());
+		jpaTransactionContext.persist(permRoleRel);
+		
+		// Add a corresponding entry in the Spring Security Tables
+		addPermissionsForUri(jpaTransactionContext, permission, permRole);
+		existing.add(permission.getCsid(), role.getCsid());
+		profiler.stop();
+		logger.debug("Finished full perm generation for "
+				+ ":" + permission.getTenantId()
+				+ ":" + permission.getResourceName()
+				+ ":" + actionGroup.getName()
+				+ ":" + profiler.getCumulativeTime());
     }
 	
 	public static boolean hasTokenExpired(EmailConfig emailConfig, Token token) throws NoSuchAlgorithmException {
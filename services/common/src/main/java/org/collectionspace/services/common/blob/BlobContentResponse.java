@@ -0,0 +1,296 @@
+package org.collectionspace.services.common.blob;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds responses for blob and derivative content requests, with support for HTTP
+ * "Range" requests (single and multiple ranges), "If-Range", and HEAD.
+ *
+ * When the content is stored in a plain file, the bytes are copied from the file's
+ * channel to the response with FileChannel.transferTo(), so large media never passes
+ * through a heap buffer of its full size.  Otherwise the content stream is used, and
+ * ranges are served by skipping forward through it.
+ */
+public class BlobContentResponse {
+	private static final Logger logger = LoggerFactory.getLogger(BlobContentResponse.class);
+
+	public static final String ACCEPT_RANGES = "Accept-Ranges";
+	public static final String CONTENT_RANGE = "Content-Range";
+	public static final String RANGE = "Range";
+	public static final String IF_RANGE = "If-Range";
+	public static final String LAST_MODIFIED = "Last-Modified";
+	public static final String ACCEPT_RANGES_NONE = "none";
+
+	public static final int SC_PARTIAL_CONTENT = 206;
+	public static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+	private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+	private static final String CRLF = "\r\n";
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	private BlobContentResponse() {
+		// Only static methods
+	}
+
+	/**
+	 * Creates a response builder for the given content.  Callers can add their own headers
+	 * (cache control, content disposition) before building the response.
+	 *
+	 * @param headers the request headers, may be null
+	 * @param headRequest true if this is a HEAD request; no content is sent
+	 * @param contentStream the content, may be null if contentFile is set; it is closed here if it isn't sent
+	 * @param contentFile the plain file holding the content, or null if there isn't one
+	 * @param contentLength the content length if known, or -1; ignored if contentFile is set
+	 * @param mimeType
+	 * @return
+	 */
+	public static ResponseBuilder createResponseBuilder(HttpHeaders headers,
+			boolean headRequest,
+			InputStream contentStream,
+			File contentFile,
+			long contentLength,
+			String mimeType) {
+		ResponseBuilder result = null;
+
+		if (contentFile != null && contentFile.isFile() && contentFile.canRead()) {
+			contentLength = contentFile.length();
+			closeQuietly(contentStream); // we'll read from the file's channel instead
+			contentStream = null;
+		} else {
+			contentFile = null;
+		}
+
+		boolean rangesSupported = contentLength >= 0;
+		String rangeHeader = headers != null ? headers.getRequestHeaders().getFirst(RANGE) : null;
+		List<ByteRange> ranges = null;
+		if (rangesSupported && rangeHeader != null && isIfRangeSatisfied(headers, contentFile)) {
+			ranges = ByteRange.parse(rangeHeader, contentLength);
+			if (ranges != null && ranges.size() > 1 && contentFile == null && !isAscending(ranges)) {
+				ranges = null; // A stream can only be read forward, so send it all instead
+			}
+		}
+
+		if (ranges != null && ranges.isEmpty()) {
+			closeQuietly(contentStream);
+			result = Response.status(SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(CONTENT_RANGE, ByteRange.BYTES_UNIT + " */" + contentLength);
+		} else if (ranges != null && ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			result = Response.status(SC_PARTIAL_CONTENT)
+					.type(mimeType)
+					.header(CONTENT_RANGE, range.toContentRange(contentLength))
+					.header(HttpHeaders.CONTENT_LENGTH, range.getLength());
+			if (headRequest) {
+				closeQuietly(contentStream);
+			} else {
+				result.entity(new SingleRangeOutput(contentFile, contentStream, range));
+			}
+		} else if (ranges != null) {
+			String boundary = UUID.randomUUID().toString();
+			result = Response.status(SC_PARTIAL_CONTENT)
+					.type(MULTIPART_BYTERANGES + boundary);
+			if (headRequest) {
+				closeQuietly(contentStream);
+			} else {
+				result.entity(new MultiRangeOutput(contentFile, contentStream, ranges, contentLength, mimeType, boundary));
+			}
+		} else {
+			result = Response.ok().type(mimeType);
+			if (contentLength >= 0) {
+				result.header(HttpHeaders.CONTENT_LENGTH, contentLength);
+			}
+			if (headRequest) {
+				closeQuietly(contentStream);
+			} else if (contentFile != null) {
+				result.entity(new SingleRangeOutput(contentFile, null, new ByteRange(0, contentLength - 1)));
+			} else {
+				result.entity(contentStream);
+			}
+		}
+
+		result.header(ACCEPT_RANGES, rangesSupported ? ByteRange.BYTES_UNIT : ACCEPT_RANGES_NONE);
+		if (contentFile != null) {
+			result.header(LAST_MODIFIED, formatHttpDate(contentFile.lastModified()));
+		}
+
+		return result;
+	}
+
+	/*
+	 * We don't emit entity tags, so an "If-Range" validator is only satisfied by a date
+	 * matching the file's Last-Modified value.  If it isn't satisfied, the full content is sent.
+	 */
+	private static boolean isIfRangeSatisfied(HttpHeaders headers, File contentFile) {
+		String ifRange = headers.getRequestHeaders().getFirst(IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		return contentFile != null && ifRange.trim().equals(formatHttpDate(contentFile.lastModified()));
+	}
+
+	private static boolean isAscending(List<ByteRange> ranges) {
+		long previousLast = -1;
+		for (ByteRange range : ranges) {
+			if (range.getFirst() <= previousLast) {
+				return false;
+			}
+			previousLast = range.getLast();
+		}
+		return true;
+	}
+
+	private static String formatHttpDate(long millis) {
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(millis));
+	}
+
+	private static void closeQuietly(InputStream stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				logger.debug("Could not close blob content stream.", e);
+			}
+		}
+	}
+
+	/*
+	 * Copies count bytes from position of the channel to the output stream.
+	 */
+	private static void transfer(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		while (count > 0) {
+			long transferred = channel.transferTo(position, count, target);
+			if (transferred <= 0) {
+				throw new IOException("Unexpected end of file while sending blob content.");
+			}
+			position += transferred;
+			count -= transferred;
+		}
+	}
+
+	/*
+	 * Copies count bytes from the stream, whose current position is streamPosition, starting at position.
+	 */
+	private static void copy(InputStream in, long streamPosition, long position, long count, OutputStream out) throws IOException {
+		long toSkip = position - streamPosition;
+		while (toSkip > 0) {
+			long skipped = in.skip(toSkip);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new IOException("Unexpected end of stream while sending blob content.");
+				}
+				skipped = 1;
+			}
+			toSkip -= skipped;
+		}
+		long copied = IOUtils.copyLarge(in, out, 0, count);
+		if (copied < count) {
+			throw new IOException("Unexpected end of stream while sending blob content.");
+		}
+	}
+
+	private static class SingleRangeOutput implements StreamingOutput {
+		private final File file;
+		private final InputStream stream;
+		private final ByteRange range;
+
+		SingleRangeOutput(File file, InputStream stream, ByteRange range) {
+			this.file = file;
+			this.stream = stream;
+			this.range = range;
+		}
+
+		@Override
+		public void write(OutputStream out) throws IOException, WebApplicationException {
+			if (file != null) {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					transfer(in.getChannel(), range.getFirst(), range.getLength(), out);
+				} finally {
+					in.close();
+				}
+			} else {
+				try {
+					copy(stream, 0, range.getFirst(), range.getLength(), out);
+				} finally {
+					closeQuietly(stream);
+				}
+			}
+		}
+	}
+
+	private static class MultiRangeOutput implements StreamingOutput {
+		private final File file;
+		private final InputStream stream;
+		private final List<ByteRange> ranges;
+		private final long totalLength;
+		private final String mimeType;
+		private final String boundary;
+
+		MultiRangeOutput(File file, InputStream stream, List<ByteRange> ranges, long totalLength,
+				String mimeType, String boundary) {
+			this.file = file;
+			this.stream = stream;
+			this.ranges = ranges;
+			this.totalLength = totalLength;
+			this.mimeType = mimeType;
+			this.boundary = boundary;
+		}
+
+		@Override
+		public void write(OutputStream out) throws IOException, WebApplicationException {
+			FileInputStream fileStream = file != null ? new FileInputStream(file) : null;
+			try {
+				long streamPosition = 0;
+				for (ByteRange range : ranges) {
+					StringBuilder partHeader = new StringBuilder();
+					partHeader.append(CRLF).append("--").append(boundary).append(CRLF);
+					if (mimeType != null) {
+						partHeader.append(HttpHeaders.CONTENT_TYPE).append(": ").append(mimeType).append(CRLF);
+					}
+					partHeader.append(CONTENT_RANGE).append(": ").append(range.toContentRange(totalLength)).append(CRLF);
+					partHeader.append(CRLF);
+					out.write(partHeader.toString().getBytes("US-ASCII"));
+
+					if (fileStream != null) {
+						transfer(fileStream.getChannel(), range.getFirst(), range.getLength(), out);
+					} else {
+						copy(stream, streamPosition, range.getFirst(), range.getLength(), out);
+						streamPosition = range.getLast() + 1;
+					}
+				}
+				out.write((CRLF + "--" + boundary + "--" + CRLF).getBytes("US-ASCII"));
+			} finally {
+				if (fileStream != null) {
+					fileStream.close();
+				}
+				closeQuietly(stream);
+			}
+		}
+	}
+}
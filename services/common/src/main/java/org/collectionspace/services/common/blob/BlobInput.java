@@ -39,7 +39,9 @@ public class BlobInput {
 	private CommonList derivativeList;
 	
 	private boolean contentRequested = false;
+	private ContentStreamPolicy contentStreamPolicy = ContentStreamPolicy.ALWAYS;
 	private InputStream contentStream;
+	private File contentFile;
 	
 	private boolean schemaRequested = false;
 	
@@ -49,6 +51,15 @@ public class BlobInput {
 	/*
 	 * Constructors
 	 */
+	/*
+	 * When the content is requested, whether a stream should be opened on it.
+	 */
+	public enum ContentStreamPolicy {
+		ALWAYS,      // open the stream, even if there is a plain file holding the content
+		UNLESS_FILE, // only open the stream if there is no plain file holding the content
+		NEVER        // only report the content's file and metadata, e.g. for a HEAD request
+	}
+
 	public BlobInput() {
 		/* Empty constructor */
 	}
@@ -165,13 +176,33 @@ public class BlobInput {
 		this.contentStream = contentStream;
 	}
 
+	/*
+	 * The plain file holding the content, if the binary manager stores it in one.  Lets the resource
+	 * serve ranges and copy the bits without reading them through the content stream.
+	 */
+	public File getContentFile() {
+		return contentFile;
+	}
+
+	public void setContentFile(File contentFile) {
+		this.contentFile = contentFile;
+	}
+
 	public boolean isContentRequested() {
 		return contentRequested;
 	}
 
 	public void setContentRequested(boolean contentRequested) {
 		this.contentRequested = contentRequested;
-	}	
+	}
+
+	public ContentStreamPolicy getContentStreamPolicy() {
+		return contentStreamPolicy;
+	}
+
+	public void setContentStreamPolicy(ContentStreamPolicy contentStreamPolicy) {
+		this.contentStreamPolicy = contentStreamPolicy;
+	}
 	/*
 	 * End of setters and getters
 	 */
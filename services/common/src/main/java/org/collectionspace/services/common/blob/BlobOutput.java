@@ -1,5 +1,6 @@
 package org.collectionspace.services.common.blob;
 
+import java.io.File;
 import java.io.InputStream;
 import org.collectionspace.services.blob.BlobsCommon;
 
@@ -7,6 +8,7 @@ public class BlobOutput {
 	private String mimeType;
 	private BlobsCommon blobsCommon;
 	private InputStream blobInputStream;
+	private File blobFile; // the plain file holding the blob's bits, if the binary manager stores them in one
 
 	public BlobsCommon getBlobsCommon() {
 		return blobsCommon;
@@ -20,6 +22,12 @@ public class BlobOutput {
 	public void setBlobInputStream(InputStream blobInputStream) {
 		this.blobInputStream = blobInputStream;
 	}
+	public File getBlobFile() {
+		return blobFile;
+	}
+	public void setBlobFile(File blobFile) {
+		this.blobFile = blobFile;
+	}
 	public String getMimeType() {
 		return mimeType;
 	}
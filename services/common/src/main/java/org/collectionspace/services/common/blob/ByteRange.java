@@ -0,0 +1,115 @@
+package org.collectionspace.services.common.blob;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of an HTTP "Range: bytes=..." request header, with inclusive
+ * first and last positions (RFC 7233).
+ */
+public class ByteRange {
+	public static final String BYTES_UNIT = "bytes";
+	private static final String BYTES_PREFIX = BYTES_UNIT + "=";
+
+	/** Upper bound on the number of ranges we'll serve in one response */
+	public static final int MAX_RANGES = 32;
+
+	private final long first;
+	private final long last;
+
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * @return the value of a Content-Range header for this range
+	 */
+	public String toContentRange(long totalLength) {
+		return BYTES_UNIT + " " + first + "-" + last + "/" + totalLength;
+	}
+
+	/**
+	 * Parses a Range header value against a representation of the given length.
+	 *
+	 * @param rangeHeader the header value, e.g. "bytes=0-499,1000-"
+	 * @param totalLength the length of the full representation
+	 * @return null if the header is absent or not a syntactically valid byte range set (in which
+	 * case the full representation should be sent); an empty list if no range is satisfiable (416);
+	 * otherwise the satisfiable ranges, in request order
+	 */
+	public static List<ByteRange> parse(String rangeHeader, long totalLength) {
+		if (rangeHeader == null || totalLength < 0) {
+			return null;
+		}
+		String spec = rangeHeader.trim();
+		if (!spec.regionMatches(true, 0, BYTES_PREFIX, 0, BYTES_PREFIX.length())) {
+			return null;
+		}
+
+		List<ByteRange> result = new ArrayList<ByteRange>();
+		boolean hasRangeSpec = false;
+		String[] rangeSpecs = spec.substring(BYTES_PREFIX.length()).split(",");
+		if (rangeSpecs.length > MAX_RANGES) {
+			return null;
+		}
+		for (String rangeSpec : rangeSpecs) {
+			rangeSpec = rangeSpec.trim();
+			if (rangeSpec.isEmpty()) {
+				continue;
+			}
+			hasRangeSpec = true;
+			int dash = rangeSpec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			String firstPart = rangeSpec.substring(0, dash).trim();
+			String lastPart = rangeSpec.substring(dash + 1).trim();
+			try {
+				if (firstPart.isEmpty()) {
+					// suffix range: the last N bytes
+					if (lastPart.isEmpty()) {
+						return null;
+					}
+					long suffixLength = Long.parseLong(lastPart);
+					if (suffixLength < 0) {
+						return null;
+					}
+					if (suffixLength > 0 && totalLength > 0) {
+						result.add(new ByteRange(Math.max(0, totalLength - suffixLength), totalLength - 1));
+					}
+				} else {
+					long first = Long.parseLong(firstPart);
+					long last = lastPart.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastPart);
+					if (first < 0 || last < first) {
+						return null;
+					}
+					if (first < totalLength) {
+						result.add(new ByteRange(first, Math.min(last, totalLength - 1)));
+					}
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		return hasRangeSpec ? result : null;
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+}
@@ -28,8 +28,10 @@ import org.collectionspace.services.client.IRelationsManager;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.XmlTools;
+import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.relation.HierarchyClosure;
 import org.collectionspace.services.common.relation.RelationResource;
 import org.collectionspace.services.relation.RelationsCommonList;
 import org.collectionspace.services.relation.RelationsDocListItem;
@@ -37,23 +39,144 @@ import org.collectionspace.services.relation.RelationshipType;
 
 import javax.ws.rs.core.MultivaluedMap;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author Laramie Crocker
  */
 public class Hierarchy {
+    private static final Logger logger = LoggerFactory.getLogger(Hierarchy.class);
 
     public static final String directionQP = "direction";
     public static final String direction_parents = "parents";
 
+    /**
+     * Lists the hasBroader relations of a term: those that name it as the broader term (the object) when diving,
+     * or as the narrower term (the subject) when surfacing.
+     */
+    public interface RelationLister {
+        List<RelationsCommonList.RelationListItem> list(String csid);
+    }
+
+    /**
+     * A RelationLister over relations that have already been loaded.
+     */
+    public static class LoadedRelationLister implements RelationLister {
+        private final Map<String, List<RelationsCommonList.RelationListItem>> relationsByCsid =
+                new HashMap<String, List<RelationsCommonList.RelationListItem>>();
+
+        /**
+         * @param bySubject true to list the relations by their subject (for surfacing), false by their object (for diving)
+         */
+        public LoadedRelationLister(List<RelationsCommonList.RelationListItem> relations, boolean bySubject) {
+            for (RelationsCommonList.RelationListItem relation : relations) {
+                String csid = bySubject ? relation.getSubject().getCsid() : relation.getObject().getCsid();
+                List<RelationsCommonList.RelationListItem> termRelations = relationsByCsid.get(csid);
+                if (termRelations == null) {
+                    termRelations = new ArrayList<RelationsCommonList.RelationListItem>();
+                    relationsByCsid.put(csid, termRelations);
+                }
+                termRelations.add(relation);
+            }
+        }
+
+        @Override
+        public List<RelationsCommonList.RelationListItem> list(String csid) {
+            List<RelationsCommonList.RelationListItem> result = relationsByCsid.get(csid);
+            return result != null ? result : Collections.<RelationsCommonList.RelationListItem>emptyList();
+        }
+    }
+
+    /*
+     * Lists the relations of each term with a query of its own, as the request was sent.
+     */
+    private static class QueryRelationLister implements RelationLister {
+        private final ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx;
+        private final boolean bySubject;
+
+        QueryRelationLister(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, boolean bySubject) {
+            this.ctx = ctx;
+            this.bySubject = bySubject;
+        }
+
+        @Override
+        public List<RelationsCommonList.RelationListItem> list(String csid) {
+            MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
+            queryParams.putSingle(IRelationsManager.PREDICATE_QP, RelationshipType.HAS_BROADER.value());
+            queryParams.putSingle(IRelationsManager.SUBJECT_QP, bySubject ? csid : null);
+            queryParams.putSingle(IRelationsManager.SUBJECT_TYPE_QP, null);
+            queryParams.putSingle(IRelationsManager.OBJECT_QP, bySubject ? null : csid);
+            queryParams.putSingle(IRelationsManager.OBJECT_TYPE_QP, null);
+
+            RelationResource relationResource = new RelationResource();
+            RelationsCommonList listOuter = relationResource.getList(ctx);    // Knows all query params because they are in the context.
+            return listOuter.getRelationListItem();
+        }
+    }
+
+    /*
+     * The hierarchy closure only holds relations that aren't soft-deleted, so it can only stand in for the
+     * relations list when the request excludes soft-deleted records.
+     */
+    private static boolean canUseClosure(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) {
+        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
+        String includeDeleted = queryParams.getFirst(WorkflowClient.WORKFLOW_QUERY_DELETED_QP);
+        return queryParams.getFirst(WorkflowClient.WORKFLOW_QUERY_ONLY_DELETED_QP) == null
+                && includeDeleted != null && Tools.isFalse(includeDeleted);
+    }
+
+    /*
+     * Returns a lister for the relations under (bySubject false) or above (bySubject true) itemcsid.  If the
+     * tenant's hierarchy closure has been built, it names the terms that have children (or parents), and all of
+     * their relations are loaded up front, a few queries in all.  Otherwise each term's relations are queried as
+     * the tree is walked.
+     */
+    private static RelationLister getRelationLister(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, boolean bySubject) {
+        Set<String> terms = null;
+        if (canUseClosure(ctx)) {
+            try {
+                String tenantId = ctx.getTenantId();
+                String repositoryName = HierarchyClosure.getRelationsRepositoryName(tenantId);
+                terms = bySubject
+                        ? HierarchyClosure.getInstance().getTermsWithParents(repositoryName, tenantId, itemcsid)
+                        : HierarchyClosure.getInstance().getTermsWithChildren(repositoryName, tenantId, itemcsid);
+            } catch (Exception e) {
+                logger.warn("Could not read the hierarchy closure.", e);
+            }
+        }
+
+        if (terms == null) {
+            return new QueryRelationLister(ctx, bySubject);
+        }
+
+        List<RelationsCommonList.RelationListItem> relations = Collections.emptyList();
+        if (terms.isEmpty() == false) {
+            relations = new RelationResource().getRelationsForAny(ctx, RelationshipType.HAS_BROADER.value(), terms, bySubject);
+        }
+        return new LoadedRelationLister(relations, bySubject);
+    }
 
     /**Call with the URI and CSID of the root element of the tree you wish to inspect.  The uri can be a blank string.
      * @param uri informational, optional - if not known, pass an empty String.
      * @return String of XML document, including xml processing instruction, root node is "&lt;hierarchy&gt;".
      */
     public static String dive(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) {
-        String result = dive(ctx, itemcsid, uri, true);
+        return dive(itemcsid, uri, getRelationLister(ctx, itemcsid, false));
+    }
+
+    /**
+     * Renders the tree under itemcsid, listing each term's children with the given lister.
+     */
+    public static String dive(String itemcsid, String uri, RelationLister children) {
+        String result = dive(itemcsid, uri, true, children);
         result =  "<?xml version='1.0' ?><hierarchy>"+result+"</hierarchy>";
         try {
             result = XmlTools.prettyPrint(result);
@@ -63,18 +186,8 @@ public class Hierarchy {
         return result;
     }
 
-    private static String dive(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri, boolean lookupFirstName) {
-        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
-        //Run getList() once as sent to get childListOuter:
-        queryParams.putSingle(IRelationsManager.PREDICATE_QP, RelationshipType.HAS_BROADER.value());
-        queryParams.putSingle(IRelationsManager.SUBJECT_QP, null);
-        queryParams.putSingle(IRelationsManager.SUBJECT_TYPE_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_QP, itemcsid);
-        queryParams.putSingle(IRelationsManager.OBJECT_TYPE_QP, null);
-        
-        RelationResource relationResource = new RelationResource();
-        RelationsCommonList childListOuter = relationResource.getList(ctx);    // Knows all query params because they are in the context.
-        List<RelationsCommonList.RelationListItem> childList = childListOuter.getRelationListItem();
+    private static String dive(String itemcsid, String uri, boolean lookupFirstName, RelationLister children) {
+        List<RelationsCommonList.RelationListItem> childList = children.list(itemcsid);
 
         StringBuffer sb = new StringBuffer();
 
@@ -98,7 +211,7 @@ public class Hierarchy {
             sb.append("<child>\r\n");
             sb.append("<parent-uri>" +parent.getUri() + "</parent-uri>\r\n");
             sb.append("  <name>" + child.getName() + "</name><number>" + child.getNumber() + "</number>\r\n");
-            String s = dive(ctx, childCSID, childURI, false);
+            String s = dive(childCSID, childURI, false, children);
             sb.append(s);
             sb.append("</child>\r\n");
         }
@@ -107,7 +220,14 @@ public class Hierarchy {
     }
 
     public static String surface(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) {
-        String result = surface(ctx, itemcsid, uri, true).resultBuffer.toString();
+        return surface(itemcsid, uri, getRelationLister(ctx, itemcsid, true));
+    }
+
+    /**
+     * Renders the terms above itemcsid, listing each term's parents with the given lister.
+     */
+    public static String surface(String itemcsid, String uri, RelationLister parents) {
+        String result = surface(itemcsid, uri, true, parents).resultBuffer.toString();
         result =  "<?xml version='1.0' ?><hierarchy direction='"+direction_parents+"'>"+result+"</hierarchy>";
         try {
             result = XmlTools.prettyPrint(result);
@@ -122,18 +242,8 @@ public class Hierarchy {
         public boolean noParents = false;
     }
     
-    private static SurfaceResultStruct surface(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri, boolean first) {
-        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
-        //Run getList() once as sent to get parentListOuter:
-        queryParams.putSingle(IRelationsManager.PREDICATE_QP, RelationshipType.HAS_BROADER.value());
-        queryParams.putSingle(IRelationsManager.SUBJECT_QP, itemcsid);
-        queryParams.putSingle(IRelationsManager.SUBJECT_TYPE_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_TYPE_QP, null);
-        
-        RelationResource relationResource = new RelationResource();
-        RelationsCommonList parentListOuter = relationResource.getList(ctx);    // Knows all query params because they are in the context.
-        List<RelationsCommonList.RelationListItem> parentList = parentListOuter.getRelationListItem();
+    private static SurfaceResultStruct surface(String itemcsid, String uri, boolean first, RelationLister parents) {
+        List<RelationsCommonList.RelationListItem> parentList = parents.list(itemcsid);
 
         StringBuffer sbOuter = new StringBuffer();
         SurfaceResultStruct resultStruct = new SurfaceResultStruct();
@@ -178,7 +288,7 @@ public class Hierarchy {
             sb.append("<parent>\r\n");
             //sb.append("<parent-uri>" +parentURI + "</parent-uri>\r\n");
 
-            SurfaceResultStruct struct = surface(ctx, parentCSID, parentURI, false);
+            SurfaceResultStruct struct = surface(parentCSID, parentURI, false, parents);
             StringBuffer surfaceResult = struct.resultBuffer;
 
             if (struct.noParents){
@@ -0,0 +1,451 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.common.imaging;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ImageDerivativeGenerator creates scaled copies (derivatives) of an image in the JVM, using ImageIO, as an
+ * alternative to running ImageMagick's command line once per derivative.
+ *
+ * The source image is decoded once for all of the derivatives.  When none of the derivatives need the image's
+ * full resolution, it is decoded with source subsampling -only every Nth pixel of every Nth row is read- so a
+ * large image never has to be held in memory at full size.  Each derivative is then scaled from the next larger
+ * one, halving at most at each step, which keeps the bilinear scaling sharp without the cost of a bicubic one.
+ *
+ * A generator has no state, so one instance can be used by several threads at once.
+ */
+public class ImageDerivativeGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeGenerator.class);
+
+	public static final String FORMAT_JPEG = "jpeg";
+	public static final String FORMAT_PNG = "png";
+	public static final float DEFAULT_JPEG_QUALITY = 0.85f;
+
+	/**
+	 * A derivative to create: its name, the size of its longest side, and the ImageIO format to write it in.
+	 * A "square" derivative is centered on a transparent (or, for JPEG, white) square as large as its longest
+	 * side, like the document thumbnails made with ImageMagick's "-extent" option.
+	 */
+	public static class DerivativeSpec {
+		private final String name;
+		private final int maxSize;
+		private final String formatName;
+		private final boolean square;
+
+		public DerivativeSpec(String name, int maxSize, String formatName) {
+			this(name, maxSize, formatName, false);
+		}
+
+		public DerivativeSpec(String name, int maxSize, String formatName, boolean square) {
+			this.name = name;
+			this.maxSize = maxSize;
+			this.formatName = formatName;
+			this.square = square;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public String getFormatName() {
+			return formatName;
+		}
+
+		public boolean isSquare() {
+			return square;
+		}
+
+		public String getFileExtension() {
+			return FORMAT_JPEG.equalsIgnoreCase(formatName) ? "jpg" : formatName.toLowerCase();
+		}
+
+		public String getMimeType() {
+			return "image/" + formatName.toLowerCase();
+		}
+	}
+
+	/**
+	 * A derivative that was created: its spec, the file it was written to, and its size in pixels.
+	 */
+	public static class Derivative {
+		private final DerivativeSpec spec;
+		private final File file;
+		private final int width;
+		private final int height;
+
+		public Derivative(DerivativeSpec spec, File file, int width, int height) {
+			this.spec = spec;
+			this.file = file;
+			this.width = width;
+			this.height = height;
+		}
+
+		public DerivativeSpec getSpec() {
+			return spec;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+	}
+
+	/**
+	 * The width, height, and pixel depth (bits per color component) of an image, and its ImageIO format name.
+	 */
+	public static class ImageDimensions {
+		private final int width;
+		private final int height;
+		private final int depth;
+		private final String formatName;
+
+		public ImageDimensions(int width, int height, int depth, String formatName) {
+			this.width = width;
+			this.height = height;
+			this.depth = depth;
+			this.formatName = formatName;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public String getFormatName() {
+			return formatName;
+		}
+	}
+
+	private final float jpegQuality;
+
+	public ImageDerivativeGenerator() {
+		this(DEFAULT_JPEG_QUALITY);
+	}
+
+	/**
+	 * @param jpegQuality the JPEG compression quality, from 0 (smallest) to 1 (best)
+	 */
+	public ImageDerivativeGenerator(float jpegQuality) {
+		this.jpegQuality = jpegQuality;
+	}
+
+	/**
+	 * @return true if ImageIO can decode images of this MIME type.  The JDK reads JPEG, PNG, GIF and BMP images;
+	 * other formats (e.g., TIFF on Java 8, or camera RAW formats) have to be left to ImageMagick.
+	 */
+	public static boolean canRead(String mimeType) {
+		return mimeType != null && ImageIO.getImageReadersByMIMEType(mimeType.trim().toLowerCase()).hasNext();
+	}
+
+	/**
+	 * Reads an image's dimensions from its header, without decoding its pixels.
+	 *
+	 * @return the image's dimensions, or null if ImageIO can't read the image
+	 */
+	public static ImageDimensions readDimensions(File file) throws IOException {
+		ImageDimensions result = null;
+
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if (input == null) {
+			return null;
+		}
+		try {
+			ImageReader reader = getReader(input);
+			if (reader != null) try {
+				int depth = 8;
+				Iterator<ImageTypeSpecifier> imageTypes = reader.getImageTypes(0);
+				if (imageTypes.hasNext()) {
+					depth = imageTypes.next().getColorModel().getComponentSize(0);
+				}
+				result = new ImageDimensions(reader.getWidth(0), reader.getHeight(0), depth, reader.getFormatName());
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates the derivatives of an image.  The derivatives' files are created in the output directory, named after the
+	 * derivative and the source file; e.g., "Thumbnail_picture.jpg".  No derivative is larger than the source image.
+	 *
+	 * @return the derivatives, in the order of the specs
+	 * @throws IOException if ImageIO can't read the source image, or a derivative can't be written
+	 */
+	public List<Derivative> generate(File source, List<DerivativeSpec> specs, File outputDir) throws IOException {
+		return generate(source, getBaseName(source.getName()), specs, outputDir);
+	}
+
+	/**
+	 * Creates the derivatives of an image, naming their files after the given base name rather than the source
+	 * file's name; e.g., when the source is a temporary copy of the original.
+	 */
+	public List<Derivative> generate(File source, String baseName, List<DerivativeSpec> specs, File outputDir) throws IOException {
+		Derivative[] result = new Derivative[specs.size()];
+
+		ImageInputStream input = ImageIO.createImageInputStream(source);
+		if (input == null) {
+			throw new IOException(String.format("Could not open the image file '%s'.", source.getAbsolutePath()));
+		}
+		try {
+			ImageReader reader = getReader(input);
+			if (reader == null) {
+				throw new IOException(String.format("The image file '%s' is not in a format that ImageIO can read.",
+						source.getAbsolutePath()));
+			}
+			try {
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				String sourceFormat = reader.getFormatName();
+				//
+				// Full size JPEG derivatives of a JPEG image are just copies of it; the other derivatives
+				// decide how much of the image we need to decode.
+				//
+				int largestScaled = 0;
+				final int[] longestSides = new int[specs.size()];
+				List<Integer> toScale = new ArrayList<Integer>();
+				for (int i = 0; i < specs.size(); i++) {
+					DerivativeSpec spec = specs.get(i);
+					int[] size = getScaledSize(width, height, spec.getMaxSize());
+					longestSides[i] = Math.max(size[0], size[1]);
+					if (size[0] == width && size[1] == height && spec.isSquare() == false
+							&& FORMAT_JPEG.equalsIgnoreCase(sourceFormat) && FORMAT_JPEG.equalsIgnoreCase(spec.getFormatName())) {
+						File target = getOutputFile(outputDir, spec, baseName);
+						Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+						result[i] = new Derivative(spec, target, width, height);
+					} else {
+						largestScaled = Math.max(largestScaled, longestSides[i]);
+						toScale.add(i);
+					}
+				}
+
+				if (toScale.isEmpty() == false) {
+					ImageReadParam readParam = reader.getDefaultReadParam();
+					int subsampling = getSubsampling(width, height, largestScaled);
+					if (subsampling > 1) {
+						readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+					}
+					BufferedImage image = reader.read(0, readParam);
+					if (logger.isDebugEnabled()) {
+						logger.debug(String.format("Decoded the %dx%d image '%s' at %dx%d (subsampling %d).",
+								width, height, source.getName(), image.getWidth(), image.getHeight(), subsampling));
+					}
+					//
+					// Scale from the largest derivative to the smallest, each from the one before.
+					//
+					Collections.sort(toScale, new Comparator<Integer>() {
+						@Override
+						public int compare(Integer a, Integer b) {
+							return longestSides[b] - longestSides[a];
+						}
+					});
+					for (int i : toScale) {
+						DerivativeSpec spec = specs.get(i);
+						int[] size = getScaledSize(width, height, spec.getMaxSize());
+						image = scale(image, size[0], size[1]);
+						File target = getOutputFile(outputDir, spec, baseName);
+						write(image, spec, target);
+						result[i] = new Derivative(spec, target, size[0], size[1]);
+					}
+				}
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * @return the size of an image scaled to fit in a square of maxSize pixels, keeping its aspect ratio.  Images are
+	 * never scaled up, so a maxSize of 0 (or one larger than the image) gives the image's own size.
+	 */
+	public static int[] getScaledSize(int width, int height, int maxSize) {
+		int longest = Math.max(width, height);
+		if (maxSize <= 0 || maxSize >= longest) {
+			return new int[] {width, height};
+		}
+
+		double scale = (double) maxSize / longest;
+		return new int[] {
+				Math.max(1, (int) Math.round(width * scale)),
+				Math.max(1, (int) Math.round(height * scale))};
+	}
+
+	/**
+	 * @return how many source pixels can be skipped per decoded pixel, in each direction, while still decoding the
+	 * image at no less than twice the target size.  Decoding at twice the target size leaves enough detail for a
+	 * smooth final scaling step.
+	 */
+	public static int getSubsampling(int width, int height, int targetSize) {
+		if (targetSize <= 0) {
+			return 1;
+		}
+		return Math.max(1, Math.max(width, height) / (targetSize * 2));
+	}
+
+	/*
+	 * Scales an image down in steps of at most half, with bilinear interpolation.  One bilinear step
+	 * from a much larger image only samples a few of its pixels, which aliases badly.
+	 */
+	private static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight) {
+		BufferedImage result = image;
+
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		int width = image.getWidth();
+		int height = image.getHeight();
+		while (width != targetWidth || height != targetHeight) {
+			width = Math.max(targetWidth, width / 2);
+			height = Math.max(targetHeight, height / 2);
+			BufferedImage step = new BufferedImage(width, height, type);
+			Graphics2D graphics = step.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(result, 0, 0, width, height, null);
+			} finally {
+				graphics.dispose();
+			}
+			result = step;
+		}
+
+		return result;
+	}
+
+	private void write(BufferedImage image, DerivativeSpec spec, File target) throws IOException {
+		BufferedImage output = image;
+		boolean isJpeg = FORMAT_JPEG.equalsIgnoreCase(spec.getFormatName());
+
+		if (spec.isSquare()) {
+			int size = Math.max(image.getWidth(), image.getHeight());
+			output = new BufferedImage(size, size, isJpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = output.createGraphics();
+			try {
+				if (isJpeg) {
+					graphics.setColor(Color.WHITE);
+					graphics.fillRect(0, 0, size, size);
+				}
+				graphics.drawImage(image, (size - image.getWidth()) / 2, (size - image.getHeight()) / 2, null);
+			} finally {
+				graphics.dispose();
+			}
+		} else if (isJpeg && image.getColorModel().hasAlpha()) {
+			// JPEG has no alpha channel, so flatten the image onto white
+			output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = output.createGraphics();
+			try {
+				graphics.drawImage(image, 0, 0, Color.WHITE, null);
+			} finally {
+				graphics.dispose();
+			}
+		}
+
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(spec.getFormatName());
+		if (writers.hasNext() == false) {
+			throw new IOException(String.format("ImageIO can't write images in the format '%s'.", spec.getFormatName()));
+		}
+		ImageWriter writer = writers.next();
+		ImageOutputStream out = ImageIO.createImageOutputStream(target);
+		try {
+			writer.setOutput(out);
+			ImageWriteParam writeParam = writer.getDefaultWriteParam();
+			if (isJpeg) {
+				writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				writeParam.setCompressionQuality(jpegQuality);
+			}
+			writer.write(null, new IIOImage(output, null, null), writeParam);
+		} finally {
+			writer.dispose();
+			out.close();
+		}
+	}
+
+	private static ImageReader getReader(ImageInputStream input) {
+		ImageReader result = null;
+
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (readers.hasNext()) {
+			result = readers.next();
+			result.setInput(input, true, true); // We only read the first image, and not its metadata
+		}
+
+		return result;
+	}
+
+	private static File getOutputFile(File outputDir, DerivativeSpec spec, String baseName) {
+		return new File(outputDir, spec.getName() + "_" + baseName + "." + spec.getFileExtension());
+	}
+
+	/**
+	 * @return the file name without its extension
+	 */
+	public static String getBaseName(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.common.imaging.nuxeo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.Derivative;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.DerivativeSpec;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.platform.picture.PictureViewsGenerationWork;
+import org.nuxeo.ecm.platform.picture.api.ImageInfo;
+import org.nuxeo.ecm.platform.picture.api.ImagingDocumentConstants;
+import org.nuxeo.ecm.platform.picture.api.ImagingService;
+import org.nuxeo.ecm.platform.picture.api.PictureConversion;
+import org.nuxeo.ecm.platform.picture.api.PictureView;
+import org.nuxeo.ecm.platform.picture.listener.PictureViewsGenerationListener;
+import org.nuxeo.runtime.api.Framework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates the picture views (image derivatives) of a Picture document in the JVM, with ImageDerivativeGenerator,
+ * rather than with Nuxeo's ImageMagick based PictureViewsGenerationWork.  It's scheduled after the transaction that
+ * created the document commits, and replaces the document's placeholder views with the real ones.
+ *
+ * Like Nuxeo's work, it fires the "pictureViewsGenerationDone" event when it's done, so our UpdateImageDerivatives
+ * listener still purges the original image when it was asked to.  If ImageIO can't read the image, it hands the
+ * document over to Nuxeo's work instead.
+ *
+ * The views are the enabled picture conversions of Nuxeo's ImagingService, so a conversion contributed to (or
+ * disabled in) the imaging service's "pictureConversions" extension point applies to both kinds of work.  A
+ * conversion's filters aren't evaluated; they select conversions per document, which we don't do.
+ *
+ * The works run on their own Nuxeo work queue, whose number of threads bounds how many images are processed at once.
+ * The queue is contributed by the updateimagederivatives listener bundle.
+ */
+public class JavaPictureViewsWork extends AbstractWork {
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = LoggerFactory.getLogger(JavaPictureViewsWork.class);
+
+	public static final String CATEGORY = "cspacePictureViews";
+	private static final String FILE_CONTENT_PROPERTY = "file:content";
+
+	public JavaPictureViewsWork(String repositoryName, String docId) {
+		super(repositoryName + ':' + docId + ':' + CATEGORY);
+		setDocument(repositoryName, docId);
+	}
+
+	@Override
+	public String getCategory() {
+		return CATEGORY;
+	}
+
+	@Override
+	public String getTitle() {
+		return "CollectionSpace picture views generation";
+	}
+
+	@Override
+	public void work() {
+		setStatus("Generating views");
+		openSystemSession();
+
+		DocumentRef docRef = new IdRef(docId);
+		if (session.exists(docRef) == false) {
+			setStatus("Nothing to process");
+			return;
+		}
+		DocumentModel doc = session.getDocument(docRef);
+		Blob blob = (Blob) doc.getPropertyValue(FILE_CONTENT_PROPERTY);
+		if (blob == null) {
+			setStatus("Nothing to process");
+			return;
+		}
+
+		File outputDir = null;
+		try {
+			outputDir = Files.createTempDirectory("cspace-views").toFile();
+			List<PictureConversion> conversions = getPictureConversions();
+			List<Derivative> derivatives;
+			String baseName = ImageDerivativeGenerator.getBaseName(blob.getFilename() != null ? blob.getFilename() : doc.getName());
+			try (CloseableFile source = blob.getCloseableFile()) {
+				derivatives = new ImageDerivativeGenerator().generate(source.getFile(), baseName,
+						toDerivativeSpecs(conversions), outputDir);
+			} catch (IOException e) {
+				logger.warn(String.format("Could not create the picture views of '%s' in the JVM; using ImageMagick instead: %s",
+						blob.getFilename(), e.getMessage()));
+				Framework.getService(WorkManager.class).schedule(
+						new PictureViewsGenerationWork(repositoryName, docId, FILE_CONTENT_PROPERTY));
+				return;
+			}
+
+			setStatus("Saving");
+			doc.setPropertyValue(ImagingDocumentConstants.PICTURE_VIEWS_PROPERTY, (Serializable) toViews(conversions, derivatives));
+			doc.putContextData(PictureViewsGenerationListener.DISABLE_PICTURE_VIEWS_GENERATION_LISTENER, Boolean.TRUE);
+			doc = session.saveDocument(doc);
+			firePictureViewsGenerationDoneEvent(doc);
+			setStatus("Done");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (outputDir != null) {
+				FileUtils.deleteQuietly(outputDir); // the views' blobs were copied into the repository when we saved
+			}
+		}
+	}
+
+	/*
+	 * The enabled picture conversions of Nuxeo's ImagingService, in their order.
+	 */
+	private static List<PictureConversion> getPictureConversions() {
+		List<PictureConversion> result = new ArrayList<PictureConversion>();
+
+		for (PictureConversion conversion : Framework.getService(ImagingService.class).getPictureConversions()) {
+			if (conversion.isEnabled()) {
+				result.add(conversion);
+			}
+		}
+		Collections.sort(result);
+
+		return result;
+	}
+
+	/**
+	 * The derivatives to create for picture conversions: a JPEG named after each conversion's ID, no larger than its
+	 * maximum size.  A conversion without a maximum size (e.g., Nuxeo's "OriginalJpeg") is the image's own size.
+	 */
+	public static List<DerivativeSpec> toDerivativeSpecs(List<PictureConversion> conversions) {
+		List<DerivativeSpec> result = new ArrayList<DerivativeSpec>();
+
+		for (PictureConversion conversion : conversions) {
+			Integer maxSize = conversion.getMaxSize();
+			result.add(new DerivativeSpec(conversion.getId(), maxSize != null ? maxSize : 0, ImageDerivativeGenerator.FORMAT_JPEG));
+		}
+
+		return result;
+	}
+
+	/*
+	 * The picture:views property value for the derivatives of the conversions, as Nuxeo's ImagingService would create it.
+	 */
+	private static List<Map<String, Serializable>> toViews(List<PictureConversion> conversions, List<Derivative> derivatives)
+			throws IOException {
+		List<Map<String, Serializable>> result = new ArrayList<Map<String, Serializable>>();
+
+		for (int i = 0; i < derivatives.size(); i++) {
+			PictureConversion conversion = conversions.get(i);
+			Derivative derivative = derivatives.get(i);
+			String filename = derivative.getFile().getName();
+			Blob content = Blobs.createBlob(derivative.getFile(), derivative.getSpec().getMimeType());
+			content.setFilename(filename);
+
+			ImageInfo info = new ImageInfo();
+			info.setWidth(derivative.getWidth());
+			info.setHeight(derivative.getHeight());
+			info.setDepth(8);
+			info.setFormat(derivative.getSpec().getFormatName().toUpperCase());
+			info.setColorSpace("sRGB");
+
+			Map<String, Serializable> view = new HashMap<String, Serializable>();
+			view.put(PictureView.FIELD_TITLE, conversion.getId());
+			view.put(PictureView.FIELD_DESCRIPTION, conversion.getDescription());
+			view.put(PictureView.FIELD_TAG, conversion.getTag());
+			view.put(PictureView.FIELD_WIDTH, derivative.getWidth());
+			view.put(PictureView.FIELD_HEIGHT, derivative.getHeight());
+			view.put(PictureView.FIELD_FILENAME, filename);
+			view.put(PictureView.FIELD_CONTENT, (Serializable) content);
+			view.put(PictureView.FIELD_INFO, (Serializable) info.toMap());
+			result.add(view);
+		}
+
+		return result;
+	}
+
+	private void firePictureViewsGenerationDoneEvent(DocumentModel doc) {
+		DocumentEventContext eventContext = new DocumentEventContext(session, session.getPrincipal(), doc);
+		Event event = eventContext.newEvent(PictureViewsGenerationWork.PICTURE_VIEWS_GENERATION_DONE_EVENT);
+		Framework.getService(EventService.class).fireEvent(event);
+	}
+}
@@ -29,7 +29,9 @@ package org.collectionspace.services.common.imaging.nuxeo;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Collection;
@@ -48,6 +50,7 @@ import org.nuxeo.ecm.platform.picture.api.PictureView;
 import org.nuxeo.ecm.platform.mimetype.MimetypeDetectionException;
 import org.nuxeo.ecm.platform.mimetype.interfaces.MimetypeRegistry;
 import org.nuxeo.ecm.platform.picture.api.adapters.PictureBlobHolder;
+import org.nuxeo.ecm.platform.picture.listener.PictureViewsGenerationListener;
 import org.nuxeo.ecm.platform.filemanager.api.FileManager;
 import org.nuxeo.ecm.platform.filemanager.service.FileManagerService;
 import org.nuxeo.ecm.platform.filemanager.service.extension.FileImporter;
@@ -61,11 +64,13 @@ import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 import org.nuxeo.ecm.core.api.model.Property;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.CloseableFile;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.PropertyException;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.work.api.WorkManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,10 +81,14 @@ import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.common.FileUtilities;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.blob.BlobInput;
+import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
+import org.collectionspace.services.common.config.TenantBindingUtils;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.DocumentException;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.document.TransactionException;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.ImageDimensions;
 import org.collectionspace.services.common.repository.RepositoryClient;
 import org.collectionspace.services.common.api.CommonAPI;
 import org.collectionspace.services.common.api.GregorianCalendarDateTimeUtils;
@@ -96,6 +105,7 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoRepositoryClientImpl;
 import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.collectionspace.services.nuxeo.util.ThumbnailConstants;
 import org.collectionspace.services.config.service.ListResultField;
+import org.collectionspace.services.config.tenant.TenantBindingType;
 
 /**
  * Use Nuxeo's FileBlob class to create a temporary file that Nuxeo manages.
@@ -207,6 +217,16 @@ public class NuxeoBlobUtils {
 	public static final String SCHEMA_IPTC = "iptc";
 	public static final String SCHEMA_IMAGE_METADATA = "image_metadata";
 
+	//
+	// The tenant property that chooses how image derivatives and thumbnails are created: with ImageMagick, by Nuxeo, while
+	// the image is created ("imagemagick", the default) or in the JVM, after the image is created ("java").
+	//
+	public static final String IMAGE_DERIVATIVE_GENERATOR_PROPERTY = "imageDerivativeGenerator";
+	public static final String IMAGE_DERIVATIVE_GENERATOR_IMAGEMAGICK = "imagemagick";
+	public static final String IMAGE_DERIVATIVE_GENERATOR_JAVA = "java";
+	private static final String PICTURE_CONTENT_PROPERTY = "file:content";
+	private static final String PICTURE_TITLE_PROPERTY = "dc:title";
+
 	/**
 	 * Instantiates a new nuxeo image utils.
 	 */
@@ -395,13 +415,19 @@ public class NuxeoBlobUtils {
 	}
 	
 	static private MeasuredPartGroupList getDimensions(
-			DocumentModel documentModel, Blob nuxeoBlob) {
+			DocumentModel documentModel, Blob nuxeoBlob, boolean useJavaImaging) {
 		MeasuredPartGroupList result = null;
 		
 		if (isImageMedia(nuxeoBlob) == true) try {
-			ImagingService service = Framework.getService(ImagingService.class);
-			ImageInfo imageInfo = service.getImageInfo(nuxeoBlob);
-			Map<String, Object> metadataMap = getMetadata(nuxeoBlob);
+			ImageInfo imageInfo = null;
+			if (useJavaImaging == true && ImageDerivativeGenerator.canRead(nuxeoBlob.getMimeType())) {
+				imageInfo = getImageInfo(nuxeoBlob); // Reads the image's header, rather than asking ImageMagick
+			}
+			if (imageInfo == null) {
+				ImagingService service = Framework.getService(ImagingService.class);
+				imageInfo = service.getImageInfo(nuxeoBlob);
+				Map<String, Object> metadataMap = getMetadata(nuxeoBlob);
+			}
 
 			if (imageInfo != null) {
 				//
@@ -469,6 +495,52 @@ public class NuxeoBlobUtils {
 		return result;
 	}
 
+	/*
+	 * Gets an image's dimensions from its header, with ImageIO.  Returns null if ImageIO can't read it.
+	 */
+	static private ImageInfo getImageInfo(Blob nuxeoBlob) throws IOException {
+		ImageInfo result = null;
+
+		try (CloseableFile file = nuxeoBlob.getCloseableFile()) {
+			ImageDimensions dimensions = ImageDerivativeGenerator.readDimensions(file.getFile());
+			if (dimensions != null) {
+				result = new ImageInfo();
+				result.setWidth(dimensions.getWidth());
+				result.setHeight(dimensions.getHeight());
+				result.setDepth(dimensions.getDepth());
+				result.setFormat(dimensions.getFormatName().toUpperCase());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if the tenant's image derivatives are created in the JVM (see ImageDerivativeGenerator), rather
+	 * than with ImageMagick.
+	 */
+	static public boolean isJavaImageDerivativeGenerator(ServiceContext ctx) {
+		return ctx != null && isJavaImageDerivativeGenerator(ctx.getTenantId());
+	}
+
+	/**
+	 * Returns true if the tenant's image derivatives, and the thumbnails of its blobs, are created in the JVM.  This is
+	 * the one setting for both, so the Nuxeo listeners ask it too, with the tenant ID of the document they're handling.
+	 */
+	static public boolean isJavaImageDerivativeGenerator(String tenantId) {
+		boolean result = false;
+
+		if (tenantId != null) {
+			TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+			TenantBindingType tenantBinding = tReader.getTenantBinding(tenantId);
+			String generator = tenantBinding != null ?
+					TenantBindingUtils.getPropertyValue(tenantBinding, IMAGE_DERIVATIVE_GENERATOR_PROPERTY) : null;
+			result = IMAGE_DERIVATIVE_GENERATOR_JAVA.equalsIgnoreCase(generator == null ? null : generator.trim());
+		}
+
+		return result;
+	}
+
 	// FIXME: Add error checking here, as none of these calls return an
 	// Exception
 	static private BigDecimal intToBigDecimal(int i) {
@@ -511,7 +583,7 @@ public class NuxeoBlobUtils {
 			//
 			if (getContentFlag.booleanValue() == false) {
 				MeasuredPartGroupList measuredPartGroupList = getDimensions(
-						documentModel, nuxeoBlob);
+						documentModel, nuxeoBlob, isJavaImageDerivativeGenerator(ctx));
 				if (measuredPartGroupList != null) {
 					result.setMeasuredPartGroupList(measuredPartGroupList);
 				}
@@ -672,11 +744,20 @@ public class NuxeoBlobUtils {
             String blobLocation, 
             boolean overwrite, 
             String blobName, 
-            boolean useNuxeoAdaptors) throws Exception {
+            boolean useNuxeoAdaptors,
+            boolean useJavaImaging) throws Exception {
 		DocumentModel result = null;
 		
-		boolean createdFromAdaptor = false;		
-		if (useNuxeoAdaptors == true) try {
+		boolean createdFromAdaptor = false;
+		if (useNuxeoAdaptors == true && useJavaImaging == true) {
+			inputStreamBlob = checkMimeType(inputStreamBlob, blobName);
+			if (ImageDerivativeGenerator.canRead(inputStreamBlob.getMimeType())) {
+				result = createPictureDocument(repoSession, inputStreamBlob, blobLocation, blobName);
+				createdFromAdaptor = true;
+			}
+		}
+
+		if (useNuxeoAdaptors == true && createdFromAdaptor == false) try {
 			//
 			// Use Nuxeo's high-level create method which looks for plugin adapters that match the MIME type.  For example,
 			// for image blobs, Nuxeo's file manager will pick a special image plugin that will automatically generate
@@ -707,6 +788,32 @@ public class NuxeoBlobUtils {
 		
 		return result;
 	}
+
+	/*
+	 * Creates a Picture document like Nuxeo's image import plugin does, but with Nuxeo's generation of its views
+	 * turned off.  The document starts with Nuxeo's placeholder views, which a JavaPictureViewsWork replaces with
+	 * the real ones once our transaction has committed.
+	 */
+	private static DocumentModel createPictureDocument(
+			CoreSessionInterface repoSession,
+			Blob blob,
+			String blobLocation,
+			String blobName) throws Exception {
+		DocumentModel result = repoSession.createDocumentModel(blobLocation, blobName,
+				ImagingDocumentConstants.PICTURE_TYPE_NAME);
+		result.setPropertyValue(PICTURE_TITLE_PROPERTY, blobName);
+		result.setPropertyValue(PICTURE_CONTENT_PROPERTY, (Serializable) blob);
+		result.putContextData(PictureViewsGenerationListener.DISABLE_PICTURE_VIEWS_GENERATION_LISTENER, Boolean.TRUE);
+		result = repoSession.createDocument(result);
+
+		Framework.getService(WorkManager.class).schedule(
+				new JavaPictureViewsWork(result.getRepositoryName(), result.getId()), true); // true = after commit
+		if (logger.isDebugEnabled() == true) {
+			logger.debug(String.format("Scheduled the creation of the picture views of '%s' in the JVM.", blobName));
+		}
+
+		return result;
+	}
 	
 	static public BlobsCommon createBlobInRepository(
 			ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
@@ -736,7 +843,8 @@ public class NuxeoBlobUtils {
 		            blobLocation.getPathAsString(), 
 		            false, 
 		            blobName,
-		            useNuxeoAdaptors);
+		            useNuxeoAdaptors,
+		            isJavaImageDerivativeGenerator(ctx));
 			result = createBlobsCommon(ctx, documentModel, inputStreamBlob); // Now create the metadata about the Nuxeo blob document
 		} catch (Exception e) {
 			result = null;
@@ -871,7 +979,8 @@ public class NuxeoBlobUtils {
 					blobLocation.getPathAsString(),
 					false,
 					file.getName(),
-					useNuxeoAdaptors);
+					useNuxeoAdaptors,
+					isJavaImageDerivativeGenerator(ctx));
 
 			result = createBlobsCommon(ctx, documentModel, fileBlob); // Now create our metadata resource document
 
@@ -1032,6 +1141,26 @@ public class NuxeoBlobUtils {
 		return result;
 	}
 	
+	//
+	// Returns the plain file backing the blob, or null if the blob isn't stored in a readable file.
+	//
+	static private File getFileOfBlob(Blob blob) {
+		File result = null;
+
+		if (blob != null) {
+			try {
+				File file = blob.getFile();
+				if (file != null && file.isFile() && file.canRead()) {
+					result = file;
+				}
+			} catch (Exception e) {
+				logger.debug(String.format("Could not get the file of blob %s.", blob.getFilename()), e);
+			}
+		}
+
+		return result;
+	}
+
     static public Set<String> getPictureViewNameSet(CoreSessionInterface repoSession, String repositoryId) throws PropertyException {
         Set<String> result = null;
         
@@ -1065,6 +1194,21 @@ public class NuxeoBlobUtils {
 			String derivativeTerm,
 			Boolean getContentFlag,
 			StringBuffer outMimeType) throws DocumentNotFoundException {
+		return getBlobOutput(ctx, repoSession, repositoryId, derivativeTerm, getContentFlag,
+				BlobInput.ContentStreamPolicy.ALWAYS, outMimeType);
+	}
+
+	/*
+	 * Like getBlobOutput() above, but with the content stream only opened as allowed by the given policy.
+	 * The plain file holding the content, if any, is always reported when the content is requested.
+	 */
+	static public BlobOutput getBlobOutput(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+			CoreSessionInterface repoSession,
+			String repositoryId,
+			String derivativeTerm,
+			Boolean getContentFlag,
+			BlobInput.ContentStreamPolicy streamPolicy,
+			StringBuffer outMimeType) throws DocumentNotFoundException {
 		BlobOutput result = new BlobOutput();
 		boolean isNonImageDerivative = false;
 
@@ -1128,9 +1272,21 @@ public class NuxeoBlobUtils {
 				if (getContentFlag == true) {
 					InputStream remoteStream = null;
 					if (isNonImageDerivative == false) {
-						//remoteStream = docBlob.getStream();
-						remoteStream = getInputStream(blobsCommon, docBlob); // CSPACE-6110 - For small files, return a byte array instead of a file stream
+						File blobFile = getFileOfBlob(docBlob);
+						result.setBlobFile(blobFile);
+						if (streamPolicy == BlobInput.ContentStreamPolicy.ALWAYS
+								|| (streamPolicy == BlobInput.ContentStreamPolicy.UNLESS_FILE && blobFile == null)) {
+							//remoteStream = docBlob.getStream();
+							remoteStream = getInputStream(blobsCommon, docBlob); // CSPACE-6110 - For small files, return a byte array instead of a file stream
+						}
+					} else if (streamPolicy == BlobInput.ContentStreamPolicy.NEVER) {
+						// The placeholder image's length isn't known without reading it
+						blobsCommon.setLength(null);
+						blobsCommon.setDigest(null);
+						outMimeType.append(MIME_JPEG);
 					} else { // If its a derivative request on a non-image blob, then return just a document image thumbnail
+						blobsCommon.setLength(null); // the length and digest are the document's, not the placeholder's
+						blobsCommon.setDigest(null);
 						String docBlobMimetype = docBlob.getMimeType();
 						switch(docBlobMimetype) {
 							case MIME_CSV:
@@ -25,6 +25,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.collectionspace.services.client.Profiler;
 import org.collectionspace.services.common.ServletTools;
@@ -38,8 +39,11 @@ import org.slf4j.LoggerFactory;
  * A filter that performs specified actions at the time
  * each new request is received by the servlet container.
  *
- * This filter is currently used for recording performance
- * metrics for requests to the CollectionSpace services.
+ * This filter records the latency, status, and repository usage of
+ * each request in ServiceMetrics.  The CSV performance log lines of
+ * earlier releases are still written when the "perf.collectionspace"
+ * logger is set to TRACE; they cost a good deal more than the metrics,
+ * so they are off by default.
  *
  * $LastChangedRevision: $
  * $LastChangedDate: $
@@ -47,10 +51,12 @@ import org.slf4j.LoggerFactory;
  */
 public class CSpaceFilter implements Filter {
     final Logger logger = LoggerFactory.getLogger(CSpaceFilter.class);
+    final static Logger csvLogger = LoggerFactory.getLogger("perf.collectionspace");
 
     /** The filter config. */
     FilterConfig filterConfig = null;
     private final String CLASS_NAME = this.getClass().getSimpleName();
+    private final ServiceMetrics metrics = ServiceMetrics.getInstance();
 
     /* (non-Javadoc)
      * @see javax.servlet.Filter#destroy()
@@ -68,54 +74,78 @@ public class CSpaceFilter implements Filter {
             FilterChain chain) throws IOException, ServletException {
         if (request != null) {
             HttpServletRequest httpRequest = (HttpServletRequest) request;
+            if (csvLogger.isTraceEnabled()) {
+                doFilterWithCsvLog(httpRequest, response, chain);
+                return;
+            }
 
-            // Instantiate the CollectionSpace services profiler.
-            StringBuffer uri = new StringBuffer(httpRequest.getRequestURI());
-            uri.append(':');
-            uri.append(httpRequest.getMethod());
-            Profiler profiler = new Profiler(uri.toString(), 0);
-            Profiler csvProfiler = new Profiler("org.collectionspace.perf.csv");
-
-            // Start timing.
-            profiler.start();
-
-            // Write a CSV-delimited message to the performance log,
-            // in a format intended to be interoperable with those
-            // generated by other system layers.
-            String csvMsg =
-                    profiler.getStartTime()
-                    + "," + profiler.getElapsedTime()
-                    + "," + "request"
-                    + "," + "app"
-                    + "," + "svc"
-                    + "," + httpRequest.getMethod()
-                    + "," + ServletTools.getURL(httpRequest)
-                    + "," + CLASS_NAME
-                    + "," + Thread.currentThread().getName();
-           final boolean FORMAT_LOG_MESSAGE = false;
-           profiler.log(csvMsg, FORMAT_LOG_MESSAGE);
-
-            // Process the request.
-            chain.doFilter(request, response);
-
-            // Stop timing and log performance-related metrics.
-            profiler.stop();
-
-            csvMsg =
-                    profiler.getStopTime()
-                    + "," + profiler.getElapsedTime()
-                    + "," + "response"
-                    + "," + "svc"
-                    + "," + "app"
-                    + "," + httpRequest.getMethod()
-                    + "," + ServletTools.getURL(httpRequest)
-                    + "," + CLASS_NAME
-                    + "," + Thread.currentThread().getName();
-            profiler.log(csvMsg, FORMAT_LOG_MESSAGE);
-
-            profiler.reset();
+            long start = System.nanoTime();
+            int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR; // In case the chain throws
+            metrics.beginRequest();
+            try {
+                chain.doFilter(request, response);
+                status = ((HttpServletResponse) response).getStatus();
+            } finally {
+                metrics.endRequest(httpRequest.getMethod(), status, System.nanoTime() - start);
+            }
         }
     }
+
+    private void doFilterWithCsvLog(HttpServletRequest httpRequest, ServletResponse response,
+            FilterChain chain) throws IOException, ServletException {
+        // Instantiate the CollectionSpace services profiler.
+        StringBuffer uri = new StringBuffer(httpRequest.getRequestURI());
+        uri.append(':');
+        uri.append(httpRequest.getMethod());
+        Profiler profiler = new Profiler(uri.toString(), 0);
+
+        // Start timing.
+        profiler.start();
+
+        // Write a CSV-delimited message to the performance log,
+        // in a format intended to be interoperable with those
+        // generated by other system layers.
+        String csvMsg =
+                profiler.getStartTime()
+                + "," + profiler.getElapsedTime()
+                + "," + "request"
+                + "," + "app"
+                + "," + "svc"
+                + "," + httpRequest.getMethod()
+                + "," + ServletTools.getURL(httpRequest)
+                + "," + CLASS_NAME
+                + "," + Thread.currentThread().getName();
+        final boolean FORMAT_LOG_MESSAGE = false;
+        profiler.log(csvMsg, FORMAT_LOG_MESSAGE);
+
+        // Process the request.
+        long start = System.nanoTime();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        metrics.beginRequest();
+        try {
+            chain.doFilter(httpRequest, response);
+            status = ((HttpServletResponse) response).getStatus();
+        } finally {
+            metrics.endRequest(httpRequest.getMethod(), status, System.nanoTime() - start);
+        }
+
+        // Stop timing and log performance-related metrics.
+        profiler.stop();
+
+        csvMsg =
+                profiler.getStopTime()
+                + "," + profiler.getElapsedTime()
+                + "," + "response"
+                + "," + "svc"
+                + "," + "app"
+                + "," + httpRequest.getMethod()
+                + "," + ServletTools.getURL(httpRequest)
+                + "," + CLASS_NAME
+                + "," + Thread.currentThread().getName();
+        profiler.log(csvMsg, FORMAT_LOG_MESSAGE);
+
+        profiler.reset();
+    }
     
     /* (non-Javadoc)
      * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
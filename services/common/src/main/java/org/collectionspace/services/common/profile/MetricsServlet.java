@@ -0,0 +1,245 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.profile;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.collectionspace.authentication.AuthN;
+import org.collectionspace.authentication.spring.CSpaceUserCache;
+import org.collectionspace.services.authorization.AuthZ;
+import org.collectionspace.services.authorization.spring.LookupTimingHistogram;
+import org.collectionspace.services.common.BackgroundTaskExecutor;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
+import org.collectionspace.services.nuxeo.client.java.NuxeoQueryLocalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * MetricsServlet publishes ServiceMetrics, along with the statistics of the services' caches and
+ * background executor and the startup timings, in the Prometheus text format, so a local agent
+ * (or curl) can scrape them without any other collector.
+ *
+ * Like the other services, /metrics requires authentication.  Since the metrics cover every tenant,
+ * they are only served to users with the Spring admin role, not to tenant administrators, so a
+ * scraper needs the credentials of a system administrator.
+ */
+public class MetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	final static Logger logger = LoggerFactory.getLogger(MetricsServlet.class);
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!isAdministrator(SecurityContextHolder.getContext().getAuthentication())) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Metrics are only available to administrators.");
+			return;
+		}
+
+		response.setContentType(CONTENT_TYPE);
+		PrintWriter out = response.getWriter();
+		writeMetrics(out, ServiceMetrics.getInstance());
+		writeComponentMetrics(out);
+		out.flush();
+	}
+
+	/**
+	 * @return true if the authenticated user has the Spring admin role.  A tenant administrator role
+	 * isn't enough, since the metrics aren't limited to the administrator's tenant.
+	 */
+	public static boolean isAdministrator(Authentication authentication) {
+		if (authentication == null || !authentication.isAuthenticated()) {
+			return false;
+		}
+		for (GrantedAuthority authority : authentication.getAuthorities()) {
+			if (AuthN.ROLE_SPRING_ADMIN_NAME.equals(authority.getAuthority())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the request, repository and query metrics
+	 */
+	public static void writeMetrics(PrintWriter out, ServiceMetrics metrics) {
+		writeHeader(out, "cspace_http_requests_in_flight", "gauge", "Requests being served");
+		writeSample(out, "cspace_http_requests_in_flight", null, metrics.getInFlightCount());
+		writeHeader(out, "cspace_http_requests_in_flight_max", "gauge", "Most requests served at the same time since startup");
+		writeSample(out, "cspace_http_requests_in_flight_max", null, metrics.getMaxInFlightCount());
+
+		Map<String, ServiceMetrics.EndpointStats> endpoints = metrics.getEndpointStats();
+		writeHeader(out, "cspace_http_request_seconds", "summary", "Request latency by endpoint");
+		for (Map.Entry<String, ServiceMetrics.EndpointStats> entry : endpoints.entrySet()) {
+			writeSummary(out, "cspace_http_request_seconds", endpointLabels(entry.getKey()), entry.getValue().getLatency());
+		}
+		writeHeader(out, "cspace_http_request_errors_total", "counter", "Error responses by endpoint and status class");
+		for (Map.Entry<String, ServiceMetrics.EndpointStats> entry : endpoints.entrySet()) {
+			String labels = endpointLabels(entry.getKey());
+			writeSample(out, "cspace_http_request_errors_total", labels + ",status=\"4xx\"", entry.getValue().getClientErrorCount());
+			writeSample(out, "cspace_http_request_errors_total", labels + ",status=\"5xx\"", entry.getValue().getServerErrorCount());
+		}
+		writeHeader(out, "cspace_http_request_queries_total", "counter", "NXQL queries made while serving each endpoint");
+		for (Map.Entry<String, ServiceMetrics.EndpointStats> entry : endpoints.entrySet()) {
+			writeSample(out, "cspace_http_request_queries_total", endpointLabels(entry.getKey()), entry.getValue().getQueryCount());
+		}
+		writeHeader(out, "cspace_http_request_jdbc_calls_total", "counter", "JDBC calls made while serving each endpoint");
+		for (Map.Entry<String, ServiceMetrics.EndpointStats> entry : endpoints.entrySet()) {
+			writeSample(out, "cspace_http_request_jdbc_calls_total", endpointLabels(entry.getKey()), entry.getValue().getJdbcCallCount());
+		}
+
+		writeHeader(out, "cspace_repository_sessions_open", "gauge", "Open repository sessions");
+		writeSample(out, "cspace_repository_sessions_open", null, metrics.getOpenSessionCount());
+		writeHeader(out, "cspace_repository_session_open_seconds", "summary", "Time to open a repository session and its transaction");
+		writeSummary(out, "cspace_repository_session_open_seconds", null, metrics.getSessionOpenTimings());
+		writeHeader(out, "cspace_repository_session_seconds", "summary", "Time repository sessions are held open");
+		writeSummary(out, "cspace_repository_session_seconds", null, metrics.getSessionTimings());
+		writeHeader(out, "cspace_repository_commit_seconds", "summary", "Time to save a repository session and commit its transaction");
+		writeSummary(out, "cspace_repository_commit_seconds", null, metrics.getCommitTimings());
+		writeHeader(out, "cspace_nxql_query_seconds", "summary", "NXQL query latency");
+		writeSummary(out, "cspace_nxql_query_seconds", null, metrics.getQueryTimings());
+		writeHeader(out, "cspace_jdbc_call_seconds", "summary", "Latency of JDBC calls made through JDBCTools");
+		writeSummary(out, "cspace_jdbc_call_seconds", null, metrics.getJdbcTimings());
+	}
+
+	/*
+	 * Writes the statistics kept by other components.  A component that isn't available (e.g., because
+	 * startup failed) is skipped.
+	 */
+	private static void writeComponentMetrics(PrintWriter out) {
+		LookupTimingHistogram authzTimings = AuthZ.get().getPermissionLookupTimings();
+		if (authzTimings != null) {
+			writeHeader(out, "cspace_authz_lookup_seconds", "summary", "Permission lookup latency");
+			writeSummary(out, "cspace_authz_lookup_seconds", null, authzTimings);
+		}
+		LookupTimingHistogram authzCompileTimings = AuthZ.get().getPermissionCompileTimings();
+		if (authzCompileTimings != null) {
+			writeHeader(out, "cspace_authz_compile_seconds", "summary", "Latency of compiling an ACL into permission decisions");
+			writeSummary(out, "cspace_authz_compile_seconds", null, authzCompileTimings);
+		}
+
+		RefNameResolutionCache refNameCache = RefNameResolutionCache.getInstance();
+		writeCounter(out, "cspace_refname_cache_hits_total", "RefName resolution cache hits", refNameCache.getHitCount());
+		writeCounter(out, "cspace_refname_cache_misses_total", "RefName resolution cache misses", refNameCache.getMissCount());
+		writeCounter(out, "cspace_refname_cache_stale_total", "RefName resolution cache entries found stale", refNameCache.getStaleCount());
+		writeCounter(out, "cspace_refname_cache_evictions_total", "RefName resolution cache evictions", refNameCache.getEvictionCount());
+		writeGauge(out, "cspace_refname_cache_size", "RefName resolution cache entries", refNameCache.size());
+
+		writeCounter(out, "cspace_nxql_timestamp_rewrites_total", "NXQL queries whose TIMESTAMP literals were rewritten into local time",
+				NuxeoQueryLocalizer.getRewrittenCount());
+
+		CSpaceUserCache userCache = CSpaceUserCache.getInstance();
+		writeCounter(out, "cspace_user_cache_hits_total", "User cache hits", userCache.getHitCount());
+		writeCounter(out, "cspace_user_cache_misses_total", "User cache misses", userCache.getMissCount());
+		writeCounter(out, "cspace_user_cache_invalidations_total", "User cache invalidations", userCache.getInvalidationCount());
+		writeCounter(out, "cspace_user_loads_total", "Users loaded from the database", userCache.getLoadCount());
+		writeGauge(out, "cspace_user_load_mean_seconds", "Mean time to load a user", userCache.getMeanLoadMillis() / 1000.0);
+		writeGauge(out, "cspace_user_cache_size", "User cache entries", userCache.size());
+
+		// Don't start the executor just to report on it, nor restart it once it has been released
+		BackgroundTaskExecutor executor = BackgroundTaskExecutor.getInstanceIfStarted();
+		if (executor != null) {
+			writeGauge(out, "cspace_background_tasks_pending", "Background tasks queued, running or waiting for a retry", executor.getPendingCount());
+			writeGauge(out, "cspace_background_tasks_active", "Background tasks running", executor.getActiveCount());
+			writeCounter(out, "cspace_background_tasks_completed_total", "Background tasks completed", executor.getCompletedCount());
+			writeCounter(out, "cspace_background_tasks_failed_total", "Background tasks that failed", executor.getFailedCount());
+			writeCounter(out, "cspace_background_tasks_rejected_total", "Background tasks rejected because the queue was full", executor.getRejectedCount());
+		}
+
+		try {
+			Map<String, Long> phases = ServiceMain.getInstance().getStartupTimings().getPhaseMillis();
+			writeHeader(out, "cspace_startup_phase_seconds", "gauge", "Duration of each startup phase");
+			for (Map.Entry<String, Long> entry : phases.entrySet()) {
+				writeSample(out, "cspace_startup_phase_seconds", "phase=\"" + escape(entry.getKey()) + "\"", entry.getValue() / 1000.0);
+			}
+		} catch (RuntimeException e) {
+			logger.debug("Startup timings are not available: " + e.getMessage());
+		}
+	}
+
+	private static String endpointLabels(String endpointKey) {
+		int space = endpointKey.indexOf(' ');
+		String method = space > 0 ? endpointKey.substring(0, space) : "";
+		String endpoint = space > 0 ? endpointKey.substring(space + 1) : endpointKey;
+		return "method=\"" + escape(method) + "\",endpoint=\"" + escape(endpoint) + "\"";
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static void writeHeader(PrintWriter out, String name, String type, String help) {
+		out.print("# HELP ");
+		out.print(name);
+		out.print(' ');
+		out.println(help);
+		out.print("# TYPE ");
+		out.print(name);
+		out.print(' ');
+		out.println(type);
+	}
+
+	private static void writeSample(PrintWriter out, String name, String labels, double value) {
+		out.print(name);
+		if (labels != null) {
+			out.print('{');
+			out.print(labels);
+			out.print('}');
+		}
+		out.print(' ');
+		out.println(value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value));
+	}
+
+	private static void writeCounter(PrintWriter out, String name, String help, long value) {
+		writeHeader(out, name, "counter", help);
+		writeSample(out, name, null, value);
+	}
+
+	private static void writeGauge(PrintWriter out, String name, String help, double value) {
+		writeHeader(out, name, "gauge", help);
+		writeSample(out, name, null, value);
+	}
+
+	private static void writeSummary(PrintWriter out, String name, String labels, LookupTimingHistogram histogram) {
+		String prefix = labels != null ? labels + "," : "";
+		for (double quantile : QUANTILES) {
+			writeSample(out, name, prefix + "quantile=\"" + quantile + "\"", histogram.getPercentile(quantile * 100) / 1e9);
+		}
+		writeSample(out, name + "_sum", labels, histogram.getTotalNanos() / 1e9);
+		writeSample(out, name + "_count", labels, histogram.getCount());
+	}
+}
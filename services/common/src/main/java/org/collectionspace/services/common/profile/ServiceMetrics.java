@@ -0,0 +1,384 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.profile;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.Path;
+
+import org.collectionspace.services.authorization.spring.LookupTimingHistogram;
+
+/**
+ * ServiceMetrics is the always-on, in-process metrics registry of the services layer.  It keeps:
+ *
+ *   - per endpoint (HTTP method and JAX-RS path template) latency histograms, error counts, and
+ *     the number of NXQL queries and JDBC calls made while serving the endpoint's requests
+ *   - the number of requests in flight
+ *   - the number of open repository sessions, and how long sessions are held and commits take
+ *   - NXQL query and JDBC call latencies
+ *
+ * Recording is lock-free (apart from the first request to an endpoint), and allocates nothing but
+ * one small object per request, so the metrics can be left on in production.  CSpaceFilter records requests, the security
+ * interceptor names the endpoint, and MetricsServlet publishes everything for local scraping.
+ *
+ * Set the system property org.collectionspace.services.metrics.enabled to false to turn off
+ * recording.
+ */
+public class ServiceMetrics {
+
+	public static final String ENABLED_PROPERTY = "org.collectionspace.services.metrics.enabled";
+
+	/** Requests that never reached a JAX-RS resource method, e.g., because authentication failed */
+	public static final String UNMATCHED_ENDPOINT = "(unmatched)";
+
+	/** Endpoints beyond MAX_ENDPOINTS share this name (whatever their HTTP method), so a misbehaving client can't grow the registry without bounds */
+	public static final String OTHER_ENDPOINT = "(other)";
+
+	static final int MAX_ENDPOINTS = 1000;
+
+	private static final ServiceMetrics instance = new ServiceMetrics(
+			!"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "true").trim()));
+
+	/**
+	 * The statistics of one endpoint
+	 */
+	public static class EndpointStats {
+		private final LookupTimingHistogram latency = new LookupTimingHistogram();
+		private final AtomicLong clientErrors = new AtomicLong();
+		private final AtomicLong serverErrors = new AtomicLong();
+		private final AtomicLong queries = new AtomicLong();
+		private final AtomicLong jdbcCalls = new AtomicLong();
+
+		public LookupTimingHistogram getLatency() {
+			return latency;
+		}
+
+		public long getRequestCount() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return the number of responses with a 4xx status
+		 */
+		public long getClientErrorCount() {
+			return clientErrors.get();
+		}
+
+		/**
+		 * @return the number of responses with a 5xx status
+		 */
+		public long getServerErrorCount() {
+			return serverErrors.get();
+		}
+
+		/**
+		 * @return the total number of NXQL queries made by the endpoint's requests
+		 */
+		public long getQueryCount() {
+			return queries.get();
+		}
+
+		/**
+		 * @return the total number of JDBC calls made by the endpoint's requests
+		 */
+		public long getJdbcCallCount() {
+			return jdbcCalls.get();
+		}
+	}
+
+	/*
+	 * What we know about the request being served by the current thread
+	 */
+	private static class RequestMetrics {
+		String endpoint;
+		int queries;
+		int jdbcCalls;
+	}
+
+	private final boolean enabled;
+	private final ThreadLocal<RequestMetrics> currentRequest = new ThreadLocal<RequestMetrics>();
+	// The statistics of each endpoint, by HTTP method and then path template, so that no key needs to be built per request
+	private final Map<String, Map<String, EndpointStats>> endpoints = new ConcurrentHashMap<String, Map<String, EndpointStats>>();
+	private int endpointCount = 0;
+	private final Map<Method, String> pathTemplates = new ConcurrentHashMap<Method, String>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final AtomicInteger openSessions = new AtomicInteger();
+
+	private final LookupTimingHistogram sessionOpenTimings = new LookupTimingHistogram();
+	private final LookupTimingHistogram sessionTimings = new LookupTimingHistogram();
+	private final LookupTimingHistogram commitTimings = new LookupTimingHistogram();
+	private final LookupTimingHistogram queryTimings = new LookupTimingHistogram();
+	private final LookupTimingHistogram jdbcTimings = new LookupTimingHistogram();
+
+	ServiceMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public static ServiceMetrics getInstance() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	//
+	// Requests
+	//
+
+	/**
+	 * Called when the current thread starts serving a request.  Every call must be paired with a
+	 * call to endRequest() in a finally block.
+	 */
+	public void beginRequest() {
+		if (enabled) {
+			int now = inFlight.incrementAndGet();
+			int max = maxInFlight.get();
+			while (now > max && !maxInFlight.compareAndSet(max, now)) {
+				max = maxInFlight.get();
+			}
+			currentRequest.set(new RequestMetrics());
+		}
+	}
+
+	/**
+	 * Names the endpoint of the current request, once the JAX-RS resource method is known.
+	 */
+	public void setEndpoint(Class<?> resourceClass, Method resourceMethod) {
+		RequestMetrics request = currentRequest.get();
+		if (request != null) {
+			request.endpoint = getPathTemplate(resourceClass, resourceMethod);
+		}
+	}
+
+	/**
+	 * Called when the current thread is done serving a request.
+	 *
+	 * @param httpMethod the request's HTTP method
+	 * @param status the response status
+	 * @param nanos how long the request took
+	 */
+	public void endRequest(String httpMethod, int status, long nanos) {
+		if (enabled) {
+			RequestMetrics request = currentRequest.get();
+			currentRequest.remove();
+			inFlight.decrementAndGet();
+
+			String endpoint = request != null && request.endpoint != null ? request.endpoint : UNMATCHED_ENDPOINT;
+			EndpointStats stats = getEndpointStats(httpMethod, endpoint);
+			stats.latency.record(nanos);
+			if (status >= 500) {
+				stats.serverErrors.incrementAndGet();
+			} else if (status >= 400) {
+				stats.clientErrors.incrementAndGet();
+			}
+			if (request != null) {
+				stats.queries.addAndGet(request.queries);
+				stats.jdbcCalls.addAndGet(request.jdbcCalls);
+			}
+		}
+	}
+
+	private EndpointStats getEndpointStats(String httpMethod, String endpoint) {
+		Map<String, EndpointStats> methodEndpoints = endpoints.get(httpMethod);
+		EndpointStats result = methodEndpoints != null ? methodEndpoints.get(endpoint) : null;
+		if (result == null) {
+			synchronized (endpoints) {
+				methodEndpoints = endpoints.get(httpMethod);
+				if (methodEndpoints == null) {
+					methodEndpoints = new ConcurrentHashMap<String, EndpointStats>();
+					endpoints.put(httpMethod, methodEndpoints);
+				}
+				result = methodEndpoints.get(endpoint);
+				if (result == null) {
+					if (endpointCount >= MAX_ENDPOINTS && !httpMethod.isEmpty()) {
+						return getEndpointStats("", OTHER_ENDPOINT);
+					}
+					result = new EndpointStats();
+					methodEndpoints.put(endpoint, result);
+					endpointCount++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the path template of a resource method (e.g., "/collectionobjects/{csid}"), from the @Path
+	 * annotations of the resource class and the method.  The method may be declared by a superclass,
+	 * which is why the (concrete) resource class is passed in separately.
+	 */
+	public String getPathTemplate(Class<?> resourceClass, Method resourceMethod) {
+		String result = pathTemplates.get(resourceMethod);
+		if (result == null) {
+			StringBuilder sb = new StringBuilder();
+			Path classPath = findPath(resourceClass);
+			if (classPath != null) {
+				appendPath(sb, classPath.value());
+			}
+			Path methodPath = resourceMethod.getAnnotation(Path.class);
+			if (methodPath != null) {
+				appendPath(sb, methodPath.value());
+			}
+			result = sb.length() > 0 ? sb.toString() : "/";
+			// Resource methods inherited by several resource classes have different templates
+			if (resourceMethod.getDeclaringClass().equals(resourceClass)) {
+				pathTemplates.put(resourceMethod, result);
+			}
+		}
+		return result;
+	}
+
+	private static Path findPath(Class<?> resourceClass) {
+		for (Class<?> c = resourceClass; c != null; c = c.getSuperclass()) {
+			Path path = c.getAnnotation(Path.class);
+			if (path != null) {
+				return path;
+			}
+		}
+		return null;
+	}
+
+	private static void appendPath(StringBuilder sb, String path) {
+		if (!path.startsWith("/")) {
+			sb.append('/');
+		}
+		sb.append(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+	}
+
+	/**
+	 * @return the statistics of each endpoint, sorted and keyed by HTTP method and path template
+	 * (e.g., "GET /collectionobjects/{csid}"), or by OTHER_ENDPOINT alone
+	 */
+	public Map<String, EndpointStats> getEndpointStats() {
+		Map<String, EndpointStats> result = new TreeMap<String, EndpointStats>();
+		for (Map.Entry<String, Map<String, EndpointStats>> methodEntry : endpoints.entrySet()) {
+			String prefix = methodEntry.getKey().isEmpty() ? "" : methodEntry.getKey() + " ";
+			for (Map.Entry<String, EndpointStats> entry : methodEntry.getValue().entrySet()) {
+				result.put(prefix + entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	public int getMaxInFlightCount() {
+		return maxInFlight.get();
+	}
+
+	//
+	// Repository sessions and queries
+	//
+
+	/**
+	 * Records the opening of a repository session (and its transaction)
+	 * @param nanos how long it took to open the session
+	 */
+	public void sessionOpened(long nanos) {
+		if (enabled) {
+			openSessions.incrementAndGet();
+			sessionOpenTimings.record(nanos);
+		}
+	}
+
+	/**
+	 * Records the release of a repository session
+	 * @param heldNanos how long the session was open
+	 * @param commitNanos how long it took to save the session and commit its transaction
+	 */
+	public void sessionReleased(long heldNanos, long commitNanos) {
+		if (enabled) {
+			openSessions.decrementAndGet();
+			sessionTimings.record(heldNanos);
+			commitTimings.record(commitNanos);
+		}
+	}
+
+	/**
+	 * Records an NXQL query made by the current thread
+	 */
+	public void recordQuery(long nanos) {
+		if (enabled) {
+			queryTimings.record(nanos);
+			RequestMetrics request = currentRequest.get();
+			if (request != null) {
+				request.queries++;
+			}
+		}
+	}
+
+	/**
+	 * Records a JDBC call made by the current thread
+	 */
+	public void recordJdbcCall(long nanos) {
+		if (enabled) {
+			jdbcTimings.record(nanos);
+			RequestMetrics request = currentRequest.get();
+			if (request != null) {
+				request.jdbcCalls++;
+			}
+		}
+	}
+
+	public int getOpenSessionCount() {
+		return openSessions.get();
+	}
+
+	public LookupTimingHistogram getSessionOpenTimings() {
+		return sessionOpenTimings;
+	}
+
+	public LookupTimingHistogram getSessionTimings() {
+		return sessionTimings;
+	}
+
+	public LookupTimingHistogram getCommitTimings() {
+		return commitTimings;
+	}
+
+	public LookupTimingHistogram getQueryTimings() {
+		return queryTimings;
+	}
+
+	public LookupTimingHistogram getJdbcTimings() {
+		return jdbcTimings;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ServiceMetrics [endpoints=%d, inFlight=%d, maxInFlight=%d, openSessions=%d, queries=%d, jdbcCalls=%d]",
+				endpointCount, getInFlightCount(), getMaxInFlightCount(), getOpenSessionCount(),
+				queryTimings.getCount(), jdbcTimings.getCount());
+	}
+}
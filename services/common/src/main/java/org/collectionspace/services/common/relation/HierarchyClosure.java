@@ -0,0 +1,823 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.relation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.collectionspace.services.client.IRelationsManager;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.config.ConfigUtils;
+import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
+import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.config.tenant.TenantBindingType;
+import org.collectionspace.services.relation.RelationshipType;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HierarchyClosure maintains a closure table of the broader/narrower ("hasBroader") relationships
+ * of each tenant: one row for every (ancestor, descendant) pair, with the length of the shortest
+ * path between them.  With it, the ancestors or descendants of a term, its depth, and whether a
+ * new relationship would create a cycle are each answered by a single indexed query, instead of
+ * one relations query per level of the hierarchy.
+ *
+ * The table lives in the "cspace" schema of the relations repository, and is created the first
+ * time it is needed.  It is empty until it has been built for a tenant by rebuild() (see the
+ * RebuildHierarchyClosure batch job); until then the query methods return null and callers keep
+ * walking the relations.  Once built, it is kept up to date by the UpdateHierarchyClosure event
+ * listener as hasBroader relations are created, updated, soft deleted (including the cascade when
+ * a term is soft deleted), undeleted and removed.  Those changes are applied after the relation's
+ * transaction commits, on a separate connection.  If applying one fails, the tenant's closure is
+ * marked as not built, so nothing reads a stale closure until it is rebuilt.
+ *
+ * Only PostgreSQL repositories are supported.
+ */
+public class HierarchyClosure {
+	private static final Logger logger = LoggerFactory.getLogger(HierarchyClosure.class);
+
+	public static final String CLOSURE_TABLE = "cspace.hierarchy_closure";
+	public static final String STATE_TABLE = "cspace.hierarchy_closure_state";
+
+	/**
+	 * Rebuilds don't follow paths longer than this, so a cycle in existing data can't make them run forever.
+	 */
+	public static final int MAX_DEPTH = 100;
+
+	// The active hasBroader relations of a tenant: subject (narrower) csid, object (broader) csid, subject doctype
+	private static final String EDGES_SQL =
+			"SELECT rc.subjectcsid, rc.objectcsid, rc.subjectdocumenttype"
+			+ " FROM relations_common rc"
+			+ " INNER JOIN misc ON misc.id = rc.id"
+			+ " INNER JOIN collectionspace_core core ON core.id = rc.id"
+			+ " WHERE core.tenantid = ?"
+			+ "  AND rc.relationshiptype = '" + RelationshipType.HAS_BROADER.value() + "'"
+			+ "  AND rc.subjectcsid IS NOT NULL AND rc.objectcsid IS NOT NULL"
+			+ "  AND misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_DELETED + "'"
+			+ "  AND misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_LOCKED_DELETED + "'"
+			+ "  AND misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_REPLICATED_DELETED + "'";
+
+	// All the paths of a tenant's hierarchies, as (ancestor, descendant, descendant's doctype, length).
+	// Parameters: tenant ID, maximum depth
+	private static final String PATHS_CTE =
+			"WITH RECURSIVE edges AS (" + EDGES_SQL + "),"
+			+ " paths (ancestor_csid, descendant_csid, doctype, depth) AS ("
+			+ "  SELECT objectcsid, subjectcsid, subjectdocumenttype, 1 FROM edges"
+			+ "  UNION"
+			+ "  SELECT e.objectcsid, p.descendant_csid, p.doctype, p.depth + 1"
+			+ "   FROM paths p INNER JOIN edges e ON e.subjectcsid = p.ancestor_csid"
+			+ "   WHERE p.depth < ?"
+			+ " ),"
+			+ " expected AS ("
+			+ "  SELECT ancestor_csid, descendant_csid, MIN(doctype) AS doctype, MIN(depth) AS depth"
+			+ "   FROM paths WHERE ancestor_csid <> descendant_csid"
+			+ "   GROUP BY ancestor_csid, descendant_csid"
+			+ " ),"
+			+ " cycles AS (SELECT DISTINCT ancestor_csid FROM paths WHERE ancestor_csid = descendant_csid)";
+
+	// The pairs joined by a new edge: (ancestors of the parent, and the parent) x (descendants of the child, and the child).
+	// Parameters: tenant ID, tenant ID, parent csid, parent csid, tenant ID, child csid, child csid, child doctype
+	private static final String ADD_EDGE_SQL =
+			"INSERT INTO " + CLOSURE_TABLE + " AS c (tenant_id, doctype, ancestor_csid, descendant_csid, depth)"
+			+ " SELECT ?, MIN(d.doctype), a.ancestor_csid, d.descendant_csid, MIN(a.depth + d.depth + 1)"
+			+ " FROM (SELECT ancestor_csid, depth FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND descendant_csid = ?"
+			+ "       UNION ALL SELECT CAST(? AS varchar), 0) a"
+			+ " CROSS JOIN (SELECT descendant_csid, doctype, depth FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND ancestor_csid = ?"
+			+ "       UNION ALL SELECT CAST(? AS varchar), CAST(? AS varchar), 0) d"
+			+ " WHERE a.ancestor_csid <> d.descendant_csid"
+			+ " GROUP BY a.ancestor_csid, d.descendant_csid"
+			+ " ON CONFLICT (tenant_id, ancestor_csid, descendant_csid)"
+			+ " DO UPDATE SET depth = LEAST(c.depth, EXCLUDED.depth)";
+
+	// The pairs that may have been joined through a removed edge.
+	// Parameters: tenant ID, tenant ID, parent csid, parent csid, tenant ID, child csid, child csid
+	private static final String REMOVE_EDGE_SQL =
+			"DELETE FROM " + CLOSURE_TABLE + " c"
+			+ " WHERE c.tenant_id = ?"
+			+ "  AND c.ancestor_csid IN (SELECT ancestor_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND descendant_csid = ?"
+			+ "       UNION SELECT CAST(? AS varchar))"
+			+ "  AND c.descendant_csid IN (SELECT descendant_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND ancestor_csid = ?"
+			+ "       UNION SELECT CAST(? AS varchar))";
+
+	// The remaining edges that lead out of a subtree, which have to be added back after removing an edge.
+	// Parameters: tenant ID, tenant ID, child csid, child csid, tenant ID, child csid, child csid
+	private static final String SUBTREE_EXIT_EDGES_SQL =
+			"SELECT edges.subjectcsid, edges.objectcsid, edges.subjectdocumenttype FROM (" + EDGES_SQL + ") edges"
+			+ " WHERE edges.subjectcsid IN (SELECT descendant_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND ancestor_csid = ?"
+			+ "       UNION SELECT CAST(? AS varchar))"
+			+ "  AND edges.objectcsid NOT IN (SELECT descendant_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND ancestor_csid = ?"
+			+ "       UNION SELECT CAST(? AS varchar))";
+
+	private static final HierarchyClosure instance = new HierarchyClosure();
+
+	/**
+	 * A hasBroader relationship between two terms, as recorded by an active relation.
+	 */
+	public static class Edge {
+		private final String childCsid;
+		private final String parentCsid;
+		private final String childDocType;
+
+		public Edge(String childCsid, String parentCsid, String childDocType) {
+			this.childCsid = childCsid;
+			this.parentCsid = parentCsid;
+			this.childDocType = childDocType;
+		}
+
+		/**
+		 * @return the edge recorded by a relation document, or null if it isn't an active hasBroader relation
+		 */
+		public static Edge fromRelation(DocumentModel relation) {
+			return fromRelation(relation, relation.getCurrentLifeCycleState());
+		}
+
+		/**
+		 * @return the edge recorded by a relation document when it is in the given lifecycle state, or null if it
+		 * isn't a hasBroader relation or isn't active in that state
+		 */
+		public static Edge fromRelation(DocumentModel relation, String lifeCycleState) {
+			if (isActiveState(lifeCycleState) == false) {
+				return null;
+			}
+
+			String schema = RelationConstants.NUXEO_SCHEMA_NAME;
+			return fromRelationFields((String) relation.getProperty(schema, RelationJAXBSchema.RELATIONSHIP_TYPE),
+					(String) relation.getProperty(schema, RelationJAXBSchema.SUBJECT_CSID),
+					(String) relation.getProperty(schema, RelationJAXBSchema.OBJECT_CSID),
+					(String) relation.getProperty(schema, RelationJAXBSchema.SUBJECT_DOCTYPE));
+		}
+
+		/**
+		 * @return the edge recorded by an active relation with the given field values, or null if it isn't a
+		 * hasBroader relation
+		 */
+		public static Edge fromRelationFields(String relationshipType, String subjectCsid, String objectCsid, String subjectDocType) {
+			if (RelationshipType.HAS_BROADER.value().equals(relationshipType) && subjectCsid != null && objectCsid != null) {
+				return new Edge(subjectCsid, objectCsid, subjectDocType);
+			}
+
+			return null;
+		}
+
+		public String getChildCsid() {
+			return childCsid;
+		}
+
+		public String getParentCsid() {
+			return parentCsid;
+		}
+
+		public String getChildDocType() {
+			return childDocType;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Edge == false) {
+				return false;
+			}
+			Edge other = (Edge) o;
+			return childCsid.equals(other.childCsid) && parentCsid.equals(other.parentCsid);
+		}
+
+		@Override
+		public int hashCode() {
+			return childCsid.hashCode() * 31 + parentCsid.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return childCsid + " -> " + parentCsid;
+		}
+	}
+
+	// Repositories whose closure tables exist (true), or whose database isn't supported (false)
+	private final Map<String, Boolean> repositories = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * The result of comparing a tenant's closure table with the closure computed from its relations.
+	 */
+	public static class ConsistencyReport {
+		private final long expectedRows;
+		private final long missingRows;
+		private final long extraRows;
+		private final long wrongDepthRows;
+		private final long cyclicTerms;
+
+		ConsistencyReport(long expectedRows, long missingRows, long extraRows, long wrongDepthRows, long cyclicTerms) {
+			this.expectedRows = expectedRows;
+			this.missingRows = missingRows;
+			this.extraRows = extraRows;
+			this.wrongDepthRows = wrongDepthRows;
+			this.cyclicTerms = cyclicTerms;
+		}
+
+		public long getExpectedRows() {
+			return expectedRows;
+		}
+
+		public long getMissingRows() {
+			return missingRows;
+		}
+
+		public long getExtraRows() {
+			return extraRows;
+		}
+
+		public long getWrongDepthRows() {
+			return wrongDepthRows;
+		}
+
+		/**
+		 * @return the number of terms that are their own ancestor, through relations created before cycles were rejected
+		 */
+		public long getCyclicTerms() {
+			return cyclicTerms;
+		}
+
+		public boolean isConsistent() {
+			return missingRows == 0 && extraRows == 0 && wrongDepthRows == 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("ConsistencyReport [expectedRows=%d, missingRows=%d, extraRows=%d, wrongDepthRows=%d, cyclicTerms=%d]",
+					expectedRows, missingRows, extraRows, wrongDepthRows, cyclicTerms);
+		}
+	}
+
+	private HierarchyClosure() {
+		// Use getInstance()
+	}
+
+	/**
+	 * @return false if relations in the given lifecycle state aren't part of the closure; see EDGES_SQL
+	 */
+	public static boolean isActiveState(String lifeCycleState) {
+		return WorkflowClient.WORKFLOWSTATE_DELETED.equals(lifeCycleState) == false
+				&& WorkflowClient.WORKFLOWSTATE_LOCKED_DELETED.equals(lifeCycleState) == false
+				&& WorkflowClient.WORKFLOWSTATE_REPLICATED_DELETED.equals(lifeCycleState) == false;
+	}
+
+	public static HierarchyClosure getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the name of the repository that holds the tenant's relations, and so its closure table
+	 */
+	public static String getRelationsRepositoryName(String tenantId) {
+		TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+		TenantBindingType tenantBinding = tReader.getTenantBinding(tenantId);
+		ServiceBindingType serviceBinding = tReader.getServiceBinding(tenantId, IRelationsManager.SERVICE_NAME);
+		return serviceBinding != null ? ConfigUtils.getRepositoryName(tenantBinding, serviceBinding.getRepositoryDomain()) : null;
+	}
+
+	private Connection getConnection(String repositoryName) throws Exception {
+		return JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName,
+				ServiceMain.getInstance().getCspaceInstanceId());
+	}
+
+	private static void close(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				logger.debug("Failed to close a hierarchy closure connection.", e);
+			}
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			logger.debug("Failed to roll back a hierarchy closure transaction.", e);
+		}
+	}
+
+	/*
+	 * Creates the closure tables if they don't exist yet.
+	 *
+	 * @return false if the repository's database isn't supported
+	 */
+	private boolean ensureTables(String repositoryName, Connection conn) throws SQLException {
+		Boolean supported = repositories.get(repositoryName);
+		if (supported == null) {
+			supported = conn.getMetaData().getDatabaseProductName().matches("(?i).*postgresql.*");
+			if (supported) {
+				boolean autoCommit = conn.getAutoCommit();
+				conn.setAutoCommit(true);
+				try {
+					if (JDBCTools.cspaceMetaTableExists(conn) == false) {
+						JDBCTools.createCspaceMetaTable(conn);
+					}
+					Statement stmt = conn.createStatement();
+					try {
+						stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + CLOSURE_TABLE + " ("
+								+ "tenant_id varchar(128) NOT NULL, doctype varchar(256), "
+								+ "ancestor_csid varchar(128) NOT NULL, descendant_csid varchar(128) NOT NULL, depth integer NOT NULL, "
+								+ "PRIMARY KEY (tenant_id, ancestor_csid, descendant_csid))");
+						stmt.executeUpdate("CREATE INDEX IF NOT EXISTS hierarchy_closure_descendant_idx ON "
+								+ CLOSURE_TABLE + " (tenant_id, descendant_csid, depth)");
+						stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + STATE_TABLE + " ("
+								+ "tenant_id varchar(128) PRIMARY KEY, built_at timestamp NOT NULL)");
+					} finally {
+						stmt.close();
+					}
+				} finally {
+					conn.setAutoCommit(autoCommit);
+				}
+			} else {
+				logger.info(String.format("The hierarchy closure isn't supported by the database of repository '%s'.", repositoryName));
+			}
+			repositories.put(repositoryName, supported);
+		}
+		return supported;
+	}
+
+	private static boolean isBuilt(Connection conn, String tenantId) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM " + STATE_TABLE + " WHERE tenant_id = ?");
+		try {
+			stmt.setString(1, tenantId);
+			ResultSet rs = stmt.executeQuery();
+			return rs.next();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/*
+	 * Serializes changes to the closure table.  Readers aren't blocked.
+	 */
+	private static void lockForUpdate(Connection conn, boolean rebuild) throws SQLException {
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute("LOCK TABLE " + CLOSURE_TABLE + (rebuild ? " IN EXCLUSIVE MODE" : " IN SHARE ROW EXCLUSIVE MODE"));
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * @return true if the tenant's closure has been built, and is being maintained
+	 */
+	public boolean isBuilt(String repositoryName, String tenantId) throws Exception {
+		Connection conn = getConnection(repositoryName);
+		try {
+			return ensureTables(repositoryName, conn) && isBuilt(conn, tenantId);
+		} finally {
+			close(conn);
+		}
+	}
+
+	/*
+	 * Runs a query that returns (csid, depth) rows, if the tenant's closure has been built.
+	 */
+	private Map<String, Integer> queryDepths(String repositoryName, String tenantId, String sql, String csid) throws Exception {
+		Map<String, Integer> result = null;
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn) && isBuilt(conn, tenantId)) {
+				result = new LinkedHashMap<String, Integer>();
+				PreparedStatement stmt = conn.prepareStatement(sql);
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setString(2, csid);
+					ResultSet rs = stmt.executeQuery();
+					while (rs.next()) {
+						result.put(rs.getString(1), rs.getInt(2));
+					}
+				} finally {
+					stmt.close();
+				}
+			}
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the csids of the term's ancestors, nearest first, mapped to their distance from the term;
+	 * or null if the tenant's closure hasn't been built
+	 */
+	public Map<String, Integer> getAncestors(String repositoryName, String tenantId, String csid) throws Exception {
+		return queryDepths(repositoryName, tenantId,
+				"SELECT ancestor_csid, depth FROM " + CLOSURE_TABLE
+				+ " WHERE tenant_id = ? AND descendant_csid = ? ORDER BY depth, ancestor_csid", csid);
+	}
+
+	/**
+	 * @return the csids of the term's descendants, nearest first, mapped to their distance from the term;
+	 * or null if the tenant's closure hasn't been built
+	 */
+	public Map<String, Integer> getDescendants(String repositoryName, String tenantId, String csid) throws Exception {
+		return queryDepths(repositoryName, tenantId,
+				"SELECT descendant_csid, depth FROM " + CLOSURE_TABLE
+				+ " WHERE tenant_id = ? AND ancestor_csid = ? ORDER BY depth, descendant_csid", csid);
+	}
+
+	/**
+	 * @return the depth of the term in its hierarchy (0 for a term without a broader term),
+	 * or null if the tenant's closure hasn't been built
+	 */
+	public Integer getDepth(String repositoryName, String tenantId, String csid) throws Exception {
+		Map<String, Integer> depth = queryDepths(repositoryName, tenantId,
+				"SELECT descendant_csid, COALESCE(MAX(depth), 0) FROM " + CLOSURE_TABLE
+				+ " WHERE tenant_id = ? AND descendant_csid = ? GROUP BY descendant_csid", csid);
+		if (depth == null) {
+			return null;
+		}
+		return depth.isEmpty() ? Integer.valueOf(0) : depth.values().iterator().next();
+	}
+
+	/**
+	 * @return true if the first term is an ancestor of the second, or null if the tenant's closure hasn't been built
+	 */
+	public Boolean isAncestor(String repositoryName, String tenantId, String ancestorCsid, String descendantCsid) throws Exception {
+		Boolean result = null;
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn) && isBuilt(conn, tenantId)) {
+				PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM " + CLOSURE_TABLE
+						+ " WHERE tenant_id = ? AND ancestor_csid = ? AND descendant_csid = ?");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setString(2, ancestorCsid);
+					stmt.setString(3, descendantCsid);
+					result = stmt.executeQuery().next();
+				} finally {
+					stmt.close();
+				}
+			}
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the csids of the terms in the subtree under (and including) the given term that have narrower terms,
+	 * or null if the tenant's closure hasn't been built.  Any term of the subtree that isn't in the set is a leaf.
+	 */
+	public Set<String> getTermsWithChildren(String repositoryName, String tenantId, String rootCsid) throws Exception {
+		return queryTerms(repositoryName, tenantId,
+				"SELECT DISTINCT c.ancestor_csid FROM " + CLOSURE_TABLE + " c"
+				+ " WHERE c.tenant_id = ? AND c.depth = 1 AND c.descendant_csid IN"
+				+ " (SELECT descendant_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND ancestor_csid = ?)", rootCsid, 1);
+	}
+
+	/**
+	 * @return the csids of the given term and its ancestors that have broader terms, or null if the tenant's closure
+	 * hasn't been built.  Any of those terms that isn't in the set is the top of a hierarchy.
+	 */
+	public Set<String> getTermsWithParents(String repositoryName, String tenantId, String csid) throws Exception {
+		return queryTerms(repositoryName, tenantId,
+				"SELECT DISTINCT c.descendant_csid FROM " + CLOSURE_TABLE + " c"
+				+ " WHERE c.tenant_id = ? AND c.depth = 1 AND c.descendant_csid IN"
+				+ " (SELECT ancestor_csid FROM " + CLOSURE_TABLE + " WHERE tenant_id = ? AND descendant_csid = ?"
+				+ "  UNION SELECT CAST(? AS varchar))", csid, 2);
+	}
+
+	/*
+	 * Runs a query that returns csids, if the tenant's closure has been built.  The query's parameters are
+	 * the tenant ID, the tenant ID and then the csid, csidCount times.
+	 */
+	private Set<String> queryTerms(String repositoryName, String tenantId, String sql, String csid, int csidCount) throws Exception {
+		Set<String> result = null;
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn) && isBuilt(conn, tenantId)) {
+				result = new HashSet<String>();
+				PreparedStatement stmt = conn.prepareStatement(sql);
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setString(2, tenantId);
+					for (int i = 0; i < csidCount; i++) {
+						stmt.setString(3 + i, csid);
+					}
+					ResultSet rs = stmt.executeQuery();
+					while (rs.next()) {
+						result.add(rs.getString(1));
+					}
+				} finally {
+					stmt.close();
+				}
+			}
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	private static void addEdge(Connection conn, String tenantId, String docType, String childCsid, String parentCsid) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(ADD_EDGE_SQL);
+		try {
+			stmt.setString(1, tenantId);
+			stmt.setString(2, tenantId);
+			stmt.setString(3, parentCsid);
+			stmt.setString(4, parentCsid);
+			stmt.setString(5, tenantId);
+			stmt.setString(6, childCsid);
+			stmt.setString(7, childCsid);
+			stmt.setString(8, docType);
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/*
+	 * Removes every pair that could have been joined by the edge, then adds back the edges that still lead
+	 * out of the child's subtree.
+	 */
+	private static void removeEdge(Connection conn, String tenantId, String childCsid, String parentCsid) throws SQLException {
+		List<String[]> exitEdges = new ArrayList<String[]>(); // (child csid, parent csid, child doctype)
+		PreparedStatement stmt = conn.prepareStatement(SUBTREE_EXIT_EDGES_SQL);
+		try {
+			stmt.setString(1, tenantId);
+			stmt.setString(2, tenantId);
+			stmt.setString(3, childCsid);
+			stmt.setString(4, childCsid);
+			stmt.setString(5, tenantId);
+			stmt.setString(6, childCsid);
+			stmt.setString(7, childCsid);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				exitEdges.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3)});
+			}
+		} finally {
+			stmt.close();
+		}
+
+		stmt = conn.prepareStatement(REMOVE_EDGE_SQL);
+		try {
+			stmt.setString(1, tenantId);
+			stmt.setString(2, tenantId);
+			stmt.setString(3, parentCsid);
+			stmt.setString(4, parentCsid);
+			stmt.setString(5, tenantId);
+			stmt.setString(6, childCsid);
+			stmt.setString(7, childCsid);
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+
+		for (String[] edge : exitEdges) {
+			addEdge(conn, tenantId, edge[2], edge[0], edge[1]);
+		}
+	}
+
+	/*
+	 * Applies an edge change in its own transaction, if the tenant's closure has been built.
+	 */
+	private void applyEdgeChange(String repositoryName, String tenantId, String docType, String childCsid, String parentCsid,
+			boolean add) throws Exception {
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn)) {
+				conn.setAutoCommit(false);
+				try {
+					lockForUpdate(conn, false);
+					if (isBuilt(conn, tenantId)) {
+						if (add) {
+							addEdge(conn, tenantId, docType, childCsid, parentCsid);
+						} else {
+							removeEdge(conn, tenantId, childCsid, parentCsid);
+						}
+					}
+					conn.commit();
+				} catch (Exception e) {
+					rollback(conn);
+					throw e;
+				}
+			}
+		} finally {
+			close(conn);
+		}
+	}
+
+	/**
+	 * Adds a hasBroader relationship (child hasBroader parent) to the tenant's closure, once the current
+	 * transaction commits.
+	 */
+	public void addEdgeAfterCommit(String repositoryName, String tenantId, String docType, String childCsid, String parentCsid) {
+		runAfterCommit(repositoryName, tenantId, docType, childCsid, parentCsid, true);
+	}
+
+	/**
+	 * Removes a hasBroader relationship (child hasBroader parent) from the tenant's closure, once the current
+	 * transaction commits.  Other relationships between the same terms are taken into account.
+	 */
+	public void removeEdgeAfterCommit(String repositoryName, String tenantId, String childCsid, String parentCsid) {
+		runAfterCommit(repositoryName, tenantId, null, childCsid, parentCsid, false);
+	}
+
+	/**
+	 * Updates the tenant's closure for a relation whose edge has changed, once the current transaction commits.
+	 * A null edge means the relation wasn't (or is no longer) an active hasBroader relation.
+	 */
+	public void relationChangedAfterCommit(String repositoryName, String tenantId, Edge before, Edge after) {
+		if (before != null && before.equals(after)) {
+			return;
+		}
+		if (before != null) {
+			removeEdgeAfterCommit(repositoryName, tenantId, before.getChildCsid(), before.getParentCsid());
+		}
+		if (after != null) {
+			addEdgeAfterCommit(repositoryName, tenantId, after.getChildDocType(), after.getChildCsid(), after.getParentCsid());
+		}
+	}
+
+	private void runAfterCommit(final String repositoryName, final String tenantId, final String docType,
+			final String childCsid, final String parentCsid, final boolean add) {
+		Synchronization change = new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+				// Nothing to do
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if (status != Status.STATUS_COMMITTED) {
+					return;
+				}
+				try {
+					applyEdgeChange(repositoryName, tenantId, docType, childCsid, parentCsid, add);
+				} catch (Exception e) {
+					logger.error(String.format("Failed to %s the hasBroader relationship %s -> %s in the hierarchy closure of tenant %s.  "
+							+ "The closure won't be used until it has been rebuilt.",
+							add ? "add" : "remove", childCsid, parentCsid, tenantId), e);
+					invalidate(repositoryName, tenantId);
+				}
+			}
+		};
+
+		if (TransactionHelper.isTransactionActive()) {
+			TransactionHelper.registerSynchronization(change);
+		} else {
+			change.afterCompletion(Status.STATUS_COMMITTED);
+		}
+	}
+
+	/**
+	 * Marks the tenant's closure as not built, so it is no longer read or maintained.
+	 */
+	public void invalidate(String repositoryName, String tenantId) {
+		Connection conn = null;
+		try {
+			conn = getConnection(repositoryName);
+			if (ensureTables(repositoryName, conn)) {
+				PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + STATE_TABLE + " WHERE tenant_id = ?");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+			}
+		} catch (Exception e) {
+			logger.error(String.format("Failed to invalidate the hierarchy closure of tenant %s.", tenantId), e);
+		} finally {
+			close(conn);
+		}
+	}
+
+	/**
+	 * Recomputes the tenant's closure from its relations, in one transaction, and marks it as built.
+	 *
+	 * @return the number of rows in the tenant's closure
+	 */
+	public int rebuild(String repositoryName, String tenantId) throws Exception {
+		int result = 0;
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn) == false) {
+				throw new UnsupportedOperationException(String.format(
+						"The hierarchy closure isn't supported by the database of repository '%s'.", repositoryName));
+			}
+			conn.setAutoCommit(false);
+			try {
+				lockForUpdate(conn, true);
+
+				PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + CLOSURE_TABLE + " WHERE tenant_id = ?");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+
+				stmt = conn.prepareStatement(PATHS_CTE
+						+ " INSERT INTO " + CLOSURE_TABLE + " (tenant_id, doctype, ancestor_csid, descendant_csid, depth)"
+						+ " SELECT ?, doctype, ancestor_csid, descendant_csid, depth FROM expected");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.setInt(2, MAX_DEPTH);
+					stmt.setString(3, tenantId);
+					result = stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+
+				stmt = conn.prepareStatement("INSERT INTO " + STATE_TABLE + " (tenant_id, built_at) VALUES (?, now())"
+						+ " ON CONFLICT (tenant_id) DO UPDATE SET built_at = EXCLUDED.built_at");
+				try {
+					stmt.setString(1, tenantId);
+					stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+
+				conn.commit();
+			} catch (Exception e) {
+				rollback(conn);
+				throw e;
+			}
+		} finally {
+			close(conn);
+		}
+
+		logger.info(String.format("Rebuilt the hierarchy closure of tenant %s: %d rows.", tenantId, result));
+		return result;
+	}
+
+	/**
+	 * Compares the tenant's closure table with the closure computed from its relations, without changing anything.
+	 */
+	public ConsistencyReport check(String repositoryName, String tenantId) throws Exception {
+		ConsistencyReport result = null;
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTables(repositoryName, conn) == false) {
+				throw new UnsupportedOperationException(String.format(
+						"The hierarchy closure isn't supported by the database of repository '%s'.", repositoryName));
+			}
+			PreparedStatement stmt = conn.prepareStatement(PATHS_CTE + ","
+					+ " actual AS (SELECT ancestor_csid, descendant_csid, depth FROM " + CLOSURE_TABLE + " WHERE tenant_id = ?)"
+					+ " SELECT"
+					+ "  (SELECT COUNT(*) FROM expected),"
+					+ "  (SELECT COUNT(*) FROM expected e WHERE NOT EXISTS (SELECT 1 FROM actual a"
+					+ "    WHERE a.ancestor_csid = e.ancestor_csid AND a.descendant_csid = e.descendant_csid)),"
+					+ "  (SELECT COUNT(*) FROM actual a WHERE NOT EXISTS (SELECT 1 FROM expected e"
+					+ "    WHERE e.ancestor_csid = a.ancestor_csid AND e.descendant_csid = a.descendant_csid)),"
+					+ "  (SELECT COUNT(*) FROM expected e INNER JOIN actual a"
+					+ "    ON a.ancestor_csid = e.ancestor_csid AND a.descendant_csid = e.descendant_csid WHERE a.depth <> e.depth),"
+					+ "  (SELECT COUNT(*) FROM cycles)");
+			try {
+				stmt.setString(1, tenantId);
+				stmt.setInt(2, MAX_DEPTH);
+				stmt.setString(3, tenantId);
+				ResultSet rs = stmt.executeQuery();
+				rs.next();
+				result = new ConsistencyReport(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+}
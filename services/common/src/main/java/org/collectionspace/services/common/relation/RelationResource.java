@@ -34,6 +34,7 @@ import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ServiceMessages;
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.document.DocumentHandler;
 import org.collectionspace.services.common.query.QueryManager;
 import org.collectionspace.services.client.IRelationsManager;
@@ -44,10 +45,12 @@ import org.collectionspace.services.relation.RelationsCommonList.RelationListIte
 import org.jboss.resteasy.util.HttpResponseCodes;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
@@ -65,6 +68,8 @@ import javax.ws.rs.core.UriInfo;
 @Produces("application/xml")
 public class RelationResource extends NuxeoBasedResource {
 	public final static String serviceName = "relations";
+	// The most csids put into one query's IN clause by getRelationsForAny()
+	private final static int IN_CLAUSE_CHUNK_SIZE = 500;
 	final Logger logger = LoggerFactory.getLogger(RelationResource.class);
 	
 	@Override
@@ -140,6 +145,52 @@ public class RelationResource extends NuxeoBasedResource {
         }
     }
 
+	/**
+	 * Lists the relations with the given predicate whose subject (or object) is any of the given csids, reading every
+	 * page.  The csids are queried in chunks, so this takes a few queries however many terms it is asked about.
+	 *
+	 * @param parentCtx the context of the request; its query parameters (e.g. the workflow state filter) apply
+	 * @param bySubject true to list the relations whose subject is one of the csids, false for those whose object is
+	 */
+	public List<RelationListItem> getRelationsForAny(ServiceContext<PoxPayloadIn, PoxPayloadOut> parentCtx,
+			String predicate, Collection<String> csids, boolean bySubject) throws CSWebApplicationException {
+		List<RelationListItem> result = new ArrayList<RelationListItem>();
+		List<String> csidList = new ArrayList<String>(csids);
+
+		try {
+			for (int start = 0; start < csidList.size(); start += IN_CLAUSE_CHUNK_SIZE) {
+				String relationClause = RelationsUtils.buildWhereClause(predicate,
+						csidList.subList(start, Math.min(start + IN_CLAUSE_CHUNK_SIZE, csidList.size())), bySubject);
+				int page = 0;
+				int pageItemCount;
+				int pageSize;
+				do {
+					ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(parentCtx.getUriInfo());
+					if (parentCtx.getCurrentRepositorySession() != null) {
+						ctx.setCurrentRepositorySession(parentCtx.getCurrentRepositorySession());
+					}
+
+					DocumentHandler handler = createDocumentHandler(ctx);
+					DocumentFilter filter = handler.getDocumentFilter();
+					filter.appendWhereClause(relationClause, IQueryManager.SEARCH_QUALIFIER_AND);
+					filter.setOrderByClause(NXQL.ECM_UUID); // A stable order across the pages
+					filter.setPageSize(0); // The largest page allowed
+					filter.setStartPage(page);
+					pageSize = filter.getPageSize();
+
+					List<RelationListItem> pageItems = ((RelationsCommonList) finish_getList(ctx, handler)).getRelationListItem();
+					result.addAll(pageItems);
+					pageItemCount = pageItems.size();
+					page++;
+				} while (pageSize > 0 && pageItemCount >= pageSize);
+			}
+		} catch (Exception e) {
+			throw bigReThrow(e, ServiceMessages.LIST_FAILED);
+		}
+
+		return result;
+	}
+
     @DELETE
     public Response delete(@Context UriInfo uriInfo) {
     	Response result = Response.status(HttpResponseCodes.SC_OK).build();
@@ -24,6 +24,7 @@
 package org.collectionspace.services.common.relation.nuxeo;
 
 import java.lang.StringBuilder;
+import java.util.Collection;
 
 import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.common.relation.RelationJAXBSchema;
@@ -123,5 +124,34 @@ public class RelationsUtils {
     	return result;
     }
     
-}
+    /**
+     * Builds a where clause matching the relations with the given predicate whose subject (or object) is any
+     * of the given csids.
+     *
+     * @param predicate the predicate
+     * @param csids the subject or object csids; must not be empty
+     * @param bySubject true to match the subject csids, false to match the object csids
+     * @return the string
+     */
+    public static String buildWhereClause(String predicate, Collection<String> csids, boolean bySubject) {
+    	StringBuilder stringBuilder = new StringBuilder();
+    	stringBuilder.append(RelationConstants.NUXEO_SCHEMA_NAME + ":" +
+    			RelationJAXBSchema.RELATIONSHIP_TYPE + " = " + "'" + predicate + "'");
+    	stringBuilder.append(IQueryManager.SEARCH_QUALIFIER_AND);
+    	stringBuilder.append(RelationConstants.NUXEO_SCHEMA_NAME + ":" +
+    			(bySubject ? RelationJAXBSchema.SUBJECT_CSID : RelationJAXBSchema.OBJECT_CSID) + " IN (");
 
+    	boolean first = true;
+    	for (String csid : csids) {
+    		if (first == false) {
+    			stringBuilder.append(", ");
+    		}
+    		stringBuilder.append("'" + csid + "'");
+    		first = false;
+    	}
+    	stringBuilder.append(")");
+
+    	return stringBuilder.toString();
+    }
+
+}
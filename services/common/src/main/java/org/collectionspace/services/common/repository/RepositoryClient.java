@@ -23,12 +23,15 @@
  */
 package org.collectionspace.services.common.repository;
 
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.BadRequestException;
 import org.collectionspace.services.common.document.DocumentException;
 import org.collectionspace.services.common.document.DocumentHandler;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
@@ -205,4 +208,37 @@ public interface RepositoryClient<IT, OT> extends StorageClient {
 	 * @throws Exception 
 	 */
 	public CoreSessionInterface getRepositorySession(ServiceContext<IT, OT> ctx) throws Exception;
+
+    /**
+     * Finds the documents, of the context's document type and tenant, with the given CSIDs using a single query.
+     *
+     * @param repoSession the repository session to use
+     * @param ctx the service context
+     * @param csids the CSIDs to look for.  Each must be a valid CSID -see BulkReadResult.isValidCsid()
+     * @param whereClause an optional clause that further restricts the documents -e.g., to the items of one authority
+     * @return the documents found, by CSID.  CSIDs that weren't found have no entry.
+     */
+    public Map<String, DocumentModel> findDocsByCsid(CoreSessionInterface repoSession,
+            ServiceContext<IT, OT> ctx, Collection<String> csids, String whereClause)
+            throws DocumentException;
+
+    /**
+     * Handles the GET of a document that has already been fetched with the context's repository session
+     * -e.g., by findDocsByCsid().  The workflow state of the document is checked the same way a GET by CSID
+     * checks it.
+     */
+    public void get(ServiceContext<IT, OT> ctx, DocumentModel docModel, DocumentHandler handler)
+            throws DocumentNotFoundException, TransactionException, DocumentException;
+
+    /**
+     * Updates a number of documents, of the context's document type and tenant, together: the documents are found
+     * with one query and saved with one call, and each one's handler is called as update() calls it.  The handlers'
+     * service contexts must share the repository session of the given context.
+     *
+     * @param ctx the service context whose repository session is used
+     * @param handlersByCsid the handler that updates each document, by CSID
+     * @throws DocumentNotFoundException if any of the documents doesn't exist.  None of them are updated.
+     */
+    public void updateAll(ServiceContext<IT, OT> ctx, Map<String, DocumentHandler> handlersByCsid)
+            throws BadRequestException, DocumentNotFoundException, TransactionException, DocumentException;
 }
@@ -49,6 +49,7 @@ import org.nuxeo.runtime.api.Framework;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
 
@@ -62,6 +63,7 @@ import org.collectionspace.services.common.CSWebApplicationException;
 import org.collectionspace.services.common.CollectionSpaceResource;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.document.JaxbUtils;
+import org.collectionspace.services.common.profile.ServiceMetrics;
 import org.collectionspace.services.common.storage.jpa.JpaStorageUtils;
 import org.collectionspace.services.common.security.SecurityUtils;
 import org.collectionspace.services.config.tenant.TenantBindingType;
@@ -157,6 +159,7 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 			throws Failure, CSWebApplicationException {
 		ServerResponse result = null; // A null value essentially means success for this method
 		Method resourceMethod = resourceMethodInvoker.getMethod();
+		ServiceMetrics.getInstance().setEndpoint(resourceMethodInvoker.getResourceClass(), resourceMethod);
 
 		try {
 			if (isAnonymousRequest(request, resourceMethodInvoker) == true) {
@@ -181,6 +184,21 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 			}
 
 			String resName = SecurityUtils.getResourceName(request.getUri());
+			//
+			// A bulk read is a POST only because it carries a list of CSIDs, so we authorize it as a read (GET) of the resource.
+			//
+			if (SecurityUtils.isBulkReadRequest(httpMethod, resName) == true) {
+				resName = SecurityUtils.getBulkReadResourceName(resName);
+				httpMethod = HttpMethod.GET;
+			}
+			//
+			// A bulk workflow transition is a POST only because it carries a list of CSIDs, so we authorize it as a PUT of the
+			// transition to each of the records.
+			//
+			if (SecurityUtils.isBulkWorkflowRequest(httpMethod, resName) == true) {
+				resName = SecurityUtils.getBulkWorkflowResourceName(resName);
+				httpMethod = HttpMethod.PUT;
+			}
 			String resEntity = SecurityUtils.getResourceEntity(resName);
 
 			//
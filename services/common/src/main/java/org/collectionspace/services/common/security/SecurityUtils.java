@@ -39,6 +39,7 @@ import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.config.service.ServiceBindingType;
 import org.collectionspace.authentication.AuthN;
 
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.UriInfo;
 
@@ -137,6 +138,9 @@ public class SecurityUtils {
 
     	UriInfo uriInfo = request.getUri();
     	String workflowSubResName = SecurityUtils.getResourceName(uriInfo);
+    	if (isBulkWorkflowRequest(request.getHttpMethod(), workflowSubResName) == true) {
+    		workflowSubResName = getBulkWorkflowResourceName(workflowSubResName); // e.g., intakes/workflow/delete -> intakes/*/workflow/delete
+    	}
     	String resEntity = SecurityUtils.getResourceEntity(workflowSubResName);
 
 		MultivaluedMap<String, String> pathParams = uriInfo.getPathParameters();
@@ -182,6 +186,59 @@ public class SecurityUtils {
     	return result;
     }
 
+	/**
+	 * Checks if the request is a bulk read -i.e., a POST to the CollectionSpaceClient.BULK_READ_PATH subresource.
+	 *
+	 * @param httpMethod the HTTP method of the request
+	 * @param resName the resource name -see getResourceName()
+	 * @return true, if the request is a bulk read
+	 */
+	public static boolean isBulkReadRequest(String httpMethod, String resName) {
+		return HttpMethod.POST.equalsIgnoreCase(httpMethod)
+				&& resName != null
+				&& resName.endsWith(URI_PATH_SEPARATOR + CollectionSpaceClient.BULK_READ_PATH);
+	}
+
+	/**
+	 * Gets the name of the resource read by a bulk read -e.g., "collectionobjects" for "collectionobjects/bulkread"
+	 * and "personauthorities/{csid}/items" for "personauthorities/{csid}/items/bulkread" (with the CSID wildcarded).
+	 *
+	 * @param resName the resource name of the bulk read request
+	 * @return the name of the resource being read
+	 */
+	public static String getBulkReadResourceName(String resName) {
+		return resName.substring(0, resName.length() - (URI_PATH_SEPARATOR + CollectionSpaceClient.BULK_READ_PATH).length());
+	}
+
+	/**
+	 * Checks if the request is a bulk workflow transition -i.e., a POST of a list of CSIDs to a service's
+	 * workflow/{transition} subresource, e.g. "intakes/workflow/delete".
+	 *
+	 * @param httpMethod the HTTP method of the request
+	 * @param resName the resource name -see getResourceName()
+	 * @return true, if the request is a bulk workflow transition
+	 */
+	public static boolean isBulkWorkflowRequest(String httpMethod, String resName) {
+		if (HttpMethod.POST.equalsIgnoreCase(httpMethod) == false || resName == null) {
+			return false;
+		}
+		String[] segments = resName.split(URI_PATH_SEPARATOR);
+		return segments.length == 3 && segments[1].equals(WorkflowClient.SERVICE_PATH_COMPONENT);
+	}
+
+	/**
+	 * Gets the name of the workflow transition resource of the records changed by a bulk workflow transition -e.g.,
+	 * "intakes/{csid}/workflow/delete" for "intakes/workflow/delete", so that it's authorized like a PUT of the transition
+	 * to each record.
+	 *
+	 * @param resName the resource name of the bulk workflow transition request
+	 * @return the name of the workflow transition resource
+	 */
+	public static String getBulkWorkflowResourceName(String resName) {
+		String[] segments = resName.split(URI_PATH_SEPARATOR);
+		return segments[0] + WorkflowClient.SERVICE_AUTHZ_SUFFIX + segments[2];
+	}
+
 	/**
 	 * Gets the resource name.
 	 *
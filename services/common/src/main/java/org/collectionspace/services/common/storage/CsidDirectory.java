@@ -0,0 +1,541 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.storage;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.context.ServiceBindingUtils;
+import org.collectionspace.services.common.relation.HierarchyClosure;
+import org.collectionspace.services.common.vocabulary.AuthorityItemJAXBSchema;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.schema.DocumentType;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CsidDirectory keeps a table that maps the CSID of each record of a tenant to its doctype, service name,
+ * parent CSID (the authority of an authority item) and workflow state.  With it, finding out what a bare
+ * CSID is takes one indexed lookup, and the record itself can be read with a query of its own doctype,
+ * instead of a search across every doctype.
+ *
+ * The directory is a hint, not a source of truth: code that uses an entry to read a record reads the record
+ * it points to, and an entry that turns out to be stale is corrected or removed.  Only resolve() answers from
+ * the entry alone, for callers that just need to know what a CSID is.  A CSID without an entry is resolved the way
+ * it was before the directory existed, and the result is recorded.  Entries are added as records are created
+ * and found, updated as they're transitioned, and removed as they're hard-deleted.  All those changes are
+ * applied after the current transaction commits, on a separate connection, so a rolled back create never
+ * leaves an entry behind.
+ *
+ * The table lives in the "cspace" schema of the tenant's relations repository, beside the hierarchy closure
+ * (see HierarchyClosure), and is created the first time it is needed.  Only PostgreSQL repositories are
+ * supported; with any other database, lookups always miss.
+ */
+public class CsidDirectory {
+	private static final Logger logger = LoggerFactory.getLogger(CsidDirectory.class);
+
+	public static final String DIRECTORY_TABLE = "cspace.csid_directory";
+
+	public static final String ENTRY_ELEMENT = "csid-directory-entry";
+
+	private static final String PUT_SQL =
+			"INSERT INTO " + DIRECTORY_TABLE + " AS d (tenant_id, csid, doctype, service_name, parent_csid, workflow_state, updated_at)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, now())"
+			+ " ON CONFLICT (tenant_id, csid) DO UPDATE SET doctype = EXCLUDED.doctype, service_name = EXCLUDED.service_name,"
+			+ " parent_csid = EXCLUDED.parent_csid, workflow_state = EXCLUDED.workflow_state, updated_at = EXCLUDED.updated_at";
+
+	private static final String SET_WORKFLOW_STATE_SQL =
+			"UPDATE " + DIRECTORY_TABLE + " SET workflow_state = ?, updated_at = now() WHERE tenant_id = ? AND csid = ?";
+
+	private static final String REMOVE_SQL =
+			"DELETE FROM " + DIRECTORY_TABLE + " WHERE tenant_id = ? AND csid = ?";
+
+	private static final CsidDirectory instance = new CsidDirectory();
+
+	// Repositories whose directory table exists (true), or whose database isn't supported (false)
+	private final Map<String, Boolean> repositories = new ConcurrentHashMap<String, Boolean>();
+
+	// The changes waiting for the current thread's transaction to commit
+	private final ThreadLocal<List<Change>> pendingChanges = new ThreadLocal<List<Change>>();
+
+	/**
+	 * What the directory knows about a CSID.
+	 */
+	public static class Entry {
+		private final String tenantId;
+		private final String csid;
+		private final String docType;
+		private final String serviceName;
+		private final String parentCsid;
+		private final String workflowState;
+
+		public Entry(String tenantId, String csid, String docType, String serviceName, String parentCsid, String workflowState) {
+			this.tenantId = tenantId;
+			this.csid = csid;
+			this.docType = docType;
+			this.serviceName = serviceName;
+			this.parentCsid = parentCsid;
+			this.workflowState = workflowState;
+		}
+
+		public String getTenantId() {
+			return tenantId;
+		}
+
+		public String getCsid() {
+			return csid;
+		}
+
+		/**
+		 * @return the unqualified doctype of the record, e.g. "CollectionObject" or "Placeitem"
+		 */
+		public String getDocType() {
+			return docType;
+		}
+
+		/**
+		 * @return the lower case name of the service that the doctype is bound to, e.g. "collectionobjects"
+		 */
+		public String getServiceName() {
+			return serviceName;
+		}
+
+		/**
+		 * @return the CSID of the authority of an authority item, or null for any other record
+		 */
+		public String getParentCsid() {
+			return parentCsid;
+		}
+
+		public String getWorkflowState() {
+			return workflowState;
+		}
+
+		public String toXML() {
+			StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			sb.append('<').append(ENTRY_ELEMENT).append('>');
+			appendElement(sb, "csid", csid);
+			appendElement(sb, "tenantId", tenantId);
+			appendElement(sb, "docType", docType);
+			appendElement(sb, "serviceName", serviceName);
+			appendElement(sb, "parentCsid", parentCsid);
+			appendElement(sb, "workflowState", workflowState);
+			sb.append("</").append(ENTRY_ELEMENT).append('>');
+			return sb.toString();
+		}
+
+		private static void appendElement(StringBuilder sb, String name, String value) {
+			if (value != null) {
+				sb.append('<').append(name).append('>')
+						.append(value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"))
+						.append("</").append(name).append('>');
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("CsidDirectory.Entry [tenantId=%s, csid=%s, docType=%s, serviceName=%s, parentCsid=%s, workflowState=%s]",
+					tenantId, csid, docType, serviceName, parentCsid, workflowState);
+		}
+	}
+
+	private static class Change {
+		final Entry entry;         // the entry to add or replace, or null
+		final String tenantId;
+		final String csid;
+		final String workflowState; // the new workflow state, if the entry is null and the record wasn't removed
+
+		Change(Entry entry, String tenantId, String csid, String workflowState) {
+			this.entry = entry;
+			this.tenantId = tenantId;
+			this.csid = csid;
+			this.workflowState = workflowState;
+		}
+	}
+
+	protected CsidDirectory() {
+		// Use getInstance()
+	}
+
+	public static CsidDirectory getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the directory entry that describes a Nuxeo document of the tenant
+	 */
+	public static Entry createEntry(String tenantId, DocumentModel docModel) {
+		String docType = ServiceBindingUtils.getUnqualifiedTenantDocType(docModel.getDocumentType().getName());
+		String serviceName = getServiceNameForDocType(tenantId, docType);
+
+		String parentCsid = null;
+		for (String schemaName : docModel.getSchemas()) {
+			Schema schema = docModel.getDocumentType().getSchema(schemaName);
+			if (schema != null && schema.hasField(AuthorityItemJAXBSchema.IN_AUTHORITY)) {
+				parentCsid = (String) docModel.getProperty(schemaName, AuthorityItemJAXBSchema.IN_AUTHORITY);
+				break;
+			}
+		}
+
+		String workflowState = null;
+		try {
+			workflowState = docModel.getCurrentLifeCycleState();
+		} catch (Exception e) {
+			logger.debug(String.format("Could not get the workflow state of document %s.", docModel.getName()), e);
+		}
+
+		return new Entry(tenantId, docModel.getName(), docType, serviceName, parentCsid, workflowState);
+	}
+
+	private static String getServiceNameForDocType(String tenantId, String docType) {
+		String result = null;
+		ServiceBindingType serviceBinding = ServiceMain.getInstance().getTenantBindingConfigReader()
+				.getServiceBindingForDocType(tenantId, docType);
+		if (serviceBinding != null) {
+			result = serviceBinding.getName().toLowerCase();
+		}
+		return result;
+	}
+
+	private static String getRepositoryName(String tenantId) {
+		return HierarchyClosure.getRelationsRepositoryName(tenantId);
+	}
+
+	private Connection getConnection(String repositoryName) throws Exception {
+		return JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName,
+				ServiceMain.getInstance().getCspaceInstanceId());
+	}
+
+	private static void close(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				logger.debug("Failed to close a CSID directory connection.", e);
+			}
+		}
+	}
+
+	/*
+	 * Creates the directory table if it doesn't exist yet.
+	 *
+	 * @return false if the repository's database isn't supported
+	 */
+	private boolean ensureTable(String repositoryName, Connection conn) throws SQLException {
+		Boolean supported = repositories.get(repositoryName);
+		if (supported == null) {
+			supported = conn.getMetaData().getDatabaseProductName().matches("(?i).*postgresql.*");
+			if (supported) {
+				if (JDBCTools.cspaceMetaTableExists(conn) == false) {
+					JDBCTools.createCspaceMetaTable(conn);
+				}
+				Statement stmt = conn.createStatement();
+				try {
+					stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + DIRECTORY_TABLE + " ("
+							+ "tenant_id varchar(128) NOT NULL, csid varchar(128) NOT NULL, doctype varchar(256) NOT NULL, "
+							+ "service_name varchar(256), parent_csid varchar(128), workflow_state varchar(128), "
+							+ "updated_at timestamp NOT NULL, "
+							+ "PRIMARY KEY (tenant_id, csid))");
+				} finally {
+					stmt.close();
+				}
+			} else {
+				logger.info(String.format("The CSID directory isn't supported by the database of repository '%s'.", repositoryName));
+			}
+			repositories.put(repositoryName, supported);
+		}
+		return supported;
+	}
+
+	/**
+	 * Looks up a CSID.  A failed lookup is logged and treated as a miss, since callers can always resolve
+	 * the CSID without the directory.
+	 *
+	 * @return the CSID's entry, or null if the directory doesn't have one
+	 */
+	public Entry lookup(String tenantId, String csid) {
+		Entry result = null;
+		Connection conn = null;
+		try {
+			String repositoryName = getRepositoryName(tenantId);
+			if (repositoryName != null && csid != null) {
+				conn = getConnection(repositoryName);
+				if (ensureTable(repositoryName, conn)) {
+					PreparedStatement stmt = conn.prepareStatement("SELECT doctype, service_name, parent_csid, workflow_state FROM "
+							+ DIRECTORY_TABLE + " WHERE tenant_id = ? AND csid = ?");
+					try {
+						stmt.setString(1, tenantId);
+						stmt.setString(2, csid);
+						ResultSet rs = stmt.executeQuery();
+						if (rs.next()) {
+							result = new Entry(tenantId, csid, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+						}
+					} finally {
+						stmt.close();
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Failed to look up CSID %s in the CSID directory of tenant %s.", csid, tenantId), e);
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds out what a CSID is without loading its document.  The answer comes from the directory if it has an entry
+	 * for the CSID.  Otherwise it comes from projection queries of the repository, and is added to the directory.
+	 *
+	 * @return the CSID's entry, or null if the tenant has no document with the CSID
+	 */
+	public Entry resolve(String tenantId, CoreSessionInterface repoSession, String csid) throws Exception {
+		Entry result = lookup(tenantId, csid);
+		if (result == null) {
+			result = find(tenantId, repoSession, csid);
+			if (result != null) {
+				putAfterCommit(result);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Builds the entry of a CSID from the repository: one query for its document's type and workflow state and, if
+	 * the document is an authority item, one more for the CSID of its authority.
+	 */
+	protected Entry find(String tenantId, CoreSessionInterface repoSession, String csid) throws Exception {
+		String whereClause = " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NXQL.escapeString(tenantId)
+				+ " AND " + NXQL.ECM_NAME + " = " + NXQL.escapeString(csid)
+				+ " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0";
+		PartialList<Map<String, Serializable>> rows = repoSession.queryProjection("SELECT " + NXQL.ECM_PRIMARYTYPE + ", "
+				+ NXQL.ECM_LIFECYCLESTATE + " FROM " + NuxeoUtils.BASE_DOCUMENT_TYPE + whereClause, 1, 0);
+		if (rows.isEmpty()) {
+			return null;
+		}
+		String primaryType = (String) rows.get(0).get(NXQL.ECM_PRIMARYTYPE);
+		String workflowState = (String) rows.get(0).get(NXQL.ECM_LIFECYCLESTATE);
+
+		String parentCsid = null;
+		String parentField = getParentField(primaryType);
+		if (parentField != null) {
+			rows = repoSession.queryProjection("SELECT " + parentField + " FROM " + primaryType + whereClause, 1, 0);
+			if (rows.isEmpty() == false) {
+				parentCsid = (String) rows.get(0).get(parentField);
+			}
+		}
+
+		String docType = ServiceBindingUtils.getUnqualifiedTenantDocType(primaryType);
+		return new Entry(tenantId, csid, docType, getServiceName(tenantId, docType), parentCsid, workflowState);
+	}
+
+	/*
+	 * The field that holds the CSID of an authority item's authority -e.g. "persons_common:inAuthority"- or null if
+	 * the documents of the type aren't authority items.
+	 */
+	protected String getParentField(String primaryType) {
+		DocumentType documentType = Framework.getLocalService(SchemaManager.class).getDocumentType(primaryType);
+		if (documentType != null) {
+			for (Schema schema : documentType.getSchemas()) {
+				if (schema.hasField(AuthorityItemJAXBSchema.IN_AUTHORITY)) {
+					return schema.getName() + ":" + AuthorityItemJAXBSchema.IN_AUTHORITY;
+				}
+			}
+		}
+		return null;
+	}
+
+	protected String getServiceName(String tenantId, String docType) {
+		return getServiceNameForDocType(tenantId, docType);
+	}
+
+	/**
+	 * Adds or replaces an entry, once the current transaction commits.
+	 */
+	public void putAfterCommit(Entry entry) {
+		runAfterCommit(new Change(entry, entry.getTenantId(), entry.getCsid(), null));
+	}
+
+	/**
+	 * Adds or replaces the entry of a document that's being created or saved, once the current transaction commits.
+	 * A failure is only logged, so keeping the directory up to date never fails the request that changed the document.
+	 */
+	public void putAfterCommit(String tenantId, DocumentModel docModel) {
+		try {
+			putAfterCommit(createEntry(tenantId, docModel));
+		} catch (Exception e) {
+			logger.warn(String.format("Failed to add document %s to the CSID directory of tenant %s.", docModel.getName(), tenantId), e);
+		}
+	}
+
+	/**
+	 * Records the new workflow state of a CSID that has an entry, once the current transaction commits.
+	 */
+	public void setWorkflowStateAfterCommit(String tenantId, String csid, String workflowState) {
+		runAfterCommit(new Change(null, tenantId, csid, workflowState));
+	}
+
+	/**
+	 * Removes the entry of a CSID, once the current transaction commits.
+	 */
+	public void removeAfterCommit(String tenantId, String csid) {
+		removeAfterCommit(tenantId, Collections.singletonList(csid));
+	}
+
+	/**
+	 * Removes the entries of the CSIDs, once the current transaction commits.
+	 */
+	public void removeAfterCommit(String tenantId, Collection<String> csids) {
+		for (String csid : csids) {
+			runAfterCommit(new Change(null, tenantId, csid, null));
+		}
+	}
+
+	/*
+	 * The changes of a transaction are collected, and applied together by a single synchronization.
+	 */
+	private void runAfterCommit(Change change) {
+		if (TransactionHelper.isTransactionActive() == false) {
+			apply(Collections.singletonList(change));
+			return;
+		}
+
+		List<Change> changes = pendingChanges.get();
+		if (changes == null) {
+			final List<Change> transactionChanges = new ArrayList<Change>();
+			try {
+				TransactionHelper.registerSynchronization(new Synchronization() {
+					@Override
+					public void beforeCompletion() {
+						// Nothing to do
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						pendingChanges.remove();
+						if (status == Status.STATUS_COMMITTED) {
+							apply(transactionChanges);
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				logger.warn(String.format("Failed to register a CSID directory change of CSID %s with the current transaction.", change.csid), e);
+				return;
+			}
+			pendingChanges.set(transactionChanges);
+			changes = transactionChanges;
+		}
+		changes.add(change);
+	}
+
+	private void apply(List<Change> changes) {
+		Map<String, List<Change>> changesByRepository = new LinkedHashMap<String, List<Change>>();
+		for (Change change : changes) {
+			String repositoryName = getRepositoryName(change.tenantId);
+			if (repositoryName != null) {
+				List<Change> repositoryChanges = changesByRepository.get(repositoryName);
+				if (repositoryChanges == null) {
+					repositoryChanges = new ArrayList<Change>();
+					changesByRepository.put(repositoryName, repositoryChanges);
+				}
+				repositoryChanges.add(change);
+			}
+		}
+
+		for (Map.Entry<String, List<Change>> repositoryChanges : changesByRepository.entrySet()) {
+			try {
+				apply(repositoryChanges.getKey(), repositoryChanges.getValue());
+			} catch (Exception e) {
+				// The entries that weren't changed are stale, and will be corrected when they're next used
+				logger.warn(String.format("Failed to apply %d changes to the CSID directory of repository '%s'.",
+						repositoryChanges.getValue().size(), repositoryChanges.getKey()), e);
+			}
+		}
+	}
+
+	private void apply(String repositoryName, List<Change> changes) throws Exception {
+		Connection conn = getConnection(repositoryName);
+		try {
+			if (ensureTable(repositoryName, conn)) {
+				PreparedStatement put = conn.prepareStatement(PUT_SQL);
+				PreparedStatement setWorkflowState = conn.prepareStatement(SET_WORKFLOW_STATE_SQL);
+				PreparedStatement remove = conn.prepareStatement(REMOVE_SQL);
+				try {
+					for (Change change : changes) {
+						if (change.entry != null) {
+							Entry entry = change.entry;
+							put.setString(1, entry.getTenantId());
+							put.setString(2, entry.getCsid());
+							put.setString(3, entry.getDocType());
+							put.setString(4, entry.getServiceName());
+							put.setString(5, entry.getParentCsid());
+							put.setString(6, entry.getWorkflowState());
+							put.executeUpdate();
+						} else if (change.workflowState != null) {
+							setWorkflowState.setString(1, change.workflowState);
+							setWorkflowState.setString(2, change.tenantId);
+							setWorkflowState.setString(3, change.csid);
+							setWorkflowState.executeUpdate();
+						} else {
+							remove.setString(1, change.tenantId);
+							remove.setString(2, change.csid);
+							remove.executeUpdate();
+						}
+					}
+				} finally {
+					put.close();
+					setWorkflowState.close();
+					remove.close();
+				}
+			}
+		} finally {
+			close(conn);
+		}
+	}
+}
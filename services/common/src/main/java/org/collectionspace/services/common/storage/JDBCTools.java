@@ -19,6 +19,7 @@ package org.collectionspace.services.common.storage;
 
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.config.ConfigUtils;
+import org.collectionspace.services.common.profile.ServiceMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -204,6 +205,7 @@ public class JDBCTools {
     public static CachedRowSet executeQuery(String dataSourceName, String repositoryName, String cspaceInstanceId, String sql) throws Exception {
         Connection conn = null;
         Statement stmt = null;
+        long start = System.nanoTime();
         try {
             conn = getConnection(dataSourceName, repositoryName, cspaceInstanceId);
             stmt = conn.createStatement();
@@ -234,6 +236,8 @@ public class JDBCTools {
             } catch (SQLException sqle) {
                 logger.debug("SQL Exception closing statement/connection in executeQuery: " + sqle.getLocalizedMessage());
                 return null;
+            } finally {
+                ServiceMetrics.getInstance().recordJdbcCall(System.nanoTime() - start);
             }
         }
     }
@@ -242,6 +246,7 @@ public class JDBCTools {
             String dataSourceName, String repositoryName, String cspaceInstanceId) throws Exception {
         Connection conn = null;
         PreparedStatement ps = null;
+        long start = System.nanoTime();
         try {
             conn = getConnection(dataSourceName, repositoryName, cspaceInstanceId);
             RowSetFactory rowSetFactory = RowSetProvider.newFactory();
@@ -273,6 +278,8 @@ public class JDBCTools {
             } catch (SQLException sqle) {
                 logger.debug("SQL Exception closing statement/connection in executePreparedQuery: " + sqle.getLocalizedMessage());
                 return null;
+            } finally {
+                ServiceMetrics.getInstance().recordJdbcCall(System.nanoTime() - start);
             }
         }
     }
@@ -284,6 +291,7 @@ public class JDBCTools {
         Connection conn = null;
         PreparedStatement ps = null;
         List<CachedRowSet> results = new ArrayList<>();
+        long start = System.nanoTime();
         try {
             conn = getConnection(dataSourceName, repositoryName, cspaceInstanceId);
             if (executeWithinTransaction) {
@@ -337,6 +345,8 @@ public class JDBCTools {
             } catch (SQLException sqle) {
                 logger.debug("SQL Exception closing statement/connection in executePreparedQueries: " + sqle.getLocalizedMessage());
                 return null;
+            } finally {
+                ServiceMetrics.getInstance().recordJdbcCall(System.nanoTime() - start);
             }
         }
     }
@@ -347,6 +357,7 @@ public class JDBCTools {
     		String sql) throws Exception {
         Connection conn = null;
         Statement stmt = null;
+        long start = System.nanoTime();
         try {
             conn = getConnection(dataSourceName, repositoryName, cspaceInstanceId);
             stmt = conn.createStatement();
@@ -380,6 +391,8 @@ public class JDBCTools {
             } catch (SQLException sqle) {
                 logger.debug("SQL Exception closing statement/connection in executeUpdate: " + sqle.getLocalizedMessage());
                 return -1;
+            } finally {
+                ServiceMetrics.getInstance().recordJdbcCall(System.nanoTime() - start);
             }
         }
     }
@@ -25,9 +25,12 @@ package org.collectionspace.services.common.storage.jpa;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.PersistenceException;
 import javax.persistence.EntityManager;
@@ -77,7 +80,41 @@ public class JpaStorageUtils {
     // This is the column name for ID field of all the JPA objects
     public static final String CSID_LABEL = "csid";
 
-    private static Map<String, EntityManagerFactory> entityManagerFactoryCache = new HashMap<String, EntityManagerFactory>();
+    /*
+     * Set the system property org.collectionspace.services.jpa.secondLevelCache to "true" to cache the read-mostly
+     * role, permission and tenant entities -and the account role and permission queries- across EntityManagers.
+     * The cache provider can be set with org.collectionspace.services.jpa.cacheProvider.  The default one is Ehcache's,
+     * whose caches are bounded by ehcache.xml -or by its failsafe configuration, if there is none on the classpath.
+     */
+    public static final String SECOND_LEVEL_CACHE_PROPERTY = "org.collectionspace.services.jpa.secondLevelCache";
+    public static final String CACHE_PROVIDER_PROPERTY = "org.collectionspace.services.jpa.cacheProvider";
+    public static final String DEFAULT_CACHE_PROVIDER = "net.sf.ehcache.hibernate.SingletonEhCacheProvider";
+    // Never evicts anything, so it only suits tests
+    private static final String HASHTABLE_CACHE_PROVIDER = "org.hibernate.cache.HashtableCacheProvider";
+
+    // The query cache only holds the IDs of the entities a query returns, so the entities of the cached queries
+    // -AccountRoleRel and PermissionRoleRel- must be cached too, or each hit loads them one by one.
+    private static final String[] CACHED_ENTITY_CLASSES = {
+        "org.collectionspace.services.authorization.Role",
+        "org.collectionspace.services.authorization.perms.Permission",
+        "org.collectionspace.services.authorization.perms.PermissionAction",
+        "org.collectionspace.services.authorization.AccountRoleRel",
+        "org.collectionspace.services.authorization.PermissionRoleRel",
+        "org.collectionspace.services.account.Tenant"
+    };
+    private static final String CACHEABLE_QUERY_HINT = "org.hibernate.cacheable";
+
+    private static final String ACCOUNT_PERMISSIONS_QUERY =
+            "SELECT DISTINCT pr FROM " + AccountRoleRel.class.getName() + " ar, " + PermissionRoleRel.class.getName() + " pr"
+            + " WHERE ar.roleId = pr.roleId AND ar.userId = :userId";
+    private static final String ACCOUNT_RESOURCE_PERMISSIONS_QUERY = ACCOUNT_PERMISSIONS_QUERY
+            + " AND (pr.permissionResource = :currentResource OR pr.permissionResource = :permissionResource)";
+    private static final String ACCOUNT_ROLES_QUERY =
+            "SELECT DISTINCT ar FROM " + AccountRoleRel.class.getName() + " ar WHERE ar.userId = :userId";
+
+    private static final Map<String, EntityManagerFactory> entityManagerFactoryCache = new ConcurrentHashMap<String, EntityManagerFactory>();
+    // The persistence units that couldn't be found, so we don't keep looking for them
+    private static final Set<String> missingPersistenceUnits = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private static boolean useTenantId(String tenantId) {
     	boolean result = true;
@@ -111,6 +148,7 @@ public class JpaStorageUtils {
         	throw t;
         } finally {
             if (em != null) {
+                releaseEntityManager(em);
                 releaseEntityManagerFactory(emf);
             }
         }
@@ -130,6 +168,7 @@ public class JpaStorageUtils {
             entityFound = em.find(entityClazz, id);
         } finally {
             if (em != null) {
+                releaseEntityManager(em);
                 releaseEntityManagerFactory(emf);
             }
         }
@@ -287,19 +326,18 @@ public class JpaStorageUtils {
             emf = getEntityManagerFactory();
             em = emf.createEntityManager();
 
-            StringBuilder permQueryStrBldr = new StringBuilder(
-            		"SELECT DISTINCT pr FROM " + AccountRoleRel.class.getName() + " ar, "
-            		+ PermissionRoleRel.class.getName() + " pr"
-            		+ " WHERE ar.roleId = pr.roleId and ar.userId=" + "'" + userId + "'");
             //
             // Filter by the permissionResource param if it is set to something
             //
+            Query q;
             if (permissionResource != null && currentResource != null) {
-            	permQueryStrBldr.append(" and (pr.permissionResource = " + "'" + currentResource + "'" +
-            			" or pr.permissionResource = " + "'" + permissionResource + "'" + ")");
+            	q = createQuery(em, ACCOUNT_RESOURCE_PERMISSIONS_QUERY);
+            	q.setParameter("currentResource", currentResource);
+            	q.setParameter("permissionResource", permissionResource);
+            } else {
+            	q = createQuery(em, ACCOUNT_PERMISSIONS_QUERY);
             }
-            String queryStr = permQueryStrBldr.toString(); //for debugging
-            Query q = em.createQuery(queryStr);
+            q.setParameter("userId", userId);
             resultList = q.getResultList().iterator();
 
             if (resultList.hasNext()) {
@@ -327,6 +365,7 @@ public class JpaStorageUtils {
             }
         } finally {
             if (em != null) {
+                releaseEntityManager(em);
                 releaseEntityManagerFactory(emf);
             }
         }
@@ -368,11 +407,8 @@ public class JpaStorageUtils {
 			emf = getEntityManagerFactory();
 			em = emf.createEntityManager();
 
-			String queryStr =
-					"SELECT DISTINCT ar FROM " + AccountRoleRel.class.getName() + " ar "
-					+ "WHERE ar.userId=" + "'" + userId + "'";
-
-			Query q = em.createQuery(queryStr);
+			Query q = createQuery(em, ACCOUNT_ROLES_QUERY);
+			q.setParameter("userId", userId);
 			resultList = q.getResultList().iterator();
 
 			List<RoleValue> roleValues = new ArrayList<RoleValue>();
@@ -406,6 +442,7 @@ public class JpaStorageUtils {
 			}
 		} finally {
 			if (em != null) {
+				releaseEntityManager(em);
 				releaseEntityManagerFactory(emf);
 			}
 		}
@@ -631,6 +668,7 @@ public class JpaStorageUtils {
             //returns null
         } finally {
             if (em != null) {
+                releaseEntityManager(em);
                 releaseEntityManagerFactory(emf);
             }
         }
@@ -719,6 +757,7 @@ public class JpaStorageUtils {
             throw e;
         } finally {
             if (em != null) {
+                releaseEntityManager(em);
                 releaseEntityManagerFactory(emf);
             }
         }
@@ -796,21 +835,89 @@ public class JpaStorageUtils {
 
         result = entityManagerFactoryCache.get(persistenceUnit);
 
-        if (result == null) {
-            try {
-                result = Persistence.createEntityManagerFactory(persistenceUnit);
-            } catch (javax.persistence.PersistenceException e) {
-                logger.warn("Could not find a persistence unit for: " + persistenceUnit);
+        if (result == null && missingPersistenceUnits.contains(persistenceUnit) == false) {
+            //
+            // Only one thread creates a factory -each one has its own connection pool
+            //
+            synchronized (entityManagerFactoryCache) {
+                result = entityManagerFactoryCache.get(persistenceUnit);
+                if (result == null && missingPersistenceUnits.contains(persistenceUnit) == false) {
+                    try {
+                        result = Persistence.createEntityManagerFactory(persistenceUnit, getEntityManagerFactoryProperties());
+                    } catch (javax.persistence.PersistenceException e) {
+                        logger.warn("Could not find a persistence unit for: " + persistenceUnit);
+                    }
+
+                    if (result != null) {
+                        entityManagerFactoryCache.put(persistenceUnit, result);
+                    } else {
+                        missingPersistenceUnits.add(persistenceUnit);
+                    }
+                }
             }
+        }
 
-            if (result != null) {
-                entityManagerFactoryCache.put(persistenceUnit, result);
+        return result;
+    }
+
+    public static boolean isSecondLevelCacheEnabled() {
+        return Boolean.getBoolean(SECOND_LEVEL_CACHE_PROPERTY);
+    }
+
+    /*
+     * The properties that override those of the persistence unit
+     */
+    static Map<String, String> getEntityManagerFactoryProperties() {
+        Map<String, String> result = new HashMap<String, String>();
+
+        if (isSecondLevelCacheEnabled()) {
+            result.put("hibernate.cache.use_second_level_cache", "true");
+            result.put("hibernate.cache.use_query_cache", "true");
+            String cacheProvider = System.getProperty(CACHE_PROVIDER_PROPERTY, DEFAULT_CACHE_PROVIDER);
+            if (cacheProvider.equals(HASHTABLE_CACHE_PROVIDER)) {
+                logger.warn(String.format("The JPA second-level cache provider %s never evicts anything.", cacheProvider));
             }
+            result.put("hibernate.cache.provider_class", cacheProvider);
+            for (String entityClass : CACHED_ENTITY_CLASSES) {
+                result.put("hibernate.ejb.classcache." + entityClass, "read-write");
+            }
+            logger.info("Using the JPA second-level cache for the role, permission, account role, permission role and tenant entities.");
+        }
+
+        return result;
+    }
+
+    /*
+     * Creates a query -one that uses the query cache, if it is enabled.  The query string should be a constant with
+     * parameters, so its parsed form can be reused.
+     */
+    private static Query createQuery(EntityManager em, String queryStr) {
+        Query result = em.createQuery(queryStr);
+
+        if (isSecondLevelCacheEnabled()) {
+            result.setHint(CACHEABLE_QUERY_HINT, true);
         }
 
         return result;
     }
 
+    /**
+     * Closes an entity manager that was created to do one thing, rolling back any transaction it left open.
+     *
+     * @param em the entity manager
+     */
+    public static void releaseEntityManager(EntityManager em) {
+        if (em != null && em.isOpen()) {
+            try {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } finally {
+                em.close();
+            }
+        }
+    }
+
     /**
      * Release entity manager factory.
      *
@@ -830,10 +937,13 @@ public class JpaStorageUtils {
     }
 
     public static void releaseEntityManagerFactories() {
-        for (EntityManagerFactory emf : entityManagerFactoryCache.values()) {
-            emf.close();
-        }
+        synchronized (entityManagerFactoryCache) {
+            for (EntityManagerFactory emf : entityManagerFactoryCache.values()) {
+                emf.close();
+            }
 
-        entityManagerFactoryCache.clear();
+            entityManagerFactoryCache.clear();
+            missingPersistenceUnits.clear();
+        }
     }
 }
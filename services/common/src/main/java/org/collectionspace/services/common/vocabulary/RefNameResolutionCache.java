@@ -0,0 +1,436 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.common.vocabulary;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.common.api.RefNameUtils;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RefNameResolutionCache remembers which document an authority term refName resolved to, so
+ * resolving the same refName again (as batch jobs, merges and SAS synchronization do constantly)
+ * is a fetch by repository id instead of two NXQL queries.  There is one size-bounded LRU map
+ * per tenant, keyed by RefNameUtils.getAuthorityTermKey(), i.e. the refName without its display name.
+ *
+ * Entries are evicted by the authority item document handlers when an item is updated, deleted
+ * or changes workflow state, and when its parent authority is updated.  As a safety net, a cached
+ * document is only returned if its current refName still has the requested key; otherwise the
+ * entry is dropped and the caller falls back to the query.
+ *
+ * The per-tenant size can be configured with the system property
+ *   org.collectionspace.services.refname.cacheSize
+ * A size of 0 disables the cache.
+ */
+public class RefNameResolutionCache {
+	final static Logger logger = LoggerFactory.getLogger(RefNameResolutionCache.class);
+
+	public static final String CACHE_SIZE_PROPERTY = "org.collectionspace.services.refname.cacheSize";
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	private static final RefNameResolutionCache instance = new RefNameResolutionCache(getCacheSizeProperty());
+
+	/**
+	 * What a refName resolved to
+	 */
+	public static class Entry {
+		private final String repositoryId;
+		private final String csid;
+		private final String inAuthority;
+		private final String docType;
+
+		Entry(String repositoryId, String csid, String inAuthority, String docType) {
+			this.repositoryId = repositoryId;
+			this.csid = csid;
+			this.inAuthority = inAuthority;
+			this.docType = docType;
+		}
+
+		public String getCsid() {
+			return csid;
+		}
+
+		public String getInAuthority() {
+			return inAuthority;
+		}
+
+		public String getDocType() {
+			return docType;
+		}
+	}
+
+	/*
+	 * An access-ordered LRU map plus a csid index for eviction.  All access is synchronized on the instance.
+	 */
+	private static class TenantCache extends LinkedHashMap<String, Entry> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+		private final Map<String, String> keysByCsid = new HashMap<String, String>();
+		private long evictions = 0;
+
+		TenantCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			boolean result = size() > maxSize;
+			if (result) {
+				keysByCsid.remove(eldest.getValue().csid);
+				evictions++;
+			}
+			return result;
+		}
+
+		synchronized Entry lookup(String key) {
+			return get(key);
+		}
+
+		synchronized void store(String key, Entry entry) {
+			String oldKey = keysByCsid.put(entry.csid, key);
+			if (oldKey != null && !oldKey.equals(key)) {
+				remove(oldKey);
+			}
+			Entry oldEntry = put(key, entry);
+			if (oldEntry != null && !oldEntry.csid.equals(entry.csid)) {
+				keysByCsid.remove(oldEntry.csid);
+			}
+		}
+
+		synchronized boolean evictKey(String key) {
+			Entry entry = remove(key);
+			if (entry != null) {
+				keysByCsid.remove(entry.csid);
+			}
+			return entry != null;
+		}
+
+		synchronized boolean evictCsid(String csid) {
+			String key = keysByCsid.remove(csid);
+			return key != null && remove(key) != null;
+		}
+
+		synchronized int evictInAuthority(String inAuthority) {
+			int result = 0;
+			Iterator<Entry> iter = values().iterator();
+			while (iter.hasNext()) {
+				Entry entry = iter.next();
+				if (inAuthority.equals(entry.inAuthority)) {
+					keysByCsid.remove(entry.csid);
+					iter.remove();
+					result++;
+				}
+			}
+			return result;
+		}
+
+		synchronized int getSize() {
+			return size();
+		}
+
+		synchronized long getEvictions() {
+			return evictions;
+		}
+	}
+
+	private final int maxSize;
+	private final ConcurrentMap<String, TenantCache> tenantCaches = new ConcurrentHashMap<String, TenantCache>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private RefNameResolutionCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public static RefNameResolutionCache getInstance() {
+		return instance;
+	}
+
+	private static int getCacheSizeProperty() {
+		int result = DEFAULT_CACHE_SIZE;
+		String value = System.getProperty(CACHE_SIZE_PROPERTY);
+		if (value != null && !value.trim().isEmpty()) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for system property '%s'.  Using %d.",
+						value, CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+			}
+		}
+		return result >= 0 ? result : DEFAULT_CACHE_SIZE;
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	private TenantCache getTenantCache(String tenantId, boolean create) {
+		TenantCache result = tenantCaches.get(tenantId);
+		if (result == null && create) {
+			TenantCache newCache = new TenantCache(maxSize);
+			result = tenantCaches.putIfAbsent(tenantId, newCache);
+			if (result == null) {
+				result = newCache;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * getDocModel returns the document a refName was last resolved to, if it's cached and the
+	 * document still has that refName.
+	 * @param repoSession
+	 * @param tenantId
+	 * @param termKey the refName's RefNameUtils.getAuthorityTermKey() value
+	 * @return the document, or null if the caller should resolve the refName itself
+	 */
+	public DocumentModel getDocModel(CoreSessionInterface repoSession, String tenantId, String termKey) {
+		if (!isEnabled() || repoSession == null || tenantId == null || termKey == null) {
+			return null;
+		}
+		TenantCache cache = getTenantCache(tenantId, false);
+		Entry entry = cache != null ? cache.lookup(termKey) : null;
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		if (entry.repositoryId == null) {
+			// Resolved by a caller that didn't have the document; the caller's put() will complete the entry
+			misses.incrementAndGet();
+			return null;
+		}
+
+		DocumentModel result = null;
+		try {
+			DocumentModel docModel = repoSession.getDocument(new IdRef(entry.repositoryId));
+			if (isCurrent(docModel, termKey, entry)) {
+				result = docModel;
+			}
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(String.format("Cached document for refName '%s' could not be fetched.", termKey), e);
+			}
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			stale.incrementAndGet();
+			misses.incrementAndGet();
+			cache.evictKey(termKey);
+		}
+		return result;
+	}
+
+	/**
+	 * getEntry returns what a refName was last resolved to, without checking it against the
+	 * repository.  Callers that can't use getDocModel() should look the item up by the entry's
+	 * CSIDs, and then report the outcome with entryFound() or entryNotFound(); only the former
+	 * counts as a hit.
+	 * @param tenantId
+	 * @param termKey the refName's RefNameUtils.getAuthorityTermKey() value
+	 * @return the entry, or null if there isn't one
+	 */
+	public Entry getEntry(String tenantId, String termKey) {
+		if (!isEnabled() || tenantId == null || termKey == null) {
+			return null;
+		}
+		TenantCache cache = getTenantCache(tenantId, false);
+		Entry result = cache != null ? cache.lookup(termKey) : null;
+		if (result == null) {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * entryFound records that the item of an entry returned by getEntry() was found
+	 * @param entry
+	 */
+	public void entryFound(Entry entry) {
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * entryNotFound records that the item of an entry returned by getEntry() no longer exists
+	 * (or no longer has the refName), and drops the entry
+	 * @param tenantId
+	 * @param termKey
+	 * @param entry
+	 */
+	public void entryNotFound(String tenantId, String termKey, Entry entry) {
+		stale.incrementAndGet();
+		misses.incrementAndGet();
+		TenantCache cache = tenantId != null ? getTenantCache(tenantId, false) : null;
+		if (cache != null && termKey != null) {
+			cache.evictKey(termKey);
+		}
+	}
+
+	/**
+	 * put remembers the document a refName resolved to.  Documents whose own refName has a
+	 * different key (e.g. a refName using a legacy item token) aren't cached, since they could
+	 * never pass the check in getDocModel().
+	 * @param tenantId
+	 * @param termKey the refName's RefNameUtils.getAuthorityTermKey() value
+	 * @param docModel
+	 */
+	public void put(String tenantId, String termKey, DocumentModel docModel) {
+		if (!isEnabled() || tenantId == null || termKey == null || docModel == null) {
+			return;
+		}
+		try {
+			if (!termKey.equals(RefNameUtils.getAuthorityTermKey(getRefName(docModel)))) {
+				return;
+			}
+			Entry entry = new Entry(docModel.getId(), docModel.getName(),
+					(String) NuxeoUtils.getProperyValue(docModel, AuthorityItemJAXBSchema.IN_AUTHORITY),
+					docModel.getType());
+			getTenantCache(tenantId, true).store(termKey, entry);
+		} catch (Exception e) {
+			logger.debug(String.format("Could not cache the resolution of refName '%s'.", termKey), e);
+		}
+	}
+
+	/**
+	 * put remembers the item a refName resolved to, for callers that have the item's payload rather
+	 * than its document.  Such an entry can be used by getEntry() callers; getDocModel() treats it as
+	 * a miss until a caller with the document puts it again.
+	 * @param tenantId
+	 * @param termKey the refName's RefNameUtils.getAuthorityTermKey() value
+	 * @param csid
+	 * @param inAuthority
+	 * @param docType
+	 */
+	public void put(String tenantId, String termKey, String csid, String inAuthority, String docType) {
+		if (!isEnabled() || tenantId == null || termKey == null || csid == null || docType == null) {
+			return;
+		}
+		getTenantCache(tenantId, true).store(termKey, new Entry(null, csid, inAuthority, docType));
+	}
+
+	private static boolean isCurrent(DocumentModel docModel, String termKey, Entry entry) throws Exception {
+		return docModel != null
+				&& entry.csid.equals(docModel.getName())
+				&& entry.docType.equals(docModel.getType())
+				&& termKey.equals(RefNameUtils.getAuthorityTermKey(getRefName(docModel)));
+	}
+
+	private static String getRefName(DocumentModel docModel) throws Exception {
+		return (String) docModel.getProperty(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA,
+				CollectionSpaceClient.COLLECTIONSPACE_CORE_REFNAME);
+	}
+
+	/**
+	 * invalidateItem drops the cached resolution of an authority item, if any
+	 * @param tenantId
+	 * @param itemCsid
+	 */
+	public void invalidateItem(String tenantId, String itemCsid) {
+		TenantCache cache = tenantId != null ? getTenantCache(tenantId, false) : null;
+		if (cache != null && itemCsid != null && cache.evictCsid(itemCsid)) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * invalidateAuthority drops the cached resolutions of all the items in an authority
+	 * @param tenantId
+	 * @param authorityCsid
+	 */
+	public void invalidateAuthority(String tenantId, String authorityCsid) {
+		TenantCache cache = tenantId != null ? getTenantCache(tenantId, false) : null;
+		if (cache != null && authorityCsid != null) {
+			invalidations.addAndGet(cache.evictInAuthority(authorityCsid));
+		}
+	}
+
+	/**
+	 * invalidateAll empties the cache for every tenant
+	 */
+	public void invalidateAll() {
+		tenantCaches.clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of misses where a cached entry no longer matched its document
+	 */
+	public long getStaleCount() {
+		return stale.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	public long getEvictionCount() {
+		long result = 0;
+		for (TenantCache cache : tenantCaches.values()) {
+			result += cache.getEvictions();
+		}
+		return result;
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if there haven't been any lookups
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total > 0 ? (double) hitCount / total : 0;
+	}
+
+	public int size() {
+		int result = 0;
+		for (TenantCache cache : tenantCaches.values()) {
+			result += cache.getSize();
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RefNameResolutionCache [size=%d, hits=%d, misses=%d, stale=%d, invalidations=%d, evictions=%d, hitRate=%.3f]",
+				size(), getHitCount(), getMissCount(), getStaleCount(), getInvalidationCount(), getEvictionCount(), getHitRate());
+	}
+}
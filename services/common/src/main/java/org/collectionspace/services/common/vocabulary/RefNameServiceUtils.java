@@ -22,11 +22,15 @@
  */
 package org.collectionspace.services.common.vocabulary;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.ws.rs.core.Response;
@@ -34,10 +38,13 @@ import javax.ws.rs.core.Response;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.model.Property;
 import org.nuxeo.ecm.core.api.model.PropertyException;
 import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.api.model.impl.primitives.StringProperty;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.collectionspace.services.client.CollectionSpaceClient;
@@ -46,6 +53,7 @@ import org.collectionspace.services.client.IRelationsManager;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.Profiler;
+import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.common.CSWebApplicationException;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.ServletTools;
@@ -55,6 +63,7 @@ import org.collectionspace.services.common.UriTemplateRegistry;
 import org.collectionspace.services.common.UriTemplateRegistryKey;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.context.AbstractServiceContextImpl;
+import org.collectionspace.services.common.api.GregorianCalendarDateTimeUtils;
 import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.api.RefNameUtils.AuthorityTermInfo;
@@ -498,6 +507,9 @@ public class RefNameServiceUtils {
     // Note: can set this value lower during debugging; e.g. to 3 - ADR 2012-07-10
     private static final int N_OBJS_TO_UPDATE_PER_LOOP = 100;
 
+    // Separates the authority part of a term's refName from the term's short identifier
+    private static final String TERM_REFNAME_SEPARATOR = ":item:name(";
+
     public static int updateAuthorityRefDocs(
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
             RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient,
@@ -583,6 +595,363 @@ public class RefNameServiceUtils {
         return nRefsFound;
     }
 
+    /**
+     * The number of references replaced by replaceRefNames, by doctype and field.
+     */
+    public static class RefNameReplacementCounts {
+        private long nDocsUpdated = 0;
+        private long nRefsReplaced = 0;
+        private final Map<String, Map<String, Long>> countsByDocType = new LinkedHashMap<String, Map<String, Long>>();
+
+        void addDoc(String docType, List<AuthRefInfo> replacedProps) {
+            Map<String, Long> countsByField = countsByDocType.get(docType);
+            if (countsByField == null) {
+                countsByField = new LinkedHashMap<String, Long>();
+                countsByDocType.put(docType, countsByField);
+            }
+            for (AuthRefInfo ari : replacedProps) {
+                String field = ari.getQualifiedDisplayName();
+                Long count = countsByField.get(field);
+                countsByField.put(field, count == null ? 1 : count + 1);
+            }
+            nDocsUpdated++;
+            nRefsReplaced += replacedProps.size();
+        }
+
+        public long getNumDocsUpdated() {
+            return nDocsUpdated;
+        }
+
+        public long getNumRefsReplaced() {
+            return nRefsReplaced;
+        }
+
+        /**
+         * @return the number of references replaced in each field (qualified with its part name), by doctype
+         */
+        public Map<String, Map<String, Long>> getCountsByDocType() {
+            return countsByDocType;
+        }
+    }
+
+    /**
+     * Replaces a refName with another in the authRef fields of the records (authority items, objects and procedures)
+     * that reference it, without going through their document handlers.
+     *
+     * The referencing records are found with a query on the authRef fields of each doctype, rather than a keyword
+     * search, and are then updated in chunks of N_OBJS_TO_UPDATE_PER_LOOP. All of the references in a record are
+     * replaced at once, along with its updatedAt and updatedBy values, and the record is saved once; so each record
+     * gets a single documentModified event, however many of its fields changed. Soft-deleted records are left alone.
+     *
+     * By default all of the updates are made in the caller's transaction. A batch job or background task that owns
+     * its transaction can ask for the transaction to be committed after each chunk, and a new one started, so that
+     * replacing thousands of references doesn't make for one huge transaction; the chunks already committed stay
+     * committed if a later one fails.
+     *
+     * @param ctx
+     * @param repoSession
+     * @param docTypes the (unqualified) doctypes to update, or null for all of them
+     * @param oldRefName the refName to replace
+     * @param newRefName the refName to replace it with
+     * @param matchBaseOnly true to replace the refName whatever its display name
+     * @param commitEachChunk true to commit the active transaction after each chunk, and start a new one
+     * @return the number of references replaced, by doctype and field
+     * @throws Exception
+     */
+    public static RefNameReplacementCounts replaceRefNames(
+            final ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            final CoreSessionInterface repoSession,
+            List<String> docTypes,
+            final String oldRefName,
+            final String newRefName,
+            final boolean matchBaseOnly,
+            boolean commitEachChunk) throws Exception {
+        final RefNameReplacementCounts counts = new RefNameReplacementCounts();
+        final String oldRefNameBase = RefNameUtils.stripAuthorityTermDisplayName(oldRefName);
+        String tenantId = ctx.getTenantId();
+
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        List<ServiceBindingType> serviceBindings = tReader.getServiceBindingsByType(tenantId, getRefNameServiceTypes());
+        if (serviceBindings == null) {
+            return counts;
+        }
+        serviceBindings = SecurityUtils.getReadableServiceBindingsForCurrentUser(serviceBindings);
+
+        for (ServiceBindingType sb : serviceBindings) {
+            final String docType = sb.getObject().getName();
+            if (docTypes != null && docTypes.contains(docType) == false) {
+                continue;
+            }
+
+            final List<AuthRefConfigInfo> authRefFields = new ArrayList<AuthRefConfigInfo>();
+            for (String spec : ServiceBindingUtils.getAllPartsPropertyValues(sb, ServiceBindingUtils.AUTH_REF_PROP,
+                    ServiceBindingUtils.QUALIFIED_PROP_NAMES)) {
+                authRefFields.add(new AuthRefConfigInfo(spec));
+            }
+            if (authRefFields.isEmpty()) {
+                continue;
+            }
+
+            List<String> ids = findRefNameReferrerIds(repoSession, tenantId, docType, authRefFields,
+                    matchBaseOnly ? oldRefNameBase : oldRefName, matchBaseOnly);
+            logger.debug(String.format("replaceRefNames: %d %s records may reference %s", ids.size(), docType, oldRefName));
+
+            updateInChunks(ids, N_OBJS_TO_UPDATE_PER_LOOP, commitEachChunk, new ChunkUpdater() {
+                @Override
+                public void update(List<String> chunk) throws Exception {
+                    replaceRefNamesInDocs(ctx, repoSession, docType, authRefFields, chunk, oldRefName, oldRefNameBase,
+                            newRefName, matchBaseOnly, counts);
+                }
+            });
+        }
+
+        logger.debug(String.format("replaceRefNames replaced %d references to %s, in %d records",
+                counts.getNumRefsReplaced(), oldRefName, counts.getNumDocsUpdated()));
+
+        return counts;
+    }
+
+    /*
+     * Finds the ids of the records of a doctype that have the refName in one of the given fields. The base of a
+     * refName is matched with a LIKE condition, which may find records that don't actually have it; they're
+     * skipped when the fields are checked.
+     */
+    private static List<String> findRefNameReferrerIds(
+            CoreSessionInterface repoSession,
+            String tenantId,
+            String docType,
+            List<AuthRefConfigInfo> authRefFields,
+            String refName,
+            boolean matchBaseOnly) throws Exception {
+        StringBuilder fieldConditions = new StringBuilder();
+        String value = NXQL.escapeString(matchBaseOnly ? refName + "%" : refName);
+        for (AuthRefConfigInfo arci : authRefFields) {
+            if (fieldConditions.length() > 0) {
+                fieldConditions.append(" OR ");
+            }
+            for (int i = 0; i < arci.pathEls.length; i++) {
+                fieldConditions.append(i > 0 ? "/" : "").append(arci.pathEls[i]);
+            }
+            fieldConditions.append(matchBaseOnly ? " LIKE " : " = ").append(value);
+        }
+
+        String query = "SELECT " + NXQL.ECM_UUID + " FROM " + NuxeoUtils.getTenantQualifiedDocType(tenantId, docType)
+                + " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NXQL.escapeString(tenantId)
+                + " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0"
+                + " AND " + NuxeoUtils.buildWorkflowNotDeletedWhereClause()
+                + " AND (" + fieldConditions + ")";
+
+        List<String> ids = new ArrayList<String>();
+        IterableQueryResult result = repoSession.queryAndFetch(query, NXQL.NXQL);
+        try {
+            for (Map<String, Serializable> row : result) {
+                ids.add((String) row.get(NXQL.ECM_UUID));
+            }
+        } finally {
+            result.close();
+        }
+
+        return ids;
+    }
+
+    private static void replaceRefNamesInDocs(
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            CoreSessionInterface repoSession,
+            String docType,
+            List<AuthRefConfigInfo> authRefFields,
+            List<String> ids,
+            String oldRefName,
+            String oldRefNameBase,
+            String newRefName,
+            boolean matchBaseOnly,
+            RefNameReplacementCounts counts) throws Exception {
+        StringBuilder idList = new StringBuilder();
+        for (String id : ids) {
+            idList.append(idList.length() > 0 ? ", " : "").append(NXQL.escapeString(id));
+        }
+        DocumentModelList docList = repoSession.query("SELECT * FROM Document WHERE " + NXQL.ECM_UUID + " IN (" + idList + ")");
+
+        String now = GregorianCalendarDateTimeUtils.timestampUTC();
+        String userId = ctx.getUserId();
+        List<DocumentModel> updatedDocs = new ArrayList<DocumentModel>(docList.size());
+
+        for (DocumentModel docModel : docList) {
+            List<AuthRefInfo> replacedProps = new ArrayList<AuthRefInfo>();
+
+            // Get all the non-empty authRef values, and check each one.
+            for (AuthRefInfo ari : findAuthRefPropertiesInDoc(docModel, authRefFields, null, new ArrayList<AuthRefInfo>())) {
+                Property prop = ari.getProperty();
+                String value = (String) prop.getValue();
+                boolean matches;
+
+                if (matchBaseOnly) {
+                    try {
+                        matches = oldRefNameBase.equals(RefNameUtils.stripAuthorityTermDisplayName(value));
+                    } catch (IllegalArgumentException e) {
+                        matches = false; // not a refName
+                    }
+                } else {
+                    matches = oldRefName.equals(value);
+                }
+
+                if (matches) {
+                    prop.setValue(newRefName);
+                    replacedProps.add(ari);
+                }
+            }
+
+            if (replacedProps.isEmpty() == false) {
+                docModel.setProperty(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA,
+                        CollectionSpaceClient.COLLECTIONSPACE_CORE_UPDATED_AT, now);
+                docModel.setProperty(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA,
+                        CollectionSpaceClient.COLLECTIONSPACE_CORE_UPDATED_BY, userId);
+                updatedDocs.add(docModel);
+                counts.addDoc(docType, replacedProps);
+            }
+        }
+
+        if (updatedDocs.isEmpty() == false) {
+            repoSession.saveDocuments(updatedDocs.toArray(new DocumentModel[updatedDocs.size()]));
+            repoSession.save();
+        }
+    }
+
+    /*
+     * Updates the records with the given ids, a chunk at a time.
+     */
+    interface ChunkUpdater {
+        void update(List<String> chunk) throws Exception;
+    }
+
+    /*
+     * Passes the ids to the updater in chunks of at most chunkSize. With commitEachChunk, the active transaction,
+     * if there is one, is committed after each chunk, and a new one is started; otherwise the transaction is left
+     * to the caller.
+     */
+    static void updateInChunks(List<String> ids, int chunkSize, boolean commitEachChunk, ChunkUpdater updater) throws Exception {
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            updater.update(ids.subList(start, Math.min(start + chunkSize, ids.size())));
+
+            if (commitEachChunk && TransactionHelper.isTransactionActive()) {
+                TransactionHelper.commitOrRollbackTransaction();
+                TransactionHelper.startTransaction();
+            }
+        }
+    }
+
+    /**
+     * Finds which of a set of authority terms are referenced from the authRef fields of records (authority items,
+     * objects and procedures), with one query per doctype for all of the terms, instead of a keyword search per term.
+     * This is how references are checked before the items of an authority are deleted in bulk.
+     *
+     * The records are found with a LIKE condition on the authRef fields, matching the part of the terms' refNames
+     * that comes before the terms' short identifiers; the fields of each record are then checked against the terms
+     * themselves.  Soft-deleted records count, so that the caller can tell them apart.
+     *
+     * @param ctx
+     * @param repoSession
+     * @param termRefNameBases the refNames of the terms, without their display names
+     * @param ignoredCsids the CSIDs of records whose references don't count -e.g., the terms themselves, when
+     *            they are all being deleted
+     * @return for each referenced term, by its refName base: true if a record that isn't soft-deleted references it,
+     *         or false if only soft-deleted records do
+     * @throws Exception
+     */
+    public static Map<String, Boolean> findTermReferences(
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            CoreSessionInterface repoSession,
+            Set<String> termRefNameBases,
+            Set<String> ignoredCsids) throws Exception {
+        Map<String, Boolean> result = new HashMap<String, Boolean>();
+        String tenantId = ctx.getTenantId();
+
+        Set<String> refNamePrefixes = new LinkedHashSet<String>();
+        for (String refNameBase : termRefNameBases) {
+            int pos = refNameBase.lastIndexOf(TERM_REFNAME_SEPARATOR);
+            if (pos > 0) {
+                refNamePrefixes.add(refNameBase.substring(0, pos + TERM_REFNAME_SEPARATOR.length()));
+            }
+        }
+        if (refNamePrefixes.isEmpty()) {
+            return result;
+        }
+
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        List<ServiceBindingType> serviceBindings = tReader.getServiceBindingsByType(tenantId, getRefNameServiceTypes());
+        if (serviceBindings == null) {
+            return result;
+        }
+        serviceBindings = SecurityUtils.getReadableServiceBindingsForCurrentUser(serviceBindings);
+
+        for (ServiceBindingType sb : serviceBindings) {
+            String docType = sb.getObject().getName();
+            List<AuthRefConfigInfo> authRefFields = new ArrayList<AuthRefConfigInfo>();
+            for (String spec : ServiceBindingUtils.getAllPartsPropertyValues(sb, ServiceBindingUtils.AUTH_REF_PROP,
+                    ServiceBindingUtils.QUALIFIED_PROP_NAMES)) {
+                authRefFields.add(new AuthRefConfigInfo(spec));
+            }
+            if (authRefFields.isEmpty()) {
+                continue;
+            }
+
+            StringBuilder fieldConditions = new StringBuilder();
+            for (AuthRefConfigInfo arci : authRefFields) {
+                StringBuilder path = new StringBuilder();
+                for (int i = 0; i < arci.pathEls.length; i++) {
+                    path.append(i > 0 ? "/" : "").append(arci.pathEls[i]);
+                }
+                for (String refNamePrefix : refNamePrefixes) {
+                    fieldConditions.append(fieldConditions.length() > 0 ? " OR " : "")
+                            .append(path).append(" LIKE ").append(NXQL.escapeString(refNamePrefix + "%"));
+                }
+            }
+
+            String query = "SELECT " + NXQL.ECM_UUID + ", " + NXQL.ECM_NAME
+                    + " FROM " + NuxeoUtils.getTenantQualifiedDocType(tenantId, docType)
+                    + " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NXQL.escapeString(tenantId)
+                    + " AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0"
+                    + " AND (" + fieldConditions + ")";
+
+            List<String> ids = new ArrayList<String>();
+            IterableQueryResult queryResult = repoSession.queryAndFetch(query, NXQL.NXQL);
+            try {
+                for (Map<String, Serializable> row : queryResult) {
+                    if (ignoredCsids == null || ignoredCsids.contains(row.get(NXQL.ECM_NAME)) == false) {
+                        ids.add((String) row.get(NXQL.ECM_UUID));
+                    }
+                }
+            } finally {
+                queryResult.close();
+            }
+            logger.debug(String.format("findTermReferences: %d %s records may reference the terms", ids.size(), docType));
+
+            for (int start = 0; start < ids.size(); start += N_OBJS_TO_UPDATE_PER_LOOP) {
+                StringBuilder idList = new StringBuilder();
+                for (String id : ids.subList(start, Math.min(start + N_OBJS_TO_UPDATE_PER_LOOP, ids.size()))) {
+                    idList.append(idList.length() > 0 ? ", " : "").append(NXQL.escapeString(id));
+                }
+                DocumentModelList docList = repoSession.query("SELECT * FROM Document WHERE " + NXQL.ECM_UUID + " IN (" + idList + ")");
+
+                for (DocumentModel docModel : docList) {
+                    boolean isDeleted = docModel.getCurrentLifeCycleState().contains(WorkflowClient.WORKFLOWSTATE_DELETED);
+                    for (AuthRefInfo ari : findAuthRefPropertiesInDoc(docModel, authRefFields, null, new ArrayList<AuthRefInfo>())) {
+                        String refNameBase;
+                        try {
+                            refNameBase = RefNameUtils.stripAuthorityTermDisplayName((String) ari.getProperty().getValue());
+                        } catch (IllegalArgumentException e) {
+                            continue; // not a refName
+                        }
+                        if (termRefNameBases.contains(refNameBase) && Boolean.TRUE.equals(result.get(refNameBase)) == false) {
+                            result.put(refNameBase, isDeleted == false);
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
     private static DocumentModelList findAllAuthorityRefDocs(
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
             RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient,
@@ -33,6 +33,7 @@ import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.common.context.MultipartServiceContext;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.DocumentWrapper;
+import org.collectionspace.services.common.storage.CsidDirectory;
 import org.collectionspace.services.common.workflow.jaxb.WorkflowJAXBSchema;
 import org.collectionspace.services.config.service.ObjectPartType;
 import org.collectionspace.services.lifecycle.TransitionDef;
@@ -168,6 +169,8 @@ public class WorkflowDocumentModelHandler
     		TransitionDef transitionDef = (TransitionDef)this.getServiceContext().getProperty(WorkflowClient.TRANSITION_ID);
     		transitionToFollow = getQualifiedTransitionName(wrapDoc, transitionDef);
 	        docModel.followTransition(transitionToFollow);
+	        CsidDirectory.getInstance().setWorkflowStateAfterCommit(ctx.getTenantId(), docModel.getName(),
+	        		docModel.getCurrentLifeCycleState());
     	} catch (Exception e) {
     		String msg = "Unable to follow workflow transition to state = "
     				+ transitionToFollow;
@@ -1,6 +1,8 @@
 package org.collectionspace.services.nuxeo.client.java;
 
+import java.io.Serializable;
 import java.security.Principal;
+import java.util.Map;
 
 import org.collectionspace.services.common.document.DocumentException;
 import org.nuxeo.ecm.core.api.ClientException;
@@ -10,6 +12,7 @@ import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.Filter;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.api.impl.LifeCycleFilter;
 
@@ -62,6 +65,13 @@ public interface CoreSessionInterface {
     public IterableQueryResult queryAndFetch(String query, String queryType,
             Object... params) throws ClientException, DocumentException;
 
+    /**
+     * Runs a projection query, returning at most limit rows.  Unlike queryAndFetch(), the limit is passed
+     * on to the database.
+     */
+    public PartialList<Map<String, Serializable>> queryProjection(String query, long limit,
+            long offset) throws ClientException, DocumentException;
+
     public DocumentModelList query(String query, Filter filter, long limit,
             long offset, boolean countTotal) throws ClientException, DocumentException;
 
@@ -126,6 +136,14 @@ public interface CoreSessionInterface {
      */
     public void removeDocument(DocumentRef docRef) throws ClientException;
 
+    /**
+     * Bulk document removal.
+     *
+     * @param docRefs the references to the documents to remove
+     * @throws ClientException
+     */
+    public void removeDocuments(DocumentRef[] docRefs) throws ClientException;
+
     /**
      * Creates a document model using required information.
      * <p>
@@ -1,25 +1,18 @@
 package org.collectionspace.services.nuxeo.client.java;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.io.Serializable;
 import java.security.Principal;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import org.collectionspace.services.common.document.DocumentException;
+import org.collectionspace.services.common.profile.ServiceMetrics;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.Filter;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.api.impl.LifeCycleFilter;
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -37,17 +30,23 @@ public class CoreSessionWrapper implements CoreSessionInterface {
     private static Logger logger = LoggerFactory.getLogger(CoreSessionWrapper.class);
     
     private void logQuery(String query) {
-    	logger.debug(String.format("NXQL: %s", query));
+    	if (logger.isDebugEnabled()) {
+    		logger.debug(String.format("NXQL: %s", query));
+    	}
     }
     
     private void logQuery(String query, String queryType) {
-    	logger.debug(String.format("Query Type: '%s' NXQL: %s", queryType, query));
+    	if (logger.isDebugEnabled()) {
+    		logger.debug(String.format("Query Type: '%s' NXQL: %s", queryType, query));
+    	}
     }
     
     private void logQuery(String query, Filter filter, long limit,
     		long offset, boolean countTotal) {
-    	logger.debug(String.format("Filter: '%s', Limit: '%d', Offset: '%d', Count Total?: %b, NXQL: %s",
-    			filter != null ? filter.toString() : "none", limit, offset, countTotal, query));
+    	if (logger.isDebugEnabled()) {
+	    	logger.debug(String.format("Filter: '%s', Limit: '%d', Offset: '%d', Count Total?: %b, NXQL: %s",
+	    			filter != null ? filter.toString() : "none", limit, offset, countTotal, query));
+    	}
     }
     
 	public CoreSessionWrapper(CoreSession repoSession) {
@@ -124,49 +123,11 @@ public class CoreSessionWrapper implements CoreSessionInterface {
 		return repoSession.getPrincipal();
 	}
 	
-	private String toLocalTimestamp(String utcTime, boolean base64Encoded) throws DocumentException {
-		String result = null;
-
-		try {
-			if (base64Encoded == true) {
-				utcTime = URLDecoder.decode(utcTime, java.nio.charset.StandardCharsets.UTF_8.name());
-			}
-			LocalDateTime localTime;
-			try {
-				Instant instant = Instant.parse(utcTime);
-				ZonedDateTime localInstant = instant.atZone(ZoneId.systemDefault()); // DateTimeFormatter.ISO_LOCAL_DATE_TIME
-				localTime = localInstant.toLocalDateTime();
-			} catch (DateTimeParseException e) {
-				localTime = LocalDateTime.parse(utcTime, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-			}
-			result = localTime.toString();
-			if (base64Encoded == true) {
-				result = URLEncoder.encode(result, java.nio.charset.StandardCharsets.UTF_8.name());
-			}
-		} catch (UnsupportedEncodingException e) {
-			throw new DocumentException(e);
-		}
-		
-		return result;
-	}
-	
+	/*
+	 * The TIMESTAMP literals of our queries are in UTC, but Nuxeo compares them with local times.
+	 */
 	private String localizeTimestamps(String query) throws DocumentException {
-		String result = query;
-		
-		if (query.contains("TIMESTAMP")) {
-			StringBuffer stringBuffer = new StringBuffer();
-			Pattern pattern = Pattern.compile("\\sTIMESTAMP\\s\"(.+?)\"");
-			Matcher matcher = pattern.matcher(query);
-			while (matcher.find()) {
-				String time = matcher.group(1);
-				String localizedTime = toLocalTimestamp(time, false);
-				matcher.appendReplacement(stringBuffer, String.format(" TIMESTAMP \"%s\"", localizedTime));
-			}
-			matcher.appendTail(stringBuffer);
-			result = stringBuffer.toString();
-		}
-		
-		return result;
+		return NuxeoQueryLocalizer.localizeTimestamps(query);
 	}
 
 	@Override
@@ -174,7 +135,25 @@ public class CoreSessionWrapper implements CoreSessionInterface {
             Object... params) throws ClientException, DocumentException {
 		query = localizeTimestamps(query);
 		logQuery(query, queryType);
-		return repoSession.queryAndFetch(query, queryType, params);
+		long start = System.nanoTime();
+		try {
+			return repoSession.queryAndFetch(query, queryType, params);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public PartialList<Map<String, Serializable>> queryProjection(String query, long limit,
+            long offset) throws ClientException, DocumentException {
+		query = localizeTimestamps(query);
+		logQuery(query);
+		long start = System.nanoTime();
+		try {
+			return repoSession.queryProjection(query, limit, offset);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
 	}
 
 	@Override
@@ -182,27 +161,47 @@ public class CoreSessionWrapper implements CoreSessionInterface {
             long offset, boolean countTotal) throws ClientException, DocumentException {
 		query = localizeTimestamps(query);
 		logQuery(query, filter, limit, offset, countTotal);
-		return repoSession.query(query, filter, limit, offset, countTotal);
+		long start = System.nanoTime();
+		try {
+			return repoSession.query(query, filter, limit, offset, countTotal);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
 	}
 
 	@Override
     public DocumentModelList query(String query, int max) throws ClientException, DocumentException {
 		query = localizeTimestamps(query);
 		logQuery(query);
-    	return repoSession.query(query, max);
+		long start = System.nanoTime();
+		try {
+			return repoSession.query(query, max);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
     }
     
 	@Override
 	public DocumentModelList query(String query) throws ClientException, DocumentException {
 		query = localizeTimestamps(query);
 		logQuery(query);
-		return repoSession.query(query);
+		long start = System.nanoTime();
+		try {
+			return repoSession.query(query);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
 	}
 	
 	@Override
 	public DocumentModelList query(String query, LifeCycleFilter workflowStateFilter) throws DocumentException {
 		query = localizeTimestamps(query);
-		return repoSession.query(query, workflowStateFilter);
+		long start = System.nanoTime();
+		try {
+			return repoSession.query(query, workflowStateFilter);
+		} finally {
+			ServiceMetrics.getInstance().recordQuery(System.nanoTime() - start);
+		}
 	}
 
     /**
@@ -290,6 +289,17 @@ public class CoreSessionWrapper implements CoreSessionInterface {
     	repoSession.removeDocument(docRef);
     }
 
+    /**
+     * Bulk document removal.
+     *
+     * @param docRefs the references to the documents to remove
+     * @throws ClientException
+     */
+    @Override
+    public void removeDocuments(DocumentRef[] docRefs) throws ClientException {
+    	repoSession.removeDocuments(docRefs);
+    }
+
     /**
      * Creates a document model using required information.
      * <p>
@@ -22,10 +22,13 @@ package org.collectionspace.services.nuxeo.client.java;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map.Entry;
 import java.security.Principal;
 
 import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.profile.ServiceMetrics;
 import org.collectionspace.services.common.repository.RepositoryInstanceWrapperAdvice;
 import org.collectionspace.services.config.tenant.RepositoryDomainType;
 import org.nuxeo.ecm.core.api.repository.Repository;
@@ -54,6 +57,8 @@ public final class NuxeoClientEmbedded {
 	private Logger logger = LoggerFactory.getLogger(NuxeoClientEmbedded.class);
 	
     private final HashMap<String, CoreSessionInterface> repositoryInstances;
+    
+    private final Map<String, Long> sessionOpenedAt = new ConcurrentHashMap<String, Long>(); // System.nanoTime() at which each session was opened
 
     private RepositoryManager repositoryMgr;
 
@@ -181,6 +186,7 @@ public final class NuxeoClientEmbedded {
 
     public CoreSessionInterface openRepository(String repoName, int timeoutSeconds) throws Exception {
     	CoreSessionInterface result = null;
+    	long start = System.nanoTime();
     	
     	//
     	// If the called passed in a custom timeout setting, use it to configure Nuxeo's transaction manager.
@@ -255,6 +261,10 @@ public final class NuxeoClientEmbedded {
         	throw new Exception(errMsg);
         }    	
     	
+        long openedAt = System.nanoTime();
+        sessionOpenedAt.put(result.getSessionId(), openedAt);
+        ServiceMetrics.getInstance().sessionOpened(openedAt - start);
+        
         return result;
     }
     
@@ -320,6 +330,7 @@ public final class NuxeoClientEmbedded {
     }
 
     public void releaseRepository(CoreSessionInterface repoSession) throws Exception {
+    	long start = System.nanoTime();
     	String key = repoSession.getSessionId();
     	String name = repoSession.getRepositoryName();
 
@@ -348,13 +359,21 @@ public final class NuxeoClientEmbedded {
             //
             // Last but not least, try to commit the current Nuxeo-related transaction.
             //
-            if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
-            	TransactionHelper.commitOrRollbackTransaction();
-            	logger.trace(String.format("Transaction closed on thread '%d'", Thread.currentThread().getId()));
-            } else {
-            	String warnMsg = String.format("Closed a Nuxeo repository session on thread '%d' without closing the containing transaction.",
-            			Thread.currentThread().getId());
-            	logger.warn(warnMsg);
+            try {
+	            if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+	            	TransactionHelper.commitOrRollbackTransaction();
+	            	logger.trace(String.format("Transaction closed on thread '%d'", Thread.currentThread().getId()));
+	            } else {
+	            	String warnMsg = String.format("Closed a Nuxeo repository session on thread '%d' without closing the containing transaction.",
+	            			Thread.currentThread().getId());
+	            	logger.warn(warnMsg);
+	            }
+            } finally {
+	            Long openedAt = sessionOpenedAt.remove(key);
+	            if (openedAt != null) {
+	            	long now = System.nanoTime();
+	            	ServiceMetrics.getInstance().sessionReleased(now - openedAt, now - start);
+	            }
             }
         }
     }    
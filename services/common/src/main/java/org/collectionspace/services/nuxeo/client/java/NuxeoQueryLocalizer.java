@@ -0,0 +1,121 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.nuxeo.client.java;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.collectionspace.services.common.document.DocumentException;
+
+/**
+ * NuxeoQueryLocalizer rewrites the UTC TIMESTAMP literals of NXQL queries into the server's local time, which is
+ * what Nuxeo compares them with.  Queries without a TIMESTAMP literal are returned as is, without a regular
+ * expression match.  The rewritten queries aren't cached: the literals, and so the queries, mostly differ from
+ * one request to the next, and a rewrite with the precompiled pattern costs little more than a lookup would.
+ */
+public class NuxeoQueryLocalizer {
+	private static final String TIMESTAMP_KEYWORD = "TIMESTAMP";
+	private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("\\s" + TIMESTAMP_KEYWORD + "\\s\"(.+?)\"");
+
+	private static final AtomicLong rewritten = new AtomicLong();
+
+	private NuxeoQueryLocalizer() {
+		// All static
+	}
+
+	/**
+	 * Returns the query with its TIMESTAMP literals in local time.
+	 */
+	public static String localizeTimestamps(String query) throws DocumentException {
+		if (query == null || query.indexOf(TIMESTAMP_KEYWORD) < 0) {
+			return query;
+		}
+
+		rewritten.incrementAndGet();
+		return rewriteTimestamps(query);
+	}
+
+	/**
+	 * Rewrites the TIMESTAMP literals of the query into local time.
+	 */
+	public static String rewriteTimestamps(String query) throws DocumentException {
+		Matcher matcher = TIMESTAMP_PATTERN.matcher(query);
+		if (matcher.find() == false) {
+			return query;
+		}
+
+		StringBuffer stringBuffer = new StringBuffer(query.length() + 16);
+		do {
+			String time = matcher.group(1);
+			String localizedTime = toLocalTimestamp(time, false);
+			matcher.appendReplacement(stringBuffer, Matcher.quoteReplacement(" " + TIMESTAMP_KEYWORD + " \"" + localizedTime + "\""));
+		} while (matcher.find());
+		matcher.appendTail(stringBuffer);
+
+		return stringBuffer.toString();
+	}
+
+	static String toLocalTimestamp(String utcTime, boolean base64Encoded) throws DocumentException {
+		String result = null;
+
+		try {
+			if (base64Encoded == true) {
+				utcTime = URLDecoder.decode(utcTime, java.nio.charset.StandardCharsets.UTF_8.name());
+			}
+			LocalDateTime localTime;
+			try {
+				Instant instant = Instant.parse(utcTime);
+				ZonedDateTime localInstant = instant.atZone(ZoneId.systemDefault()); // DateTimeFormatter.ISO_LOCAL_DATE_TIME
+				localTime = localInstant.toLocalDateTime();
+			} catch (DateTimeParseException e) {
+				localTime = LocalDateTime.parse(utcTime, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+			}
+			result = localTime.toString();
+			if (base64Encoded == true) {
+				result = URLEncoder.encode(result, java.nio.charset.StandardCharsets.UTF_8.name());
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new DocumentException(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the number of queries whose TIMESTAMP literals have been rewritten
+	 */
+	public static long getRewrittenCount() {
+		return rewritten.get();
+	}
+}
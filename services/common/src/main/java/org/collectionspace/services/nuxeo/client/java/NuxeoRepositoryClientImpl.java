@@ -19,11 +19,14 @@ package org.collectionspace.services.nuxeo.client.java;
 import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +34,7 @@ import java.util.UUID;
 
 import javax.sql.rowset.CachedRowSet;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 
 //
 // CSPACE-5036 - How to make CMISQL queries from Nuxeo
@@ -46,6 +50,7 @@ import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.Profiler;
 import org.collectionspace.services.client.index.IndexClient;
 import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.BulkReadResult;
 import org.collectionspace.services.common.CSWebApplicationException;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.api.Tools;
@@ -64,6 +69,7 @@ import org.collectionspace.services.common.document.DocumentWrapperImpl;
 import org.collectionspace.services.common.document.TransactionException;
 import org.collectionspace.services.common.query.QueryContext;
 import org.collectionspace.services.common.repository.RepositoryClient;
+import org.collectionspace.services.common.storage.CsidDirectory;
 import org.collectionspace.services.common.storage.JDBCTools;
 import org.collectionspace.services.common.storage.PreparedStatementBuilder;
 import org.collectionspace.services.common.storage.PreparedStatementSimpleBuilder;
@@ -73,6 +79,7 @@ import org.collectionspace.services.config.tenant.RepositoryDomainType;
 import org.collectionspace.services.config.tenant.TenantBindingType;
 import org.collectionspace.services.lifecycle.TransitionDef;
 import org.collectionspace.services.nuxeo.util.CSReindexFulltextRoot;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer;
 import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.nuxeo.common.utils.IdUtils;
 import org.nuxeo.ecm.core.api.ClientException;
@@ -86,8 +93,6 @@ import org.nuxeo.ecm.core.api.VersioningOption;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.opencmis.bindings.NuxeoCmisServiceFactory;
 import org.nuxeo.ecm.core.opencmis.impl.server.NuxeoCmisService;
-import org.nuxeo.elasticsearch.ElasticSearchComponent;
-import org.nuxeo.elasticsearch.api.ElasticSearchService;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.transaction.TransactionRuntimeException;
 import org.slf4j.Logger;
@@ -208,6 +213,7 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
             // create document with documentmodel
             doc = repoSession.createDocument(doc);
             repoSession.save();
+            CsidDirectory.getInstance().putAfterCommit(ctx.getTenantId(), doc);
 			// TODO for sub-docs need to call into the handler to let it deal with subitems. Pass in the id,
 			// and assume the handler has the state it needs (doc fragments).
             handler.complete(Action.CREATE, wrapDoc);
@@ -298,14 +304,19 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
     /**
      * Reindex Nuxeo's Elasticsearch index.
      *
+     * Without the doctype or csid query params, this rebuilds the whole index in a new index, which replaces the
+     * current one once it's complete (see ElasticsearchReindexer). With them, only the given doctypes, or records,
+     * are reindexed, in the current index. Either way, the reindexing continues after this returns; its progress
+     * can be read with GET /index/elasticsearch.
+     *
      * @param handler
      * @param csid
      * @param indexid
      * @return
-     * @throws NuxeoDocumentException
+     * @throws DocumentException
      * @throws TransactionException
      */
-    private boolean reindexElasticsearch(DocumentHandler handler, String csid, String indexid) throws NuxeoDocumentException, TransactionException {
+    private boolean reindexElasticsearch(DocumentHandler handler, String csid, String indexid) throws DocumentException, TransactionException {
         boolean result = false;
 
         if (!Framework.isBooleanPropertyTrue("elasticsearch.enabled")) {
@@ -315,35 +326,67 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
         CoreSessionInterface repoSession = null;
         ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = handler.getServiceContext();
 
+        Set<String> docTypeNames = null;
+        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
+        if (queryParams != null) {
+            String docTypeParam = queryParams.getFirst(IndexClient.DOCTYPE_QP);
+            if (Tools.notBlank(docTypeParam)) {
+                docTypeNames = new HashSet<String>();
+                for (String docTypeName : docTypeParam.split(",")) {
+                    if (Tools.notBlank(docTypeName)) {
+                        docTypeNames.add(docTypeName.trim());
+                    }
+                }
+            }
+            if (Tools.isBlank(csid)) {
+                csid = queryParams.getFirst(IndexClient.CSID_QP);
+            }
+        }
+        boolean full = docTypeNames == null && Tools.isBlank(csid);
+
         try {
             repoSession = getRepositorySession(ctx);
 
-            ElasticSearchComponent es = (ElasticSearchComponent) Framework.getService(ElasticSearchService.class);
             String repositoryName = repoSession.getRepositoryName();
+            ElasticsearchReindexer reindexer = ElasticsearchReindexer.getInstance(repositoryName);
 
-            logger.info(String.format("Rebuilding Elasticsearch index for repository %s", repositoryName));
-
-            es.dropAndInitRepositoryIndex(repositoryName);
+            if (reindexer.getProgress().getState() == ElasticsearchReindexer.State.RUNNING) {
+                throw new DocumentException(Response.Status.CONFLICT.getStatusCode(),
+                        String.format("An Elasticsearch reindex of repository %s is already running.", repositoryName));
+            }
 
             TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
             TenantBindingType tenantBinding = tReader.getTenantBinding(ctx.getTenantId());
+            Map<String, String> queries = new LinkedHashMap<String, String>();
 
             for (ServiceBindingType serviceBinding : tenantBinding.getServiceBindings()) {
                 Boolean isElasticsearchIndexed = serviceBinding.isElasticsearchIndexed();
                 String servicesRepoDomainName = serviceBinding.getRepositoryDomain();
+                String docTypeName = serviceBinding.getObject().getName();
 
-                if (isElasticsearchIndexed && servicesRepoDomainName != null && servicesRepoDomainName.trim().isEmpty() == false) {
-                    String docType = NuxeoUtils.getTenantQualifiedDocType(tenantBinding.getId(), serviceBinding.getObject().getName());
+                if (isElasticsearchIndexed && servicesRepoDomainName != null && servicesRepoDomainName.trim().isEmpty() == false
+                        && (docTypeNames == null || docTypeNames.contains(docTypeName))) {
+                    String docType = NuxeoUtils.getTenantQualifiedDocType(tenantBinding.getId(), docTypeName);
                     String queryString = handler.getDocumentsToIndexQuery(indexid, docType, csid);
 
-                    logger.info(String.format("Starting Elasticsearch reindexing for docType %s in repository %s", docType, repositoryName));
                     logger.debug(queryString);
 
-                    es.runReindexingWorker(repositoryName, queryString);
+                    queries.put(docType, queryString);
                 }
             }
 
+            if (queries.isEmpty()) {
+                throw new DocumentException(Response.Status.BAD_REQUEST.getStatusCode(),
+                        String.format("None of the doctypes '%s' are indexed in Elasticsearch.", docTypeNames));
+            }
+
+            logger.info(String.format("%s Elasticsearch index for repository %s", full ? "Rebuilding" : "Updating", repositoryName));
+
+            reindexer.start(repoSession.getCoreSession(), queries, full);
+
             result = true;
+        } catch (DocumentException e) {
+            throw e;
         } catch (Throwable e) {
             if (ctx.isRollbackOnException()) {
                 rollbackTransaction(repoSession);
@@ -1051,6 +1094,94 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
         }
     }
 
+    /*
+     * Finds all of the documents with one "ecm:name IN (...)" query -we store CSIDs in the "name" field -rather
+     * than getting each document by its path.
+     */
+    @Override
+    public Map<String, DocumentModel> findDocsByCsid(CoreSessionInterface repoSession,
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, Collection<String> csids, String whereClause)
+            throws DocumentException {
+        Map<String, DocumentModel> result = new HashMap<String, DocumentModel>();
+        if (csids.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder csidClause = new StringBuilder("ecm:name IN (");
+        boolean first = true;
+        for (String csid : csids) {
+            if (BulkReadResult.isValidCsid(csid) == false) {
+                throw new BadRequestException("Invalid CSID: " + csid);
+            }
+            if (first == false) {
+                csidClause.append(", ");
+            }
+            csidClause.append('\'').append(csid).append('\'');
+            first = false;
+        }
+        csidClause.append(')');
+        if (Tools.notBlank(whereClause)) {
+            csidClause.append(IQueryManager.SEARCH_QUALIFIER_AND).append('(').append(whereClause).append(')');
+        }
+
+        try {
+            QueryContext queryContext = new QueryContext(ctx, csidClause.toString());
+            String query = NuxeoUtils.buildNXQLQuery(queryContext);
+            DocumentModelList docList = repoSession.query(query, null, csids.size(), 0, false);
+            for (DocumentModel docModel : docList) {
+                String csid = NuxeoUtils.getCsid(docModel);
+                if (result.containsKey(csid) == false) {
+                    result.put(csid, docModel);
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Found %d of %d documents with query: %s", result.size(), csids.size(), query));
+            }
+        } catch (DocumentException de) {
+            throw de;
+        } catch (Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Caught exception ", e);
+            }
+            throw new NuxeoDocumentException(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void get(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, DocumentModel docModel, DocumentHandler handler)
+            throws DocumentNotFoundException, TransactionException, DocumentException {
+        if (handler == null) {
+            throw new IllegalArgumentException(
+                    "RepositoryJavaClient.get: handler is missing");
+        }
+
+        CoreSessionInterface repoSession = null;
+        try {
+            handler.prepare(Action.GET);
+            repoSession = getRepositorySession(ctx);
+            assertWorkflowState(ctx, docModel);
+            ((DocumentModelHandler) handler).setRepositorySession(repoSession);
+            DocumentWrapper<DocumentModel> wrapDoc = new DocumentWrapperImpl<DocumentModel>(docModel);
+            handler.handle(Action.GET, wrapDoc);
+            handler.complete(Action.GET, wrapDoc);
+        } catch (IllegalArgumentException iae) {
+            throw iae;
+        } catch (DocumentException de) {
+            throw de;
+        } catch (Throwable e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Caught exception ", e);
+            }
+            throw new NuxeoDocumentException(e);
+        } finally {
+            if (repoSession != null) {
+                releaseRepositorySession(ctx, repoSession);
+            }
+        }
+    }
+
     /**
      * getAll get all documents for an entity entity service from the Nuxeo
      * repository
@@ -1753,6 +1884,91 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
         }
     }
 
+    /*
+     * Like update(), but the documents are found with one findDocsByCsid() query and saved with one saveDocuments()
+     * call, instead of being fetched and saved one at a time.  The handlers are all prepared before any of the
+     * documents are fetched, and completed after all of them have been saved.
+     */
+    @Override
+    public void updateAll(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, Map<String, DocumentHandler> handlersByCsid)
+            throws BadRequestException, DocumentNotFoundException, TransactionException,
+            DocumentException {
+        if (handlersByCsid.containsValue(null)) {
+            throw new IllegalArgumentException(
+                    "RepositoryJavaClient.updateAll: document handler is missing.");
+        }
+
+        CoreSessionInterface repoSession = null;
+        try {
+            for (DocumentHandler handler : handlersByCsid.values()) {
+                handler.prepare(Action.UPDATE);
+            }
+            repoSession = getRepositorySession(ctx);
+            Map<String, DocumentModel> docs = findDocsByCsid(repoSession, ctx, handlersByCsid.keySet(), null);
+            for (String csid : handlersByCsid.keySet()) {
+                if (docs.containsKey(csid) == false) {
+                    String msg = String.format("Could not find %s resource/record to update with CSID=%s", ctx.getDocumentType(), csid);
+                    logger.error(msg);
+                    throw new DocumentNotFoundException(msg);
+                }
+            }
+
+            List<DocumentWrapper<DocumentModel>> wrapDocs = new ArrayList<DocumentWrapper<DocumentModel>>(docs.size());
+            for (Map.Entry<String, DocumentHandler> entry : handlersByCsid.entrySet()) {
+                DocumentHandler handler = entry.getValue();
+                DocumentModel doc = docs.get(entry.getKey());
+                // Check for a versioned document, and check In and Out before we proceed -see update()
+                if (((DocumentModelHandler) handler).supportsVersioning()) {
+                    doc.checkIn(VersioningOption.MINOR, null);
+                    doc.checkOut();
+                }
+                ((DocumentModelHandler) handler).setRepositorySession(repoSession);
+                DocumentWrapper<DocumentModel> wrapDoc = new DocumentWrapperImpl<DocumentModel>(doc);
+                handler.handle(Action.UPDATE, wrapDoc);
+                wrapDocs.add(wrapDoc);
+            }
+
+            DocumentModel[] docArray = new DocumentModel[wrapDocs.size()];
+            for (int i = 0; i < docArray.length; i++) {
+                docArray[i] = wrapDocs.get(i).getWrappedObject();
+            }
+            repoSession.saveDocuments(docArray);
+            repoSession.save();
+
+            int i = 0;
+            for (DocumentHandler handler : handlersByCsid.values()) {
+                DocumentWrapper<DocumentModel> wrapDoc = wrapDocs.get(i++);
+                // Refresh the doc after save, in case a documentModified event handler has modified it -see update()
+                wrapDoc.getWrappedObject().refresh();
+                handler.complete(Action.UPDATE, wrapDoc);
+            }
+        } catch (BadRequestException bre) {
+            if (ctx.isRollbackOnException()) {
+                rollbackTransaction(repoSession);
+            }
+            throw bre;
+        } catch (DocumentException de) {
+            if (ctx.isRollbackOnException()) {
+                rollbackTransaction(repoSession);
+            }
+            throw de;
+        } catch (CSWebApplicationException wae) {
+            if (ctx.isRollbackOnException()) {
+                rollbackTransaction(repoSession);
+            }
+            throw wae;
+        } catch (Throwable e) {
+            if (ctx.isRollbackOnException()) {
+                rollbackTransaction(repoSession);
+            }
+            throw new NuxeoDocumentException(e);
+        } finally {
+            if (repoSession != null) {
+                releaseRepositorySession(ctx, repoSession);
+            }
+        }
+    }
+
     /**
      * Save a documentModel to the Nuxeo repository.
      *
@@ -1875,6 +2091,7 @@ public class NuxeoRepositoryClientImpl implements RepositoryClient<PoxPayloadIn,
 	                ((DocumentModelHandler) handler).setRepositorySession(repoSession);
 	                if (handler.handle(Action.DELETE, wrapDoc) == true) {
 	                	repoSession.removeDocument(docRef);
+	                	CsidDirectory.getInstance().removeAfterCommit(ctx.getTenantId(), id);
 	                	if (logger.isDebugEnabled()) {
 	                		String msg = String.format("DELETE - User '%s' hard-deleted document CSID=%s of type %s.",
 	                				ctx.getUserId(), id, ctx.getDocumentType());
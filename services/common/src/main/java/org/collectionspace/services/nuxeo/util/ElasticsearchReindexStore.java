@@ -0,0 +1,270 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.nuxeo.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer.DocTypeProgress;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the progress of the latest Elasticsearch reindex of a repository (see ElasticsearchReindexer), so that
+ * it can still be reported after a restart, and so that a reindex interrupted by a restart can be found and undone.
+ *
+ * The progress lives in a table in the "cspace" schema of the repository's database, which is created the first
+ * time it's needed. If it can't be created, the progress is only kept in memory.
+ */
+public class ElasticsearchReindexStore {
+	private static final Logger logger = LoggerFactory.getLogger(ElasticsearchReindexStore.class);
+
+	public static final String PROGRESS_TABLE = "cspace.es_reindex_progress";
+
+	private static final String FIELD_SEPARATOR = "\t";
+	private static final String LINE_SEPARATOR = "\n";
+
+	// Whether the progress table exists in each repository
+	private static final ConcurrentMap<String, Boolean> repositories = new ConcurrentHashMap<String, Boolean>();
+
+	private final String repositoryName;
+
+	/**
+	 * The saved state of a reindex.
+	 */
+	public static class Record {
+		final State state;
+		final boolean fullReindex;
+		final String searchIndex;
+		final String writeIndex;
+		final String previousIndex;
+		final String newIndex;
+		final long startTime;
+		final long endTime;
+		final String message;
+		final List<DocTypeProgress> docTypes;
+
+		Record(State state, boolean fullReindex, String searchIndex, String writeIndex, String previousIndex, String newIndex,
+				long startTime, long endTime, String message, List<DocTypeProgress> docTypes) {
+			this.state = state;
+			this.fullReindex = fullReindex;
+			this.searchIndex = searchIndex;
+			this.writeIndex = writeIndex;
+			this.previousIndex = previousIndex;
+			this.newIndex = newIndex;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.message = message;
+			this.docTypes = docTypes;
+		}
+	}
+
+	public ElasticsearchReindexStore(String repositoryName) {
+		this.repositoryName = repositoryName;
+	}
+
+	/**
+	 * @return the repository's latest reindex, or null if there hasn't been one
+	 */
+	public Record load() {
+		Record result = null;
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			if (ensureTable(conn)) {
+				PreparedStatement stmt = conn.prepareStatement("SELECT state, full_reindex, search_index, write_index, previous_index, "
+						+ "new_index, start_time, end_time, message, doctypes FROM " + PROGRESS_TABLE + " WHERE repository_name = ?");
+				try {
+					stmt.setString(1, repositoryName);
+					ResultSet rs = stmt.executeQuery();
+					if (rs.next()) {
+						result = new Record(State.valueOf(rs.getString(1)), rs.getBoolean(2), rs.getString(3), rs.getString(4),
+								rs.getString(5), rs.getString(6), getTime(rs.getTimestamp(7)), getTime(rs.getTimestamp(8)),
+								rs.getString(9), parseDocTypes(rs.getString(10)));
+					}
+				} finally {
+					stmt.close();
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Could not read the Elasticsearch reindex progress of repository '%s': %s",
+					repositoryName, e.getMessage()));
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	public void save(Record record) {
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			if (ensureTable(conn)) {
+				PreparedStatement stmt = conn.prepareStatement("UPDATE " + PROGRESS_TABLE
+						+ " SET state = ?, full_reindex = ?, search_index = ?, write_index = ?, previous_index = ?, new_index = ?,"
+						+ " start_time = ?, end_time = ?, message = ?, doctypes = ? WHERE repository_name = ?");
+				int count;
+				try {
+					setValues(stmt, record);
+					stmt.setString(11, repositoryName);
+					count = stmt.executeUpdate();
+				} finally {
+					stmt.close();
+				}
+				if (count == 0) {
+					stmt = conn.prepareStatement("INSERT INTO " + PROGRESS_TABLE
+							+ " (state, full_reindex, search_index, write_index, previous_index, new_index, start_time, end_time,"
+							+ " message, doctypes, repository_name) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+					try {
+						setValues(stmt, record);
+						stmt.setString(11, repositoryName);
+						stmt.executeUpdate();
+					} finally {
+						stmt.close();
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.warn(String.format("Could not save the Elasticsearch reindex progress of repository '%s': %s",
+					repositoryName, e.getMessage()));
+		} finally {
+			close(conn);
+		}
+	}
+
+	private static void setValues(PreparedStatement stmt, Record record) throws SQLException {
+		stmt.setString(1, record.state.name());
+		stmt.setBoolean(2, record.fullReindex);
+		stmt.setString(3, record.searchIndex);
+		stmt.setString(4, record.writeIndex);
+		stmt.setString(5, record.previousIndex);
+		stmt.setString(6, record.newIndex);
+		setTime(stmt, 7, record.startTime);
+		setTime(stmt, 8, record.endTime);
+		stmt.setString(9, record.message);
+		stmt.setString(10, formatDocTypes(record.docTypes));
+	}
+
+	private static void setTime(PreparedStatement stmt, int index, long time) throws SQLException {
+		if (time == 0) {
+			stmt.setNull(index, Types.TIMESTAMP);
+		} else {
+			stmt.setTimestamp(index, new Timestamp(time));
+		}
+	}
+
+	private static long getTime(Timestamp timestamp) {
+		return timestamp != null ? timestamp.getTime() : 0;
+	}
+
+	/*
+	 * One line per doctype: its name, worker ID, expected and indexed counts, and whether it's complete.
+	 */
+	static String formatDocTypes(Collection<DocTypeProgress> docTypes) {
+		StringBuilder result = new StringBuilder();
+
+		for (DocTypeProgress docType : docTypes) {
+			result.append(docType.getDocType()).append(FIELD_SEPARATOR)
+				.append(docType.getWorkId()).append(FIELD_SEPARATOR)
+				.append(docType.getExpected()).append(FIELD_SEPARATOR)
+				.append(docType.getIndexed()).append(FIELD_SEPARATOR)
+				.append(docType.isComplete()).append(LINE_SEPARATOR);
+		}
+
+		return result.toString();
+	}
+
+	static List<DocTypeProgress> parseDocTypes(String value) {
+		List<DocTypeProgress> result = new ArrayList<DocTypeProgress>();
+
+		if (value != null) {
+			for (String line : value.split(LINE_SEPARATOR)) {
+				String[] fields = line.split(FIELD_SEPARATOR);
+				if (fields.length == 5) {
+					result.add(new DocTypeProgress(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+							Boolean.parseBoolean(fields[4])));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private Connection getConnection() throws Exception {
+		Connection conn = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName,
+				ServiceMain.getInstance().getCspaceInstanceId());
+		conn.setAutoCommit(true);
+		return conn;
+	}
+
+	private static void close(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				logger.debug("Failed to close an Elasticsearch reindex progress connection.", e);
+			}
+		}
+	}
+
+	/*
+	 * Creates the progress table if it doesn't exist yet.
+	 *
+	 * @return false if the table couldn't be created
+	 */
+	private boolean ensureTable(Connection conn) {
+		Boolean exists = repositories.get(repositoryName);
+		if (exists == null) {
+			try {
+				if (JDBCTools.cspaceMetaTableExists(conn) == false) {
+					JDBCTools.createCspaceMetaTable(conn);
+				}
+				Statement stmt = conn.createStatement();
+				try {
+					stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + " ("
+							+ "repository_name varchar(128) NOT NULL, state varchar(32) NOT NULL, full_reindex boolean NOT NULL, "
+							+ "search_index varchar(256), write_index varchar(256), previous_index varchar(256), new_index varchar(256), "
+							+ "start_time timestamp, end_time timestamp, message text, doctypes text, "
+							+ "PRIMARY KEY (repository_name))");
+				} finally {
+					stmt.close();
+				}
+				exists = true;
+			} catch (SQLException e) {
+				logger.warn(String.format("Could not create the Elasticsearch reindex progress table in repository '%s'; the progress will only be kept in memory: %s",
+						repositoryName, e.getMessage()));
+				exists = false;
+			}
+			repositories.put(repositoryName, exists);
+		}
+		return exists;
+	}
+}
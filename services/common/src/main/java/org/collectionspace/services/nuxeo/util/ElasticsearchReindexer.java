@@ -0,0 +1,517 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.nuxeo.util;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.ElasticSearchComponent;
+import org.nuxeo.elasticsearch.api.ESClient;
+import org.nuxeo.elasticsearch.api.ElasticSearchService;
+import org.nuxeo.elasticsearch.work.ScrollingIndexingWorker;
+import org.nuxeo.runtime.api.Framework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the Elasticsearch index of a repository without taking it away from searches.
+ *
+ * A full reindex creates a new index behind the repository's write alias, while its search alias keeps pointing
+ * at the current index. Nuxeo's indexing workers, one per doctype, fill the new index; meanwhile edits are written
+ * to it too. Once every doctype's worker has finished, and the workers it scheduled have drained, the search
+ * alias is moved to the new index in one step, and the old index is deleted. If anything fails before then,
+ * searches keep using the old index, and the write alias is moved back to it (see fail()).
+ *
+ * The progress of the latest reindex is saved with ElasticsearchReindexStore as it goes. A reindex that was still
+ * running when the server stopped is failed, and undone, the next time the reindexer is loaded.
+ *
+ * A partial reindex (of some doctypes, or of some records) writes over the documents in the current index, and
+ * doesn't touch the rest of it.
+ *
+ * This relies on the index being configured with manageAlias="true". An index created before that (a plain index
+ * with the search alias's name) is deleted when the first full reindex swaps the alias in, since an alias can't
+ * share its name with an index.
+ */
+public class ElasticsearchReindexer {
+	private static final Logger logger = LoggerFactory.getLogger(ElasticsearchReindexer.class);
+
+	private static final long CHECK_INTERVAL_SECONDS = 10;
+	private static final int DELETE_INDEX_TIMEOUT_SECONDS = 300;
+
+	private static final Map<String, ElasticsearchReindexer> reindexers = new HashMap<String, ElasticsearchReindexer>();
+
+	public enum State { IDLE, RUNNING, COMPLETE, FAILED }
+
+	/**
+	 * How far the reindexing of a doctype has gotten.
+	 */
+	public static class DocTypeProgress {
+		private final String docType;
+		private final String workId;
+		private final long expected;
+		private long indexed;
+		private boolean complete;
+
+		DocTypeProgress(String docType, String workId, long expected) {
+			this(docType, workId, expected, 0, false);
+		}
+
+		DocTypeProgress(String docType, String workId, long expected, long indexed, boolean complete) {
+			this.docType = docType;
+			this.workId = workId;
+			this.expected = expected;
+			this.indexed = indexed;
+			this.complete = complete;
+		}
+
+		DocTypeProgress(DocTypeProgress other) {
+			this(other.docType, other.workId, other.expected, other.indexed, other.complete);
+		}
+
+		public String getDocType() {
+			return docType;
+		}
+
+		String getWorkId() {
+			return workId;
+		}
+
+		/**
+		 * @return the number of documents the reindex query found when the reindex started
+		 */
+		public long getExpected() {
+			return expected;
+		}
+
+		/**
+		 * @return the number of documents of the doctype in the index being written to
+		 */
+		public long getIndexed() {
+			return indexed;
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	/**
+	 * A snapshot of the progress of the latest reindex of the repository.
+	 */
+	public static class Progress {
+		private final State state;
+		private final boolean fullReindex;
+		private final String searchIndex;
+		private final String writeIndex;
+		private final long elapsedMillis;
+		private final String message;
+		private final List<DocTypeProgress> docTypes;
+
+		Progress(State state, boolean fullReindex, String searchIndex, String writeIndex, long elapsedMillis, String message,
+				List<DocTypeProgress> docTypes) {
+			this.state = state;
+			this.fullReindex = fullReindex;
+			this.searchIndex = searchIndex;
+			this.writeIndex = writeIndex;
+			this.elapsedMillis = elapsedMillis;
+			this.message = message;
+			this.docTypes = docTypes;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public boolean isFullReindex() {
+			return fullReindex;
+		}
+
+		public String getSearchIndex() {
+			return searchIndex;
+		}
+
+		public String getWriteIndex() {
+			return writeIndex;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public List<DocTypeProgress> getDocTypes() {
+			return docTypes;
+		}
+	}
+
+	private final String repositoryName;
+	private final ElasticsearchReindexStore store;
+
+	private State state = State.IDLE;
+	private boolean fullReindex;
+	private String searchIndex;
+	private String previousIndex;
+	private String writeIndex;
+	private String newIndex;
+	private long startTime;
+	private long endTime;
+	private String message;
+	private int idleChecks;
+	private Map<String, DocTypeProgress> docTypes = new LinkedHashMap<String, DocTypeProgress>();
+	private ScheduledExecutorService checker;
+
+	ElasticsearchReindexer(String repositoryName, ElasticsearchReindexStore store) {
+		this.repositoryName = repositoryName;
+		this.store = store;
+	}
+
+	/**
+	 * Returns the reindexer of a repository. The first call for a repository loads its latest reindex, and undoes
+	 * it if it was interrupted.
+	 */
+	public static synchronized ElasticsearchReindexer getInstance(String repositoryName) {
+		ElasticsearchReindexer result = reindexers.get(repositoryName);
+		if (result == null) {
+			result = new ElasticsearchReindexer(repositoryName, new ElasticsearchReindexStore(repositoryName));
+			result.load();
+			reindexers.put(repositoryName, result);
+		}
+		return result;
+	}
+
+	private static ElasticSearchComponent getElasticSearchComponent() {
+		return (ElasticSearchComponent) Framework.getService(ElasticSearchService.class);
+	}
+
+	protected ESClient getClient() {
+		return getElasticSearchComponent().getClient();
+	}
+
+	/*
+	 * Schedules an indexing worker for the documents a query finds, and returns its ID.
+	 */
+	protected String scheduleReindex(String query) {
+		// Don't let the worker sync the aliases when it's done, since the workers of other doctypes may not be.
+		ScrollingIndexingWorker worker = new ScrollingIndexingWorker(repositoryName, query, false);
+		Framework.getService(WorkManager.class).schedule(worker);
+		return worker.getId();
+	}
+
+	/*
+	 * Loads the latest reindex of the repository. If it was still running, the server stopped before it finished,
+	 * so nothing is checking on it any more: fail it, which moves the write alias back to the index searches use.
+	 */
+	synchronized void load() {
+		ElasticsearchReindexStore.Record record = store.load();
+
+		if (record != null) {
+			state = record.state;
+			fullReindex = record.fullReindex;
+			searchIndex = record.searchIndex;
+			writeIndex = record.writeIndex;
+			previousIndex = record.previousIndex;
+			newIndex = record.newIndex;
+			startTime = record.startTime;
+			endTime = record.endTime;
+			message = record.message;
+			docTypes = new LinkedHashMap<String, DocTypeProgress>();
+			for (DocTypeProgress docType : record.docTypes) {
+				docTypes.put(docType.getDocType(), docType);
+			}
+
+			if (state == State.RUNNING) {
+				fail(new IllegalStateException("The reindex was interrupted by a restart of the server."));
+			}
+		}
+	}
+
+	private void save() {
+		store.save(new ElasticsearchReindexStore.Record(state, fullReindex, searchIndex, writeIndex, previousIndex, newIndex,
+				startTime, endTime, message, new ArrayList<DocTypeProgress>(docTypes.values())));
+	}
+
+	/**
+	 * Starts reindexing the documents each query (an NXQL query selecting ecm:uuid) finds, with one indexing worker
+	 * per doctype, and returns.
+	 *
+	 * @param session a session on the repository, used to count the documents to reindex
+	 * @param queriesByDocType the query for each doctype to reindex
+	 * @param full true to rebuild the whole index behind the search alias, false to write over the documents found
+	 *        in the current index
+	 * @throws IllegalStateException if a reindex of the repository is already running
+	 */
+	public synchronized void start(CoreSession session, Map<String, String> queriesByDocType, boolean full) {
+		if (state == State.RUNNING) {
+			throw new IllegalStateException(String.format("An Elasticsearch reindex of repository '%s' is already running.",
+					repositoryName));
+		}
+
+		ElasticSearchComponent es = getElasticSearchComponent();
+
+		state = State.RUNNING;
+		fullReindex = full;
+		searchIndex = null;
+		writeIndex = null;
+		previousIndex = null;
+		newIndex = null;
+		startTime = System.currentTimeMillis();
+		endTime = 0;
+		message = null;
+		idleChecks = 0;
+		docTypes = new LinkedHashMap<String, DocTypeProgress>();
+
+		try {
+			searchIndex = es.getIndexNameForRepository(repositoryName);
+			// With manageAlias="true", this is the name of the write alias, not of an index.
+			writeIndex = es.getWriteIndexName(searchIndex);
+
+			if (full) {
+				ESClient client = getClient();
+				previousIndex = getIndexForAlias(client, searchIndex);
+				// Creates a new index behind the write alias; the search alias still points at the current index.
+				es.dropAndInitRepositoryIndex(repositoryName, false);
+
+				if (writeIndex.equals(searchIndex)) {
+					logger.warn(String.format("The Elasticsearch index '%s' doesn't manage aliases, so it was emptied before being rebuilt.",
+							searchIndex));
+				} else {
+					newIndex = getIndexForAlias(client, writeIndex);
+				}
+				// Record the new index now, so it can be dropped if the server stops before the reindex is done.
+				save();
+			}
+
+			for (Map.Entry<String, String> entry : queriesByDocType.entrySet()) {
+				String docType = entry.getKey();
+				String query = entry.getValue();
+				long expected = Math.max(session.queryProjection(query, 1, 0, true).totalSize(), 0);
+
+				docTypes.put(docType, new DocTypeProgress(docType, scheduleReindex(query), expected));
+
+				logger.info(String.format("Started Elasticsearch reindexing of %d %s documents in repository %s into index %s",
+						expected, docType, repositoryName, newIndex != null ? newIndex : writeIndex));
+			}
+			save();
+		} catch (RuntimeException e) {
+			fail(e);
+			throw e;
+		}
+
+		checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cspace-es-reindex-" + repositoryName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		checker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				check();
+			}
+		}, CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	public synchronized Progress getProgress() {
+		List<DocTypeProgress> snapshot = new ArrayList<DocTypeProgress>(docTypes.size());
+		for (DocTypeProgress docType : docTypes.values()) {
+			snapshot.add(new DocTypeProgress(docType));
+		}
+		long elapsed = (startTime == 0) ? 0 : ((endTime != 0) ? endTime : System.currentTimeMillis()) - startTime;
+
+		return new Progress(state, fullReindex, searchIndex, writeIndex, elapsed, message, Collections.unmodifiableList(snapshot));
+	}
+
+	/*
+	 * Updates the progress of each doctype, and swaps the search alias in once they're all done.
+	 */
+	synchronized void check() {
+		if (state != State.RUNNING) {
+			return;
+		}
+
+		try {
+			ElasticSearchComponent es = getElasticSearchComponent();
+			WorkManager workManager = Framework.getService(WorkManager.class);
+			boolean allScrolled = true;
+
+			for (DocTypeProgress docType : docTypes.values()) {
+				Work.State workState = workManager.getWorkState(docType.workId);
+				boolean scrolled = workState != Work.State.SCHEDULED && workState != Work.State.RUNNING;
+
+				docType.indexed = countIndexed(getClient(), docType.docType);
+				docType.complete = scrolled && docType.indexed >= docType.expected;
+				allScrolled = allScrolled && scrolled;
+			}
+
+			// The workers schedule the bucket workers that do the indexing as they go, so once they've all finished,
+			// the reindex is done when nothing is left to index. Wait for two quiet checks in a row, to be sure.
+
+			if (allScrolled && es.isIndexingInProgress() == false) {
+				idleChecks++;
+			} else {
+				idleChecks = 0;
+			}
+
+			if (idleChecks >= 2) {
+				for (DocTypeProgress docType : docTypes.values()) {
+					docType.complete = true;
+				}
+				if (fullReindex) {
+					es.refreshRepositoryIndex(repositoryName);
+					swapSearchAlias(es);
+				}
+				state = State.COMPLETE;
+				endTime = System.currentTimeMillis();
+				stopChecking();
+				save();
+
+				logger.info(String.format("Elasticsearch reindexing of repository %s completed in %d s", repositoryName,
+						(endTime - startTime) / 1000));
+			} else {
+				save();
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	private void swapSearchAlias(ElasticSearchComponent es) {
+		ESClient client = getClient();
+
+		if (newIndex == null) {
+			return; // no aliases to swap
+		}
+
+		if (client.aliasExists(searchIndex) == false && client.indexExists(searchIndex)) {
+			logger.warn(String.format("Deleting the Elasticsearch index '%s', so its name can become an alias of '%s'",
+					searchIndex, newIndex));
+			client.deleteIndex(searchIndex, DELETE_INDEX_TIMEOUT_SECONDS);
+			client.updateAlias(searchIndex, newIndex);
+		} else {
+			es.syncSearchAndWriteAlias(searchIndex);
+		}
+
+		logger.info(String.format("The Elasticsearch alias '%s' now points to index '%s'", searchIndex, newIndex));
+
+		if (previousIndex != null && previousIndex.equals(newIndex) == false) {
+			logger.info(String.format("Deleting the previous Elasticsearch index '%s'", previousIndex));
+			client.deleteIndex(previousIndex, DELETE_INDEX_TIMEOUT_SECONDS);
+		}
+	}
+
+	private long countIndexed(ESClient client, String docType) {
+		// ecm:primaryType is indexed without its tenant suffix, and a match query strips it from the doctype too
+		SearchRequest request = new SearchRequest(newIndex != null ? newIndex : writeIndex).source(new SearchSourceBuilder()
+				.size(0)
+				.query(QueryBuilders.matchQuery(NXQL.ECM_PRIMARYTYPE, docType)));
+
+		return client.search(request).getHits().getTotalHits();
+	}
+
+	private static String getIndexForAlias(ESClient client, String alias) {
+		return client.aliasExists(alias) ? client.getFirstIndexForAlias(alias) : null;
+	}
+
+	/*
+	 * Fails the reindex. Searches still use the previous index, but during a full reindex the write alias points at
+	 * the new, partial one: move it back to the index searches use, so edits reach it again, then drop the new index.
+	 */
+	synchronized void fail(RuntimeException e) {
+		logger.error(String.format("Elasticsearch reindexing of repository %s failed; searches still use the previous index",
+				repositoryName), e);
+
+		state = State.FAILED;
+		message = e.getMessage();
+		endTime = System.currentTimeMillis();
+		stopChecking();
+
+		if (fullReindex) {
+			try {
+				restoreWriteAlias();
+			} catch (RuntimeException restoreException) {
+				logger.error(String.format("Could not point the Elasticsearch alias '%s' back at the index searches use; edits may not be searchable until the next full reindex",
+						writeIndex), restoreException);
+			}
+		}
+
+		save();
+	}
+
+	private void restoreWriteAlias() {
+		if (newIndex == null) {
+			return; // the write alias wasn't moved
+		}
+
+		ESClient client = getClient();
+		String searchedIndex = client.aliasExists(searchIndex) ? client.getFirstIndexForAlias(searchIndex)
+				: (client.indexExists(searchIndex) ? searchIndex : null);
+
+		if (searchedIndex == null || searchedIndex.equals(newIndex)) {
+			return; // the search alias was already swapped in, or there's nothing to go back to
+		}
+
+		client.updateAlias(writeIndex, searchedIndex);
+		logger.info(String.format("The Elasticsearch alias '%s' points to index '%s' again", writeIndex, searchedIndex));
+
+		if (client.indexExists(newIndex)) {
+			logger.info(String.format("Deleting the partial Elasticsearch index '%s'", newIndex));
+			client.deleteIndex(newIndex, DELETE_INDEX_TIMEOUT_SECONDS);
+		}
+
+		// Documents edited since the reindex started were only written to the new index, so write them again.
+		// Documents removed since then may linger in the index until the next full reindex.
+		scheduleReindex(getModifiedSinceQuery(startTime));
+	}
+
+	static String getModifiedSinceQuery(long time) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		return String.format("SELECT ecm:uuid FROM Document WHERE dc:modified >= TIMESTAMP '%s'", format.format(new Date(time)));
+	}
+
+	private void stopChecking() {
+		if (checker != null) {
+			checker.shutdown();
+			checker = null;
+		}
+	}
+}
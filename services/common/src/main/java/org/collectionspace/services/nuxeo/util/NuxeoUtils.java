@@ -27,10 +27,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
+import org.collectionspace.services.common.BackgroundTaskExecutor;
 import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ResourceMap;
 import org.collectionspace.services.client.CollectionSpaceClient;
@@ -38,6 +40,7 @@ import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.context.ServiceBindingUtils;
 import org.collectionspace.services.common.context.ServiceContext;
@@ -46,6 +49,8 @@ import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.document.DocumentUtils;
 import org.collectionspace.services.common.query.QueryContext;
+import org.collectionspace.services.common.storage.CsidDirectory;
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthorityItemSpecifier;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.Specifier;
@@ -101,11 +106,16 @@ public class NuxeoUtils {
     public static final String Workspaces = "Workspaces";
     public static final String workspaces = "workspaces"; // to make it easier to migrate older versions of the CollectionSpace services -i.e., pre v2.0.
 
+    // Attempts, and delay between them, made to delete the file of a blob in the background
+    private static final int DELETE_FILE_OF_BLOB_ATTEMPTS = 10;
+    private static final long DELETE_FILE_OF_BLOB_RETRY_DELAY_MILLIS = 1000;
+
     // Regular expressions pattern for identifying valid ORDER BY clauses.
     // FIXME: Currently supports only USASCII word characters in field names.
     //private static final String ORDER_BY_CLAUSE_REGEX = "\\w+(_\\w+)?:\\w+( ASC| DESC)?(, \\w+(_\\w+)?:\\w+( ASC| DESC)?)*";
 		// Allow paths so can sort on complex fields. CSPACE-4601
     private static final String ORDER_BY_CLAUSE_REGEX = "\\w+(_\\w+)?:\\w+(/(\\*|\\w+))*( ASC| DESC)?(, \\w+(_\\w+)?:\\w+(/(\\*|\\w+))*( ASC| DESC)?)*";
+    private static final Pattern ORDER_BY_CLAUSE_PATTERN = Pattern.compile(ORDER_BY_CLAUSE_REGEX); // compiled once, since it's checked for every list query
 
     /*
      * Keep this method private.  This method uses reflection to gain access to a protected field in Nuxeo's "Binary" class.  If and when we learn how
@@ -247,55 +257,37 @@ public class NuxeoUtils {
     	return result;
     }
 
-    static public Thread deleteFileOfBlobAsync(Blob blob) {
-    	Thread result = null;
-
+    static public Future<?> deleteFileOfBlobAsync(Blob blob) {
     	//
-    	// Define a new thread that will try to delete the file of the blob.  We
+    	// Try to delete the file of the blob on the shared background executor.  We
     	// need this to happen on a separate thread because our current thread seems
     	// to still have an active handle to the file so our non-thread delete calls
-    	// are failing.  The new thread will make 10 attempts, separated by 1 second, to
+    	// are failing.  The task will make 10 attempts, separated by 1 second, to
     	// delete the file.  If after 10 attempts, it still can't delete the file, it will
-    	// log an error.
+    	// log an error.  The task does not hold a thread while it waits between attempts.
     	//
     	final File fileToDelete = getFileOfBlob(blob);
     	final String blobName = blob.getFilename();
-    	Thread deleteFileThread = new Thread() {
-    		@Override public void run() {
-	    		boolean deleteSuccess = false;
-	    		int attempts = 0;
-	    		while (attempts++ < 10 && deleteSuccess != true) {
-	    			deleteSuccess = deleteFile(fileToDelete);
-	    			if (deleteSuccess == false) {
-	    				//
-	    				// We couldn't delete the file, so some other thread might still
-	    				// have a handle to it.  Let's put this thread to sleep for 1 second
-	    				// before trying to delete it again.
-	    				//
-		    			try {
-							Thread.sleep(1000);
-						} catch (InterruptedException e) {
-							logger.error(String.format("Unable to delete file '%s' of blob '%s'.",
-		    					fileToDelete.getAbsoluteFile(), blobName), e);
-						}
-	    			}
-	    		}
-	    		//
-	    		// Now log the result.
-	    		//
-	    		if (deleteSuccess) {
+    	BackgroundTaskExecutor.RetryableTask deleteFileTask = new BackgroundTaskExecutor.RetryableTask() {
+    		@Override
+    		public boolean attempt(int attempt) {
+    			boolean deleteSuccess = deleteFile(fileToDelete);
+    			if (deleteSuccess) {
 	    			logger.debug(String.format("Successfully deleted file '%s' of blob '%s'.",
 	    					fileToDelete.getAbsoluteFile(), blobName));
-	    		} else {
-	    			logger.error(String.format("Unable to delete file '%s' of blob '%s'.",
-	    					fileToDelete.getAbsoluteFile(), blobName));
-	    		}
+    			}
+    			return deleteSuccess;
+    		}
+
+    		@Override
+    		public void failed(Throwable t) {
+    			logger.error(String.format("Unable to delete file '%s' of blob '%s'.",
+    					fileToDelete.getAbsoluteFile(), blobName), t);
     		}
     	};
-    	deleteFileThread.start();
-    	result = deleteFileThread;
 
-    	return result;
+    	return BackgroundTaskExecutor.getInstance().submit("delete file of blob " + blobName,
+    			deleteFileTask, DELETE_FILE_OF_BLOB_ATTEMPTS, DELETE_FILE_OF_BLOB_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     static public boolean deleteFileOfBlob(Blob blob) {
@@ -644,16 +636,9 @@ public class NuxeoUtils {
      */
     static private final boolean isValidOrderByClause(String orderByClause) {
         boolean isValidClause = false;
-        try {
-            Pattern orderByPattern = Pattern.compile(ORDER_BY_CLAUSE_REGEX);
-            Matcher orderByMatcher = orderByPattern.matcher(orderByClause);
-            if (orderByMatcher.matches()) {
-                isValidClause = true;
-            }
-        } catch (PatternSyntaxException pe) {
-            logger.warn("ORDER BY clause regex pattern '" + ORDER_BY_CLAUSE_REGEX
-                    + "' could not be compiled: " + pe.getMessage());
-            // If reached, method will return a value of false.
+        Matcher orderByMatcher = ORDER_BY_CLAUSE_PATTERN.matcher(orderByClause);
+        if (orderByMatcher.matches()) {
+            isValidClause = true;
         }
         return isValidClause;
     }
@@ -729,19 +714,59 @@ public class NuxeoUtils {
         return buildNXQLQuery(docTypes, queryContext, true);
     }
 
+    /**
+     * Finds the document with a CSID, whatever its doctype.  If the CSID directory (see CsidDirectory) has an entry
+     * for the CSID, only the entry's doctype is queried; otherwise every doctype is, and the document that's found
+     * is added to the directory.
+     *
+     * @return the document, or null if there isn't one with the CSID
+     */
     static public DocumentModel getDocFromCsid(
     		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
     		CoreSessionInterface repoSession,
     		String csid) throws Exception {
 	    DocumentModel result = null;
 
+	    CsidDirectory directory = CsidDirectory.getInstance();
+	    CsidDirectory.Entry entry = directory.lookup(ctx.getTenantId(), csid);
+	    if (entry != null) {
+	    	result = getDocFromCsid(ctx, repoSession, csid, entry.getDocType());
+	    	if (result == null) {
+	    		directory.removeAfterCommit(ctx.getTenantId(), csid); // The entry is stale
+	    	} else {
+	    		String workflowState = result.getCurrentLifeCycleState();
+	    		if (workflowState != null && !workflowState.equals(entry.getWorkflowState())) {
+	    			directory.setWorkflowStateAfterCommit(ctx.getTenantId(), csid, workflowState);
+	    		}
+	    	}
+	    }
+
+	    if (result == null) {
+	        //
+	        // Use the base Nuxeo document type so we can look for the document across service workspaces
+	        //
+	    	result = getDocFromCsid(ctx, repoSession, csid, NuxeoUtils.BASE_DOCUMENT_TYPE);
+	    	if (result != null) {
+	    		directory.putAfterCommit(CsidDirectory.createEntry(ctx.getTenantId(), result));
+	    	}
+	    }
+
+        return result;
+    }
+
+    static private DocumentModel getDocFromCsid(
+    		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		CoreSessionInterface repoSession,
+    		String csid,
+    		String docType) throws Exception {
+	    DocumentModel result = null;
+
 	    DocumentModelList docModelList = null;
         //
-        // Set of query context using the current service context, but change the document type
-        // to be the base Nuxeo document type so we can look for the document across service workspaces
+        // Set up the query context using the current service context, but change the document type
         //
         QueryContext queryContext = new QueryContext(ctx, getByNameWhereClause(csid));
-        queryContext.setDocType(NuxeoUtils.BASE_DOCUMENT_TYPE);
+        queryContext.setDocType(docType);
         //
         // Since we're doing a query, we get back a list so we need to make sure there is only
         // a single result since CSID values are supposed to be unique.
@@ -775,13 +800,24 @@ public class NuxeoUtils {
     	RefName.AuthorityItem item = null;
     	CoreSessionInterface repoSession = (CoreSessionInterface)ctx.getCurrentRepositorySession();
     	//
+    	// If we've resolved this authority item/term refName before, we can skip the parsing and the queries.
+    	//
+    	RefNameResolutionCache resolutionCache = RefNameResolutionCache.getInstance();
+    	String termKey = RefNameUtils.getAuthorityTermKey(refName);
+    	DocumentModel cachedDocModel = resolutionCache.getDocModel(repoSession, ctx.getTenantId(), termKey);
+    	if (cachedDocModel != null) {
+    		return cachedDocModel;
+    	}
+    	//
     	// Let's see if our refname refers to an authority item/term.
     	//
     	try {
 	    	item = RefName.AuthorityItem.parse(refName, true);
 	    	if (item != null) {
 	        	NuxeoBasedResource resource = (NuxeoBasedResource) resourceMap.get(item.inAuthority.resource);
-	        	return resource.getDocModelForAuthorityItem(repoSession, item);
+	        	DocumentModel docModel = resource.getDocModelForAuthorityItem(repoSession, item);
+	        	resolutionCache.put(ctx.getTenantId(), termKey, docModel);
+	        	return docModel;
 	    	}
     	} catch (IllegalArgumentException e) {
     		// Ignore exception
@@ -9,4 +9,6 @@ public class ThumbnailConstants {
 	public static final String THUMBNAIL_DIGEST_PROPERTY_NAME = "digest";
 	public static final String THUMBNAIL_FILENAME_PROPERTY_NAME = "fileName";
 	public static final String THUMBNAIL_CONVERTER_NAME = "toThumbnail";
+	public static final String THUMBNAIL_JAVA_CONVERTER_NAME = "toThumbnailJava";
+	public static final String DISABLE_THUMBNAIL_LISTENER = "disableThumbnailListener";
 }
@@ -0,0 +1,62 @@
+package org.collectionspace.services.common.blob.test;
+
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.blob.ByteRange;
+import org.testng.annotations.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testAbsentOrInvalid() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-10", 1000));
+        assertNull(ByteRange.parse("bytes=", 1000));
+        assertNull(ByteRange.parse("bytes=abc-def", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+        assertNull(ByteRange.parse("bytes=5", 1000));
+    }
+
+    @Test
+    public void testSingleRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-499", 1000);
+        assertEquals(ranges.size(), 1);
+        assertRange(ranges.get(0), 0, 499);
+        assertEquals(ranges.get(0).getLength(), 500);
+        assertEquals(ranges.get(0).toContentRange(1000), "bytes 0-499/1000");
+    }
+
+    @Test
+    public void testOpenAndSuffixRanges() {
+        assertRange(ByteRange.parse("bytes=900-", 1000).get(0), 900, 999);
+        assertRange(ByteRange.parse("bytes=-100", 1000).get(0), 900, 999);
+        assertRange(ByteRange.parse("bytes=-5000", 1000).get(0), 0, 999);
+        assertRange(ByteRange.parse("bytes=500-5000", 1000).get(0), 500, 999);
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-0, 10-19 ,-1", 1000);
+        assertEquals(ranges.size(), 3);
+        assertRange(ranges.get(0), 0, 0);
+        assertRange(ranges.get(1), 10, 19);
+        assertRange(ranges.get(2), 999, 999);
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+        // Unsatisfiable ranges are dropped when others are satisfiable
+        assertEquals(ByteRange.parse("bytes=2000-3000,0-1", 1000).size(), 1);
+    }
+
+    private static void assertRange(ByteRange range, long first, long last) {
+        assertEquals(range.getFirst(), first);
+        assertEquals(range.getLast(), last);
+    }
+}
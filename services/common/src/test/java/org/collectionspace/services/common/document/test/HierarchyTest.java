@@ -0,0 +1,116 @@
+package org.collectionspace.services.common.document.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.document.Hierarchy;
+import org.collectionspace.services.relation.RelationsCommonList.RelationListItem;
+import org.collectionspace.services.relation.RelationsDocListItem;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that a hierarchy rendered from relations loaded up front (as when the hierarchy closure has
+ * been built) matches the one rendered by querying each term's relations as the tree is walked.
+ */
+public class HierarchyTest {
+
+    /*
+     * A tree with two levels under "root", and "other" above "root" as a second broader term of "b".
+     */
+    private static List<RelationListItem> relations() {
+        List<RelationListItem> result = new ArrayList<RelationListItem>();
+        result.add(hasBroader("a", "root"));
+        result.add(hasBroader("b", "root"));
+        result.add(hasBroader("a1", "a"));
+        result.add(hasBroader("a2", "a"));
+        result.add(hasBroader("b1", "b"));
+        result.add(hasBroader("b", "other"));
+        result.add(hasBroader("unrelated", "elsewhere"));
+        return result;
+    }
+
+    private static RelationListItem hasBroader(String narrower, String broader) {
+        RelationListItem item = new RelationListItem();
+        item.setSubject(term(narrower));
+        item.setObject(term(broader));
+        item.setSubjectCsid(narrower);
+        item.setObjectCsid(broader);
+        item.setRelationshipType("hasBroader");
+        return item;
+    }
+
+    private static RelationsDocListItem term(String csid) {
+        RelationsDocListItem term = new RelationsDocListItem();
+        term.setCsid(csid);
+        term.setUri("/vocabularies/v/items/" + csid);
+        term.setName(csid + " name");
+        term.setNumber(csid + " number");
+        return term;
+    }
+
+    /*
+     * Stands in for the per-term relations query, counting the queries made.
+     */
+    private static class QueryingLister implements Hierarchy.RelationLister {
+        private final List<RelationListItem> relations;
+        private final boolean bySubject;
+        int queries = 0;
+
+        QueryingLister(List<RelationListItem> relations, boolean bySubject) {
+            this.relations = relations;
+            this.bySubject = bySubject;
+        }
+
+        @Override
+        public List<RelationListItem> list(String csid) {
+            queries++;
+            List<RelationListItem> result = new ArrayList<RelationListItem>();
+            for (RelationListItem relation : relations) {
+                String relationCsid = bySubject ? relation.getSubject().getCsid() : relation.getObject().getCsid();
+                if (relationCsid.equals(csid)) {
+                    result.add(relation);
+                }
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testDiveFromLoadedRelations() {
+        QueryingLister querying = new QueryingLister(relations(), false);
+        String expected = Hierarchy.dive("root", "/vocabularies/v/items/root", querying);
+
+        String actual = Hierarchy.dive("root", "/vocabularies/v/items/root", new Hierarchy.LoadedRelationLister(relations(), false));
+
+        assertEquals(actual, expected);
+        assertEquals(querying.queries, 6, "The walk should query each term under the root once");
+        assertTrue(actual.contains("<csid>a2</csid>"));
+        assertFalse(actual.contains("unrelated"));
+        assertFalse(actual.contains("<csid>other</csid>"));
+    }
+
+    @Test
+    public void testSurfaceFromLoadedRelations() {
+        String expected = Hierarchy.surface("b1", "/vocabularies/v/items/b1", new QueryingLister(relations(), true));
+
+        String actual = Hierarchy.surface("b1", "/vocabularies/v/items/b1", new Hierarchy.LoadedRelationLister(relations(), true));
+
+        assertEquals(actual, expected);
+        assertTrue(actual.contains("<csid>root</csid>"));
+        assertTrue(actual.contains("<csid>other</csid>"));
+        assertFalse(actual.contains("<csid>a</csid>"));
+    }
+
+    @Test
+    public void testLeaf() {
+        Hierarchy.LoadedRelationLister children = new Hierarchy.LoadedRelationLister(relations(), false);
+
+        assertTrue(children.list("a1").isEmpty());
+
+        String result = Hierarchy.dive("a1", "/vocabularies/v/items/a1", children);
+        assertTrue(result.contains("<csid>a1</csid>"));
+        assertFalse(result.contains("<child>"));
+    }
+}
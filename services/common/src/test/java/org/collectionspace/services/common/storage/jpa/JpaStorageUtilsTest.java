@@ -0,0 +1,148 @@
+package org.collectionspace.services.common.storage.jpa;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import static org.testng.Assert.*;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the properties the second-level cache adds to the entity manager factories, and that an entity
+ * manager is always closed -with any transaction it left open rolled back- when it is released.
+ */
+public class JpaStorageUtilsTest {
+    private static final String CLASS_CACHE_PREFIX = "hibernate.ejb.classcache.";
+
+    private final List<String> calls = new ArrayList<String>();
+
+    @BeforeMethod
+    public void setUp() {
+        calls.clear();
+    }
+
+    @AfterMethod
+    public void clearProperties() {
+        System.clearProperty(JpaStorageUtils.SECOND_LEVEL_CACHE_PROPERTY);
+        System.clearProperty(JpaStorageUtils.CACHE_PROVIDER_PROPERTY);
+    }
+
+    /*
+     * Stands in for an entity manager that is open or not, with a transaction that is active or not. Calls
+     * other than the state checks are recorded.
+     */
+    private EntityManager entityManager(final boolean open, final boolean active, final boolean rollbackFails) {
+        final EntityTransaction transaction = (EntityTransaction) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { EntityTransaction.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("isActive")) {
+                            return active;
+                        } else if (name.equals("rollback")) {
+                            calls.add(name);
+                            if (rollbackFails) {
+                                throw new IllegalStateException("rollback failed");
+                            }
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+
+        return (EntityManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { EntityManager.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("isOpen")) {
+                            return open;
+                        } else if (name.equals("getTransaction")) {
+                            return transaction;
+                        } else if (name.equals("close")) {
+                            calls.add(name);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    @Test
+    public void testNoPropertiesWithoutTheCache() {
+        assertTrue(JpaStorageUtils.getEntityManagerFactoryProperties().isEmpty());
+
+        System.setProperty(JpaStorageUtils.SECOND_LEVEL_CACHE_PROPERTY, "false");
+        assertTrue(JpaStorageUtils.getEntityManagerFactoryProperties().isEmpty());
+    }
+
+    @Test
+    public void testCachePropertiesUseEhcacheByDefault() {
+        System.setProperty(JpaStorageUtils.SECOND_LEVEL_CACHE_PROPERTY, "true");
+        Map<String, String> properties = JpaStorageUtils.getEntityManagerFactoryProperties();
+
+        assertEquals(properties.get("hibernate.cache.use_second_level_cache"), "true");
+        assertEquals(properties.get("hibernate.cache.use_query_cache"), "true");
+        assertEquals(properties.get("hibernate.cache.provider_class"), JpaStorageUtils.DEFAULT_CACHE_PROVIDER);
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.authorization.Role"), "read-write");
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.authorization.perms.Permission"), "read-write");
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.authorization.perms.PermissionAction"), "read-write");
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.account.Tenant"), "read-write");
+        // The entities the cached account role and permission queries return
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.authorization.AccountRoleRel"), "read-write");
+        assertEquals(properties.get(CLASS_CACHE_PREFIX + "org.collectionspace.services.authorization.PermissionRoleRel"), "read-write");
+        assertEquals(properties.size(), 9);
+    }
+
+    @Test
+    public void testCacheProviderCanBeSet() {
+        System.setProperty(JpaStorageUtils.SECOND_LEVEL_CACHE_PROPERTY, "true");
+        System.setProperty(JpaStorageUtils.CACHE_PROVIDER_PROPERTY, "org.hibernate.cache.HashtableCacheProvider");
+
+        assertEquals(JpaStorageUtils.getEntityManagerFactoryProperties().get("hibernate.cache.provider_class"),
+                "org.hibernate.cache.HashtableCacheProvider");
+    }
+
+    @Test
+    public void testReleaseRollsBackAnActiveTransactionBeforeClosing() {
+        JpaStorageUtils.releaseEntityManager(entityManager(true, true, false));
+
+        assertEquals(calls.toString(), "[rollback, close]");
+    }
+
+    @Test
+    public void testReleaseClosesWithoutAnActiveTransaction() {
+        JpaStorageUtils.releaseEntityManager(entityManager(true, false, false));
+
+        assertEquals(calls.toString(), "[close]");
+    }
+
+    @Test
+    public void testReleaseClosesWhenTheRollbackFails() {
+        try {
+            JpaStorageUtils.releaseEntityManager(entityManager(true, true, true));
+            fail("The failed rollback wasn't thrown");
+        } catch (IllegalStateException e) {
+            assertEquals(calls.toString(), "[rollback, close]");
+        }
+    }
+
+    @Test
+    public void testReleaseIgnoresAClosedOrMissingManager() {
+        JpaStorageUtils.releaseEntityManager(entityManager(false, true, false));
+        JpaStorageUtils.releaseEntityManager(null);
+
+        assertTrue(calls.isEmpty());
+    }
+}
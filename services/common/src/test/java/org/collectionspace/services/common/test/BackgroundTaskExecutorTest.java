@@ -0,0 +1,124 @@
+package org.collectionspace.services.common.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.BackgroundTaskExecutor;
+import org.collectionspace.services.common.BackgroundTaskExecutor.RetryableTask;
+import org.testng.annotations.Test;
+
+/**
+ * Exercises the shared BackgroundTaskExecutor: running and retrying tasks, and the final release.
+ * Since a released executor can't be restarted in the same JVM, the release test runs last.
+ */
+public class BackgroundTaskExecutorTest {
+
+    @Test
+    public void testSubmit() throws Exception {
+        BackgroundTaskExecutor executor = BackgroundTaskExecutor.getInstance();
+        assertSame(BackgroundTaskExecutor.getInstanceIfStarted(), executor);
+
+        long completed = executor.getCompletedCount();
+        final AtomicInteger runs = new AtomicInteger();
+        Future<?> future = executor.submit("test task", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        future.get(10, TimeUnit.SECONDS);
+
+        assertEquals(runs.get(), 1);
+        assertEquals(executor.getCompletedCount(), completed + 1);
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        BackgroundTaskExecutor executor = BackgroundTaskExecutor.getInstance();
+        long failed = executor.getFailedCount();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        executor.submit("test retried task", new RetryableTask() {
+            @Override
+            public boolean attempt(int attempt) {
+                attempts.set(attempt);
+                return false;
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                failure.set(t);
+                done.countDown();
+            }
+        }, 3, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "The task's failure was not reported");
+        assertEquals(attempts.get(), 3);
+        assertNull(failure.get(), "A task that ran out of attempts fails without an exception");
+        assertEquals(executor.getFailedCount(), failed + 1);
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        BackgroundTaskExecutor executor = BackgroundTaskExecutor.getInstance();
+        for (int i = 0; i < 100 && (executor.getPendingCount() > 0 || executor.getActiveCount() > 0); i++) {
+            Thread.sleep(10); // let the other tests' tasks finish
+        }
+        int pending = executor.getPendingCount();
+
+        final AtomicInteger runs = new AtomicInteger();
+        long scheduledAt = System.currentTimeMillis();
+        Future<?> future = executor.schedule("test scheduled task", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 500, TimeUnit.MILLISECONDS);
+        Thread.sleep(100); // a thread the executor starts counts as active until it is running
+
+        assertEquals(executor.getPendingCount(), pending + 1, "A task waiting to run should be pending");
+        assertEquals(executor.getActiveCount(), 0, "A task waiting to run shouldn't hold a thread");
+        assertEquals(runs.get(), 0);
+
+        future.get(10, TimeUnit.SECONDS);
+
+        assertEquals(runs.get(), 1);
+        assertTrue(System.currentTimeMillis() - scheduledAt >= 500, "The task ran before its delay");
+        assertEquals(executor.getPendingCount(), pending);
+    }
+
+    @Test(dependsOnMethods = { "testSubmit", "testRetries", "testSchedule" })
+    public void testGetInstanceAfterReleaseIsRejected() {
+        BackgroundTaskExecutor executor = BackgroundTaskExecutor.getInstance();
+        BackgroundTaskExecutor.release();
+
+        assertNull(BackgroundTaskExecutor.getInstanceIfStarted());
+        try {
+            BackgroundTaskExecutor.getInstance();
+            fail("getInstance() started a new executor after release()");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        try {
+            executor.submit("test task after release", new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("The released executor accepted a task");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // Releasing again is harmless
+        BackgroundTaskExecutor.release();
+    }
+}
@@ -0,0 +1,77 @@
+package org.collectionspace.services.common.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.BulkReadResult;
+import org.collectionspace.services.common.document.BadRequestException;
+import org.collectionspace.services.common.security.SecurityUtils;
+import org.testng.annotations.Test;
+
+public class BulkReadResultTest {
+
+    @Test
+    public void parseCsidsKeepsOrderAndDropsDuplicates() throws Exception {
+        List<String> csids = BulkReadResult.parseCsids(
+                "<csids><csid>b</csid><csid> a </csid><csid>b</csid><csid></csid></csids>");
+
+        assertEquals(csids, Arrays.asList("b", "a"));
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void parseCsidsRejectsAPayloadWithoutCsids() throws Exception {
+        BulkReadResult.parseCsids("<csids></csids>");
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void parseCsidsRejectsAMalformedPayload() throws Exception {
+        BulkReadResult.parseCsids("<csids><csid>a</csid>");
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void parseCsidsRejectsTooManyCsids() throws Exception {
+        BulkReadResult.parseCsids("<csids><csid>a</csid><csid>b</csid><csid>c</csid></csids>", "bulk read", 2);
+    }
+
+    @Test
+    public void onlyCsidShapedValuesAreQueried() {
+        assertTrue(BulkReadResult.isValidCsid("1a2b3c4d-0000-4e5f-a6b7-8c9d0e1f2a3b"));
+        assertFalse(BulkReadResult.isValidCsid("a' OR ecm:name LIKE '%"));
+        assertFalse(BulkReadResult.isValidCsid(""));
+        assertFalse(BulkReadResult.isValidCsid(null));
+    }
+
+    @Test
+    public void toXMLHasAnEntryForEveryRecord() {
+        BulkReadResult result = new BulkReadResult();
+        result.addError("1", 404, "Not <found>");
+        result.addError("bad csid", 400, "Invalid");
+
+        assertEquals(result.size(), 2);
+        assertEquals(result.getFoundCount(), 0);
+        assertEquals(result.getStatus("1"), 404);
+        assertEquals(result.getStatus("2"), 0);
+        assertNull(result.getPayload("1"));
+
+        String xml = result.toXML();
+        assertTrue(xml.contains("<totalItems>2</totalItems><itemsFound>0</itemsFound>"));
+        assertTrue(xml.contains("<result><csid>1</csid><status>404</status><message>Not &lt;found&gt;</message></result>"));
+        assertTrue(xml.contains("<result><csid>bad csid</csid><status>400</status><message>Invalid</message></result>"));
+    }
+
+    /*
+     * A bulk read is authorized once, as a read of the whole resource; there are no per-record permission checks.
+     */
+    @Test
+    public void bulkReadIsAuthorizedAsAReadOfTheResource() {
+        assertTrue(SecurityUtils.isBulkReadRequest("POST", "collectionobjects/bulkread"));
+        assertTrue(SecurityUtils.isBulkReadRequest("post", "personauthorities/*/items/bulkread"));
+        assertFalse(SecurityUtils.isBulkReadRequest("GET", "collectionobjects/bulkread"));
+        assertFalse(SecurityUtils.isBulkReadRequest("POST", "collectionobjects"));
+
+        assertEquals(SecurityUtils.getBulkReadResourceName("collectionobjects/bulkread"), "collectionobjects");
+        assertEquals(SecurityUtils.getBulkReadResourceName("personauthorities/*/items/bulkread"), "personauthorities/*/items");
+    }
+}
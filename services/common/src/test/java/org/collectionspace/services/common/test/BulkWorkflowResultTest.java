@@ -0,0 +1,55 @@
+package org.collectionspace.services.common.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.BulkWorkflowResult;
+import org.collectionspace.services.common.document.BadRequestException;
+import org.collectionspace.services.common.security.SecurityUtils;
+import org.testng.annotations.Test;
+
+public class BulkWorkflowResultTest {
+
+    @Test
+    public void parseCsidsKeepsOrderAndDropsDuplicates() throws Exception {
+        List<String> csids = BulkWorkflowResult.parseCsids(
+                "<csids><csid>b</csid><csid> a </csid><csid>b</csid><csid></csid></csids>");
+
+        assertEquals(csids, Arrays.asList("b", "a"));
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void parseCsidsRejectsAPayloadWithoutCsids() throws Exception {
+        BulkWorkflowResult.parseCsids("<csids></csids>");
+    }
+
+    @Test
+    public void toXMLHasAnEntryForEveryRecord() {
+        BulkWorkflowResult result = new BulkWorkflowResult("delete");
+        result.addTransitioned("1", "deleted");
+        result.addError("2", 404, "Not <found>");
+
+        assertEquals(result.size(), 2);
+        assertEquals(result.getTransitionedCount(), 1);
+        assertEquals(result.getWorkflowState("1"), "deleted");
+        assertEquals(result.getStatus("2"), 404);
+        assertEquals(result.getStatus("3"), 0);
+
+        String xml = result.toXML();
+        assertTrue(xml.contains("<transition>delete</transition><totalItems>2</totalItems><itemsTransitioned>1</itemsTransitioned>"));
+        assertTrue(xml.contains("<result><csid>1</csid><status>200</status><workflowState>deleted</workflowState></result>"));
+        assertTrue(xml.contains("<result><csid>2</csid><status>404</status><message>Not &lt;found&gt;</message></result>"));
+    }
+
+    @Test
+    public void bulkTransitionIsAuthorizedAsATransitionOfEachRecord() {
+        assertTrue(SecurityUtils.isBulkWorkflowRequest("POST", "intakes/workflow/delete"));
+        assertFalse(SecurityUtils.isBulkWorkflowRequest("PUT", "intakes/*/workflow/delete"));
+        assertFalse(SecurityUtils.isBulkWorkflowRequest("POST", "intakes/*/workflow/delete"));
+        assertFalse(SecurityUtils.isBulkWorkflowRequest("POST", "intakes/bulkread"));
+
+        assertEquals(SecurityUtils.getBulkWorkflowResourceName("intakes/workflow/delete"), "intakes/*/workflow/delete");
+    }
+}
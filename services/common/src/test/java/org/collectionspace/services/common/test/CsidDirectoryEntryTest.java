@@ -0,0 +1,28 @@
+package org.collectionspace.services.common.test;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.storage.CsidDirectory;
+import org.testng.annotations.Test;
+
+public class CsidDirectoryEntryTest {
+
+    @Test
+    public void toXMLHasTheEntrysFields() {
+        CsidDirectory.Entry entry = new CsidDirectory.Entry("1", "abc", "Placeitem", "places", "def", "project");
+
+        assertTrue(entry.toXML().endsWith("<csid-directory-entry><csid>abc</csid><tenantId>1</tenantId><docType>Placeitem</docType>"
+                + "<serviceName>places</serviceName><parentCsid>def</parentCsid><workflowState>project</workflowState>"
+                + "</csid-directory-entry>"));
+    }
+
+    @Test
+    public void toXMLLeavesOutMissingFields() {
+        CsidDirectory.Entry entry = new CsidDirectory.Entry("1", "abc", "CollectionObject", "collectionobjects", null, null);
+
+        String xml = entry.toXML();
+        assertFalse(xml.contains("<parentCsid>"));
+        assertFalse(xml.contains("<workflowState>"));
+        assertTrue(xml.contains("<serviceName>collectionobjects</serviceName>"));
+    }
+}
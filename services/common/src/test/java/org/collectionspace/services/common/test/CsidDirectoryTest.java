@@ -0,0 +1,142 @@
+package org.collectionspace.services.common.test;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.storage.CsidDirectory;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that CsidDirectory resolves a CSID from its entry when it has one, and otherwise with projection
+ * queries, whose answer it records.
+ */
+public class CsidDirectoryTest {
+    private static final String TENANT_ID = "1";
+
+    private final Map<String, CsidDirectory.Entry> entries = new HashMap<String, CsidDirectory.Entry>();
+    private final List<CsidDirectory.Entry> puts = new ArrayList<CsidDirectory.Entry>();
+    private final List<String> queries = new ArrayList<String>();
+    private final LinkedList<Map<String, Serializable>> rows = new LinkedList<Map<String, Serializable>>();
+
+    /*
+     * A directory whose entries are kept in the entries map, and that knows one authority item doctype.
+     */
+    private final CsidDirectory directory = new CsidDirectory() {
+        @Override
+        public Entry lookup(String tenantId, String csid) {
+            return entries.get(csid);
+        }
+
+        @Override
+        public void putAfterCommit(Entry entry) {
+            puts.add(entry);
+        }
+
+        @Override
+        protected String getParentField(String primaryType) {
+            return primaryType.startsWith("Placeitem") ? "places_common:inAuthority" : null;
+        }
+
+        @Override
+        protected String getServiceName(String tenantId, String docType) {
+            return docType.equals("Placeitem") ? "places" : docType.toLowerCase() + "s";
+        }
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        entries.clear();
+        puts.clear();
+        queries.clear();
+        rows.clear();
+    }
+
+    /*
+     * A session that answers each projection query with the next of the rows, or with no rows once they run out.
+     */
+    private CoreSessionInterface session() {
+        return (CoreSessionInterface) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { CoreSessionInterface.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("queryProjection") == false) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        queries.add((String) args[0]);
+                        List<Map<String, Serializable>> result = new ArrayList<Map<String, Serializable>>();
+                        if (rows.isEmpty() == false) {
+                            result.add(rows.removeFirst());
+                        }
+                        return new PartialList<Map<String, Serializable>>(result, result.size());
+                    }
+                });
+    }
+
+    private void row(String... fieldsAndValues) {
+        Map<String, Serializable> row = new HashMap<String, Serializable>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            row.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        rows.add(row);
+    }
+
+    @Test
+    public void testEntryIsResolvedFromTheDirectory() throws Exception {
+        CsidDirectory.Entry entry = new CsidDirectory.Entry(TENANT_ID, "abc", "CollectionObject", "collectionobjects", null, "project");
+        entries.put("abc", entry);
+
+        assertSame(directory.resolve(TENANT_ID, session(), "abc"), entry);
+        assertTrue(queries.isEmpty(), "The repository shouldn't be queried when the directory has an entry");
+        assertTrue(puts.isEmpty());
+    }
+
+    @Test
+    public void testMissIsResolvedWithAProjection() throws Exception {
+        row(NXQL.ECM_PRIMARYTYPE, "CollectionObjectTenant1", NXQL.ECM_LIFECYCLESTATE, "project");
+
+        CsidDirectory.Entry entry = directory.resolve(TENANT_ID, session(), "abc");
+
+        assertEquals(entry.toString(), new CsidDirectory.Entry(TENANT_ID, "abc", "CollectionObject", "collectionobjects",
+                null, "project").toString());
+        assertEquals(queries.size(), 1, "Only an authority item needs a second query");
+        assertTrue(queries.get(0).startsWith("SELECT " + NXQL.ECM_PRIMARYTYPE + ", " + NXQL.ECM_LIFECYCLESTATE + " FROM Document WHERE"),
+                queries.get(0));
+        assertTrue(queries.get(0).contains(NXQL.ECM_NAME + " = 'abc'"), queries.get(0));
+        assertTrue(queries.get(0).contains("collectionspace_core:tenantId = '1'"), queries.get(0));
+        assertEquals(puts.size(), 1);
+        assertSame(puts.get(0), entry, "The entry should be added to the directory");
+    }
+
+    @Test
+    public void testMissOfAnAuthorityItemFindsItsParent() throws Exception {
+        row(NXQL.ECM_PRIMARYTYPE, "PlaceitemTenant1", NXQL.ECM_LIFECYCLESTATE, "deleted");
+        row("places_common:inAuthority", "def");
+
+        CsidDirectory.Entry entry = directory.resolve(TENANT_ID, session(), "abc");
+
+        assertEquals(entry.toString(), new CsidDirectory.Entry(TENANT_ID, "abc", "Placeitem", "places", "def", "deleted").toString());
+        assertEquals(queries.size(), 2);
+        assertTrue(queries.get(1).startsWith("SELECT places_common:inAuthority FROM PlaceitemTenant1 WHERE"), queries.get(1));
+        assertTrue(queries.get(1).contains(NXQL.ECM_NAME + " = 'abc'"), queries.get(1));
+    }
+
+    @Test
+    public void testUnknownCsid() throws Exception {
+        assertNull(directory.resolve(TENANT_ID, session(), "abc"));
+        assertEquals(queries.size(), 1);
+        assertTrue(puts.isEmpty(), "Nothing should be added for a CSID that doesn't exist");
+    }
+}
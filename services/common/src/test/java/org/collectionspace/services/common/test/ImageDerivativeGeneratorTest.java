@@ -0,0 +1,188 @@
+package org.collectionspace.services.common.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.Derivative;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.DerivativeSpec;
+import org.collectionspace.services.common.imaging.ImageDerivativeGenerator.ImageDimensions;
+import org.collectionspace.services.common.imaging.nuxeo.JavaPictureViewsWork;
+import org.nuxeo.ecm.platform.picture.api.PictureConversion;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Exercises ImageDerivativeGenerator on images drawn by the test itself, so neither ImageMagick
+ * nor sample image files are needed.
+ */
+public class ImageDerivativeGeneratorTest {
+    /*
+     * Nuxeo's default picture conversions (see its imaging-service-contrib.xml)
+     */
+    private static final List<DerivativeSpec> PICTURE_VIEWS = JavaPictureViewsWork.toDerivativeSpecs(Arrays.asList(
+            new PictureConversion("Thumbnail", "Thumbnail size", "thumbnail", 100),
+            new PictureConversion("Small", "Small size", "small", 560),
+            new PictureConversion("Medium", "Medium size", "medium", 1000),
+            new PictureConversion("FullHD", "FullHD size", "fullhd", 1920),
+            new PictureConversion("OriginalJpeg", "Original jpeg image", "originalJpeg", null)));
+
+    private File workDir;
+
+    @BeforeClass
+    public void createWorkDir() throws IOException {
+        workDir = Files.createTempDirectory("derivatives-test").toFile();
+    }
+
+    @AfterClass
+    public void deleteWorkDir() {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+
+    @Test
+    public void scaledSizeKeepsAspectRatioAndNeverScalesUp() {
+        assertEquals(ImageDerivativeGenerator.getScaledSize(4000, 3000, 100), new int[] {100, 75});
+        assertEquals(ImageDerivativeGenerator.getScaledSize(3000, 4000, 100), new int[] {75, 100});
+        assertEquals(ImageDerivativeGenerator.getScaledSize(80, 60, 100), new int[] {80, 60});
+        assertEquals(ImageDerivativeGenerator.getScaledSize(4000, 3000, 0), new int[] {4000, 3000});
+        assertEquals(ImageDerivativeGenerator.getScaledSize(4000, 10, 100), new int[] {100, 1});
+    }
+
+    @Test
+    public void subsamplingDecodesAtLeastTwiceTheTargetSize() {
+        assertEquals(ImageDerivativeGenerator.getSubsampling(8000, 6000, 1000), 4);
+        assertEquals(ImageDerivativeGenerator.getSubsampling(1500, 1000, 1000), 1);
+        assertEquals(ImageDerivativeGenerator.getSubsampling(8000, 6000, 0), 1);
+        int subsampling = ImageDerivativeGenerator.getSubsampling(7999, 100, 100);
+        assertTrue(7999 / subsampling >= 200);
+    }
+
+    @Test
+    public void canReadTheJdkFormats() {
+        assertTrue(ImageDerivativeGenerator.canRead("image/jpeg"));
+        assertTrue(ImageDerivativeGenerator.canRead("image/png"));
+        assertFalse(ImageDerivativeGenerator.canRead("application/pdf"));
+        assertFalse(ImageDerivativeGenerator.canRead(null));
+    }
+
+    @Test
+    public void readsDimensionsFromTheHeader() throws IOException {
+        File source = createImage("header.png", 640, 480, "png");
+        ImageDimensions dimensions = ImageDerivativeGenerator.readDimensions(source);
+        assertNotNull(dimensions);
+        assertEquals(dimensions.getWidth(), 640);
+        assertEquals(dimensions.getHeight(), 480);
+        assertEquals(dimensions.getDepth(), 8);
+        assertEquals(dimensions.getFormatName().toLowerCase(), "png");
+    }
+
+    @Test
+    public void generatesThePictureViews() throws IOException {
+        File source = createImage("picture.jpg", 2400, 1600, "jpeg");
+        List<Derivative> derivatives = new ImageDerivativeGenerator().generate(source,
+                PICTURE_VIEWS, workDir);
+
+        assertEquals(derivatives.size(), PICTURE_VIEWS.size());
+        assertDerivative(derivatives.get(0), "Thumbnail", 100, 67);
+        assertDerivative(derivatives.get(1), "Small", 560, 373);
+        assertDerivative(derivatives.get(2), "Medium", 1000, 667);
+        assertDerivative(derivatives.get(3), "FullHD", 1920, 1280);
+        assertDerivative(derivatives.get(4), "OriginalJpeg", 2400, 1600);
+        // The full size JPEG view of a JPEG image is a copy of it
+        assertEquals(derivatives.get(4).getFile().length(), source.length());
+        assertEquals(derivatives.get(0).getFile().getName(), "Thumbnail_picture.jpg");
+    }
+
+    @Test
+    public void pictureViewSpecsFollowThePictureConversions() {
+        assertEquals(PICTURE_VIEWS.size(), 5);
+        assertEquals(PICTURE_VIEWS.get(1).getName(), "Small");
+        assertEquals(PICTURE_VIEWS.get(1).getMaxSize(), 560);
+        assertEquals(PICTURE_VIEWS.get(4).getMaxSize(), 0, "A conversion without a maximum size is full size");
+        for (DerivativeSpec spec : PICTURE_VIEWS) {
+            assertEquals(spec.getFormatName(), ImageDerivativeGenerator.FORMAT_JPEG);
+            assertFalse(spec.isSquare());
+        }
+    }
+
+    @Test
+    public void subsamplesLargeImagesWithoutLosingTheirContent() throws IOException {
+        File source = createImage("large.png", 6000, 4000, "png");
+        DerivativeSpec thumbnail = new DerivativeSpec("Thumbnail", 100, ImageDerivativeGenerator.FORMAT_JPEG);
+        List<Derivative> derivatives = new ImageDerivativeGenerator().generate(source, Arrays.asList(thumbnail), workDir);
+
+        Derivative derivative = assertDerivative(derivatives.get(0), "Thumbnail", 100, 67);
+        BufferedImage image = ImageIO.read(derivative.getFile());
+        // The left half of the test image is red, and the right half is blue
+        assertTrue(isMostly(image.getRGB(20, 33), Color.RED));
+        assertTrue(isMostly(image.getRGB(80, 33), Color.BLUE));
+    }
+
+    @Test
+    public void padsSquareDerivativesWithTransparency() throws IOException {
+        File source = createImage("wide.png", 400, 200, "png");
+        DerivativeSpec square = new DerivativeSpec("Square", 100, ImageDerivativeGenerator.FORMAT_PNG, true);
+        List<Derivative> derivatives = new ImageDerivativeGenerator().generate(source, Arrays.asList(square), workDir);
+
+        BufferedImage image = ImageIO.read(derivatives.get(0).getFile());
+        assertEquals(image.getWidth(), 100);
+        assertEquals(image.getHeight(), 100);
+        assertEquals(image.getRGB(50, 5) >>> 24, 0); // transparent above the image
+        assertEquals(image.getRGB(50, 50) >>> 24, 255); // opaque within it
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectsFilesImageIOCannotRead() throws IOException {
+        File source = new File(workDir, "notanimage.jpg");
+        Files.write(source.toPath(), "not an image".getBytes("UTF-8"));
+        new ImageDerivativeGenerator().generate(source, PICTURE_VIEWS, workDir);
+    }
+
+    private Derivative assertDerivative(Derivative derivative, String name, int width, int height) throws IOException {
+        assertEquals(derivative.getSpec().getName(), name);
+        assertEquals(derivative.getWidth(), width);
+        assertEquals(derivative.getHeight(), height);
+        ImageDimensions dimensions = ImageDerivativeGenerator.readDimensions(derivative.getFile());
+        assertEquals(dimensions.getWidth(), width);
+        assertEquals(dimensions.getHeight(), height);
+        return derivative;
+    }
+
+    private File createImage(String name, int width, int height, String formatName) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+
+        File result = new File(workDir, name);
+        ImageIO.write(image, formatName, result);
+        return result;
+    }
+
+    private static boolean isMostly(int rgb, Color color) {
+        Color actual = new Color(rgb);
+        return Math.abs(actual.getRed() - color.getRed()) < 40
+                && Math.abs(actual.getGreen() - color.getGreen()) < 40
+                && Math.abs(actual.getBlue() - color.getBlue()) < 40;
+    }
+}
@@ -0,0 +1,143 @@
+package org.collectionspace.services.common.test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.profile.MetricsServlet;
+import org.collectionspace.services.common.profile.ServiceMetrics;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Exercises ServiceMetrics: endpoint naming, per-request query attribution and the Prometheus output,
+ * and who MetricsServlet serves the metrics to.
+ */
+public class ServiceMetricsTest {
+    private static final int REPEATED_REQUESTS = 10000;
+
+    @Path("/metricstest/")
+    public static class BaseResource {
+        @GET
+        @Path("{csid}")
+        public String get() {
+            return null;
+        }
+    }
+
+    public static class SubResource extends BaseResource {
+        @GET
+        public String list() {
+            return null;
+        }
+    }
+
+    private final ServiceMetrics metrics = ServiceMetrics.getInstance();
+
+    private void request(Class<?> resourceClass, Method method, String httpMethod, int status, int queries) {
+        metrics.beginRequest();
+        metrics.setEndpoint(resourceClass, method);
+        for (int i = 0; i < queries; i++) {
+            metrics.recordQuery(1000);
+        }
+        metrics.endRequest(httpMethod, status, 2000000);
+    }
+
+    @Test
+    public void testPathTemplates() throws Exception {
+        assertEquals(metrics.getPathTemplate(BaseResource.class, BaseResource.class.getMethod("get")), "/metricstest/{csid}");
+        assertEquals(metrics.getPathTemplate(SubResource.class, SubResource.class.getMethod("list")), "/metricstest");
+        // An inherited method takes its class path from the concrete resource class
+        assertEquals(metrics.getPathTemplate(SubResource.class, SubResource.class.getMethod("get")), "/metricstest/{csid}");
+    }
+
+    @Test
+    public void testRequestsAreRecordedPerEndpoint() throws Exception {
+        Method get = BaseResource.class.getMethod("get");
+        int inFlight = metrics.getInFlightCount();
+
+        request(BaseResource.class, get, "PUT", 200, 3);
+        request(BaseResource.class, get, "PUT", 404, 1);
+        request(BaseResource.class, get, "PUT", 500, 0);
+
+        ServiceMetrics.EndpointStats stats = metrics.getEndpointStats().get("PUT /metricstest/{csid}");
+        assertNotNull(stats);
+        assertEquals(stats.getRequestCount(), 3);
+        assertEquals(stats.getQueryCount(), 4);
+        assertEquals(stats.getClientErrorCount(), 1);
+        assertEquals(stats.getServerErrorCount(), 1);
+        assertEquals(metrics.getInFlightCount(), inFlight);
+        assertTrue(metrics.getMaxInFlightCount() >= 1);
+    }
+
+    @Test
+    public void testUnmatchedRequest() {
+        metrics.beginRequest();
+        metrics.recordJdbcCall(1000); // e.g., an authentication lookup
+        metrics.endRequest("PATCH", 401, 1000000);
+
+        ServiceMetrics.EndpointStats stats = metrics.getEndpointStats().get("PATCH " + ServiceMetrics.UNMATCHED_ENDPOINT);
+        assertNotNull(stats);
+        assertEquals(stats.getJdbcCallCount(), 1);
+        assertEquals(stats.getClientErrorCount(), 1);
+    }
+
+    @Test
+    public void testQueriesOutsideRequestsAreNotAttributed() throws Exception {
+        long queries = metrics.getQueryTimings().getCount();
+        metrics.recordQuery(1000);
+        assertEquals(metrics.getQueryTimings().getCount(), queries + 1);
+    }
+
+    @Test
+    public void testPrometheusOutput() throws Exception {
+        request(BaseResource.class, BaseResource.class.getMethod("get"), "DELETE", 200, 2);
+
+        StringWriter text = new StringWriter();
+        MetricsServlet.writeMetrics(new PrintWriter(text), metrics);
+        String output = text.toString();
+
+        assertTrue(output.contains("# TYPE cspace_http_request_seconds summary"));
+        assertTrue(output.contains("cspace_http_request_seconds_count{method=\"DELETE\",endpoint=\"/metricstest/{csid}\"} 1"), output);
+        assertTrue(output.contains("cspace_http_request_queries_total{method=\"DELETE\",endpoint=\"/metricstest/{csid}\"} 2"), output);
+        assertTrue(output.contains("cspace_repository_sessions_open "));
+    }
+
+    @Test
+    public void testRepeatedRequestsAreCounted() throws Exception {
+        Method get = BaseResource.class.getMethod("get");
+        for (int i = 0; i < REPEATED_REQUESTS; i++) {
+            request(BaseResource.class, get, "HEAD", 200, 2);
+        }
+
+        ServiceMetrics.EndpointStats stats = metrics.getEndpointStats().get("HEAD /metricstest/{csid}");
+        assertEquals(stats.getRequestCount(), REPEATED_REQUESTS);
+        assertEquals(stats.getQueryCount(), 2 * REPEATED_REQUESTS);
+        assertEquals(stats.getLatency().getCount(), REPEATED_REQUESTS);
+    }
+
+    @Test
+    public void testMetricsAreOnlyServedToAdministrators() {
+        assertFalse(MetricsServlet.isAdministrator(null));
+        assertFalse(MetricsServlet.isAdministrator(new AnonymousAuthenticationToken("key", "anonymous",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"))));
+        assertFalse(MetricsServlet.isAdministrator(new UsernamePasswordAuthenticationToken("reader", "",
+                AuthorityUtils.createAuthorityList("ROLE_1_TENANT_READER"))));
+        // Not authenticated yet
+        assertFalse(MetricsServlet.isAdministrator(new UsernamePasswordAuthenticationToken("admin", "")));
+
+        // The metrics cover every tenant, so a tenant administrator doesn't get them
+        assertFalse(MetricsServlet.isAdministrator(new UsernamePasswordAuthenticationToken("admin", "",
+                AuthorityUtils.createAuthorityList("ROLE_1_TENANT_READER", "ROLE_1_TENANT_ADMINISTRATOR"))));
+
+        assertTrue(MetricsServlet.isAdministrator(new UsernamePasswordAuthenticationToken("spring", "",
+                AuthorityUtils.createAuthorityList("ROLE_SPRING_ADMIN"))));
+    }
+}
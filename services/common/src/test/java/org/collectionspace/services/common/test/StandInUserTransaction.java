@@ -0,0 +1,107 @@
+package org.collectionspace.services.common.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+
+import org.nuxeo.runtime.jtajca.NuxeoContainer;
+
+/**
+ * Stands in for the user transaction that TransactionHelper looks up, so code that begins, commits or checks
+ * transactions can be tested without a transaction manager.  It records "begin", "commit" and "rollback" events,
+ * in a list the test may share with events of its own.
+ *
+ * Install it in a @BeforeMethod and uninstall it in an @AfterMethod:
+ *
+ *   ut = new StandInUserTransaction(events);
+ *   ut.install();
+ *   ...
+ *   ut.uninstall();
+ */
+public class StandInUserTransaction implements UserTransaction {
+    private static final String USER_TRANSACTION_FIELD = "ut";
+
+    private final List<String> events;
+    private int status = Status.STATUS_NO_TRANSACTION;
+    private Object previousUserTransaction;
+
+    public StandInUserTransaction() {
+        this(new ArrayList<String>());
+    }
+
+    public StandInUserTransaction(List<String> events) {
+        this.events = events;
+    }
+
+    /**
+     * Makes this the user transaction NuxeoContainer hands out, keeping the one it replaces.
+     */
+    public void install() throws Exception {
+        previousUserTransaction = setUserTransaction(this);
+    }
+
+    /**
+     * Puts back the user transaction that install() replaced.
+     */
+    public void uninstall() throws Exception {
+        setUserTransaction(previousUserTransaction);
+        previousUserTransaction = null;
+    }
+
+    private static Object setUserTransaction(Object userTransaction) throws Exception {
+        Field field = NuxeoContainer.class.getDeclaredField(USER_TRANSACTION_FIELD);
+        field.setAccessible(true);
+        Object result = field.get(null);
+        field.set(null, userTransaction);
+        return result;
+    }
+
+    public List<String> getEvents() {
+        return events;
+    }
+
+    /**
+     * Sets the status getStatus() returns, e.g., to pretend a transaction is active or marked for rollback.
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void begin() {
+        status = Status.STATUS_ACTIVE;
+        events.add("begin");
+    }
+
+    @Override
+    public void commit() {
+        status = Status.STATUS_NO_TRANSACTION;
+        events.add("commit");
+    }
+
+    @Override
+    public void rollback() {
+        status = Status.STATUS_NO_TRANSACTION;
+        events.add("rollback");
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        if (status == Status.STATUS_ACTIVE) {
+            status = Status.STATUS_MARKED_ROLLBACK;
+        }
+    }
+
+    @Override
+    public void setTransactionTimeout(int seconds) {
+        // Transactions don't time out
+    }
+}
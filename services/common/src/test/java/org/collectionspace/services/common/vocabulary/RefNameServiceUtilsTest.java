@@ -0,0 +1,109 @@
+package org.collectionspace.services.common.vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.test.StandInUserTransaction;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that replacing refNames only commits a chunk at a time when the caller asks for it, and otherwise
+ * leaves the caller's transaction alone.
+ */
+public class RefNameServiceUtilsTest {
+    private final List<String> events = new ArrayList<String>();
+    private StandInUserTransaction ut;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        events.clear();
+        ut = new StandInUserTransaction(events);
+        ut.install();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        ut.uninstall();
+    }
+
+    private static List<String> ids(int count) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            result.add("id" + i);
+        }
+        return result;
+    }
+
+    private RefNameServiceUtils.ChunkUpdater recorder() {
+        return new RefNameServiceUtils.ChunkUpdater() {
+            @Override
+            public void update(List<String> chunk) {
+                events.add("update " + chunk.size());
+            }
+        };
+    }
+
+    @Test
+    public void testCallersTransactionIsLeftAlone() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        RefNameServiceUtils.updateInChunks(ids(25), 10, false, recorder());
+
+        assertEquals(events, Arrays.asList("update 10", "update 10", "update 5"));
+        assertTrue(TransactionHelper.isTransactionActive(), "The caller's transaction was ended");
+    }
+
+    @Test
+    public void testEachChunkIsCommitted() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        RefNameServiceUtils.updateInChunks(ids(25), 10, true, recorder());
+
+        assertEquals(events, Arrays.asList(
+                "update 10", "commit", "begin",
+                "update 10", "commit", "begin",
+                "update 5", "commit", "begin"));
+        assertTrue(TransactionHelper.isTransactionActive(), "The caller should get a transaction back");
+    }
+
+    @Test
+    public void testNoTransactionToCommit() throws Exception {
+        RefNameServiceUtils.updateInChunks(ids(20), 10, true, recorder());
+
+        assertEquals(events, Arrays.asList("update 10", "update 10"));
+        assertFalse(TransactionHelper.isTransactionActive());
+    }
+
+    @Test
+    public void testFailedChunkStopsTheUpdate() throws Exception {
+        TransactionHelper.startTransaction();
+        events.clear();
+
+        try {
+            RefNameServiceUtils.updateInChunks(ids(30), 10, true, new RefNameServiceUtils.ChunkUpdater() {
+                @Override
+                public void update(List<String> chunk) throws Exception {
+                    if (chunk.get(0).equals("id10")) {
+                        throw new Exception("The second chunk failed");
+                    }
+                    events.add("update " + chunk.size());
+                }
+            });
+            fail("The failure wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "The second chunk failed");
+        }
+
+        // The first chunk stays committed; the caller's transaction holds the failed one, for it to roll back
+        assertEquals(events, Arrays.asList("update 10", "commit", "begin"));
+        assertTrue(TransactionHelper.isTransactionActive());
+    }
+}
@@ -0,0 +1,72 @@
+package org.collectionspace.services.common.vocabulary.test;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.common.vocabulary.RefNameResolutionCache;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the accounting of RefNameResolutionCache entries used by callers that look the item up
+ * themselves: a hit is only counted once the caller has found the item.
+ */
+public class RefNameResolutionCacheTest {
+    private static final String TERM_KEY = "urn:cspace:org.collectionspace.demo:taxonomyauthority:name(taxon):item:name(test)";
+
+    private final RefNameResolutionCache cache = RefNameResolutionCache.getInstance();
+
+    @Test
+    public void testMissIsCounted() {
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+
+        assertNull(cache.getEntry("miss-tenant", TERM_KEY));
+
+        assertEquals(cache.getMissCount(), misses + 1);
+        assertEquals(cache.getHitCount(), hits);
+    }
+
+    @Test
+    public void testHitIsCountedOnlyWhenFound() {
+        String tenantId = "found-tenant";
+        cache.put(tenantId, TERM_KEY, "item-csid", "vocabulary-csid", "Taxon");
+
+        long hits = cache.getHitCount();
+        RefNameResolutionCache.Entry entry = cache.getEntry(tenantId, TERM_KEY);
+        assertNotNull(entry);
+        assertEquals(entry.getCsid(), "item-csid");
+        assertEquals(entry.getInAuthority(), "vocabulary-csid");
+        assertEquals(entry.getDocType(), "Taxon");
+        assertEquals(cache.getHitCount(), hits, "A hit was counted before the entry was validated");
+
+        cache.entryFound(entry);
+        assertEquals(cache.getHitCount(), hits + 1);
+    }
+
+    @Test
+    public void testEntryNotFoundIsStaleAndEvicted() {
+        String tenantId = "stale-tenant";
+        cache.put(tenantId, TERM_KEY, "item-csid", "vocabulary-csid", "Taxon");
+
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        long stale = cache.getStaleCount();
+
+        RefNameResolutionCache.Entry entry = cache.getEntry(tenantId, TERM_KEY);
+        cache.entryNotFound(tenantId, TERM_KEY, entry);
+
+        assertEquals(cache.getHitCount(), hits);
+        assertEquals(cache.getMissCount(), misses + 1);
+        assertEquals(cache.getStaleCount(), stale + 1);
+        assertNull(cache.getEntry(tenantId, TERM_KEY), "The stale entry was not evicted");
+    }
+
+    @Test
+    public void testInvalidateItem() {
+        String tenantId = "invalidated-tenant";
+        cache.put(tenantId, TERM_KEY, "item-csid", "vocabulary-csid", "Taxon");
+
+        cache.invalidateItem(tenantId, "item-csid");
+
+        assertNull(cache.getEntry(tenantId, TERM_KEY));
+    }
+}
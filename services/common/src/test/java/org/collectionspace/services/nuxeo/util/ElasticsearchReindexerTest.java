@@ -0,0 +1,215 @@
+package org.collectionspace.services.nuxeo.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer.DocTypeProgress;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer.Progress;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer.State;
+import org.nuxeo.elasticsearch.api.ESClient;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the progress of a reindex survives a restart, and that a full reindex interrupted by one
+ * points the write alias back at the index searches use.
+ */
+public class ElasticsearchReindexerTest {
+    private static final String SEARCH_ALIAS = "nuxeo";
+    private static final String WRITE_ALIAS = "nuxeo-write";
+    private static final String OLD_INDEX = "nuxeo-0001";
+    private static final String NEW_INDEX = "nuxeo-0002";
+    private static final long START_TIME = 1500000000000L; // 2017-07-14T02:40:00Z
+
+    private final Map<String, String> aliases = new HashMap<String, String>();
+    private final Set<String> indexes = new HashSet<String>();
+    private final List<String> calls = new ArrayList<String>();
+    private final List<String> scheduled = new ArrayList<String>();
+
+    private ElasticsearchReindexStore.Record saved;
+
+    @BeforeMethod
+    public void setUp() {
+        aliases.clear();
+        indexes.clear();
+        calls.clear();
+        scheduled.clear();
+        saved = null;
+    }
+
+    /*
+     * Stands in for Elasticsearch, with the aliases and indexes set up by each test. Only changes are recorded.
+     */
+    private ESClient client() {
+        return (ESClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ESClient.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("aliasExists")) {
+                            return aliases.containsKey(args[0]);
+                        } else if (name.equals("getFirstIndexForAlias")) {
+                            return aliases.get(args[0]);
+                        } else if (name.equals("indexExists")) {
+                            return indexes.contains(args[0]);
+                        } else if (name.equals("updateAlias")) {
+                            aliases.put((String) args[0], (String) args[1]);
+                        } else if (name.equals("deleteIndex")) {
+                            indexes.remove(args[0]);
+                        } else {
+                            throw new UnsupportedOperationException(name);
+                        }
+                        calls.add(name + " " + args[0]);
+                        return null;
+                    }
+                });
+    }
+
+    private ElasticsearchReindexer load(final ElasticsearchReindexStore.Record record) {
+        ElasticsearchReindexStore store = new ElasticsearchReindexStore("default") {
+            @Override
+            public Record load() {
+                return record;
+            }
+
+            @Override
+            public void save(Record record) {
+                saved = record;
+            }
+        };
+
+        ElasticsearchReindexer reindexer = new ElasticsearchReindexer("default", store) {
+            @Override
+            protected ESClient getClient() {
+                return client();
+            }
+
+            @Override
+            protected String scheduleReindex(String query) {
+                scheduled.add(query);
+                return "work" + scheduled.size();
+            }
+        };
+        reindexer.load();
+
+        return reindexer;
+    }
+
+    private static ElasticsearchReindexStore.Record record(State state, boolean full, String newIndex) {
+        List<DocTypeProgress> docTypes = Arrays.asList(
+                new DocTypeProgress("CollectionObjectTenant1", "work1", 100, 40, false),
+                new DocTypeProgress("GroupTenant1", "work2", 5, 5, true));
+
+        return new ElasticsearchReindexStore.Record(state, full, SEARCH_ALIAS, WRITE_ALIAS, OLD_INDEX, newIndex,
+                START_TIME, state == State.RUNNING ? 0 : START_TIME + 60000, null, docTypes);
+    }
+
+    @Test
+    public void testInterruptedReindexRestoresTheWriteAlias() {
+        aliases.put(SEARCH_ALIAS, OLD_INDEX);
+        aliases.put(WRITE_ALIAS, NEW_INDEX);
+        indexes.addAll(Arrays.asList(OLD_INDEX, NEW_INDEX));
+
+        Progress progress = load(record(State.RUNNING, true, NEW_INDEX)).getProgress();
+
+        assertEquals(progress.getState(), State.FAILED);
+        assertNotNull(progress.getMessage());
+        assertEquals(calls, Arrays.asList("updateAlias " + WRITE_ALIAS, "deleteIndex " + NEW_INDEX));
+        assertEquals(aliases.get(WRITE_ALIAS), OLD_INDEX, "Edits would still go to the partial index");
+        assertEquals(aliases.get(SEARCH_ALIAS), OLD_INDEX);
+        assertEquals(indexes, Collections.singleton(OLD_INDEX));
+
+        // Edits made during the reindex only reached the dropped index
+        assertEquals(scheduled, Arrays.asList(
+                "SELECT ecm:uuid FROM Document WHERE dc:modified >= TIMESTAMP '2017-07-14T02:40:00.000Z'"));
+
+        assertEquals(saved.state, State.FAILED, "The failure wasn't saved");
+        assertEquals(saved.newIndex, NEW_INDEX);
+    }
+
+    @Test
+    public void testInterruptedReindexOfAPlainIndex() {
+        // An index created before manageAlias was turned on has the search alias's name
+        indexes.addAll(Arrays.asList(SEARCH_ALIAS, NEW_INDEX));
+        aliases.put(WRITE_ALIAS, NEW_INDEX);
+
+        load(record(State.RUNNING, true, NEW_INDEX));
+
+        assertEquals(aliases.get(WRITE_ALIAS), SEARCH_ALIAS);
+        assertEquals(indexes, Collections.singleton(SEARCH_ALIAS));
+        assertEquals(scheduled.size(), 1);
+    }
+
+    @Test
+    public void testInterruptedAfterTheSwap() {
+        // The search alias was moved, but deleting the old index was interrupted
+        aliases.put(SEARCH_ALIAS, NEW_INDEX);
+        aliases.put(WRITE_ALIAS, NEW_INDEX);
+        indexes.addAll(Arrays.asList(OLD_INDEX, NEW_INDEX));
+
+        ElasticsearchReindexer reindexer = load(record(State.RUNNING, true, NEW_INDEX));
+
+        assertEquals(reindexer.getProgress().getState(), State.FAILED);
+        assertTrue(calls.isEmpty(), "The index searches use was dropped: " + calls);
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void testInterruptedPartialReindex() {
+        aliases.put(SEARCH_ALIAS, OLD_INDEX);
+        aliases.put(WRITE_ALIAS, OLD_INDEX);
+
+        // A partial reindex writes over the current index, and doesn't record a new one
+        ElasticsearchReindexer reindexer = load(record(State.RUNNING, false, null));
+
+        assertEquals(reindexer.getProgress().getState(), State.FAILED);
+        assertTrue(calls.isEmpty());
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void testCompletedProgressSurvivesARestart() {
+        aliases.put(SEARCH_ALIAS, NEW_INDEX);
+
+        Progress progress = load(record(State.COMPLETE, true, NEW_INDEX)).getProgress();
+
+        assertEquals(progress.getState(), State.COMPLETE);
+        assertTrue(progress.isFullReindex());
+        assertEquals(progress.getSearchIndex(), SEARCH_ALIAS);
+        assertEquals(progress.getElapsedMillis(), 60000);
+        assertEquals(progress.getDocTypes().size(), 2);
+        assertEquals(progress.getDocTypes().get(0).getDocType(), "CollectionObjectTenant1");
+        assertEquals(progress.getDocTypes().get(0).getIndexed(), 40);
+        assertTrue(progress.getDocTypes().get(1).isComplete());
+        assertTrue(calls.isEmpty());
+        assertNull(saved, "Loading a finished reindex shouldn't change it");
+    }
+
+    @Test
+    public void testDocTypesRoundTrip() {
+        List<DocTypeProgress> docTypes = record(State.RUNNING, true, NEW_INDEX).docTypes;
+
+        List<DocTypeProgress> parsed = ElasticsearchReindexStore.parseDocTypes(ElasticsearchReindexStore.formatDocTypes(docTypes));
+
+        assertEquals(parsed.size(), docTypes.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.get(i).getDocType(), docTypes.get(i).getDocType());
+            assertEquals(parsed.get(i).getWorkId(), docTypes.get(i).getWorkId());
+            assertEquals(parsed.get(i).getExpected(), docTypes.get(i).getExpected());
+            assertEquals(parsed.get(i).getIndexed(), docTypes.get(i).getIndexed());
+            assertEquals(parsed.get(i).isComplete(), docTypes.get(i).isComplete());
+        }
+        assertTrue(ElasticsearchReindexStore.parseDocTypes(null).isEmpty());
+    }
+}
@@ -37,6 +37,7 @@ import org.collectionspace.services.common.UriInfoWrapper;
 import org.collectionspace.services.common.context.RemoteServiceContext;
 import org.collectionspace.services.common.document.DocumentHandler;
 import org.collectionspace.services.jaxb.AbstractCommonList;
+import org.collectionspace.services.nuxeo.util.ElasticsearchReindexer;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -127,6 +128,52 @@ public class IndexResource extends NuxeoBasedResource {
        	return result;
     }
     
+	/*
+	 * Returns the progress of the latest reindex of an index.  Only the Elasticsearch index reports its
+	 * progress, since it's reindexed in the background.
+	 */
+	@Override
+	@GET
+	@Path("{csid}")
+	public Response get(
+			@Context Request request,
+			@Context ResourceMap resourceMap,
+			@Context UriInfo uriInfo,
+			@PathParam("csid") String indexid) {
+		if (IndexClient.ELASTICSEARCH_ID.equals(indexid) == false) {
+			Response response = Response.status(Response.Status.BAD_REQUEST)
+					.entity(ServiceMessages.GET_UNSUPPORTED).type("text/plain")
+					.build();
+			throw new CSWebApplicationException(response);
+		}
+
+		IndexProgress result = new IndexProgress();
+		try {
+			ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(new UriInfoWrapper(uriInfo));
+			ElasticsearchReindexer.Progress progress = ElasticsearchReindexer.getInstance(ctx.getRepositoryName()).getProgress();
+
+			result.setIndexName(indexid);
+			result.setState(progress.getState().toString());
+			result.setFullReindex(progress.isFullReindex());
+			result.setSearchIndex(progress.getSearchIndex());
+			result.setWriteIndex(progress.getWriteIndex());
+			result.setElapsedSeconds(progress.getElapsedMillis() / 1000);
+			result.setMessage(progress.getMessage());
+			for (ElasticsearchReindexer.DocTypeProgress docTypeProgress : progress.getDocTypes()) {
+				IndexProgress.DocTypeProgress item = new IndexProgress.DocTypeProgress();
+				item.setDocType(docTypeProgress.getDocType());
+				item.setExpected(docTypeProgress.getExpected());
+				item.setIndexed(docTypeProgress.getIndexed());
+				item.setComplete(docTypeProgress.isComplete());
+				result.getDocTypeProgress().add(item);
+			}
+		} catch (Exception e) {
+			throw bigReThrow(e, ServiceMessages.GET_FAILED, indexid);
+		}
+
+		return Response.ok(result).build();
+	}
+
 	/* (non-Javadoc)
 	 * @see org.collectionspace.services.common.ResourceBase#getList(javax.ws.rs.core.UriInfo, java.lang.String)
 	 * 
@@ -24,6 +24,8 @@
 package org.collectionspace.services.index.nuxeo;
 
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.collectionspace.services.client.index.IndexClient;
 import org.collectionspace.services.common.ServiceMain;
@@ -36,6 +38,7 @@ import org.collectionspace.services.config.service.ServiceBindingType;
 import org.collectionspace.services.config.types.PropertyItemType;
 import org.collectionspace.services.index.IndexCommon;
 import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +53,9 @@ public class IndexDocumentModelHandler
         extends NuxeoDocumentModelHandler<IndexCommon> {
 	private final Logger logger = LoggerFactory.getLogger(IndexDocumentModelHandler.class);
 
+	private static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\sORDER\\s+BY\\s", Pattern.CASE_INSENSITIVE);
+	private static final Pattern WHERE_PATTERN = Pattern.compile("\\sWHERE\\s", Pattern.CASE_INSENSITIVE);
+
 	@Override
 	public String getDocumentsToIndexQuery(String indexId, String csid) throws DocumentException, Exception {
 		return getDocumentsToIndexQuery(indexId, "Document", csid);
@@ -85,12 +91,10 @@ public class IndexDocumentModelHandler
 	 *
 	 * @param indexId
 	 * @param documentType
-	 * @param csid
+	 * @param csid a CSID, or comma-separated CSIDs, to restrict the query to; or null
 	 * @return
 	 * @throws DocumentException
 	 * @throws Exception
-	 *
-	 * TODO: Use the incoming CSID param to qualify the returned query.
 	 */
 	private String getReindexQuery(String indexId, String documentType, String csid) throws DocumentException, Exception {
 		String result = null;
@@ -110,10 +114,42 @@ public class IndexDocumentModelHandler
 				String query = propertyItemType.getValue();
 
 				result = String.format(query, documentType);
+				if (Tools.notBlank(csid)) {
+					result = restrictToCsids(result, csid);
+				}
 			}
 		}
 
 		return result;
 	}
 
+	/*
+	 * Adds a condition on ecm:name to the where clause of the query.
+	 */
+	private String restrictToCsids(String query, String csid) {
+		StringBuilder condition = new StringBuilder(NXQL.ECM_NAME).append(" IN (");
+		String separator = "";
+		for (String oneCsid : csid.split(",")) {
+			if (Tools.notBlank(oneCsid)) {
+				condition.append(separator).append(NXQL.escapeString(oneCsid.trim()));
+				separator = ", ";
+			}
+		}
+		condition.append(")");
+
+		Matcher orderBy = ORDER_BY_PATTERN.matcher(query);
+		int end = orderBy.find() ? orderBy.start() : query.length();
+		String select = query.substring(0, end).trim();
+		String orderByClause = query.substring(end).trim();
+
+		Matcher where = WHERE_PATTERN.matcher(select);
+		if (where.find()) {
+			select = select.substring(0, where.start()) + " WHERE (" + select.substring(where.end()).trim() + ") AND " + condition;
+		} else {
+			select = select + " WHERE " + condition;
+		}
+
+		return orderByClause.isEmpty() ? select : select + " " + orderByClause;
+	}
+
 }
@@ -48,6 +48,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -55,6 +56,7 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
@@ -312,13 +314,34 @@ public class MediaResource extends NuxeoBasedResource {
     public Response getBlobContent(
     		@PathParam("csid") String csid,
     		@Context Request requestInfo,
-    		@Context UriInfo uriInfo) {
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
+    	Response result = null;
+    	
+	    try {
+	    	ensureCSID(csid, READ);
+	        String blobCsid = this.getBlobCsid(csid);
+	    	result = getBlobResource().getBlobContent(blobCsid, requestInfo, uriInfo, headers);	        
+	    } catch (Exception e) {
+	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
+	    }
+	    
+    	return result;
+    }
+    
+    @HEAD
+    @Path("{csid}/blob/content")
+    public Response getBlobContentHead(
+    		@PathParam("csid") String csid,
+    		@Context Request requestInfo,
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
     	Response result = null;
     	
 	    try {
 	    	ensureCSID(csid, READ);
 	        String blobCsid = this.getBlobCsid(csid);
-	    	result = getBlobResource().getBlobContent(blobCsid, requestInfo, uriInfo);	        
+	    	result = getBlobResource().getBlobContentHead(blobCsid, requestInfo, uriInfo, headers);	        
 	    } catch (Exception e) {
 	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
 	    }
@@ -332,13 +355,35 @@ public class MediaResource extends NuxeoBasedResource {
     		@PathParam("csid") String csid,
     		@PathParam("derivativeTerm") String derivativeTerm,
     		@Context Request requestInfo,
-    		@Context UriInfo uriInfo) {
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
+    	Response result = null;
+    	
+	    try {
+	    	ensureCSID(csid, READ);
+	        String blobCsid = this.getBlobCsid(csid);
+	    	result = getBlobResource().getDerivativeContent(blobCsid, derivativeTerm, requestInfo, uriInfo, headers);	        
+	    } catch (Exception e) {
+	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
+	    }
+	    
+    	return result;
+    }
+    
+    @HEAD
+    @Path("{csid}/blob/derivatives/{derivativeTerm}/content")
+    public Response getDerivativeContentHead(
+    		@PathParam("csid") String csid,
+    		@PathParam("derivativeTerm") String derivativeTerm,
+    		@Context Request requestInfo,
+    		@Context UriInfo uriInfo,
+    		@Context HttpHeaders headers) {
     	Response result = null;
     	
 	    try {
 	    	ensureCSID(csid, READ);
 	        String blobCsid = this.getBlobCsid(csid);
-	    	result = getBlobResource().getDerivativeContent(blobCsid, derivativeTerm, requestInfo, uriInfo);	        
+	    	result = getBlobResource().getDerivativeContentHead(blobCsid, derivativeTerm, requestInfo, uriInfo, headers);	        
 	    } catch (Exception e) {
 	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
 	    }
@@ -41,6 +41,7 @@ import org.collectionspace.services.common.context.ServiceBindingUtils;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.document.DocumentWrapper;
 import org.collectionspace.services.common.document.InvalidDocumentException;
+import org.collectionspace.services.common.relation.HierarchyClosure;
 import org.collectionspace.services.common.relation.RelationJAXBSchema;
 import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
 import org.collectionspace.services.common.context.ServiceContext;
@@ -169,6 +170,27 @@ public class RelationDocumentModelHandler
         }
     }
 
+    /*
+     * Returns the narrower (subject) csid, broader (object) csid and narrower doctype of a hasBroader
+     * relation, or null if the relation isn't a hasBroader relation.
+     */
+    private String[] getHierarchyEdge(DocumentModel relationDocModel) throws Exception {
+        String commonPartLabel = this.getServiceContext().getCommonPartLabel();
+        String type = (String) relationDocModel.getProperty(commonPartLabel, RelationJAXBSchema.RELATIONSHIP_TYPE);
+
+        if (RelationshipType.HAS_BROADER.value().equals(type)) {
+            String subjectCsid = (String) relationDocModel.getProperty(commonPartLabel, RelationJAXBSchema.SUBJECT_CSID);
+            String objectCsid = (String) relationDocModel.getProperty(commonPartLabel, RelationJAXBSchema.OBJECT_CSID);
+            String subjectDocType = (String) relationDocModel.getProperty(commonPartLabel, RelationJAXBSchema.SUBJECT_DOCTYPE);
+
+            if (subjectCsid != null && objectCsid != null) {
+                return new String[] {subjectCsid, objectCsid, subjectDocType};
+            }
+        }
+
+        return null;
+    }
+
     private boolean isCircularHierarchy(DocumentWrapper<DocumentModel> wrapDoc) throws Exception {
         ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = this.getServiceContext();
         String commonPartLabel = ctx.getCommonPartLabel();
@@ -184,8 +206,24 @@ public class RelationDocumentModelHandler
             String objectCsid = (String) relationDocModel.getProperty(commonPartLabel,
                     RelationJAXBSchema.OBJECT_CSID);
 
-            // Check if ascending the hierarchy tree from the object reaches the subject. If so,
-            // this creates a circular hierarchy.
+            // Check if the subject is already an ancestor of the object. If so, this creates a
+            // circular hierarchy. The hierarchy closure answers that in one query once it has been built.
+
+            if (subjectCsid.equals(objectCsid)) {
+                return true;
+            }
+
+            try {
+                Boolean isAncestor = HierarchyClosure.getInstance().isAncestor(ctx.getRepositoryName(), ctx.getTenantId(),
+                        subjectCsid, objectCsid);
+                if (isAncestor != null) {
+                    return isAncestor;
+                }
+            } catch (Exception e) {
+                logger.warn("Could not check for a circular hierarchy using the hierarchy closure.", e);
+            }
+
+            // Otherwise, check if ascending the hierarchy tree from the object reaches the subject.
 
             HierarchyAscender objectHierarchyAscender = new HierarchyAscender(objectCsid);
 
@@ -205,11 +243,20 @@ public class RelationDocumentModelHandler
 
     @Override
     public void handleUpdate(DocumentWrapper<DocumentModel> wrapDoc) throws Exception {
+        String[] oldEdge = getHierarchyEdge(wrapDoc.getWrappedObject());
+
     	// Merge in the data from the payload
         super.handleUpdate(wrapDoc);
 
         // And take care of ensuring all the values for the relation info are correct
         populateSubjectAndObjectValues(wrapDoc);
+
+        String[] newEdge = getHierarchyEdge(wrapDoc.getWrappedObject());
+        if (newEdge != null && (oldEdge == null || !oldEdge[0].equals(newEdge[0]) || !oldEdge[1].equals(newEdge[1]))
+                && isCircularHierarchy(wrapDoc)) {
+            throw new ServiceException(HttpURLConnection.HTTP_FORBIDDEN,
+                    "Cannot create a circular hierarchy");
+        }
     }
 
     @Override
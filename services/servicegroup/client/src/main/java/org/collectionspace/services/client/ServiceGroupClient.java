@@ -32,6 +32,8 @@ public class ServiceGroupClient extends AbstractCommonListPoxServiceClientImpl<S
 	public static final String SERVICE_PATH = "/" + SERVICE_PATH_COMPONENT;
 	public static final String SERVICE_PATH_PROXY = SERVICE_PATH + "/";	
 	public static final String SERVICE_PAYLOAD_NAME = SERVICE_NAME;	
+	// The subresource of a service group item that says what the item's CSID is -e.g., /servicegroups/common/items/{csid}/directory
+	public static final String DIRECTORY_ENTRY_PATH_COMPONENT = "directory";
 
 	public ServiceGroupClient() throws Exception {
 		super();
@@ -23,6 +23,7 @@
  */
 package org.collectionspace.services.servicegroup;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -48,6 +49,7 @@ import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.context.ServiceContextFactory;
 import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.query.QueryManager;
+import org.collectionspace.services.common.storage.CsidDirectory;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.Specifier;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.SpecifierForm;
@@ -313,4 +315,39 @@ public class ServiceGroupResource extends AbstractCollectionSpaceResourceImpl<Po
 
         return result.getBytes();
     }
+
+    /**
+     * Says what a CSID is -its doctype, service, parent CSID (for an authority term) and workflow state- without
+     * loading the record.  The answer comes from the CSID directory when it has an entry for the CSID, and from
+     * projection queries otherwise.
+     */
+    @GET
+    @Path("{csid}/items/{specifier}/" + ServiceGroupClient.DIRECTORY_ENTRY_PATH_COMPONENT)
+    public byte[] getResourceItemDirectoryEntry(
+            @Context UriInfo uriInfo,
+            @PathParam("csid") String serviceGroupName,
+            @PathParam("specifier") String specifier) {
+    	UriInfoWrapper ui = new UriInfoWrapper(uriInfo);
+        ensureCSID(serviceGroupName, NuxeoBasedResource.READ);
+        CsidDirectory.Entry result = null;
+
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(ui);
+	        ServiceGroupDocumentModelHandler handler = (ServiceGroupDocumentModelHandler)
+	        				createDocumentHandler(ctx);
+	        ArrayList<String> groupsList = null;  
+	        if("common".equalsIgnoreCase(serviceGroupName)) {
+	        	groupsList = ServiceBindingUtils.getCommonServiceTypes(INCLUDE_AUTHORITIES);
+	        } else {
+	        	groupsList = new ArrayList<String>();
+	        	groupsList.add(serviceGroupName);
+	        }
+
+            result = handler.getDirectoryEntryForCsid(ctx, groupsList, specifier);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.READ_FAILED, specifier);
+        }
+
+        return result.toXML().getBytes(StandardCharsets.UTF_8);
+    }
 }
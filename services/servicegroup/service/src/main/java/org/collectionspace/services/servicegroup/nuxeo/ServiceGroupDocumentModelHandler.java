@@ -65,6 +65,7 @@ import org.collectionspace.services.common.document.DocumentNotFoundException;
 import org.collectionspace.services.common.document.DocumentWrapper;
 import org.collectionspace.services.common.document.TransactionException;
 import org.collectionspace.services.common.security.SecurityUtils;
+import org.collectionspace.services.common.storage.CsidDirectory;
 import org.collectionspace.services.common.query.QueryContext;
 import org.collectionspace.services.common.query.nuxeo.QueryManagerNuxeoImpl;
 import org.collectionspace.services.common.relation.nuxeo.RelationsUtils;
@@ -92,17 +93,22 @@ public class ServiceGroupDocumentModelHandler
 	protected static final String STANDARD_LIST_MARK_RT_FIELD = "related";
     
     //
-    // Returns a service payload for an authority item
+    // Returns a service payload for an authority item.  The item is read by CSID when its authority's CSID is known,
+    // and otherwise by the short identifiers in its refName.
     //
-    private PoxPayloadOut getAuthorityItem(ServiceContext ctx, String termRefName) throws Exception {
+    private PoxPayloadOut getAuthorityItem(ServiceContext ctx, String termRefName, String inAuthorityCsid, String csid) throws Exception {
     	PoxPayloadOut result = null;
     	
     	RefName.AuthorityItem item = RefName.AuthorityItem.parse(termRefName, true);
     	AuthorityResource authorityResource = (AuthorityResource) ctx.getResourceMap().get(item.inAuthority.resource);
     	
-    	AuthorityTermInfo authorityTermInfo = RefNameUtils.parseAuthorityTermInfo(termRefName);
-    	String parentIdentifier = Specifier.createShortIdURNValue(authorityTermInfo.inAuthority.name);
-    	String itemIdentifier = Specifier.createShortIdURNValue(authorityTermInfo.name);
+    	String parentIdentifier = inAuthorityCsid;
+    	String itemIdentifier = csid;
+    	if (Tools.isBlank(inAuthorityCsid)) {
+	    	AuthorityTermInfo authorityTermInfo = RefNameUtils.parseAuthorityTermInfo(termRefName);
+	    	parentIdentifier = Specifier.createShortIdURNValue(authorityTermInfo.inAuthority.name);
+	    	itemIdentifier = Specifier.createShortIdURNValue(authorityTermInfo.name);
+    	}
     	
     	result = authorityResource.getAuthorityItemWithExistingContext(ctx, parentIdentifier, itemIdentifier);
     	
@@ -124,19 +130,14 @@ public class ServiceGroupDocumentModelHandler
     			releaseRepoSession = true;
     		}
     		try {
-    	        Map<String, ServiceBindingType> queriedServiceBindings = new HashMap<String, ServiceBindingType>();
-    	        DocumentModelList docList = this.getDocListForGroup(ctx, serviceGroupNames, queriedServiceBindings,
-    	        		repoSession, repoClient);
-    	        if (docList == null || docList.isEmpty()) { // found no authRef fields - nothing to process
-    	            throw new DocumentNotFoundException();
-    	        }
-    	        DocumentModel docModel = docList.get(0);
+    	        DocumentModel docModel = getDocForGroup(ctx, serviceGroupNames, repoSession, csid);
     	        //
     	        // Determine if the docModel is an authority term, object, or some other procedure record.
     	        //
     	    	String termRefName = (String) NuxeoUtils.getProperyValue(docModel, CollectionSpaceClient.COLLECTIONSPACE_CORE_REFNAME);
     	        if (isAuthorityTermDocument(termRefName) == true) {
-                	result = getAuthorityItem(ctx, termRefName);
+    	        	String inAuthorityCsid = CsidDirectory.createEntry(ctx.getTenantId(), docModel).getParentCsid();
+                	result = getAuthorityItem(ctx, termRefName, inAuthorityCsid, csid);
     	        } else {    	        
 	                TenantBindingConfigReaderImpl bindingReader = ServiceMain.getInstance().getTenantBindingConfigReader();
 	                String serviceName = ServiceBindingUtils.getServiceNameFromObjectName(bindingReader, ctx.getTenantId(),
@@ -165,7 +166,85 @@ public class ServiceGroupDocumentModelHandler
     	
         return result;
     }
-    
+
+    /**
+     * Finds out what a CSID is -its doctype, service, parent CSID (for an authority term) and workflow state-
+     * without loading the record's document.  The answer comes from the CSID directory, or from projection
+     * queries if the directory has no entry for the CSID (see CsidDirectory.resolve()).
+     */
+    public CsidDirectory.Entry getDirectoryEntryForCsid(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		List<String> serviceGroupNames,
+    		String csid) throws DocumentException {
+    	CsidDirectory.Entry result = null;
+        CoreSessionInterface repoSession = null;
+    	boolean releaseRepoSession = false;
+
+    	try {
+    		NuxeoRepositoryClientImpl repoClient = (NuxeoRepositoryClientImpl)this.getRepositoryClient(ctx);
+    		repoSession = this.getRepositorySession();
+    		if (repoSession == null) {
+    			repoSession = repoClient.getRepositorySession(ctx);
+    			releaseRepoSession = true;
+    		}
+    		try {
+    			result = CsidDirectory.getInstance().resolve(ctx.getTenantId(), repoSession, csid);
+    			if (result == null || isInGroup(ctx, serviceGroupNames, result.getDocType()) == false) {
+    				throw new DocumentNotFoundException();
+    			}
+    		} finally {
+    			if (releaseRepoSession && repoSession != null) {
+    				repoClient.releaseRepositorySession(ctx, repoSession);
+    			}
+    		}
+    	} catch (DocumentException de) {
+    		throw de;
+    	} catch (Exception e) {
+    		if (logger.isDebugEnabled()) {
+    			logger.debug("Caught exception ", e);
+    		}
+    		throw new DocumentException(e);
+    	}
+
+    	return result;
+    }
+
+    /*
+     * Finds the document with a CSID through the CSID directory (see NuxeoUtils.getDocFromCsid), instead of
+     * searching every doctype of the service groups.  The document has to be of a doctype of one of the groups
+     * that the current user can read.
+     */
+    private DocumentModel getDocForGroup(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		List<String> serviceGroupNames,
+    		CoreSessionInterface repoSession,
+    		String csid) throws Exception {
+    	DocumentModel docModel = NuxeoUtils.getDocFromCsid(ctx, repoSession, csid);
+    	if (docModel == null) {
+    		throw new DocumentNotFoundException();
+    	}
+
+    	String docType = ServiceBindingUtils.getUnqualifiedTenantDocType(docModel.getDocumentType().getName());
+    	if (isInGroup(ctx, serviceGroupNames, docType) == false) {
+    		throw new DocumentNotFoundException();
+    	}
+
+    	return docModel;
+    }
+
+    /*
+     * Returns true if the doctype is bound to a service of one of the groups that the current user can read.
+     */
+    private boolean isInGroup(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		List<String> serviceGroupNames,
+    		String docType) {
+    	for (ServiceBindingType binding : getReadableServiceBindings(ctx, serviceGroupNames)) {
+    		ServiceObjectType serviceObj = binding.getObject();
+    		if (serviceObj != null && docType.equals(serviceObj.getName())) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
     private boolean isAuthorityTermDocument(String termRefName) {
 		boolean result = true;
 		
@@ -180,14 +259,9 @@ public class ServiceGroupDocumentModelHandler
     	return result;
 	}
 
-	private DocumentModelList getDocListForGroup(
+	private List<ServiceBindingType> getReadableServiceBindings(
     		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
-    		List<String> serviceGroupNames,
-    		Map<String, ServiceBindingType> queriedServiceBindings,
-    		CoreSessionInterface repoSession,
-    		NuxeoRepositoryClientImpl repoClient) throws Exception {
-        
-        NuxeoRepositoryClientImpl nuxeoRepoClient = (NuxeoRepositoryClientImpl)repoClient;
+    		List<String> serviceGroupNames) {
         // Get the service bindings for this tenant
         TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
         // We need to get all the procedures, authorities, and objects.
@@ -200,7 +274,18 @@ public class ServiceGroupDocumentModelHandler
             throw new CSWebApplicationException(response);
         }
         
-        servicebindings = SecurityUtils.getReadableServiceBindingsForCurrentUser(servicebindings);
+        return SecurityUtils.getReadableServiceBindingsForCurrentUser(servicebindings);
+	}
+
+	private DocumentModelList getDocListForGroup(
+    		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		List<String> serviceGroupNames,
+    		Map<String, ServiceBindingType> queriedServiceBindings,
+    		CoreSessionInterface repoSession,
+    		NuxeoRepositoryClientImpl repoClient) throws Exception {
+        
+        NuxeoRepositoryClientImpl nuxeoRepoClient = (NuxeoRepositoryClientImpl)repoClient;
+        List<ServiceBindingType> servicebindings = getReadableServiceBindings(ctx, serviceGroupNames);
         // Build the list of docTypes for allowed serviceBindings
         ArrayList<String> docTypes = new ArrayList<String>();
     	for(ServiceBindingType binding:servicebindings) {
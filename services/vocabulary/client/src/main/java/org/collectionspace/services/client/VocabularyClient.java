@@ -47,6 +47,7 @@ public class VocabularyClient extends AuthorityClientImpl<VocabulariesCommon, Vo
 	public static final String DELETE_OMITTED_ITEMS = "delete";
 	public static final String SOFTDELETE_OMITTED_ITEMS = "softdelete";
 	public static final String IGNORE_OMITTED_ITEMS = "ignore";    
+	public static final String PARTIAL_SUCCESS_QP = "partialSuccess"; // query param on PUT of a term list; if "true", terms that can't be saved are reported instead of failing the request
 	
 	//
 	// Subitem constants
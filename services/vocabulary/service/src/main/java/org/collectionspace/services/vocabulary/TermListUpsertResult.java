@@ -0,0 +1,140 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.vocabulary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TermListUpsertResult holds the outcome of a PUT of a vocabulary with an items-list (term list) payload.  Every term
+ * gets an entry saying what was done with it, and the result is added to the response payload as a part:
+ *
+ *   <term-list-results>
+ *     <created>1</created><updated>1</updated><unchanged>4998</unchanged><deleted>0</deleted><failed>0</failed>
+ *     <result><shortIdentifier>...</shortIdentifier><csid>...</csid><action>updated</action><status>200</status></result>
+ *     <result><shortIdentifier>...</shortIdentifier><action>failed</action><status>400</status><message>...</message></result>
+ *   </term-list-results>
+ *
+ * Unchanged terms are only counted, so the result of syncing a large list that has barely changed stays small.
+ */
+public class TermListUpsertResult {
+	public static final String RESULTS_ELEMENT = "term-list-results";
+
+	public enum Action {
+		CREATED, UPDATED, UNCHANGED, DELETED, SOFTDELETED, FAILED;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static class Entry {
+		final String shortIdentifier;
+		final String csid;
+		final Action action;
+		final int status;
+		final String message;
+
+		Entry(String shortIdentifier, String csid, Action action, int status, String message) {
+			this.shortIdentifier = shortIdentifier;
+			this.csid = csid;
+			this.action = action;
+			this.status = status;
+			this.message = message;
+		}
+	}
+
+	private final boolean partialSuccess;
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final int[] counts = new int[Action.values().length];
+
+	/**
+	 * @param partialSuccess true if a term that can't be saved shouldn't fail the whole request
+	 */
+	public TermListUpsertResult(boolean partialSuccess) {
+		this.partialSuccess = partialSuccess;
+	}
+
+	public boolean isPartialSuccess() {
+		return partialSuccess;
+	}
+
+	public void add(String shortIdentifier, String csid, Action action) {
+		add(shortIdentifier, csid, action, 200, null);
+	}
+
+	public void addError(String shortIdentifier, String csid, int status, String message) {
+		add(shortIdentifier, csid, Action.FAILED, status, message);
+	}
+
+	private void add(String shortIdentifier, String csid, Action action, int status, String message) {
+		counts[action.ordinal()]++;
+		if (action != Action.UNCHANGED) {
+			entries.add(new Entry(shortIdentifier, csid, action, status, message));
+		}
+	}
+
+	public int getCount(Action action) {
+		return counts[action.ordinal()];
+	}
+
+	public String toXML() {
+		StringBuilder sb = new StringBuilder();
+		sb.append('<').append(RESULTS_ELEMENT).append('>');
+		for (Action action : Action.values()) {
+			sb.append('<').append(action).append('>').append(getCount(action)).append("</").append(action).append('>');
+		}
+		for (Entry entry : entries) {
+			sb.append("<result>");
+			if (entry.shortIdentifier != null) {
+				sb.append("<shortIdentifier>").append(escape(entry.shortIdentifier)).append("</shortIdentifier>");
+			}
+			if (entry.csid != null) {
+				sb.append("<csid>").append(escape(entry.csid)).append("</csid>");
+			}
+			sb.append("<action>").append(entry.action).append("</action>");
+			sb.append("<status>").append(entry.status).append("</status>");
+			if (entry.message != null) {
+				sb.append("<message>").append(escape(entry.message)).append("</message>");
+			}
+			sb.append("</result>");
+		}
+		sb.append("</").append(RESULTS_ELEMENT).append('>');
+		return sb.toString();
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("TermListUpsertResult [");
+		for (Action action : Action.values()) {
+			sb.append(action).append('=').append(getCount(action)).append(action.ordinal() < counts.length - 1 ? ", " : "]");
+		}
+		return sb.toString();
+	}
+}
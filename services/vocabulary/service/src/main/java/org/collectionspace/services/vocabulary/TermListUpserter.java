@@ -0,0 +1,320 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.collectionspace.services.client.VocabularyClient;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.ServiceMessages;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.jaxb.AbstractCommonList.ListItem;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.w3c.dom.Element;
+
+/**
+ * Upserts the terms of an items-list payload as a diff against a vocabulary's existing terms.  New terms are created,
+ * terms with changed fields are updated, and unchanged terms are left alone.  If asked to, the existing terms missing
+ * from the payload are then deleted or soft-deleted.  Unless the result allows partial success, the first term that
+ * can't be saved fails the whole upsert.
+ *
+ * The changed terms are updated TERMS_PER_SAVE at a time, each chunk found with one query and saved with one call.  With
+ * partial success, the terms of a chunk that can't be saved are retried one at a time, so that only the failing ones are
+ * reported.
+ *
+ * The terms are written by a TermWriter -see VocabularyResource.updateWithItemsPayload()- from the payloads it makes of
+ * the list items, of type P.
+ */
+class TermListUpserter<P> {
+	// The fields of a term that an items-list payload can set -see VocabularyResource.getItemXmlPayload()
+	static final List<String> TERM_FIELDS = Arrays.asList("displayName", "order", "source", "sourcePage", "description", "termStatus");
+
+	// The most changed terms to update together
+	static final int TERMS_PER_SAVE = 100;
+
+	/*
+	 * Saves the terms of a vocabulary.
+	 */
+	interface TermWriter<P> {
+		/*
+		 * Returns the payload to save a list item with.  It has a short identifier, generated if the list item has none.
+		 */
+		P getPayload(ListItem item) throws Exception;
+
+		String getShortId(P payload) throws Exception;
+
+		/*
+		 * Creates a term, and returns its CSID.
+		 */
+		String create(P payload) throws Exception;
+
+		void update(String csid, P payload) throws Exception;
+
+		/*
+		 * Updates a number of terms together, by CSID.  If any of them can't be updated, none of them are.
+		 */
+		void updateAll(Map<String, P> updates) throws Exception;
+
+		/*
+		 * Deletes a term, or soft-deletes it if soft-deleted records still reference it.  Returns false if it was soft-deleted.
+		 */
+		boolean delete(String csid) throws Exception;
+
+		void softDelete(String csid) throws Exception;
+
+		/*
+		 * Adds a term that couldn't be saved to the result, with the status and message the failure would have had as a response.
+		 */
+		void addError(TermListUpsertResult upsertResult, String shortId, String csid, Exception e, String serviceMessage);
+	}
+
+	/*
+	 * An existing term of a vocabulary, with the fields that an items-list payload can set.
+	 */
+	static class ExistingTerm {
+		final String csid;
+		final String shortId;
+		final String workflowState;
+		final Map<String, String> fields = new HashMap<String, String>();
+
+		ExistingTerm(String csid, String shortId, String workflowState) {
+			this.csid = csid;
+			this.shortId = shortId;
+			this.workflowState = workflowState;
+		}
+
+		boolean isDeleted() {
+			return workflowState != null && workflowState.contains(WorkflowClient.WORKFLOWSTATE_DELETED);
+		}
+
+		/*
+		 * Returns true if the list item sets any of the term's fields to a different value.  Fields missing from the list item
+		 * don't count.
+		 */
+		boolean isChangedBy(ListItem item) {
+			for (Element ele : item.getAny()) {
+				String fieldName = ele.getTagName();
+				if (TERM_FIELDS.contains(fieldName)) {
+					String oldValue = fields.get(fieldName);
+					String newValue = ele.getTextContent();
+					if (Tools.isEmpty(oldValue) ? Tools.isEmpty(newValue) == false : oldValue.equals(newValue) == false) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		void setFields(ListItem item) {
+			for (Element ele : item.getAny()) {
+				if (TERM_FIELDS.contains(ele.getTagName())) {
+					fields.put(ele.getTagName(), ele.getTextContent());
+				}
+			}
+		}
+	}
+
+	private final TermWriter<P> writer;
+	private final String omittedItemAction;
+	private final Map<String, ExistingTerm> termsByCsid = new LinkedHashMap<String, ExistingTerm>();
+	private final Map<String, ExistingTerm> termsByShortId = new HashMap<String, ExistingTerm>();
+	private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<String, PendingUpdate>(); // by CSID
+
+	/*
+	 * A changed term waiting to be updated with the rest of its chunk.
+	 */
+	private class PendingUpdate {
+		final ExistingTerm term;
+		final ListItem item;
+		final P payload;
+
+		PendingUpdate(ExistingTerm term, ListItem item, P payload) {
+			this.term = term;
+			this.item = item;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * @param existingTerms all of the vocabulary's terms, soft-deleted ones included
+	 * @param omittedItemAction what to do with the existing terms missing from the payload -one of VocabularyClient's
+	 * DELETE_OMITTED_ITEMS or SOFTDELETE_OMITTED_ITEMS- or null to leave them alone
+	 * @param writer saves the terms
+	 */
+	TermListUpserter(List<ExistingTerm> existingTerms, String omittedItemAction, TermWriter<P> writer) {
+		for (ExistingTerm term : existingTerms) {
+			termsByCsid.put(term.csid, term);
+			termsByShortId.put(term.shortId, term);
+		}
+		this.omittedItemAction = omittedItemAction;
+		this.writer = writer;
+	}
+
+	/*
+	 * Matches each list item with an existing term by its CSID, or else by its short identifier.
+	 */
+	void upsert(List<ListItem> items, TermListUpsertResult upsertResult) throws Exception {
+		Set<String> csidsInPayload = new HashSet<String>(); // the existing terms/items that are in the payload
+
+		//
+		// First create the new items in the incoming payload, and update the ones that changed
+		//
+		for (ListItem item : items) {
+			String shortId = null;
+			String csid = getFieldValue(item, "csid");
+			ExistingTerm term = null;
+			try {
+				P payload = writer.getPayload(item);
+				shortId = writer.getShortId(payload);
+				term = (csid != null) ? termsByCsid.get(csid) : termsByShortId.get(shortId);
+				if (term == null) {
+					//
+					// Since the item doesn't exist, we're being asked to create it
+					//
+					term = new ExistingTerm(writer.create(payload), shortId, WorkflowClient.WORKFLOWSTATE_PROJECT);
+					term.setFields(item);
+					termsByShortId.put(shortId, term); // so a term repeated in the payload is compared with the one we just created
+					csidsInPayload.add(term.csid);
+					upsertResult.add(shortId, term.csid, TermListUpsertResult.Action.CREATED);
+				} else {
+					csidsInPayload.add(term.csid);
+					if (pendingUpdates.containsKey(term.csid)) {
+						saveUpdates(upsertResult); // so a term repeated in the payload is compared with its last update
+					}
+					if (term.isChangedBy(item)) {
+						pendingUpdates.put(term.csid, new PendingUpdate(term, item, payload));
+						if (pendingUpdates.size() >= TERMS_PER_SAVE) {
+							saveUpdates(upsertResult);
+						}
+					} else {
+						upsertResult.add(term.shortId, term.csid, TermListUpsertResult.Action.UNCHANGED);
+					}
+				}
+			} catch (Exception e) {
+				addError(upsertResult, shortId, term != null ? term.csid : csid, e, ServiceMessages.UPDATE_FAILED);
+			}
+		}
+		saveUpdates(upsertResult);
+
+		//
+		// Next, delete the items that were omitted from the incoming payload
+		//
+		if (omittedItemAction != null) {
+			for (ExistingTerm term : termsByCsid.values()) {
+				if (csidsInPayload.contains(term.csid) || term.isDeleted()) {
+					continue; // a soft-deleted term isn't sent for deletion again on every sync
+				}
+				try {
+					if (omittedItemAction.equalsIgnoreCase(VocabularyClient.DELETE_OMITTED_ITEMS)) {
+						// A term that soft-deleted records still reference gets soft-deleted instead
+						boolean deleted = writer.delete(term.csid);
+						upsertResult.add(term.shortId, term.csid,
+								deleted ? TermListUpsertResult.Action.DELETED : TermListUpsertResult.Action.SOFTDELETED);
+					} else {
+						writer.softDelete(term.csid);
+						upsertResult.add(term.shortId, term.csid, TermListUpsertResult.Action.SOFTDELETED);
+					}
+				} catch (Exception e) {
+					addError(upsertResult, term.shortId, term.csid, e, ServiceMessages.DELETE_FAILED);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Updates the pending changed terms together.
+	 */
+	private void saveUpdates(TermListUpsertResult upsertResult) throws Exception {
+		if (pendingUpdates.isEmpty()) {
+			return;
+		}
+
+		List<PendingUpdate> updates = new ArrayList<PendingUpdate>(pendingUpdates.values());
+		pendingUpdates.clear();
+
+		Map<String, P> payloads = new LinkedHashMap<String, P>();
+		for (PendingUpdate update : updates) {
+			payloads.put(update.term.csid, update.payload);
+		}
+		try {
+			writer.updateAll(payloads);
+		} catch (Exception e) {
+			if (upsertResult.isPartialSuccess() == false || TransactionHelper.isTransactionMarkedRollback()) {
+				throw e;
+			}
+			// Find the terms that can't be saved
+			for (PendingUpdate update : updates) {
+				try {
+					writer.update(update.term.csid, update.payload);
+					updated(update, upsertResult);
+				} catch (Exception e2) {
+					addError(upsertResult, update.term.shortId, update.term.csid, e2, ServiceMessages.UPDATE_FAILED);
+				}
+			}
+			return;
+		}
+
+		for (PendingUpdate update : updates) {
+			updated(update, upsertResult);
+		}
+	}
+
+	private void updated(PendingUpdate update, TermListUpsertResult upsertResult) {
+		update.term.setFields(update.item);
+		upsertResult.add(update.term.shortId, update.term.csid, TermListUpsertResult.Action.UPDATED);
+	}
+
+	/*
+	 * Records a term that couldn't be saved.  Without partial success -or if the failure has left the transaction marked for
+	 * rollback, so nothing can be saved- the exception fails the whole upsert instead.
+	 */
+	private void addError(TermListUpsertResult upsertResult, String shortId, String csid, Exception e,
+			String serviceMessage) throws Exception {
+		if (upsertResult.isPartialSuccess() == false || TransactionHelper.isTransactionMarkedRollback()) {
+			throw e;
+		}
+
+		writer.addError(upsertResult, shortId, csid, e, serviceMessage);
+	}
+
+	static String getFieldValue(ListItem item, String lookingFor) {
+		String result = null;
+
+		for (Element ele : item.getAny()) {
+			if (ele.getTagName().equalsIgnoreCase(lookingFor)) {
+				result = ele.getTextContent();
+				break;
+			}
+		}
+
+		return result;
+	}
+}
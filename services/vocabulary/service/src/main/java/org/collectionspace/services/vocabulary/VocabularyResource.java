@@ -53,16 +53,22 @@ import org.collectionspace.services.common.vocabulary.nuxeo.AuthorityIdentifierU
 import org.collectionspace.services.jaxb.AbstractCommonList;
 import org.collectionspace.services.jaxb.AbstractCommonList.ListItem;
 import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.collectionspace.services.vocabulary.nuxeo.VocabularyItemDocumentModelHandler;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.GET;
@@ -126,7 +132,7 @@ public class VocabularyResource extends
 		            //
 		            // Handle any supplied list of items/terms
 		            //
-		            handleItemsPayload(Method.POST, ctx, csid, resourceMap, uriInfo, input);
+		            handleItemsPayload(Method.POST, ctx, csid, resourceMap, uriInfo, input, null);
 		            UriBuilder path = UriBuilder.fromResource(resourceClass);
 		            path.path("" + csid);
 		            Response response = Response.created(path.build()).build();
@@ -171,9 +177,12 @@ public class VocabularyResource extends
 	                csid = getRepositoryClient(ctx).findDocCSID(null, ctx, whereClause);
 	            }
 	            getRepositoryClient(ctx).update(ctx, csid, handler);
-	            if (handleItemsPayload(Method.PUT, ctx, csid, resourceMap, uriInfo, theUpdate) == true) {
+	            TermListUpsertResult upsertResult = new TermListUpsertResult(
+	            		Tools.isTrue(uriInfo.getQueryParameters().getFirst(VocabularyClient.PARTIAL_SUCCESS_QP)));
+	            if (handleItemsPayload(Method.PUT, ctx, csid, resourceMap, uriInfo, theUpdate, upsertResult) == true) {
 	            	ctx.setOutput(new PoxPayloadOut(getServiceName())); // Clear the "vocabularies_common" result since we're going to create a new one with the items-list payload
 	            	result = this.getAuthority(ctx, request, uriInfo, specifier, true);
+	            	result.addPart(TermListUpsertResult.RESULTS_ELEMENT, upsertResult.toXML());
 	            } else {
 	            	result = ctx.getOutput();
 	            }
@@ -189,131 +198,133 @@ public class VocabularyResource extends
         return result.getBytes();
     }
     
+    /*
+     * Upserts the terms of an items-list payload as a diff against the vocabulary's existing terms, which are all read with
+     * one query -see TermListUpserter.  If the "omittedItemAction" query param asks for it, the existing terms missing from
+     * the payload are deleted or soft-deleted.
+     */
     private void updateWithItemsPayload(
     		AbstractCommonList itemsList,
-    		ServiceContext<PoxPayloadIn, PoxPayloadOut> existingCtx,
-    		String parentIdentifier,
-    		ResourceMap resourceMap,
-    		UriInfo uriInfo,
-    		PoxPayloadIn input) throws Exception {
+    		final ServiceContext<PoxPayloadIn, PoxPayloadOut> existingCtx,
+    		final String parentIdentifier,
+    		final ResourceMap resourceMap,
+    		final UriInfo uriInfo,
+    		PoxPayloadIn input,
+    		TermListUpsertResult upsertResult) throws Exception {
     	
-    	CoreSessionInterface repoSession = (CoreSessionInterface) existingCtx.getCurrentRepositorySession();
-		Set<String> shortIdsInPayload = getListOfShortIds(itemsList); // record the list of existing or new terms/items
-
-    	//
-    	// First try to update and/or create items in the incoming payload
-    	//
-		for (ListItem item : itemsList.getListItem()) {
-			String errMsg = null;
-			boolean success = true;
-			Response response = null;
-			PoxPayloadOut payloadOut = null;
-			PoxPayloadIn itemXmlPayload = getItemXmlPayload(item);
-			String itemSpecifier = getSpecifier(item);
-			if (itemSpecifier != null) {
-				try {
-					payloadOut = updateAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemSpecifier, itemXmlPayload);
-					if (payloadOut == null) {
-    					success = false;
-    					errMsg = String.format("Could not update the term list payload of vocabuary '%s'.", parentIdentifier);
-    				}
-				} catch (DocumentNotFoundException dnf) {
-					//
-					// Since the item doesn't exist, we're being ask to create it
-					//
-        			response = this.createAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemXmlPayload);
-        			if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
-        				success = false;
-    					errMsg = String.format("Could not create the term list payload of vocabuary '%s'.", parentIdentifier);
-        			}
-				}
-			} else {
-				//
-				// Since the item was supplied with neither a CSID nor a short identifier, we'll assume we're being
-				// asked to create it.
-				//
-    			response = this.createAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemXmlPayload);
-    			if (response.getStatus() == Response.Status.CREATED.getStatusCode()) {
-    				String shortId = getShortId(itemXmlPayload);
-    				shortIdsInPayload.add(shortId); // add the new short ID to the list of incoming items
-    			} else {
-    				success = false;
-					errMsg = String.format("Could not create the term list payload of vocabuary '%s'.", parentIdentifier);
-    			}
+    	final CoreSessionInterface repoSession = (CoreSessionInterface) existingCtx.getCurrentRepositorySession();
+    	final boolean rollbackOnException = upsertResult.isPartialSuccess() == false;
+		String omittedItemAction = shouldDeleteOmittedItems(uriInfo) ? getOmittedItemAction(uriInfo) : null;
+
+		TermListUpserter<PoxPayloadIn> upserter = new TermListUpserter<PoxPayloadIn>(
+				findExistingTerms(existingCtx, repoSession, parentIdentifier), omittedItemAction,
+				new TermListUpserter.TermWriter<PoxPayloadIn>() {
+			@Override
+			public PoxPayloadIn getPayload(ListItem item) throws Exception {
+				return getItemXmlPayload(item);
 			}
-			//
-			// Throw an exception as soon as we have problems with any item
-			//
-			if (success == false) {
-				throw new DocumentException(errMsg);
+
+			@Override
+			public String getShortId(PoxPayloadIn itemXmlPayload) {
+				return VocabularyResource.this.getShortId(itemXmlPayload);
 			}
-		}
 
-		//
-		// Next, delete the items that were omitted from the incoming payload
-		//
-		if (shouldDeleteOmittedItems(uriInfo) == true) {
-			UriInfo uriInfoCopy = new UriInfoWrapper(uriInfo);
-			String omittedItemAction = getOmittedItemAction(uriInfoCopy);
-			long itemsProcessed = 0;
-			long currentPage = 0;
-			while (true) {
-				AbstractCommonList abstractCommonList = this.getAuthorityItemList(existingCtx, parentIdentifier, uriInfoCopy);
-				if (abstractCommonList != null && !Tools.isEmpty(abstractCommonList.getListItem())) {
-					if (omittedItemAction.equalsIgnoreCase(VocabularyClient.DELETE_OMITTED_ITEMS)) {
-						deleteAuthorityItems(existingCtx, abstractCommonList, shortIdsInPayload, parentIdentifier);
-					} else {
-						sotfDeleteAuthorityItems(existingCtx, abstractCommonList, shortIdsInPayload, parentIdentifier);
-					}
+			@Override
+			public String create(PoxPayloadIn itemXmlPayload) throws Exception {
+				Response response = createAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemXmlPayload,
+						rollbackOnException);
+				if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
+					throw new DocumentException(String.format("Could not create the term list payload of vocabuary '%s'.", parentIdentifier));
 				}
-				itemsProcessed = itemsProcessed + abstractCommonList.getItemsInPage();
-				if (itemsProcessed >= abstractCommonList.getTotalItems()) {
-					break;
+				return getCreatedCsid(response);
+			}
+
+			@Override
+			public void update(String csid, PoxPayloadIn itemXmlPayload) throws Exception {
+				PoxPayloadOut payloadOut = updateAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, csid,
+						itemXmlPayload, rollbackOnException);
+				if (payloadOut == null) {
+					throw new DocumentException(String.format("Could not update the term list payload of vocabuary '%s'.", parentIdentifier));
 				}
-				ArrayList<String> pageNum = new ArrayList<String>();
-				pageNum.add(Long.toString(++currentPage));
-				uriInfoCopy.getQueryParameters().put(IClientQueryParams.START_PAGE_PARAM, pageNum);
 			}
+
+			@Override
+			public void updateAll(Map<String, PoxPayloadIn> updates) throws Exception {
+				updateAuthorityItems(repoSession, resourceMap, uriInfo, parentIdentifier, updates, rollbackOnException);
+			}
+
+			@Override
+			public boolean delete(String csid) throws Exception {
+				return deleteAuthorityItem(existingCtx, parentIdentifier, csid, AuthorityServiceUtils.UPDATE_REV, rollbackOnException);
+			}
+
+			@Override
+			public void softDelete(String csid) throws Exception {
+				updateItemWorkflowWithTransition(existingCtx, parentIdentifier, csid,
+						WorkflowClient.WORKFLOWTRANSITION_DELETE, AuthorityServiceUtils.UPDATE_REV, rollbackOnException);
+			}
+
+			@Override
+			public void addError(TermListUpsertResult upsertResult, String shortId, String csid, Exception e, String serviceMessage) {
+				logger.warn(String.format("Could not save term '%s' of a term list: %s", shortId != null ? shortId : csid, e.getMessage()));
+				Response response = bigReThrow(e, serviceMessage, csid != null ? csid : "").getResponse();
+				Object entity = response.getEntity();
+				upsertResult.addError(shortId, csid, response.getStatus(), entity != null ? entity.toString() : null);
+			}
+		});
+		upserter.upsert(itemsList.getListItem(), upsertResult);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format("Term list update of vocabulary '%s': %s", parentIdentifier, upsertResult));
 		}
 	}
-    
-    private String getShortId(PoxPayloadIn itemXmlPayload) {
-		String result = null;
-		
-		VocabularyitemsCommon vocabularyItemsCommon = (VocabularyitemsCommon) itemXmlPayload.getPart(VOCABULARYITEMS_COMMON).getBody();
-		result = vocabularyItemsCommon.getShortIdentifier();
-		
-		return result;
-	}
 
-	private void deleteAuthorityItems(
+    /*
+     * Reads the fields, that an items-list payload can change, of all the vocabulary's items -soft-deleted ones included- with
+     * a single query.
+     */
+    private List<TermListUpserter.ExistingTerm> findExistingTerms(
     		ServiceContext<PoxPayloadIn, PoxPayloadOut> existingCtx,
-    		AbstractCommonList abstractCommonList,
-    		Set<String> shortIdsInPayload,
-    		String parentIdentifier) throws Exception {
-    	
-		for (ListItem item : abstractCommonList.getListItem()) {
-			String shortId = getShortId(item);
-			if (shortIdsInPayload.contains(shortId) == false) {
-				deleteAuthorityItem(existingCtx, parentIdentifier, getCsid(item), AuthorityServiceUtils.UPDATE_REV);
-			}
-		}    	
+    		CoreSessionInterface repoSession,
+    		String parentCsid) throws Exception {
+    	List<TermListUpserter.ExistingTerm> result = new ArrayList<TermListUpserter.ExistingTerm>();
+    	String tenantId = existingCtx.getTenantId();
+    	String shortIdField = VOCABULARYITEMS_COMMON + ":" + AuthorityItemJAXBSchema.SHORT_IDENTIFIER;
+
+    	StringBuilder query = new StringBuilder("SELECT ").append(NXQL.ECM_NAME).append(", ").append(NXQL.ECM_LIFECYCLESTATE)
+    			.append(", ").append(shortIdField);
+    	for (String field : TermListUpserter.TERM_FIELDS) {
+    		query.append(", ").append(VOCABULARYITEMS_COMMON).append(':').append(field);
+    	}
+    	query.append(" FROM ").append(NuxeoUtils.getTenantQualifiedDocType(tenantId, getItemDocType(tenantId)))
+    			.append(" WHERE ").append(VOCABULARYITEMS_COMMON).append(':').append(AuthorityItemJAXBSchema.IN_AUTHORITY)
+    			.append(" = ").append(NXQL.escapeString(parentCsid))
+    			.append(" AND ecm:isProxy = 0 AND ecm:isCheckedInVersion = 0");
+
+    	IterableQueryResult queryResult = repoSession.queryAndFetch(query.toString(), NXQL.NXQL);
+    	try {
+    		for (Map<String, Serializable> row : queryResult) {
+    			TermListUpserter.ExistingTerm term = new TermListUpserter.ExistingTerm((String) row.get(NXQL.ECM_NAME), (String) row.get(shortIdField),
+    					(String) row.get(NXQL.ECM_LIFECYCLESTATE));
+    			for (String field : TermListUpserter.TERM_FIELDS) {
+    				Serializable value = row.get(VOCABULARYITEMS_COMMON + ":" + field);
+    				term.fields.put(field, value != null ? value.toString() : null);
+    			}
+    			result.add(term);
+    		}
+    	} finally {
+    		queryResult.close();
+    	}
+
+    	return result;
     }
-    
-    private void sotfDeleteAuthorityItems(
-    		ServiceContext<PoxPayloadIn, PoxPayloadOut> existingCtx,
-    		AbstractCommonList abstractCommonList,
-    		Set<String> shortIdsInPayload,
-    		String parentIdentifier) throws Exception {
-    	
-		for (ListItem item : abstractCommonList.getListItem()) {
-			String shortId = getShortId(item);
-			if (shortIdsInPayload.contains(shortId) == false) {
-				//deleteAuthorityItem(existingCtx, parentIdentifier, getCsid(item), AuthorityServiceUtils.UPDATE_REV);
-				this.updateItemWorkflowWithTransition(existingCtx, parentIdentifier, getCsid(item), 
-						WorkflowClient.WORKFLOWTRANSITION_DELETE, AuthorityServiceUtils.UPDATE_REV);
-			}
-		}    	
+
+    /*
+     * Returns the CSID at the end of the location of a newly created item -i.e., .../{csid}/items/{itemcsid}
+     */
+    private String getCreatedCsid(Response response) {
+    	String path = response.getLocation().getPath();
+    	return path.substring(path.lastIndexOf('/') + 1);
     }
         
     private boolean shouldDeleteOmittedItems(UriInfo uriInfo) throws DocumentException {
@@ -344,22 +355,6 @@ public class VocabularyResource extends
 		return omittedItemAction;
     }
 
-	/*
-     * Returns the set of short identifiers in the abstract common list of authority items
-     */
-    private Set<String> getListOfShortIds(AbstractCommonList itemsList) {
-		HashSet<String> result = new HashSet<String>();
-		
-		for (ListItem item : itemsList.getListItem()) {
-			String shortId = getShortId(item);
-			if (Tools.isEmpty(shortId) == false) {
-				result.add(shortId);
-			}
-		}
-		
-		return result;
-	}
-
 	private void createWithItemsPayload(
 			AbstractCommonList itemsList,
 			ServiceContext<PoxPayloadIn, 
@@ -376,7 +371,8 @@ public class VocabularyResource extends
 			PoxPayloadIn itemXmlPayload = getItemXmlPayload(item);
 
 			CoreSessionInterface repoSession = (CoreSessionInterface) existingCtx.getCurrentRepositorySession();
-			response = this.createAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemXmlPayload);
+			response = this.createAuthorityItem(repoSession, resourceMap, uriInfo, parentIdentifier, itemXmlPayload,
+					AuthorityServiceUtils.ROLLBACK_ON_EXCEPTION);
 			if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
 				success = false;
 				errMsg = String.format("Could not create the term list payload of vocabuary '%s'.", parentIdentifier);
@@ -396,7 +392,8 @@ public class VocabularyResource extends
     		String parentIdentifier,
     		ResourceMap resourceMap,
     		UriInfo uriInfo,
-    		PoxPayloadIn input) throws Exception {
+    		PoxPayloadIn input,
+    		TermListUpsertResult upsertResult) throws Exception {
     	boolean result = false;
     	
     	PayloadInputPart abstractCommonListPart  = input.getPart(PoxPayload.ABSTRACT_COMMON_LIST_ROOT_ELEMENT_LABEL);
@@ -407,7 +404,7 @@ public class VocabularyResource extends
 		            createWithItemsPayload(itemsList, existingCtx, parentIdentifier, resourceMap, uriInfo, input);
         			break;
     			case PUT:
-		            updateWithItemsPayload(itemsList, existingCtx, parentIdentifier, resourceMap, uriInfo, input);
+		            updateWithItemsPayload(itemsList, existingCtx, parentIdentifier, resourceMap, uriInfo, input, upsertResult);
         			break;	        			
 			}
 			result = true; // mark that we've handled an items-list payload
@@ -438,6 +435,11 @@ public class VocabularyResource extends
     private String getShortId(ListItem item) {
     	return getFieldValue(item, "shortIdentifier");
     }
+
+    private String getShortId(PoxPayloadIn itemXmlPayload) {
+		VocabularyitemsCommon vocabularyItemsCommon = (VocabularyitemsCommon) itemXmlPayload.getPart(VOCABULARYITEMS_COMMON).getBody();
+		return vocabularyItemsCommon.getShortIdentifier();
+    }
     
     private String getDisplayName(ListItem item) {
     	return getFieldValue(item, "displayName");
@@ -535,11 +537,13 @@ public class VocabularyResource extends
     		ResourceMap resourceMap,
     		UriInfo uriInfo,
     		String parentIdentifier, // Either a CSID or a URN form -e.g., a8ad38ec-1d7d-4bf2-bd31 or urn:cspace:name(bugsbunny)
-    		PoxPayloadIn input) throws Exception {
+    		PoxPayloadIn input,
+    		boolean rollbackOnException) throws Exception {
     	Response result = null;
     	
         ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), input, resourceMap, uriInfo);
         ctx.setCurrentRepositorySession(repoSession);
+        ctx.setRollbackOnException(rollbackOnException);
         
         result = createAuthorityItem(ctx, parentIdentifier, AuthorityServiceUtils.UPDATE_REV,
         		AuthorityServiceUtils.PROPOSED, AuthorityServiceUtils.NOT_SAS_ITEM);
@@ -553,11 +557,13 @@ public class VocabularyResource extends
     		UriInfo uriInfo,
     		String parentSpecifier, // Either a CSID or a URN form -e.g., a8ad38ec-1d7d-4bf2-bd31 or urn:cspace:name(bugsbunny)
     		String itemSpecifier, 	// Either a CSID or a URN form.
-    		PoxPayloadIn theUpdate) throws Exception {
+    		PoxPayloadIn theUpdate,
+    		boolean rollbackOnException) throws Exception {
     	PoxPayloadOut result = null;
     	
         ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), theUpdate, resourceMap, uriInfo);
         ctx.setCurrentRepositorySession(repoSession);
+        ctx.setRollbackOnException(rollbackOnException);
         
         result = updateAuthorityItem(ctx, resourceMap, uriInfo, parentSpecifier, itemSpecifier, theUpdate,
         		AuthorityServiceUtils.UPDATE_REV,			// passing TRUE so rev num increases, passing
@@ -567,6 +573,20 @@ public class VocabularyResource extends
         return result;
     }
 
+	private void updateAuthorityItems(
+    		CoreSessionInterface repoSession,
+    		ResourceMap resourceMap,
+    		UriInfo uriInfo,
+    		String parentSpecifier, // Either a CSID or a URN form -e.g., a8ad38ec-1d7d-4bf2-bd31 or urn:cspace:name(bugsbunny)
+    		Map<String, PoxPayloadIn> updates, // by item CSID
+    		boolean rollbackOnException) throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), resourceMap, uriInfo);
+        ctx.setCurrentRepositorySession(repoSession);
+        ctx.setRollbackOnException(rollbackOnException);
+
+        updateAuthorityItems(ctx, parentSpecifier, updates, AuthorityServiceUtils.UPDATE_REV);
+    }
+
 	@GET
     @Path("{csid}")
     @Override
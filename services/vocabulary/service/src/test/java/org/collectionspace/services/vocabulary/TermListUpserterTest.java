@@ -0,0 +1,326 @@
+package org.collectionspace.services.vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.testng.Assert.*;
+
+import org.collectionspace.services.client.VocabularyClient;
+import org.collectionspace.services.common.test.StandInUserTransaction;
+import org.collectionspace.services.jaxb.AbstractCommonList.ListItem;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks which terms a term list upsert creates, updates, leaves alone and deletes, and how it reports the
+ * terms it can't save.
+ */
+public class TermListUpserterTest {
+    private final List<String> writes = new ArrayList<String>();
+    private StandInUserTransaction ut;
+    private Document document;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        writes.clear();
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        ut = new StandInUserTransaction();
+        ut.install();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        ut.uninstall();
+    }
+
+    private ListItem item(String... fieldsAndValues) {
+        ListItem item = new ListItem();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            Element ele = document.createElement(fieldsAndValues[i]);
+            ele.setTextContent(fieldsAndValues[i + 1]);
+            item.getAny().add(ele);
+        }
+        return item;
+    }
+
+    private static TermListUpserter.ExistingTerm term(String csid, String shortId, String workflowState, String displayName) {
+        TermListUpserter.ExistingTerm term = new TermListUpserter.ExistingTerm(csid, shortId, workflowState);
+        term.fields.put("displayName", displayName);
+        return term;
+    }
+
+    /*
+     * A writer that records what it writes, and fails for the short identifier or CSID "bad".
+     */
+    private TermListUpserter.TermWriter<ListItem> writer() {
+        return new TermListUpserter.TermWriter<ListItem>() {
+            @Override
+            public ListItem getPayload(ListItem item) {
+                return item;
+            }
+
+            @Override
+            public String getShortId(ListItem item) {
+                String shortId = TermListUpserter.getFieldValue(item, "shortIdentifier");
+                return shortId != null ? shortId : TermListUpserter.getFieldValue(item, "displayName").toLowerCase();
+            }
+
+            @Override
+            public String create(ListItem item) throws Exception {
+                String shortId = getShortId(item);
+                failFor(shortId);
+                writes.add("create " + shortId);
+                return "csid-" + shortId;
+            }
+
+            @Override
+            public void update(String csid, ListItem item) throws Exception {
+                failFor(csid);
+                writes.add("update " + csid);
+            }
+
+            @Override
+            public void updateAll(Map<String, ListItem> updates) throws Exception {
+                StringBuilder write = new StringBuilder("updateAll");
+                for (String csid : updates.keySet()) {
+                    failFor(csid);
+                    write.append(' ').append(csid);
+                }
+                writes.add(write.toString());
+            }
+
+            @Override
+            public boolean delete(String csid) throws Exception {
+                failFor(csid);
+                writes.add("delete " + csid);
+                return csid.equals("referenced") == false;
+            }
+
+            @Override
+            public void softDelete(String csid) throws Exception {
+                failFor(csid);
+                writes.add("softDelete " + csid);
+            }
+
+            @Override
+            public void addError(TermListUpsertResult upsertResult, String shortId, String csid, Exception e, String serviceMessage) {
+                upsertResult.addError(shortId, csid, 400, e.getMessage());
+            }
+
+            private void failFor(String id) throws Exception {
+                if (id.equals("bad")) {
+                    throw new Exception("Could not save " + id);
+                }
+            }
+        };
+    }
+
+    private TermListUpsertResult upsert(List<TermListUpserter.ExistingTerm> existingTerms, String omittedItemAction,
+            boolean partialSuccess, ListItem... items) throws Exception {
+        TermListUpsertResult result = new TermListUpsertResult(partialSuccess);
+        new TermListUpserter<ListItem>(existingTerms, omittedItemAction, writer()).upsert(Arrays.asList(items), result);
+        return result;
+    }
+
+    @Test
+    public void testOnlyNewAndChangedTermsAreWritten() throws Exception {
+        TermListUpsertResult result = upsert(
+                Arrays.asList(term("csid-a", "a", "project", "A"), term("csid-b", "b", "project", "B")), null, false,
+                item("shortIdentifier", "a", "displayName", "A"),
+                item("shortIdentifier", "b", "displayName", "B2"),
+                item("displayName", "C"));
+
+        assertEquals(writes, Arrays.asList("create c", "updateAll csid-b"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.UNCHANGED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.UPDATED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.CREATED), 1);
+        assertFalse(result.toXML().contains("csid-a"), "Unchanged terms should only be counted");
+    }
+
+    @Test
+    public void testFieldsMissingFromTheListAreLeftAlone() throws Exception {
+        TermListUpserter.ExistingTerm term = term("csid-a", "a", "project", "A");
+        term.fields.put("description", "Kept");
+
+        TermListUpsertResult result = upsert(Arrays.asList(term), null, false, item("shortIdentifier", "a", "displayName", "A"));
+
+        assertTrue(writes.isEmpty());
+        assertEquals(result.getCount(TermListUpsertResult.Action.UNCHANGED), 1);
+    }
+
+    @Test
+    public void testTermsAreMatchedByCsidFirst() throws Exception {
+        upsert(Arrays.asList(term("csid-a", "a", "project", "A"), term("csid-b", "b", "project", "B")), null, false,
+                item("csid", "csid-a", "shortIdentifier", "b", "displayName", "A2"));
+
+        assertEquals(writes, Arrays.asList("updateAll csid-a"));
+    }
+
+    @Test
+    public void testChangedTermsAreUpdatedInChunks() throws Exception {
+        List<TermListUpserter.ExistingTerm> terms = new ArrayList<TermListUpserter.ExistingTerm>();
+        List<ListItem> items = new ArrayList<ListItem>();
+        for (int i = 0; i < 250; i++) {
+            terms.add(term("csid-" + i, "t" + i, "project", "T"));
+            items.add(item("shortIdentifier", "t" + i, "displayName", "T2"));
+        }
+
+        TermListUpsertResult result = upsert(terms, null, false, items.toArray(new ListItem[items.size()]));
+
+        assertEquals(writes.size(), 3);
+        assertEquals(writes.get(0).split(" ").length, 1 + TermListUpserter.TERMS_PER_SAVE);
+        assertEquals(writes.get(1).split(" ").length, 1 + TermListUpserter.TERMS_PER_SAVE);
+        assertEquals(writes.get(2).split(" ").length, 1 + 50);
+        assertEquals(result.getCount(TermListUpsertResult.Action.UPDATED), 250);
+    }
+
+    @Test
+    public void testRepeatedChangedTermIsUpdatedInTurn() throws Exception {
+        TermListUpsertResult result = upsert(Arrays.asList(term("csid-a", "a", "project", "A")), null, false,
+                item("shortIdentifier", "a", "displayName", "A2"),
+                item("shortIdentifier", "a", "displayName", "A3"),
+                item("shortIdentifier", "a", "displayName", "A3"));
+
+        assertEquals(writes, Arrays.asList("updateAll csid-a", "updateAll csid-a"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.UPDATED), 2);
+        assertEquals(result.getCount(TermListUpsertResult.Action.UNCHANGED), 1);
+    }
+
+    @Test
+    public void testRepeatedNewTermIsCreatedOnce() throws Exception {
+        TermListUpsertResult result = upsert(new ArrayList<TermListUpserter.ExistingTerm>(), null, false,
+                item("shortIdentifier", "c", "displayName", "C"),
+                item("shortIdentifier", "c", "displayName", "C"));
+
+        assertEquals(writes, Arrays.asList("create c"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.UNCHANGED), 1);
+    }
+
+    @Test
+    public void testOmittedTermsAreDeleted() throws Exception {
+        TermListUpsertResult result = upsert(
+                Arrays.asList(term("csid-a", "a", "project", "A"), term("gone", "gone", "project", "Gone"),
+                        term("referenced", "referenced", "project", "Referenced")),
+                VocabularyClient.DELETE_OMITTED_ITEMS, false,
+                item("shortIdentifier", "a", "displayName", "A"));
+
+        assertEquals(writes, Arrays.asList("delete gone", "delete referenced"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.DELETED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.SOFTDELETED), 1, "A referenced term should be soft-deleted");
+    }
+
+    @Test
+    public void testSoftDeletedTermsAreNotDeletedAgain() throws Exception {
+        TermListUpsertResult result = upsert(
+                Arrays.asList(term("gone", "gone", "project", "Gone"), term("already", "already", "deleted", "Already")),
+                VocabularyClient.DELETE_OMITTED_ITEMS, false);
+
+        assertEquals(writes, Arrays.asList("delete gone"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.DELETED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.SOFTDELETED), 0);
+    }
+
+    @Test
+    public void testOmittedTermsAreSoftDeleted() throws Exception {
+        TermListUpsertResult result = upsert(
+                Arrays.asList(term("gone", "gone", "project", "Gone"), term("already", "already", "deleted", "Already")),
+                VocabularyClient.SOFTDELETE_OMITTED_ITEMS, false);
+
+        assertEquals(writes, Arrays.asList("softDelete gone"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.SOFTDELETED), 1);
+    }
+
+    @Test
+    public void testOmittedTermsAreKeptByDefault() throws Exception {
+        upsert(Arrays.asList(term("gone", "gone", "project", "Gone")), null, false);
+
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void testFailedTermFailsTheUpsert() throws Exception {
+        try {
+            upsert(new ArrayList<TermListUpserter.ExistingTerm>(), null, false,
+                    item("shortIdentifier", "bad", "displayName", "Bad"),
+                    item("shortIdentifier", "c", "displayName", "C"));
+            fail("The failure wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "Could not save bad");
+        }
+
+        assertTrue(writes.isEmpty(), "The terms after the failed one shouldn't be written");
+    }
+
+    @Test
+    public void testFailedChunkFailsTheUpsert() throws Exception {
+        try {
+            upsert(Arrays.asList(term("csid-a", "a", "project", "A"), term("bad", "b", "project", "B")), null, false,
+                    item("shortIdentifier", "a", "displayName", "A2"),
+                    item("shortIdentifier", "b", "displayName", "B2"));
+            fail("The failure wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "Could not save bad");
+        }
+
+        assertTrue(writes.isEmpty(), "No term of the chunk should be updated one at a time");
+    }
+
+    @Test
+    public void testPartialSuccessRetriesAFailedChunk() throws Exception {
+        ut.setStatus(Status.STATUS_ACTIVE);
+
+        TermListUpsertResult result = upsert(Arrays.asList(term("csid-a", "a", "project", "A"), term("bad", "b", "project", "B")),
+                null, true,
+                item("shortIdentifier", "a", "displayName", "A2"),
+                item("shortIdentifier", "b", "displayName", "B2"));
+
+        assertEquals(writes, Arrays.asList("update csid-a"), "The chunk's other terms should still be saved");
+        assertEquals(result.getCount(TermListUpsertResult.Action.UPDATED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.FAILED), 1);
+    }
+
+    @Test
+    public void testPartialSuccessReportsTheFailedTerms() throws Exception {
+        ut.setStatus(Status.STATUS_ACTIVE);
+
+        TermListUpsertResult result = upsert(Arrays.asList(term("bad", "b", "project", "B"), term("gone", "gone", "project", "Gone")),
+                VocabularyClient.DELETE_OMITTED_ITEMS, true,
+                item("shortIdentifier", "bad", "displayName", "Bad"),
+                item("shortIdentifier", "b", "displayName", "B2"),
+                item("shortIdentifier", "c", "displayName", "C"));
+
+        assertEquals(writes, Arrays.asList("create c", "delete gone"));
+        assertEquals(result.getCount(TermListUpsertResult.Action.FAILED), 2);
+        assertEquals(result.getCount(TermListUpsertResult.Action.CREATED), 1);
+        assertEquals(result.getCount(TermListUpsertResult.Action.DELETED), 1);
+        String xml = result.toXML();
+        assertTrue(xml.contains("<shortIdentifier>bad</shortIdentifier><action>failed</action><status>400</status>"
+                + "<message>Could not save bad</message>"), xml);
+        assertTrue(xml.contains("<shortIdentifier>b</shortIdentifier><csid>bad</csid><action>failed</action>"), xml);
+    }
+
+    @Test
+    public void testPartialSuccessAfterARollback() throws Exception {
+        // A failure that marks the transaction for rollback leaves nothing else to save
+        ut.setStatus(Status.STATUS_MARKED_ROLLBACK);
+
+        try {
+            upsert(new ArrayList<TermListUpserter.ExistingTerm>(), null, true,
+                    item("shortIdentifier", "bad", "displayName", "Bad"),
+                    item("shortIdentifier", "c", "displayName", "C"));
+            fail("The failure wasn't passed on");
+        } catch (Exception e) {
+            assertEquals(e.getMessage(), "Could not save bad");
+        }
+
+        assertTrue(writes.isEmpty());
+    }
+}